@@ -39,6 +39,8 @@ CREATE UNIQUE INDEX certificatedata_idx12 ON CertificateData (serialNumber, issu
 -- If using CVC CA remove the above UNIQUE index, and apply the below NON UNIQUE index instead
 -- Do not apply both of them!
 -- CREATE INDEX certificatedata_idx12 ON CertificateData (serialNumber, issuerDN);
+-- The following index is needed when the revocation status index is enabled (revocationindex.enabled in cesecore.properties)
+-- CREATE INDEX certificatedata_idx15 ON CertificateData (updateTime);
 
 CREATE INDEX historydata_idx1 ON CertReqHistoryData (username);
 CREATE INDEX historydata_idx3 ON CertReqHistoryData (serialNumber);
@@ -275,6 +275,17 @@ CREATE TABLE KeyRecoveryData (
     issuerDN)
 );
 
+CREATE TABLE MailQueueData (
+    pk VARCHAR(256) NOT NULL,
+    messageData CLOB,
+    nextAttempt BIGINT NOT NULL,
+    rowProtection CLOB(10 K),
+    rowVersion INTEGER NOT NULL,
+    timeCreated BIGINT NOT NULL,
+    tryCounter INTEGER NOT NULL,
+    PRIMARY KEY (pk)
+);
+
 CREATE TABLE PeerData (
     id INTEGER NOT NULL,
     connectorState INTEGER NOT NULL,
@@ -367,6 +378,16 @@ CREATE TABLE ServiceData (
     PRIMARY KEY (id)
 );
 
+CREATE TABLE ServiceNodeLeaseData (
+    id VARCHAR(256) NOT NULL,
+    expireTime BIGINT NOT NULL,
+    nodeName VARCHAR(256) NOT NULL,
+    rowProtection CLOB(10 K),
+    rowVersion INTEGER NOT NULL,
+    serviceId INTEGER NOT NULL,
+    PRIMARY KEY (id)
+);
+
 CREATE TABLE UserData (
     username VARCHAR(256) NOT NULL,
     cAId INTEGER NOT NULL,
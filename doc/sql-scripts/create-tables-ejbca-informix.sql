@@ -275,6 +275,17 @@ CREATE TABLE KeyRecoveryData (
     issuerDN)
 );
 
+CREATE TABLE MailQueueData (
+    pk VARCHAR(255,0) NOT NULL,
+    messageData TEXT,
+    nextAttempt DECIMAL(18,0) NOT NULL,
+    rowProtection TEXT,
+    rowVersion INTEGER NOT NULL,
+    timeCreated DECIMAL(18,0) NOT NULL,
+    tryCounter INTEGER NOT NULL,
+    PRIMARY KEY (pk)
+);
+
 CREATE TABLE PeerData (
     id INTEGER NOT NULL,
     connectorState INTEGER NOT NULL,
@@ -367,6 +378,16 @@ CREATE TABLE ServiceData (
     PRIMARY KEY (id)
 );
 
+CREATE TABLE ServiceNodeLeaseData (
+    id VARCHAR(255,0) NOT NULL,
+    expireTime DECIMAL(18,0) NOT NULL,
+    nodeName VARCHAR(255,0) NOT NULL,
+    rowProtection TEXT,
+    rowVersion INTEGER NOT NULL,
+    serviceId INTEGER NOT NULL,
+    PRIMARY KEY (id)
+);
+
 CREATE TABLE UserData (
     username VARCHAR(255,0) NOT NULL,
     cAId INTEGER NOT NULL,
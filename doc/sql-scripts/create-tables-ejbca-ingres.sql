@@ -275,6 +275,17 @@ CREATE TABLE KeyRecoveryData (
     issuerDN)
 );
 
+CREATE TABLE MailQueueData (
+    pk VARCHAR(256) NOT NULL,
+    messageData LONG VARCHAR with null,
+    nextAttempt INT8 NOT NULL,
+    rowProtection LONG VARCHAR with null,
+    rowVersion INT4 NOT NULL,
+    timeCreated INT8 NOT NULL,
+    tryCounter INT4 NOT NULL,
+    PRIMARY KEY (pk)
+);
+
 CREATE TABLE PeerData (
     id INT4 NOT NULL,
     connectorState INT4 NOT NULL,
@@ -367,6 +378,16 @@ CREATE TABLE ServiceData (
     PRIMARY KEY (id)
 );
 
+CREATE TABLE ServiceNodeLeaseData (
+    id VARCHAR(256) NOT NULL,
+    expireTime INT8 NOT NULL,
+    nodeName VARCHAR(256) NOT NULL,
+    rowProtection LONG VARCHAR with null,
+    rowVersion INT4 NOT NULL,
+    serviceId INT4 NOT NULL,
+    PRIMARY KEY (id)
+);
+
 CREATE TABLE UserData (
     username VARCHAR(256) NOT NULL,
     cAId INT4 NOT NULL,
@@ -278,6 +278,17 @@ CREATE TABLE KeyRecoveryData (
     issuerDN)
 ) TABLESPACE ejbca_ts STORAGE DISK ENGINE=NDB;
 
+CREATE TABLE MailQueueData (
+    pk VARCHAR(250) BINARY NOT NULL,
+    messageData LONGTEXT,
+    nextAttempt BIGINT(20) NOT NULL,
+    rowProtection LONGTEXT,
+    rowVersion INT(11) NOT NULL,
+    timeCreated BIGINT(20) NOT NULL,
+    tryCounter INT(11) NOT NULL,
+    PRIMARY KEY (pk)
+) TABLESPACE ejbca_ts STORAGE DISK ENGINE=NDB;
+
 CREATE TABLE PeerData (
     id INT(11) NOT NULL,
     connectorState INT(11) NOT NULL,
@@ -370,6 +381,16 @@ CREATE TABLE ServiceData (
     PRIMARY KEY (id)
 ) TABLESPACE ejbca_ts STORAGE DISK ENGINE=NDB;
 
+CREATE TABLE ServiceNodeLeaseData (
+    id VARCHAR(250) BINARY NOT NULL,
+    expireTime BIGINT(20) NOT NULL,
+    nodeName VARCHAR(250) BINARY NOT NULL,
+    rowProtection LONGTEXT,
+    rowVersion INT(11) NOT NULL,
+    serviceId INT(11) NOT NULL,
+    PRIMARY KEY (id)
+) TABLESPACE ejbca_ts STORAGE DISK ENGINE=NDB;
+
 CREATE TABLE UserData (
     username VARCHAR(250) BINARY NOT NULL,
     cAId INT(11) NOT NULL,
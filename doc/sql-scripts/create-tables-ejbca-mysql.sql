@@ -275,6 +275,17 @@ CREATE TABLE KeyRecoveryData (
     issuerDN)
 );
 
+CREATE TABLE MailQueueData (
+    pk VARCHAR(250) BINARY NOT NULL,
+    messageData LONGTEXT,
+    nextAttempt BIGINT(20) NOT NULL,
+    rowProtection LONGTEXT,
+    rowVersion INT(11) NOT NULL,
+    timeCreated BIGINT(20) NOT NULL,
+    tryCounter INT(11) NOT NULL,
+    PRIMARY KEY (pk)
+);
+
 CREATE TABLE PeerData (
     id INT(11) NOT NULL,
     connectorState INT(11) NOT NULL,
@@ -367,6 +378,16 @@ CREATE TABLE ServiceData (
     PRIMARY KEY (id)
 );
 
+CREATE TABLE ServiceNodeLeaseData (
+    id VARCHAR(250) BINARY NOT NULL,
+    expireTime BIGINT(20) NOT NULL,
+    nodeName VARCHAR(250) BINARY NOT NULL,
+    rowProtection LONGTEXT,
+    rowVersion INT(11) NOT NULL,
+    serviceId INT(11) NOT NULL,
+    PRIMARY KEY (id)
+);
+
 CREATE TABLE UserData (
     username VARCHAR(250) BINARY NOT NULL,
     cAId INT(11) NOT NULL,
@@ -275,6 +275,17 @@ CREATE TABLE KeyRecoveryData (
     issuerDN)
 );
 
+CREATE TABLE MailQueueData (
+    pk VARCHAR2(255 byte) NOT NULL,
+    messageData CLOB,
+    nextAttempt NUMBER(19) NOT NULL,
+    rowProtection CLOB,
+    rowVersion NUMBER(10) NOT NULL,
+    timeCreated NUMBER(19) NOT NULL,
+    tryCounter NUMBER(10) NOT NULL,
+    PRIMARY KEY (pk)
+);
+
 CREATE TABLE PeerData (
     id NUMBER(10) NOT NULL,
     connectorState NUMBER(10) NOT NULL,
@@ -367,6 +378,16 @@ CREATE TABLE ServiceData (
     PRIMARY KEY (id)
 );
 
+CREATE TABLE ServiceNodeLeaseData (
+    id VARCHAR2(255 byte) NOT NULL,
+    expireTime NUMBER(19) NOT NULL,
+    nodeName VARCHAR2(255 byte) NOT NULL,
+    rowProtection CLOB,
+    rowVersion NUMBER(10) NOT NULL,
+    serviceId NUMBER(10) NOT NULL,
+    PRIMARY KEY (id)
+);
+
 CREATE TABLE UserData (
     username VARCHAR2(255 byte) NOT NULL,
     cAId NUMBER(10) NOT NULL,
@@ -275,6 +275,17 @@ CREATE TABLE KeyRecoveryData (
     issuerDN)
 );
 
+CREATE TABLE MailQueueData (
+    pk TEXT NOT NULL,
+    messageData TEXT,
+    nextAttempt INT8 NOT NULL,
+    rowProtection TEXT,
+    rowVersion INT4 NOT NULL,
+    timeCreated INT8 NOT NULL,
+    tryCounter INT4 NOT NULL,
+    PRIMARY KEY (pk)
+);
+
 CREATE TABLE PeerData (
     id INT4 NOT NULL,
     connectorState INT4 NOT NULL,
@@ -367,6 +378,16 @@ CREATE TABLE ServiceData (
     PRIMARY KEY (id)
 );
 
+CREATE TABLE ServiceNodeLeaseData (
+    id TEXT NOT NULL,
+    expireTime INT8 NOT NULL,
+    nodeName TEXT NOT NULL,
+    rowProtection TEXT,
+    rowVersion INT4 NOT NULL,
+    serviceId INT4 NOT NULL,
+    PRIMARY KEY (id)
+);
+
 CREATE TABLE UserData (
     username TEXT NOT NULL,
     cAId INT4 NOT NULL,
@@ -23,6 +23,7 @@ drop table HardTokenProfileData if exists;
 drop table HardTokenPropertyData if exists;
 drop table InternalKeyBindingData if exists;
 drop table KeyRecoveryData if exists;
+drop table MailQueueData if exists;
 drop table PeerData if exists;
 drop table ProfileData if exists;
 drop table PublisherData if exists;
@@ -31,5 +32,6 @@ drop table BlacklistData if exists;
 drop table RoleData if exists;
 drop table RoleMemberData if exists;
 drop table ServiceData if exists;
+drop table ServiceNodeLeaseData if exists;
 drop table UserData if exists;
 drop table UserDataSourceData if exists;
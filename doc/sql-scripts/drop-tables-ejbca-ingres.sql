@@ -21,6 +21,7 @@ drop table HardTokenProfileData;
 drop table HardTokenPropertyData;
 drop table InternalKeyBindingData;
 drop table KeyRecoveryData;
+drop table MailQueueData;
 drop table PeerData;
 drop table ProfileData;
 drop table PublisherData;
@@ -29,5 +30,6 @@ drop table BlacklistData;
 drop table RoleData;
 drop table RoleMemberData;
 drop table ServiceData;
+drop table ServiceNodeLeaseData;
 drop table UserData;
 drop table UserDataSourceData;
@@ -23,6 +23,7 @@ drop table if exists HardTokenProfileData;
 drop table if exists HardTokenPropertyData;
 drop table if exists InternalKeyBindingData;
 drop table if exists KeyRecoveryData;
+drop table if exists MailQueueData;
 drop table if exists PeerData;
 drop table if exists ProfileData;
 drop table if exists PublisherData;
@@ -31,5 +32,6 @@ drop table if exists BlacklistData;
 drop table if exists RoleData;
 drop table if exists RoleMemberData;
 drop table if exists ServiceData;
+drop table if exists ServiceNodeLeaseData;
 drop table if exists UserData;
 drop table if exists UserDataSourceData;
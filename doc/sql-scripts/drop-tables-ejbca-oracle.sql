@@ -21,6 +21,7 @@ drop table HardTokenProfileData cascade constraints;
 drop table HardTokenPropertyData cascade constraints;
 drop table InternalKeyBindingData cascade constraints;
 drop table KeyRecoveryData cascade constraints;
+drop table MailQueueData cascade constraints;
 drop table PeerData cascade constraints;
 drop table ProfileData cascade constraints;
 drop table PublisherData cascade constraints;
@@ -29,5 +30,6 @@ drop table BlacklistData cascade constraints;
 drop table RoleData cascade constraints;
 drop table RoleMemberData cascade constraints;
 drop table ServiceData cascade constraints;
+drop table ServiceNodeLeaseData cascade constraints;
 drop table UserData cascade constraints;
 drop table UserDataSourceData cascade constraints;
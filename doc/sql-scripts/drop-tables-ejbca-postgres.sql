@@ -23,6 +23,7 @@ drop table if exists HardTokenProfileData cascade;
 drop table if exists HardTokenPropertyData cascade;
 drop table if exists InternalKeyBindingData cascade;
 drop table if exists KeyRecoveryData cascade;
+drop table if exists MailQueueData cascade;
 drop table if exists PeerData cascade;
 drop table if exists ProfileData cascade;
 drop table if exists PublisherData cascade;
@@ -31,5 +32,6 @@ drop table if exists BlacklistData cascade;
 drop table if exists RoleData cascade;
 drop table if exists RoleMemberData cascade;
 drop table if exists ServiceData cascade;
+drop table if exists ServiceNodeLeaseData cascade;
 drop table if exists UserData cascade;
 drop table if exists UserDataSourceData cascade;
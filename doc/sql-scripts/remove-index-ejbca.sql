@@ -13,6 +13,7 @@ DROP INDEX certificatedata_idx5 ON CertificateData;
 DROP INDEX certificatedata_idx6 ON CertificateData;
 DROP INDEX certificatedata_idx7 ON CertificateData;
 -- DROP INDEX certificatedata_idx8 ON CertificateData;
+-- DROP INDEX certificatedata_idx15 ON CertificateData;
 DROP INDEX certificatedata_idx11 ON CertificateData;
 DROP INDEX certificatedata_idx12 ON CertificateData;
 -- Only added when MySQL partition pruning is used:
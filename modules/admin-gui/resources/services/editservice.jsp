@@ -144,6 +144,13 @@
 		<h:selectBooleanCheckbox id="runOnAllNodesCheckbox" value="#{editService.serviceConfigurationView.runOnAllNodes}" disabled="#{not editService.hasEditRights}"/>
 		<h:outputLabel for="runOnAllNodesCheckbox" value="#{web.text.RUNONALLNODES}" />
 	</h:panelGroup>
+	<h:panelGroup>
+		<h:outputText value="#{web.text.SHARDEDEXECUTION}"/>
+	</h:panelGroup>
+	<h:panelGroup>
+		<h:selectBooleanCheckbox id="shardedExecutionCheckbox" value="#{editService.serviceConfigurationView.shardedExecution}" disabled="#{not editService.hasEditRights}"/>
+		<h:outputLabel for="shardedExecutionCheckbox" value="#{web.text.SHARDEDEXECUTION_HELP}" />
+	</h:panelGroup>
 	<h:panelGroup>
 		<h:outputText value="#{web.text.DESCRIPTION}"/>
 	</h:panelGroup>
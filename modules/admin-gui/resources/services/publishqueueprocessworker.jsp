@@ -16,4 +16,11 @@
 			<f:selectItems value="#{editService.availablePublishers}"/>
 		</h:selectManyListbox>		
 	</h:panelGroup>	
+	<h:panelGroup>
+		<h:outputText value="#{web.text.PUBLISHERQUEUEPARALLELDRAIN}"/>
+	</h:panelGroup>
+	<h:panelGroup>
+		<h:selectBooleanCheckbox id="parallelDrainCheckbox" value="#{editService.publishWorkerType.parallelDrain}" disabled="#{not editService.hasEditRights}"/>
+		<h:outputLabel for="parallelDrainCheckbox" value="#{web.text.USE}" />
+	</h:panelGroup>
 
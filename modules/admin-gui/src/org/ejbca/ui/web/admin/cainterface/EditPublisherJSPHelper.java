@@ -126,6 +126,9 @@ public class EditPublisherJSPHelper {
     public static final String CHECKBOX_LDAP_SET_USERPASSWORD  = "checkboxldapsetuserpassword";
     public static final String CHECKBOX_ONLYUSEQUEUE           = "textfieldonlyusequeue";
     public static final String CHECKBOX_KEEPPUBLISHEDINQUEUE   = "textfieldkeeppublishedinqueue";
+    public static final String TEXTFIELD_QUEUECHUNKSIZE        = "textfieldqueuechunksize";
+    public static final String TEXTFIELD_QUEUEPARALLELISM      = "textfieldqueueparallelism";
+    public static final String TEXTFIELD_QUEUEMAXENTRIESPERRUN = "textfieldqueuemaxentriesperrun";
     public static final String CHECKBOX_USEQUEUEFORCRLS        = "textfieldusequeueforcrls";
     public static final String CHECKBOX_USEQUEUEFORCERTIFICATES = "textfieldusequeueforcertificates";
     public static final String CHECKBOX_VA_STORECERT           = "textfieldvastorecert";
@@ -300,6 +303,18 @@ public class EditPublisherJSPHelper {
                         	publisherdata.setUseQueueForCRLs(value != null && value.equals(CHECKBOX_VALUE));
                         	value = request.getParameter(CHECKBOX_USEQUEUEFORCERTIFICATES);
                         	publisherdata.setUseQueueForCertificates(value != null && value.equals(CHECKBOX_VALUE));
+                        	value = request.getParameter(TEXTFIELD_QUEUECHUNKSIZE);
+                        	if (StringUtils.isNotBlank(value)) {
+                        	    publisherdata.setQueueChunkSize(parseQueueSetting(TEXTFIELD_QUEUECHUNKSIZE, value));
+                        	}
+                        	value = request.getParameter(TEXTFIELD_QUEUEPARALLELISM);
+                        	if (StringUtils.isNotBlank(value)) {
+                        	    publisherdata.setQueueParallelism(parseQueueSetting(TEXTFIELD_QUEUEPARALLELISM, value));
+                        	}
+                        	value = request.getParameter(TEXTFIELD_QUEUEMAXENTRIESPERRUN);
+                        	if (StringUtils.isNotBlank(value)) {
+                        	    publisherdata.setQueueMaxEntriesPerRun(parseQueueSetting(TEXTFIELD_QUEUEMAXENTRIESPERRUN, value));
+                        	}
 
                             if(publisherdata instanceof CustomPublisherContainer){
                                 final CustomPublisherContainer custompublisherdata = ((CustomPublisherContainer) publisherdata);
@@ -622,6 +637,18 @@ public class EditPublisherJSPHelper {
          "CUSTOMPUBLISHER"
     };
     
+    /**
+     * @return the value of a numeric publisher queue field, which is also checked by the page before it is submitted
+     * @throws IllegalArgumentException if the value is not a number, which can happen if the user has Javascript turned off
+     */
+    private static int parseQueueSetting(final String field, final String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value '" + value + "' of " + field + ", only decimal numbers are allowed.", e);
+        }
+    }
+
     public String getPublisherName() {
         return publishername;
     }
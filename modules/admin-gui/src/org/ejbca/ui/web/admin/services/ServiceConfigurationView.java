@@ -68,6 +68,7 @@ public class ServiceConfigurationView implements Serializable{
 	private String description = "";
 	private String[] pinToNodes = new String[0];
 	private boolean runOnAllNodes = false;
+	private boolean shardedExecution = false;
 	
 	private ServiceConfiguration serviceConfiguration;
 	
@@ -114,6 +115,7 @@ public class ServiceConfigurationView implements Serializable{
 		setHidden(serviceConfiguration.isHidden());
 		setPinToNodes(serviceConfiguration.getPinToNodes());
 		setRunOnAllNodes(serviceConfiguration.isRunOnAllNodes());
+		setShardedExecution(serviceConfiguration.isShardedExecution());
 	}
 	
 	/**
@@ -133,6 +135,7 @@ public class ServiceConfigurationView implements Serializable{
 		retval.setWorkerProperties(getWorkerType().getProperties(errorMessages));
 		retval.setPinToNodes(getPinToNodes());
 		retval.setRunOnAllNodes(isRunOnAllNodes());
+		retval.setShardedExecution(isShardedExecution());
 		return retval;
 	}
 
@@ -423,6 +426,14 @@ public class ServiceConfigurationView implements Serializable{
 	    this.runOnAllNodes = runOnAllNodes;
 	}
 
+	public boolean isShardedExecution() {
+	    return shardedExecution;
+	}
+
+	public void setShardedExecution(boolean shardedExecution) {
+	    this.shardedExecution = shardedExecution;
+	}
+
 	public List<SelectItem> getNodesInCluster() {
 		final List<SelectItem> ret = new LinkedList<SelectItem>();
 		final Set<String> nodes = EjbcaJSFHelper.getBean().getEjbcaWebBean().getGlobalConfiguration().getNodesInCluster();  
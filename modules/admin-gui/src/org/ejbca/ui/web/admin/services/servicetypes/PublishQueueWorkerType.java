@@ -32,6 +32,7 @@ public class PublishQueueWorkerType extends BaseEmailNotifyingWorkerType {
     public static final String NAME = "PUBLISHQUEUEWORKER";
 
 	private List<String> selectedPublisherIdsToCheck = new ArrayList<String>();
+	private boolean parallelDrain = false;
 
 	public PublishQueueWorkerType(){
 		super(NAME, "publishqueueprocessworker.jsp", PublishQueueProcessWorker.class.getName());
@@ -57,6 +58,7 @@ public class PublishQueueWorkerType extends BaseEmailNotifyingWorkerType {
 			}
 		}
 		ret.setProperty(PublishQueueProcessWorker.PROP_PUBLISHER_IDS, publisherIdString);
+		ret.setProperty(PublishQueueProcessWorker.PROP_PARALLEL_DRAIN, Boolean.toString(parallelDrain));
 		return ret;
 	}
 	
@@ -70,6 +72,7 @@ public class PublishQueueWorkerType extends BaseEmailNotifyingWorkerType {
 		for(int i=0;i<publisherIdsToCheck.length;i++){
 			selectedPublisherIdsToCheck.add(publisherIdsToCheck[i]);
 		}
+		parallelDrain = Boolean.valueOf(properties.getProperty(PublishQueueProcessWorker.PROP_PARALLEL_DRAIN, "false"));
 	}
 
     public List<String> getSelectedPublisherIdsToCheck() {
@@ -80,4 +83,12 @@ public class PublishQueueWorkerType extends BaseEmailNotifyingWorkerType {
         this.selectedPublisherIdsToCheck = selectedPublisherIdsToCheck;
     }
 
+    public boolean isParallelDrain() {
+        return parallelDrain;
+    }
+
+    public void setParallelDrain(boolean parallelDrain) {
+        this.parallelDrain = parallelDrain;
+    }
+
 }
@@ -0,0 +1,111 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ca;
+
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.bouncycastle.jce.X509KeyUsage;
+import org.cesecore.certificates.ca.catoken.CAToken;
+import org.cesecore.certificates.ca.catoken.CATokenConstants;
+import org.cesecore.certificates.certificate.certextensions.AvailableCustomCertificateExtensionsConfiguration;
+import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
+import org.cesecore.certificates.util.AlgorithmConstants;
+import org.cesecore.keys.token.CryptoToken;
+import org.cesecore.keys.token.CryptoTokenFactory;
+import org.cesecore.keys.token.SoftCryptoToken;
+import org.cesecore.keys.util.KeyTools;
+import org.cesecore.util.CertTools;
+import org.cesecore.util.CryptoProviderTools;
+import org.cesecore.util.StringTools;
+
+/**
+ * A self signed X509CA with its keys in an auto-activated soft crypto token, set up the same way as in X509CATest, for use by the
+ * benchmarks.
+ *
+ * @version $Id$
+ */
+public class BenchmarkCa {
+
+    private final CryptoToken cryptoToken;
+    private final X509CA x509ca;
+    private final AvailableCustomCertificateExtensionsConfiguration cceConfig = new AvailableCustomCertificateExtensionsConfiguration();
+
+    /**
+     * @param subjectDn the subject DN of the CA
+     * @param signatureAlgorithm for example AlgorithmConstants.SIGALG_SHA256_WITH_RSA
+     * @param keySpec the key specification matching the signature algorithm, for example "2048" or "secp256r1"
+     */
+    public BenchmarkCa(final String subjectDn, final String signatureAlgorithm, final String keySpec) throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        final Properties cryptoTokenProperties = new Properties();
+        cryptoTokenProperties.setProperty(CryptoToken.AUTOACTIVATE_PIN_PROPERTY, "foo1234");
+        cryptoToken = CryptoTokenFactory.createCryptoToken(SoftCryptoToken.class.getName(), cryptoTokenProperties, null, 17, "BenchmarkCa");
+        cryptoToken.generateKeyPair(keySpec, CAToken.SOFTPRIVATESIGNKEYALIAS);
+        cryptoToken.generateKeyPair(keySpec, CAToken.SOFTPRIVATEDECKEYALIAS);
+        final Properties caTokenProperties = new Properties();
+        caTokenProperties.setProperty(CATokenConstants.CAKEYPURPOSE_CERTSIGN_STRING, CAToken.SOFTPRIVATESIGNKEYALIAS);
+        caTokenProperties.setProperty(CATokenConstants.CAKEYPURPOSE_CRLSIGN_STRING, CAToken.SOFTPRIVATESIGNKEYALIAS);
+        caTokenProperties.setProperty(CATokenConstants.CAKEYPURPOSE_DEFAULT_STRING, CAToken.SOFTPRIVATEDECKEYALIAS);
+        final CAToken caToken = new CAToken(cryptoToken.getId(), caTokenProperties);
+        caToken.setKeySequence(CAToken.DEFAULT_KEYSEQUENCE);
+        caToken.setKeySequenceFormat(StringTools.KEY_SEQUENCE_FORMAT_NUMERIC);
+        caToken.setSignatureAlgorithm(signatureAlgorithm);
+        caToken.setEncryptionAlgorithm(AlgorithmConstants.SIGALG_SHA256_WITH_RSA);
+        final X509CAInfo cainfo = new X509CAInfo(subjectDn, "Benchmark", CAConstants.CA_ACTIVE, CertificateProfileConstants.CERTPROFILE_FIXED_ROOTCA,
+                "3650d", CAInfo.SELFSIGNED, null, caToken);
+        cainfo.setDescription("Benchmark CA");
+        x509ca = new X509CA(cainfo);
+        x509ca.setCAToken(caToken);
+        final PublicKey publicKey = cryptoToken.getPublicKey(caToken.getAliasFromPurpose(CATokenConstants.CAKEYPURPOSE_CERTSIGN));
+        final PrivateKey privateKey = cryptoToken.getPrivateKey(caToken.getAliasFromPurpose(CATokenConstants.CAKEYPURPOSE_CERTSIGN));
+        final X509Certificate caCertificate = CertTools.genSelfCertForPurpose(subjectDn, 3650L, null, privateKey, publicKey, signatureAlgorithm, true,
+                X509KeyUsage.keyCertSign + X509KeyUsage.cRLSign, null, null, "BC");
+        final List<Certificate> certificateChain = new ArrayList<Certificate>();
+        certificateChain.add(caCertificate);
+        x509ca.setCertificateChain(certificateChain);
+    }
+
+    public CryptoToken getCryptoToken() {
+        return cryptoToken;
+    }
+
+    public X509CA getX509CA() {
+        return x509ca;
+    }
+
+    public X509Certificate getCACertificate() {
+        return (X509Certificate) x509ca.getCACertificate();
+    }
+
+    /** @return the private key used for signing certificates, CRLs and OCSP responses */
+    public PrivateKey getSigningKey() throws Exception {
+        return cryptoToken.getPrivateKey(x509ca.getCAToken().getAliasFromPurpose(CATokenConstants.CAKEYPURPOSE_CERTSIGN));
+    }
+
+    public AvailableCustomCertificateExtensionsConfiguration getCustomCertificateExtensionsConfiguration() {
+        return cceConfig;
+    }
+
+    /** @return a new key pair of the same type as the keys of the CA */
+    public static KeyPair generateKeyPair(final String keySpec) throws Exception {
+        final String keyAlgorithm = keySpec.matches("\\d+") ? AlgorithmConstants.KEYALGORITHM_RSA : AlgorithmConstants.KEYALGORITHM_ECDSA;
+        return KeyTools.genKeys(keySpec, keyAlgorithm);
+    }
+}
@@ -0,0 +1,102 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ca;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.cert.X509CRLHolder;
+import org.cesecore.certificates.certificateprofile.CertificateProfile;
+import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.endentity.EndEntityConstants;
+import org.cesecore.certificates.endentity.EndEntityInformation;
+import org.cesecore.certificates.endentity.EndEntityType;
+import org.cesecore.certificates.endentity.EndEntityTypes;
+import org.cesecore.certificates.util.AlgorithmConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of certificate and CRL generation by X509CA, with the CA keys in a soft crypto token.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class X509CABenchmark {
+
+    /** Signature algorithm and key specification of the CA */
+    @Param({ AlgorithmConstants.SIGALG_SHA256_WITH_RSA + ":2048", AlgorithmConstants.SIGALG_SHA256_WITH_ECDSA + ":secp256r1" })
+    public String caKeys;
+
+    /** Number of revoked certificates on the CRL */
+    @Param({ "0", "1000", "100000" })
+    public int revokedCertificates;
+
+    private BenchmarkCa ca;
+    private EndEntityInformation endEntity;
+    private KeyPair endEntityKeyPair;
+    private CertificateProfile certificateProfile;
+    private Collection<RevokedCertInfo> revokedCertInfos;
+    private int crlNumber = 1;
+
+    @Setup
+    public void setup() throws Exception {
+        final String[] algorithmAndKeySpec = caKeys.split(":");
+        ca = new BenchmarkCa("CN=Benchmark CA,O=EJBCA Benchmark,C=SE", algorithmAndKeySpec[0], algorithmAndKeySpec[1]);
+        endEntity = new EndEntityInformation("benchmark", "CN=Benchmark User,OU=Benchmarks,O=EJBCA Benchmark,C=SE", ca.getX509CA().getCAId(),
+                "dNSName=benchmark.example.com,rfc822Name=benchmark@example.com", "benchmark@example.com", new EndEntityType(EndEntityTypes.ENDUSER),
+                0, CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER, EndEntityConstants.TOKEN_USERGEN, 0, null);
+        endEntityKeyPair = BenchmarkCa.generateKeyPair(algorithmAndKeySpec[1]);
+        certificateProfile = new CertificateProfile(CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER);
+        final Random random = new Random(1);
+        final long now = System.currentTimeMillis();
+        revokedCertInfos = new ArrayList<RevokedCertInfo>(revokedCertificates);
+        for (int i = 0; i < revokedCertificates; i++) {
+            final byte[] fingerprint = String.format("%040x", Integer.valueOf(i)).getBytes();
+            revokedCertInfos.add(new RevokedCertInfo(fingerprint, new BigInteger(64, random).toByteArray(), now - random.nextInt(1000000000),
+                    RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, now + 365L * 24 * 3600 * 1000));
+        }
+    }
+
+    @Benchmark
+    public Certificate generateCertificate() throws Exception {
+        return ca.getX509CA().generateCertificate(ca.getCryptoToken(), endEntity, endEntityKeyPair.getPublic(), 0, null, "365d", certificateProfile,
+                "00000", ca.getCustomCertificateExtensionsConfiguration());
+    }
+
+    @Benchmark
+    public byte[] generateCRL() throws Exception {
+        final X509CRLHolder crl = ca.getX509CA().generateCRL(ca.getCryptoToken(), revokedCertInfos, crlNumber++);
+        return crl.getEncoded();
+    }
+}
@@ -0,0 +1,69 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ca.internal;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+import org.cesecore.config.ConfigurationHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of serial number generation from as many threads as there are processors, as when many certificates are issued concurrently.
+ * A single random generator (rngInstances=1) corresponds to the generator before it was made to use several, while 0 uses the default of
+ * one random generator per processor. The number of threads can be changed with the JMH option -t.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(Threads.MAX)
+public class SernoGeneratorBenchmark {
+
+    /** Value of ca.rnginstances, 0 for the default */
+    @Param({ "1", "0" })
+    public String rngInstances;
+
+    /** Value of ca.rngalgorithm */
+    @Param({ "SHA1PRNG", "default" })
+    public String algorithm;
+
+    private SernoGenerator sernoGenerator;
+
+    @Setup
+    public void setup() {
+        ConfigurationHolder.updateConfiguration("ca.rnginstances", rngInstances);
+        ConfigurationHolder.updateConfiguration("ca.rngalgorithm", algorithm);
+        sernoGenerator = new SernoGeneratorRandom();
+    }
+
+    @Benchmark
+    public BigInteger getSerno() {
+        return sernoGenerator.getSerno();
+    }
+}
@@ -0,0 +1,80 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.cesecore.certificates.ca.BenchmarkCa;
+import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
+import org.cesecore.certificates.util.AlgorithmConstants;
+import org.cesecore.util.CertTools;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the database integrity protection of CertificateData rows. The protection implementation that is configured in
+ * databaseprotection.properties is benchmarked through calculateProtection(). Since that is a no-op when database protection is not available,
+ * HMAC-SHA256 over the protect string is benchmarked separately.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class CertificateDataProtectionBenchmark {
+
+    private CertificateData certificateData;
+    private SecretKeySpec hmacKey;
+
+    @Setup
+    public void setup() throws Exception {
+        final BenchmarkCa ca = new BenchmarkCa("CN=Benchmark Protection CA,O=EJBCA Benchmark,C=SE", AlgorithmConstants.SIGALG_SHA256_WITH_RSA, "2048");
+        final String caFingerprint = CertTools.getFingerprintAsString(ca.getCACertificate());
+        certificateData = new CertificateData(ca.getCACertificate(), ca.getCACertificate().getPublicKey(), "benchmark", caFingerprint,
+                CertificateConstants.CERT_ACTIVE, CertificateConstants.CERTTYPE_ROOTCA, CertificateProfileConstants.CERTPROFILE_FIXED_ROOTCA, 0, null,
+                System.currentTimeMillis(), true, true);
+        hmacKey = new SecretKeySpec("foo123benchmarkkey".getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+    }
+
+    @Benchmark
+    public String protectString() {
+        return certificateData.getProtectString(0);
+    }
+
+    @Benchmark
+    public byte[] hmacProtectString() throws Exception {
+        final Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(hmacKey);
+        return mac.doFinal(certificateData.getProtectString(0).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public String calculateProtection() {
+        return certificateData.calculateProtection();
+    }
+}
@@ -0,0 +1,96 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp;
+
+import java.math.BigInteger;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPReqBuilder;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.Req;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.cert.ocsp.jcajce.JcaCertificateID;
+import org.bouncycastle.cert.ocsp.jcajce.JcaRespID;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.cesecore.certificates.ca.BenchmarkCa;
+import org.cesecore.certificates.util.AlgorithmConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the request parsing and response building done by OcspResponseGeneratorSessionBean for a single certificate, signed by the CA
+ * key in the same way as the session bean does it through HsmResponseThread. Status lookups are not included.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class OcspResponseBenchmark {
+
+    /** Signature algorithm and key specification of the CA that signs the responses */
+    @Param({ AlgorithmConstants.SIGALG_SHA256_WITH_RSA + ":2048", AlgorithmConstants.SIGALG_SHA256_WITH_ECDSA + ":secp256r1" })
+    public String caKeys;
+
+    private String signatureAlgorithm;
+    private PrivateKey signingKey;
+    private X509Certificate[] chain;
+    private RespID respId;
+    private byte[] encodedRequest;
+
+    @Setup
+    public void setup() throws Exception {
+        final String[] algorithmAndKeySpec = caKeys.split(":");
+        signatureAlgorithm = algorithmAndKeySpec[0];
+        final BenchmarkCa ca = new BenchmarkCa("CN=Benchmark OCSP CA,O=EJBCA Benchmark,C=SE", signatureAlgorithm, algorithmAndKeySpec[1]);
+        signingKey = ca.getSigningKey();
+        chain = new X509Certificate[] { ca.getCACertificate() };
+        respId = new JcaRespID(ca.getCACertificate().getPublicKey(), SHA1DigestCalculator.buildSha1Instance());
+        final CertificateID certId = new JcaCertificateID(SHA1DigestCalculator.buildSha1Instance(), ca.getCACertificate(),
+                new BigInteger("7a3f5b2c9d1e4f60", 16));
+        encodedRequest = new OCSPReqBuilder().addRequest(certId).build().getEncoded();
+    }
+
+    @Benchmark
+    public byte[] buildResponse() throws Exception {
+        final OCSPReq ocspRequest = new OCSPReq(encodedRequest);
+        final Date now = new Date();
+        final BasicOCSPRespBuilder basicRes = new BasicOCSPRespBuilder(respId);
+        for (final Req req : ocspRequest.getRequestList()) {
+            basicRes.addResponse(req.getCertID(), CertificateStatus.GOOD, now, null, null);
+        }
+        final BasicOCSPResp basicResp = new HsmResponseThread(basicRes, signatureAlgorithm, signingKey, chain,
+                BouncyCastleProvider.PROVIDER_NAME, now).call();
+        return new OCSPRespBuilder().build(OCSPRespBuilder.SUCCESSFUL, basicResp).getEncoded();
+    }
+}
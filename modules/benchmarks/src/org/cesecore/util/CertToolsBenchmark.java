@@ -0,0 +1,61 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the DN string handling in CertTools that is used on every issuance, status lookup and CRL generation.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CertToolsBenchmark {
+
+    @Param({ "CN=Benchmark User,O=EJBCA Benchmark,C=SE",
+            "E=benchmark@example.com,CN=Benchmark User,SN=12345,OU=Unit 1,OU=Unit 2,O=EJBCA Benchmark,L=Stockholm,ST=Stockholm,C=SE",
+            "c=SE, o=EJBCA Benchmark, ou=Unit\\, 1, cn=Benchmark User, serialNumber=12345" })
+    public String dn;
+
+    @Setup
+    public void setup() {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+    }
+
+    @Benchmark
+    public String stringToBCDNString() {
+        return CertTools.stringToBCDNString(dn);
+    }
+
+    @Benchmark
+    public String getPartFromDN() {
+        return CertTools.getPartFromDN(dn, "CN");
+    }
+}
@@ -0,0 +1,87 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.util;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of CompressedCollection holding the revoked certificates of a CRL, as done when a CRL is generated.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class CompressedCollectionBenchmark {
+
+    /** Number of revoked certificates */
+    @Param({ "1000", "100000" })
+    public int size;
+
+    private RevokedCertInfo[] revokedCertInfos;
+    private CompressedCollection<RevokedCertInfo> compressedCollection;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(1);
+        final long now = System.currentTimeMillis();
+        revokedCertInfos = new RevokedCertInfo[size];
+        for (int i = 0; i < size; i++) {
+            final byte[] fingerprint = String.format("%040x", Integer.valueOf(i)).getBytes();
+            revokedCertInfos[i] = new RevokedCertInfo(fingerprint, new BigInteger(64, random).toByteArray(), now - random.nextInt(1000000000),
+                    RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, now + 365L * 24 * 3600 * 1000);
+        }
+        compressedCollection = fill();
+    }
+
+    private CompressedCollection<RevokedCertInfo> fill() {
+        final CompressedCollection<RevokedCertInfo> ret = new CompressedCollection<RevokedCertInfo>();
+        for (final RevokedCertInfo revokedCertInfo : revokedCertInfos) {
+            ret.add(revokedCertInfo);
+        }
+        ret.closeForWrite();
+        return ret;
+    }
+
+    @Benchmark
+    public CompressedCollection<RevokedCertInfo> addAndClose() {
+        return fill();
+    }
+
+    @Benchmark
+    public long iterate() {
+        long ret = 0;
+        for (final RevokedCertInfo revokedCertInfo : compressedCollection) {
+            ret += revokedCertInfo.getRevocationDate().getTime();
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,100 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.util;
+
+import java.beans.XMLDecoder;
+import java.beans.XMLEncoder;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.cesecore.certificates.certificateprofile.CertificateProfile;
+import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of decoding the data map of a certificate profile, as stored in ProfileData, from the XML format with XMLDecoder and
+ * SecureXMLDecoder, and from the compact format of CompactMapSerializer. Run with -Dbenchmarks.args="DataMapEncoding -prof gc" to
+ * also measure the allocation rate.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class DataMapEncodingBenchmark {
+
+    private Base64PutHashMap dataMap;
+    private byte[] xmlData;
+    private String compactData;
+
+    @Setup
+    public void setup() {
+        final CertificateProfile profile = new CertificateProfile(CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER);
+        dataMap = new Base64PutHashMap();
+        dataMap.putAll((Map<?, ?>) profile.saveData());
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (final XMLEncoder encoder = new XMLEncoder(baos)) {
+            encoder.writeObject(dataMap);
+        }
+        xmlData = baos.toByteArray();
+        compactData = CompactMapSerializer.encode(dataMap);
+    }
+
+    @Benchmark
+    public Object decodeXml() {
+        try (final XMLDecoder decoder = new XMLDecoder(new ByteArrayInputStream(xmlData))) {
+            return decoder.readObject();
+        }
+    }
+
+    @Benchmark
+    public Object decodeSecureXml() throws Exception {
+        try (final SecureXMLDecoder decoder = new SecureXMLDecoder(new ByteArrayInputStream(xmlData))) {
+            return decoder.readObject();
+        }
+    }
+
+    @Benchmark
+    public Object decodeCompact() {
+        return CompactMapSerializer.decode(compactData);
+    }
+
+    @Benchmark
+    public String encodeXml() {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (final XMLEncoder encoder = new XMLEncoder(baos)) {
+            encoder.writeObject(dataMap);
+        }
+        return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String encodeCompact() {
+        return CompactMapSerializer.encode(dataMap);
+    }
+}
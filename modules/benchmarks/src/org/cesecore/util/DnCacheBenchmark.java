@@ -0,0 +1,102 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.util;
+
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.cesecore.certificates.util.AlgorithmConstants;
+import org.cesecore.keys.util.KeyTools;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark of the DN handling done by CertTools for one issuance and for one OCSP request, with and without the DnCache.
+ *
+ * The issuance does what the CA, the profile checks and the CertificateData constructor do with the subject DN of the end entity
+ * and the certificate. The OCSP request does what OcspResponseGeneratorSessionBean does with the signer certificate of a signed
+ * request and the CA certificate. The same DNs are used over and over, as when certificates are issued for many end entities under
+ * a few CAs.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class DnCacheBenchmark {
+
+    /** Value of dncache.enabled */
+    @Param({ "false", "true" })
+    public String dnCache;
+
+    @Param({ "E=benchmark@example.com,CN=Benchmark User,SN=12345,OU=Unit 1,OU=Unit 2,O=EJBCA Benchmark,L=Stockholm,ST=Stockholm,C=SE" })
+    public String dn;
+
+    private X509Certificate certificate;
+    private X509Certificate caCertificate;
+
+    @Setup
+    public void setup() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        final KeyPair keyPair = KeyTools.genKeys("secp256r1", AlgorithmConstants.KEYALGORITHM_ECDSA);
+        certificate = CertTools.genSelfCert(dn, 365, null, keyPair.getPrivate(), keyPair.getPublic(), AlgorithmConstants.SIGALG_SHA256_WITH_ECDSA,
+                false);
+        caCertificate = CertTools.genSelfCert("CN=Benchmark CA,O=EJBCA Benchmark,C=SE", 365, null, keyPair.getPrivate(), keyPair.getPublic(),
+                AlgorithmConstants.SIGALG_SHA256_WITH_ECDSA, true);
+        DnCache.INSTANCE.clear();
+        DnCache.INSTANCE.setEnabled(Boolean.parseBoolean(dnCache));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        DnCache.INSTANCE.setEnabled(false);
+    }
+
+    @Benchmark
+    public void issuance(final Blackhole blackhole) {
+        final String subjectDn = CertTools.stringToBCDNString(dn);
+        blackhole.consume(subjectDn);
+        blackhole.consume(CertTools.getPartFromDN(subjectDn, "CN"));
+        blackhole.consume(CertTools.getPartFromDN(subjectDn, "SN"));
+        final X500Name subject = CertTools.stringToBcX500Name(subjectDn, CeSecoreNameStyle.INSTANCE, true);
+        blackhole.consume(subject);
+        blackhole.consume(CertTools.stringToBcX500Name(CertTools.getSubjectDN(caCertificate), CeSecoreNameStyle.INSTANCE, true));
+        blackhole.consume(CertTools.getSubjectDN(certificate));
+        blackhole.consume(CertTools.getIssuerDN(certificate));
+    }
+
+    @Benchmark
+    public void ocspRequest(final Blackhole blackhole) {
+        blackhole.consume(CertTools.getIssuerDN(certificate));
+        blackhole.consume(CertTools.getSubjectDN(certificate));
+        blackhole.consume(CertTools.getSubjectDN(caCertificate));
+        blackhole.consume(CertTools.stringToBCDNString(caCertificate.getSubjectX500Principal().toString()));
+    }
+}
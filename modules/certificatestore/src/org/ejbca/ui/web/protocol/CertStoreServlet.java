@@ -13,10 +13,13 @@
 
 package org.ejbca.ui.web.protocol;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.ejb.EJB;
 import javax.mail.MessagingException;
@@ -51,6 +54,53 @@ public class CertStoreServlet extends StoreServletBase {
 
 	private final static Logger log = Logger.getLogger(CertStoreServlet.class);
 
+	/**
+	 * Encoded responses by the kind and hash of the request. A response is used for as long as the CA certificate cache returns the
+	 * same certificate objects for the request, which it does until it is reloaded.
+	 */
+	private final Map<String, EncodedResponse> encodedResponses = new ConcurrentHashMap<String, EncodedResponse>();
+
+	/** An encoded response body for one or more certificates, and the values of the HTTP headers that are sent with it */
+	private static class EncodedResponse {
+		final X509Certificate certs[];
+		/** The name used in the file names of the parts in a multipart body, or null for a single certificate */
+		final String name;
+		final String contentType;
+		final byte body[];
+		final String eTag;
+		final long lastModified;
+
+		EncodedResponse(X509Certificate certs[], String name, String contentType, byte body[]) throws CertificateEncodingException {
+			this.certs = certs;
+			this.name = name;
+			this.contentType = contentType;
+			this.body = body;
+			// The entity tag does not depend on the multipart boundary, so that it stays the same if the body is encoded again
+			final ByteArrayOutputStream encodedCerts = new ByteArrayOutputStream();
+			long notBefore = -1;
+			for ( final X509Certificate cert : certs ) {
+				final byte encoded[] = cert.getEncoded();
+				encodedCerts.write(encoded, 0, encoded.length);
+				notBefore = Math.max(notBefore, cert.getNotBefore().getTime());
+			}
+			this.eTag = "\"" + CertTools.getFingerprintAsString(encodedCerts.toByteArray()) + "\"";
+			this.lastModified = notBefore;
+		}
+
+		/** @return true if this is the response for the same certificate objects and name */
+		boolean isFor(X509Certificate others[], String otherName) {
+			if ( others.length!=this.certs.length || (this.name==null ? otherName!=null : !this.name.equals(otherName)) ) {
+				return false;
+			}
+			for ( int i=0; i<others.length; i++ ) {
+				if ( others[i]!=this.certs[i] ) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
 	@Override
 	public void init(ServletConfig config) throws ServletException {
 		super.init(config);
@@ -58,14 +108,16 @@ public class CertStoreServlet extends StoreServletBase {
 
 	@Override
 	public void iHash(String iHash, HttpServletResponse resp, HttpServletRequest req) throws IOException, ServletException {
-	    returnCerts( this.certCache.findLatestByIssuerDN(HashID.getFromB64(iHash)), resp, iHash );
+	    final HashID id = HashID.getFromB64(iHash);
+	    returnCerts( this.certCache.findLatestByIssuerDN(id), req, resp, iHash, "i"+id.getKey() );
 		return;
 	}
 
 
 	@Override
 	public void sKIDHash(String sKIDHash, HttpServletResponse resp, HttpServletRequest req, String name) throws IOException, ServletException {
-	    returnCert( this.certCache.findBySubjectKeyIdentifier(HashID.getFromB64(sKIDHash)), resp, name );
+	    final HashID id = HashID.getFromB64(sKIDHash);
+	    returnCert( this.certCache.findBySubjectKeyIdentifier(id), req, resp, name, "k"+id.getKey() );
 	}
 
 	@Override
@@ -75,8 +127,9 @@ public class CertStoreServlet extends StoreServletBase {
 
 	@Override
 	public void sHash(String sHash, HttpServletResponse resp, HttpServletRequest req) throws IOException, ServletException {
-	    final X509Certificate cert = this.certCache.findLatestBySubjectDN(HashID.getFromB64(sHash));
-		returnCert( cert, resp, sHash);
+	    final HashID id = HashID.getFromB64(sHash);
+	    final X509Certificate cert = this.certCache.findLatestBySubjectDN(id);
+		returnCert( cert, req, resp, sHash, "s"+id.getKey() );
 	}
 
 	@Override
@@ -93,50 +146,72 @@ public class CertStoreServlet extends StoreServletBase {
 		return "CA certificates";
 	}
 
-	private void returnCert(X509Certificate cert, HttpServletResponse resp, String name) throws IOException, ServletException {
+	private void returnCert(X509Certificate cert, HttpServletRequest req, HttpServletResponse resp, String name, String key) throws IOException, ServletException {
 		if (cert==null) {
 			resp.sendError(HttpServletResponse.SC_NO_CONTENT, "No certificate with hash: "+HTMLTools.htmlescape(name));
 			return;
 		}
-		final byte encoded[];
-		try {
-			encoded = cert.getEncoded();
-		} catch (CertificateEncodingException e) {
-			throw new ServletException(e);
+		final X509Certificate certs[] = new X509Certificate[] { cert };
+		EncodedResponse response = this.encodedResponses.get(key);
+		if ( response==null || !response.isFor(certs, null) ) {
+			try {
+				response = new EncodedResponse(certs, null, "application/pkix-cert", cert.getEncoded());
+			} catch (CertificateEncodingException e) {
+				throw new ServletException(e);
+			}
+			this.encodedResponses.put(key, response);
 		}
-		resp.setContentType("application/pkix-cert");
+		if ( isNotModified(req, resp, response.eTag, response.lastModified) ) {
+			return;
+		}
+		resp.setContentType(response.contentType);
 		resp.setHeader("Content-disposition", "attachment; filename=\"" + StringTools.stripFilename(name+".der") + "\"");
-		resp.setContentLength(encoded.length);
-		resp.getOutputStream().write(encoded);
+		resp.setContentLength(response.body.length);
+		resp.getOutputStream().write(response.body);
 	}
 	
-	private void returnCerts(X509Certificate certs[], HttpServletResponse resp, String name) throws IOException, ServletException {
+	private void returnCerts(X509Certificate certs[], HttpServletRequest req, HttpServletResponse resp, String name, String key) throws IOException, ServletException {
 		if (certs==null) {
 			resp.sendError(HttpServletResponse.SC_NO_CONTENT, "No certificates with issuer hash DN: "+HTMLTools.htmlescape(name));
 			return;
 		}
-		final Multipart mp = new MimeMultipart();// mixed is default
-		try {
-			resp.setContentType(mp.getContentType());
-			for( int i=0; i<certs.length; i++ ) {
-				final String filename = "cert" + name + '-' + i + ".der";
-				if (log.isDebugEnabled()) {
-					log.debug("Returning certificate with issuerDN '"+CertTools.getIssuerDN(certs[i])+"' and subjectDN '"+CertTools.getSubjectDN(certs[i])+"'. Filename="+filename);
-				}
-				final InternetHeaders headers = new InternetHeaders();
-				headers.addHeader("Content-type", "application/pkix-cert");
-				headers.addHeader("Content-disposition", "attachment; filename=\""+StringTools.stripFilename(filename)+"\"");
-				mp.addBodyPart(new MimeBodyPart(headers,certs[i].getEncoded()));
+		EncodedResponse response = this.encodedResponses.get(key);
+		if ( response==null || !response.isFor(certs, name) ) {
+			try {
+				response = encodeCerts(certs, name);
+			} catch (CertificateEncodingException e) {
+				throw new ServletException(e);
+			} catch (MessagingException e) {
+				throw new ServletException(e);
 			}
-			if (log.isTraceEnabled()) {
-				log.trace("content type: "+mp.getContentType());				
+			this.encodedResponses.put(key, response);
+		}
+		if ( isNotModified(req, resp, response.eTag, response.lastModified) ) {
+			return;
+		}
+		resp.setContentType(response.contentType);
+		resp.setContentLength(response.body.length);
+		resp.getOutputStream().write(response.body);
+		resp.flushBuffer();
+	}
+
+	private EncodedResponse encodeCerts(X509Certificate certs[], String name) throws CertificateEncodingException, MessagingException, IOException {
+		final Multipart mp = new MimeMultipart();// mixed is default
+		for( int i=0; i<certs.length; i++ ) {
+			final String filename = "cert" + name + '-' + i + ".der";
+			if (log.isDebugEnabled()) {
+				log.debug("Encoding certificate with issuerDN '"+CertTools.getIssuerDN(certs[i])+"' and subjectDN '"+CertTools.getSubjectDN(certs[i])+"'. Filename="+filename);
 			}
-			mp.writeTo(resp.getOutputStream());
-			resp.flushBuffer();
-		} catch (CertificateEncodingException e) {
-			throw new ServletException(e);
-		} catch (MessagingException e) {
-			throw new ServletException(e);
+			final InternetHeaders headers = new InternetHeaders();
+			headers.addHeader("Content-type", "application/pkix-cert");
+			headers.addHeader("Content-disposition", "attachment; filename=\""+StringTools.stripFilename(filename)+"\"");
+			mp.addBodyPart(new MimeBodyPart(headers,certs[i].getEncoded()));
+		}
+		if (log.isTraceEnabled()) {
+			log.trace("content type: "+mp.getContentType());				
 		}
+		final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		mp.writeTo(body);
+		return new EncodedResponse(certs, name, mp.getContentType(), body.toByteArray());
 	}
 }
@@ -0,0 +1,60 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.cesecore.audit.audit.AuditExporter;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test JSON Lines exporter implementation.
+ *
+ * @version $Id$
+ */
+public class AuditExporterJsonLinesTest {
+
+    @Test
+    public void testExportAndParse() throws IOException, ParseException {
+        final String KEY1 = "key1";
+        final String KEY2 = "key2";
+        final String KEY3 = "key3";
+        final Long VALUE1 = Long.MIN_VALUE;
+        final String VALUE2 = "ĞİŞğışÅÄÖåäözxcvbnm;<>&!;&lt;&amp;\"\\\n\t\u0001{}";
+        final AuditExporter auditExporter = new AuditExporterJsonLines();
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        auditExporter.setOutputStream(baos);
+        for (int i = 0; i < 2; i++) {
+            auditExporter.writeStartObject();
+            auditExporter.writeField(KEY1, VALUE1);
+            auditExporter.writeField(KEY2, VALUE2);
+            auditExporter.writeField(KEY3, null);
+            auditExporter.writeEndObject();
+        }
+        auditExporter.close();
+        final String[] lines = baos.toString("UTF8").split("\n");
+        Assert.assertEquals("There should be one line per object", 2, lines.length);
+        for (final String line : lines) {
+            final JSONObject parsed = (JSONObject) new JSONParser().parse(line);
+            Assert.assertEquals(VALUE1, parsed.get(KEY1));
+            Assert.assertEquals(VALUE2, parsed.get(KEY2));
+            Assert.assertTrue(parsed.containsKey(KEY3));
+            Assert.assertNull(parsed.get(KEY3));
+        }
+    }
+}
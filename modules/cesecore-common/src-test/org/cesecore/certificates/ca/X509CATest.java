@@ -12,6 +12,7 @@
  *************************************************************************/
 package org.cesecore.certificates.ca;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -98,6 +99,7 @@ import org.cesecore.certificates.certificateprofile.CertificatePolicy;
 import org.cesecore.certificates.certificateprofile.CertificateProfile;
 import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
 import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.crl.StreamingCrlBuilder;
 import org.cesecore.certificates.endentity.EndEntityConstants;
 import org.cesecore.certificates.endentity.EndEntityInformation;
 import org.cesecore.certificates.endentity.EndEntityType;
@@ -415,6 +417,44 @@ public class X509CATest {
         assertNull("CRL has freshest crl extension", xcrl.getExtensionValue(Extension.freshestCRL.getId()));
     }
 
+    /**
+     * Tests that a CRL created with the streaming CRL builder has the same content as one from generateCRL.
+     */
+    @Test
+    public void testStreamingCRL() throws Exception {
+        final CryptoToken cryptoToken = getNewCryptoToken();
+        final X509CA ca = createTestCA(cryptoToken, CADN);
+        final X509CAInfo cainfo = (X509CAInfo) ca.getCAInfo();
+        cainfo.setUseCrlDistributionPointOnCrl(true);
+        cainfo.setDefaultCRLDistPoint("http://www.ejbca.org/foo/bar.crl");
+        ca.updateCA(cryptoToken, cainfo, cceConfig);
+
+        final Date revDate = new Date();
+        final Collection<RevokedCertInfo> revcerts = new ArrayList<RevokedCertInfo>();
+        for (int i = 1; i <= 10; i++) {
+            revcerts.add(new RevokedCertInfo(("fingerprint" + i).getBytes(), BigInteger.valueOf(i * 1000L).toByteArray(), revDate.getTime(),
+                    RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, revDate.getTime() + 3600000L));
+        }
+        final X509CRL expected = CertTools.getCRLfromByteArray(ca.generateCRL(cryptoToken, revcerts, 5).getEncoded());
+        final X509CRL xcrl;
+        final StreamingCrlBuilder crlBuilder = ca.createStreamingCRLBuilder(cryptoToken, 5);
+        try {
+            for (final RevokedCertInfo revcert : revcerts) {
+                crlBuilder.addCRLEntry(revcert.getUserCertificate(), revcert.getRevocationDate(), revcert.getReason());
+            }
+            xcrl = CertTools.getCRLfromByteArray(ca.signStreamingCRL(cryptoToken, crlBuilder));
+        } finally {
+            crlBuilder.close();
+        }
+        xcrl.verify(ca.getCACertificate().getPublicKey());
+        assertEquals(CADN, CertTools.getIssuerDN(xcrl));
+        assertEquals(5, CrlExtensions.getCrlNumber(xcrl).intValue());
+        assertEquals(expected.getNonCriticalExtensionOIDs(), xcrl.getNonCriticalExtensionOIDs());
+        assertArrayEquals(expected.getExtensionValue(Extension.issuingDistributionPoint.getId()),
+                xcrl.getExtensionValue(Extension.issuingDistributionPoint.getId()));
+        assertEquals(expected.getRevokedCertificates(), xcrl.getRevokedCertificates());
+    }
+
 	@Test
     public void testStoreAndLoadRSA() throws Exception {
 	    doTestStoreAndLoad(AlgorithmConstants.SIGALG_SHA256_WITH_RSA);
@@ -22,7 +22,16 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 import org.junit.Test;
@@ -149,6 +158,36 @@ public class SernoGeneratorTest {
         log.info("Creating "+noRounds*1000+" 8 octet serNos with "+algo+" took "+(end-start)+" ms, thats "+div+" ms per serno");
     }
     
+    /** Generate serial numbers from many threads at the same time, which use different random generators. */
+    @Test
+    public void testGenerateSernosConcurrently() throws Exception {
+        final SernoGenerator gen = new SernoGeneratorRandom();
+        final Set<BigInteger> sernos = Collections.newSetFromMap(new ConcurrentHashMap<BigInteger, Boolean>());
+        final ExecutorService executorService = Executors.newFixedThreadPool(16);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executorService.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int j = 0; j < 10000; j++) {
+                            final BigInteger serno = gen.getSerno();
+                            assertTrue("Invalid serial number " + serno.toString(16), ((SernoGeneratorRandom) gen).checkSernoValidity(serno));
+                            sernos.add(serno);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        assertEquals("Duplicate 64 bit serial numbers were generated.", 160000, sernos.size());
+    }
+
     private void generateSernos(final int nrOctets, final String algorithm, final int maxDups, final int roundsOf1000) throws Exception {
         // this will actually create a default RNG first (depending on configuration in cesecore.properties), which will be changed by setAlgorithm below
         SernoGenerator gen = SernoGeneratorRandom.instance();
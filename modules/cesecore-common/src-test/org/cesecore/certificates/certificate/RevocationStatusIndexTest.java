@@ -0,0 +1,150 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.config.ConfigurationHolder;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests of the in-memory revocation status index.
+ *
+ * @version $Id$
+ */
+public class RevocationStatusIndexTest {
+
+    private static final String ISSUER_DN = "CN=RevocationStatusIndexTest";
+
+    @After
+    public void tearDown() {
+        ConfigurationHolder.updateConfiguration("revocationindex.enabled", "false");
+        RevocationStatusIndex.INSTANCE.flush();
+    }
+
+    private static CertificateStatus active(final int certificateProfileId) {
+        return new CertificateStatus(CertificateStatus.OK.toString(), -1L, RevokedCertInfo.NOT_REVOKED, certificateProfileId);
+    }
+
+    private static CertificateStatus revoked(final long revocationDate, final int reason) {
+        return new CertificateStatus(CertificateStatus.REVOKED.toString(), revocationDate, reason, 1);
+    }
+
+    @Test
+    public void testContent() {
+        final RevocationStatusIndex.IssuerContent content = new RevocationStatusIndex.IssuerContent(Integer.MAX_VALUE, 0L);
+        // More than the initial size of the table of active certificates, and serial numbers longer than 128 bits
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(content.update("fp" + i, BigInteger.valueOf(i), CertificateConstants.CERT_ACTIVE, 0L, active(i)));
+            assertTrue(content.update("long" + i, BigInteger.ONE.shiftLeft(150).add(BigInteger.valueOf(i)), CertificateConstants.CERT_ACTIVE, 0L, active(i)));
+        }
+        assertEquals(10000, content.size());
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(CertificateStatus.OK, content.getStatus(BigInteger.valueOf(i)));
+            assertEquals(i, content.getStatus(BigInteger.valueOf(i)).certificateProfileId);
+            assertEquals(i, content.getStatus(BigInteger.ONE.shiftLeft(150).add(BigInteger.valueOf(i))).certificateProfileId);
+        }
+        assertNull("Unknown certificates should be read from the database.", content.getStatus(BigInteger.valueOf(5000)));
+        // Revoke, put on hold and reactivate
+        content.update("fp7", BigInteger.valueOf(7), CertificateConstants.CERT_REVOKED, 0L, revoked(1000L, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE));
+        assertEquals(CertificateStatus.REVOKED, content.getStatus(BigInteger.valueOf(7)));
+        assertEquals(RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, content.getStatus(BigInteger.valueOf(7)).revocationReason);
+        content.update("fp8", BigInteger.valueOf(8), CertificateConstants.CERT_REVOKED, 0L, revoked(2000L, RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD));
+        content.update("fp8", BigInteger.valueOf(8), CertificateConstants.CERT_ACTIVE, 0L,
+                new CertificateStatus(CertificateStatus.OK.toString(), 3000L, RevokedCertInfo.NOT_REVOKED, 8));
+        assertEquals(CertificateStatus.OK, content.getStatus(BigInteger.valueOf(8)));
+        assertEquals(10000, content.size());
+        content.remove(BigInteger.valueOf(9));
+        assertNull(content.getStatus(BigInteger.valueOf(9)));
+        assertEquals(9999, content.size());
+    }
+
+    @Test
+    public void testDeltaCrlEntries() {
+        final RevocationStatusIndex.IssuerContent content = new RevocationStatusIndex.IssuerContent(Integer.MAX_VALUE, 0L);
+        content.update("fp1", BigInteger.valueOf(1), CertificateConstants.CERT_REVOKED, 5000L, revoked(1000L, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE));
+        content.update("fp2", BigInteger.valueOf(2), CertificateConstants.CERT_REVOKED, 5000L, revoked(3000L, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE));
+        // Reactivated after being on hold, so it must be removed from the CRL
+        content.update("fp3", BigInteger.valueOf(3), CertificateConstants.CERT_ACTIVE, 5000L,
+                new CertificateStatus(CertificateStatus.OK.toString(), 4000L, RevokedCertInfo.NOT_REVOKED, 1));
+        // Revoked and archived certificates are not on delta CRLs
+        content.update("fp4", BigInteger.valueOf(4), CertificateConstants.CERT_ARCHIVED, 5000L, revoked(4000L, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE));
+        content.update("fp5", BigInteger.valueOf(5), CertificateConstants.CERT_ACTIVE, 5000L, active(1));
+        List<RevokedCertInfo> entries = content.getDeltaCrlEntries(2000L, Collections.<BigInteger>emptySet());
+        assertEquals(2, entries.size());
+        for (final RevokedCertInfo entry : entries) {
+            if (entry.getUserCertificate().equals(BigInteger.valueOf(2))) {
+                assertEquals(RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, entry.getReason());
+            } else {
+                assertEquals(BigInteger.valueOf(3), entry.getUserCertificate());
+                assertEquals(RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL, entry.getReason());
+            }
+        }
+        entries = content.getDeltaCrlEntries(2000L, Collections.singleton(BigInteger.valueOf(2)));
+        assertEquals(1, entries.size());
+    }
+
+    @Test
+    public void testMaxEntries() {
+        final RevocationStatusIndex.IssuerContent content = new RevocationStatusIndex.IssuerContent(2, 0L);
+        assertTrue(content.update("fp1", BigInteger.valueOf(1), CertificateConstants.CERT_ACTIVE, 0L, active(1)));
+        assertTrue(content.update("fp2", BigInteger.valueOf(2), CertificateConstants.CERT_REVOKED, 0L, revoked(1000L, 0)));
+        assertFalse(content.update("fp3", BigInteger.valueOf(3), CertificateConstants.CERT_ACTIVE, 0L, active(1)));
+        assertTrue("Known certificates can still be updated.", content.update("fp1", BigInteger.valueOf(1), CertificateConstants.CERT_REVOKED, 0L,
+                revoked(1000L, 0)));
+    }
+
+    @Test
+    public void testIssuerLifeCycle() {
+        final RevocationStatusIndex index = RevocationStatusIndex.INSTANCE;
+        final BigInteger serialNumber = BigInteger.valueOf(4711);
+        assertNull(index.getStatus(ISSUER_DN, serialNumber));
+        assertTrue("Nothing should be loaded while the index is disabled.", index.getIssuersToLoad().isEmpty());
+        ConfigurationHolder.updateConfiguration("revocationindex.enabled", "true");
+        assertNull(index.getStatus(ISSUER_DN, serialNumber));
+        assertEquals(Collections.singletonList(ISSUER_DN), index.getIssuersToLoad());
+        final long loadStartTime = System.currentTimeMillis();
+        final RevocationStatusIndex.IssuerContent content = new RevocationStatusIndex.IssuerContent(Integer.MAX_VALUE, loadStartTime);
+        content.update("fp", serialNumber, CertificateConstants.CERT_ACTIVE, 0L, active(1));
+        index.setLoaded(ISSUER_DN, content, loadStartTime);
+        assertTrue(index.isLoaded(ISSUER_DN));
+        assertTrue(index.getIssuersToLoad().isEmpty());
+        assertEquals(CertificateStatus.OK, index.getStatus(ISSUER_DN, serialNumber));
+        // A certificate changed on this node is read from the database until it has been reloaded
+        index.invalidate(ISSUER_DN, serialNumber);
+        assertNull(index.getStatus(ISSUER_DN, serialNumber));
+        final Map<BigInteger, Long> dirtySerials = index.getDirtySerials(ISSUER_DN, Long.MAX_VALUE);
+        assertEquals(1, dirtySerials.size());
+        content.update("fp", serialNumber, CertificateConstants.CERT_REVOKED, 0L, revoked(1000L, 0));
+        index.clearDirty(ISSUER_DN, serialNumber, dirtySerials.get(serialNumber));
+        assertEquals(CertificateStatus.REVOKED, index.getStatus(ISSUER_DN, serialNumber));
+        // All certificates of the issuer changed
+        index.invalidateIssuer(ISSUER_DN);
+        assertFalse(index.isLoaded(ISSUER_DN));
+        assertNull(index.getStatus(ISSUER_DN, serialNumber));
+        index.setLoaded(ISSUER_DN, content, loadStartTime - 1);
+        assertFalse("Content loaded before the issuer was invalidated should not be used.", index.isLoaded(ISSUER_DN));
+        index.setTooLarge(ISSUER_DN);
+        assertTrue(index.getIssuersToLoad().isEmpty());
+    }
+}
@@ -0,0 +1,307 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificatetransparency;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.TBSCertificate;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.cesecore.config.ConfigurationHolder;
+import org.cesecore.keys.util.KeyTools;
+import org.cesecore.util.Base64;
+import org.cesecore.util.CertTools;
+import org.cesecore.util.CryptoProviderTools;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests the concurrent CT submission against stand-in log servers, that answer add-pre-chain requests with signed SCTs after a
+ * configurable delay.
+ *
+ * @version $Id$
+ */
+public class CtSubmissionEngineTest {
+
+    private static final long TIMESTAMP = 1500000000000L;
+    private static final ASN1ObjectIdentifier POISON_EXTENSION_OID = new ASN1ObjectIdentifier("1.3.6.1.4.1.11129.2.4.3");
+
+    /** A pre-certificate and its issuer */
+    private static List<Certificate> chain;
+
+    /** Stand-in for a CT log, that counts the requests it receives */
+    private static final class TestLog {
+        private final HttpServer server;
+        private final CTLogInfo ctLog;
+        private final AtomicInteger requests = new AtomicInteger();
+        private volatile long delay = 0;
+        private volatile boolean failing = false;
+        /** True to sign SCTs with another key than the one of the log */
+        private volatile boolean wrongKey = false;
+
+        private TestLog() throws Exception {
+            final KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
+            keyPairGenerator.initialize(256);
+            final KeyPair keyPair = keyPairGenerator.generateKeyPair();
+            final KeyPair otherKeyPair = keyPairGenerator.generateKeyPair();
+            final byte[] publicKey = keyPair.getPublic().getEncoded();
+            final byte[] logId = MessageDigest.getInstance("SHA-256").digest(publicKey);
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.createContext("/ct/v1/add-pre-chain", new HttpHandler() {
+                @Override
+                public void handle(final HttpExchange exchange) throws IOException {
+                    final InputStream in = exchange.getRequestBody();
+                    while (in.read() != -1) { } // NOPMD
+                    requests.incrementAndGet();
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    final byte[] response = failing ? "{}".getBytes(StandardCharsets.UTF_8) : ("{\"sct_version\":0,\"id\":\""
+                            + new String(Base64.encode(logId, false), StandardCharsets.US_ASCII) + "\",\"timestamp\":" + TIMESTAMP + ","
+                            + "\"extensions\":\"\",\"signature\":\"" + sign(wrongKey ? otherKeyPair : keyPair) + "\"}").getBytes(StandardCharsets.UTF_8);
+                    exchange.sendResponseHeaders(failing ? 500 : 200, response.length);
+                    try (final OutputStream out = exchange.getResponseBody()) {
+                        out.write(response);
+                    }
+                }
+            });
+            server.start();
+            ctLog = new CTLogInfo("http://127.0.0.1:" + server.getAddress().getPort() + "/ct/v1/", publicKey, "Test", 5000);
+        }
+    }
+
+    /** @return the base64 encoded "digitally-signed" structure of an SCT for the pre-certificate, signed with the given key */
+    private static String sign(final KeyPair keyPair) {
+        try {
+            final Signature signer = Signature.getInstance("SHA256withECDSA");
+            signer.initSign(keyPair.getPrivate());
+            signer.update(CtSubmissionEngine.getSignedData(TIMESTAMP, CtSubmissionEngine.getSignedEntry(chain, true), new byte[0]));
+            final byte[] signature = signer.sign();
+            final ByteBuffer digitallySigned = ByteBuffer.allocate(4 + signature.length);
+            digitallySigned.put((byte) 4).put((byte) 3).putShort((short) signature.length).put(signature);
+            return new String(Base64.encode(digitallySigned.array(), false), StandardCharsets.US_ASCII);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final List<TestLog> testLogs = new ArrayList<>();
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        final KeyPair caKeyPair = KeyTools.genKeys("secp256r1", "ECDSA");
+        final X509Certificate caCertificate = CertTools.genSelfCert("CN=CtSubmissionEngineTest CA", 10L, null, caKeyPair.getPrivate(),
+                caKeyPair.getPublic(), "SHA256WithECDSA", true);
+        final KeyPair keyPair = KeyTools.genKeys("secp256r1", "ECDSA");
+        final X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(caCertificate, BigInteger.valueOf(4711),
+                new Date(System.currentTimeMillis() - 60000L), new Date(System.currentTimeMillis() + 86400000L),
+                new X500Name("CN=CtSubmissionEngineTest"), keyPair.getPublic());
+        builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(false));
+        builder.addExtension(POISON_EXTENSION_OID, true, DERNull.INSTANCE);
+        final X509Certificate preCertificate = new JcaX509CertificateConverter().getCertificate(builder.build(
+                new JcaContentSignerBuilder("SHA256WithECDSA").build(caKeyPair.getPrivate())));
+        chain = Arrays.asList((Certificate) preCertificate, caCertificate);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        ConfigurationHolder.updateConfiguration("ct.submission.hedgedelay", "10000");
+        CtSubmissionEngine.INSTANCE.clearCache();
+        for (int i = 0; i < 3; i++) {
+            testLogs.add(new TestLog());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        ConfigurationHolder.updateConfiguration("ct.submission.hedgedelay", "1000");
+        CtSubmissionEngine.INSTANCE.clearCache();
+        for (final TestLog testLog : testLogs) {
+            testLog.server.stop(0);
+        }
+    }
+
+    private List<CtSubmissionEngine.LogGroup> getGroup(final int minScts) {
+        final List<CTLogInfo> ctLogs = new ArrayList<>();
+        for (final TestLog testLog : testLogs) {
+            ctLogs.add(testLog.ctLog);
+        }
+        return Collections.singletonList(new CtSubmissionEngine.LogGroup(ctLogs, minScts));
+    }
+
+    @Test
+    public void testSpareLogNotUsedWhenNotNeeded() throws Exception {
+        final List<byte[]> scts = CtSubmissionEngine.INSTANCE.submit(chain, true, getGroup(2), 10000);
+        assertEquals(2, scts.size());
+        // version, log id, timestamp, extensions length, signature algorithm, signature length and signature
+        final int signatureLength = ByteBuffer.wrap(scts.get(0), 1 + 32 + 8 + 2 + 2, 2).getShort();
+        assertEquals(1 + 32 + 8 + 2 + 4 + signatureLength, scts.get(0).length);
+        assertEquals(1, testLogs.get(0).requests.get());
+        assertEquals(1, testLogs.get(1).requests.get());
+        assertEquals("The spare log should not be used.", 0, testLogs.get(2).requests.get());
+    }
+
+    @Test
+    public void testSlowLogIsHedged() throws Exception {
+        ConfigurationHolder.updateConfiguration("ct.submission.hedgedelay", "200");
+        testLogs.get(0).delay = 4000;
+        final long start = System.currentTimeMillis();
+        final List<byte[]> scts = CtSubmissionEngine.INSTANCE.submit(chain, true, getGroup(2), 10000);
+        final long time = System.currentTimeMillis() - start;
+        assertEquals(2, scts.size());
+        assertEquals(1, testLogs.get(2).requests.get());
+        assertTrue("Should not wait for the slow log, took " + time + " ms.", time < 3000);
+    }
+
+    @Test
+    public void testFailedLogIsReplacedBySpare() throws Exception {
+        testLogs.get(1).failing = true;
+        final List<byte[]> scts = CtSubmissionEngine.INSTANCE.submit(chain, true, getGroup(2), 10000);
+        assertEquals(2, scts.size());
+        assertEquals(1, testLogs.get(2).requests.get());
+    }
+
+    @Test
+    public void testNotEnoughLogs() throws Exception {
+        testLogs.get(0).failing = true;
+        testLogs.get(1).failing = true;
+        try {
+            CtSubmissionEngine.INSTANCE.submit(chain, true, getGroup(2), 10000);
+            fail("Two of three logs failed, so two SCTs can not be obtained.");
+        } catch (CTLogException e) {
+            // Expected
+        }
+        assertEquals(1, testLogs.get(2).requests.get());
+    }
+
+    @Test
+    public void testCachedSctsAreNotResubmitted() throws Exception {
+        testLogs.get(1).failing = true;
+        try {
+            CtSubmissionEngine.INSTANCE.submit(chain, true, getGroup(3), 10000);
+            fail("One of three logs failed, so three SCTs can not be obtained.");
+        } catch (CTLogException e) {
+            // Expected
+        }
+        // The retry only needs to contact the log that failed
+        testLogs.get(1).failing = false;
+        final List<byte[]> scts = CtSubmissionEngine.INSTANCE.submit(chain, true, getGroup(3), 10000);
+        assertEquals(3, scts.size());
+        assertEquals(1, testLogs.get(0).requests.get());
+        assertEquals(2, testLogs.get(1).requests.get());
+        assertEquals(1, testLogs.get(2).requests.get());
+    }
+
+    @Test
+    public void testLogWithTooManyRequestsIsSkipped() throws Exception {
+        ConfigurationHolder.updateConfiguration("ct.submission.maxrequestsperlog", "1");
+        try {
+            testLogs.get(0).delay = 3000;
+            try {
+                CtSubmissionEngine.INSTANCE.submit(chain, true, getGroup(2), 500);
+                fail("The first log does not respond in time.");
+            } catch (CTLogException e) {
+                // Expected
+            }
+            // The abandoned request to the first log is still in progress, so the spare log is used instead
+            final List<byte[]> scts = CtSubmissionEngine.INSTANCE.submit(chain, true, getGroup(2), 1000);
+            assertEquals(2, scts.size());
+            assertEquals(1, testLogs.get(0).requests.get());
+            assertEquals(1, testLogs.get(1).requests.get());
+            assertEquals(1, testLogs.get(2).requests.get());
+        } finally {
+            ConfigurationHolder.updateConfiguration("ct.submission.maxrequestsperlog", "8");
+        }
+    }
+
+    @Test
+    public void testSctWithInvalidSignatureIsNotUsed() throws Exception {
+        testLogs.get(0).wrongKey = true;
+        final List<byte[]> scts = CtSubmissionEngine.INSTANCE.submit(chain, true, getGroup(2), 10000);
+        assertEquals(2, scts.size());
+        assertEquals("The spare log should replace the log with the invalid signature.", 1, testLogs.get(2).requests.get());
+        assertEquals("The SCT with the invalid signature should not be cached.", 2, CtSubmissionEngine.INSTANCE.getCacheSize());
+    }
+
+    @Test
+    public void testSignedEntryOfPreCertificate() throws Exception {
+        final byte[] signedEntry = CtSubmissionEngine.getSignedEntry(chain, true);
+        final ByteBuffer buffer = ByteBuffer.wrap(signedEntry);
+        assertEquals("precert_entry", 1, buffer.getShort());
+        final byte[] issuerKeyHash = new byte[32];
+        buffer.get(issuerKeyHash);
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(chain.get(1).getPublicKey().getEncoded()), issuerKeyHash);
+        final int length = (buffer.get() & 0xff) << 16 | (buffer.getShort() & 0xffff);
+        assertEquals(buffer.remaining(), length);
+        final byte[] tbs = new byte[length];
+        buffer.get(tbs);
+        final TBSCertificate tbsCertificate = TBSCertificate.getInstance(tbs);
+        assertNull("The poison extension should be removed.", tbsCertificate.getExtensions().getExtension(POISON_EXTENSION_OID));
+        assertNotNull(tbsCertificate.getExtensions().getExtension(Extension.basicConstraints));
+        assertEquals(((X509Certificate) chain.get(0)).getSerialNumber(), tbsCertificate.getSerialNumber().getValue());
+        // Not a pre-certificate
+        final byte[] x509Entry = CtSubmissionEngine.getSignedEntry(chain.subList(1, 2), false);
+        assertEquals(0, ByteBuffer.wrap(x509Entry).getShort());
+        assertEquals(2 + 3 + chain.get(1).getEncoded().length, x509Entry.length);
+    }
+
+    @Test
+    public void testEncodeSctList() {
+        final byte[] list = CtSubmissionEngine.encodeSctList(Arrays.asList(new byte[] { 1, 2 }, new byte[] { 3 }));
+        assertArrayEquals(new byte[] { 0, 7, 0, 2, 1, 2, 0, 1, 3 }, list);
+    }
+}
@@ -0,0 +1,128 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.SignatureException;
+import java.security.cert.X509CRL;
+import java.util.Date;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.ContentVerifier;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.cesecore.keys.util.KeyTools;
+import org.cesecore.util.CertTools;
+import org.cesecore.util.CryptoProviderTools;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests that CRLs from the StreamingCrlBuilder are encoded in the same way as CRLs from X509v2CRLBuilder.
+ *
+ * @version $Id$
+ */
+public class StreamingCrlBuilderTest {
+
+    private static final X500Name ISSUER = new X500Name("CN=StreamingCrlBuilderTest,O=PrimeKey,C=SE");
+    private static final int[] REASONS = { RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE,
+            RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD, RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL };
+
+    private static KeyPair keyPair;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        keyPair = KeyTools.genKeys("1024", "RSA");
+    }
+
+    @Test
+    public void testSameEncodingAsX509v2CRLBuilder() throws Exception {
+        assertSameEncoding(100, Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void testSameEncodingWhenSpooledToFile() throws Exception {
+        // A low threshold makes the builder write the entries to a temporary file almost at once
+        assertSameEncoding(5000, 100);
+    }
+
+    @Test
+    public void testEmptyCrl() throws Exception {
+        final X509CRL crl = CertTools.getCRLfromByteArray(assertSameEncoding(0, Integer.MAX_VALUE));
+        assertNull("An empty CRL should have no revokedCertificates.", crl.getRevokedCertificates());
+    }
+
+    @Test
+    public void testVerificationFailure() throws Exception {
+        final Date now = new Date();
+        final StreamingCrlBuilder crlBuilder = new StreamingCrlBuilder(ISSUER, now, new Date(now.getTime() + 3600000L));
+        try {
+            crlBuilder.addCRLEntry(BigInteger.ONE, now, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE);
+            final ContentSigner signer = getSigner();
+            final ContentVerifier verifier = CertTools.genContentVerifierProvider(KeyTools.genKeys("1024", "RSA").getPublic()).get(
+                    signer.getAlgorithmIdentifier());
+            crlBuilder.build(signer, verifier);
+            fail("A CRL that could not be verified should not be returned.");
+        } catch (SignatureException e) {
+            // Expected
+        } finally {
+            crlBuilder.close();
+        }
+    }
+
+    /** Creates the same CRL with both builders and compares the encoding. @return the encoded CRL */
+    private byte[] assertSameEncoding(final int entries, final int spillThreshold) throws Exception {
+        final Date thisUpdate = new Date();
+        final Date nextUpdate = new Date(thisUpdate.getTime() + 24 * 3600000L);
+        final Extension crlNumber = new Extension(Extension.cRLNumber, false, new CRLNumber(BigInteger.valueOf(4711)).getEncoded());
+        final X509v2CRLBuilder expectedBuilder = new X509v2CRLBuilder(ISSUER, thisUpdate);
+        expectedBuilder.setNextUpdate(nextUpdate);
+        final StreamingCrlBuilder crlBuilder = new StreamingCrlBuilder(ISSUER, thisUpdate, nextUpdate, spillThreshold);
+        try {
+            for (int i = 0; i < entries; i++) {
+                final BigInteger serialNumber = BigInteger.valueOf(i).shiftLeft(i % 130).add(BigInteger.ONE);
+                final Date revocationDate = new Date(thisUpdate.getTime() - i * 60000L);
+                final int reason = REASONS[i % REASONS.length];
+                expectedBuilder.addCRLEntry(serialNumber, revocationDate, reason);
+                crlBuilder.addCRLEntry(serialNumber, revocationDate, reason);
+            }
+            expectedBuilder.addExtension(crlNumber);
+            crlBuilder.addExtension(crlNumber);
+            final byte[] expected = expectedBuilder.build(getSigner()).getEncoded();
+            final ContentSigner signer = getSigner();
+            final byte[] crlBytes = crlBuilder.build(signer,
+                    CertTools.genContentVerifierProvider(keyPair.getPublic()).get(signer.getAlgorithmIdentifier()));
+            assertEquals(entries, crlBuilder.getEntryCount());
+            assertArrayEquals("Streamed CRL differs from the one created by X509v2CRLBuilder.", expected, crlBytes);
+            return crlBytes;
+        } finally {
+            crlBuilder.close();
+        }
+    }
+
+    private ContentSigner getSigner() throws Exception {
+        return new JcaContentSignerBuilder("SHA256WithRSA").setProvider(BouncyCastleProvider.PROVIDER_NAME).build(
+                keyPair.getPrivate());
+    }
+}
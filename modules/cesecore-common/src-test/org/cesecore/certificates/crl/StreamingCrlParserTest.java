@@ -0,0 +1,188 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.SignatureException;
+import java.security.cert.CRLException;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.CertificateList;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.cesecore.certificates.util.cert.CrlExtensions;
+import org.cesecore.keys.util.KeyTools;
+import org.cesecore.util.CertTools;
+import org.cesecore.util.CryptoProviderTools;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests that StreamingCrlParser reads the same information from a CRL as X509CRL, and the diff of CRL entries.
+ *
+ * @version $Id$
+ */
+public class StreamingCrlParserTest {
+
+    private static final X500Name ISSUER = new X500Name("CN=StreamingCrlParserTest,O=PrimeKey,C=SE");
+
+    private static KeyPair keyPair;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        keyPair = KeyTools.genKeys("1024", "RSA");
+    }
+
+    @Test
+    public void testSameAsX509Crl() throws Exception {
+        final Date thisUpdate = new Date();
+        final byte[] crlBytes = createCrl(thisUpdate, 500, -1);
+        final X509CRL expected = CertTools.getCRLfromByteArray(crlBytes);
+        final StreamingCrlParser parser = new StreamingCrlParser(crlBytes);
+        parser.verify(keyPair.getPublic());
+        assertEquals(expected.getIssuerX500Principal(), parser.getIssuerX500Principal());
+        assertEquals(expected.getThisUpdate(), parser.getThisUpdate());
+        assertEquals(expected.getNextUpdate(), parser.getNextUpdate());
+        assertEquals(CrlExtensions.getCrlNumber(expected), parser.getCrlNumber());
+        assertEquals(CrlExtensions.getDeltaCRLIndicator(expected), parser.getDeltaCrlIndicator());
+        final Map<BigInteger, X509CRLEntry> expectedEntries = new HashMap<>();
+        for (final X509CRLEntry entry : expected.getRevokedCertificates()) {
+            expectedEntries.put(entry.getSerialNumber(), entry);
+        }
+        final List<StreamingCrlParser.Entry> entries = parser.getEntriesSortedBySerialNumber();
+        assertEquals(expectedEntries.size(), entries.size());
+        BigInteger previous = BigInteger.valueOf(-1);
+        for (final StreamingCrlParser.Entry entry : entries) {
+            assertTrue("Entries should be sorted by serial number.", previous.compareTo(entry.getSerialNumber()) < 0);
+            previous = entry.getSerialNumber();
+            final X509CRLEntry expectedEntry = expectedEntries.get(entry.getSerialNumber());
+            assertEquals(expectedEntry.getRevocationDate(), entry.getRevocationDate());
+            assertEquals(CrlExtensions.extractReasonCode(expectedEntry), entry.getReasonCode());
+            assertArrayEquals(expectedEntry.getEncoded(), entry.getEncoded());
+            assertNull(entry.getCertificateIssuer());
+        }
+    }
+
+    @Test
+    public void testEmptyDeltaCrl() throws Exception {
+        final StreamingCrlParser parser = new StreamingCrlParser(createCrl(new Date(), 0, 4711));
+        parser.verify(keyPair.getPublic());
+        assertTrue(parser.isEmpty());
+        assertFalse(parser.iterator().hasNext());
+        assertEquals(BigInteger.valueOf(4711), parser.getDeltaCrlIndicator());
+    }
+
+    @Test
+    public void testVerificationFailure() throws Exception {
+        final StreamingCrlParser parser = new StreamingCrlParser(createCrl(new Date(), 10, -1));
+        try {
+            parser.verify(KeyTools.genKeys("1024", "RSA").getPublic());
+            fail("Signature should not verify with another key.");
+        } catch (SignatureException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testInvalidEncoding() throws Exception {
+        final byte[] crlBytes = createCrl(new Date(), 10, -1);
+        final byte[] truncated = new byte[crlBytes.length - 1];
+        System.arraycopy(crlBytes, 0, truncated, 0, truncated.length);
+        try {
+            new StreamingCrlParser(truncated);
+            fail("A truncated CRL should not be parsed.");
+        } catch (CRLException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testSignatureAlgorithmMismatch() throws Exception {
+        final CertificateList crl = CertificateList.getInstance(createCrl(new Date(), 10, -1));
+        // The TBSCertList still says SHA256WithRSA
+        final AlgorithmIdentifier otherAlgorithm = new AlgorithmIdentifier(PKCSObjectIdentifiers.sha384WithRSAEncryption, DERNull.INSTANCE);
+        final byte[] crlBytes = new DERSequence(new ASN1Encodable[] { crl.getTBSCertList(), otherAlgorithm, crl.getSignature() }).getEncoded();
+        try {
+            new StreamingCrlParser(crlBytes);
+            fail("A CRL with different signature algorithms in and outside of the TBSCertList should not be parsed.");
+        } catch (CRLException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testChangedEntries() throws Exception {
+        final Date thisUpdate = new Date();
+        final X509v2CRLBuilder previousBuilder = new X509v2CRLBuilder(ISSUER, thisUpdate);
+        previousBuilder.addCRLEntry(BigInteger.valueOf(3), thisUpdate, RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD);
+        previousBuilder.addCRLEntry(BigInteger.valueOf(1), thisUpdate, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE);
+        previousBuilder.addCRLEntry(BigInteger.valueOf(2), thisUpdate, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE);
+        previousBuilder.addCRLEntry(BigInteger.valueOf(5), thisUpdate, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE);
+        final X509v2CRLBuilder builder = new X509v2CRLBuilder(ISSUER, thisUpdate);
+        // Unchanged, changed reason, new, unchanged. Serial number 5 has been removed.
+        builder.addCRLEntry(BigInteger.valueOf(1), thisUpdate, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE);
+        builder.addCRLEntry(BigInteger.valueOf(3), thisUpdate, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE);
+        builder.addCRLEntry(BigInteger.valueOf(4), thisUpdate, RevokedCertInfo.REVOCATION_REASON_SUPERSEDED);
+        builder.addCRLEntry(BigInteger.valueOf(2), thisUpdate, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE);
+        final StreamingCrlParser previous = new StreamingCrlParser(sign(previousBuilder));
+        final StreamingCrlParser parser = new StreamingCrlParser(sign(builder));
+        final List<StreamingCrlParser.Entry> changed = StreamingCrlParser.getChangedEntries(parser.getEntriesSortedBySerialNumber(),
+                previous.getEntriesSortedBySerialNumber());
+        assertEquals(2, changed.size());
+        assertEquals(BigInteger.valueOf(3), changed.get(0).getSerialNumber());
+        assertEquals(RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, changed.get(0).getReasonCode());
+        assertEquals(BigInteger.valueOf(4), changed.get(1).getSerialNumber());
+        assertEquals(RevokedCertInfo.REVOCATION_REASON_SUPERSEDED, changed.get(1).getReasonCode());
+    }
+
+    /** @return a CRL with up to 1000 entries in random serial number order, which is a delta CRL if baseCrlNumber is not -1 */
+    private byte[] createCrl(final Date thisUpdate, final int entries, final long baseCrlNumber) throws Exception {
+        final X509v2CRLBuilder crlBuilder = new X509v2CRLBuilder(ISSUER, thisUpdate);
+        crlBuilder.setNextUpdate(new Date(thisUpdate.getTime() + 24 * 3600000L));
+        for (int i = entries; i > 0; i--) {
+            final BigInteger serialNumber = BigInteger.ONE.shiftLeft(i % 130).multiply(BigInteger.valueOf(1000)).add(BigInteger.valueOf(i));
+            crlBuilder.addCRLEntry(serialNumber, new Date(thisUpdate.getTime() - i * 60000L), i % 7);
+        }
+        crlBuilder.addExtension(Extension.cRLNumber, false, new CRLNumber(BigInteger.valueOf(4712)));
+        if (baseCrlNumber != -1) {
+            crlBuilder.addExtension(Extension.deltaCRLIndicator, true, new CRLNumber(BigInteger.valueOf(baseCrlNumber)));
+        }
+        return sign(crlBuilder);
+    }
+
+    private byte[] sign(final X509v2CRLBuilder crlBuilder) throws Exception {
+        return crlBuilder.build(new JcaContentSignerBuilder("SHA256WithRSA").build(keyPair.getPrivate())).getEncoded();
+    }
+}
@@ -0,0 +1,134 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.List;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.ocsp.CertID;
+import org.bouncycastle.asn1.ocsp.OCSPResponse;
+import org.bouncycastle.asn1.ocsp.OCSPResponseStatus;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.cesecore.certificates.ocsp.cache.OcspPreSignedResponseCache.PreSignedResponse;
+import org.cesecore.config.ConfigurationHolder;
+import org.cesecore.config.OcspConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of the cache that holds pre-signed OCSP responses.
+ *
+ * @version $Id$
+ */
+public class OcspPreSignedResponseCacheTest {
+
+    private static final String ISSUER_DN = "CN=PreSignedTestCA";
+    private static final long MARGIN_MS = 60000L;
+
+    @Before
+    public void before() {
+        OcspPreSignedResponseCache.INSTANCE.flush();
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.PRESIGN_ENABLED, "true");
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.PRESIGN_REFRESH_MARGIN, String.valueOf(MARGIN_MS / 1000));
+    }
+
+    @After
+    public void after() {
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.PRESIGN_ENABLED, null);
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.PRESIGN_REFRESH_MARGIN, null);
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.PRESIGN_MAX_ENTRIES, null);
+        OcspPreSignedResponseCache.INSTANCE.flush();
+    }
+
+    @Test
+    public void testAddAndGet() {
+        final CertificateID certId = getCertId(1);
+        assertNull("Cache should be empty from start.", OcspPreSignedResponseCache.INSTANCE.getEntry(certId));
+        assertTrue(OcspPreSignedResponseCache.INSTANCE.addEntry(getEntry(certId, ISSUER_DN, 10 * MARGIN_MS)));
+        final PreSignedResponse entry = OcspPreSignedResponseCache.INSTANCE.getEntry(getCertId(1));
+        assertNotNull("An equal CertificateID should find the cached response.", entry);
+        assertTrue("Entry should be marked as requested.", entry.isRequested());
+        assertNull("Another serial number should not find the cached response.", OcspPreSignedResponseCache.INSTANCE.getEntry(getCertId(2)));
+    }
+
+    @Test
+    public void testNearNextUpdateIsNotCached() {
+        assertFalse("Response within the refresh margin should not be cached.",
+                OcspPreSignedResponseCache.INSTANCE.addEntry(getEntry(getCertId(1), ISSUER_DN, MARGIN_MS / 2)));
+        assertEquals(0, OcspPreSignedResponseCache.INSTANCE.size());
+    }
+
+    @Test
+    public void testMaxEntries() {
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.PRESIGN_MAX_ENTRIES, "2");
+        assertTrue(OcspPreSignedResponseCache.INSTANCE.addEntry(getEntry(getCertId(1), ISSUER_DN, 10 * MARGIN_MS)));
+        assertTrue(OcspPreSignedResponseCache.INSTANCE.addEntry(getEntry(getCertId(2), ISSUER_DN, 10 * MARGIN_MS)));
+        assertFalse("Cache should be full.", OcspPreSignedResponseCache.INSTANCE.addEntry(getEntry(getCertId(3), ISSUER_DN, 10 * MARGIN_MS)));
+        assertTrue("Replacing an existing entry should be allowed when full.",
+                OcspPreSignedResponseCache.INSTANCE.addEntry(getEntry(getCertId(2), ISSUER_DN, 10 * MARGIN_MS)));
+        assertEquals(2, OcspPreSignedResponseCache.INSTANCE.size());
+    }
+
+    @Test
+    public void testInvalidate() {
+        OcspPreSignedResponseCache.INSTANCE.addEntry(getEntry(getCertId(1), ISSUER_DN, 10 * MARGIN_MS));
+        OcspPreSignedResponseCache.INSTANCE.addEntry(getEntry(getCertId(2), ISSUER_DN, 10 * MARGIN_MS));
+        OcspPreSignedResponseCache.INSTANCE.invalidate("CN=OtherCA", BigInteger.valueOf(1));
+        assertNotNull("Invalidation for another CA should not remove the response.", OcspPreSignedResponseCache.INSTANCE.getEntry(getCertId(1)));
+        OcspPreSignedResponseCache.INSTANCE.invalidate(ISSUER_DN, BigInteger.valueOf(1));
+        assertNull("Response should have been invalidated.", OcspPreSignedResponseCache.INSTANCE.getEntry(getCertId(1)));
+        assertNotNull(OcspPreSignedResponseCache.INSTANCE.getEntry(getCertId(2)));
+        assertFalse("A response with the old status could be cached again before the status change has been committed.",
+                OcspPreSignedResponseCache.INSTANCE.addEntry(getEntry(getCertId(1), ISSUER_DN, 10 * MARGIN_MS)));
+        OcspPreSignedResponseCache.INSTANCE.invalidateIssuer(ISSUER_DN);
+        assertEquals(0, OcspPreSignedResponseCache.INSTANCE.size());
+    }
+
+    @Test
+    public void testRefresh() {
+        OcspPreSignedResponseCache.INSTANCE.addEntry(getEntry(getCertId(1), ISSUER_DN, 10 * MARGIN_MS));
+        // Entries that are near nextUpdate can't be added directly, so shorten the margin while adding them
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.PRESIGN_REFRESH_MARGIN, "1");
+        OcspPreSignedResponseCache.INSTANCE.addEntry(getEntry(getCertId(2), ISSUER_DN, MARGIN_MS / 2));
+        OcspPreSignedResponseCache.INSTANCE.addEntry(getEntry(getCertId(3), ISSUER_DN, MARGIN_MS / 2));
+        assertNotNull(OcspPreSignedResponseCache.INSTANCE.getEntry(getCertId(2)));
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.PRESIGN_REFRESH_MARGIN, String.valueOf(MARGIN_MS / 1000));
+        final List<PreSignedResponse> toRefresh = OcspPreSignedResponseCache.INSTANCE.getEntriesToRefresh();
+        assertEquals("Only the requested response near nextUpdate should be refreshed.", 1, toRefresh.size());
+        assertEquals(getCertId(2), toRefresh.get(0).getCertId());
+        assertEquals("Responses near nextUpdate should have been removed.", 1, OcspPreSignedResponseCache.INSTANCE.size());
+        assertNotNull(OcspPreSignedResponseCache.INSTANCE.getEntry(getCertId(1)));
+    }
+
+    private CertificateID getCertId(final int serialNumber) {
+        return new CertificateID(new CertID(new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1), new DEROctetString(new byte[20]),
+                new DEROctetString(new byte[20]), new ASN1Integer(serialNumber)));
+    }
+
+    private PreSignedResponse getEntry(final CertificateID certId, final String issuerDn, final long untilNextUpdate) {
+        final OCSPResp ocspResponse = new OCSPResp(new OCSPResponse(new OCSPResponseStatus(OCSPResponseStatus.SUCCESSFUL), null));
+        return new PreSignedResponse(certId, issuerDn, ocspResponse, null, 0L, System.currentTimeMillis() + untilNextUpdate, 0);
+    }
+}
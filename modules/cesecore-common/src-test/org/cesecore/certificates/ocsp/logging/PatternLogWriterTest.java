@@ -0,0 +1,177 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.cesecore.certificates.ocsp.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.cesecore.config.ConfigurationHolder;
+import org.cesecore.config.OcspConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests writing log lines from the background thread of PatternLogWriter, when the queue is full.
+ *
+ * @version $Id$
+ */
+public class PatternLogWriterTest {
+
+    private static final String WRITER_THREAD_NAME = "OcspPatternLogWriter";
+
+    /** Appender that records the lines, and blocks until it is released */
+    private static class BlockingAppender extends AppenderSkeleton {
+        private final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        protected void append(final LoggingEvent event) {
+            started.countDown();
+            try {
+                release.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            lines.add(event.getRenderedMessage());
+        }
+
+        @Override
+        public boolean requiresLayout() {
+            return false;
+        }
+
+        @Override
+        public void close() { }
+    }
+
+    private final Logger logger = Logger.getLogger(PatternLogWriterTest.class.getName() + ".output");
+    private final BlockingAppender appender = new BlockingAppender();
+
+    @Before
+    public void setUp() {
+        logger.setLevel(Level.DEBUG);
+        logger.setAdditivity(false);
+        logger.addAppender(appender);
+    }
+
+    @After
+    public void tearDown() {
+        appender.release.countDown();
+        PatternLogWriter.INSTANCE.shutdown(10000);
+        logger.removeAppender(appender);
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.LOG_ASYNC, "false");
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.LOG_ASYNC_DROP, "false");
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.LOG_ASYNC_QUEUE_SIZE, "10000");
+        PatternLogWriter.INSTANCE.reloadConfiguration();
+    }
+
+    private static void configure(final boolean drop, final int queueSize) {
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.LOG_ASYNC, "true");
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.LOG_ASYNC_DROP, String.valueOf(drop));
+        ConfigurationHolder.updateConfiguration(OcspConfiguration.LOG_ASYNC_QUEUE_SIZE, String.valueOf(queueSize));
+        PatternLogWriter.INSTANCE.reloadConfiguration();
+        assertTrue(PatternLogWriter.INSTANCE.isAsync());
+    }
+
+    private static boolean isWriterThreadAlive() {
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (WRITER_THREAD_NAME.equals(thread.getName()) && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testDropWhenQueueIsFull() throws Exception {
+        configure(true, 2);
+        final PatternLogWriter writer = PatternLogWriter.INSTANCE;
+        final long dropped = writer.getDropped();
+        final long written = writer.getWritten();
+        writer.write(logger, "line1");
+        // The first line counts as queued until the blocked appender has written it
+        assertTrue(appender.started.await(10, TimeUnit.SECONDS));
+        writer.write(logger, "line2");
+        writer.write(logger, "line3");
+        assertEquals(2, writer.getQueued());
+        assertEquals("The line that did not fit in the queue should be dropped.", dropped + 1, writer.getDropped());
+        assertEquals(written, writer.getWritten());
+        appender.release.countDown();
+        assertTrue(writer.drain(10000));
+        assertEquals(0, writer.getQueued());
+        assertEquals(written + 2, writer.getWritten());
+        assertEquals(dropped + 1, writer.getDropped());
+        assertEquals(2, appender.lines.size());
+        assertEquals("line1", appender.lines.get(0));
+        assertEquals("line2", appender.lines.get(1));
+    }
+
+    @Test
+    public void testBlockWhenQueueIsFull() throws Exception {
+        configure(false, 1);
+        final PatternLogWriter writer = PatternLogWriter.INSTANCE;
+        final long dropped = writer.getDropped();
+        final long written = writer.getWritten();
+        writer.write(logger, "line1");
+        assertTrue(appender.started.await(10, TimeUnit.SECONDS));
+        final Thread requestThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writer.write(logger, "line2");
+            }
+        });
+        requestThread.start();
+        requestThread.join(500);
+        assertTrue("The request thread should wait for room in the queue.", requestThread.isAlive());
+        assertEquals(1, writer.getQueued());
+        assertEquals(dropped, writer.getDropped());
+        appender.release.countDown();
+        requestThread.join(10000);
+        assertFalse(requestThread.isAlive());
+        assertTrue(writer.drain(10000));
+        assertEquals(written + 2, writer.getWritten());
+        assertEquals("No lines should be dropped.", dropped, writer.getDropped());
+        assertEquals(2, appender.lines.size());
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        configure(false, 10);
+        appender.release.countDown();
+        final PatternLogWriter writer = PatternLogWriter.INSTANCE;
+        final long written = writer.getWritten();
+        writer.write(logger, "line1");
+        assertTrue(isWriterThreadAlive());
+        writer.shutdown(10000);
+        assertEquals("Queued lines should be written before the thread stops.", written + 1, writer.getWritten());
+        assertFalse("The writer thread should be stopped.", isWriterThreadAlive());
+        // The thread is started again if needed
+        writer.write(logger, "line2");
+        assertTrue(writer.drain(10000));
+        assertEquals(written + 2, writer.getWritten());
+    }
+}
@@ -13,9 +13,13 @@
 
 package org.cesecore.certificates.ocsp.logging;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 import org.junit.Test;
@@ -43,6 +47,19 @@ public class PatternLoggerTest {
         log.trace("<testPatternLogger");
     }
 
+    /** Values should be inserted as they are, and placeholders without values should be kept. */
+    @Test
+    public void testTemplate() {
+        final String pattern = "\\$\\{(.+?)\\}";
+        final PatternLogTemplate template = PatternLogTemplate.getInstance(pattern, "${A};\"${B}\";${UNKNOWN};${A}");
+        assertSame("Templates should be parsed once.", template, PatternLogTemplate.getInstance(pattern, "${A};\"${B}\";${UNKNOWN};${A}"));
+        final Map<String, String> values = new HashMap<String, String>();
+        values.put("A", "a$1");
+        values.put("B", "CN=Foo\\,Bar");
+        assertEquals("a$1;\"CN=Foo\\,Bar\";${UNKNOWN};a$1", template.interpolate(values));
+        assertEquals("no placeholders", PatternLogTemplate.getInstance(pattern, "no placeholders").interpolate(values));
+    }
+
     /** Helper method that replaces all ${VARx} where x={0..10} with "contentx" and asserts that the result is the expected using regexp. */
     private void testPatternLoggerInternal(String pattern, String dateFormat, String timeZone, String expected) throws Exception {
         log.trace(">testPatternLoggerInternal");
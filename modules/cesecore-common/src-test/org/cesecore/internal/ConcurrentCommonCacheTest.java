@@ -0,0 +1,158 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Tests of the concurrent object and name to id lookup cache.
+ *
+ * @version $Id$
+ */
+public class ConcurrentCommonCacheTest {
+
+    private static class TestCache extends ConcurrentCommonCache<String> {
+        private volatile long cacheTime = 60000L;
+        private volatile long maxCacheLifeTime = 0L;
+
+        @Override
+        protected long getCacheTime() {
+            return cacheTime;
+        }
+
+        @Override
+        protected long getMaxCacheLifeTime() {
+            return maxCacheLifeTime;
+        }
+    }
+
+    @Test
+    public void testUpdateAndRemove() {
+        final TestCache cache = new TestCache();
+        assertTrue("Missing entry should be read from database.", cache.shouldCheckForUpdates(1));
+        cache.updateWith(1, 11, "one", "object1");
+        cache.updateWith(2, 22, "two", "object2");
+        assertEquals("object1", cache.getEntry(1));
+        assertEquals("two", cache.getName(2));
+        assertEquals(Integer.valueOf(1), cache.getNameToIdMap().get("one"));
+        assertFalse("Entry should not have expired.", cache.shouldCheckForUpdates(1));
+        // Rename
+        cache.updateWith(1, 12, "uno", "object1b");
+        assertEquals("object1b", cache.getEntry(1));
+        assertNull("Old name should have been removed.", cache.getNameToIdMap().get("one"));
+        assertEquals(Integer.valueOf(1), cache.getNameToIdMap().get("uno"));
+        // Same digest does not replace the object
+        cache.updateWith(1, 12, "uno", "ignored");
+        assertEquals("object1b", cache.getEntry(1));
+        cache.removeEntry(1);
+        assertNull(cache.getEntry(1));
+        assertNull(cache.getNameToIdMap().get("uno"));
+        assertEquals(1, cache.getNameToIdMap().size());
+    }
+
+    @Test
+    public void testReplaceCacheWithAndFlush() {
+        final TestCache cache = new TestCache();
+        cache.updateWith(1, 1, "one", "object1");
+        cache.updateWith(2, 2, "two", "object2");
+        cache.updateWith(3, 3, "three", "object3");
+        cache.replaceCacheWith(Arrays.asList(Integer.valueOf(1), Integer.valueOf(3), Integer.valueOf(4)));
+        assertNull(cache.getEntry(2));
+        assertEquals(2, cache.getAllEntries().size());
+        assertEquals(2, cache.getNameToIdMap().size());
+        cache.flush();
+        assertTrue(cache.getAllEntries().isEmpty());
+        assertTrue(cache.getNameToIdMap().isEmpty());
+    }
+
+    @Test
+    public void testDisabledCache() {
+        final TestCache cache = new TestCache();
+        cache.cacheTime = -1L;
+        cache.updateWith(1, 1, "one", "object1");
+        assertNull("Disabled cache should not store anything.", cache.getEntry(1));
+        assertTrue(cache.shouldCheckForUpdates(1));
+    }
+
+    @Test
+    public void testStaleEntriesArePurged() throws InterruptedException {
+        final TestCache cache = new TestCache();
+        cache.maxCacheLifeTime = 20L;
+        cache.updateWith(1, 1, "one", "object1");
+        Thread.sleep(50L);
+        cache.updateWith(2, 2, "two", "object2");
+        assertNull("Entry older than max cache life time should have been purged.", cache.getEntry(1));
+        assertEquals("object2", cache.getEntry(2));
+        assertNull(cache.getNameToIdMap().get("one"));
+    }
+
+    @Test
+    public void testSingleReloadOfExpiredEntry() throws Exception {
+        final TestCache cache = new TestCache();
+        cache.cacheTime = 200L;
+        cache.updateWith(1, 1, "one", "object1");
+        Thread.sleep(300L);
+        final int threads = 16;
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executorService.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        start.await();
+                        return Boolean.valueOf(cache.shouldCheckForUpdates(1));
+                    }
+                }));
+            }
+            start.countDown();
+            int reloading = 0;
+            for (final Future<Boolean> future : futures) {
+                if (future.get().booleanValue()) {
+                    reloading++;
+                }
+            }
+            assertEquals("Only one caller should reload an expired entry.", 1, reloading);
+            assertEquals(1, cache.getReloads());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void testCounters() {
+        final TestCache cache = new TestCache();
+        cache.updateWith(1, 1, "one", "object1");
+        cache.getEntry(1);
+        cache.getEntry(1);
+        cache.getEntry(2);
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0, cache.getReloads());
+    }
+}
@@ -0,0 +1,95 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.keys.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.cesecore.certificates.util.AlgorithmConstants;
+import org.cesecore.certificates.util.AlgorithmTools;
+import org.cesecore.config.ConfigurationHolder;
+import org.cesecore.util.CryptoProviderTools;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests that the key pair pool hands out working key pairs only once, and generates key pairs in the calling thread when needed.
+ *
+ * @version $Id$
+ */
+public class KeyPairPoolTest {
+
+    @BeforeClass
+    public static void beforeClass() {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+    }
+
+    @After
+    public void tearDown() {
+        ConfigurationHolder.updateConfiguration("keypool.enabled", "false");
+        KeyPairPool.INSTANCE.reloadConfiguration();
+    }
+
+    @Test
+    public void testPooledKeysAreValidAndNotReused() throws Exception {
+        ConfigurationHolder.updateConfiguration("keypool.enabled", "true");
+        ConfigurationHolder.updateConfiguration("keypool.keyspecs", "RSA:1024;ECDSA:secp256r1");
+        ConfigurationHolder.updateConfiguration("keypool.lowwatermark", "2");
+        ConfigurationHolder.updateConfiguration("keypool.highwatermark", "4");
+        ConfigurationHolder.updateConfiguration("keypool.threads", "2");
+        KeyPairPool.INSTANCE.reloadConfiguration();
+        assertTrue(KeyPairPool.INSTANCE.isEnabled());
+        waitForDepth("1024", AlgorithmConstants.KEYALGORITHM_RSA, 4);
+        waitForDepth("secp256r1", AlgorithmConstants.KEYALGORITHM_ECDSA, 4);
+        assertTrue(KeyPairPool.INSTANCE.getRefillRate("1024", AlgorithmConstants.KEYALGORITHM_RSA) > 0);
+        final Set<String> publicKeys = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            final KeyPair rsa = KeyPairPool.INSTANCE.genKeys("1024", AlgorithmConstants.KEYALGORITHM_RSA);
+            KeyTools.testKey(rsa.getPrivate(), rsa.getPublic(), BouncyCastleProvider.PROVIDER_NAME);
+            assertTrue("Key pair was handed out twice.", publicKeys.add(new String(rsa.getPublic().getEncoded(), "ISO-8859-1")));
+            final KeyPair ec = KeyPairPool.INSTANCE.genKeys("secp256r1", AlgorithmConstants.KEYALGORITHM_ECDSA);
+            KeyTools.testKey(ec.getPrivate(), ec.getPublic(), BouncyCastleProvider.PROVIDER_NAME);
+            assertEquals("secp256r1", AlgorithmTools.getKeySpecification(ec.getPublic()));
+            assertTrue("Key pair was handed out twice.", publicKeys.add(new String(ec.getPublic().getEncoded(), "ISO-8859-1")));
+        }
+        // The pool is refilled after it went below the low watermark
+        waitForDepth("1024", AlgorithmConstants.KEYALGORITHM_RSA, 4);
+        assertTrue(KeyPairPool.INSTANCE.getStatistics().toString(), KeyPairPool.INSTANCE.getStatistics().get(0).contains("handed out: 4"));
+    }
+
+    @Test
+    public void testNotPooledOrDisabled() throws Exception {
+        ConfigurationHolder.updateConfiguration("keypool.enabled", "false");
+        KeyPairPool.INSTANCE.reloadConfiguration();
+        assertFalse(KeyPairPool.INSTANCE.isEnabled());
+        assertEquals(-1, KeyPairPool.INSTANCE.getDepth("1024", AlgorithmConstants.KEYALGORITHM_RSA));
+        final KeyPair keyPair = KeyPairPool.INSTANCE.genKeys("1024", AlgorithmConstants.KEYALGORITHM_RSA);
+        assertNotNull(keyPair);
+        assertEquals(1024, KeyTools.getKeyLength(keyPair.getPublic()));
+    }
+
+    private static void waitForDepth(final String keySpec, final String keyAlg, final int depth) throws InterruptedException {
+        for (int i = 0; i < 600 && KeyPairPool.INSTANCE.getDepth(keySpec, keyAlg) < depth; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals("Pool was not filled in time.", depth, KeyPairPool.INSTANCE.getDepth(keySpec, keyAlg));
+    }
+}
@@ -0,0 +1,118 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.cesecore.certificates.certificateprofile.CertificatePolicy;
+import org.cesecore.certificates.certificateprofile.CertificateProfile;
+import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
+import org.junit.Test;
+
+/**
+ * Tests of the compact serialization of data maps.
+ *
+ * @version $Id$
+ */
+public class CompactMapSerializerTest {
+
+    @Test
+    public void testTypes() {
+        final LinkedHashMap<Object, Object> map = new LinkedHashMap<>();
+        map.put("null", null);
+        map.put("string", "Åäö € and a long string " + new String(new char[70000]).replace('\0', 'x'));
+        map.put("boolean", Boolean.TRUE);
+        map.put("int", Integer.valueOf(-4711));
+        map.put("long", Long.valueOf(Long.MAX_VALUE));
+        map.put("float", Float.valueOf(50.0f));
+        map.put("double", Double.valueOf(-0.5));
+        map.put("short", Short.valueOf((short) 3));
+        map.put("byte", Byte.valueOf((byte) -1));
+        map.put("char", Character.valueOf('&'));
+        map.put("date", new Date(1234567890L));
+        map.put(Integer.valueOf(7), "non string key");
+        map.put("list", new ArrayList<>(Arrays.asList("a", Integer.valueOf(1), null)));
+        map.put("set", new TreeSet<>(Arrays.asList("b", "a")));
+        final HashMap<Object, Object> nested = new HashMap<>();
+        nested.put("key", new LinkedHashMap<>());
+        map.put("map", nested);
+        final List<CertificatePolicy> policies = new ArrayList<>();
+        policies.add(new CertificatePolicy("1.2.3.4", CertificatePolicy.id_qt_cps, "http://example.com/cps"));
+        map.put("policies", policies);
+        final String encoded = CompactMapSerializer.encode(map);
+        assertTrue(CompactMapSerializer.isCompact(encoded));
+        final Map<?, ?> decoded = CompactMapSerializer.decode(encoded);
+        assertEquals(LinkedHashMap.class, decoded.getClass());
+        assertEquals(map, decoded);
+        assertEquals("Order of a LinkedHashMap should be kept", new ArrayList<>(map.keySet()), new ArrayList<>(decoded.keySet()));
+        assertEquals(TreeSet.class, decoded.get("set").getClass());
+        assertEquals(HashMap.class, decoded.get("map").getClass());
+        final byte[] bytes = new byte[] { 0, 1, -128 };
+        final Map<Object, Object> byteArrayMap = new LinkedHashMap<>();
+        byteArrayMap.put("bytes", bytes);
+        assertArrayEquals(bytes, (byte[]) CompactMapSerializer.decode(CompactMapSerializer.encode(byteArrayMap)).get("bytes"));
+    }
+
+    @Test
+    public void testCertificateProfile() {
+        final CertificateProfile profile = new CertificateProfile(CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER);
+        @SuppressWarnings("unchecked")
+        final Map<Object, Object> data = (Map<Object, Object>) profile.saveData();
+        final String compact = CompactMapSerializer.encode(new Base64PutHashMap(data));
+        final String xml = XmlSerializer.encode(toStringKeys(data));
+        assertTrue("Compact encoding should be smaller than XML, " + compact.length() + " >= " + xml.length(), compact.length() < xml.length());
+        final CertificateProfile decoded = new CertificateProfile(0);
+        decoded.loadData(CompactMapSerializer.decode(compact));
+        assertEquals(profile.getCertificatePolicies(), decoded.getCertificatePolicies());
+        assertEquals(data, decoded.saveData());
+    }
+
+    @Test
+    public void testInvalidData() {
+        assertFalse(CompactMapSerializer.isCompact(null));
+        assertFalse(CompactMapSerializer.isCompact("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"));
+        try {
+            CompactMapSerializer.decode(CompactMapSerializer.FORMAT_PREFIX + "AQAAAAA="); // a string, not a map
+            fail("Compact data without a map should not be decoded");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            CompactMapSerializer.decode(CompactMapSerializer.FORMAT_PREFIX + "Ew==");
+            fail("Truncated compact data should not be decoded");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private static Map<String, Object> toStringKeys(final Map<Object, Object> map) {
+        final Map<String, Object> ret = new LinkedHashMap<>();
+        for (final Map.Entry<Object, Object> entry : map.entrySet()) {
+            ret.put(String.valueOf(entry.getKey()), entry.getValue());
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,93 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that CertTools returns the same results with the DN cache enabled, and that the cache is bounded.
+ *
+ * @version $Id$
+ */
+public class DnCacheTest {
+
+    private static final String[] DNS = { "CN=Test,O=PrimeKey,C=SE", "C=SE, O=PrimeKey, CN=Reversed", "cn=\"Quoted, Name\",o=Foo\\+Bar,c=SE",
+            "E=test@example.com,CN=Mail,OU=A,OU=B,O=PrimeKey,C=SE", "CN=Plus+Sign,O=PrimeKey" };
+
+    @Before
+    public void before() {
+        DnCache.INSTANCE.setEnabled(false);
+        DnCache.INSTANCE.clear();
+    }
+
+    @After
+    public void after() {
+        DnCache.INSTANCE.reloadConfiguration();
+        DnCache.INSTANCE.clear();
+    }
+
+    @Test
+    public void testSameResultsWithCache() {
+        final String[] bcDns = new String[DNS.length];
+        final X500Name[] x500Names = new X500Name[DNS.length];
+        final String[] cns = new String[DNS.length];
+        for (int i = 0; i < DNS.length; i++) {
+            bcDns[i] = CertTools.stringToBCDNString(DNS[i]);
+            x500Names[i] = CertTools.stringToBcX500Name(DNS[i]);
+            cns[i] = CertTools.getPartFromDN(DNS[i], "CN");
+        }
+        assertEquals(0, DnCache.INSTANCE.getSize());
+        DnCache.INSTANCE.setEnabled(true);
+        // Twice, so that the second round is read from the cache
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < DNS.length; i++) {
+                assertEquals(bcDns[i], CertTools.stringToBCDNString(DNS[i]));
+                assertEquals(x500Names[i], CertTools.stringToBcX500Name(DNS[i]));
+                assertEquals(cns[i], CertTools.getPartFromDN(DNS[i], "CN"));
+            }
+        }
+        assertTrue("Second round should be cache hits.", DnCache.INSTANCE.getHits() >= 3 * DNS.length);
+        assertNull(CertTools.stringToBCDNString(null));
+        assertNull(CertTools.getPartFromDN(DNS[0], "SN"));
+    }
+
+    @Test
+    public void testReturnedListsAreNotShared() {
+        DnCache.INSTANCE.setEnabled(true);
+        final List<String> ous = CertTools.getPartsFromDN(DNS[3], "OU");
+        assertEquals(2, ous.size());
+        ous.clear();
+        assertEquals(2, CertTools.getPartsFromDN(DNS[3], "OU").size());
+        assertEquals(2, CertTools.getPartsFromDN(DNS[3], "OU").size());
+    }
+
+    @Test
+    public void testBounded() {
+        DnCache.INSTANCE.setEnabled(true);
+        DnCache.INSTANCE.setMaxEntries(100);
+        for (int i = 0; i < 1000; i++) {
+            CertTools.stringToBCDNString("CN=Test " + i + ",O=PrimeKey,C=SE");
+        }
+        assertTrue("Cache should not exceed its maximum size, was " + DnCache.INSTANCE.getSize(), DnCache.INSTANCE.getSize() <= 100);
+        assertTrue(DnCache.INSTANCE.getEvictions() > 0);
+    }
+}
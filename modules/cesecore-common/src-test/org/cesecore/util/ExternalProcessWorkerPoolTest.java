@@ -0,0 +1,141 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.cesecore.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests that the persistent worker processes are reused, and are restarted when they crash or hang.
+ *
+ * @version $Id$
+ */
+public class ExternalProcessWorkerPoolTest {
+
+    /** Worker used by the test, which answers with the number of requests it has handled */
+    public static final class CountingWorker {
+        public static void main(final String[] args) throws Exception {
+            final DataInputStream in = new DataInputStream(System.in);
+            final DataOutputStream out = new DataOutputStream(System.out);
+            int count = 0;
+            while (true) {
+                final byte[] request;
+                try {
+                    request = new byte[in.readInt()];
+                } catch (EOFException e) {
+                    return;
+                }
+                in.readFully(request);
+                count++;
+                final String command = new String(request, StandardCharsets.UTF_8);
+                if ("crash".equals(command)) {
+                    System.exit(1);
+                } else if ("hang".equals(command)) {
+                    Thread.sleep(60000);
+                }
+                final boolean failed = "fail".equals(command);
+                final byte[] standardOut = ("request " + count).getBytes(StandardCharsets.UTF_8);
+                final byte[] errorOut = (failed ? "failed" : "").getBytes(StandardCharsets.UTF_8);
+                out.writeInt(failed ? 2 : 0);
+                out.writeInt(standardOut.length);
+                out.write(standardOut);
+                out.writeInt(errorOut.length);
+                out.write(errorOut);
+                out.flush();
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        ExternalProcessWorkerPool.shutdownAll();
+    }
+
+    private static ExternalProcessWorkerPool getPool(final long timeout) {
+        final List<String> command = Arrays.asList(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java", "-cp",
+                System.getProperty("java.class.path"), CountingWorker.class.getName());
+        return ExternalProcessWorkerPool.getInstance("ExternalProcessWorkerPoolTest", command, 1, timeout);
+    }
+
+    private static List<String> process(final ExternalProcessWorkerPool pool, final String request) throws ExternalProcessException {
+        return pool.process(request.getBytes(StandardCharsets.UTF_8), true, true, true, true);
+    }
+
+    @Test
+    public void testWorkerIsReused() throws Exception {
+        final ExternalProcessWorkerPool pool = getPool(30000);
+        assertEquals(Arrays.asList("Exit code: 0", "STDOUT: request 1"), process(pool, "cert"));
+        assertEquals(Arrays.asList("Exit code: 0", "STDOUT: request 2"), process(pool, "cert"));
+        try {
+            process(pool, "fail");
+            fail("Exit code 2 should fail.");
+        } catch (ExternalProcessException e) {
+            assertEquals(Arrays.asList("Exit code: 2", "STDOUT: request 3", "ERROUT: failed"), e.getOut());
+        }
+        assertEquals(Arrays.asList("Exit code: 0", "STDOUT: request 4"), process(pool, "cert"));
+    }
+
+    @Test
+    public void testRemovedPoolIsReplaced() throws Exception {
+        final ExternalProcessWorkerPool pool = getPool(30000);
+        assertEquals(Arrays.asList("Exit code: 0", "STDOUT: request 1"), process(pool, "cert"));
+        ExternalProcessWorkerPool.remove("ExternalProcessWorkerPoolTest");
+        final ExternalProcessWorkerPool newPool = getPool(30000);
+        assertTrue("A removed pool should not be returned again.", pool != newPool);
+        assertEquals(Arrays.asList("Exit code: 0", "STDOUT: request 1"), process(newPool, "cert"));
+    }
+
+    @Test
+    public void testCrashedWorkerIsRestarted() throws Exception {
+        final ExternalProcessWorkerPool pool = getPool(30000);
+        assertEquals(Arrays.asList("Exit code: 0", "STDOUT: request 1"), process(pool, "cert"));
+        try {
+            process(pool, "crash");
+            fail("A crashed worker should fail the request.");
+        } catch (ExternalProcessException e) {
+            assertEquals("Exit code: -1", e.getOut().get(0));
+        }
+        assertEquals(Arrays.asList("Exit code: 0", "STDOUT: request 1"), process(pool, "cert"));
+    }
+
+    @Test
+    public void testHungWorkerIsRestarted() throws Exception {
+        final ExternalProcessWorkerPool pool = getPool(5000);
+        // Starts the worker, which takes a while for a JVM
+        process(pool, "cert");
+        final long start = System.currentTimeMillis();
+        try {
+            process(pool, "hang");
+            fail("A hung worker should fail the request.");
+        } catch (ExternalProcessException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        final long time = System.currentTimeMillis() - start;
+        assertTrue("Took " + time + " ms.", time < 15000);
+        assertEquals(Arrays.asList("Exit code: 0", "STDOUT: request 1"), process(pool, "cert"));
+    }
+}
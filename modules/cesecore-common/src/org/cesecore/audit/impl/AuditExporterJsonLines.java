@@ -0,0 +1,110 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.cesecore.audit.audit.AuditExporter;
+
+/**
+ * Exports audit log as JSON Lines, one JSON object per line and log entry. A compact format that can be written and read
+ * one entry at a time, also when exporting a very large number of entries.
+ *
+ * @version $Id$
+ */
+public class AuditExporterJsonLines implements AuditExporter {
+
+    private Writer writer;
+    private boolean isThisObjectEmpty;
+
+    @Override
+    public void setOutputStream(final OutputStream outputStream) throws IOException {
+        writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), 65536);
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    @Override
+    public void writeStartObject() throws IOException {
+        writer.write('{');
+        isThisObjectEmpty = true;
+    }
+
+    @Override
+    public void writeEndObject() throws IOException {
+        writer.write("}\n");
+    }
+
+    @Override
+    public void writeField(final String key, final long value) throws IOException {
+        writeKey(key);
+        writer.write(Long.toString(value));
+    }
+
+    @Override
+    public void writeField(final String key, final String value) throws IOException {
+        writeKey(key);
+        if (value == null) {
+            writer.write("null");
+        } else {
+            writeString(value);
+        }
+    }
+
+    private void writeKey(final String key) throws IOException {
+        if (!isThisObjectEmpty) {
+            writer.write(',');
+        }
+        isThisObjectEmpty = false;
+        writeString(key);
+        writer.write(':');
+    }
+
+    /** Write a JSON string, escaping quotes, backslashes and control characters. */
+    private void writeString(final String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+            case '"': writer.write("\\\""); break;
+            case '\\': writer.write("\\\\"); break;
+            case '\n': writer.write("\\n"); break;
+            case '\r': writer.write("\\r"); break;
+            case '\t': writer.write("\\t"); break;
+            default:
+                if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                    writer.write(String.format("\\u%04x", Integer.valueOf(c)));
+                } else {
+                    writer.write(c);
+                }
+            }
+        }
+        writer.write('"');
+    }
+
+    @Override
+    public void startObjectLabel(String label) throws IOException {
+    }
+
+    @Override
+    public void endObjectLabel() throws IOException {
+    }
+}
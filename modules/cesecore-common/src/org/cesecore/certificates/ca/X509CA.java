@@ -102,6 +102,7 @@ import org.bouncycastle.cms.jcajce.JceKeyTransRecipientInfoGenerator;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.operator.BufferingContentSigner;
 import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.ContentVerifier;
 import org.bouncycastle.operator.ContentVerifierProvider;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
@@ -133,6 +134,7 @@ import org.cesecore.certificates.certificatetransparency.CTLogException;
 import org.cesecore.certificates.certificatetransparency.CertificateTransparency;
 import org.cesecore.certificates.certificatetransparency.CertificateTransparencyFactory;
 import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.crl.StreamingCrlBuilder;
 import org.cesecore.certificates.endentity.EndEntityInformation;
 import org.cesecore.certificates.endentity.EndEntityType;
 import org.cesecore.certificates.endentity.EndEntityTypes;
@@ -1490,20 +1492,7 @@ public class X509CA extends CA implements Serializable {
 
         // Make DNs
         final X509Certificate cacert = (X509Certificate) getCACertificate();
-        final X500Name issuer;
-        if (cacert == null) {
-            // This is an initial root CA, since no CA-certificate exists
-            // (I don't think we can ever get here!!!)
-            final X500NameStyle nameStyle;
-            if (getUsePrintableStringSubjectDN()) {
-                nameStyle = PrintableStringNameStyle.INSTANCE;
-            } else {
-                nameStyle = CeSecoreNameStyle.INSTANCE;
-            }
-            issuer = CertTools.stringToBcX500Name(getSubjectDN(), nameStyle, getUseLdapDNOrder());
-        } else {
-            issuer = X500Name.getInstance(cacert.getSubjectX500Principal().getEncoded());
-        }
+        final X500Name issuer = getCRLIssuer(cacert);
         final Date thisUpdate = new Date();
         final Date nextUpdate = new Date();
         nextUpdate.setTime(nextUpdate.getTime() + crlPeriod);
@@ -1521,19 +1510,131 @@ public class X509CA extends CA implements Serializable {
             }          
         }
 
-             
+        final Extensions crlExtensions = getCRLExtensions(cryptoToken, cacert, crlnumber, isDeltaCRL, basecrlnumber);
+        for (final ASN1ObjectIdentifier oid : crlExtensions.getExtensionOIDs()) {
+            crlgen.addExtension(crlExtensions.getExtension(oid));
+        }
+
+        final X509CRLHolder crl;
+        if (log.isDebugEnabled()) {
+            log.debug("Signing CRL. Free memory="+Runtime.getRuntime().freeMemory());
+        }
+        final String alias = getCAToken().getAliasFromPurpose(CATokenConstants.CAKEYPURPOSE_CRLSIGN);
+        try {
+            final ContentSigner signer = new BufferingContentSigner(new JcaContentSignerBuilder(sigAlg).setProvider(cryptoToken.getSignProviderName()).build(cryptoToken.getPrivateKey(alias)), 20480);
+            crl = crlgen.build(signer);
+        } catch (OperatorCreationException e) {
+            // Very fatal error
+            throw new RuntimeException("Can not create Jca content signer: ", e);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Finished signing CRL. Free memory="+Runtime.getRuntime().freeMemory());
+        }          
+        
+        // Verify using the CA certificate before returning
+        // If we can not verify the issued CRL using the CA certificate we don't want to issue this CRL
+        // because something is wrong...
+        final PublicKey verifyKey = getCRLVerifyKey(cryptoToken, cacert, alias);
+        try {
+            final ContentVerifierProvider verifier = CertTools.genContentVerifierProvider(verifyKey);
+            if (!crl.isSignatureValid(verifier)) {
+                throw new SignatureException("Error verifying CRL to be returned.");
+            }
+        } catch (OperatorCreationException e) {
+            // Very fatal error
+            throw new RuntimeException("Can not create Jca content signer: ", e);
+        } catch (CertException e) {
+            throw new SignatureException(e.getMessage(), e);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Returning CRL. Free memory="+Runtime.getRuntime().freeMemory());
+        }          
+        return crl;
+    }
+
+    /**
+     * Creates a builder for a full CRL where the revoked certificates are encoded as they are added, instead of being
+     * collected in memory first. Add the revoked certificates to the returned builder and sign it with
+     * {@link #signStreamingCRL(CryptoToken, StreamingCrlBuilder)}. The caller must close the builder.
+     *
+     * @param cryptoToken the crypto token of the CA
+     * @param crlnumber CRLNumber for this CRL
+     * @return a builder with the issuer, validity and extensions of the CRL set
+     */
+    public StreamingCrlBuilder createStreamingCRLBuilder(final CryptoToken cryptoToken, final int crlnumber) throws CryptoTokenOfflineException, IOException {
+        final X509Certificate cacert = (X509Certificate) getCACertificate();
+        final Date thisUpdate = new Date();
+        final Date nextUpdate = new Date(thisUpdate.getTime() + getCRLPeriod());
+        final StreamingCrlBuilder crlBuilder = new StreamingCrlBuilder(getCRLIssuer(cacert), thisUpdate, nextUpdate);
+        final Extensions crlExtensions = getCRLExtensions(cryptoToken, cacert, crlnumber, false, 0);
+        for (final ASN1ObjectIdentifier oid : crlExtensions.getExtensionOIDs()) {
+            crlBuilder.addExtension(crlExtensions.getExtension(oid));
+        }
+        return crlBuilder;
+    }
+
+    /**
+     * Signs a CRL created with {@link #createStreamingCRLBuilder(CryptoToken, int)}. The CRL is verified before it is returned,
+     * in the same way as the CRLs from {@link #generateCRL(CryptoToken, Collection, int)}.
+     *
+     * @param cryptoToken the crypto token of the CA
+     * @param crlBuilder builder with all revoked certificates added
+     * @return the DER encoded CRL
+     * @throws SignatureException if the CRL could not be verified using the CA certificate
+     */
+    public byte[] signStreamingCRL(final CryptoToken cryptoToken, final StreamingCrlBuilder crlBuilder) throws CryptoTokenOfflineException, IOException,
+            SignatureException {
+        final String sigAlg = getCAInfo().getCAToken().getSignatureAlgorithm();
+        final String alias = getCAToken().getAliasFromPurpose(CATokenConstants.CAKEYPURPOSE_CRLSIGN);
+        final PublicKey verifyKey = getCRLVerifyKey(cryptoToken, (X509Certificate) getCACertificate(), alias);
+        if (log.isDebugEnabled()) {
+            log.debug("Signing streamed CRL with " + crlBuilder.getEntryCount() + " entries. Free memory="+Runtime.getRuntime().freeMemory());
+        }
+        try {
+            final ContentSigner signer = new BufferingContentSigner(new JcaContentSignerBuilder(sigAlg).setProvider(cryptoToken.getSignProviderName()).build(cryptoToken.getPrivateKey(alias)), 20480);
+            final ContentVerifier verifier = CertTools.genContentVerifierProvider(verifyKey).get(signer.getAlgorithmIdentifier());
+            return crlBuilder.build(signer, verifier);
+        } catch (OperatorCreationException e) {
+            // Very fatal error
+            throw new RuntimeException("Can not create Jca content signer: ", e);
+        }
+    }
+
+    /** @return the issuer DN of CRLs, taken from the CA certificate if there is one */
+    private X500Name getCRLIssuer(final X509Certificate cacert) {
+        final X500Name issuer;
+        if (cacert == null) {
+            // This is an initial root CA, since no CA-certificate exists
+            // (I don't think we can ever get here!!!)
+            final X500NameStyle nameStyle;
+            if (getUsePrintableStringSubjectDN()) {
+                nameStyle = PrintableStringNameStyle.INSTANCE;
+            } else {
+                nameStyle = CeSecoreNameStyle.INSTANCE;
+            }
+            issuer = CertTools.stringToBcX500Name(getSubjectDN(), nameStyle, getUseLdapDNOrder());
+        } else {
+            issuer = X500Name.getInstance(cacert.getSubjectX500Principal().getEncoded());
+        }
+        return issuer;
+    }
+
+    /** @return the CRL extensions configured for this CA, in the order they should appear on the CRL */
+    private Extensions getCRLExtensions(final CryptoToken cryptoToken, final X509Certificate cacert, final int crlnumber, final boolean isDeltaCRL,
+            final int basecrlnumber) throws CryptoTokenOfflineException, IOException {
+        final ExtensionsGenerator extgen = new ExtensionsGenerator();
         // Authority key identifier
         if (getUseAuthorityKeyIdentifier() == true) {  
             byte[] caSkid = (cacert != null ? CertTools.getSubjectKeyId(cacert) : null);
             if (caSkid != null) {
                 // Use subject key id from CA certificate
                 AuthorityKeyIdentifier aki = new AuthorityKeyIdentifier(caSkid);
-                crlgen.addExtension(Extension.authorityKeyIdentifier, getAuthorityKeyIdentifierCritical(), aki);
+                extgen.addExtension(Extension.authorityKeyIdentifier, getAuthorityKeyIdentifierCritical(), aki);
             } else {
                 JcaX509ExtensionUtils extensionUtils = new JcaX509ExtensionUtils(SHA1DigestCalculator.buildSha1Instance());
                 AuthorityKeyIdentifier aki = extensionUtils.createAuthorityKeyIdentifier(cryptoToken.getPublicKey(getCAToken().getAliasFromPurpose(
                         CATokenConstants.CAKEYPURPOSE_CRLSIGN)));
-                crlgen.addExtension(Extension.authorityKeyIdentifier, getAuthorityKeyIdentifierCritical(), aki);
+                extgen.addExtension(Extension.authorityKeyIdentifier, getAuthorityKeyIdentifierCritical(), aki);
             }
         }
         
@@ -1550,13 +1651,13 @@ public class X509CA extends CA implements Serializable {
         if(accessList.size() > 0) {
             AuthorityInformationAccess authorityInformationAccess = AuthorityInformationAccess.getInstance(new DERSequence(accessList));
             // "This CRL extension MUST NOT be marked critical." according to rfc4325
-            crlgen.addExtension(Extension.authorityInfoAccess, false, authorityInformationAccess);
+            extgen.addExtension(Extension.authorityInfoAccess, false, authorityInformationAccess);
         }
                 
         // CRLNumber extension
         if (getUseCRLNumber() == true) {
             CRLNumber crlnum = new CRLNumber(BigInteger.valueOf(crlnumber));
-            crlgen.addExtension(Extension.cRLNumber, this.getCRLNumberCritical(), crlnum);
+            extgen.addExtension(Extension.cRLNumber, this.getCRLNumberCritical(), crlnum);
         }
 
         // ExpiredCertsOnCRL extension (is always specified as not critical)
@@ -1582,7 +1683,7 @@ public class X509CA extends CA implements Serializable {
             sdf.applyPattern(GMTdatePattern);
             // For now force parameter with date equals NotBefore of CA certificate, or now            
             final Date keepDate = cacert != null ? cacert.getNotBefore() : new Date();
-            crlgen.addExtension(ExpiredCertsOnCRL, false, new DERGeneralizedTime(keepDate));
+            extgen.addExtension(ExpiredCertsOnCRL, false, new DERGeneralizedTime(keepDate));
             if (log.isDebugEnabled()) {
                 log.debug("ExpiredCertsOnCRL extension added to CRL. Keep date: "+keepDate);
             }
@@ -1591,7 +1692,7 @@ public class X509CA extends CA implements Serializable {
         if (isDeltaCRL) {
             // DeltaCRLIndicator extension
             CRLNumber basecrlnum = new CRLNumber(BigInteger.valueOf(basecrlnumber));
-            crlgen.addExtension(Extension.deltaCRLIndicator, true, basecrlnum);
+            extgen.addExtension(Extension.deltaCRLIndicator, true, basecrlnum);
         }
         // CRL Distribution point URI and Freshest CRL DP
         if (getUseCrlDistributionPointOnCrl()) {
@@ -1605,7 +1706,7 @@ public class X509CA extends CA implements Serializable {
                 // According to the RFC, IDP must be a critical extension.
                 // Nonetheless, at the moment, Mozilla is not able to correctly
                 // handle the IDP extension and discards the CRL if it is critical.
-                crlgen.addExtension(Extension.issuingDistributionPoint, getCrlDistributionPointOnCrlCritical(), idp);
+                extgen.addExtension(Extension.issuingDistributionPoint, getCrlDistributionPointOnCrlCritical(), idp);
             }
 
             if (!isDeltaCRL) {
@@ -1618,31 +1719,16 @@ public class X509CA extends CA implements Serializable {
                     // CRL must not be marked as critical. Therefore it is
                     // hardcoded as not critical and is independent of
                     // getCrlDistributionPointOnCrlCritical().
-                    crlgen.addExtension(Extension.freshestCRL, false, ext);
+                    extgen.addExtension(Extension.freshestCRL, false, ext);
                 }
 
             }
         }
+        return extgen.generate();
+    }
 
-        final X509CRLHolder crl;
-        if (log.isDebugEnabled()) {
-            log.debug("Signing CRL. Free memory="+Runtime.getRuntime().freeMemory());
-        }
-        final String alias = getCAToken().getAliasFromPurpose(CATokenConstants.CAKEYPURPOSE_CRLSIGN);
-        try {
-            final ContentSigner signer = new BufferingContentSigner(new JcaContentSignerBuilder(sigAlg).setProvider(cryptoToken.getSignProviderName()).build(cryptoToken.getPrivateKey(alias)), 20480);
-            crl = crlgen.build(signer);
-        } catch (OperatorCreationException e) {
-            // Very fatal error
-            throw new RuntimeException("Can not create Jca content signer: ", e);
-        }
-        if (log.isDebugEnabled()) {
-            log.debug("Finished signing CRL. Free memory="+Runtime.getRuntime().freeMemory());
-        }          
-        
-        // Verify using the CA certificate before returning
-        // If we can not verify the issued CRL using the CA certificate we don't want to issue this CRL
-        // because something is wrong...
+    /** @return the key used to verify a CRL before it is returned, from the CA certificate if there is one */
+    private PublicKey getCRLVerifyKey(final CryptoToken cryptoToken, final X509Certificate cacert, final String alias) throws CryptoTokenOfflineException {
         final PublicKey verifyKey;
         if (cacert != null) {
             verifyKey = cacert.getPublicKey();
@@ -1655,21 +1741,7 @@ public class X509CA extends CA implements Serializable {
                 log.trace("Got the verify key from the CA token.");
             }
         }
-        try {
-            final ContentVerifierProvider verifier = CertTools.genContentVerifierProvider(verifyKey);
-            if (!crl.isSignatureValid(verifier)) {
-                throw new SignatureException("Error verifying CRL to be returned.");
-            }
-        } catch (OperatorCreationException e) {
-            // Very fatal error
-            throw new RuntimeException("Can not create Jca content signer: ", e);
-        } catch (CertException e) {
-            throw new SignatureException(e.getMessage(), e);
-        }
-        if (log.isDebugEnabled()) {
-            log.debug("Returning CRL. Free memory="+Runtime.getRuntime().freeMemory());
-        }          
-        return crl;
+        return verifyKey;
     }
 
     /**
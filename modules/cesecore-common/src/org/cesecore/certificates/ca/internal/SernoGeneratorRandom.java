@@ -19,6 +19,7 @@ import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -28,6 +29,9 @@ import org.cesecore.internal.InternalResources;
 /**
  * Implements a singleton serial number generator using SecureRandom. This generator generates random 8 octec (64 bits) serial numbers.
  * 
+ * To scale with the number of concurrent requests, the generator holds ca.rnginstances separately seeded SecureRandom instances of the configured
+ * algorithm, and each call uses one that is not in use by another thread.
+ * 
  * RFC3280 defines serialNumber be positive INTEGER, and X.690 defines INTEGER consist of one or more octets. X.690 also defines as follows:
  * 
  * If the contents octets of an integer value encoding consist of more than one octet, then the bits of the first octet and bit 8 of the second octet:
@@ -61,19 +65,53 @@ public class SernoGeneratorRandom implements SernoGenerator {
     /** random generator algorithm, default SHA1PRNG */
     private String algorithm = "SHA1PRNG";
 
-    /** number of bytes serial number to generate, default 8 */
-    private int noOctets = 8;
+    /** Size and valid range of serial numbers, replaced as a whole when the size is changed */
+    private volatile SernoRange range = new SernoRange(8);
 
-    /** random generator */
-    private SecureRandom random;
+    /**
+     * Random generators, each with its own lock. Concurrent callers use different generators, so they don't have to wait for each other.
+     * Replaced as a whole when the algorithm is changed.
+     */
+    private volatile Stripe[] stripes;
 
     /** A handle to the unique Singleton instance. */
     private static SernoGeneratorRandom instance = null;
 
-    /** lowest possible value we should deliver when getSerno is called */
-    private BigInteger lowest = new BigInteger("0080000000000000", 16); // Default value for 64 bit serials
-    /** highest possible value we should deliver when getSerno is called */
-    private BigInteger highest = new BigInteger("7FFFFFFFFFFFFFFF", 16); // Default value for 64 bit serials
+    /** A random generator and the lock that guards it */
+    private static class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final SecureRandom random;
+
+        Stripe(final SecureRandom random) {
+            this.random = random;
+        }
+    }
+
+    /** Number of octets of serial numbers, and the lowest and highest possible value we should deliver when getSerno is called */
+    private static class SernoRange {
+        private final int noOctets;
+        private final BigInteger lowest;
+        private final BigInteger highest;
+
+        SernoRange(final int noOctets) {
+            this.noOctets = noOctets;
+            if (noOctets == 0) {
+                // Only for testing, see getSerno
+                lowest = BigInteger.ZERO;
+                highest = BigInteger.ZERO;
+                return;
+            }
+            char[] arr = new char[noOctets*2];
+            // 00800000 (filled with 0 to the no of octets)
+            Arrays.fill(arr, '0');
+            arr[2] = '8';
+            lowest = new BigInteger(String.valueOf(arr), 16);
+            // 7FFFFFFF (filled with F to the no of octets)
+            Arrays.fill(arr, 'F');
+            arr[0] = '7';
+            highest = new BigInteger(String.valueOf(arr), 16);
+        }
+    }
 
     /**
      * Creates a serial number generator using SecureRandom
@@ -90,14 +128,26 @@ public class SernoGeneratorRandom implements SernoGenerator {
         }
     }
 
+    /** Creates the configured number of random generators, each seeded separately */
     private void init() {
+        final Stripe[] newStripes = new Stripe[Math.max(1, CesecoreConfiguration.getCaSerialNumberRngInstances())];
+        for (int i = 0; i < newStripes.length; i++) {
+            newStripes[i] = new Stripe(createRandom(i == 0));
+        }
+        stripes = newStripes;
+    }
+
+    private SecureRandom createRandom(final boolean logAlgorithm) {
+        SecureRandom random = null;
         // Init random number generator for random serial numbers. 
         // SecureRandom provides a cryptographically strong random number generator (RNG).
         try {
             // Use a specified algorithm if ca.rngalgorithm is provided and it's not set to default
             if (!StringUtils.isEmpty(algorithm) && !StringUtils.containsIgnoreCase(algorithm, "default")) {
                 random = SecureRandom.getInstance(algorithm);
-                log.info("Using "+algorithm+" serialNumber RNG algorithm.");
+                if (logAlgorithm) {
+                    log.info("Using "+algorithm+" serialNumber RNG algorithm.");
+                }
             } else if (!StringUtils.isEmpty(algorithm) && StringUtils.equalsIgnoreCase(algorithm, "defaultstrong")) {
                 // If defaultstrong is specified and we use >=JDK8 try the getInstanceStrong to get a guaranteed strong random number generator.
                 // Note that this may give you a generator that takes >30 seconds to create a single random number. 
@@ -105,7 +155,9 @@ public class SernoGeneratorRandom implements SernoGenerator {
                 try {
                     final Method methodGetInstanceStrong = SecureRandom.class.getDeclaredMethod("getInstanceStrong");
                     random = (SecureRandom) methodGetInstanceStrong.invoke(null);
-                    log.info("Using SecureRandom.getInstanceStrong() with " + random.getAlgorithm() + " for serialNumber RNG algorithm.");
+                    if (logAlgorithm) {
+                        log.info("Using SecureRandom.getInstanceStrong() with " + random.getAlgorithm() + " for serialNumber RNG algorithm.");
+                    }
                 } catch (NoSuchMethodException | SecurityException | IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
                     throw new IllegalStateException("SecureRandom.getInstanceStrong() is not available or failed invocation. (This method was added in Java 8.)");
                 }
@@ -114,7 +166,9 @@ public class SernoGeneratorRandom implements SernoGenerator {
                 // On Linux the default Java implementation uses the (secure) /dev/(u)random, but on windows something else
                 // On JDK8/Linux this gives you a NativePRNG, while SecureRandom.getInstanceStrong() gives a NativePRNGBlocking.
                 random = new SecureRandom();
-                log.info("Using default " + random.getAlgorithm() + " serialNumber RNG algorithm.");
+                if (logAlgorithm) {
+                    log.info("Using default " + random.getAlgorithm() + " serialNumber RNG algorithm.");
+                }
             }
         } catch (NoSuchAlgorithmException e) {
             //This state is unrecoverable, and since algorithm is set in configuration requires a redeploy to handle
@@ -126,6 +180,7 @@ public class SernoGeneratorRandom implements SernoGenerator {
         }
         // Call nextBytes directly after in order to force seeding if not already done. SecureRandom typically seeds on first call.
         random.nextBytes(new byte[20]);
+        return random;
     }
 
     /**
@@ -141,22 +196,23 @@ public class SernoGeneratorRandom implements SernoGenerator {
     }
 
     @Override
-    public synchronized BigInteger getSerno() {
+    public BigInteger getSerno() {
+        final SernoRange range = this.range;
         // This is only for testing, of size is set to 0 we will generate random number
         // between 1 and 4, this will give collisions often...
-        if (noOctets == 0) {
+        if (range.noOctets == 0) {
             Random rand = new Random();
             return new java.math.BigInteger(Long.toString(rand.nextInt(4)));
         }
 
-        final byte[] sernobytes = new byte[noOctets];
+        final byte[] sernobytes = new byte[range.noOctets];
         boolean ok = false;
         BigInteger serno = null;
         while (!ok) {
-            random.nextBytes(sernobytes);
+            nextBytes(sernobytes);
             serno = (new java.math.BigInteger(sernobytes)).abs();
             // Must be within the range 0080000000000000 - 7FFFFFFFFFFFFFFF
-            if (checkSernoValidity(serno)) {
+            if (checkSernoValidity(range, serno)) {
                 ok = true;
             } else {
                 String msg = intres.getLocalizedMessage("sernogenerator.discarding");
@@ -166,8 +222,39 @@ public class SernoGeneratorRandom implements SernoGenerator {
         return serno;
     }
 
+    /**
+     * Fills the array with random bytes from one of the random generators. The generator of the calling thread is used if it is free,
+     * otherwise the first free one, so a thread only waits when all generators are in use.
+     */
+    private void nextBytes(final byte[] bytes) {
+        final Stripe[] stripes = this.stripes;
+        final int start = (int) (Thread.currentThread().getId() % stripes.length);
+        for (int i = 0; i < stripes.length; i++) {
+            final Stripe stripe = stripes[(start + i) % stripes.length];
+            if (stripe.lock.tryLock()) {
+                try {
+                    stripe.random.nextBytes(bytes);
+                    return;
+                } finally {
+                    stripe.lock.unlock();
+                }
+            }
+        }
+        final Stripe stripe = stripes[start];
+        stripe.lock.lock();
+        try {
+            stripe.random.nextBytes(bytes);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
     protected boolean checkSernoValidity(final BigInteger serno) {
-        if ((serno.compareTo(lowest) >= 0) && (serno.compareTo(highest) <= 0)) {
+        return checkSernoValidity(range, serno);
+    }
+
+    private static boolean checkSernoValidity(final SernoRange range, final BigInteger serno) {
+        if ((serno.compareTo(range.lowest) >= 0) && (serno.compareTo(range.highest) <= 0)) {
             return true;
         }
         return false;
@@ -175,21 +262,27 @@ public class SernoGeneratorRandom implements SernoGenerator {
 
     @Override
     public int getNoSernoBytes() {
-        return noOctets;
+        return range.noOctets;
     }
 
     @Override
     public void setSeed(final long seed) {
-        random.setSeed(seed);
+        for (final Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.random.setSeed(seed);
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
     }
 
     @Override
-    public void setAlgorithm(final String algo) throws NoSuchAlgorithmException {
+    public synchronized void setAlgorithm(final String algo) throws NoSuchAlgorithmException {
         // Since re-initialization is expensive, we only do it if we changed the algo
         if (this.algorithm == null || !this.algorithm.equals(algo)) {
             this.algorithm = algo;
             // We must force re-init after choosing a new algorithm
-            this.random = null;
             init();
         }
     }
@@ -198,26 +291,17 @@ public class SernoGeneratorRandom implements SernoGenerator {
      * @return the random generator algorithm as reported by the underlying Java random number generator.
      */
     protected String getAlgorithm() {
-        return random.getAlgorithm();
+        return stripes[0].random.getAlgorithm();
     }
     
     @Override
-    public void setSernoOctetSize(final int noOctets) {
-        if (this.noOctets != noOctets) {
+    public synchronized void setSernoOctetSize(final int noOctets) {
+        if (range.noOctets != noOctets) {
         	// We allow 0 octets for testing
             if ((noOctets > 20) && (noOctets != 0)) {
                 throw new IllegalArgumentException("SernoOctetSize must be between 4 and 20 bytes for this generator.");
             }
-            char[] arr = new char[noOctets*2];
-            // 00800000 (filled with 0 to the no of octets)
-            Arrays.fill(arr, '0');
-            arr[2] = '8';
-            lowest = new BigInteger(String.valueOf(arr), 16);
-            // 7FFFFFFF (filled with F to the no of octets)
-            Arrays.fill(arr, 'F');
-            arr[0] = '7';
-            highest = new BigInteger(String.valueOf(arr), 16);
-            this.noOctets = noOctets;
+            range = new SernoRange(noOctets);
         }
     }
 
@@ -0,0 +1,495 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.config.CesecoreConfiguration;
+
+/**
+ * In-memory index of the status of all certificates issued by a CA, so that status lookups for OCSP and the revoked certificates of delta
+ * CRLs can be answered without a database query.
+ *
+ * An issuer is added to the index the first time its status is asked for, and its certificates are loaded in the background by
+ * CertificateStoreSessionBean.syncRevocationStatusIndex(). Until then, and for any certificate the index does not know, lookups return
+ * null and the caller should read the database as before.
+ *
+ * Certificates that are plainly not revoked, which is the vast majority, are kept in a compact hash table with only a 128 bit key derived
+ * from the serial number and the certificate profile id. Everything else is kept with its full status, so that the answer is exactly the
+ * same as if it had been read from the database.
+ *
+ * Status changes made on this node mark the serial number as dirty, so that it is read from the database until the change has surely
+ * committed and the index entry has been reloaded. Changes made on other nodes are picked up through the updateTime column, see
+ * CesecoreConfiguration.getRevocationStatusIndexSyncInterval().
+ *
+ * @version $Id$
+ */
+public enum RevocationStatusIndex {
+    INSTANCE;
+
+    private static final Logger log = Logger.getLogger(RevocationStatusIndex.class);
+
+    /** The status of a certificate that is not plainly active, with what is needed for a delta CRL entry. */
+    private static class StatusEntry {
+        private final String fingerprint;
+        private final int status;
+        private final long expireDate;
+        private final CertificateStatus certificateStatus;
+
+        private StatusEntry(final String fingerprint, final int status, final long expireDate, final CertificateStatus certificateStatus) {
+            this.fingerprint = fingerprint;
+            this.status = status;
+            this.expireDate = expireDate;
+            this.certificateStatus = certificateStatus;
+        }
+
+        /** Same selection as CertificateData.getRevokedCertInfos for delta CRLs */
+        private boolean isOnDeltaCrl(final long lastBaseCrlDate) {
+            return certificateStatus.revocationDate.getTime() > lastBaseCrlDate && (status == CertificateConstants.CERT_REVOKED
+                    || status == CertificateConstants.CERT_ACTIVE || status == CertificateConstants.CERT_NOTIFIEDABOUTEXPIRATION);
+        }
+    }
+
+    /**
+     * Open addressing hash table from serial number to certificate profile id. Lookups do not lock and may run concurrently with a single
+     * writer. The table does not grow, a full table is replaced by a larger copy.
+     */
+    private static class SerialTable {
+        private static final int EMPTY = Integer.MIN_VALUE;
+        private static final int DELETED = Integer.MIN_VALUE + 1;
+        private static final double MAX_LOAD_FACTOR = 0.75;
+
+        private final long[] keys;
+        private final int[] values;
+        private final int mask;
+        private final int maxUsedSlots;
+        /** Incremented after each change, so that lookups see the changes in the table */
+        private volatile int version = 0;
+        private int size = 0;
+        private int usedSlots = 0;
+
+        private SerialTable(final int slots) {
+            this.keys = new long[2 * slots];
+            this.values = new int[slots];
+            Arrays.fill(values, EMPTY);
+            this.mask = slots - 1;
+            this.maxUsedSlots = (int) (slots * MAX_LOAD_FACTOR);
+        }
+
+        private static boolean isStorable(final int value) {
+            return value != EMPTY && value != DELETED;
+        }
+
+        /** @return the value, or EMPTY if the key is not in the table */
+        private int get(final long high, final long low) {
+            if (version == 0) {
+                return EMPTY;
+            }
+            int slot = (int) mix(high ^ low) & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                final int value = values[slot];
+                if (value == EMPTY) {
+                    return EMPTY;
+                }
+                if (value != DELETED && keys[2 * slot] == high && keys[2 * slot + 1] == low) {
+                    return value;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return EMPTY;
+        }
+
+        /** @return false if the table must be replaced by a larger one first */
+        private boolean put(final long high, final long low, final int value) {
+            int slot = (int) mix(high ^ low) & mask;
+            int firstDeleted = -1;
+            for (int probes = 0; probes <= mask; probes++) {
+                final int current = values[slot];
+                if (current == EMPTY) {
+                    break;
+                }
+                if (current == DELETED) {
+                    if (firstDeleted == -1) {
+                        firstDeleted = slot;
+                    }
+                } else if (keys[2 * slot] == high && keys[2 * slot + 1] == low) {
+                    values[slot] = value;
+                    version++;
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (firstDeleted != -1) {
+                slot = firstDeleted;
+            } else {
+                if (usedSlots >= maxUsedSlots) {
+                    return false;
+                }
+                usedSlots++;
+            }
+            // Write the key before the value, since a reader takes a non-empty value to mean that the slot is in use
+            keys[2 * slot] = high;
+            keys[2 * slot + 1] = low;
+            values[slot] = value;
+            size++;
+            version++;
+            return true;
+        }
+
+        private boolean remove(final long high, final long low) {
+            int slot = (int) mix(high ^ low) & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                final int value = values[slot];
+                if (value == EMPTY) {
+                    return false;
+                }
+                if (value != DELETED && keys[2 * slot] == high && keys[2 * slot + 1] == low) {
+                    values[slot] = DELETED;
+                    size--;
+                    version++;
+                    return true;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return false;
+        }
+
+        /** @return a table with room for twice the current number of entries, with all entries of this table */
+        private SerialTable grow() {
+            final SerialTable ret = new SerialTable(Math.max(16, Integer.highestOneBit(Math.max(1, size)) * 4));
+            for (int slot = 0; slot <= mask; slot++) {
+                if (isStorable(values[slot])) {
+                    ret.put(keys[2 * slot], keys[2 * slot + 1], values[slot]);
+                }
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * The status of all certificates of one issuer. Changes are serialized, lookups do not lock.
+     */
+    public static class IssuerContent {
+        private final int maxEntries;
+        private final ConcurrentHashMap<BigInteger, StatusEntry> statusEntries = new ConcurrentHashMap<>();
+        private volatile SerialTable activeSerials = new SerialTable(1024);
+        private volatile long syncedTime;
+
+        /**
+         * @param maxEntries the maximum number of certificates, see CesecoreConfiguration.getRevocationStatusIndexMaxEntries()
+         * @param syncedTime the time when the first certificate was read from the database
+         */
+        public IssuerContent(final int maxEntries, final long syncedTime) {
+            this.maxEntries = maxEntries;
+            this.syncedTime = syncedTime;
+        }
+
+        /** @return the time up to which all changes in the database have been read into this content */
+        public long getSyncedTime() {
+            return syncedTime;
+        }
+
+        public void setSyncedTime(final long syncedTime) {
+            if (syncedTime > this.syncedTime) {
+                this.syncedTime = syncedTime;
+            }
+        }
+
+        /** @return the number of certificates */
+        public int size() {
+            return statusEntries.size() + activeSerials.size;
+        }
+
+        /**
+         * Add or update the status of a certificate.
+         *
+         * @param certificateStatus the status as returned by CertificateStatusHelper for the database row
+         * @return false if the issuer has too many certificates to be indexed
+         */
+        public synchronized boolean update(final String fingerprint, final BigInteger serialNumber, final int status, final long expireDate,
+                final CertificateStatus certificateStatus) {
+            final long[] key = getKey(serialNumber);
+            // Add the new status before the old one is removed, so a concurrent lookup finds one or the other, or falls back to the database
+            if (certificateStatus.equals(CertificateStatus.OK) && certificateStatus.revocationReason == RevokedCertInfo.NOT_REVOKED
+                    && certificateStatus.revocationDate.getTime() == -1L && SerialTable.isStorable(certificateStatus.certificateProfileId)) {
+                if (!statusEntries.containsKey(serialNumber) && size() >= maxEntries && activeSerials.get(key[0], key[1]) == SerialTable.EMPTY) {
+                    return false;
+                }
+                if (!activeSerials.put(key[0], key[1], certificateStatus.certificateProfileId)) {
+                    final SerialTable larger = activeSerials.grow();
+                    larger.put(key[0], key[1], certificateStatus.certificateProfileId);
+                    activeSerials = larger;
+                }
+                statusEntries.remove(serialNumber);
+            } else {
+                if (!statusEntries.containsKey(serialNumber) && size() >= maxEntries && activeSerials.get(key[0], key[1]) == SerialTable.EMPTY) {
+                    return false;
+                }
+                statusEntries.put(serialNumber, new StatusEntry(fingerprint, status, expireDate, certificateStatus));
+                activeSerials.remove(key[0], key[1]);
+            }
+            return true;
+        }
+
+        /** Remove a certificate that no longer exists in the database. */
+        public synchronized void remove(final BigInteger serialNumber) {
+            final long[] key = getKey(serialNumber);
+            activeSerials.remove(key[0], key[1]);
+            statusEntries.remove(serialNumber);
+        }
+
+        /** @return the status of the certificate, or null if it is not known */
+        public CertificateStatus getStatus(final BigInteger serialNumber) {
+            final StatusEntry statusEntry = statusEntries.get(serialNumber);
+            if (statusEntry != null) {
+                return statusEntry.certificateStatus;
+            }
+            final long[] key = getKey(serialNumber);
+            final int certificateProfileId = activeSerials.get(key[0], key[1]);
+            if (certificateProfileId == SerialTable.EMPTY) {
+                return null;
+            }
+            return new CertificateStatus(CertificateStatus.OK.toString(), -1L, RevokedCertInfo.NOT_REVOKED, certificateProfileId);
+        }
+
+        /**
+         * @param lastBaseCrlDate the creation time of the last base CRL
+         * @param excluded serial numbers to leave out
+         * @return the entries of a delta CRL, the same as CertificateData.getRevokedCertInfos would return
+         */
+        public List<RevokedCertInfo> getDeltaCrlEntries(final long lastBaseCrlDate, final Set<BigInteger> excluded) {
+            final List<RevokedCertInfo> ret = new ArrayList<>();
+            for (final Map.Entry<BigInteger, StatusEntry> entry : statusEntries.entrySet()) {
+                final StatusEntry statusEntry = entry.getValue();
+                if (statusEntry.isOnDeltaCrl(lastBaseCrlDate) && !excluded.contains(entry.getKey())) {
+                    int revocationReason = statusEntry.certificateStatus.revocationReason;
+                    if (revocationReason == RevokedCertInfo.NOT_REVOKED) {
+                        revocationReason = RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL;
+                    }
+                    ret.add(new RevokedCertInfo(statusEntry.fingerprint.getBytes(), entry.getKey().toByteArray(),
+                            statusEntry.certificateStatus.revocationDate.getTime(), revocationReason, statusEntry.expireDate));
+                }
+            }
+            return ret;
+        }
+    }
+
+    /** What is known about an issuer that has been asked for. */
+    private static class IssuerState {
+        private volatile IssuerContent content = null;
+        private volatile long loadedTime = 0;
+        /** Time until which the issuer is not loaded again, since it has too many certificates */
+        private volatile long tooLargeUntil = 0;
+        private volatile long invalidatedTime = 0;
+        /** Serial numbers changed on this node, and when */
+        private final ConcurrentHashMap<BigInteger, Long> dirtySerials = new ConcurrentHashMap<>();
+    }
+
+    private final ConcurrentHashMap<String, IssuerState> issuers = new ConcurrentHashMap<>();
+
+    /** @return true if the index should be used */
+    public boolean isEnabled() {
+        return CesecoreConfiguration.isRevocationStatusIndexEnabled();
+    }
+
+    /**
+     * @param issuerDn the issuer DN in the form returned by CertTools.stringToBCDNString
+     * @return the status of the certificate, or null if it is not known and must be read from the database
+     */
+    public CertificateStatus getStatus(final String issuerDn, final BigInteger serialNumber) {
+        if (!isEnabled()) {
+            return null;
+        }
+        final IssuerState issuerState = issuers.get(issuerDn);
+        if (issuerState == null) {
+            // Load this issuer the next time the index is synchronized
+            issuers.putIfAbsent(issuerDn, new IssuerState());
+            return null;
+        }
+        final IssuerContent content = issuerState.content;
+        if (content == null || (!issuerState.dirtySerials.isEmpty() && issuerState.dirtySerials.containsKey(serialNumber))) {
+            return null;
+        }
+        return content.getStatus(serialNumber);
+    }
+
+    /** @return true if the certificates of the issuer are in the index */
+    public boolean isLoaded(final String issuerDn) {
+        final IssuerState issuerState = issuers.get(issuerDn);
+        return issuerState != null && issuerState.content != null;
+    }
+
+    /** Called when the status of a certificate is changed on this node. */
+    public void invalidate(final String issuerDn, final BigInteger serialNumber) {
+        final IssuerState issuerState = issuers.get(issuerDn);
+        if (issuerState != null && issuerState.tooLargeUntil == 0) {
+            issuerState.dirtySerials.put(serialNumber, Long.valueOf(System.currentTimeMillis()));
+        }
+    }
+
+    /** Called when the status of all certificates of an issuer is changed on this node. The issuer is loaded again. */
+    public void invalidateIssuer(final String issuerDn) {
+        final IssuerState issuerState = issuers.get(issuerDn);
+        if (issuerState != null) {
+            issuerState.invalidatedTime = System.currentTimeMillis();
+            issuerState.content = null;
+        }
+    }
+
+    /** @return the issuers that should be loaded from the database */
+    public List<String> getIssuersToLoad() {
+        final long now = System.currentTimeMillis();
+        final long reloadInterval = CesecoreConfiguration.getRevocationStatusIndexReloadInterval();
+        final List<String> ret = new ArrayList<>();
+        for (final Map.Entry<String, IssuerState> entry : issuers.entrySet()) {
+            final IssuerState issuerState = entry.getValue();
+            if (issuerState.tooLargeUntil > now) {
+                continue;
+            }
+            if (issuerState.content == null || (reloadInterval > 0 && issuerState.loadedTime + reloadInterval < now)) {
+                ret.add(entry.getKey());
+            }
+        }
+        return ret;
+    }
+
+    /** @return all issuers that have been asked for */
+    public Collection<String> getIssuers() {
+        return new ArrayList<>(issuers.keySet());
+    }
+
+    /** @return the content of each loaded issuer */
+    public Map<String, IssuerContent> getLoadedIssuers() {
+        final Map<String, IssuerContent> ret = new HashMap<>();
+        for (final Map.Entry<String, IssuerState> entry : issuers.entrySet()) {
+            final IssuerContent content = entry.getValue().content;
+            if (content != null) {
+                ret.put(entry.getKey(), content);
+            }
+        }
+        return ret;
+    }
+
+    /** @return the content of the issuer, or null if it is not loaded */
+    public IssuerContent getContent(final String issuerDn) {
+        final IssuerState issuerState = issuers.get(issuerDn);
+        return issuerState == null ? null : issuerState.content;
+    }
+
+    /**
+     * Make newly loaded content available for lookups.
+     * @param loadStartTime the time before the first certificate was read from the database
+     */
+    public void setLoaded(final String issuerDn, final IssuerContent content, final long loadStartTime) {
+        final IssuerState issuerState = issuers.get(issuerDn);
+        if (issuerState == null || issuerState.invalidatedTime >= loadStartTime) {
+            // All certificates were changed while loading, so try again
+            return;
+        }
+        issuerState.tooLargeUntil = 0;
+        issuerState.loadedTime = System.currentTimeMillis();
+        issuerState.content = content;
+        if (log.isDebugEnabled()) {
+            log.debug("Loaded revocation status index of '" + issuerDn + "' with " + content.size() + " certificates.");
+        }
+    }
+
+    /** Stop indexing an issuer with more certificates than allowed, until it is time to reload it. */
+    public void setTooLarge(final String issuerDn) {
+        final IssuerState issuerState = issuers.get(issuerDn);
+        if (issuerState != null) {
+            log.info("Issuer '" + issuerDn + "' has more than " + CesecoreConfiguration.getRevocationStatusIndexMaxEntries()
+                    + " certificates and will not be kept in the revocation status index.");
+            final long reloadInterval = CesecoreConfiguration.getRevocationStatusIndexReloadInterval();
+            issuerState.tooLargeUntil = reloadInterval > 0 ? System.currentTimeMillis() + reloadInterval : Long.MAX_VALUE;
+            issuerState.content = null;
+            issuerState.dirtySerials.clear();
+        }
+    }
+
+    /** @return true if the status of the certificate has been changed on this node and has not yet been reloaded */
+    public boolean isDirty(final String issuerDn, final BigInteger serialNumber) {
+        final IssuerState issuerState = issuers.get(issuerDn);
+        return issuerState != null && issuerState.dirtySerials.containsKey(serialNumber);
+    }
+
+    /** @return the serial numbers changed on this node before the given time, with the time they were changed */
+    public Map<BigInteger, Long> getDirtySerials(final String issuerDn, final long changedBefore) {
+        final Map<BigInteger, Long> ret = new HashMap<>();
+        final IssuerState issuerState = issuers.get(issuerDn);
+        if (issuerState != null) {
+            for (final Map.Entry<BigInteger, Long> entry : issuerState.dirtySerials.entrySet()) {
+                if (entry.getValue().longValue() < changedBefore) {
+                    ret.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return ret;
+    }
+
+    /** Stop reading the serial number from the database, unless it has been changed again after the given time. */
+    public void clearDirty(final String issuerDn, final BigInteger serialNumber, final Long changedTime) {
+        final IssuerState issuerState = issuers.get(issuerDn);
+        if (issuerState != null) {
+            issuerState.dirtySerials.remove(serialNumber, changedTime);
+        }
+    }
+
+    /** Remove all issuers from the index. */
+    public void flush() {
+        issuers.clear();
+    }
+
+    /**
+     * Serial numbers shorter than 128 bits are used as they are. Longer ones are hashed, with the highest bit set so that they cannot
+     * be mistaken for a short serial number.
+     */
+    private static long[] getKey(final BigInteger serialNumber) {
+        if (serialNumber.signum() >= 0 && serialNumber.bitLength() < 128) {
+            return new long[] { serialNumber.shiftRight(64).longValue(), serialNumber.longValue() };
+        }
+        final byte[] hash;
+        try {
+            hash = MessageDigest.getInstance("SHA-256").digest(serialNumber.toByteArray());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < 8; i++) {
+            high = (high << 8) | (hash[i] & 0xff);
+            low = (low << 8) | (hash[i + 8] & 0xff);
+        }
+        return new long[] { high | Long.MIN_VALUE, low };
+    }
+
+    /** Spread the bits of the key, since serial numbers are not always random */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        return value;
+    }
+}
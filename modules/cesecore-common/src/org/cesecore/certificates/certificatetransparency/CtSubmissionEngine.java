@@ -0,0 +1,662 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificatetransparency;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.ASN1TaggedObject;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERTaggedObject;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.util.encoders.Hex;
+import org.cesecore.config.CesecoreConfiguration;
+import org.cesecore.util.Base64;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Submits a certificate or pre-certificate to CT logs (RFC 6962) concurrently, and returns as soon as each group of logs has
+ * returned the required number of SCTs.
+ * <p>
+ * The first logs of each group are tried first, one per required SCT. When a log fails, or has not responded within the hedge delay,
+ * the request is also sent to the next spare log in the group. Requests that are still outstanding when a group is satisfied are
+ * abandoned. SCTs are cached by the hash of the submitted certificate, so that a retry or re-issuance of the same certificate only
+ * needs to contact the logs that did not respond the last time.
+ * <p>
+ * The signature of each SCT is verified with the key of the log before the SCT is used or cached. An SCT with an invalid signature
+ * is handled like a failed request.
+ * <p>
+ * Requests are sent with HttpURLConnection, which keeps the connections to the logs open between requests.
+ * <p>
+ * Nothing in this tree calls the engine yet. It is a library for the CertificateTransparency implementation, which is loaded by
+ * CertificateTransparencyFactory and is not part of this tree. Its threads are daemon threads that stop after a minute without
+ * requests, so the engine does not need to be shut down on undeploy.
+ *
+ * @version $Id$
+ */
+public enum CtSubmissionEngine {
+    INSTANCE;
+
+    private static final Logger log = Logger.getLogger(CtSubmissionEngine.class);
+
+    /** The extension that makes a pre-certificate unusable as a certificate, RFC 6962 section 3.1 */
+    private static final ASN1ObjectIdentifier POISON_EXTENSION_OID = new ASN1ObjectIdentifier("1.3.6.1.4.1.11129.2.4.3");
+
+    /** A set of candidate logs, of which at least minScts must return an SCT */
+    public static final class LogGroup {
+        private final List<CTLogInfo> logs;
+        private final int minScts;
+
+        /**
+         * @param logs the candidate logs, in the order they should be tried
+         * @param minScts the number of SCTs required from the logs, for example from {@link GoogleCtPolicy}
+         */
+        public LogGroup(final List<CTLogInfo> logs, final int minScts) {
+            this.logs = new ArrayList<>(logs);
+            this.minScts = minScts;
+        }
+
+        public List<CTLogInfo> getLogs() {
+            return logs;
+        }
+
+        public int getMinScts() {
+            return minScts;
+        }
+    }
+
+    /** State of a group during a submission */
+    private static final class GroupState {
+        private final LogGroup group;
+        private final List<byte[]> scts = new ArrayList<>();
+        private final Deque<CTLogInfo> spares = new ArrayDeque<>();
+        private final List<Request> inFlight = new ArrayList<>();
+
+        private GroupState(final LogGroup group) {
+            this.group = group;
+        }
+
+        private boolean isSatisfied() {
+            return scts.size() >= group.getMinScts();
+        }
+    }
+
+    /** A request to a log that has been started */
+    private static final class Request {
+        private static final int WAITING = 0;
+        private static final int SENDING = 1;
+        private static final int DONE = 2;
+
+        private final CTLogInfo ctLog;
+        private final GroupState groupState;
+        private final long started;
+        /** The number of requests to the log, which this request counts in until it is done */
+        private final AtomicInteger logRequests;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private Future<byte[]> future;
+
+        private Request(final CTLogInfo ctLog, final GroupState groupState, final long started, final AtomicInteger logRequests) {
+            this.ctLog = ctLog;
+            this.groupState = groupState;
+            this.started = started;
+            this.logRequests = logRequests;
+        }
+
+        /** @return true if the request should be sent, false if it was abandoned while it waited for a thread */
+        private boolean send() {
+            return state.compareAndSet(WAITING, SENDING);
+        }
+
+        /** Invoked by the thread that sent the request when the log has responded or failed */
+        private void sent() {
+            if (state.compareAndSet(SENDING, DONE)) {
+                logRequests.decrementAndGet();
+            }
+        }
+
+        /** Abandons the request. A request that is being sent still counts for the log, until the log responds or times out. */
+        private void abandon() {
+            future.cancel(true);
+            if (state.compareAndSet(WAITING, DONE)) {
+                logRequests.decrementAndGet();
+            }
+        }
+    }
+
+    private static final class CachedSct {
+        private final byte[] sct;
+        private final long expires;
+
+        private CachedSct(final byte[] sct, final long expires) {
+            this.sct = sct;
+            this.expires = expires;
+        }
+    }
+
+    /** SCTs by submitted certificate hash and log key hash, least recently used first */
+    private final LinkedHashMap<String, CachedSct> sctCache = new LinkedHashMap<>(16, 0.75f, true);
+    /** The number of requests to each log, by URL, that are in progress or waiting for a thread */
+    private final ConcurrentHashMap<String, AtomicInteger> requestsPerLog = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor executor = null;
+
+    /**
+     * Submits a certificate to the logs of all groups.
+     *
+     * @param chain the certificate or pre-certificate to submit first, followed by the certificate chain of the issuer
+     * @param preCertificate true to use "add-pre-chain", or false to use "add-chain"
+     * @param groups the candidate logs and the number of SCTs required from each group
+     * @param timeout the maximum time in milliseconds to wait for the logs
+     * @return the TLS encoded SCTs, exactly the required number from each group
+     * @throws CTLogException if too many logs failed or did not respond in time to satisfy all groups
+     */
+    public List<byte[]> submit(final List<Certificate> chain, final boolean preCertificate, final List<LogGroup> groups, final long timeout)
+            throws CTLogException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        final long hedgeDelay = CesecoreConfiguration.getCTSubmissionHedgeDelay();
+        final String certificateHash;
+        final String requestBody;
+        final byte[] signedEntry;
+        try {
+            certificateHash = Hex.toHexString(sha256(chain.get(0).getEncoded()));
+            requestBody = getRequestBody(chain);
+            signedEntry = getSignedEntry(chain, preCertificate);
+        } catch (CertificateEncodingException e) {
+            throw new CTLogException(e);
+        }
+        final List<GroupState> groupStates = new ArrayList<>();
+        for (final LogGroup group : groups) {
+            final GroupState groupState = new GroupState(group);
+            for (final CTLogInfo ctLog : group.getLogs()) {
+                final byte[] cachedSct = getCachedSct(certificateHash, ctLog);
+                if (cachedSct != null && !groupState.isSatisfied()) {
+                    groupState.scts.add(cachedSct);
+                } else if (cachedSct == null) {
+                    groupState.spares.add(ctLog);
+                }
+            }
+            groupStates.add(groupState);
+        }
+        final CompletionService<byte[]> completionService = new ExecutorCompletionService<>(getExecutor());
+        final Map<Future<byte[]>, Request> inFlight = new HashMap<>();
+        try {
+            while (true) {
+                final long now = System.currentTimeMillis();
+                // Start requests where needed, and find out if there is anything left to wait for
+                boolean allSatisfied = true;
+                long nextHedge = Long.MAX_VALUE;
+                for (final GroupState groupState : groupStates) {
+                    if (groupState.isSatisfied()) {
+                        abandon(groupState, inFlight);
+                        continue;
+                    }
+                    allSatisfied = false;
+                    startRequests(groupState, now, hedgeDelay, preCertificate, requestBody, signedEntry, certificateHash, completionService, inFlight);
+                    if (groupState.inFlight.isEmpty()) {
+                        throw new CTLogException("Not enough CT logs responded for the certificate. Got " + groupState.scts.size() + " SCTs of "
+                                + groupState.group.getMinScts() + " required from the logs " + getLogUrls(groupState.group) + ".");
+                    }
+                    if (!groupState.spares.isEmpty()) {
+                        for (final Request request : groupState.inFlight) {
+                            // Late requests have already been hedged, and must not make the wait below end at once
+                            if (now - request.started < hedgeDelay) {
+                                nextHedge = Math.min(nextHedge, request.started + hedgeDelay);
+                            }
+                        }
+                    }
+                }
+                if (allSatisfied) {
+                    break;
+                }
+                if (now >= deadline) {
+                    throw new CTLogException("Timed out waiting for CT logs to return SCTs for the certificate.");
+                }
+                final Future<byte[]> future = completionService.poll(Math.max(1, Math.min(deadline, nextHedge) - now), TimeUnit.MILLISECONDS);
+                final Request request = future == null ? null : inFlight.remove(future);
+                if (request == null) {
+                    // The hedge delay or the deadline passed, or a request that was already abandoned completed
+                    continue;
+                }
+                request.groupState.inFlight.remove(request);
+                try {
+                    final byte[] sct = future.get();
+                    if (!request.groupState.isSatisfied()) {
+                        request.groupState.scts.add(sct);
+                    }
+                } catch (ExecutionException e) {
+                    log.info("Failed to submit certificate to CT log " + request.ctLog.getUrl() + ": " + e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CTLogException(e);
+        } finally {
+            for (final Request request : inFlight.values()) {
+                request.abandon();
+            }
+        }
+        final List<byte[]> ret = new ArrayList<>();
+        for (final GroupState groupState : groupStates) {
+            ret.addAll(groupState.scts.subList(0, groupState.group.getMinScts()));
+        }
+        return ret;
+    }
+
+    /** Starts requests to spare logs, so that there are enough requests in flight that are not late. */
+    private void startRequests(final GroupState groupState, final long now, final long hedgeDelay, final boolean preCertificate,
+            final String requestBody, final byte[] signedEntry, final String certificateHash, final CompletionService<byte[]> completionService,
+            final Map<Future<byte[]>, Request> inFlight) {
+        int notLate = 0;
+        for (final Request request : groupState.inFlight) {
+            if (now - request.started < hedgeDelay) {
+                notLate++;
+            }
+        }
+        final int needed = groupState.group.getMinScts() - groupState.scts.size();
+        final int maxRequestsPerLog = CesecoreConfiguration.getCTSubmissionMaxRequestsPerLog();
+        while (notLate < needed && !groupState.spares.isEmpty()) {
+            final CTLogInfo ctLog = groupState.spares.poll();
+            final AtomicInteger logRequests = getRequestsPerLog(ctLog);
+            if (logRequests.incrementAndGet() > maxRequestsPerLog) {
+                logRequests.decrementAndGet();
+                log.info("Not submitting certificate to CT log " + ctLog.getUrl() + ", since it already has " + maxRequestsPerLog
+                        + " requests in progress.");
+                continue;
+            }
+            final Request request = new Request(ctLog, groupState, now, logRequests);
+            request.future = completionService.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    if (!request.send()) {
+                        throw new IOException("Request was abandoned before it was sent.");
+                    }
+                    try {
+                        final byte[] sct = fetchSct(ctLog, preCertificate, requestBody, signedEntry);
+                        // Also cache late responses, so that a retry can use them
+                        putCachedSct(certificateHash, ctLog, sct);
+                        return sct;
+                    } finally {
+                        request.sent();
+                    }
+                }
+            });
+            groupState.inFlight.add(request);
+            inFlight.put(request.future, request);
+            notLate++;
+        }
+    }
+
+    /** Stops waiting for the requests of a group that already has enough SCTs. */
+    private void abandon(final GroupState groupState, final Map<Future<byte[]>, Request> inFlight) {
+        for (final Iterator<Request> iterator = groupState.inFlight.iterator(); iterator.hasNext();) {
+            final Request request = iterator.next();
+            request.abandon();
+            inFlight.remove(request.future);
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Encodes SCTs as a "SignedCertificateTimestampList", for inclusion in the CT certificate or OCSP extension.
+     *
+     * @param scts TLS encoded SCTs, as returned by {@link #submit}
+     * @return the encoded list
+     */
+    public static byte[] encodeSctList(final List<byte[]> scts) {
+        int length = 0;
+        for (final byte[] sct : scts) {
+            length += 2 + sct.length;
+        }
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream(2 + length);
+        final DataOutputStream out = new DataOutputStream(baos);
+        try {
+            out.writeShort(length);
+            for (final byte[] sct : scts) {
+                out.writeShort(sct.length);
+                out.write(sct);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Can not happen with a ByteArrayOutputStream
+        }
+        return baos.toByteArray();
+    }
+
+    /** Removes all cached SCTs. */
+    public void clearCache() {
+        synchronized (sctCache) {
+            sctCache.clear();
+        }
+    }
+
+    /** @return the number of cached SCTs */
+    public int getCacheSize() {
+        synchronized (sctCache) {
+            return sctCache.size();
+        }
+    }
+
+    /** Stops the threads that send requests to the logs now, instead of when they have been idle. New threads are started if the engine is used again. */
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        final int threads = CesecoreConfiguration.getCTSubmissionThreads();
+        if (executor == null || executor.getMaximumPoolSize() != threads) {
+            if (executor != null) {
+                executor.shutdown();
+            }
+            final AtomicInteger threadNumber = new AtomicInteger();
+            executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "CtSubmission-" + threadNumber.incrementAndGet()); // NOPMD daemon thread that only does HTTP requests and stops when idle
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    private AtomicInteger getRequestsPerLog(final CTLogInfo ctLog) {
+        AtomicInteger ret = requestsPerLog.get(ctLog.getUrl());
+        if (ret == null) {
+            final AtomicInteger previous = requestsPerLog.putIfAbsent(ctLog.getUrl(), ret = new AtomicInteger());
+            if (previous != null) {
+                ret = previous;
+            }
+        }
+        return ret;
+    }
+
+    private byte[] getCachedSct(final String certificateHash, final CTLogInfo ctLog) {
+        final String key = certificateHash + ";" + Hex.toHexString(sha256(ctLog.getPublicKeyBytes()));
+        synchronized (sctCache) {
+            final CachedSct cachedSct = sctCache.get(key);
+            if (cachedSct == null) {
+                return null;
+            }
+            if (cachedSct.expires < System.currentTimeMillis()) {
+                sctCache.remove(key);
+                return null;
+            }
+            return cachedSct.sct;
+        }
+    }
+
+    private void putCachedSct(final String certificateHash, final CTLogInfo ctLog, final byte[] sct) {
+        final int maxEntries = CesecoreConfiguration.getCTSubmissionCacheMaxEntries();
+        if (maxEntries == 0) {
+            return;
+        }
+        final String key = certificateHash + ";" + Hex.toHexString(sha256(ctLog.getPublicKeyBytes()));
+        final CachedSct cachedSct = new CachedSct(sct, System.currentTimeMillis() + CesecoreConfiguration.getCTSubmissionCacheTime());
+        synchronized (sctCache) {
+            sctCache.put(key, cachedSct);
+            final Iterator<CachedSct> iterator = sctCache.values().iterator();
+            while (sctCache.size() > maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    /** @return the JSON body of an add-chain or add-pre-chain request */
+    @SuppressWarnings("unchecked")
+    private static String getRequestBody(final List<Certificate> chain) throws CertificateEncodingException {
+        final JSONArray certificates = new JSONArray();
+        for (final Certificate certificate : chain) {
+            certificates.add(new String(Base64.encode(certificate.getEncoded(), false), StandardCharsets.US_ASCII));
+        }
+        final JSONObject request = new JSONObject();
+        request.put("chain", certificates);
+        return request.toJSONString();
+    }
+
+    /**
+     * Encodes the certificate part of the data that a log signs in an SCT, as described in RFC 6962 section 3.2. For a pre-certificate
+     * this is the hash of the issuer key and the TBSCertificate without the poison extension, so the chain must include the issuer.
+     *
+     * @return the entry type and the signed entry
+     */
+    static byte[] getSignedEntry(final List<Certificate> chain, final boolean preCertificate) throws CertificateEncodingException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(baos);
+        try {
+            final byte[] entry;
+            if (preCertificate) {
+                if (chain.size() < 2) {
+                    throw new CertificateEncodingException("The issuer of the pre-certificate must be included in the chain.");
+                }
+                out.writeShort(1); // precert_entry
+                out.write(sha256(chain.get(1).getPublicKey().getEncoded()));
+                entry = getTbsCertificateWithoutPoison((X509Certificate) chain.get(0));
+            } else {
+                out.writeShort(0); // x509_entry
+                entry = chain.get(0).getEncoded();
+            }
+            out.writeByte(entry.length >>> 16);
+            out.writeShort(entry.length);
+            out.write(entry);
+        } catch (IOException e) {
+            throw new CertificateEncodingException(e);
+        }
+        return baos.toByteArray();
+    }
+
+    /** @return the DER encoded TBSCertificate of a pre-certificate, without the poison extension */
+    private static byte[] getTbsCertificateWithoutPoison(final X509Certificate preCertificate) throws CertificateEncodingException, IOException {
+        final ASN1EncodableVector tbsCertificate = new ASN1EncodableVector();
+        for (final ASN1Encodable field : ASN1Sequence.getInstance(preCertificate.getTBSCertificate())) {
+            if (field instanceof ASN1TaggedObject && ((ASN1TaggedObject) field).getTagNo() == 3) {
+                final Extensions extensions = Extensions.getInstance(((ASN1TaggedObject) field).getObject());
+                final ASN1EncodableVector remaining = new ASN1EncodableVector();
+                for (final ASN1ObjectIdentifier oid : extensions.getExtensionOIDs()) {
+                    if (!POISON_EXTENSION_OID.equals(oid)) {
+                        remaining.add(extensions.getExtension(oid));
+                    }
+                }
+                if (remaining.size() > 0) {
+                    tbsCertificate.add(new DERTaggedObject(true, 3, new DERSequence(remaining)));
+                }
+            } else {
+                tbsCertificate.add(field);
+            }
+        }
+        return new DERSequence(tbsCertificate).getEncoded(ASN1Encoding.DER);
+    }
+
+    /** @return the data that a log signs in an SCT, as described in RFC 6962 section 3.2 */
+    static byte[] getSignedData(final long timestamp, final byte[] signedEntry, final byte[] extensions) {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(baos);
+        try {
+            out.writeByte(0); // v1
+            out.writeByte(0); // certificate_timestamp
+            out.writeLong(timestamp);
+            out.write(signedEntry);
+            out.writeShort(extensions.length);
+            out.write(extensions);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Can not happen with a ByteArrayOutputStream
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Verifies the signature of an SCT with the key of the log.
+     *
+     * @param signature the TLS encoded "digitally-signed" structure
+     * @throws IOException if the signature is invalid or uses an algorithm that RFC 6962 does not allow
+     */
+    private static void verifySignature(final CTLogInfo ctLog, final byte[] signature, final byte[] signedData) throws IOException {
+        if (signature.length < 4 || ((signature[2] & 0xff) << 8 | (signature[3] & 0xff)) != signature.length - 4) {
+            throw new IOException("CT log returned an SCT with an invalid signature structure.");
+        }
+        final String algorithm;
+        if (signature[0] == 4 && signature[1] == 3) {
+            algorithm = "SHA256withECDSA";
+        } else if (signature[0] == 4 && signature[1] == 1) {
+            algorithm = "SHA256withRSA";
+        } else {
+            throw new IOException("CT log returned an SCT with the unsupported hash and signature algorithms " + signature[0] + " and " + signature[1] + ".");
+        }
+        try {
+            final Signature verifier = Signature.getInstance(algorithm, BouncyCastleProvider.PROVIDER_NAME);
+            verifier.initVerify(ctLog.getLogPublicKey());
+            verifier.update(signedData);
+            if (!verifier.verify(signature, 4, signature.length - 4)) {
+                throw new IOException("CT log returned an SCT with an invalid signature.");
+            }
+        } catch (GeneralSecurityException | IllegalStateException e) {
+            throw new IOException("Failed to verify the signature of the SCT from the CT log: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Sends a request to a log.
+     *
+     * @param signedEntry the certificate part of the signed data of the SCT, see {@link #getSignedEntry}
+     * @return the TLS encoded SCT
+     * @throws IOException if the log could not be reached, returned an error, or returned an SCT from another log or with an invalid signature
+     */
+    private static byte[] fetchSct(final CTLogInfo ctLog, final boolean preCertificate, final String requestBody, final byte[] signedEntry) throws IOException {
+        final URL url = new URL(ctLog.getUrl() + (preCertificate ? "add-pre-chain" : "add-chain"));
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(ctLog.getTimeout());
+        connection.setReadTimeout(ctLog.getTimeout());
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setDoOutput(true);
+        final byte[] body = requestBody.getBytes(StandardCharsets.UTF_8);
+        connection.setFixedLengthStreamingMode(body.length);
+        try (final OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        final int responseCode = connection.getResponseCode();
+        if (responseCode != HttpURLConnection.HTTP_OK) {
+            // Read the error response, so that the connection can be reused
+            final InputStream errorStream = connection.getErrorStream();
+            if (errorStream != null) {
+                try {
+                    while (errorStream.read() != -1) { } // NOPMD just draining the stream
+                } finally {
+                    errorStream.close();
+                }
+            }
+            throw new IOException("CT log returned HTTP status " + responseCode + ".");
+        }
+        final JSONObject response;
+        try (final InputStreamReader reader = new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)) {
+            response = (JSONObject) new JSONParser().parse(reader);
+        } catch (ParseException | ClassCastException e) {
+            throw new IOException("CT log returned an invalid response: " + e.getMessage(), e);
+        }
+        return encodeSct(ctLog, response, signedEntry);
+    }
+
+    /** @return the TLS encoded SCT from the JSON response of a log, after verifying its signature */
+    private static byte[] encodeSct(final CTLogInfo ctLog, final JSONObject response, final byte[] signedEntry) throws IOException {
+        try {
+            final int version = ((Number) response.get("sct_version")).intValue();
+            final byte[] logId = Base64.decode(((String) response.get("id")).getBytes(StandardCharsets.US_ASCII));
+            final long timestamp = ((Number) response.get("timestamp")).longValue();
+            final String extensionsString = (String) response.get("extensions");
+            final byte[] extensions = extensionsString == null || extensionsString.isEmpty() ? new byte[0] : Base64.decode(extensionsString.getBytes(StandardCharsets.US_ASCII));
+            final byte[] signature = Base64.decode(((String) response.get("signature")).getBytes(StandardCharsets.US_ASCII));
+            if (!Arrays.equals(logId, sha256(ctLog.getPublicKeyBytes()))) {
+                throw new IOException("CT log returned an SCT with the log ID of another log.");
+            }
+            if (version != 0) {
+                throw new IOException("CT log returned an SCT of the unsupported version " + version + ".");
+            }
+            verifySignature(ctLog, signature, getSignedData(timestamp, signedEntry, extensions));
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(baos);
+            out.writeByte(version);
+            out.write(logId);
+            out.writeLong(timestamp);
+            out.writeShort(extensions.length);
+            out.write(extensions);
+            // The signature is already a TLS encoded "digitally-signed" structure
+            out.write(signature);
+            return baos.toByteArray();
+        } catch (ClassCastException | NullPointerException e) { // NOPMD missing or invalid fields
+            throw new IOException("CT log returned an incomplete SCT.", e);
+        }
+    }
+
+    private static List<String> getLogUrls(final LogGroup group) {
+        final List<String> ret = new ArrayList<>();
+        for (final CTLogInfo ctLog : group.getLogs()) {
+            ret.add(ctLog.getUrl());
+        }
+        return ret;
+    }
+
+    private static byte[] sha256(final byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // SHA-256 is always available
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the CRLs stored on this node, so that caches of CRLs in the same JVM, like the one of the CRL store servlet, know when
+ * they have to look in the database again. CRLs stored on other nodes in a cluster are not counted, so such caches must still
+ * check the database now and then.
+ *
+ * @version $Id$
+ */
+public enum CrlStoreChangeCounter {
+    INSTANCE;
+
+    private final AtomicLong count = new AtomicLong();
+
+    /** Called when a CRL has been stored, or when cached CRLs should be read from the database again for some other reason */
+    public void increment() {
+        count.incrementAndGet();
+    }
+
+    /** @return a value that differs from all earlier values if a CRL has been stored since they were returned */
+    public long get() {
+        return count.get();
+    }
+}
@@ -0,0 +1,304 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.SignatureException;
+import java.util.Date;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.io.output.TeeOutputStream;
+import org.apache.log4j.Logger;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERTaggedObject;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.ExtensionsGenerator;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.ContentVerifier;
+
+/**
+ * Builds a DER encoded X.509 v2 CRL where the revoked certificates are encoded one at the time as they are added.
+ *
+ * Unlike X509v2CRLBuilder, no ASN.1 objects are kept for the added entries. The encoded entries are kept in memory
+ * until they exceed a threshold and are then spooled to a temporary file, so the heap used while adding entries does
+ * not grow with the size of the CRL. When the CRL is built, the TBSCertList is streamed through the signer (and the
+ * optional verifier), and only the finished CRL is assembled in memory.
+ *
+ * The produced encoding is identical to the one from X509v2CRLBuilder for the same input.
+ *
+ * Instances must be closed to remove the temporary file.
+ *
+ * @version $Id$
+ */
+public class StreamingCrlBuilder implements Closeable {
+
+    private static final Logger log = Logger.getLogger(StreamingCrlBuilder.class);
+
+    /** Encoded entries are spooled to disk when they exceed this size */
+    private static final int DEFAULT_SPILL_THRESHOLD = 4 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int TAG_SEQUENCE = 0x30;
+    /** A CRL is stored as a single byte array, so it can't be larger than this */
+    private static final long MAX_CRL_SIZE = Integer.MAX_VALUE - 8;
+
+    private final X500Name issuer;
+    private final Time thisUpdate;
+    private final Time nextUpdate;
+    private final ExtensionsGenerator extensionsGenerator = new ExtensionsGenerator();
+    private final int spillThreshold;
+
+    private ByteArrayOutputStream entriesInMemory = new ByteArrayOutputStream();
+    private File entriesFile = null;
+    private OutputStream entriesFileOut = null;
+    private long entriesLength = 0;
+    private long entryCount = 0;
+
+    /**
+     * @param issuer the issuer of the CRL
+     * @param thisUpdate the thisUpdate time of the CRL
+     * @param nextUpdate the nextUpdate time of the CRL, or null to leave it out
+     */
+    public StreamingCrlBuilder(final X500Name issuer, final Date thisUpdate, final Date nextUpdate) {
+        this(issuer, thisUpdate, nextUpdate, DEFAULT_SPILL_THRESHOLD);
+    }
+
+    /** Constructor with a configurable spill threshold, for testing */
+    StreamingCrlBuilder(final X500Name issuer, final Date thisUpdate, final Date nextUpdate, final int spillThreshold) {
+        this.issuer = issuer;
+        this.thisUpdate = new Time(thisUpdate);
+        this.nextUpdate = nextUpdate == null ? null : new Time(nextUpdate);
+        this.spillThreshold = spillThreshold;
+    }
+
+    /** Adds a CRL extension. Extensions are encoded in the order they are added. */
+    public void addExtension(final Extension extension) {
+        extensionsGenerator.addExtension(extension);
+    }
+
+    /**
+     * Encodes a revoked certificate entry and appends it to the CRL.
+     *
+     * @param userCertificate serial number of the revoked certificate
+     * @param revocationDate the revocation date
+     * @param reason the revocation reason, a reasonCode extension is added unless the reason is 0 (unspecified)
+     * @throws IOException if the entry could not be written to the temporary file
+     */
+    public void addCRLEntry(final BigInteger userCertificate, final Date revocationDate, final int reason) throws IOException {
+        if (reason < 0) {
+            throw new IllegalArgumentException("invalid reason value: " + reason);
+        }
+        final ASN1EncodableVector entry = new ASN1EncodableVector();
+        entry.add(new ASN1Integer(userCertificate));
+        entry.add(new Time(revocationDate));
+        if (reason != 0) {
+            entry.add(new Extensions(new Extension(Extension.reasonCode, false, new DEROctetString(CRLReason.lookup(reason)))));
+        }
+        writeEntry(new DERSequence(entry).getEncoded(ASN1Encoding.DER));
+    }
+
+    /** @return the number of revoked certificates added so far */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /** @return the issuer of the CRL */
+    public X500Name getIssuer() {
+        return issuer;
+    }
+
+    /** @return thisUpdate, with the precision it has in the encoded CRL */
+    public Date getThisUpdate() {
+        return thisUpdate.getDate();
+    }
+
+    /** @return nextUpdate, with the precision it has in the encoded CRL, or null if not set */
+    public Date getNextUpdate() {
+        return nextUpdate == null ? null : nextUpdate.getDate();
+    }
+
+    /**
+     * Signs the CRL and returns the DER encoding.
+     *
+     * @param signer signer used to sign the TBSCertList
+     * @param verifier verifier used to check the signature before returning the CRL, or null to skip the check
+     * @return the DER encoded CRL
+     * @throws IOException if the temporary file could not be read or the CRL is too large
+     * @throws SignatureException if the signature could not be verified
+     */
+    public byte[] build(final ContentSigner signer, final ContentVerifier verifier) throws IOException, SignatureException {
+        if (entriesFileOut != null) {
+            entriesFileOut.close();
+            entriesFileOut = null;
+        }
+        final AlgorithmIdentifier signatureAlgorithm = signer.getAlgorithmIdentifier();
+        final ByteArrayOutputStream fields = new ByteArrayOutputStream();
+        fields.write(new ASN1Integer(1).getEncoded(ASN1Encoding.DER));
+        fields.write(signatureAlgorithm.getEncoded(ASN1Encoding.DER));
+        fields.write(issuer.getEncoded(ASN1Encoding.DER));
+        fields.write(thisUpdate.getEncoded(ASN1Encoding.DER));
+        if (nextUpdate != null) {
+            fields.write(nextUpdate.getEncoded(ASN1Encoding.DER));
+        }
+        // The revokedCertificates sequence is left out when it is empty
+        final byte[] entriesHeader = entryCount == 0 ? new byte[0] : encodeHeader(TAG_SEQUENCE, entriesLength);
+        final byte[] extensions;
+        if (extensionsGenerator.isEmpty()) {
+            extensions = new byte[0];
+        } else {
+            extensions = new DERTaggedObject(true, 0, extensionsGenerator.generate()).getEncoded(ASN1Encoding.DER);
+        }
+        final long tbsLength = fields.size() + entriesHeader.length + entriesLength + extensions.length;
+        final byte[] tbsHeader = encodeHeader(TAG_SEQUENCE, tbsLength);
+        final byte[] tbsFields = fields.toByteArray();
+        if (log.isDebugEnabled()) {
+            log.debug("Signing streamed CRL with " + entryCount + " entries and a TBSCertList of " + tbsLength + " bytes.");
+        }
+        // First pass over the entries, sign (and verify) the TBSCertList
+        final OutputStream verifierOut = verifier == null ? NullOutputStream.NULL_OUTPUT_STREAM : verifier.getOutputStream();
+        final OutputStream signatureOut = new TeeOutputStream(signer.getOutputStream(), verifierOut);
+        writeTbsCertList(signatureOut, tbsHeader, tbsFields, entriesHeader, extensions);
+        signatureOut.close();
+        final byte[] signature = signer.getSignature();
+        if (verifier != null && !verifier.verify(signature)) {
+            throw new SignatureException("Error verifying CRL to be returned.");
+        }
+        // Second pass over the entries, assemble the CertificateList
+        final byte[] signatureAlgorithmBytes = signatureAlgorithm.getEncoded(ASN1Encoding.DER);
+        final byte[] signatureBytes = new DERBitString(signature).getEncoded(ASN1Encoding.DER);
+        final long crlLength = tbsHeader.length + tbsLength + signatureAlgorithmBytes.length + signatureBytes.length;
+        final byte[] crlHeader = encodeHeader(TAG_SEQUENCE, crlLength);
+        if (crlHeader.length + crlLength > MAX_CRL_SIZE) {
+            throw new IOException("CRL with " + entryCount + " entries is too large to be encoded: " + (crlHeader.length + crlLength) + " bytes.");
+        }
+        final FixedSizeOutputStream crlOut = new FixedSizeOutputStream((int) (crlHeader.length + crlLength));
+        crlOut.write(crlHeader);
+        writeTbsCertList(crlOut, tbsHeader, tbsFields, entriesHeader, extensions);
+        crlOut.write(signatureAlgorithmBytes);
+        crlOut.write(signatureBytes);
+        return crlOut.getBytes();
+    }
+
+    /** Releases the memory buffer and removes the temporary file, if any */
+    @Override
+    public void close() {
+        IOUtils.closeQuietly(entriesFileOut);
+        entriesFileOut = null;
+        entriesInMemory = null;
+        if (entriesFile != null) {
+            if (!entriesFile.delete()) {
+                log.warn("Unable to delete temporary CRL file " + entriesFile.getAbsolutePath());
+            }
+            entriesFile = null;
+        }
+    }
+
+    private void writeEntry(final byte[] encodedEntry) throws IOException {
+        if (entriesFileOut == null && entriesInMemory.size() + encodedEntry.length > spillThreshold) {
+            entriesFile = File.createTempFile("crl", ".tmp");
+            entriesFileOut = new BufferedOutputStream(new FileOutputStream(entriesFile), BUFFER_SIZE);
+            entriesInMemory.writeTo(entriesFileOut);
+            entriesInMemory = null;
+            if (log.isDebugEnabled()) {
+                log.debug("Spooling CRL entries to " + entriesFile.getAbsolutePath() + " after " + entryCount + " entries.");
+            }
+        }
+        if (entriesFileOut != null) {
+            entriesFileOut.write(encodedEntry);
+        } else {
+            entriesInMemory.write(encodedEntry);
+        }
+        entriesLength += encodedEntry.length;
+        entryCount++;
+    }
+
+    private void writeTbsCertList(final OutputStream out, final byte[] tbsHeader, final byte[] tbsFields, final byte[] entriesHeader,
+            final byte[] extensions) throws IOException {
+        out.write(tbsHeader);
+        out.write(tbsFields);
+        out.write(entriesHeader);
+        if (entriesFile != null) {
+            try (final InputStream in = new FileInputStream(entriesFile)) {
+                IOUtils.copyLarge(in, out, new byte[BUFFER_SIZE]);
+            }
+        } else {
+            entriesInMemory.writeTo(out);
+        }
+        out.write(extensions);
+    }
+
+    /** @return the DER tag and length octets for a value of the given length */
+    private static byte[] encodeHeader(final int tag, final long length) {
+        if (length < 128) {
+            return new byte[] { (byte) tag, (byte) length };
+        }
+        int lengthOctets = 0;
+        for (long l = length; l > 0; l >>>= 8) {
+            lengthOctets++;
+        }
+        final byte[] header = new byte[2 + lengthOctets];
+        header[0] = (byte) tag;
+        header[1] = (byte) (0x80 | lengthOctets);
+        for (int i = 0; i < lengthOctets; i++) {
+            header[header.length - 1 - i] = (byte) (length >>> (8 * i));
+        }
+        return header;
+    }
+
+    /** Writes directly into an array of known size, to avoid the copy made by ByteArrayOutputStream.toByteArray() */
+    private static class FixedSizeOutputStream extends OutputStream {
+        private final byte[] bytes;
+        private int position = 0;
+
+        private FixedSizeOutputStream(final int size) {
+            bytes = new byte[size];
+        }
+
+        @Override
+        public void write(final int b) {
+            bytes[position++] = (byte) b;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            System.arraycopy(b, off, bytes, position, len);
+            position += len;
+        }
+
+        private byte[] getBytes() throws IOException {
+            if (position != bytes.length) {
+                throw new IOException("Encoded CRL length " + position + " differs from the expected length " + bytes.length);
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,525 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.security.cert.CRLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.IssuingDistributionPoint;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.operator.ContentVerifier;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.cesecore.util.CertTools;
+
+/**
+ * Reads a DER encoded X.509 CRL without decoding all of it up front.
+ *
+ * The constructor only walks the DER headers of the CertificateList to locate the fields of the TBSCertList and the revoked
+ * certificates. The revoked certificates are then read one at the time, and an entry only keeps the serial number and the
+ * position of its encoding in the CRL, so the heap used does not grow with the full ASN.1 structure of every entry like it
+ * does with X509CRL.getRevokedCertificates(). The revocation date and reason code of an entry are decoded when asked for.
+ *
+ * The signature is verified over the encoded TBSCertList as it is, without re-encoding it. A CRL where the signature algorithm in
+ * the TBSCertList differs from the one outside of it is rejected.
+ *
+ * @version $Id$
+ */
+public class StreamingCrlParser implements Iterable<StreamingCrlParser.Entry> {
+
+    private static final int TAG_INTEGER = 0x02;
+    private static final int TAG_BIT_STRING = 0x03;
+    private static final int TAG_UTC_TIME = 0x17;
+    private static final int TAG_GENERALIZED_TIME = 0x18;
+    private static final int TAG_SEQUENCE = 0x30;
+    private static final int TAG_EXPLICIT_0 = 0xa0;
+
+    /** Orders entries by serial number */
+    private static final Comparator<Entry> SERIAL_NUMBER_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(final Entry entry1, final Entry entry2) {
+            return entry1.getSerialNumber().compareTo(entry2.getSerialNumber());
+        }
+    };
+
+    private final byte[] crl;
+    private final int tbsOffset;
+    private final int tbsEnd;
+    private final X500Name issuer;
+    private final Date thisUpdate;
+    private final Date nextUpdate;
+    /** Start and end of the contents of the revokedCertificates sequence, equal if there are no entries */
+    private final int entriesOffset;
+    private final int entriesEnd;
+    private final Extensions extensions;
+    private final boolean indirect;
+    private final AlgorithmIdentifier signatureAlgorithm;
+    private final byte[] signature;
+
+    /**
+     * @param crl the DER encoded CRL. The array is referenced, not copied, by this object and its entries and must not be modified.
+     * @throws CRLException if the encoding is not a CRL
+     */
+    public StreamingCrlParser(final byte[] crl) throws CRLException {
+        this.crl = crl;
+        try {
+            final int crlHeader = expectTag(0, TAG_SEQUENCE);
+            final int crlEnd = end(0, crlHeader);
+            if (crlEnd != crl.length) {
+                throw new CRLException("Unexpected data after the end of the CRL.");
+            }
+            tbsOffset = crlHeader;
+            final int tbsHeader = expectTag(tbsOffset, TAG_SEQUENCE);
+            tbsEnd = end(tbsOffset, tbsHeader);
+            int position = tbsOffset + tbsHeader;
+            // Optional version
+            if (tag(position) == TAG_INTEGER) {
+                position = end(position, header(position));
+            }
+            // The signature algorithm is repeated outside the TBSCertList, and RFC 5280 requires both to be the same
+            expectTag(position, TAG_SEQUENCE);
+            final int tbsSignatureAlgorithmEnd = end(position, header(position));
+            final AlgorithmIdentifier tbsSignatureAlgorithm = AlgorithmIdentifier.getInstance(decode(position, tbsSignatureAlgorithmEnd));
+            position = tbsSignatureAlgorithmEnd;
+            expectTag(position, TAG_SEQUENCE);
+            final int issuerEnd = end(position, header(position));
+            issuer = X500Name.getInstance(decode(position, issuerEnd));
+            position = issuerEnd;
+            if (!isTime(position)) {
+                throw new CRLException("Missing thisUpdate in CRL.");
+            }
+            final int thisUpdateEnd = end(position, header(position));
+            thisUpdate = Time.getInstance(decode(position, thisUpdateEnd)).getDate();
+            position = thisUpdateEnd;
+            if (position < tbsEnd && isTime(position)) {
+                final int nextUpdateEnd = end(position, header(position));
+                nextUpdate = Time.getInstance(decode(position, nextUpdateEnd)).getDate();
+                position = nextUpdateEnd;
+            } else {
+                nextUpdate = null;
+            }
+            if (position < tbsEnd && tag(position) == TAG_SEQUENCE) {
+                entriesOffset = position + header(position);
+                entriesEnd = end(position, header(position));
+                position = entriesEnd;
+            } else {
+                entriesOffset = position;
+                entriesEnd = position;
+            }
+            if (position < tbsEnd && tag(position) == TAG_EXPLICIT_0) {
+                final int extensionsHeader = header(position);
+                final int extensionsEnd = end(position, extensionsHeader);
+                extensions = Extensions.getInstance(decode(position + extensionsHeader, extensionsEnd));
+                position = extensionsEnd;
+            } else {
+                extensions = null;
+            }
+            if (position != tbsEnd) {
+                throw new CRLException("Unexpected field in TBSCertList at offset " + position + ".");
+            }
+            expectTag(position, TAG_SEQUENCE);
+            final int signatureAlgorithmEnd = end(position, header(position));
+            signatureAlgorithm = AlgorithmIdentifier.getInstance(decode(position, signatureAlgorithmEnd));
+            if (!signatureAlgorithm.equals(tbsSignatureAlgorithm)) {
+                throw new CRLException("Signature algorithm " + signatureAlgorithm.getAlgorithm().getId()
+                        + " of the CRL does not match the signature algorithm " + tbsSignatureAlgorithm.getAlgorithm().getId() + " in TBSCertList.");
+            }
+            position = signatureAlgorithmEnd;
+            expectTag(position, TAG_BIT_STRING);
+            final int signatureEnd = end(position, header(position));
+            signature = DERBitString.getInstance(decode(position, signatureEnd)).getBytes();
+            if (signatureEnd != crlEnd) {
+                throw new CRLException("Unexpected field in CertificateList at offset " + signatureEnd + ".");
+            }
+            final Extension issuingDistributionPoint = getExtension(Extension.issuingDistributionPoint);
+            indirect = issuingDistributionPoint != null && IssuingDistributionPoint.getInstance(issuingDistributionPoint.getParsedValue()).isIndirectCRL();
+        } catch (IllegalArgumentException | IOException e) {
+            // Thrown by the BC getInstance methods or when a value could not be decoded
+            throw new CRLException("Failed to parse CRL: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param crl a DER or PEM encoded CRL. Anything but DER is converted with CertTools.getCRLfromByteArray first, which decodes the whole CRL.
+     * @return a parser for the DER encoding of the CRL
+     * @throws CRLException if the encoding is not a CRL
+     */
+    public static StreamingCrlParser fromByteArray(final byte[] crl) throws CRLException {
+        if (crl == null || crl.length == 0) {
+            throw new CRLException("No content in crl byte array");
+        }
+        if ((crl[0] & 0xff) == TAG_SEQUENCE) {
+            return new StreamingCrlParser(crl);
+        }
+        return new StreamingCrlParser(CertTools.getCRLfromByteArray(crl).getEncoded());
+    }
+
+    /** @return the DER encoding of the CRL. This is the array given to the constructor, not a copy. */
+    public byte[] getEncoded() {
+        return crl;
+    }
+
+    /** @return the issuer of the CRL */
+    public X500Name getIssuer() {
+        return issuer;
+    }
+
+    /** @return the issuer of the CRL, comparable with X509Certificate.getSubjectX500Principal() */
+    public X500Principal getIssuerX500Principal() throws CRLException {
+        try {
+            return new X500Principal(issuer.getEncoded());
+        } catch (IOException e) {
+            throw new CRLException("Failed to encode CRL issuer.", e);
+        }
+    }
+
+    public Date getThisUpdate() {
+        return thisUpdate;
+    }
+
+    /** @return the nextUpdate of the CRL or null if it has none */
+    public Date getNextUpdate() {
+        return nextUpdate;
+    }
+
+    /** @return the CRL extensions or null if there are none */
+    public Extensions getExtensions() {
+        return extensions;
+    }
+
+    /** @return the CRL extension with the given OID or null if there is no such extension */
+    public Extension getExtension(final ASN1ObjectIdentifier oid) {
+        return extensions == null ? null : extensions.getExtension(oid);
+    }
+
+    /** @return the CRL number, or 0 if there is no CRL number extension, like CrlExtensions.getCrlNumber */
+    public BigInteger getCrlNumber() {
+        final Extension extension = getExtension(Extension.cRLNumber);
+        return extension == null ? BigInteger.ZERO : ASN1Integer.getInstance(extension.getParsedValue()).getValue();
+    }
+
+    /** @return the base CRL number of a delta CRL, or -1 if this is not a delta CRL, like CrlExtensions.getDeltaCRLIndicator */
+    public BigInteger getDeltaCrlIndicator() {
+        final Extension extension = getExtension(Extension.deltaCRLIndicator);
+        return extension == null ? BigInteger.valueOf(-1) : ASN1Integer.getInstance(extension.getParsedValue()).getValue();
+    }
+
+    /** @return true if there are no revoked certificates in the CRL */
+    public boolean isEmpty() {
+        return entriesOffset == entriesEnd;
+    }
+
+    /**
+     * Verifies the signature of the CRL.
+     *
+     * @param publicKey the public key of the CRL issuer
+     * @throws SignatureException if the signature is not valid or could not be verified
+     */
+    public void verify(final PublicKey publicKey) throws SignatureException {
+        try {
+            final ContentVerifier contentVerifier = CertTools.genContentVerifierProvider(publicKey).get(signatureAlgorithm);
+            try (final OutputStream out = contentVerifier.getOutputStream()) {
+                out.write(crl, tbsOffset, tbsEnd - tbsOffset);
+            }
+            if (!contentVerifier.verify(signature)) {
+                throw new SignatureException("CRL signature is not valid.");
+            }
+        } catch (OperatorCreationException | IOException e) {
+            throw new SignatureException("Failed to verify CRL signature: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Iterates over the revoked certificates in the order they appear in the CRL.
+     * The iterator throws IllegalStateException if an entry is not correctly encoded.
+     */
+    @Override
+    public Iterator<Entry> iterator() {
+        return new Iterator<Entry>() {
+            private int position = entriesOffset;
+            /** The certificate issuer of an entry in an indirect CRL applies to the following entries, until it is changed */
+            private X500Name certificateIssuer = null;
+
+            @Override
+            public boolean hasNext() {
+                return position < entriesEnd;
+            }
+
+            @Override
+            public Entry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    final int entryHeader = expectTag(position, TAG_SEQUENCE);
+                    final int entryEnd = end(position, entryHeader);
+                    if (entryEnd > entriesEnd) {
+                        throw new CRLException("CRL entry at offset " + position + " exceeds the revoked certificates.");
+                    }
+                    final int serialNumberOffset = position + entryHeader;
+                    expectTag(serialNumberOffset, TAG_INTEGER);
+                    final int serialNumberHeader = header(serialNumberOffset);
+                    final BigInteger serialNumber = new BigInteger(Arrays.copyOfRange(crl, serialNumberOffset + serialNumberHeader,
+                            end(serialNumberOffset, serialNumberHeader)));
+                    final Entry entry = new Entry(position, entryEnd, serialNumber);
+                    if (indirect) {
+                        final Extension extension = entry.getExtension(Extension.certificateIssuer);
+                        if (extension != null) {
+                            certificateIssuer = getDirectoryName(GeneralNames.getInstance(extension.getParsedValue()));
+                        }
+                        entry.certificateIssuer = certificateIssuer;
+                    }
+                    position = entryEnd;
+                    return entry;
+                } catch (CRLException | IllegalArgumentException e) {
+                    throw new IllegalStateException("Failed to parse CRL entry at offset " + position + ": " + e.getMessage(), e);
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * @return all revoked certificates sorted by serial number
+     * @throws CRLException if an entry is not correctly encoded
+     */
+    public List<Entry> getEntriesSortedBySerialNumber() throws CRLException {
+        final List<Entry> entries = new ArrayList<>();
+        try {
+            for (final Entry entry : this) {
+                entries.add(entry);
+            }
+        } catch (IllegalStateException e) {
+            throw new CRLException(e.getMessage(), e);
+        }
+        // CRLs are usually sorted already, which the merge sort used here handles in linear time
+        Collections.sort(entries, SERIAL_NUMBER_ORDER);
+        return entries;
+    }
+
+    /**
+     * Returns the entries that were added or changed since a previous CRL, by merging two lists sorted by serial number.
+     * An entry is unchanged if the previous CRL has an entry with the same encoding and certificate issuer.
+     *
+     * @param entries the entries of the new CRL sorted by serial number
+     * @param previousEntries the entries of the previous CRL sorted by serial number
+     * @return the entries of the new CRL that are not in the previous CRL, sorted by serial number
+     */
+    public static List<Entry> getChangedEntries(final List<Entry> entries, final List<Entry> previousEntries) {
+        final List<Entry> changedEntries = new ArrayList<>();
+        int previous = 0;
+        for (final Entry entry : entries) {
+            while (previous < previousEntries.size() && previousEntries.get(previous).getSerialNumber().compareTo(entry.getSerialNumber()) < 0) {
+                previous++;
+            }
+            // The same serial number can be listed more than once, with different certificate issuers in an indirect CRL
+            boolean unchanged = false;
+            for (int i = previous; i < previousEntries.size() && previousEntries.get(i).getSerialNumber().equals(entry.getSerialNumber()); i++) {
+                if (entry.isSameAs(previousEntries.get(i))) {
+                    unchanged = true;
+                    break;
+                }
+            }
+            if (!unchanged) {
+                changedEntries.add(entry);
+            }
+        }
+        return changedEntries;
+    }
+
+    /** A revoked certificate in the CRL */
+    public class Entry {
+        private final int offset;
+        private final int end;
+        private final BigInteger serialNumber;
+        private X500Name certificateIssuer = null;
+
+        private Entry(final int offset, final int end, final BigInteger serialNumber) {
+            this.offset = offset;
+            this.end = end;
+            this.serialNumber = serialNumber;
+        }
+
+        public BigInteger getSerialNumber() {
+            return serialNumber;
+        }
+
+        /** @return the issuer of the certificate given by an indirect CRL, or null if the certificate was issued by the CRL issuer */
+        public X500Name getCertificateIssuer() {
+            return certificateIssuer;
+        }
+
+        public Date getRevocationDate() throws CRLException {
+            try {
+                final int serialNumberOffset = offset + header(offset);
+                final int revocationDateOffset = end(serialNumberOffset, header(serialNumberOffset));
+                if (!isTime(revocationDateOffset)) {
+                    throw new CRLException("Missing revocation date in CRL entry at offset " + offset + ".");
+                }
+                return Time.getInstance(decode(revocationDateOffset, end(revocationDateOffset, header(revocationDateOffset)))).getDate();
+            } catch (IllegalArgumentException | IOException e) {
+                throw new CRLException("Failed to parse revocation date of CRL entry at offset " + offset + ": " + e.getMessage(), e);
+            }
+        }
+
+        /** @return the revocation reason code as defined in RevokedCertInfo.REVOCATION_REASON_..., like CrlExtensions.extractReasonCode */
+        public int getReasonCode() throws CRLException {
+            try {
+                final Extension extension = getExtension(Extension.reasonCode);
+                if (extension != null) {
+                    return CRLReason.getInstance(extension.getParsedValue()).getValue().intValue();
+                }
+            } catch (IllegalArgumentException e) {
+                throw new CRLException("Failed to parse reason code of CRL entry at offset " + offset + ": " + e.getMessage(), e);
+            }
+            return RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED;
+        }
+
+        /** @return the entry extension with the given OID or null if there is no such extension */
+        public Extension getExtension(final ASN1ObjectIdentifier oid) throws CRLException {
+            try {
+                final int serialNumberOffset = offset + header(offset);
+                final int revocationDateOffset = end(serialNumberOffset, header(serialNumberOffset));
+                final int extensionsOffset = end(revocationDateOffset, header(revocationDateOffset));
+                if (extensionsOffset >= end) {
+                    return null;
+                }
+                expectTag(extensionsOffset, TAG_SEQUENCE);
+                return Extensions.getInstance(decode(extensionsOffset, end(extensionsOffset, header(extensionsOffset)))).getExtension(oid);
+            } catch (IllegalArgumentException | IOException e) {
+                throw new CRLException("Failed to parse extensions of CRL entry at offset " + offset + ": " + e.getMessage(), e);
+            }
+        }
+
+        /** @return the DER encoding of the entry */
+        public byte[] getEncoded() {
+            return Arrays.copyOfRange(crl, offset, end);
+        }
+
+        /** @return true if the other entry has the same encoding and certificate issuer */
+        public boolean isSameAs(final Entry other) {
+            if (end - offset != other.end - other.offset) {
+                return false;
+            }
+            final byte[] otherCrl = other.getCrl();
+            for (int i = 0; i < end - offset; i++) {
+                if (crl[offset + i] != otherCrl[other.offset + i]) {
+                    return false;
+                }
+            }
+            return certificateIssuer == null ? other.certificateIssuer == null : certificateIssuer.equals(other.certificateIssuer);
+        }
+
+        private byte[] getCrl() {
+            return crl;
+        }
+
+        @Override
+        public String toString() {
+            return serialNumber.toString(16);
+        }
+    }
+
+    /** @return the first directory name or null if there is none */
+    private static X500Name getDirectoryName(final GeneralNames generalNames) {
+        for (final GeneralName generalName : generalNames.getNames()) {
+            if (generalName.getTagNo() == GeneralName.directoryName) {
+                return X500Name.getInstance(generalName.getName());
+            }
+        }
+        return null;
+    }
+
+    private int tag(final int position) throws CRLException {
+        if (position >= crl.length) {
+            throw new CRLException("Unexpected end of CRL at offset " + position + ".");
+        }
+        return crl[position] & 0xff;
+    }
+
+    private boolean isTime(final int position) throws CRLException {
+        final int tag = tag(position);
+        return tag == TAG_UTC_TIME || tag == TAG_GENERALIZED_TIME;
+    }
+
+    /** @return the length of the header of the expected tag */
+    private int expectTag(final int position, final int expectedTag) throws CRLException {
+        if (tag(position) != expectedTag) {
+            throw new CRLException("Expected tag 0x" + Integer.toHexString(expectedTag) + " at offset " + position + " but found 0x"
+                    + Integer.toHexString(tag(position)) + ".");
+        }
+        return header(position);
+    }
+
+    /** @return the length of the tag and length octets at the position. Only single octet tags and definite lengths are used in DER CRLs. */
+    private int header(final int position) throws CRLException {
+        final int first = tag(position + 1);
+        if (first < 0x80) {
+            return 2;
+        }
+        final int lengthOctets = first & 0x7f;
+        if (lengthOctets == 0 || lengthOctets > 4) {
+            throw new CRLException("Unsupported length encoding at offset " + position + ".");
+        }
+        return 2 + lengthOctets;
+    }
+
+    /** @return the offset after the value that starts at the position */
+    private int end(final int position, final int header) throws CRLException {
+        long length = 0;
+        if (header == 2) {
+            length = crl[position + 1];
+        } else {
+            for (int i = 2; i < header; i++) {
+                length = (length << 8) | (crl[position + i] & 0xff);
+            }
+        }
+        final long end = position + header + length;
+        if (end > crl.length) {
+            throw new CRLException("Length at offset " + position + " exceeds the end of the CRL.");
+        }
+        return (int) end;
+    }
+
+    private ASN1Primitive decode(final int position, final int end) throws IOException {
+        return ASN1Primitive.fromByteArray(Arrays.copyOfRange(crl, position, end));
+    }
+}
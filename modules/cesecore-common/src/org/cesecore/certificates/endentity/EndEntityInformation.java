@@ -24,8 +24,10 @@ import java.util.List;
 import java.util.Map;
 
 import org.cesecore.certificates.util.dn.DNFieldsUtil;
+import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.util.Base64GetHashMap;
 import org.cesecore.util.Base64PutHashMap;
+import org.cesecore.util.CompactMapSerializer;
 import org.cesecore.util.StringTools;
 
 
@@ -317,16 +319,21 @@ public class EndEntityInformation implements Serializable {
     public static ExtendedInformation getExtendedInformationFromStringData(final String extendedinfostring) {
         ExtendedInformation returnval = null;
         if (extendedinfostring != null && !extendedinfostring.isEmpty() ) {
-            try (final java.beans.XMLDecoder decoder = new java.beans.XMLDecoder(new ByteArrayInputStream(extendedinfostring.getBytes(StandardCharsets.UTF_8)));) {
-            	final HashMap<?, ?> data = (HashMap<?, ?>) decoder.readObject();
-            	// No need to b64 decode Integer value, just read it
-            	final int type = ((Integer) data.get(ExtendedInformation.TYPE)).intValue();
-            	switch (type) {
-            	case ExtendedInformation.TYPE_BASIC :
-            	    returnval = new ExtendedInformation();
-            	    returnval.loadData(data);
-            	    break;
-            	}
+            final HashMap<?, ?> data;
+            if (CompactMapSerializer.isCompact(extendedinfostring)) {
+                data = (HashMap<?, ?>) CompactMapSerializer.decode(extendedinfostring);
+            } else {
+                try (final java.beans.XMLDecoder decoder = new java.beans.XMLDecoder(new ByteArrayInputStream(extendedinfostring.getBytes(StandardCharsets.UTF_8)));) {
+                    data = (HashMap<?, ?>) decoder.readObject();
+                }
+            }
+            // No need to b64 decode Integer value, just read it
+            final int type = ((Integer) data.get(ExtendedInformation.TYPE)).intValue();
+            switch (type) {
+            case ExtendedInformation.TYPE_BASIC :
+                returnval = new ExtendedInformation();
+                returnval.loadData(data);
+                break;
             }
         }
         return returnval;
@@ -338,6 +345,9 @@ public class EndEntityInformation implements Serializable {
             // We must base64 encode string for UTF safety
             final HashMap<Object, Object> b64DataMap = new Base64PutHashMap();
             b64DataMap.putAll(extendedinformation.getRawData());
+            if (CesecoreConfiguration.isCompactDataEncoding()) {
+                return CompactMapSerializer.encode(b64DataMap);
+            }
             final ByteArrayOutputStream baos = new ByteArrayOutputStream(512);
     		try (final java.beans.XMLEncoder encoder = new java.beans.XMLEncoder(baos);) {
     		    encoder.writeObject(b64DataMap);
@@ -15,6 +15,7 @@ package org.cesecore.certificates.ocsp.cache;
 import java.util.regex.Pattern;
 
 import org.apache.log4j.Logger;
+import org.cesecore.certificates.ocsp.logging.PatternLogWriter;
 import org.cesecore.config.OcspConfiguration;
 import org.cesecore.keybind.impl.OcspKeyBinding;
 
@@ -85,6 +86,8 @@ public enum OcspConfigurationCache {
             final String value = OcspConfiguration.getNonExistingIsRevokedOverideRegex();
             nonExistingIsRevokedOverideRegex = value != null ? Pattern.compile(value) : null;
         }
+        // The settings for writing the OCSP transaction and audit logs in the background are part of the same configuration
+        PatternLogWriter.INSTANCE.reloadConfiguration();
     }
 
     public boolean isNonExistingUnauthorized(OcspKeyBinding ocspKeyBinding) {
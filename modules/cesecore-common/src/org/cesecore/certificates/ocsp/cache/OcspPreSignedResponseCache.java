@@ -0,0 +1,228 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.cache;
+
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.cesecore.config.OcspConfiguration;
+
+/**
+ * Cache of signed OCSP responses to requests for a single certificate without nonce or other extensions.
+ *
+ * A response is only returned from the cache while there is more than half the refresh margin left until its nextUpdate. Responses that
+ * have been requested since they were signed are picked up by {@link #getEntriesToRefresh()} when they are within the refresh margin, so
+ * they can be signed again before they become unusable. Responses that nobody asked for are dropped instead.
+ *
+ * Lookups do not lock. Changes are serialized, so that the index of cached responses per serial number used for invalidation is kept
+ * in step with the cache.
+ *
+ * The status of a certificate is invalidated before the transaction that changes it commits, so a request served in between could cache
+ * the old status again. To prevent that, no responses are cached for an invalidated serial number or CA until the refresh margin has passed.
+ *
+ * @version $Id$
+ */
+public enum OcspPreSignedResponseCache {
+    INSTANCE;
+
+    private static final Logger log = Logger.getLogger(OcspPreSignedResponseCache.class);
+
+    /** A signed response and what is needed to return it without signing again. */
+    public static class PreSignedResponse {
+        private final CertificateID certId;
+        private final String issuerDn;
+        private final OCSPResp ocspResponse;
+        private final X509Certificate signerCert;
+        private final long maxAge;
+        private final long nextUpdate;
+        private final int certStatus;
+        private volatile boolean requested = false;
+
+        public PreSignedResponse(final CertificateID certId, final String issuerDn, final OCSPResp ocspResponse, final X509Certificate signerCert,
+                final long maxAge, final long nextUpdate, final int certStatus) {
+            this.certId = certId;
+            this.issuerDn = issuerDn;
+            this.ocspResponse = ocspResponse;
+            this.signerCert = signerCert;
+            this.maxAge = maxAge;
+            this.nextUpdate = nextUpdate;
+            this.certStatus = certStatus;
+        }
+
+        public CertificateID getCertId() { return certId; }
+        /** @return the subject DN of the CA that issued the certificate */
+        public String getIssuerDn() { return issuerDn; }
+        public OCSPResp getOcspResponse() { return ocspResponse; }
+        public X509Certificate getSignerCert() { return signerCert; }
+        public long getMaxAge() { return maxAge; }
+        /** @return nextUpdate of the response in epoch milliseconds */
+        public long getNextUpdate() { return nextUpdate; }
+        /** @return one of the OCSPResponseItem.OCSP_ status constants */
+        public int getCertStatus() { return certStatus; }
+        /** @return true if the response has been returned from the cache since it was signed */
+        public boolean isRequested() { return requested; }
+    }
+
+    private final Map<CertificateID, PreSignedResponse> cache = new ConcurrentHashMap<>();
+    /** The keys in the cache for each serial number. Only accessed while holding the lock on this object. */
+    private final Map<BigInteger, Set<CertificateID>> serialNumberIndex = new HashMap<>();
+    /** When serial numbers and CAs were last invalidated. Only accessed while holding the lock on this object. */
+    private final Map<BigInteger, Long> invalidatedSerialNumbers = new HashMap<>();
+    private final Map<String, Long> invalidatedIssuers = new HashMap<>();
+
+    /**
+     * @param certId the CertificateID of a request
+     * @return a cached response that is still usable, or null if the response has to be signed
+     */
+    public PreSignedResponse getEntry(final CertificateID certId) {
+        final PreSignedResponse entry = cache.get(certId);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.getNextUpdate() - System.currentTimeMillis() <= OcspConfiguration.getPreSigningRefreshMarginInMilliseconds() / 2) {
+            // The refresh has fallen behind, so let the caller sign a fresh response
+            removeEntry(entry);
+            return null;
+        }
+        entry.requested = true;
+        return entry;
+    }
+
+    /**
+     * Add a signed response to the cache, unless it is too close to its nextUpdate or the cache is full.
+     *
+     * @return true if the response was added
+     */
+    public synchronized boolean addEntry(final PreSignedResponse entry) {
+        if (entry.getNextUpdate() - System.currentTimeMillis() <= OcspConfiguration.getPreSigningRefreshMarginInMilliseconds()) {
+            if (log.isDebugEnabled()) {
+                log.debug("Not caching OCSP response for serial " + entry.getCertId().getSerialNumber().toString(16)
+                        + " since nextUpdate is within the refresh margin.");
+            }
+            return false;
+        }
+        if (invalidatedSerialNumbers.containsKey(entry.getCertId().getSerialNumber()) || invalidatedIssuers.containsKey(entry.getIssuerDn())) {
+            return false;
+        }
+        if (!cache.containsKey(entry.getCertId()) && cache.size() >= OcspConfiguration.getPreSigningMaxEntries()) {
+            return false;
+        }
+        cache.put(entry.getCertId(), entry);
+        Set<CertificateID> certIds = serialNumberIndex.get(entry.getCertId().getSerialNumber());
+        if (certIds == null) {
+            certIds = new HashSet<>();
+            serialNumberIndex.put(entry.getCertId().getSerialNumber(), certIds);
+        }
+        certIds.add(entry.getCertId());
+        return true;
+    }
+
+    /**
+     * Removes all cached responses that are within the refresh margin of their nextUpdate.
+     *
+     * @return the removed responses that have been requested since they were signed
+     */
+    public synchronized List<PreSignedResponse> getEntriesToRefresh() {
+        final long now = System.currentTimeMillis();
+        final long refreshMargin = OcspConfiguration.getPreSigningRefreshMarginInMilliseconds();
+        removeOlderThan(invalidatedSerialNumbers, now - refreshMargin);
+        removeOlderThan(invalidatedIssuers, now - refreshMargin);
+        final long refreshBefore = now + refreshMargin;
+        final List<PreSignedResponse> ret = new ArrayList<>();
+        for (final PreSignedResponse entry : new ArrayList<>(cache.values())) {
+            if (entry.getNextUpdate() <= refreshBefore) {
+                removeEntry(entry);
+                if (entry.isRequested()) {
+                    ret.add(entry);
+                }
+            }
+        }
+        return ret;
+    }
+
+    /** Remove cached responses for a certificate, for example when its status has changed. */
+    public void invalidate(final String issuerDn, final BigInteger serialNumber) {
+        if (!OcspConfiguration.isPreSigningEnabled()) {
+            // Don't take the lock on every certificate update when pre-signing is not used
+            return;
+        }
+        invalidateInternal(issuerDn, serialNumber);
+    }
+
+    private synchronized void invalidateInternal(final String issuerDn, final BigInteger serialNumber) {
+        invalidatedSerialNumbers.put(serialNumber, Long.valueOf(System.currentTimeMillis()));
+        final Set<CertificateID> certIds = serialNumberIndex.get(serialNumber);
+        if (certIds == null) {
+            return;
+        }
+        for (final CertificateID certId : new ArrayList<>(certIds)) {
+            final PreSignedResponse entry = cache.get(certId);
+            if (entry != null && entry.getIssuerDn().equals(issuerDn)) {
+                removeEntry(entry);
+            }
+        }
+    }
+
+    /** Remove all cached responses for certificates issued by a CA. */
+    public synchronized void invalidateIssuer(final String issuerDn) {
+        invalidatedIssuers.put(issuerDn, Long.valueOf(System.currentTimeMillis()));
+        for (final PreSignedResponse entry : new ArrayList<>(cache.values())) {
+            if (entry.getIssuerDn().equals(issuerDn)) {
+                removeEntry(entry);
+            }
+        }
+    }
+
+    /** @return the number of cached responses */
+    public int size() {
+        return cache.size();
+    }
+
+    public synchronized void flush() {
+        cache.clear();
+        serialNumberIndex.clear();
+        invalidatedSerialNumbers.clear();
+        invalidatedIssuers.clear();
+    }
+
+    private static <K> void removeOlderThan(final Map<K, Long> invalidationTimes, final long time) {
+        for (final Iterator<Long> iterator = invalidationTimes.values().iterator(); iterator.hasNext();) {
+            if (iterator.next().longValue() < time) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private synchronized void removeEntry(final PreSignedResponse entry) {
+        if (cache.remove(entry.getCertId(), entry)) {
+            final Set<CertificateID> certIds = serialNumberIndex.get(entry.getCertId().getSerialNumber());
+            if (certIds != null) {
+                certIds.remove(entry.getCertId());
+                if (certIds.isEmpty()) {
+                    serialNumberIndex.remove(entry.getCertId().getSerialNumber());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.cesecore.certificates.ocsp.logging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A log line format of a PatternLogger, parsed once into literal text and the keys of the values that are inserted between. Group 1 of
+ * the pattern is the key, and text that matches the pattern but has no value is written as it is.
+ * 
+ * Templates are immutable and shared by all loggers with the same pattern and order string.
+ * 
+ * @version $Id$
+ */
+public final class PatternLogTemplate {
+
+    private static final ConcurrentHashMap<String, PatternLogTemplate> templates = new ConcurrentHashMap<String, PatternLogTemplate>();
+
+    /** Literal text, where literals[i] comes before the value of keys[i], and the last literal ends the line */
+    private final String[] literals;
+    private final String[] keys;
+    /** The text that matched the pattern for each key, written when there is no value for the key */
+    private final String[] placeholders;
+    private final int literalLength;
+
+    private PatternLogTemplate(final String matchPattern, final String matchString) {
+        final List<String> literalList = new ArrayList<String>();
+        final List<String> keyList = new ArrayList<String>();
+        final List<String> placeholderList = new ArrayList<String>();
+        final Matcher matcher = Pattern.compile(matchPattern).matcher(matchString);
+        int position = 0;
+        int length = 0;
+        while (matcher.find()) {
+            final String literal = matchString.substring(position, matcher.start());
+            literalList.add(literal);
+            length += literal.length();
+            keyList.add(matcher.group(1));
+            placeholderList.add(matcher.group(0));
+            position = matcher.end();
+        }
+        final String tail = matchString.substring(position);
+        literalList.add(tail);
+        length += tail.length();
+        this.literals = literalList.toArray(new String[literalList.size()]);
+        this.keys = keyList.toArray(new String[keyList.size()]);
+        this.placeholders = placeholderList.toArray(new String[placeholderList.size()]);
+        this.literalLength = length;
+    }
+
+    /**
+     * @param matchPattern regular expression where group 1 is the key of a value, for example \$\{(.+?)\}
+     * @param matchString the log line with placeholders that match the pattern
+     * @return the parsed template, which is only parsed the first time it is asked for
+     */
+    public static PatternLogTemplate getInstance(final String matchPattern, final String matchString) {
+        final String cacheKey = matchPattern + '\u0000' + matchString;
+        PatternLogTemplate template = templates.get(cacheKey);
+        if (template == null) {
+            template = new PatternLogTemplate(matchPattern, matchString);
+            final PatternLogTemplate previous = templates.putIfAbsent(cacheKey, template);
+            if (previous != null) {
+                template = previous;
+            }
+        }
+        return template;
+    }
+
+    /**
+     * Appends a log line to a StringBuilder.
+     * @param sb the StringBuilder to append to
+     * @param values values by key. The text that matched the pattern is written for keys without a value.
+     */
+    public void appendTo(final StringBuilder sb, final Map<String, String> values) {
+        for (int i = 0; i < keys.length; i++) {
+            sb.append(literals[i]);
+            final String value = values.get(keys[i]);
+            sb.append(value != null ? value : placeholders[i]);
+        }
+        sb.append(literals[keys.length]);
+    }
+
+    /** @return the log line, see {@link #appendTo(StringBuilder, Map)} */
+    public String interpolate(final Map<String, String> values) {
+        final StringBuilder sb = new StringBuilder(literalLength + 16 * keys.length);
+        appendTo(sb, values);
+        return sb.toString();
+    }
+}
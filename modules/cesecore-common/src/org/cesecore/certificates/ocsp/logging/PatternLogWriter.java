@@ -0,0 +1,246 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.cesecore.certificates.ocsp.logging;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Logger;
+import org.cesecore.config.OcspConfiguration;
+
+/**
+ * Writes the output of PatternLoggers to log4j from a background thread, so that the threads that handle OCSP requests do not wait
+ * for the log appenders. Lines are handed over in a bounded queue without locks. When the queue is full, a line is either dropped or
+ * the request thread waits until there is room, see {@link OcspConfiguration#getLogAsyncDrop()}.
+ * 
+ * Writing in the background is only done when enabled by {@link OcspConfiguration#getLogAsync()}, otherwise lines are written at once.
+ * The background thread logs how many lines it has written and dropped once a minute, at info level if lines have been dropped.
+ * 
+ * @version $Id$
+ */
+public enum PatternLogWriter {
+    INSTANCE;
+
+    private static final Logger log = Logger.getLogger(PatternLogWriter.class);
+
+    /** How often the background thread logs the number of written and dropped lines */
+    private static final long STATISTICS_INTERVAL_MS = 60000;
+
+    private static final class Line {
+        private final Logger logger;
+        private final String output;
+
+        private Line(final Logger logger, final String output) {
+            this.logger = logger;
+            this.output = output;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<Line> queue = new ConcurrentLinkedQueue<Line>();
+    /** The number of lines in the queue, which ConcurrentLinkedQueue can not tell without counting them */
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private volatile boolean async;
+    private volatile boolean drop;
+    private volatile int queueSize;
+    private volatile Thread writerThread;
+    /** True while the writer thread is parked or about to park because the queue is empty */
+    private volatile boolean writerWaiting;
+
+    private PatternLogWriter() {
+        reloadConfiguration();
+    }
+
+    /**
+     * Reads the configuration again. Lines that are already queued are still written by the background thread. Called when the OCSP
+     * configuration is reloaded, see OcspConfigurationCache.
+     */
+    public void reloadConfiguration() {
+        queueSize = OcspConfiguration.getLogAsyncQueueSize();
+        drop = OcspConfiguration.getLogAsyncDrop();
+        async = OcspConfiguration.getLogAsync();
+    }
+
+    /** @return true if lines are written by a background thread */
+    public boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * Writes the output of a PatternLogger as a debug message, at once or from the background thread.
+     * @param logger the log4j Logger of the PatternLogger
+     * @param output the lines to write
+     */
+    public void write(final Logger logger, final String output) {
+        if (!async) {
+            logger.debug(output);
+            written.increment();
+            return;
+        }
+        if (!reserve()) {
+            dropped.increment();
+            if (log.isDebugEnabled()) {
+                log.debug("Log queue is full, dropped a line for " + logger.getName() + ". Dropped lines: " + dropped.sum());
+            }
+            return;
+        }
+        queue.offer(new Line(logger, output));
+        if (writerWaiting) {
+            LockSupport.unpark(getWriterThread());
+        } else {
+            getWriterThread();
+        }
+    }
+
+    /** @return the number of lines waiting to be written */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    /** @return the number of lines that were dropped because the queue was full */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /** @return the number of lines that have been written to log4j */
+    public long getWritten() {
+        return written.sum();
+    }
+
+    /**
+     * Waits until all lines that are queued have been written, or until the timeout has passed.
+     * @return true if the queue is empty
+     */
+    public boolean drain(final long timeoutMs) {
+        final long deadline = System.currentTimeMillis() + timeoutMs;
+        while (queued.get() > 0 && System.currentTimeMillis() < deadline) {
+            LockSupport.unpark(writerThread);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return queued.get() == 0;
+    }
+
+    /**
+     * Waits until the lines that are queued have been written, or until the timeout has passed, and stops the background thread.
+     * A new thread is started if lines are queued again.
+     */
+    public void shutdown(final long timeoutMs) {
+        drain(timeoutMs);
+        final Thread thread;
+        synchronized (this) {
+            thread = writerThread;
+            writerThread = null;
+        }
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(timeoutMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** @return true if there was room for a line in the queue, after waiting for it unless lines are dropped */
+    private boolean reserve() {
+        while (true) {
+            final int current = queued.get();
+            if (current < queueSize) {
+                if (queued.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            } else if (drop) {
+                return false;
+            } else {
+                LockSupport.unpark(writerThread);
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            }
+        }
+    }
+
+    private Thread getWriterThread() {
+        Thread thread = writerThread;
+        if (thread == null) {
+            synchronized (this) {
+                thread = writerThread;
+                if (thread == null) {
+                    thread = new Thread(new Runnable() { // NOPMD the log lines are written outside of any transaction
+                        @Override
+                        public void run() {
+                            writeLines();
+                        }
+                    }, "OcspPatternLogWriter");
+                    thread.setDaemon(true);
+                    // Set before the thread starts, since it stops when it is no longer the writer thread
+                    writerThread = thread;
+                    thread.start();
+                }
+            }
+        }
+        return thread;
+    }
+
+    private void writeLines() {
+        final Thread self = Thread.currentThread();
+        long nextStatistics = System.currentTimeMillis() + STATISTICS_INTERVAL_MS;
+        long lastDropped = dropped.sum();
+        while (writerThread == self) {
+            final long now = System.currentTimeMillis();
+            if (now >= nextStatistics) {
+                nextStatistics = now + STATISTICS_INTERVAL_MS;
+                lastDropped = logStatistics(lastDropped);
+            }
+            final Line line = queue.poll();
+            if (line == null) {
+                writerWaiting = true;
+                // A line may have been queued before the flag was set, so look again before parking
+                if (queue.isEmpty()) {
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+                }
+                writerWaiting = false;
+                continue;
+            }
+            try {
+                line.logger.debug(line.output);
+                written.increment();
+            } catch (RuntimeException e) {
+                log.error("Failed to write log line: " + e.getMessage(), e);
+            } finally {
+                queued.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Logs the number of written, dropped and queued lines, at info level if lines have been dropped since the last time.
+     * @return the number of dropped lines, to compare with the next time
+     */
+    private long logStatistics(final long lastDropped) {
+        final long droppedNow = dropped.sum();
+        if (droppedNow > lastDropped || log.isDebugEnabled()) {
+            final String msg = "OCSP log lines written: " + written.sum() + ", dropped: " + droppedNow + " (" + (droppedNow - lastDropped)
+                    + " since last time), queued: " + queued.get() + ".";
+            if (droppedNow > lastDropped) {
+                log.info(msg);
+            } else {
+                log.debug(msg);
+            }
+        }
+        return droppedNow;
+    }
+}
@@ -13,15 +13,11 @@
 
 package org.cesecore.certificates.ocsp.logging;
 
-import java.io.PrintWriter;
 import java.io.Serializable;
-import java.io.StringWriter;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TimeZone;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.time.FastDateFormat;
@@ -30,10 +26,11 @@ import org.bouncycastle.util.encoders.Hex;
 
 /**
  * This class can be extended to create highly configurable log classes. Values that are to be logged are stored in a Hashmap and the output is
- * configured using a Java.util.regex.Matcher and a sortString. The extending classes also need to supply a Logger and a String specifying how to log
- * Dates.
+ * configured using a Java.util.regex.Pattern and a sortString, which are parsed once into a {@link PatternLogTemplate}. The extending classes also
+ * need to supply a Logger and a String specifying how to log Dates.
  * 
  * Use paramPut(String key, String value) to add values, Use writeln() to log all the stored values and then use flush() to store them to file.
+ * flush() hands the output to {@link PatternLogWriter}, which may write it from a background thread.
  * 
  * Roughly based on PatternLogger.java 8663 2010-02-17 10:42:41Z anatom from EJBCA
  * 
@@ -82,11 +79,13 @@ public abstract class PatternLogger implements Serializable {
      */
     public static final String PROCESS_TIME = "PROCESS_TIME";
 
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
     private final Map<String, String> valuepairs = new HashMap<String, String>();
     private final String matchString;
     private final String matchPattern;
-    // Matcher is not Serializable
-    private transient Matcher m;
+    // The template is shared and not Serializable
+    private transient PatternLogTemplate template;
     private final String orderString;
     private final Date startTime;
     private Date startProcessTime = null;
@@ -96,8 +95,7 @@ public abstract class PatternLogger implements Serializable {
     private transient Logger logger;
 
     // for writing the output
-    private transient StringWriter sw;
-    private transient PrintWriter pw;
+    private transient StringBuilder lines;
 
     /**
      * @param doLogging
@@ -132,13 +130,13 @@ public abstract class PatternLogger implements Serializable {
         this.paramPut(LOG_ID, "0");
     }
     
-    private Matcher getMatcher() {
-        if (this.m == null) {
-            // We have to instantiate the Matcher in the class and can not have it as an instance variable.
+    private PatternLogTemplate getTemplate() {
+        if (this.template == null) {
+            // We have to look up the template in the class and can not have it as an instance variable.
             // This is because we are sending this object to a remote EJB (at least in system tests)
-            this.m = Pattern.compile(matchPattern).matcher(matchString);
+            this.template = PatternLogTemplate.getInstance(matchPattern, matchString);
         }
-        return this.m;
+        return this.template;
     }
 
     private Logger getLogger() {
@@ -150,12 +148,11 @@ public abstract class PatternLogger implements Serializable {
         return this.logger;
     }
 
-    private PrintWriter getPrintWriter() {
-        if (this.pw == null) {
-            this.sw = new StringWriter();
-            this.pw = new PrintWriter(this.sw);
+    private StringBuilder getLines() {
+        if (this.lines == null) {
+            this.lines = new StringBuilder(2 * this.orderString.length());
         }
-        return pw;
+        return lines;
     }
     
     /**
@@ -163,28 +160,8 @@ public abstract class PatternLogger implements Serializable {
      * @return output to be logged
      */
     private String interpolate() {
-        final StringBuffer sb = new StringBuffer(this.orderString.length());
-        final Matcher matcher = getMatcher();
-        matcher.reset();
-        while (matcher.find()) {
-            // when the pattern is ${identifier}, group 0 is 'identifier'
-            final String key = matcher.group(1);
-            final String value = this.valuepairs.get(key);
-
-            // if the pattern does exists, replace it by its value
-            // otherwise keep the pattern ( it is group(0) )
-            if (value != null) {
-                matcher.appendReplacement(sb, value);
-            } else {
-                // I'm doing this to avoid the backreference problem as there will be a $
-                // if I replace directly with the group 0 (which is also a pattern)
-                matcher.appendReplacement(sb, "");
-                final String unknown = matcher.group(0);
-                sb.append(unknown);
-            }
-        }
-        matcher.appendTail(sb);
-        return sb.toString();
+        // Values are inserted as they are, unknown keys are kept as the text that matched the pattern
+        return getTemplate().interpolate(this.valuepairs);
     }
 
     /**
@@ -231,8 +208,9 @@ public abstract class PatternLogger implements Serializable {
      * Method used for creating a log row of all added values
      */
     public void writeln() {
-        if (doLogging) {
-            getPrintWriter().println(interpolate());
+        if (doLogging && getLogger().isDebugEnabled()) {
+            getTemplate().appendTo(getLines(), this.valuepairs);
+            getLines().append(LINE_SEPARATOR);
         }
     }
 
@@ -240,18 +218,19 @@ public abstract class PatternLogger implements Serializable {
      * Writes all the rows created by writeln() to the Logger
      */
     public void flush() {
-        if (doLogging) {
-            getPrintWriter().flush();
-            String output = this.sw.toString();
-            output = output.replaceAll(REPLY_TIME, String.valueOf(new Date().getTime() - this.startTime.getTime()));
+        if (doLogging && this.lines != null && getLogger().isDebugEnabled()) {
+            final long now = System.currentTimeMillis();
+            String output = this.lines.toString();
+            output = StringUtils.replace(output, REPLY_TIME, String.valueOf(now - this.startTime.getTime()));
             if (startProcessTime != null) {
-                output = output.replaceAll(PROCESS_TIME, String.valueOf(new Date().getTime() - this.startProcessTime.getTime()));
+                output = StringUtils.replace(output, PROCESS_TIME, String.valueOf(now - this.startProcessTime.getTime()));
             }
             //Remove an extra linebreak between flushes.
-            if(output.endsWith(System.getProperty("line.separator"))) {
-                output = output.substring(0, output.length()-1);
+            if (output.endsWith(LINE_SEPARATOR)) {
+                output = output.substring(0, output.length() - LINE_SEPARATOR.length());
             }
-            getLogger().debug(output); // Finally output the log row to the logging device
+            this.lines.setLength(0);
+            PatternLogWriter.INSTANCE.write(getLogger(), output); // Finally output the log row to the logging device
         }
     }
 
@@ -34,6 +34,7 @@ import org.bouncycastle.asn1.x509.Extension;
 import org.bouncycastle.asn1.x509.GeneralNames;
 import org.bouncycastle.x509.extension.X509ExtensionUtil;
 import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.cesecore.certificates.crl.StreamingCrlParser;
 
 /**
  * A class for reading values from CRL extensions.
@@ -127,15 +128,28 @@ public class CrlExtensions {
             if (asn1OctetString!=null) {
                 final ASN1Sequence asn1Sequence = getAsn1ObjectFromBytes(asn1OctetString.getOctets(), ASN1Sequence.class);
                 if (asn1Sequence!=null) {
-                    final CRLDistPoint cdp = CRLDistPoint.getInstance(asn1Sequence);
-                    for (final DistributionPoint distributionPoint : cdp.getDistributionPoints()) {
-                        freshestCdpUrls.add(((DERIA5String) ((GeneralNames) distributionPoint.getDistributionPoint().getName()).getNames()[0].getName()).getString());
-                    }
+                    addDistributionPointUrls(freshestCdpUrls, CRLDistPoint.getInstance(asn1Sequence));
                 }
             }
         }
         return freshestCdpUrls;
     }
+
+    /** @return a list of URLs in String format with present freshest CRL extensions or an empty List */
+    public static List<String> extractFreshestCrlDistributionPoints(final StreamingCrlParser crl) {
+        final List<String> freshestCdpUrls = new ArrayList<String>();
+        final Extension extension = crl.getExtension(Extension.freshestCRL);
+        if (extension!=null) {
+            addDistributionPointUrls(freshestCdpUrls, CRLDistPoint.getInstance(extension.getParsedValue()));
+        }
+        return freshestCdpUrls;
+    }
+
+    private static void addDistributionPointUrls(final List<String> urls, final CRLDistPoint cdp) {
+        for (final DistributionPoint distributionPoint : cdp.getDistributionPoints()) {
+            urls.add(((DERIA5String) ((GeneralNames) distributionPoint.getDistributionPoint().getName()).getNames()[0].getName()).getString());
+        }
+    }
     
     /** @return the first object found when treating the provided byte array as an ASN1InputStream */
     @SuppressWarnings("unchecked")
@@ -79,6 +79,22 @@ public final class CesecoreConfiguration {
         return ConfigurationHolder.getString("ca.rngalgorithm");
     }
 
+    /**
+     * The number of random number generator instances used to generate serial numbers, so that concurrent requests do not wait for each other.
+     * Default is the number of available processors.
+     */
+    public static int getCaSerialNumberRngInstances() {
+        final String value = ConfigurationHolder.getString("ca.rnginstances");
+        try {
+            if (!StringUtils.isEmpty(value) && Integer.parseInt(value.trim()) > 0) {
+                return Integer.parseInt(value.trim());
+            }
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value of ca.rnginstances, using default: " + value);
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
     /**
      * The date and time from which an expire date of a certificate is to be considered to be too far in the future.
      */
@@ -198,6 +214,14 @@ public final class CesecoreConfiguration {
         return getLongValue("blacklist.cachetime", 30000L, "milliseconds to cache public key blacklist entries");
     }
 
+    /**
+     * Parameter to specify how often the off-heap index of public key blacklist fingerprints is reloaded from the database. -1 means
+     * that the index is not used, and each public key is looked up in the database instead.
+     */
+    public static long getPublicKeyBlacklistIndexReloadTime() {
+        return getLongValue("blacklist.index.reloadtime", 600000L, "milliseconds between reloads of the public key blacklist index");
+    }
+
     /**
      * Parameter to specify if retrieving KeyValidator objects from KeyValidatorSession should be cached, and in that case for how long.
      */
@@ -262,6 +286,16 @@ public final class CesecoreConfiguration {
         return value != null && value.trim().equalsIgnoreCase(TRUE);
     }
 
+    /**
+     * Option if data maps of profiles, CAs, roles, key bindings and end entities should be written to the database in the compact
+     * format of {@link org.cesecore.util.CompactMapSerializer} instead of as XML. Data in both formats can always be read, so this
+     * should be enabled once all nodes in a cluster run a version that can read the compact format. Default false.
+     */
+    public static boolean isCompactDataEncoding() {
+        final String value = ConfigurationHolder.getString("db.compactdataencoding");
+        return value != null && value.trim().equalsIgnoreCase(TRUE);
+    }
+
     /**
      * Option if we should keep internal CA keystores in the CAData table to be compatible with CeSecore 1.1/EJBCA 5.0.
      * Default to true. Set to false when all nodes in a cluster have been upgraded to CeSecore 1.2/EJBCA 5.1 or later,
@@ -377,6 +411,27 @@ public final class CesecoreConfiguration {
         return Boolean.TRUE.toString().equalsIgnoreCase(ConfigurationHolder.getString("databaseprotection.enableverify"));
     }
 
+    /**
+     * @return the fraction (0.0 to 1.0) of the rows that should have their integrity protection verified when many rows of the table are read
+     * at once, for example when searching the audit log. Default is 1.0, to verify every row.
+     */
+    public static double getDatabaseIntegrityBulkVerificationFraction(final String tableName) {
+        // First check if we have explicit configuration for this entity
+        String value = ConfigurationHolder.getString("databaseprotection.bulkverify.fraction." + tableName);
+        if (value == null) {
+            value = ConfigurationHolder.getString("databaseprotection.bulkverify.fraction");
+        }
+        if (value == null) {
+            return 1.0;
+        }
+        try {
+            return Math.max(0.0, Math.min(1.0, Double.parseDouble(value.trim())));
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value '" + value + "' of databaseprotection.bulkverify.fraction, verifying all rows.");
+            return 1.0;
+        }
+    }
+
     public static boolean getCaKeepOcspExtendedService() {
         return Boolean.valueOf(ConfigurationHolder.getString("ca.keepocspextendedservice").toLowerCase());
     }
@@ -386,6 +441,84 @@ public final class CesecoreConfiguration {
         return Long.valueOf(getLongValue("database.crlgenfetchsize", 500000L, "rows")).intValue();
     }
 
+    /** @return true if certificate status lookups and delta CRLs should use the in-memory revocation status index */
+    public static boolean isRevocationStatusIndexEnabled() {
+        final String value = ConfigurationHolder.getString("revocationindex.enabled");
+        return value!=null && Boolean.parseBoolean(value.trim());
+    }
+
+    /** @return how often, in milliseconds, changes made to certificate statuses in the database are read into the revocation status index */
+    public static long getRevocationStatusIndexSyncInterval() {
+        return getLongValue("revocationindex.syncinterval", 10000L, "milliseconds");
+    }
+
+    /** @return how far back, in milliseconds, changes are read again at each sync, to catch transactions that committed late */
+    public static long getRevocationStatusIndexSyncOverlap() {
+        return getLongValue("revocationindex.syncoverlap", 60000L, "milliseconds");
+    }
+
+    /** @return how often, in milliseconds, the revocation status index of an issuer is rebuilt from scratch, or -1 to never rebuild it */
+    public static long getRevocationStatusIndexReloadInterval() {
+        return getLongValue("revocationindex.reloadinterval", 86400000L, "milliseconds");
+    }
+
+    /** @return the maximum number of certificates of an issuer to keep in the revocation status index */
+    public static int getRevocationStatusIndexMaxEntries() {
+        return Long.valueOf(getLongValue("revocationindex.maxentries", 10000000L, "certificates")).intValue();
+    }
+
+    /** @return true if parsed and normalized DNs should be cached by CertTools, see DnCache */
+    public static boolean isDnCacheEnabled() {
+        final String value = ConfigurationHolder.getString("dncache.enabled");
+        return value!=null && Boolean.parseBoolean(value.trim());
+    }
+
+    /** @return the maximum number of entries in the DN cache */
+    public static int getDnCacheMaxEntries() {
+        return Long.valueOf(getLongValue("dncache.maxentries", 10000L, "entries")).intValue();
+    }
+
+    /** @return true if key pairs generated by the server should be taken from a pool that is filled in the background, see KeyPairPool */
+    public static boolean isKeyPoolEnabled() {
+        final String value = ConfigurationHolder.getString("keypool.enabled");
+        return value!=null && Boolean.parseBoolean(value.trim());
+    }
+
+    /** @return the key specifications to keep in the key pair pool, as <algorithm>:<key specification>, for example RSA:2048 */
+    public static List<String> getKeyPoolKeySpecs() {
+        final String value = ConfigurationHolder.getString("keypool.keyspecs");
+        final List<String> ret = new ArrayList<>();
+        if (value != null) {
+            for (final String keySpec : value.split(";")) {
+                if (keySpec.trim().length() > 0) {
+                    ret.add(keySpec.trim());
+                }
+            }
+        }
+        return ret;
+    }
+
+    /** @return the number of key pairs of a key specification below which the key pair pool is refilled */
+    public static int getKeyPoolLowWatermark() {
+        return Long.valueOf(getLongValue("keypool.lowwatermark", 10L, "key pairs")).intValue();
+    }
+
+    /** @return the number of key pairs of a key specification that the key pair pool is refilled to */
+    public static int getKeyPoolHighWatermark() {
+        return Long.valueOf(getLongValue("keypool.highwatermark", 50L, "key pairs")).intValue();
+    }
+
+    /** @return the number of threads that generate key pairs for the key pair pool */
+    public static int getKeyPoolThreads() {
+        return Math.max(1, Long.valueOf(getLongValue("keypool.threads", 2L, "threads")).intValue());
+    }
+
+    /** @return true if full CRLs should be encoded while the revoked certificates are read from the database, instead of reading all of them first. */
+    public static boolean isDatabaseCrlGenStreaming() {
+        final String value = ConfigurationHolder.getString("database.crlgenstreaming");
+        return value!=null && Boolean.parseBoolean(value.trim());
+    }
+
     /**
      * Used just in {@link #getForbiddenCharacters()}. The method is called very
      * often so we declare this String in the class so it does not have to be
@@ -487,6 +620,40 @@ public final class CesecoreConfiguration {
         return getLongValue("ct.fastfail.backoff", 1000L, "milliseconds");
     }
 
+    /**
+     * How long time (in milliseconds) to wait for a response from a CT log before a request is also sent to a spare log.
+     * 0 means that requests are sent to all candidate logs at once.
+     *
+     * The ct.submission settings are only read by CtSubmissionEngine, which nothing in this tree calls yet, so they are not listed in
+     * cesecore.properties.sample. They should be added there when a CertificateTransparency implementation uses the engine.
+     */
+    public static long getCTSubmissionHedgeDelay() {
+        return Math.max(0L, getLongValue("ct.submission.hedgedelay", 1000L, "milliseconds"));
+    }
+
+    /** The maximum number of concurrent requests to CT logs from this node. */
+    public static int getCTSubmissionThreads() {
+        return Math.max(1, Long.valueOf(getLongValue("ct.submission.threads", 32L, "threads")).intValue());
+    }
+
+    /**
+     * The maximum number of requests to one CT log from this node that are in progress or waiting for a thread, so that a log that
+     * does not respond can not use up all threads.
+     */
+    public static int getCTSubmissionMaxRequestsPerLog() {
+        return Math.max(1, Long.valueOf(getLongValue("ct.submission.maxrequestsperlog", 8L, "requests")).intValue());
+    }
+
+    /** The maximum number of SCTs to keep per submitted certificate and log, so that re-submissions can be skipped. 0 disables the cache. */
+    public static int getCTSubmissionCacheMaxEntries() {
+        return Math.max(0, Long.valueOf(getLongValue("ct.submission.cache.maxentries", 10000L, "number of entries in cache")).intValue());
+    }
+
+    /** How long time (in milliseconds) an SCT is kept in the submission cache. */
+    public static long getCTSubmissionCacheTime() {
+        return getLongValue("ct.submission.cache.time", 3600000L, "milliseconds");
+    }
+
     /**
      * @return true if key should be unmodifiable after generation.
      */
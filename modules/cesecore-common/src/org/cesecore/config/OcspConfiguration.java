@@ -61,6 +61,12 @@ public class OcspConfiguration {
     public static final String REVOKED_MAX_AGE = "ocsp.revoked.maxAge";
     public static final String INCLUDE_SIGNING_CERT = "ocsp.includesignercert";
     public static final String INCLUDE_CERT_CHAIN = "ocsp.includecertchain";
+    public static final String PRESIGN_ENABLED = "ocsp.presign.enabled";
+    public static final String PRESIGN_MAX_ENTRIES = "ocsp.presign.maxentries";
+    public static final String PRESIGN_REFRESH_MARGIN = "ocsp.presign.refreshmargin";
+    public static final String LOG_ASYNC = "ocsp.log-async";
+    public static final String LOG_ASYNC_QUEUE_SIZE = "ocsp.log-async-queuesize";
+    public static final String LOG_ASYNC_DROP = "ocsp.log-async-drop";
     
     @Deprecated //Remove this value once upgrading to 6.7.0 has been dropped
     public static final String RESPONDER_ID_TYPE = "ocsp.responderidtype";
@@ -396,6 +402,41 @@ public class OcspConfiguration {
         return "true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value);
     }
 
+    /**
+     * @return true if transaction and audit log lines should be written by a background thread instead of the thread that handles the
+     * request. Always false when {@link #getLogSafer()} is true, since then the request must fail if the line can not be written.
+     */
+    public static boolean getLogAsync() {
+        final String value = ConfigurationHolder.getString(LOG_ASYNC);
+        return ("true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value)) && !getLogSafer();
+    }
+
+    /**
+     * @return the maximum number of log lines waiting to be written by the background thread. Default value is 10000.
+     */
+    public static int getLogAsyncQueueSize() {
+        final int defaultValue = 10000;
+        final String value = ConfigurationHolder.getString(LOG_ASYNC_QUEUE_SIZE);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            log.warn(LOG_ASYNC_QUEUE_SIZE + " is not a decimal integer. Using default " + defaultValue + ".");
+            return defaultValue;
+        }
+    }
+
+    /**
+     * @return true if log lines should be dropped when the queue of the background thread is full, or false if the request should wait
+     * until there is room. Default is false.
+     */
+    public static boolean getLogAsyncDrop() {
+        final String value = ConfigurationHolder.getString(LOG_ASYNC_DROP);
+        return "true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value);
+    }
+
     /**
      * A String to create a java Pattern to format the audit Log
      */
@@ -738,4 +779,46 @@ public class OcspConfiguration {
         return 1000 * (long) timeInSeconds;
     }
 
+    /**
+     * @return true if signed responses to nonce-less requests should be cached and refreshed in the background before they expire
+     */
+    public static boolean isPreSigningEnabled() {
+        final String value = ConfigurationHolder.getString(PRESIGN_ENABLED);
+        return "true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value);
+    }
+
+    /**
+     * @return the maximum number of pre-signed responses to keep in memory. Default value is 100000.
+     */
+    public static int getPreSigningMaxEntries() {
+        final int defaultValue = 100000;
+        final String value = ConfigurationHolder.getString(PRESIGN_MAX_ENTRIES);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn(PRESIGN_MAX_ENTRIES + " is not a decimal integer. Using default " + defaultValue + ".");
+            return defaultValue;
+        }
+    }
+
+    /**
+     * @return how long before nextUpdate in milliseconds that a pre-signed response should be signed again. Default value is 1 minute.
+     */
+    public static long getPreSigningRefreshMarginInMilliseconds() {
+        final long defaultTimeInSeconds = 60;
+        final String value = ConfigurationHolder.getString(PRESIGN_REFRESH_MARGIN);
+        long timeInSeconds = defaultTimeInSeconds;
+        if (value != null) {
+            try {
+                timeInSeconds = Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                log.warn(PRESIGN_REFRESH_MARGIN + " is not a decimal long. Using default " + defaultTimeInSeconds + " seconds.");
+            }
+        }
+        return Math.max(1L, timeInSeconds) * 1000L;
+    }
+
 }
@@ -48,7 +48,10 @@ public interface CommonCache<T> {
      */
     String getName(int id);
 
-    /** @return a copy of the id to name map as a name to id map */
+    /**
+     * @return the id to name map as a name to id map. This is either a copy or a read-only view that reflects later updates,
+     * depending on the implementation, so callers that need a stable map should copy it.
+     */
     Map<String, Integer> getNameToIdMap();
 
     /** Remove all references from this cache */
@@ -0,0 +1,236 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.internal;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Object and name to id lookup cache, that can be used instead of {@link CommonCacheBase} when there are many objects or frequent updates.
+ *
+ * Reads never lock. Updates only lock the entry that changes, instead of copying the whole cache, so a bulk import of
+ * objects does not block readers or rebuild the cache once per object.
+ *
+ * When an entry has expired, {@link #shouldCheckForUpdates(int)} returns true to a single caller, which is expected to read the
+ * object from the database and call {@link #updateWith(int, int, String, Object)}. Other callers keep using the cached object
+ * in the meantime.
+ *
+ * @version $Id$
+ */
+public abstract class ConcurrentCommonCache<T> implements CommonCache<T> {
+
+    private static final Logger log = Logger.getLogger(ConcurrentCommonCache.class);
+
+    private class CacheEntry {
+        final AtomicLong lastUpdate;
+        final int digest;
+        final String name;
+        final T object;
+        CacheEntry(long lastUpdate, int digest, String name, T object) {
+            this.lastUpdate = new AtomicLong(lastUpdate);
+            this.digest = digest;
+            this.name = name;
+            this.object = object;
+        }
+    }
+
+    private final ConcurrentMap<Integer, CacheEntry> cache = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Integer> nameToIdMap = new ConcurrentHashMap<>();
+    private final AtomicLong lastPurge = new AtomicLong(System.currentTimeMillis());
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
+
+    /** @return how long to cache objects in milliseconds. */
+    protected abstract long getCacheTime();
+
+    /** @return the maximum allowed time an object may reside in the cache before it is purged. 0 means live forever. */
+    protected abstract long getMaxCacheLifeTime();
+
+    @Override
+    public T getEntry(final Integer id) {
+        final CacheEntry cacheEntry = cache.get(id);
+        if (cacheEntry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return cacheEntry.object;
+    }
+
+    @Override
+    public T getEntry(final int id) {
+        return getEntry(Integer.valueOf(id));
+    }
+
+    public Set<T> getAllEntries() {
+        final Set<T> result = new HashSet<T>();
+        for (final CacheEntry cacheEntry : cache.values()) {
+            result.add(cacheEntry.object);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean shouldCheckForUpdates(final int id) {
+        final long cacheTime = getCacheTime();
+        if (cacheTime<0) {
+            // Cache is disabled, caller should check db
+            return true;
+        }
+        final CacheEntry cacheEntry = cache.get(Integer.valueOf(id));
+        if (cacheEntry == null) {
+            // No such object in cache, caller should check db
+            return true;
+        }
+        final long now = System.currentTimeMillis();
+        final long lastUpdate = cacheEntry.lastUpdate.get();
+        if (lastUpdate+cacheTime<now && cacheEntry.lastUpdate.compareAndSet(lastUpdate, now)) {
+            // Object is present in cache, but cache has expired so the caller should update the cache.
+            // Only the caller that managed to reset the cache time will ask the database.
+            reloads.increment();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void removeEntry(int id) {
+        updateWith(id, 0, null, null);
+    }
+
+    @Override
+    public void updateWith(final int id, final int digest, final String name, final T object) {
+        final Integer key = Integer.valueOf(id);
+        if (name==null || object == null || getCacheTime()<0) {
+            // Remove from cache
+            cache.computeIfPresent(key, new BiFunction<Integer, CacheEntry, CacheEntry>() {
+                @Override
+                public CacheEntry apply(final Integer k, final CacheEntry cacheEntry) {
+                    nameToIdMap.remove(cacheEntry.name, k);
+                    return null;
+                }
+            });
+        } else {
+            // Entries for other ids are not affected, so only this entry is locked while it changes
+            cache.compute(key, new BiFunction<Integer, CacheEntry, CacheEntry>() {
+                @Override
+                public CacheEntry apply(final Integer k, final CacheEntry cacheEntry) {
+                    if (cacheEntry != null && cacheEntry.digest == digest) {
+                        // Cached object is fine. No action needed.
+                        if (log.isDebugEnabled()) {
+                            log.debug("Did not update " + object.getClass().getSimpleName() + " cache. Digest was " + digest + ", cacheEntry digest was " + cacheEntry.digest);
+                        }
+                        return cacheEntry;
+                    }
+                    if (cacheEntry != null && !cacheEntry.name.equals(name)) {
+                        nameToIdMap.remove(cacheEntry.name, k);
+                    }
+                    nameToIdMap.put(name, k);
+                    if (log.isDebugEnabled()) {
+                        log.debug("Updated " + object.getClass().getSimpleName() + " cache. Digest was " + digest + ", cacheEntry digest was " + (cacheEntry == null ? "null" : cacheEntry.digest));
+                    }
+                    return new CacheEntry(System.currentTimeMillis(), digest, name, object);
+                }
+            });
+        }
+        purgeStaleEntries();
+    }
+
+    /**
+     * By flushing older entries we at least limit how much this registry will grow when used for short-lived objects in a clustered environment.
+     * To avoid a full scan on every update, this is done at most every half max cache life time.
+     */
+    private void purgeStaleEntries() {
+        final long maxCacheLifeTime = getMaxCacheLifeTime();
+        if (maxCacheLifeTime<1) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final long last = lastPurge.get();
+        if (last + maxCacheLifeTime/2 > now || !lastPurge.compareAndSet(last, now)) {
+            return;
+        }
+        final long staleCutOffTime = now-maxCacheLifeTime;
+        for (final Map.Entry<Integer, CacheEntry> entry : cache.entrySet()) {
+            if (entry.getValue().lastUpdate.get() < staleCutOffTime) {
+                if (cache.remove(entry.getKey(), entry.getValue())) {
+                    nameToIdMap.remove(entry.getValue().name, entry.getKey());
+                }
+            }
+        }
+    }
+
+    @Override
+    public String getName(int id) {
+        final CacheEntry entry = cache.get(Integer.valueOf(id));
+        return entry != null ? entry.name : null;
+    }
+
+    /**
+     * Unlike {@link CommonCacheBase}, this does not return a snapshot, since copying the map on every lookup by name would be costly
+     * for large caches. Callers that iterate over the map, or need it to stay unchanged, should copy it first.
+     *
+     * @return a read-only view of the name to id map, that reflects later updates of the cache.
+     */
+    @Override
+    public Map<String,Integer> getNameToIdMap() {
+        return Collections.unmodifiableMap(nameToIdMap);
+    }
+
+    @Override
+    public void flush() {
+        cache.clear();
+        nameToIdMap.clear();
+    }
+
+    @Override
+    public void replaceCacheWith(final List<Integer> keys) {
+        final Set<Integer> keep = new HashSet<>(keys);
+        for (final Integer key : cache.keySet()) {
+            if (!keep.contains(key)) {
+                removeEntry(key.intValue());
+            }
+        }
+    }
+
+    /** @return the number of lookups that found an object in the cache */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /** @return the number of lookups that did not find an object in the cache */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /** @return the number of times a caller was told to read an expired object from the database */
+    public long getReloads() {
+        return reloads.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrentCommonCache [size=" + cache.size() + ", hits=" + getHits() + ", misses=" + getMisses() + ", reloads=" + getReloads() + "]";
+    }
+}
@@ -0,0 +1,379 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.keys.util;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import org.apache.log4j.Logger;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.cesecore.config.CesecoreConfiguration;
+
+/**
+ * Pool of key pairs generated in the background, for the key specifications where the keys are generated by the server, for example
+ * when a PKCS#12 keystore is created for an end entity. Generating an RSA key pair of 4096 bits takes up to seconds, and with the pool
+ * this is done ahead of time by a few low priority threads instead of in the request.
+ *
+ * When there are fewer keys than the low watermark of a key specification, the threads generate keys until there are as many as the
+ * high watermark. A key pair is handed out only once and removed from the pool. If the pool is empty, the key pair is generated in the
+ * calling thread as without the pool. The private keys are kept encrypted with a key that only exists in memory, so that they are not
+ * readable in a heap dump without also finding that key.
+ *
+ * The pool is disabled by default, see CesecoreConfiguration.isKeyPoolEnabled(), and is started with reloadConfiguration().
+ *
+ * @version $Id$
+ */
+public enum KeyPairPool {
+    INSTANCE;
+
+    private static final Logger log = Logger.getLogger(KeyPairPool.class);
+
+    private static final String WRAPPING_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int GCM_TAG_BITS = 128;
+
+    /** A key pair in the pool, with the private key encrypted */
+    private static final class EncryptedKeyPair {
+        private final PublicKey publicKey;
+        private final String privateKeyAlgorithm;
+        private final byte[] iv;
+        private final byte[] encryptedPrivateKey;
+
+        private EncryptedKeyPair(final PublicKey publicKey, final String privateKeyAlgorithm, final byte[] iv, final byte[] encryptedPrivateKey) {
+            this.publicKey = publicKey;
+            this.privateKeyAlgorithm = privateKeyAlgorithm;
+            this.iv = iv;
+            this.encryptedPrivateKey = encryptedPrivateKey;
+        }
+    }
+
+    /** The keys and statistics of one key specification */
+    private static final class Pool {
+        private final String keyAlg;
+        private final String keySpec;
+        private final ConcurrentLinkedQueue<EncryptedKeyPair> keyPairs = new ConcurrentLinkedQueue<>();
+        /** Number of keys in keyPairs, since ConcurrentLinkedQueue.size() is not constant time */
+        private final AtomicInteger depth = new AtomicInteger();
+        /** Number of keys being generated */
+        private final AtomicInteger pending = new AtomicInteger();
+        /** Number of refill tasks that are queued or running */
+        private final AtomicInteger refillTasks = new AtomicInteger();
+        private final LongAdder generated = new LongAdder();
+        private final LongAdder handedOut = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        /** Start of the current refill in System.nanoTime(), and the number of keys generated since then */
+        private volatile long refillStart;
+        private final AtomicInteger refillCount = new AtomicInteger();
+        private volatile double lastRefillRate;
+
+        private Pool(final String keyAlg, final String keySpec) {
+            this.keyAlg = keyAlg;
+            this.keySpec = keySpec;
+        }
+
+        private double getRefillRate() {
+            if (refillTasks.get() > 0) {
+                final long nanos = System.nanoTime() - refillStart;
+                return nanos <= 0 ? 0 : refillCount.get() * 1E9 / nanos;
+            }
+            return lastRefillRate;
+        }
+    }
+
+    private final SecureRandom secureRandom = new SecureRandom();
+    private volatile Map<String, Pool> pools = Collections.emptyMap();
+    private volatile ThreadPoolExecutor executor;
+    private volatile SecretKey wrappingKey;
+    private volatile int threads;
+    private volatile int lowWatermark;
+    private volatile int highWatermark;
+
+    /**
+     * Reads the configuration again. The keys in the pool are discarded and, if the pool is enabled, new keys are generated for the
+     * configured key specifications.
+     */
+    public synchronized void reloadConfiguration() {
+        shutdown();
+        if (!CesecoreConfiguration.isKeyPoolEnabled()) {
+            return;
+        }
+        lowWatermark = CesecoreConfiguration.getKeyPoolLowWatermark();
+        highWatermark = Math.max(lowWatermark + 1, CesecoreConfiguration.getKeyPoolHighWatermark());
+        threads = CesecoreConfiguration.getKeyPoolThreads();
+        try {
+            final KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+            keyGenerator.init(256, secureRandom);
+            wrappingKey = keyGenerator.generateKey();
+        } catch (GeneralSecurityException e) {
+            log.error("Key pair pool is disabled, since no key to encrypt the pooled keys could be generated: " + e.getMessage());
+            return;
+        }
+        final Map<String, Pool> newPools = new HashMap<>();
+        for (final String keyAlgAndSpec : CesecoreConfiguration.getKeyPoolKeySpecs()) {
+            final int separator = keyAlgAndSpec.indexOf(':');
+            if (separator <= 0 || separator == keyAlgAndSpec.length() - 1) {
+                log.warn("Ignoring invalid key specification for the key pair pool, should be <algorithm>:<key specification>: " + keyAlgAndSpec);
+                continue;
+            }
+            final Pool pool = new Pool(keyAlgAndSpec.substring(0, separator).trim(), keyAlgAndSpec.substring(separator + 1).trim());
+            newPools.put(getPoolKey(pool.keyAlg, pool.keySpec), pool);
+        }
+        if (newPools.isEmpty()) {
+            return;
+        }
+        final AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "KeyPairPool-" + threadNumber.incrementAndGet()); // NOPMD only generates keys, stopped on undeploy
+                thread.setDaemon(true);
+                // Requests that need keys that are not in the pool should not have to wait for the pool
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        pools = newPools;
+        log.info("Key pair pool enabled for " + newPools.keySet() + ", watermarks " + lowWatermark + "/" + highWatermark + ", threads: " + threads);
+        for (final Pool pool : newPools.values()) {
+            refillIfNeeded(pool);
+        }
+    }
+
+    /** Stops the threads and discards the keys in the pool. */
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        for (final Pool pool : pools.values()) {
+            pool.keyPairs.clear();
+            pool.depth.set(0);
+        }
+        pools = Collections.emptyMap();
+        wrappingKey = null;
+    }
+
+    /** @return true if the pool keeps keys for at least one key specification */
+    public boolean isEnabled() {
+        return !pools.isEmpty();
+    }
+
+    /**
+     * Returns a key pair from the pool, or generates one in the calling thread if the key specification is not pooled or the pool is
+     * empty. Takes the same arguments and gives the same kind of key pair as KeyTools.genKeys(String, String).
+     *
+     * @param keySpec the key size or curve name, for example 2048 or secp256r1
+     * @param keyAlg the key algorithm, for example RSA or ECDSA
+     * @return a new key pair that has not been handed out before
+     * @throws InvalidAlgorithmParameterException if the key specification is not valid for the algorithm
+     */
+    public KeyPair genKeys(final String keySpec, final String keyAlg) throws InvalidAlgorithmParameterException {
+        final Pool pool = pools.get(getPoolKey(keyAlg, keySpec));
+        if (pool == null) {
+            return KeyTools.genKeys(keySpec, keyAlg);
+        }
+        KeyPair keyPair = null;
+        final EncryptedKeyPair encryptedKeyPair = pool.keyPairs.poll();
+        if (encryptedKeyPair != null) {
+            pool.depth.decrementAndGet();
+            keyPair = decrypt(encryptedKeyPair);
+        }
+        refillIfNeeded(pool);
+        if (keyPair == null) {
+            pool.misses.increment();
+            if (log.isDebugEnabled()) {
+                log.debug("Key pair pool for " + keyAlg + ":" + keySpec + " is empty, generating key pair in the calling thread.");
+            }
+            return KeyTools.genKeys(keySpec, keyAlg);
+        }
+        pool.handedOut.increment();
+        return keyPair;
+    }
+
+    /** @return the number of key pairs in the pool for the key specification, or -1 if it is not pooled */
+    public int getDepth(final String keySpec, final String keyAlg) {
+        final Pool pool = pools.get(getPoolKey(keyAlg, keySpec));
+        return pool == null ? -1 : pool.depth.get();
+    }
+
+    /**
+     * @return the number of key pairs per second added to the pool for the key specification during the current refill, or during the
+     * last refill if the pool is not being refilled. -1 if the key specification is not pooled.
+     */
+    public double getRefillRate(final String keySpec, final String keyAlg) {
+        final Pool pool = pools.get(getPoolKey(keyAlg, keySpec));
+        return pool == null ? -1 : pool.getRefillRate();
+    }
+
+    /** @return one line per pooled key specification with the depth, refill rate and how many keys have been handed out */
+    public List<String> getStatistics() {
+        final List<String> ret = new ArrayList<>();
+        for (final Pool pool : pools.values()) {
+            ret.add(pool.keyAlg + ":" + pool.keySpec + " depth: " + pool.depth.get() + ", refill rate: " + String.format("%.2f", pool.getRefillRate())
+                    + " keys/s, generated: " + pool.generated.sum() + ", handed out: " + pool.handedOut.sum() + ", pool empty: " + pool.misses.sum());
+        }
+        Collections.sort(ret);
+        return ret;
+    }
+
+    private static String getPoolKey(final String keyAlg, final String keySpec) {
+        return keyAlg + ":" + keySpec;
+    }
+
+    /** Starts generating keys for the pool if there are fewer than the low watermark and it is not already being refilled */
+    private void refillIfNeeded(final Pool pool) {
+        final ThreadPoolExecutor currentExecutor = executor;
+        if (currentExecutor == null || pool.depth.get() >= lowWatermark || pool.refillTasks.get() > 0) {
+            return;
+        }
+        synchronized (pool) {
+            if (pool.refillTasks.get() > 0) {
+                return;
+            }
+            pool.refillStart = System.nanoTime();
+            pool.refillCount.set(0);
+            final int tasks = Math.min(threads, highWatermark - pool.depth.get());
+            for (int i = 0; i < tasks; i++) {
+                pool.refillTasks.incrementAndGet();
+                try {
+                    currentExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            refill(pool, currentExecutor);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // The pool has been shut down
+                    pool.refillTasks.decrementAndGet();
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Generates keys until the pool has reached the high watermark */
+    private void refill(final Pool pool, final ThreadPoolExecutor currentExecutor) {
+        try {
+            while (!currentExecutor.isShutdown() && reserve(pool)) {
+                try {
+                    final EncryptedKeyPair encryptedKeyPair = encrypt(KeyTools.genKeys(pool.keySpec, pool.keyAlg));
+                    if (encryptedKeyPair == null || currentExecutor.isShutdown()) {
+                        return;
+                    }
+                    pool.keyPairs.offer(encryptedKeyPair);
+                    pool.depth.incrementAndGet();
+                    pool.generated.increment();
+                    pool.refillCount.incrementAndGet();
+                } catch (InvalidAlgorithmParameterException | RuntimeException e) {
+                    log.error("Failed to generate key pair for the key pair pool " + pool.keyAlg + ":" + pool.keySpec + ": " + e.getMessage());
+                    return;
+                } finally {
+                    pool.pending.decrementAndGet();
+                }
+            }
+        } finally {
+            if (pool.refillTasks.decrementAndGet() == 0) {
+                final long nanos = System.nanoTime() - pool.refillStart;
+                pool.lastRefillRate = nanos <= 0 ? 0 : pool.refillCount.get() * 1E9 / nanos;
+                if (log.isDebugEnabled()) {
+                    log.debug("Key pair pool " + pool.keyAlg + ":" + pool.keySpec + " refilled to " + pool.depth.get() + " keys at "
+                            + String.format("%.2f", pool.lastRefillRate) + " keys/s.");
+                }
+            }
+        }
+    }
+
+    /** @return true if one more key should be generated, in which case the pending count has been incremented */
+    private boolean reserve(final Pool pool) {
+        while (true) {
+            final int pending = pool.pending.get();
+            if (pool.depth.get() + pending >= highWatermark) {
+                return false;
+            }
+            if (pool.pending.compareAndSet(pending, pending + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /** @return the key pair with the private key encrypted, or null if the pool has been shut down */
+    private EncryptedKeyPair encrypt(final KeyPair keyPair) {
+        final SecretKey key = wrappingKey;
+        if (key == null) {
+            return null;
+        }
+        final byte[] encoded = keyPair.getPrivate().getEncoded();
+        try {
+            final byte[] iv = new byte[GCM_IV_LENGTH];
+            secureRandom.nextBytes(iv);
+            final Cipher cipher = Cipher.getInstance(WRAPPING_TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, iv));
+            return new EncryptedKeyPair(keyPair.getPublic(), keyPair.getPrivate().getAlgorithm(), iv, cipher.doFinal(encoded));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to encrypt key pair for the key pair pool.", e);
+        } finally {
+            Arrays.fill(encoded, (byte) 0);
+        }
+    }
+
+    /** @return the decrypted key pair, or null if it could not be decrypted */
+    private KeyPair decrypt(final EncryptedKeyPair encryptedKeyPair) {
+        final SecretKey key = wrappingKey;
+        if (key == null) {
+            return null;
+        }
+        byte[] encoded = null;
+        try {
+            final Cipher cipher = Cipher.getInstance(WRAPPING_TRANSFORMATION);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, encryptedKeyPair.iv));
+            encoded = cipher.doFinal(encryptedKeyPair.encryptedPrivateKey);
+            final KeyFactory keyFactory = KeyFactory.getInstance(encryptedKeyPair.privateKeyAlgorithm, BouncyCastleProvider.PROVIDER_NAME);
+            final PrivateKey privateKey = keyFactory.generatePrivate(new PKCS8EncodedKeySpec(encoded));
+            return new KeyPair(encryptedKeyPair.publicKey, privateKey);
+        } catch (GeneralSecurityException e) {
+            // The pool was reloaded while the key was taken, or the key could not be decoded
+            log.info("Failed to decrypt pooled key pair, generating a new one: " + e.getMessage());
+            return null;
+        } finally {
+            if (encoded != null) {
+                Arrays.fill(encoded, (byte) 0);
+            }
+        }
+    }
+}
@@ -28,6 +28,7 @@ import org.cesecore.certificates.ca.CA;
 import org.cesecore.profiles.Profile;
 import org.cesecore.util.ExternalProcessException;
 import org.cesecore.util.ExternalProcessTools;
+import org.cesecore.util.ExternalProcessWorkerPool;
 
 /**
  * External command certificate validator for multiple platforms.
@@ -41,7 +42,7 @@ public class ExternalCommandCertificateValidator extends CertificateValidatorBas
     /** Class logger. */
     private static final Logger log = Logger.getLogger(ExternalCommandCertificateValidator.class);
 
-    public static final float LATEST_VERSION = 4F;
+    public static final float LATEST_VERSION = 5F;
 
     /** The validator type. */
     private static final String TYPE_IDENTIFIER = "EXTERNAL_CERTIFICATE_VALIDATOR";
@@ -64,6 +65,21 @@ public class ExternalCommandCertificateValidator extends CertificateValidatorBas
     /** Literal for external log to ERROUT storage key. */
     protected static final String LOG_ERROR_OUT = "logErrorOut";
 
+    /** Literal for use persistent worker processes storage key. */
+    protected static final String USE_PERSISTENT_WORKERS = "usePersistentWorkers";
+
+    /** Literal for maximum number of persistent worker processes storage key. */
+    protected static final String PERSISTENT_WORKERS = "persistentWorkers";
+
+    /** Literal for persistent worker process timeout storage key. */
+    protected static final String PERSISTENT_WORKER_TIMEOUT = "persistentWorkerTimeout";
+
+    /** Default maximum number of persistent worker processes. */
+    private static final int DEFAULT_PERSISTENT_WORKERS = 4;
+
+    /** Default time in milliseconds to wait for a persistent worker process. */
+    private static final long DEFAULT_PERSISTENT_WORKER_TIMEOUT = 10000L;
+
     /** Holds the test certificates uploaded by the user. */
     private List<Certificate> testCertificates;
 
@@ -105,6 +121,15 @@ public class ExternalCommandCertificateValidator extends CertificateValidatorBas
         if (data.get(LOG_ERROR_OUT) == null) {
             setLogErrorOut(true);
         }
+        if (data.get(USE_PERSISTENT_WORKERS) == null) {
+            setUsePersistentWorkers(false);
+        }
+        if (data.get(PERSISTENT_WORKERS) == null) {
+            setPersistentWorkers(DEFAULT_PERSISTENT_WORKERS);
+        }
+        if (data.get(PERSISTENT_WORKER_TIMEOUT) == null) {
+            setPersistentWorkerTimeout(DEFAULT_PERSISTENT_WORKER_TIMEOUT);
+        }
     }
 
     @Override
@@ -145,7 +170,7 @@ public class ExternalCommandCertificateValidator extends CertificateValidatorBas
         final List<String> out = new ArrayList<String>();
         // Run external scripts (is used by publishers as well, writes certificate to disk!).
         try {
-            out.addAll(runExternalCommandInternal(cmd, externalScriptsWhitelist, certificates));
+            out.addAll(runExternalCommandInternal(cmd, externalScriptsWhitelist, certificates, false));
         } catch(ExternalProcessException e) {
             throw new ValidatorNotApplicableException( "External command could not be called, because it does not exit, access was denied or another severe error occured.");
         }
@@ -226,6 +251,43 @@ public class ExternalCommandCertificateValidator extends CertificateValidatorBas
         return ((Boolean) data.get(FAIL_ON_STANDARD_ERROR)).booleanValue();
     }
 
+    /**
+     * Sets if the certificates should be sent to long-lived worker processes, see {@link ExternalProcessWorkerPool}, instead of
+     * starting the external command for every certificate.
+     * @param state true to use persistent worker processes.
+     */
+    public void setUsePersistentWorkers(boolean state) {
+        data.put(USE_PERSISTENT_WORKERS, Boolean.valueOf(state));
+    }
+
+    public boolean isUsePersistentWorkers() {
+        return ((Boolean) data.get(USE_PERSISTENT_WORKERS)).booleanValue();
+    }
+
+    /**
+     * Sets the maximum number of persistent worker processes, which is also the maximum number of certificates validated at the same time.
+     * @param workers the number of worker processes.
+     */
+    public void setPersistentWorkers(int workers) {
+        data.put(PERSISTENT_WORKERS, Integer.valueOf(workers));
+    }
+
+    public int getPersistentWorkers() {
+        return ((Integer) data.get(PERSISTENT_WORKERS)).intValue();
+    }
+
+    /**
+     * Sets how long to wait for a free persistent worker process, and for its answer, before the validation fails and a hung worker is restarted.
+     * @param timeout the time in milliseconds.
+     */
+    public void setPersistentWorkerTimeout(long timeout) {
+        data.put(PERSISTENT_WORKER_TIMEOUT, Long.valueOf(timeout));
+    }
+
+    public long getPersistentWorkerTimeout() {
+        return ((Long) data.get(PERSISTENT_WORKER_TIMEOUT)).longValue();
+    }
+
     /**
      * Tests the external command with the uploaded test certificate (chain).
      * @return a list with size > 0 and the exit code in field with index 0 and STDOUT and ERROR appended subsequently.
@@ -237,7 +299,7 @@ public class ExternalCommandCertificateValidator extends CertificateValidatorBas
         final List<String> out = new ArrayList<String>();
         if (CollectionUtils.isNotEmpty(getTestCertificates())) {
             log.info("Test external command certificate validator: " + getProfileName());
-            out.addAll(runExternalCommandInternal(getExternalCommand(), ExternalScriptsWhitelist.permitAll(), getTestCertificates()));
+            out.addAll(runExternalCommandInternal(getExternalCommand(), ExternalScriptsWhitelist.permitAll(), getTestCertificates(), true));
         }
         return out;
     }
@@ -274,11 +336,13 @@ public class ExternalCommandCertificateValidator extends CertificateValidatorBas
      * Runs the external command
      * @param externalCommand the external command.
      * @param certificates the list of certificates.
+     * @param test true if the command is tested from the GUI. Persistent workers are then started for this call only, so that the pool of
+     * the saved validator is not replaced by a command that may not have been saved.
      * @return a string list holding exit code at index 0, and the STDOUT and ERROUT appended.
      * @throws CertificateEncodingException if the certificates could not be encoded.
      */
     private List<String> runExternalCommandInternal(String externalCommand, final ExternalScriptsWhitelist externalScriptsWhitelist,
-            final List<Certificate> certificates) throws CertificateEncodingException, ExternalProcessException, ValidatorNotApplicableException {
+            final List<Certificate> certificates, final boolean test) throws CertificateEncodingException, ExternalProcessException, ValidatorNotApplicableException {
         final String cmd = extractCommand(externalCommand);
         if (!externalScriptsWhitelist.isPermitted(cmd)) {
              throw new ValidatorNotApplicableException("A whitelist has been enabled, but the command " + cmd + " is not on the whitelist.");
@@ -295,6 +359,33 @@ public class ExternalCommandCertificateValidator extends CertificateValidatorBas
         final List<String> arguments = extractArguments(externalCommand);
         final List<String> out = new ArrayList<String>();
         try {
+            if (isUsePersistentWorkers()) {
+                // The certificate is always sent to the worker over STDIN, so the place holder has no meaning here
+                final List<String> command = new ArrayList<String>();
+                command.add(cmd);
+                for (final String argument : arguments) {
+                    if (!ExternalProcessTools.PLACE_HOLDER_CERTIFICATE.equals(argument)) {
+                        command.add(argument);
+                    }
+                }
+                final ExternalProcessWorkerPool pool = test
+                        ? ExternalProcessWorkerPool.getTemporaryInstance(command, 1, getPersistentWorkerTimeout())
+                        : ExternalProcessWorkerPool.getInstance(getWorkerPoolName(getProfileId()), command, getPersistentWorkers(),
+                                getPersistentWorkerTimeout());
+                try {
+                    out.addAll(pool.process(certificates.get(0).getEncoded(), isFailOnErrorCode(), isFailOnStandardError(), isLogStandardOut(),
+                            isLogErrorOut()));
+                } finally {
+                    if (test) {
+                        pool.shutdown();
+                    }
+                }
+                return out;
+            }
+            if (!test) {
+                // Worker processes may be left from before persistent workers were turned off, for example on another node in a cluster
+                removeWorkerPool(getProfileId());
+            }
             out.addAll(ExternalProcessTools.launchExternalCommand(cmd, certificates.get(0).getEncoded(),
                     isFailOnErrorCode(), isFailOnStandardError(), isLogStandardOut(), isLogErrorOut(), arguments, ExternalCommandCertificateValidator.class.getName()));
         } catch(ExternalProcessException e) {
@@ -306,6 +397,19 @@ public class ExternalCommandCertificateValidator extends CertificateValidatorBas
         return out;
     }
 
+    /**
+     * Stops the persistent worker processes of a validator, if there are any. Used when the validator is removed or no longer uses
+     * persistent worker processes.
+     * @param validatorId the id of the validator.
+     */
+    public static void removeWorkerPool(final Integer validatorId) {
+        ExternalProcessWorkerPool.remove(getWorkerPoolName(validatorId));
+    }
+
+    private static String getWorkerPoolName(final Integer validatorId) {
+        return TYPE_IDENTIFIER + ";" + validatorId;
+    }
+
     private final String extractCommand(String cmd) {
         cmd = cmd.trim();
         final int index = cmd.indexOf(" ");
@@ -336,6 +336,14 @@ public abstract class CertTools {
     }
     
     public static X500Name stringToBcX500Name(String dn, final X500NameStyle nameStyle, final boolean ldaporder, final String[] order, final boolean applyLdapToCustomOrder) {
+        // Names with a custom order are transient, so there is no point in caching them
+        final boolean useCache = dn != null && (order == null || order.length == 0) && DnCache.INSTANCE.isEnabled();
+        if (useCache) {
+            final X500Name cached = DnCache.INSTANCE.getX500Name(dn, nameStyle, ldaporder);
+            if (cached != null) {
+                return cached;
+            }
+        }
         final X500Name x500Name = stringToUnorderedX500Name(dn, nameStyle);
         if (x500Name==null) {
             return null;
@@ -345,6 +353,9 @@ public abstract class CertTools {
         if (log.isTraceEnabled()) {
             log.trace(">stringToBcX500Name: x500Name=" + x500Name.toString() + " orderedX500Name=" + orderedX500Name.toString());
         }
+        if (useCache) {
+            DnCache.INSTANCE.putX500Name(dn, nameStyle, ldaporder, orderedX500Name);
+        }
         return orderedX500Name;
     }
 
@@ -508,6 +519,21 @@ public abstract class CertTools {
      * @return String containing DN, or null if input is null
      */
     public static String stringToBCDNString(String dn) {
+        if (dn != null && DnCache.INSTANCE.isEnabled()) {
+            final String cached = DnCache.INSTANCE.getBcDnString(dn);
+            if (cached != null) {
+                return cached;
+            }
+            final String ret = stringToBCDNStringInternal(dn);
+            if (ret != null) {
+                DnCache.INSTANCE.putBcDnString(dn, ret);
+            }
+            return ret;
+        }
+        return stringToBCDNStringInternal(dn);
+    }
+
+    private static String stringToBCDNStringInternal(String dn) {
         // BC now seem to handle multi-valued RDNs, but we keep escaping this for now to keep the behavior until support is required
         dn = handleUnescapedPlus(dn); // Log warning if dn contains unescaped '+'
         if (isDNReversed(dn)) {
@@ -723,6 +749,19 @@ public abstract class CertTools {
     }
 
     public static List<String> getPartsFromDNInternal(final String dn, final String dnPart, final boolean onlyReturnFirstMatch) {
+        if (dn != null && dnPart != null && DnCache.INSTANCE.isEnabled()) {
+            final List<String> cached = DnCache.INSTANCE.getDnParts(dn, dnPart, onlyReturnFirstMatch);
+            if (cached != null) {
+                return new ArrayList<String>(cached);
+            }
+            final List<String> parts = parsePartsFromDN(dn, dnPart, onlyReturnFirstMatch);
+            DnCache.INSTANCE.putDnParts(dn, dnPart, onlyReturnFirstMatch, new ArrayList<String>(parts));
+            return parts;
+        }
+        return parsePartsFromDN(dn, dnPart, onlyReturnFirstMatch);
+    }
+
+    private static List<String> parsePartsFromDN(final String dn, final String dnPart, final boolean onlyReturnFirstMatch) {
         if (log.isTraceEnabled()) {
             log.trace(">getPartsFromDNInternal: dn:'" + dn + "', dnpart=" + dnPart + ", onlyReturnFirstMatch=" + onlyReturnFirstMatch);
         }
@@ -0,0 +1,216 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.util;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.log4j.Logger;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x500.X500NameStyle;
+import org.cesecore.config.CesecoreConfiguration;
+
+/**
+ * Memo cache for the results of parsing DN strings in CertTools, which is done many times for the same few DNs when issuing
+ * certificates and answering OCSP requests. Since the results only depend on the input, an entry never has to be updated, and two
+ * threads that miss on the same DN at the same time both parse it and store the same result.
+ *
+ * The cache is disabled by default, see CesecoreConfiguration.isDnCacheEnabled(). When it holds the maximum number of entries, about
+ * half of them are removed in the iteration order of the map, which is unrelated to how often they are used.
+ *
+ * @version $Id$
+ */
+public enum DnCache {
+    INSTANCE;
+
+    private static final Logger log = Logger.getLogger(DnCache.class);
+
+    private static final int TYPE_BC_DN_STRING = 0;
+    private static final int TYPE_X500NAME = 1;
+    private static final int TYPE_DN_PARTS = 2;
+
+    /** Key of a cached value, the input string and whatever else the result depends on */
+    private static final class Key {
+        private final int type;
+        private final String dn;
+        /** Name style for an X500Name or sought DN part for DN parts, compared with equals */
+        private final Object qualifier;
+        private final boolean flag;
+        private final int hashCode;
+
+        private Key(final int type, final String dn, final Object qualifier, final boolean flag) {
+            this.type = type;
+            this.dn = dn;
+            this.qualifier = qualifier;
+            this.flag = flag;
+            this.hashCode = ((dn.hashCode() * 31 + (qualifier == null ? 0 : qualifier.hashCode())) * 31 + type) * 2 + (flag ? 1 : 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object object) {
+            if (!(object instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) object;
+            return hashCode == other.hashCode && type == other.type && flag == other.flag && dn.equals(other.dn)
+                    && (qualifier == null ? other.qualifier == null : qualifier.equals(other.qualifier));
+        }
+    }
+
+    private final ConcurrentHashMap<Key, Object> cache = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private volatile boolean enabled;
+    private volatile int maxEntries;
+
+    private DnCache() {
+        reloadConfiguration();
+    }
+
+    /** Reads the configuration again, and empties the cache if it has been disabled */
+    public void reloadConfiguration() {
+        setMaxEntries(CesecoreConfiguration.getDnCacheMaxEntries());
+        setEnabled(CesecoreConfiguration.isDnCacheEnabled());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Enables or disables the cache. A disabled cache is emptied. */
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            cache.clear();
+        }
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(final int maxEntries) {
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    /** @return the cached result of CertTools.stringToBCDNString or null if not cached */
+    public String getBcDnString(final String dn) {
+        return (String) get(new Key(TYPE_BC_DN_STRING, dn, null, false));
+    }
+
+    public void putBcDnString(final String dn, final String bcDnString) {
+        put(new Key(TYPE_BC_DN_STRING, dn, null, false), bcDnString);
+    }
+
+    /** @return the cached result of CertTools.stringToBcX500Name without a custom order, or null if not cached */
+    public X500Name getX500Name(final String dn, final X500NameStyle nameStyle, final boolean ldapOrder) {
+        return (X500Name) get(new Key(TYPE_X500NAME, dn, nameStyle, ldapOrder));
+    }
+
+    public void putX500Name(final String dn, final X500NameStyle nameStyle, final boolean ldapOrder, final X500Name x500Name) {
+        put(new Key(TYPE_X500NAME, dn, nameStyle, ldapOrder), x500Name);
+    }
+
+    /** @return the cached result of CertTools.getPartsFromDNInternal as an unmodifiable list, or null if not cached */
+    @SuppressWarnings("unchecked")
+    public List<String> getDnParts(final String dn, final String dnPart, final boolean onlyReturnFirstMatch) {
+        return (List<String>) get(new Key(TYPE_DN_PARTS, dn, dnPart, onlyReturnFirstMatch));
+    }
+
+    public void putDnParts(final String dn, final String dnPart, final boolean onlyReturnFirstMatch, final List<String> parts) {
+        put(new Key(TYPE_DN_PARTS, dn, dnPart, onlyReturnFirstMatch), Collections.unmodifiableList(parts));
+    }
+
+    /** @return the number of lookups that found a cached value */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /** @return the number of lookups that did not find a cached value */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /** @return the number of entries removed because the cache was full */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /** @return the share of lookups that found a cached value, between 0 and 1 */
+    public double getHitRate() {
+        final long hitCount = getHits();
+        final long lookups = hitCount + getMisses();
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    public int getSize() {
+        return cache.size();
+    }
+
+    /** Removes all entries and resets the statistics */
+    public void clear() {
+        cache.clear();
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    private Object get(final Key key) {
+        final Object value = cache.get(key);
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    private void put(final Key key, final Object value) {
+        if (cache.size() >= maxEntries) {
+            evict();
+        }
+        cache.put(key, value);
+    }
+
+    /** Removes about half of the entries. Only one thread does this at a time, others carry on and may exceed the limit meanwhile. */
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int toRemove = cache.size() - maxEntries / 2;
+            for (final Iterator<Key> iterator = cache.keySet().iterator(); iterator.hasNext() && toRemove > 0; toRemove--) {
+                iterator.next();
+                iterator.remove();
+                evictions.increment();
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("DN cache was full. Entries: " + cache.size() + ", hits: " + getHits() + ", misses: " + getMisses() + ", hit rate: "
+                        + String.format("%.3f", getHitRate()) + ", evictions: " + getEvictions());
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+}
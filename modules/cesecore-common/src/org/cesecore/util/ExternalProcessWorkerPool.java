@@ -0,0 +1,370 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.cesecore.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.cesecore.internal.InternalResources;
+
+/**
+ * Pool of long-lived external processes that each handle one request at a time over STDIN and STDOUT, instead of starting a new process
+ * for every request as {@link ExternalProcessTools#launchExternalCommand(String, byte[], boolean, boolean, boolean, boolean, List, String)}
+ * does.
+ *
+ * All integers are 4 byte signed big-endian. A request written to the STDIN of a worker is the length of the data followed by the
+ * data, for example a DER encoded certificate. The worker answers on its STDOUT with the exit code, the length and the UTF-8 text of its
+ * standard output, and the length and the UTF-8 text of its error output. The answer is handled as if a command had exited with this
+ * exit code and output. Anything the worker writes to its real error output is logged. The worker should exit when its STDIN is closed.
+ *
+ * At most the configured number of workers are running, and requests wait for a free worker. A worker that exits, breaks the framing
+ * or does not answer within the timeout is killed and replaced by a new one for the next request.
+ *
+ * @version $Id$
+ */
+public final class ExternalProcessWorkerPool {
+
+    /** Class logger. */
+    private static final Logger log = Logger.getLogger(ExternalProcessWorkerPool.class);
+
+    /** Internal localization of logs and errors. */
+    private static final InternalResources intres = InternalResources.getInstance();
+
+    /** Largest text or request accepted, to not run out of memory if a worker writes something else than the protocol */
+    private static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    /** The pools by name, so that a pool can be replaced when its configuration changes */
+    private static final Map<String, ExternalProcessWorkerPool> pools = new ConcurrentHashMap<>();
+
+    /** Kills workers that do not answer in time */
+    private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, "ExternalProcessWorkerPool-watchdog"); // NOPMD only kills processes that time out
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final List<String> command;
+    private final int maxWorkers;
+    private final long timeout;
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<Worker> idleWorkers = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger workerNumber = new AtomicInteger();
+    private volatile boolean shutdown = false;
+
+    /** A running external process */
+    private final class Worker {
+        private final Process process;
+        private final DataOutputStream stdIn;
+        private final DataInputStream stdOut;
+        private volatile boolean killed = false;
+
+        private Worker() throws IOException {
+            process = new ProcessBuilder(command).start();
+            stdIn = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            stdOut = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+            final String name = "ExternalProcessWorkerPool-" + workerNumber.incrementAndGet();
+            final Thread errorReader = new Thread(new Runnable() { // NOPMD only copies the error output of the process to the log, and ends with the process
+                @Override
+                public void run() {
+                    try (final BufferedReader stdError = new BufferedReader(new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+                        String line;
+                        while ((line = stdError.readLine()) != null) {
+                            log.info(name + " (" + command.get(0) + "): " + line);
+                        }
+                    } catch (IOException e) {
+                        // The process has exited
+                    }
+                }
+            }, name);
+            errorReader.setDaemon(true);
+            errorReader.start();
+            if (log.isDebugEnabled()) {
+                log.debug("Started external worker process " + name + ": " + command);
+            }
+        }
+
+        /** Sends one request and reads the answer, or kills the process if it does not answer in time */
+        private Answer call(final byte[] request) throws IOException {
+            final ScheduledFuture<?> kill = watchdog.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    killed = true;
+                    process.destroyForcibly();
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+            final Answer answer;
+            try {
+                stdIn.writeInt(request.length);
+                stdIn.write(request);
+                stdIn.flush();
+                final int exitCode = stdOut.readInt();
+                final String standardOut = readText();
+                final String errorOut = readText();
+                answer = new Answer(exitCode, standardOut, errorOut);
+            } catch (IOException e) {
+                if (killed) {
+                    throw new IOException("External worker process did not answer within " + timeout + " ms.", e);
+                }
+                throw e;
+            } finally {
+                kill.cancel(false);
+            }
+            if (killed) {
+                throw new IOException("External worker process did not answer within " + timeout + " ms.");
+            }
+            return answer;
+        }
+
+        private String readText() throws IOException {
+            final int length = stdOut.readInt();
+            if (length < 0 || length > MAX_FRAME_LENGTH) {
+                throw new IOException("External worker process answered with invalid length " + length + ".");
+            }
+            final byte[] text = new byte[length];
+            stdOut.readFully(text);
+            return new String(text, StandardCharsets.UTF_8);
+        }
+
+        /** Closes STDIN, which should make the worker exit by itself, and stops it if it does not */
+        private void destroy() {
+            try {
+                stdIn.close();
+            } catch (IOException e) {
+                // The process has already exited
+            }
+            process.destroy();
+        }
+    }
+
+    /** The answer from a worker */
+    private static final class Answer {
+        private final int exitCode;
+        private final String standardOut;
+        private final String errorOut;
+
+        private Answer(final int exitCode, final String standardOut, final String errorOut) {
+            this.exitCode = exitCode;
+            this.standardOut = standardOut;
+            this.errorOut = errorOut;
+        }
+    }
+
+    private ExternalProcessWorkerPool(final List<String> command, final int maxWorkers, final long timeout) {
+        this.command = Collections.unmodifiableList(new ArrayList<>(command));
+        this.maxWorkers = Math.max(1, maxWorkers);
+        this.timeout = timeout;
+        this.permits = new Semaphore(this.maxWorkers, true);
+    }
+
+    /**
+     * Gets the pool with the given name. A pool with the same name but another command or configuration is shut down and replaced.
+     *
+     * @param name the name of the pool, for example the class and id of the validator using it.
+     * @param command the command and its arguments.
+     * @param maxWorkers the maximum number of worker processes, and so the maximum number of requests handled at the same time.
+     * @param timeout how long to wait for a worker to answer, and for a free worker, in milliseconds.
+     * @return the pool.
+     */
+    public static ExternalProcessWorkerPool getInstance(final String name, final List<String> command, final int maxWorkers, final long timeout) {
+        ExternalProcessWorkerPool pool = pools.get(name);
+        if (pool != null && pool.command.equals(command) && pool.maxWorkers == Math.max(1, maxWorkers) && pool.timeout == timeout) {
+            return pool;
+        }
+        synchronized (pools) {
+            pool = pools.get(name);
+            if (pool == null || !pool.command.equals(command) || pool.maxWorkers != Math.max(1, maxWorkers) || pool.timeout != timeout) {
+                if (pool != null) {
+                    pool.shutdown();
+                }
+                pool = new ExternalProcessWorkerPool(command, maxWorkers, timeout);
+                pools.put(name, pool);
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * Gets a pool that is not shared by name, for example to try out a command that has not been saved yet. The caller must call
+     * {@link #shutdown()} when done.
+     *
+     * @param command the command and its arguments.
+     * @param maxWorkers the maximum number of worker processes, and so the maximum number of requests handled at the same time.
+     * @param timeout how long to wait for a worker to answer, and for a free worker, in milliseconds.
+     * @return the pool.
+     */
+    public static ExternalProcessWorkerPool getTemporaryInstance(final List<String> command, final int maxWorkers, final long timeout) {
+        return new ExternalProcessWorkerPool(command, maxWorkers, timeout);
+    }
+
+    /**
+     * Stops the worker processes of the pool with the given name, if there is one, for example when the validator using it has been
+     * removed or no longer uses worker processes.
+     *
+     * @param name the name of the pool given to {@link #getInstance(String, List, int, long)}.
+     */
+    public static void remove(final String name) {
+        if (!pools.containsKey(name)) {
+            return;
+        }
+        synchronized (pools) {
+            final ExternalProcessWorkerPool pool = pools.remove(name);
+            if (pool != null) {
+                pool.shutdown();
+                if (log.isDebugEnabled()) {
+                    log.debug("Stopped external worker process pool " + name + ".");
+                }
+            }
+        }
+    }
+
+    /** Stops the worker processes of all pools. */
+    public static void shutdownAll() {
+        synchronized (pools) {
+            for (final ExternalProcessWorkerPool pool : pools.values()) {
+                pool.shutdown();
+            }
+            pools.clear();
+        }
+    }
+
+    /** Stops the idle worker processes. Workers handling a request are stopped when they are done. */
+    public void shutdown() {
+        shutdown = true;
+        Worker worker;
+        while ((worker = idleWorkers.poll()) != null) {
+            worker.destroy();
+        }
+    }
+
+    /**
+     * Lets a worker process the data, with the same result and failure semantics as ExternalProcessTools.launchExternalCommand.
+     *
+     * @param bytes the data to send to the worker, for example a DER encoded certificate.
+     * @param failOnCode Determines if the method should fail on a non-zero exit code.
+     * @param failOnOutput Determines if the method should fail on error output.
+     * @param logStdOut if the standard output should be included in the result.
+     * @param logErrOut if the error output should be included in the result when failing.
+     * @return a list with the exit code at index 0 and the standard output appended.
+     * @throws ExternalProcessException if no worker could be started or answered, or the worker failed as given by failOnCode and failOnOutput.
+     */
+    public List<String> process(final byte[] bytes, final boolean failOnCode, final boolean failOnOutput, final boolean logStdOut,
+            final boolean logErrOut) throws ExternalProcessException {
+        final long startTime = System.currentTimeMillis();
+        final String cmd = command.get(0);
+        final List<String> result = new ArrayList<String>();
+        try {
+            if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                result.add(exitCodeLine(-1));
+                throw new ExternalProcessException("All " + maxWorkers + " worker processes of " + cmd + " are busy.", result);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExternalProcessException(intres.getLocalizedMessage("process.errorexternalapp", cmd), e, result);
+        }
+        final Answer answer;
+        try {
+            answer = call(bytes);
+        } catch (IOException e) {
+            result.add(exitCodeLine(-1));
+            if (logErrOut) {
+                result.add(ExternalProcessTools.ERROUT_PREFIX + e.getMessage());
+            }
+            throw new ExternalProcessException(intres.getLocalizedMessage("process.errorexternalapp", cmd), e, result);
+        } finally {
+            permits.release();
+        }
+        result.add(exitCodeLine(answer.exitCode));
+        if (logStdOut) {
+            for (final String line : StringUtils.split(answer.standardOut, "\r\n")) {
+                result.add(ExternalProcessTools.STDOUT_PREFIX + line);
+            }
+        }
+        if ((answer.exitCode != 0 && failOnCode) || (!answer.errorOut.isEmpty() && failOnOutput)) {
+            if (logErrOut) {
+                for (final String line : StringUtils.split(answer.errorOut, "\r\n")) {
+                    result.add(ExternalProcessTools.ERROUT_PREFIX + line);
+                }
+            }
+            String msg = intres.getLocalizedMessage("process.errorexternalapp", cmd);
+            if (!answer.errorOut.isEmpty()) {
+                msg += " - " + answer.errorOut;
+            }
+            throw new ExternalProcessException(msg, result);
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("Time spent by external worker process: " + (System.currentTimeMillis() - startTime) + "ms.");
+        }
+        return result;
+    }
+
+    /** Calls an idle worker, or a new one. If an idle worker has exited since it was last used, it is replaced and the request is sent again. */
+    private Answer call(final byte[] bytes) throws IOException {
+        if (bytes.length > MAX_FRAME_LENGTH) {
+            throw new IOException("Request of " + bytes.length + " bytes is too large for an external worker process.");
+        }
+        while (true) {
+            Worker worker = idleWorkers.poll();
+            final boolean started = worker == null;
+            if (started) {
+                worker = new Worker();
+            }
+            try {
+                final Answer answer = worker.call(bytes);
+                if (shutdown) {
+                    worker.destroy();
+                } else {
+                    idleWorkers.push(worker);
+                }
+                return answer;
+            } catch (IOException e) {
+                worker.destroy();
+                if (started || worker.killed) {
+                    log.info("External worker process " + command.get(0) + " failed and will be restarted: " + e.getMessage());
+                    throw e;
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("Idle external worker process " + command.get(0) + " has exited, starting a new one: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static String exitCodeLine(final int exitCode) {
+        return ExternalProcessTools.EXIT_CODE_PREFIX + exitCode;
+    }
+}
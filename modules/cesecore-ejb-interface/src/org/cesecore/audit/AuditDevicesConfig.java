@@ -201,11 +201,65 @@ public class AuditDevicesConfig {
         return getInt(properties, "validate.fetchsize", 1000);
     }
 
+    /** Parameter to specify the number of ranges of sequence numbers that are validated in parallel. */
+    public static int getAuditLogValidationThreads(final Properties properties) {
+        return Math.max(1, getInt(properties, "validate.threads", 4));
+    }
+
+    /** Parameter to specify the number of sequence numbers of a node that are validated by one thread at a time. */
+    public static int getAuditLogValidationRangeSize(final Properties properties) {
+        return Math.max(1, getInt(properties, "validate.rangesize", 100000));
+    }
+
+    /**
+     * Parameter to specify if the sequence number up to which the logs of each node have been successfully validated should be stored, so that
+     * the next validation only validates logs written after that. Default is false, which validates all logs every time.
+     */
+    public static boolean isAuditLogValidationCheckpoints(final Properties properties) {
+        return Boolean.parseBoolean(properties.getProperty("validate.checkpoints", "false").trim());
+    }
+
     /** Parameter to specify the number of logs to be fetched in each export round trip. */
     public static int getAuditLogExportFetchSize(final Properties properties) {
         return getInt(properties, "export.fetchsize", 1000);
     }
 
+    /**
+     * Parameter to specify the number of logs written to each export file, where each file is signed separately. An interrupted export
+     * is resumed from the last completed file when the export is done again with the same timestamp. 0 (default) exports to a single file.
+     */
+    public static int getAuditLogExportChunkSize(final Properties properties) {
+        return getInt(properties, "export.chunksize", 0);
+    }
+
+    /** Parameter to specify if export files should be compressed with gzip. */
+    public static boolean isAuditLogExportCompressed(final Properties properties) {
+        return Boolean.parseBoolean(properties.getProperty("export.compress", "false").trim());
+    }
+
+    /** Parameter to specify the maximum number of logs deleted in each transaction after an export. */
+    public static int getAuditLogDeleteBatchSize(final Properties properties) {
+        return Math.max(1, getInt(properties, "export.deletebatchsize", 10000));
+    }
+
+    /**
+     * Parameter to specify the maximum number of audit records written in a single transaction by concurrent callers.
+     * 0 (default) disables group commit and writes every record in its own transaction.
+     */
+    public static int getGroupCommitBatchSize(final Properties properties) {
+        return getInt(properties, "groupcommit.batchsize", 0);
+    }
+
+    /** Parameter to specify the maximum time in milliseconds an audit record waits for other records before its batch is written. */
+    public static long getGroupCommitMaxDelay(final Properties properties) {
+        return getInt(properties, "groupcommit.maxdelay", 10);
+    }
+
+    /** Parameter to specify the maximum number of audit records waiting to be written. Callers block when this limit is reached. */
+    public static int getGroupCommitCapacity(final Properties properties) {
+        return getInt(properties, "groupcommit.capacity", 10000);
+    }
+
     private static int getInt(final Properties properties, final String key, final int defaultValue) {
         int ret = defaultValue;
         try {
@@ -0,0 +1,49 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl.integrityprotected;
+
+import org.cesecore.configuration.ConfigurationBase;
+
+/**
+ * The sequence numbers up to which the audit log of each node has been verified without any problems. Stored in the
+ * GlobalConfigurationData table, so the checkpoints are integrity protected like other configuration.
+ *
+ * @version $Id$
+ */
+public class AuditLogVerificationCheckpoints extends ConfigurationBase {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String CONFIGURATION_ID = "AUDIT_LOG_VERIFICATION_CHECKPOINTS";
+
+    private static final String CHECKPOINT_KEY_PREFIX = "checkpoint.";
+
+    @Override
+    public void upgrade() {
+    }
+
+    @Override
+    public String getConfigurationId() {
+        return CONFIGURATION_ID;
+    }
+
+    /** @return the sequence number up to which the logs of the node have been verified, or null if they have never been verified */
+    public Long getCheckpoint(final String nodeId) {
+        return (Long) data.get(CHECKPOINT_KEY_PREFIX + nodeId);
+    }
+
+    /** @param sequenceNumber the sequence number up to which the logs of the node have been verified without any problems */
+    public void setCheckpoint(final String nodeId, final long sequenceNumber) {
+        data.put(CHECKPOINT_KEY_PREFIX + nodeId, Long.valueOf(sequenceNumber));
+    }
+}
@@ -0,0 +1,71 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl.integrityprotected;
+
+import org.cesecore.audit.audit.AuditLogValidationReport;
+
+/**
+ * A range of sequence numbers of the audit log of one node, that is verified separately from the other ranges, and the result of
+ * the verification.
+ *
+ * Missing sequence numbers are only reported between the logs found in the range, since logs before the first one found are
+ * in another range. The caller is responsible for checking that the ranges follow each other.
+ *
+ * @version $Id$
+ */
+public class AuditLogVerificationRange {
+
+    private final String nodeId;
+    private final long fromSequenceNumber;
+    private final long toSequenceNumber;
+    private final AuditLogValidationReport report = new AuditLogValidationReport();
+    private Long firstSequenceNumber = null;
+    private Long lastSequenceNumber = null;
+
+    /**
+     * @param nodeId the node that wrote the logs
+     * @param fromSequenceNumber first sequence number of the range (inclusive)
+     * @param toSequenceNumber last sequence number of the range (inclusive)
+     */
+    public AuditLogVerificationRange(final String nodeId, final long fromSequenceNumber, final long toSequenceNumber) {
+        this.nodeId = nodeId;
+        this.fromSequenceNumber = fromSequenceNumber;
+        this.toSequenceNumber = toSequenceNumber;
+    }
+
+    public String getNodeId() { return nodeId; }
+    public long getFromSequenceNumber() { return fromSequenceNumber; }
+    public long getToSequenceNumber() { return toSequenceNumber; }
+
+    /** @return the problems found in this range */
+    public AuditLogValidationReport getReport() { return report; }
+
+    /** @return the sequence number of the first log found in the range, or null if there were no logs in the range */
+    public Long getFirstSequenceNumber() { return firstSequenceNumber; }
+
+    /** @return the sequence number of the last log found in the range, or null if there were no logs in the range */
+    public Long getLastSequenceNumber() { return lastSequenceNumber; }
+
+    /** Invoked with the sequence number of each log found in the range, in ascending order */
+    public void setVerified(final long sequenceNumber) {
+        if (firstSequenceNumber == null) {
+            firstSequenceNumber = Long.valueOf(sequenceNumber);
+        }
+        lastSequenceNumber = Long.valueOf(sequenceNumber);
+    }
+
+    @Override
+    public String toString() {
+        return nodeId + " [" + fromSequenceNumber + ", " + toSequenceNumber + "]";
+    }
+}
@@ -14,6 +14,7 @@ package org.cesecore.audit.impl.integrityprotected;
 
 import java.util.Date;
 import java.util.Properties;
+import java.util.concurrent.Future;
 
 import javax.ejb.Local;
 
@@ -39,4 +40,22 @@ public interface IntegrityProtectedAuditorSessionLocal extends Auditable {
 	 * @throws AuthorizationDeniedException unless token has StandardRules.AUDITLOGEXPORT rights
 	 */
 	int deleteRows(AuthenticationToken token, Date timestamp, Properties properties) throws AuthorizationDeniedException;
+
+	/**
+	 * Delete the log entries of a node up to the specified time, within a range of sequence numbers, in a transaction of its own.
+	 * Used internally to delete log entries in batches.
+	 * @return number of rows deleted
+	 */
+	int deleteRowsRange(String nodeId, long afterSequenceNumber, long toSequenceNumber, Date timestamp);
+
+	/**
+	 * Verify the log entries of one range of sequence numbers of a node asynchronously. Used internally to verify many ranges in parallel.
+	 * @param range the range to verify, which is returned with the result of the verification
+	 * @param timestamp verify entries up until this time
+	 * @param fetchSize number of entries to fetch in each round trip
+	 */
+	Future<AuditLogVerificationRange> verifyLogsIntegrityRange(AuditLogVerificationRange range, Date timestamp, int fetchSize);
+
+	/** Store the sequence numbers up to which the log of each node has been verified without problems. Used internally. */
+	void saveVerificationCheckpoints(AuditLogVerificationCheckpoints checkpoints);
 }
@@ -17,6 +17,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
+import org.cesecore.audit.AuditDevicesConfig;
 import org.cesecore.audit.AuditLogDevice;
 import org.cesecore.audit.AuditLogEntry;
 import org.cesecore.audit.audit.AuditExporter;
@@ -62,6 +63,9 @@ import org.cesecore.util.query.QueryCriteria;
  * "The specified frequency at which the audit log singing event occurs shall be configurable."
  * This implementation supports every row or none.
  * 
+ * Optionally, records from concurrent callers can be written in batches using a single transaction (group commit). This is
+ * enabled with the device property "groupcommit.batchsize". Each caller still waits until its record has been committed.
+ * 
  * FTP_CIMC_TSP.1.4:
  * "The digital signature, keyed hash, or authentication code from the audit log signing event shall be included in
  * the audit log."
@@ -102,7 +106,11 @@ public class IntegrityProtectedDevice implements AuditLogDevice {
 	@Override
 	public void log(TrustedTime trustedTime, EventType eventType, EventStatus eventStatus, ModuleType module, ServiceType service, String authToken, String customId,
 			String searchDetail1, String searchDetail2, Map<String, Object> additionalDetails, Properties properties) throws AuditRecordStorageException {
-		getEjb(IntegrityProtectedLoggerSessionLocal.class).log(trustedTime, eventType, eventStatus, module, service, authToken, customId, searchDetail1, searchDetail2, additionalDetails, properties);
+		if (AuditDevicesConfig.getGroupCommitBatchSize(properties) > 0) {
+			getEjb(IntegrityProtectedLoggerSessionLocal.class).logGroupCommit(trustedTime, eventType, eventStatus, module, service, authToken, customId, searchDetail1, searchDetail2, additionalDetails, properties);
+		} else {
+			getEjb(IntegrityProtectedLoggerSessionLocal.class).log(trustedTime, eventType, eventStatus, module, service, authToken, customId, searchDetail1, searchDetail2, additionalDetails, properties);
+		}
 	}
 
 	@Override
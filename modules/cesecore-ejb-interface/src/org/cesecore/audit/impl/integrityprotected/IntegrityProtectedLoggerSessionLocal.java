@@ -12,13 +12,38 @@
  *************************************************************************/
 package org.cesecore.audit.impl.integrityprotected;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
 import javax.ejb.Local;
 
 import org.cesecore.audit.AuditLogger;
+import org.cesecore.audit.enums.EventStatus;
+import org.cesecore.audit.enums.EventType;
+import org.cesecore.audit.enums.ModuleType;
+import org.cesecore.audit.enums.ServiceType;
+import org.cesecore.audit.log.AuditRecordStorageException;
+import org.cesecore.time.TrustedTime;
 
 /**
  * @version $Id$
  */
 @Local
 public interface IntegrityProtectedLoggerSessionLocal extends AuditLogger {
+
+    /**
+     * Same as {@link #log(TrustedTime, EventType, EventStatus, ModuleType, ServiceType, String, String, String, String, Map, Properties)}, but
+     * the record is written in the same transaction as the records of concurrent callers. Returns when the batch containing the record has
+     * been committed.
+     * 
+     * @param properties device properties with the group commit settings
+     * @throws AuditRecordStorageException if the batch containing the record could not be written
+     */
+    void logGroupCommit(TrustedTime trustedTime, EventType eventType, EventStatus eventStatus, ModuleType module, ServiceType service,
+            String authToken, String customId, String searchDetail1, String searchDetail2, Map<String, Object> additionalDetails,
+            Properties properties) throws AuditRecordStorageException;
+
+    /** Persists a batch of audit records in a single new transaction. Only for use by the group commit of this bean. */
+    void persistAuditRecords(List<AuditRecordData> auditRecordDatas);
 }
@@ -43,6 +43,32 @@ public enum NodeSequenceHolder {
 
     /** @return the node's next log row sequence number. */
     public long getNext(final OnInitCallBack callBack) {
+        initialize(callBack);
+        return lastSequenceNumberAtomic.incrementAndGet();
+    }
+
+    /**
+     * Reserve a range of consecutive sequence numbers for a batch of log rows.
+     * 
+     * @param count the number of sequence numbers to reserve
+     * @return the first sequence number in the range
+     */
+    public long getNextRange(final OnInitCallBack callBack, final int count) {
+        initialize(callBack);
+        return lastSequenceNumberAtomic.addAndGet(count) - count + 1;
+    }
+
+    /**
+     * Give back a range reserved with {@link #getNextRange(OnInitCallBack, int)} when the batch could not be written, so the
+     * sequence for this node stays free of gaps.
+     * 
+     * @return true if the range was released, false if sequence numbers after the range have been handed out since then
+     */
+    public boolean releaseRange(final long first, final int count) {
+        return lastSequenceNumberAtomic.compareAndSet(first + count - 1, first - 1);
+    }
+
+    private void initialize(final OnInitCallBack callBack) {
         if (lastSequenceNumberAtomic.get()==-1L) {
             try {
                 // Lock threads during initializations of value from the database (only one thread needs to/should do the lookup)
@@ -56,7 +82,6 @@ public enum NodeSequenceHolder {
                 lockDataBaseUpdate.unlock();
             }
         }
-        return lastSequenceNumberAtomic.incrementAndGet();
     }
 
     /** @return the Node Identifier that this sequence number applies to. */
@@ -83,6 +83,13 @@ public interface CertificateStoreSessionLocal extends CertificateStoreSession {
      */
     CertificateDataWrapper getCertificateData(final String fingerprint);
 
+    /**
+     * Retrieve the full wrapped CertificateData and Base64CertData objects for many certificates using a few bulk queries.
+     * @param fingerprints the fingerprints of the sought certificates
+     * @return the found certificates in no particular order. Fingerprints without data are silently ignored.
+     */
+    List<CertificateDataWrapper> getCertificateDatasByFingerprints(Collection<String> fingerprints);
+
     /**
      * Update the base64cert column if the database row exists, but the column is empty.
      * @return true if the column was empty and is now populated.
@@ -101,6 +108,17 @@ public interface CertificateStoreSessionLocal extends CertificateStoreSession {
      * @return [0] = (String) fingerprint, [1] = (String) username
      */
     List<Object[]> findExpirationInfo(Collection<String> cas, Collection<Integer> certificateProfiles, long activeNotifiedExpireDateMin, long activeNotifiedExpireDateMax, long activeExpireDateMin);
+
+    /**
+     * Fetch a List of the certificate fingerprints and corresponding username, like
+     * {@link #findExpirationInfo(Collection, Collection, long, long, long)}, but only for the fingerprints in a range.
+     *
+     * @param fingerprintFrom the lowest fingerprint to fetch (inclusive), or null to start at the lowest
+     * @param fingerprintTo the fingerprint to stop at (exclusive), or null to fetch up to the highest
+     * @return [0] = (String) fingerprint, [1] = (String) username
+     */
+    List<Object[]> findExpirationInfo(Collection<String> cas, Collection<Integer> certificateProfiles, long activeNotifiedExpireDateMin,
+            long activeNotifiedExpireDateMax, long activeExpireDateMin, String fingerprintFrom, String fingerprintTo);
     
     /**
      * Query if we have a clear cut case where no username or the provided username is the only user of the subjectDN and subjectKeyId.
@@ -192,6 +210,12 @@ public interface CertificateStoreSessionLocal extends CertificateStoreSession {
     /** Invoked from timer. Reloads the cache containing CA certificates and additionally sets a new timeout. */
     void reloadCaCertificateCacheAndSetTimeout();
 
+    /**
+     * Invoked from timer. Loads the issuers that have been asked for into the revocation status index, and reads the certificates that
+     * have changed since the last time into it.
+     */
+    void syncRevocationStatusIndex();
+
     /** Initialize all timers and related operations used by this bean. */
     void initTimers();
 
@@ -12,8 +12,15 @@
  *************************************************************************/
 package org.cesecore.certificates.crl;
 
+import java.util.Iterator;
+
 import javax.ejb.Local;
 
+import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.authorization.AuthorizationDeniedException;
+import org.cesecore.certificates.ca.X509CA;
+import org.cesecore.keys.token.CryptoTokenOfflineException;
+
 /**
  * Local interface for CrlCreateSession
  * 
@@ -23,4 +30,20 @@ import javax.ejb.Local;
 @Local
 public interface CrlCreateSessionLocal extends CrlCreateSession {
 
+    /**
+     * Requests for a full CRL to be created with the (revoked) certificates returned by an iterator.
+     * Each entry is encoded as soon as it is returned by the iterator, so the iterator should read the entries from the
+     * database in pages rather than holding them all in memory.
+     * Generates the CRL and stores it in the database.
+     *
+     * @param admin administrator performing the task
+     * @param ca the CA this operation regards
+     * @param certs iterator over the RevokedCertInfo objects to include in the CRL
+     * @param nextCrlNumber the CRL number.
+     * @return The newly created CRL in DER encoded byte form or null, use CertTools.getCRLfromByteArray to convert to X509CRL.
+     * @throws AuthorizationDeniedException 
+     * @throws CryptoTokenOfflineException 
+     */
+    byte[] generateAndStoreStreamedCRL(AuthenticationToken admin, X509CA ca, Iterator<RevokedCertInfo> certs, int nextCrlNumber)
+            throws CryptoTokenOfflineException, AuthorizationDeniedException;
 }
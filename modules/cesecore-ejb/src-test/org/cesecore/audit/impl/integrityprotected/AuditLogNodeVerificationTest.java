@@ -0,0 +1,131 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl.integrityprotected;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.cesecore.audit.audit.AuditLogReportElem;
+import org.cesecore.audit.audit.AuditLogValidationReport;
+import org.junit.Test;
+
+/**
+ * Tests splitting the audit log of a node into ranges, and merging the results of the ranges.
+ *
+ * @version $Id$
+ */
+public class AuditLogNodeVerificationTest {
+
+    private static final String NODE_ID = "node1";
+
+    /** Marks the given sequence numbers as found in the range */
+    private static void verify(final AuditLogVerificationRange range, final long first, final long last) {
+        for (long i = first; i <= last; i++) {
+            range.setVerified(i);
+        }
+    }
+
+    @Test
+    public void testSplit() {
+        final List<AuditLogVerificationRange> ranges = new AuditLogNodeVerification(NODE_ID, -1L).split(0, 9, 4);
+        assertEquals(3, ranges.size());
+        assertRange(ranges.get(0), 0, 3);
+        assertRange(ranges.get(1), 4, 7);
+        assertRange(ranges.get(2), 8, 9);
+        final List<AuditLogVerificationRange> exact = new AuditLogNodeVerification(NODE_ID, 5L).split(6, 13, 4);
+        assertEquals(2, exact.size());
+        assertRange(exact.get(0), 6, 9);
+        assertRange(exact.get(1), 10, 13);
+        assertEquals(1, new AuditLogNodeVerification(NODE_ID, -1L).split(3, 3, 4).size());
+    }
+
+    private static void assertRange(final AuditLogVerificationRange range, final long from, final long to) {
+        assertEquals(NODE_ID, range.getNodeId());
+        assertEquals(from, range.getFromSequenceNumber());
+        assertEquals(to, range.getToSequenceNumber());
+    }
+
+    @Test
+    public void testMergeOutOfOrder() {
+        final AuditLogNodeVerification nodeVerification = new AuditLogNodeVerification(NODE_ID, -1L);
+        final List<AuditLogVerificationRange> ranges = nodeVerification.split(0, 11, 4);
+        final AuditLogValidationReport report = new AuditLogValidationReport();
+        verify(ranges.get(2), 8, 11);
+        nodeVerification.merge(ranges.get(2), report);
+        assertEquals("The last range can not be merged before the first one.", -1L, nodeVerification.getCheckpoint());
+        verify(ranges.get(0), 0, 3);
+        nodeVerification.merge(ranges.get(0), report);
+        assertEquals(3L, nodeVerification.getCheckpoint());
+        verify(ranges.get(1), 4, 7);
+        nodeVerification.merge(ranges.get(1), report);
+        assertEquals("The pending last range should be merged after the second one.", 11L, nodeVerification.getCheckpoint());
+        assertTrue(report.warnings().isEmpty());
+        assertTrue(report.errors().isEmpty());
+    }
+
+    @Test
+    public void testGapBetweenRanges() {
+        final AuditLogNodeVerification nodeVerification = new AuditLogNodeVerification(NODE_ID, -1L);
+        final List<AuditLogVerificationRange> ranges = nodeVerification.split(0, 11, 4);
+        final AuditLogValidationReport report = new AuditLogValidationReport();
+        // Sequence number 3, the last one of the first range, and 4, the first one of the second range, are missing
+        verify(ranges.get(0), 0, 2);
+        verify(ranges.get(1), 5, 7);
+        verify(ranges.get(2), 8, 11);
+        nodeVerification.merge(ranges.get(1), report);
+        nodeVerification.merge(ranges.get(2), report);
+        nodeVerification.merge(ranges.get(0), report);
+        assertEquals(1, report.warnings().size());
+        final AuditLogReportElem warning = report.warnings().get(0);
+        assertEquals(Long.valueOf(2), warning.getFirst());
+        assertEquals(Long.valueOf(5), warning.getSecond());
+        assertEquals("Verification should not continue past the gap.", 2L, nodeVerification.getCheckpoint());
+    }
+
+    @Test
+    public void testEmptyRangeIsReportedAsGap() {
+        final AuditLogNodeVerification nodeVerification = new AuditLogNodeVerification(NODE_ID, 3L);
+        final List<AuditLogVerificationRange> ranges = nodeVerification.split(4, 15, 4);
+        final AuditLogValidationReport report = new AuditLogValidationReport();
+        verify(ranges.get(0), 4, 7);
+        verify(ranges.get(2), 12, 15);
+        for (final AuditLogVerificationRange range : ranges) {
+            nodeVerification.merge(range, report);
+        }
+        assertEquals(1, report.warnings().size());
+        assertEquals(Long.valueOf(7), report.warnings().get(0).getFirst());
+        assertEquals(Long.valueOf(12), report.warnings().get(0).getSecond());
+        assertEquals(7L, nodeVerification.getCheckpoint());
+    }
+
+    @Test
+    public void testFailureOnRangeBoundary() {
+        final AuditLogNodeVerification nodeVerification = new AuditLogNodeVerification(NODE_ID, -1L);
+        final List<AuditLogVerificationRange> ranges = nodeVerification.split(0, 11, 4);
+        final AuditLogValidationReport report = new AuditLogValidationReport();
+        verify(ranges.get(0), 0, 3);
+        verify(ranges.get(1), 4, 7);
+        verify(ranges.get(2), 8, 11);
+        // The first log of the second range could not be verified
+        ranges.get(1).getReport().warn(new AuditLogReportElem(Long.valueOf(3), Long.valueOf(4), "log with sequence number after 3 on nodeId "
+                + NODE_ID + " could not be verified"));
+        nodeVerification.merge(ranges.get(2), report);
+        nodeVerification.merge(ranges.get(1), report);
+        nodeVerification.merge(ranges.get(0), report);
+        assertEquals(1, report.warnings().size());
+        assertEquals(Long.valueOf(4), report.warnings().get(0).getSecond());
+        assertEquals("Verification should not continue past the failure, even if later ranges are clean.", 3L, nodeVerification.getCheckpoint());
+    }
+}
@@ -0,0 +1,165 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl.integrityprotected;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cesecore.audit.log.AuditRecordStorageException;
+import org.junit.Test;
+
+/**
+ * Tests the batching of audit records from concurrent callers.
+ *
+ * @version $Id$
+ */
+public class AuditRecordGroupCommitterTest {
+
+    /** Records the batches that are written */
+    private static class RecordingBatchWriter implements AuditRecordGroupCommitter.BatchWriter<Integer> {
+        private final List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<List<Integer>>());
+        private final AtomicInteger concurrentWriters = new AtomicInteger(0);
+        private volatile boolean overlappingWrites = false;
+
+        @Override
+        public void writeBatch(final List<Integer> records) throws Exception {
+            if (concurrentWriters.incrementAndGet() > 1) {
+                overlappingWrites = true;
+            }
+            Thread.sleep(2);
+            batches.add(new ArrayList<Integer>(records));
+            concurrentWriters.decrementAndGet();
+        }
+    }
+
+    @Test
+    public void testSingleCallerIsWrittenAfterDelay() throws Exception {
+        final AuditRecordGroupCommitter<Integer> committer = new AuditRecordGroupCommitter<Integer>(100, 5, 1000);
+        final RecordingBatchWriter writer = new RecordingBatchWriter();
+        committer.write(Integer.valueOf(1), writer);
+        assertEquals("A single record should be written on its own once the delay has passed.", 1, writer.batches.size());
+        assertEquals(Collections.singletonList(Integer.valueOf(1)), writer.batches.get(0));
+        assertEquals(0, committer.getQueueSize());
+    }
+
+    @Test
+    public void testConcurrentCallersAreBatched() throws Exception {
+        final int threads = 32;
+        final int recordsPerThread = 50;
+        final int maxBatchSize = 20;
+        final AuditRecordGroupCommitter<Integer> committer = new AuditRecordGroupCommitter<Integer>(maxBatchSize, 20, 64);
+        final RecordingBatchWriter writer = new RecordingBatchWriter();
+        final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int t = 0; t < threads; t++) {
+                final int offset = t * recordsPerThread;
+                futures.add(executorService.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int i = 0; i < recordsPerThread; i++) {
+                            committer.write(Integer.valueOf(offset + i), writer);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        assertTrue("Batches were written concurrently.", !writer.overlappingWrites);
+        final List<Integer> written = new ArrayList<Integer>();
+        for (final List<Integer> batch : writer.batches) {
+            assertTrue("Batch exceeded max size: " + batch.size(), batch.size() <= maxBatchSize);
+            written.addAll(batch);
+        }
+        Collections.sort(written);
+        assertEquals("Every record should be written exactly once.", threads * recordsPerThread, written.size());
+        for (int i = 0; i < written.size(); i++) {
+            assertEquals(Integer.valueOf(i), written.get(i));
+        }
+        assertTrue("Expected fewer batches than records, but got " + writer.batches.size(), writer.batches.size() < threads * recordsPerThread);
+    }
+
+    @Test
+    public void testFailedBatchIsReportedToCaller() throws Exception {
+        final AuditRecordGroupCommitter<Integer> committer = new AuditRecordGroupCommitter<Integer>(10, 1, 100);
+        try {
+            committer.write(Integer.valueOf(1), new AuditRecordGroupCommitter.BatchWriter<Integer>() {
+                @Override
+                public void writeBatch(List<Integer> records) throws Exception {
+                    throw new IllegalStateException("Database is down.");
+                }
+            });
+            fail("Caller should get an exception when its batch could not be written.");
+        } catch (AuditRecordStorageException e) {
+            assertEquals("Database is down.", e.getMessage());
+        }
+        // The next record should be written normally
+        final RecordingBatchWriter writer = new RecordingBatchWriter();
+        committer.write(Integer.valueOf(2), writer);
+        assertEquals(Collections.singletonList(Integer.valueOf(2)), writer.batches.get(0));
+    }
+
+    @Test
+    public void testHasConfiguration() {
+        final AuditRecordGroupCommitter<Integer> committer = new AuditRecordGroupCommitter<Integer>(10, 5, 100);
+        assertTrue(committer.hasConfiguration(10, 5, 100));
+        assertFalse("Changed batch size should be detected.", committer.hasConfiguration(20, 5, 100));
+        assertFalse("Changed delay should be detected.", committer.hasConfiguration(10, 50, 100));
+        assertFalse("Changed capacity should be detected.", committer.hasConfiguration(10, 5, 1000));
+        // A capacity below the batch size is raised to the batch size, so it is the same effective configuration
+        assertTrue(new AuditRecordGroupCommitter<Integer>(10, 5, 1).hasConfiguration(10, 5, 2));
+    }
+
+    @Test
+    public void testCloseWritesQueuedRecords() throws Exception {
+        final AuditRecordGroupCommitter<Integer> committer = new AuditRecordGroupCommitter<Integer>(100, 60000, 1000);
+        final RecordingBatchWriter writer = new RecordingBatchWriter();
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            // The record waits for a full batch, until the committer is closed
+            final Future<Boolean> future = executorService.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return Boolean.valueOf(committer.write(Integer.valueOf(1), writer));
+                }
+            });
+            while (committer.getQueueSize() == 0) {
+                Thread.sleep(1);
+            }
+            committer.close(writer);
+            assertEquals("Queued records should be written by close.", Collections.singletonList(Integer.valueOf(1)), writer.batches.get(0));
+            assertTrue(future.get().booleanValue());
+        } finally {
+            executorService.shutdown();
+        }
+        assertTrue(committer.isClosed());
+        assertFalse("A closed committer should not take new records.", committer.write(Integer.valueOf(2), writer));
+        assertEquals(1, writer.batches.size());
+    }
+}
@@ -0,0 +1,107 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl.integrityprotected;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.cesecore.audit.audit.AuditLogReportElem;
+import org.cesecore.audit.audit.AuditLogValidationReport;
+
+/**
+ * Splits the audit log of one node into ranges of sequence numbers that are verified separately, and merges the results of the
+ * ranges in order of sequence numbers, to also find entries missing between two ranges.
+ *
+ * The results can be merged in any order. A range that is merged before the ranges preceding it is kept until they have been
+ * merged.
+ *
+ * @version $Id$
+ */
+class AuditLogNodeVerification {
+
+    private final String nodeId;
+    /** Ranges that have been verified, but not merged yet since a preceding range has not been verified, by first sequence number */
+    private final TreeMap<Long, AuditLogVerificationRange> pending = new TreeMap<Long, AuditLogVerificationRange>();
+    /** First sequence number of the next range to merge */
+    private long nextFromSequenceNumber = -1L;
+    /** Sequence number of the last entry found */
+    private long lastSequenceNumber;
+    /** Sequence number up to which all entries have been verified without problems */
+    private long checkpoint;
+    private boolean clean = true;
+
+    /**
+     * @param nodeId the node that wrote the logs
+     * @param checkpoint the sequence number up to which the logs have already been verified, or -1 to verify all logs
+     */
+    AuditLogNodeVerification(final String nodeId, final long checkpoint) {
+        this.nodeId = nodeId;
+        this.lastSequenceNumber = checkpoint;
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Splits the sequence numbers to verify into ranges. Must be invoked before any range is merged.
+     *
+     * @param first first sequence number to verify (inclusive)
+     * @param last last sequence number to verify (inclusive)
+     * @param rangeSize the maximum number of sequence numbers in a range
+     * @return the ranges, in order of sequence numbers
+     */
+    List<AuditLogVerificationRange> split(final long first, final long last, final long rangeSize) {
+        final List<AuditLogVerificationRange> ranges = new ArrayList<AuditLogVerificationRange>();
+        for (long from = first; from <= last; from += rangeSize) {
+            ranges.add(new AuditLogVerificationRange(nodeId, from, Math.min(from + rangeSize - 1, last)));
+        }
+        nextFromSequenceNumber = first;
+        return ranges;
+    }
+
+    /**
+     * Adds the result of a verified range of the node, which has already logged its problems, and of the following ranges that
+     * have already been verified, to the report.
+     */
+    void merge(final AuditLogVerificationRange range, final AuditLogValidationReport report) {
+        pending.put(Long.valueOf(range.getFromSequenceNumber()), range);
+        AuditLogVerificationRange next;
+        while ((next = pending.remove(Long.valueOf(nextFromSequenceNumber))) != null) {
+            mergeNext(next, report);
+            nextFromSequenceNumber = next.getToSequenceNumber() + 1;
+        }
+    }
+
+    private void mergeNext(final AuditLogVerificationRange range, final AuditLogValidationReport report) {
+        if (range.getFirstSequenceNumber() == null) {
+            return; // No entries in this range
+        }
+        final long first = range.getFirstSequenceNumber().longValue();
+        if (first != lastSequenceNumber + 1) {
+            report.warn(new AuditLogReportElem(Long.valueOf(lastSequenceNumber), Long.valueOf(first), "missing log with sequence number "
+                    + (lastSequenceNumber + 1) + " on nodeId " + nodeId));
+            clean = false;
+        }
+        report.errors().addAll(range.getReport().errors());
+        report.warnings().addAll(range.getReport().warnings());
+        clean &= range.getReport().errors().isEmpty() && range.getReport().warnings().isEmpty();
+        lastSequenceNumber = range.getLastSequenceNumber().longValue();
+        if (clean) {
+            checkpoint = lastSequenceNumber;
+        }
+    }
+
+    /** @return the sequence number up to which all entries have been verified without problems, or -1 if none have */
+    long getCheckpoint() {
+        return checkpoint;
+    }
+}
@@ -0,0 +1,227 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl.integrityprotected;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.log4j.Logger;
+import org.cesecore.audit.log.AuditRecordStorageException;
+
+/**
+ * Collects audit records from concurrent callers in a bounded queue and writes them in batches.
+ *
+ * There is no background thread. Instead the first caller that finds no batch in progress becomes the writer for everyone
+ * waiting. It waits until the batch is full or the oldest record has waited for the maximum delay, and then writes up to
+ * the maximum batch size of records in one go. All other callers block until the batch containing their record has been
+ * written, so a call to {@link #write(Object, BatchWriter)} that returns normally means that the record is durable.
+ *
+ * Since only one batch is written at the time, records are written in the order they were queued.
+ *
+ * A committer that is replaced must be closed with {@link #close(BatchWriter)} before its replacement is used, so that batches from
+ * the two are never written at the same time.
+ *
+ * @version $Id$
+ */
+public class AuditRecordGroupCommitter<T> {
+
+    private static final Logger log = Logger.getLogger(AuditRecordGroupCommitter.class);
+
+    /** Callback that writes a batch of records in a single transaction. */
+    public interface BatchWriter<T> {
+        /**
+         * Write all the records or none of them.
+         * @throws Exception if the batch could not be written. All callers with records in the batch will get an exception.
+         */
+        void writeBatch(List<T> records) throws Exception;
+    }
+
+    private final int maxBatchSize;
+    private final long maxDelayMs;
+    private final int capacity;
+    private final BlockingQueue<PendingRecord<T>> queue;
+    private final ReentrantLock writerLock = new ReentrantLock();
+    private volatile boolean closed = false;
+
+    /**
+     * @param maxBatchSize the maximum number of records written in one batch
+     * @param maxDelayMs the maximum time in milliseconds that a record will wait for more records to be queued before the batch is written
+     * @param capacity the maximum number of queued records. Callers block when the queue is full.
+     */
+    public AuditRecordGroupCommitter(final int maxBatchSize, final long maxDelayMs, final int capacity) {
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxDelayMs = Math.max(0L, maxDelayMs);
+        this.capacity = Math.max(this.maxBatchSize, capacity);
+        this.queue = new ArrayBlockingQueue<PendingRecord<T>>(this.capacity);
+    }
+
+    /** @return true if this committer was created with the same effective configuration as the given parameters */
+    public boolean hasConfiguration(final int maxBatchSize, final long maxDelayMs, final int capacity) {
+        final int newMaxBatchSize = Math.max(1, maxBatchSize);
+        return this.maxBatchSize == newMaxBatchSize && this.maxDelayMs == Math.max(0L, maxDelayMs)
+                && this.capacity == Math.max(newMaxBatchSize, capacity);
+    }
+
+    /**
+     * Queue a record for writing and wait until the batch it is part of has been written.
+     *
+     * @param record the record to write
+     * @param batchWriter callback used to write the batch, if this caller becomes the writer of a batch
+     * @return true if the record was written, or false if the committer has been closed and the record was not queued
+     * @throws AuditRecordStorageException if the batch could not be written or the caller was interrupted
+     */
+    public boolean write(final T record, final BatchWriter<T> batchWriter) throws AuditRecordStorageException {
+        final PendingRecord<T> pendingRecord = new PendingRecord<T>(record);
+        try {
+            if (closed) {
+                return false;
+            }
+            queue.put(pendingRecord);
+            // If the committer was closed meanwhile the record is either taken back here, or written by close
+            if (closed && queue.remove(pendingRecord)) {
+                return false;
+            }
+            if (queue.size() >= maxBatchSize) {
+                synchronized (queue) {
+                    queue.notifyAll();
+                }
+            }
+            while (!pendingRecord.isDone()) {
+                if (writerLock.tryLock()) {
+                    try {
+                        if (!pendingRecord.isDone()) {
+                            awaitBatch();
+                            writeNextBatch(batchWriter);
+                        }
+                    } finally {
+                        writerLock.unlock();
+                    }
+                } else {
+                    pendingRecord.await(maxDelayMs);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AuditRecordStorageException("Interrupted while waiting for audit record to be written.", e);
+        }
+        if (pendingRecord.getFailure() != null) {
+            throw new AuditRecordStorageException(pendingRecord.getFailure().getMessage(), pendingRecord.getFailure());
+        }
+        return true;
+    }
+
+    /**
+     * Stops accepting records and writes all records that are already queued. When this method returns no more batches will be
+     * written by this committer.
+     *
+     * @param batchWriter callback used to write the remaining batches
+     */
+    public void close(final BatchWriter<T> batchWriter) {
+        closed = true;
+        // Don't wait for a writer that is waiting for a full batch
+        synchronized (queue) {
+            queue.notifyAll();
+        }
+        writerLock.lock();
+        try {
+            while (!queue.isEmpty()) {
+                writeNextBatch(batchWriter);
+            }
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    /** @return true if {@link #close(BatchWriter)} has been called */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /** @return the number of records that are waiting to be written */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /** Wait until there are enough records for a full batch, the oldest queued record has waited long enough or the committer is closed. */
+    private void awaitBatch() throws InterruptedException {
+        synchronized (queue) {
+            while (!closed && queue.size() < maxBatchSize) {
+                final PendingRecord<T> oldest = queue.peek();
+                if (oldest == null) {
+                    return;
+                }
+                final long remaining = oldest.getQueuedTime() + maxDelayMs - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return;
+                }
+                queue.wait(remaining);
+            }
+        }
+    }
+
+    private void writeNextBatch(final BatchWriter<T> batchWriter) {
+        final List<PendingRecord<T>> batch = new ArrayList<PendingRecord<T>>(maxBatchSize);
+        queue.drainTo(batch, maxBatchSize);
+        if (batch.isEmpty()) {
+            return;
+        }
+        final List<T> records = new ArrayList<T>(batch.size());
+        for (final PendingRecord<T> pendingRecord : batch) {
+            records.add(pendingRecord.getRecord());
+        }
+        Exception failure = null;
+        try {
+            batchWriter.writeBatch(records);
+        } catch (Exception e) {
+            log.error("Failed to write batch of " + records.size() + " audit records: " + e.getMessage());
+            failure = e;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Wrote batch of " + records.size() + " audit records. " + queue.size() + " records still queued.");
+        }
+        for (final PendingRecord<T> pendingRecord : batch) {
+            pendingRecord.setDone(failure);
+        }
+    }
+
+    /** A queued record and the outcome of writing it. */
+    private static class PendingRecord<T> {
+        private final T record;
+        private final long queuedTime = System.currentTimeMillis();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Exception failure = null;
+
+        private PendingRecord(final T record) {
+            this.record = record;
+        }
+
+        private T getRecord() { return record; }
+        private long getQueuedTime() { return queuedTime; }
+        private Exception getFailure() { return failure; }
+        private boolean isDone() { return done.getCount() == 0; }
+
+        private void setDone(final Exception failure) {
+            this.failure = failure;
+            done.countDown();
+        }
+
+        private void await(final long timeoutMs) throws InterruptedException {
+            done.await(Math.max(1L, timeoutMs), TimeUnit.MILLISECONDS);
+        }
+    }
+}
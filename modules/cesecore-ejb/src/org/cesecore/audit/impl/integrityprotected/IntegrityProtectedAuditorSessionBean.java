@@ -13,16 +13,31 @@
 package org.cesecore.audit.impl.integrityprotected;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
 import javax.ejb.EJB;
 import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
@@ -32,6 +47,8 @@ import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang.time.FastDateFormat;
 import org.apache.log4j.Logger;
 import org.cesecore.audit.AuditDevicesConfig;
@@ -50,6 +67,8 @@ import org.cesecore.audit.enums.ServiceTypes;
 import org.cesecore.audit.log.SecurityEventsLoggerSessionLocal;
 import org.cesecore.authentication.tokens.AuthenticationToken;
 import org.cesecore.config.CesecoreConfiguration;
+import org.cesecore.configuration.GlobalConfigurationData;
+import org.cesecore.dbprotection.BulkVerification;
 import org.cesecore.dbprotection.DatabaseProtectionException;
 import org.cesecore.keys.token.CryptoToken;
 import org.cesecore.util.ValidityDate;
@@ -64,8 +83,8 @@ import org.cesecore.util.query.QueryGenerator;
  * instead of custom code for log singing.
  * 
  * The index
- *  "CREATE UNIQUE INDEX auditrecorddata_idx1 ON AuditRecordData (nodeId,timeStamp,sequenceNumber);"
- * should be present for proper validation and export performance.
+ *  "CREATE UNIQUE INDEX auditrecorddata_idx2 ON AuditRecordData (nodeId,sequenceNumber);"
+ * should be present for proper validation and export performance, since log entries are read in ranges of sequence numbers per node.
  * 
  * @version $Id$
  */
@@ -96,57 +115,171 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
         final AuditLogExportReport report = new AuditLogExportReport();
         try {
             final File exportFile = AuditDevicesConfig.getExportFile(properties, timestamp);
-            try (final SigningFileOutputStream signingFileOutputStream = new SigningFileOutputStream(exportFile, cryptoToken, signatureDetails)) {
-                final AuditExporter auditExporter = c.newInstance();
-                auditExporter.setOutputStream(signingFileOutputStream);
-                verifyAndOptionalExport(auditExporter, report, timestamp, AuditDevicesConfig.getAuditLogExportFetchSize(properties));
-                report.setExportedFile(exportFile.getCanonicalPath());
+            if (AuditDevicesConfig.getAuditLogExportChunkSize(properties) > 0) {
+                exportInChunks(cryptoToken, signatureDetails, properties, c, report, timestamp, exportFile);
+            } else {
+                final boolean compress = AuditDevicesConfig.isAuditLogExportCompressed(properties);
+                final File file = compress ? new File(exportFile.getPath() + ".gz") : exportFile;
+                try (final SigningFileOutputStream signingFileOutputStream = new SigningFileOutputStream(file, cryptoToken, signatureDetails)) {
+                    final OutputStream outputStream = compress ? new GZIPOutputStream(signingFileOutputStream, 65536) : signingFileOutputStream;
+                    final AuditExporter auditExporter = c.newInstance();
+                    auditExporter.setOutputStream(outputStream);
+                    verifyAndOptionalExport(auditExporter, report, timestamp, AuditDevicesConfig.getAuditLogExportFetchSize(properties));
+                    // Close the exporter first, so the signature covers everything it writes
+                    auditExporter.close();
+                    outputStream.close();
+                    report.setExportedFile(file.getCanonicalPath());
+                    // Sign the exported file ... it will write the signature on the side
+                    report.setSignatureFile(signingFileOutputStream.writeSignature());
+                }
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Exported " + report.getExportCount() + " rows.");
+            }
+            logVerificationResult(report.errors().size(), timestamp, token);
+            // Log export success
+            final Map<String, Object> details = new LinkedHashMap<String, Object>();
+            details.put("deleteAfterExport", deleteAfterExport);
+            details.put("timestamp", ValidityDate.formatAsISO8601(new Date(), ValidityDate.TIMEZONE_UTC));
+            securityEventsLogger.log(EventTypes.LOG_EXPORT, EventStatus.SUCCESS, ModuleTypes.SECURITY_AUDIT, ServiceTypes.CORE, token.toString(), null, null, null, details);
+            // Delete the exported log entries if requested
+            if (deleteAfterExport) {
                 if (log.isDebugEnabled()) {
-                    log.debug("Exported " + report.getExportCount() + " rows.");
+                    log.debug("deleting exported logs");
                 }
-                logVerificationResult(report.errors().size(), timestamp, token);
-                // Sign the exported file ... it will write the signature on the side
-                final String signatureFilename = signingFileOutputStream.writeSignature();
-                report.setSignatureFile(signatureFilename);
-                // Log export success
-                final Map<String, Object> details = new LinkedHashMap<String, Object>();
-                details.put("deleteAfterExport", deleteAfterExport);
-                details.put("timestamp", ValidityDate.formatAsISO8601(new Date(), ValidityDate.TIMEZONE_UTC));
-                securityEventsLogger.log(EventTypes.LOG_EXPORT, EventStatus.SUCCESS, ModuleTypes.SECURITY_AUDIT, ServiceTypes.CORE, token.toString(), null, null, null, details);
-                // Delete the exported log entries if requested
-                if (deleteAfterExport) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("deleting exported logs");
-                    }
-                    final int deletedRowCount = integrityProtectedAuditorSession.deleteRows(token, timestamp, properties);
-                    if (log.isDebugEnabled()) {
-                        log.debug("Deleted " + deletedRowCount + " rows from audit log after export.");
-                    }
+                final int deletedRowCount = integrityProtectedAuditorSession.deleteRows(token, timestamp, properties);
+                if (log.isDebugEnabled()) {
+                    log.debug("Deleted " + deletedRowCount + " rows from audit log after export.");
                 }
-                auditExporter.close();
             }
         } catch (final Exception e) {
             throw new AuditLogExporterException(e.getMessage(), e);
         }
         return report;
 	}
-	
-	/* Since we modify the database we need to run this in a transaction. */
+
+	/**
+	 * Export the logs of each node to files of up to export.chunksize entries, where each file is signed as soon as it is complete. Completed
+	 * files are recorded in a progress file, so an interrupted export is resumed after the last completed file when it is done again with the
+	 * same timestamp. When all logs have been exported, the list of files is written to the export file and signed, and the progress file is
+	 * removed.
+	 */
+	private void exportInChunks(final CryptoToken cryptoToken, final Map<String, Object> signatureDetails, final Properties properties,
+	        final Class<? extends AuditExporter> c, final AuditLogExportReport report, final Date timestamp, final File exportFile) throws Exception {
+	    final int chunkSize = AuditDevicesConfig.getAuditLogExportChunkSize(properties);
+	    final int fetchSize = AuditDevicesConfig.getAuditLogExportFetchSize(properties);
+	    final boolean compress = AuditDevicesConfig.isAuditLogExportCompressed(properties);
+	    final String baseName = FilenameUtils.removeExtension(exportFile.getPath());
+	    final File progressFile = new File(baseName + ".progress");
+	    final List<ExportChunk> chunks = new ArrayList<ExportChunk>();
+	    final Map<String, Long> exportedUpTo = new HashMap<String, Long>();
+	    if (progressFile.exists()) {
+	        for (final String line : FileUtils.readLines(progressFile, StandardCharsets.UTF_8)) {
+	            if (!line.isEmpty()) {
+	                final ExportChunk chunk = ExportChunk.valueOf(line);
+	                chunks.add(chunk);
+	                exportedUpTo.put(chunk.nodeId, Long.valueOf(chunk.lastSequenceNumber));
+	            }
+	        }
+	        log.info("Resuming export of audit log after " + chunks.size() + " completed files listed in " + progressFile.getCanonicalPath());
+	    }
+	    final List<String> nodeIds = new ArrayList<String>(getNodeIds());
+	    Collections.sort(nodeIds);
+	    try (final Writer progress = new OutputStreamWriter(new FileOutputStream(progressFile, true), StandardCharsets.UTF_8)) {
+	        for (final String nodeId : nodeIds) {
+	            long after = exportedUpTo.containsKey(nodeId) ? exportedUpTo.get(nodeId).longValue() : -1L;
+	            final Holder<Long> lastSeqNumber = new Holder<Long>(Long.valueOf(after));
+	            while (true) {
+	                final File chunkFile = new File(String.format("%s-%05d.log%s", baseName, Integer.valueOf(chunks.size() + 1), compress ? ".gz" : ""));
+	                final AuditLogVerificationRange range = new AuditLogVerificationRange(nodeId, after + 1, Long.MAX_VALUE);
+	                final long count;
+	                String signatureFile = null;
+	                try (final SigningFileOutputStream signingFileOutputStream = new SigningFileOutputStream(chunkFile, cryptoToken, signatureDetails)) {
+	                    final OutputStream outputStream = compress ? new GZIPOutputStream(signingFileOutputStream, 65536) : signingFileOutputStream;
+	                    final AuditExporter auditExporter = c.newInstance();
+	                    auditExporter.setOutputStream(outputStream);
+	                    count = verifyAndOptionalExportRange(auditExporter, report, nodeId, after, Long.MAX_VALUE, timestamp, fetchSize, lastSeqNumber, range, chunkSize);
+	                    auditExporter.close();
+	                    outputStream.close();
+	                    if (count > 0) {
+	                        signatureFile = signingFileOutputStream.writeSignature();
+	                    }
+	                }
+	                if (count == 0) {
+	                    FileUtils.deleteQuietly(chunkFile);
+	                    break;	// No more data for this node
+	                }
+	                final ExportChunk chunk = new ExportChunk(chunkFile.getName(), new File(signatureFile).getName(), nodeId,
+	                        range.getFirstSequenceNumber().longValue(), range.getLastSequenceNumber().longValue(), count);
+	                chunks.add(chunk);
+	                progress.write(chunk.toString() + "\n");
+	                progress.flush();
+	                after = chunk.lastSequenceNumber;
+	                if (count < chunkSize) {
+	                    break;	// No more data for this node
+	                }
+	            }
+	        }
+	    }
+	    // Write the list of exported files, signed like the files themselves
+	    try (final SigningFileOutputStream signingFileOutputStream = new SigningFileOutputStream(exportFile, cryptoToken, signatureDetails)) {
+	        for (final ExportChunk chunk : chunks) {
+	            signingFileOutputStream.write((chunk.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+	        }
+	        report.setExportedFile(exportFile.getCanonicalPath());
+	        report.setSignatureFile(signingFileOutputStream.writeSignature());
+	    }
+	    FileUtils.deleteQuietly(progressFile);
+	}
+
+	/*
+	 * Since we modify the database we need to run this in transactions. Each batch of rows is deleted in its own transaction,
+	 * so deleting a large number of rows does not require one huge transaction.
+	 */
 	@Override
-	@TransactionAttribute(TransactionAttributeType.REQUIRED)
+	@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
 	public int deleteRows(final AuthenticationToken token, final Date timestamp, final Properties properties) {
         final Map<String, Object> detailsDelete = new LinkedHashMap<String, Object>();
         detailsDelete.put("timestamp", FastDateFormat.getInstance(ValidityDate.ISO8601_DATE_FORMAT, TimeZone.getTimeZone("GMT")).format(timestamp));
         securityEventsLogger.log(EventTypes.LOG_DELETE, EventStatus.VOID, ModuleTypes.SECURITY_AUDIT, ServiceTypes.CORE, token.toString(), null, null, null, detailsDelete);
         // Delete all the exported logs (from all nodes)
-		final QueryCriteria queryCriteria = QueryCriteria.create().add(Criteria.leq(AuditLogEntry.FIELD_TIMESTAMP, timestamp.getTime())).add(Criteria.orderAsc(AuditLogEntry.FIELD_SEQUENCENUMBER));
-		return buildConditionalQuery(entityManager, "DELETE FROM AuditRecordData a", queryCriteria, 0, 0).executeUpdate();
+        final int batchSize = AuditDevicesConfig.getAuditLogDeleteBatchSize(properties);
+        int ret = 0;
+        for (final String nodeId : getNodeIds()) {
+            long after = -1L;
+            while (true) {
+                // Find the end of the next batch, reading at most batchSize entries from the index of sequence numbers
+                final Long to = getSequenceNumberAfter(nodeId, after, batchSize);
+                if (to == null) {
+                    break;
+                }
+                final int deleted = integrityProtectedAuditorSession.deleteRowsRange(nodeId, after, to.longValue(), timestamp);
+                ret += deleted;
+                after = to.longValue();
+                if (deleted < batchSize) {
+                    break;	// Reached entries written after the timestamp
+                }
+            }
+            // The remaining entries, which are fewer than a batch unless the clock has been set back
+            ret += integrityProtectedAuditorSession.deleteRowsRange(nodeId, after, Long.MAX_VALUE, timestamp);
+        }
+        return ret;
+	}
+
+	@Override
+	@TransactionAttribute(TransactionAttributeType.REQUIRED)
+	public int deleteRowsRange(final String nodeId, final long afterSequenceNumber, final long toSequenceNumber, final Date timestamp) {
+	    final QueryCriteria queryCriteria = QueryCriteria.create().add(Criteria.and(
+	            Criteria.and(Criteria.eq(AuditLogEntry.FIELD_NODEID, nodeId), Criteria.leq(AuditLogEntry.FIELD_TIMESTAMP, timestamp.getTime())),
+	            Criteria.and(Criteria.grt(AuditLogEntry.FIELD_SEQUENCENUMBER, afterSequenceNumber), Criteria.leq(AuditLogEntry.FIELD_SEQUENCENUMBER, toSequenceNumber))));
+	    return buildConditionalQuery(entityManager, "DELETE FROM AuditRecordData a", queryCriteria, 0, 0).executeUpdate();
 	}
 
 	@Override
 	@TransactionAttribute(TransactionAttributeType.SUPPORTS)
 	public List<? extends AuditLogEntry> selectAuditLogs(final AuthenticationToken token, final int startIndex, final int max, final QueryCriteria criteria, final Properties properties) {
-        return internalSelectAuditLogs(startIndex, max, criteria);
+        // Search results are only displayed, so the rows may be sample verified
+        return internalSelectAuditLogs(startIndex, max, criteria, true);
 	}
 	
 	@Override
@@ -154,7 +287,7 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
 	public AuditLogValidationReport verifyLogsIntegrity(final AuthenticationToken token, final Date timestamp, final Properties properties) throws AuditLogValidatorException {
         final AuditLogValidationReport report = new AuditLogValidationReport();
         try {
-            verifyAndOptionalExport(null, report, timestamp, AuditDevicesConfig.getAuditLogExportFetchSize(properties));
+            verifyInParallel(report, timestamp, properties);
         	// Log the success or failure depending on if verification returns error or not
         	logVerificationResult(report.errors().size(), timestamp, token);
         } catch (final Exception e) {
@@ -163,6 +296,94 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
         return report;
 	}
 
+	@Override
+	@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+	@Asynchronous
+	public Future<AuditLogVerificationRange> verifyLogsIntegrityRange(final AuditLogVerificationRange range, final Date timestamp, final int fetchSize) {
+	    try {
+	        verifyAndOptionalExportRange(null, range.getReport(), range.getNodeId(), range.getFromSequenceNumber() - 1, range.getToSequenceNumber(),
+	                timestamp, fetchSize, new Holder<Long>(null), range, Long.MAX_VALUE);
+	    } catch (IOException e) {
+	        throw new IllegalStateException(e); // Can't happen without export
+	    }
+	    return new AsyncResult<AuditLogVerificationRange>(range);
+	}
+
+	@Override
+	@TransactionAttribute(TransactionAttributeType.REQUIRED)
+	public void saveVerificationCheckpoints(final AuditLogVerificationCheckpoints checkpoints) {
+	    final GlobalConfigurationData data = entityManager.find(GlobalConfigurationData.class, AuditLogVerificationCheckpoints.CONFIGURATION_ID);
+	    if (data == null) {
+	        entityManager.persist(new GlobalConfigurationData(AuditLogVerificationCheckpoints.CONFIGURATION_ID, checkpoints));
+	    } else {
+	        data.setConfiguration(checkpoints);
+	    }
+	}
+
+	/**
+	 * Verify the logs of all nodes in ranges of sequence numbers, where several ranges are verified in parallel. Rows are read
+	 * by (nodeId, sequenceNumber), so each range and each batch within a range is read through the index on those columns,
+	 * regardless of how far into the log it is. The results of the ranges of a node are then merged in order, to also find
+	 * entries missing between the ranges.
+	 * @param report is updated with the problems found
+	 * @param timestamp verify all entries up until this time (should be epoch GMT)
+	 */
+	private void verifyInParallel(final AuditLogValidationReport report, final Date timestamp, final Properties properties) throws InterruptedException, ExecutionException {
+	    final int fetchSize = AuditDevicesConfig.getAuditLogValidationFetchSize(properties);
+	    final int threads = AuditDevicesConfig.getAuditLogValidationThreads(properties);
+	    final long rangeSize = AuditDevicesConfig.getAuditLogValidationRangeSize(properties);
+	    final AuditLogVerificationCheckpoints checkpoints = AuditDevicesConfig.isAuditLogValidationCheckpoints(properties) ? loadVerificationCheckpoints() : null;
+	    final Map<String, AuditLogNodeVerification> nodeVerifications = new HashMap<String, AuditLogNodeVerification>();
+	    final List<AuditLogVerificationRange> ranges = new ArrayList<AuditLogVerificationRange>();
+	    for (final String nodeId : getNodeIds()) {
+	        final Long checkpoint = checkpoints == null ? null : checkpoints.getCheckpoint(nodeId);
+	        final AuditLogNodeVerification nodeVerification = new AuditLogNodeVerification(nodeId, checkpoint == null ? -1L : checkpoint.longValue());
+	        nodeVerifications.put(nodeId, nodeVerification);
+	        final Long first = checkpoint == null ? getMinSequenceNumber(nodeId) : Long.valueOf(checkpoint.longValue() + 1);
+	        final Long last = getMaxSequenceNumber(nodeId);
+	        if (first == null || last == null) {
+	            continue;
+	        }
+	        if (log.isDebugEnabled()) {
+	            log.debug("Verifying logs for nodeId " + nodeId + " from sequence number " + first + " to " + last);
+	        }
+	        ranges.addAll(nodeVerification.split(first.longValue(), last.longValue(), rangeSize));
+	    }
+	    // Keep up to 'threads' ranges in progress, and merge the results in the order the ranges were created
+	    final Iterator<AuditLogVerificationRange> iterator = ranges.iterator();
+	    final LinkedList<Future<AuditLogVerificationRange>> inProgress = new LinkedList<Future<AuditLogVerificationRange>>();
+	    while (iterator.hasNext() || !inProgress.isEmpty()) {
+	        while (iterator.hasNext() && inProgress.size() < threads) {
+	            inProgress.add(integrityProtectedAuditorSession.verifyLogsIntegrityRange(iterator.next(), timestamp, fetchSize));
+	        }
+	        final AuditLogVerificationRange range = inProgress.removeFirst().get();
+	        nodeVerifications.get(range.getNodeId()).merge(range, report);
+	    }
+	    if (checkpoints != null) {
+	        for (final Map.Entry<String, AuditLogNodeVerification> entry : nodeVerifications.entrySet()) {
+	            if (entry.getValue().getCheckpoint() >= 0) {
+	                checkpoints.setCheckpoint(entry.getKey(), entry.getValue().getCheckpoint());
+	            }
+	        }
+	        try {
+	            integrityProtectedAuditorSession.saveVerificationCheckpoints(checkpoints);
+	        } catch (RuntimeException e) {
+	            // Most likely a concurrent verification saved its checkpoints first. The next verification will verify the same logs again.
+	            log.info("Failed to save audit log verification checkpoints: " + e.getMessage());
+	        }
+	    }
+	}
+
+	/** @return the stored verification checkpoints, or empty checkpoints if none have been stored */
+	private AuditLogVerificationCheckpoints loadVerificationCheckpoints() {
+	    final AuditLogVerificationCheckpoints ret = new AuditLogVerificationCheckpoints();
+	    final GlobalConfigurationData data = entityManager.find(GlobalConfigurationData.class, AuditLogVerificationCheckpoints.CONFIGURATION_ID);
+	    if (data != null) {
+	        ret.loadData(data.getData());
+	    }
+	    return ret;
+	}
+
 	/**
 	 * Read batches of logs from the database. If the database integrity check fails, the batch will be processed row by row.
 	 * Results are added to the report.
@@ -176,56 +397,81 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
     		if (log.isDebugEnabled()) {
     			log.debug("exportAuditLogs for nodeId " + nodeId);
     		}
-    		// Assuming timeStamp is in UTC
-    		final QueryCriteria queryCriteria = QueryCriteria.create().add((Criteria.and(Criteria.eq(AuditLogEntry.FIELD_NODEID, nodeId), Criteria.leq(AuditLogEntry.FIELD_TIMESTAMP, timestamp.getTime())))).add(Criteria.orderAsc(AuditLogEntry.FIELD_SEQUENCENUMBER));
-    		int startIndex = 1;
-    		final Holder<Long> lastSeqNumber = new Holder<Long>(Long.valueOf(-1L));
-    		while (true) {
-    			try {
-        			final List<AuditRecordData> queryResult = verifyLogsIntegritySubset(startIndex, fetchSize, queryCriteria, report, lastSeqNumber, nodeId);
-    				final int results = queryResult.size();
-    				if (results == 0) {
-    					break;	// No more data for this node
-    				}
-    				startIndex += results;
-					if (auditExporter!=null) {
-						for (final AuditRecordData auditRecordData : queryResult) {
-							writeToExport(auditExporter, auditRecordData);
-        					((AuditLogExportReport) report).incExportCount();
-						}
-					}
-    			} catch (DatabaseProtectionException e) {
-    				// One of the FETCH_SIZE entries failed.. we have to go through line by line to find out witch one..
-    				for (int i=0; i<fetchSize; i++) {
-        				try {
-                			final List<AuditRecordData> queryResult = verifyLogsIntegritySubset(startIndex, 1, queryCriteria, report, lastSeqNumber, nodeId);
-            				final int results = queryResult.size();
-            				if (results != 1) {
-            					break;	// No more data for this node
-            				}
-        					if (auditExporter!=null) {
-        						writeToExport(auditExporter, queryResult.get(0));
-            					((AuditLogExportReport) report).incExportCount();
-        					}
-        				} catch (DatabaseProtectionException e2) {
-        					final AuditRecordData auditRecordData = (AuditRecordData) e2.getEntity();
-        					// Add to report
-        					report.warn(new AuditLogReportElem(lastSeqNumber.get().longValue(), auditRecordData.getSequenceNumber(), "log with sequence number after " + lastSeqNumber + " on nodeId " + nodeId + " could not be verified"));
-        					lastSeqNumber.set(auditRecordData.getSequenceNumber());
-        					// We still export it
-        					// TODO: It might make sense to make it configurable to export when verification fails..
-        					if (auditExporter!=null) {
-            					writeToExport(auditExporter, auditRecordData);
-            					((AuditLogExportReport) report).incExportCount();
-        					}
-        				}
-        				startIndex += 1;
-    				}
-    			}
-    		}
+    		verifyAndOptionalExportRange(auditExporter, report, nodeId, -1L, Long.MAX_VALUE, timestamp, fetchSize, new Holder<Long>(Long.valueOf(-1L)), null, Long.MAX_VALUE);
     	}
 	}
 
+	/**
+	 * Read batches of logs of a node from the database, in the order of sequence numbers. Each batch starts after the last sequence number of the
+	 * previous one, instead of at an offset, so reading a batch does not get slower the further into the log it is. If the database integrity
+	 * check fails, the batch will be processed row by row.
+	 * @param auditExporter can be null if no export should take place
+	 * @param report is updated with the problems found
+	 * @param afterSequenceNumber process entries after this sequence number
+	 * @param toSequenceNumber process entries up to and including this sequence number
+	 * @param timestamp process all entries up until this time (should be epoch GMT)
+	 * @param lastSeqNumber the sequence number of the entry expected before the first one, or null to not check the first entry
+	 * @param range is updated with the processed sequence numbers, may be null
+	 * @param maxEntries the maximum number of entries to process
+	 * @return the number of entries processed
+	 */
+	private long verifyAndOptionalExportRange(final AuditExporter auditExporter, final AuditLogValidationReport report, final String nodeId, final long afterSequenceNumber,
+	        final long toSequenceNumber, final Date timestamp, final int fetchSize, final Holder<Long> lastSeqNumber, final AuditLogVerificationRange range,
+	        final long maxEntries) throws IOException {
+	    long after = afterSequenceNumber;
+	    long count = 0;
+	    while (count < maxEntries) {
+	        final int max = (int) Math.min(fetchSize, maxEntries - count);
+	        try {
+	            final List<AuditRecordData> queryResult = verifyLogsIntegritySubset(after, toSequenceNumber, max, timestamp, report, lastSeqNumber, nodeId);
+	            if (queryResult.isEmpty()) {
+	                break;	// No more data for this node
+	            }
+	            for (final AuditRecordData auditRecordData : queryResult) {
+	                count++;
+	                after = auditRecordData.getSequenceNumber().longValue();
+	                if (range != null) {
+	                    range.setVerified(after);
+	                }
+	                if (auditExporter!=null) {
+	                    writeToExport(auditExporter, auditRecordData);
+	                    ((AuditLogExportReport) report).incExportCount();
+	                }
+	            }
+	        } catch (DatabaseProtectionException e) {
+	            // One of the FETCH_SIZE entries failed.. we have to go through line by line to find out witch one..
+	            for (int i=0; i<max; i++) {
+	                AuditRecordData auditRecordData;
+	                try {
+	                    final List<AuditRecordData> queryResult = verifyLogsIntegritySubset(after, toSequenceNumber, 1, timestamp, report, lastSeqNumber, nodeId);
+	                    if (queryResult.size() != 1) {
+	                        break;	// No more data for this node
+	                    }
+	                    auditRecordData = queryResult.get(0);
+	                } catch (DatabaseProtectionException e2) {
+	                    auditRecordData = (AuditRecordData) e2.getEntity();
+	                    // Add to report
+	                    final Long previous = lastSeqNumber.get() == null ? Long.valueOf(after) : lastSeqNumber.get();
+	                    report.warn(new AuditLogReportElem(previous, auditRecordData.getSequenceNumber(), "log with sequence number after " + previous + " on nodeId " + nodeId + " could not be verified"));
+	                    lastSeqNumber.set(auditRecordData.getSequenceNumber());
+	                    // We still export it
+	                    // TODO: It might make sense to make it configurable to export when verification fails..
+	                }
+	                count++;
+	                after = auditRecordData.getSequenceNumber().longValue();
+	                if (range != null) {
+	                    range.setVerified(after);
+	                }
+	                if (auditExporter!=null) {
+	                    writeToExport(auditExporter, auditRecordData);
+	                    ((AuditLogExportReport) report).incExportCount();
+	                }
+	            }
+	        }
+	    }
+	    return count;
+	}
+
 	/** We want to export exactly like it was stored in the database, to comply with requirements on logging systems where no altering of the original log data is allowed. */
     private void writeToExport(final AuditExporter auditExporter, final AuditRecordData auditRecordData) throws IOException {
         auditExporter.writeStartObject();
@@ -249,21 +495,28 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
     /**
      * Fetch a batch of log rows from the database (implying database integrity check) and verifies
      * that all sequence numbers are present.
-     * @param startIndex start batch from this position 
+     * @param afterSequenceNumber start batch after this sequence number
+     * @param toSequenceNumber end batch at this sequence number (inclusive)
      * @param max entries per batch
-     * @param queryCriteria where clause
+     * @param timestamp only fetch entries up until this time
      * @param report will be updated when a problem is found
-     * @param lastSeqNumber will be updated to the last sequence number processed in this subset
+     * @param lastSeqNumber will be updated to the last sequence number processed in this subset, if null the first entry is not checked
      * @param nodeId identifier of which node that claims to have written this data
      * @return the log entries we fetched from the database so the caller may export these
      * @throws DatabaseProtectionException if the intregrity verification fails for one of the entries in the batch during fetch
      */
-	private List<AuditRecordData> verifyLogsIntegritySubset(final int startIndex, final int max, final QueryCriteria queryCriteria, final AuditLogValidationReport report, final Holder<Long> lastSeqNumber, final String nodeId) throws DatabaseProtectionException {
-		final List<AuditRecordData> queryResult = internalSelectAuditLogs(startIndex, max, queryCriteria);	// Might throw DatabaseProtectionException
+	private List<AuditRecordData> verifyLogsIntegritySubset(final long afterSequenceNumber, final long toSequenceNumber, final int max, final Date timestamp,
+	        final AuditLogValidationReport report, final Holder<Long> lastSeqNumber, final String nodeId) throws DatabaseProtectionException {
+		// Assuming timeStamp is in UTC
+		final QueryCriteria queryCriteria = QueryCriteria.create().add(Criteria.and(
+		        Criteria.and(Criteria.eq(AuditLogEntry.FIELD_NODEID, nodeId), Criteria.leq(AuditLogEntry.FIELD_TIMESTAMP, timestamp.getTime())),
+		        Criteria.and(Criteria.grt(AuditLogEntry.FIELD_SEQUENCENUMBER, afterSequenceNumber), Criteria.leq(AuditLogEntry.FIELD_SEQUENCENUMBER, toSequenceNumber))))
+		        .add(Criteria.orderAsc(AuditLogEntry.FIELD_SEQUENCENUMBER));
+		final List<AuditRecordData> queryResult = internalSelectAuditLogs(0, max, queryCriteria, false);	// Might throw DatabaseProtectionException
 		// Loop through results and verify that the sequence order is correct
 		for (int i=0; i<queryResult.size(); i++) {
 			final long currentSeqNumber = queryResult.get(i).getSequenceNumber().longValue();
-			if (currentSeqNumber != lastSeqNumber.get().longValue() + 1) {
+			if (lastSeqNumber.get() != null && currentSeqNumber != lastSeqNumber.get().longValue() + 1) {
 				if (log.isDebugEnabled()) {
 					log.debug("Log verification failure for log on node " + nodeId + ". Missing entry. Last sequenceNumber was " + lastSeqNumber + " and current is " + currentSeqNumber);
 				}
@@ -290,10 +543,20 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
 	/**
 	 * Select log entries using the supplied criteria.
 	 * Optionally using startIndex and resultLimit (used if >0).
+	 * The integrity protection of the selected rows is verified in one batch after the rows have been read.
+	 * @param sampleVerification true if only the configured fraction of the rows should be verified
+	 * @throws DatabaseProtectionException if the integrity verification fails for one of the entries
 	 */
 	@SuppressWarnings("unchecked")
-	private List<AuditRecordData> internalSelectAuditLogs(final int startIndex, final int max, final QueryCriteria criteria) {
-        return buildConditionalQuery(entityManager, "SELECT a FROM AuditRecordData a", criteria, startIndex, max).getResultList();
+	private List<AuditRecordData> internalSelectAuditLogs(final int startIndex, final int max, final QueryCriteria criteria, final boolean sampleVerification) {
+	    final BulkVerification bulkVerification = BulkVerification.begin(sampleVerification);
+	    try {
+	        final List<AuditRecordData> ret = buildConditionalQuery(entityManager, "SELECT a FROM AuditRecordData a", criteria, startIndex, max).getResultList();
+	        bulkVerification.verify();
+	        return ret;
+	    } finally {
+	        bulkVerification.close();
+	    }
 	}
 	
 	/** @return a unique list of node identifiers that have been writing audit log to the database. */
@@ -302,6 +565,23 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
 		return entityManager.createQuery("SELECT DISTINCT a.nodeId FROM AuditRecordData a").getResultList();
 	}
 
+	/** @return the sequence number of the entry of the node that is 'count' entries after the given sequence number, or null if there are fewer entries */
+	private Long getSequenceNumberAfter(final String nodeId, final long afterSequenceNumber, final int count) {
+	    final List<?> result = entityManager.createQuery("SELECT a.sequenceNumber FROM AuditRecordData a WHERE a.nodeId=:nodeId AND a.sequenceNumber>:sequenceNumber ORDER BY a.sequenceNumber")
+	            .setParameter("nodeId", nodeId).setParameter("sequenceNumber", Long.valueOf(afterSequenceNumber)).setFirstResult(count - 1).setMaxResults(1).getResultList();
+	    return result.isEmpty() ? null : (Long) result.get(0);
+	}
+
+	/** @return the lowest sequence number of the node, or null if there are no log entries for the node */
+	private Long getMinSequenceNumber(final String nodeId) {
+	    return (Long) entityManager.createQuery("SELECT MIN(a.sequenceNumber) FROM AuditRecordData a WHERE a.nodeId=:nodeId").setParameter("nodeId", nodeId).getSingleResult();
+	}
+
+	/** @return the highest sequence number of the node, or null if there are no log entries for the node */
+	private Long getMaxSequenceNumber(final String nodeId) {
+	    return (Long) entityManager.createQuery("SELECT MAX(a.sequenceNumber) FROM AuditRecordData a WHERE a.nodeId=:nodeId").setParameter("nodeId", nodeId).getSingleResult();
+	}
+
 	/**
 	 * Build a JPA Query from the supplied queryStr and criteria.
 	 * Optionally using startIndex and resultLimit (used if >0).
@@ -328,6 +608,37 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
         return query;
     }
     
+    /** A completed file of a chunked export, as listed in the progress file and in the exported file. */
+    private static class ExportChunk {
+        private final String fileName;
+        private final String signatureFileName;
+        private final String nodeId;
+        private final long firstSequenceNumber;
+        private final long lastSequenceNumber;
+        private final long count;
+
+        ExportChunk(final String fileName, final String signatureFileName, final String nodeId, final long firstSequenceNumber, final long lastSequenceNumber,
+                final long count) {
+            this.fileName = fileName;
+            this.signatureFileName = signatureFileName;
+            this.nodeId = nodeId;
+            this.firstSequenceNumber = firstSequenceNumber;
+            this.lastSequenceNumber = lastSequenceNumber;
+            this.count = count;
+        }
+
+        static ExportChunk valueOf(final String line) {
+            final String[] fields = line.split("\t");
+            return new ExportChunk(fields[0], fields[1], fields[2], Long.parseLong(fields[3]), Long.parseLong(fields[4]), Long.parseLong(fields[5]));
+        }
+
+        /** @return file name, signature file name, node identifier, first and last sequence number and number of entries, separated by tabs */
+        @Override
+        public String toString() {
+            return fileName + "\t" + signatureFileName + "\t" + nodeId + "\t" + firstSequenceNumber + "\t" + lastSequenceNumber + "\t" + count;
+        }
+    }
+
     /** Class used internally for holding an object that can updated by a method. */
     private class Holder<T> {
     	private T object;
@@ -12,10 +12,15 @@
  *************************************************************************/
 package org.cesecore.audit.impl.integrityprotected;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
@@ -24,12 +29,14 @@ import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
 
 import org.apache.log4j.Logger;
+import org.cesecore.audit.AuditDevicesConfig;
 import org.cesecore.audit.enums.EventStatus;
 import org.cesecore.audit.enums.EventType;
 import org.cesecore.audit.enums.ModuleType;
 import org.cesecore.audit.enums.ServiceType;
 import org.cesecore.audit.log.AuditRecordStorageException;
 import org.cesecore.config.CesecoreConfiguration;
+import org.cesecore.dbprotection.ProtectedDataBatch;
 import org.cesecore.time.TrustedTime;
 import org.cesecore.util.CryptoProviderTools;
 import org.cesecore.util.QueryResultWrapper;
@@ -46,13 +53,22 @@ import org.cesecore.util.QueryResultWrapper;
 public class IntegrityProtectedLoggerSessionBean implements IntegrityProtectedLoggerSessionLocal {
 
     private static final Logger log = Logger.getLogger(IntegrityProtectedLoggerSessionBean.class);
+    private static final ReentrantLock groupCommitterLock = new ReentrantLock();
+    private static volatile AuditRecordGroupCommitter<QueuedAuditRecord> groupCommitter = null;
 
     @PersistenceContext(unitName = CesecoreConfiguration.PERSISTENCE_UNIT)
     private EntityManager entityManager;
 
+    @Resource
+    private SessionContext sessionContext;
+
+    /** not injected but created in postConstruct, since it is ourself */
+    private IntegrityProtectedLoggerSessionLocal loggerSession;
+
     @PostConstruct
     public void postConstruct() {
         CryptoProviderTools.installBCProviderIfNotAvailable();
+        loggerSession = sessionContext.getBusinessObject(IntegrityProtectedLoggerSessionLocal.class);
     }
 
     /**
@@ -104,4 +120,134 @@ public class IntegrityProtectedLoggerSessionBean implements IntegrityProtectedLo
             }
         }
     }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    // Waiting for the batch must not hold a transaction. The batch is persisted in a new transaction by persistAuditRecords.
+    public void logGroupCommit(final TrustedTime trustedTime, final EventType eventType, final EventStatus eventStatus, final ModuleType module,
+            final ServiceType service, final String authToken, final String customId, final String searchDetail1, final String searchDetail2,
+            final Map<String, Object> additionalDetails, final Properties properties) throws AuditRecordStorageException {
+        if (log.isTraceEnabled()) {
+            log.trace(String.format(">logGroupCommit:%s:%s:%s:%s:%s:%s", eventType, eventStatus, module, service, authToken, additionalDetails));
+        }
+        try {
+            final QueuedAuditRecord queuedAuditRecord = new QueuedAuditRecord(Long.valueOf(trustedTime.getTime().getTime()), eventType, eventStatus,
+                    authToken, service, module, customId, searchDetail1, searchDetail2, additionalDetails);
+            // A committer that is closed because it is replaced does not take the record, which is then written by the new one
+            boolean written;
+            do {
+                written = getGroupCommitter(properties).write(queuedAuditRecord, groupCommitBatchWriter);
+            } while (!written);
+        } finally {
+            if (log.isTraceEnabled()) {
+                log.trace("<logGroupCommit");
+            }
+        }
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void persistAuditRecords(final List<AuditRecordData> auditRecordDatas) {
+        // Protect the whole batch at once, instead of one row at a time when each row is persisted
+        ProtectedDataBatch.protectData(auditRecordDatas);
+        for (final AuditRecordData auditRecordData : auditRecordDatas) {
+            entityManager.persist(auditRecordData);
+        }
+        // The inserts are sent when the transaction commits, in JDBC batches of hibernate.jdbc.batch_size rows (see persistence.xml)
+    }
+
+    /**
+     * @return the group committer shared by all instances of this bean. It is created from the device properties on first use, and
+     * created again if the batch size, delay or capacity have changed. A replaced committer is closed, which writes the records already
+     * queued in it, before the new one is installed. Otherwise batches from both could be written at the same time.
+     */
+    private AuditRecordGroupCommitter<QueuedAuditRecord> getGroupCommitter(final Properties properties) {
+        final int batchSize = AuditDevicesConfig.getGroupCommitBatchSize(properties);
+        final long maxDelay = AuditDevicesConfig.getGroupCommitMaxDelay(properties);
+        final int capacity = AuditDevicesConfig.getGroupCommitCapacity(properties);
+        AuditRecordGroupCommitter<QueuedAuditRecord> ret = groupCommitter;
+        if (ret == null || ret.isClosed() || !ret.hasConfiguration(batchSize, maxDelay, capacity)) {
+            groupCommitterLock.lock();
+            try {
+                ret = groupCommitter;
+                if (ret == null || !ret.hasConfiguration(batchSize, maxDelay, capacity)) {
+                    log.info("Audit log group commit " + (ret == null ? "enabled" : "reconfigured") + " with batch size " + batchSize + ", max delay "
+                            + maxDelay + " ms and capacity " + capacity + ".");
+                    if (ret != null) {
+                        ret.close(groupCommitBatchWriter);
+                    }
+                    ret = new AuditRecordGroupCommitter<QueuedAuditRecord>(batchSize, maxDelay, capacity);
+                    groupCommitter = ret;
+                }
+            } finally {
+                groupCommitterLock.unlock();
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Assigns consecutive sequence numbers to a batch and persists it in one transaction. If the transaction fails, the
+     * sequence numbers are given back so there will be no gap in the sequence for this node. If they can't be given back, since
+     * a record outside of the batch has got a later sequence number meanwhile, the gap is logged as an error.
+     */
+    private final AuditRecordGroupCommitter.BatchWriter<QueuedAuditRecord> groupCommitBatchWriter = new AuditRecordGroupCommitter.BatchWriter<QueuedAuditRecord>() {
+        @Override
+        public void writeBatch(final List<QueuedAuditRecord> records) throws Exception {
+            final long firstSequenceNumber = NodeSequenceHolder.INSTANCE.getNextRange(sequenceHolderInitialization, records.size());
+            // Make sure to use the Node Identifier that this log sequence was initialized with (for example hostnames reported by the system could change)
+            final String nodeId = NodeSequenceHolder.INSTANCE.getNodeId();
+            final List<AuditRecordData> auditRecordDatas = new ArrayList<AuditRecordData>(records.size());
+            long sequenceNumber = firstSequenceNumber;
+            for (final QueuedAuditRecord record : records) {
+                auditRecordDatas.add(record.toAuditRecordData(nodeId, Long.valueOf(sequenceNumber++)));
+            }
+            try {
+                loggerSession.persistAuditRecords(auditRecordDatas);
+            } catch (RuntimeException e) {
+                if (!NodeSequenceHolder.INSTANCE.releaseRange(firstSequenceNumber, records.size())) {
+                    // Later sequence numbers have already been handed out, so the range can't be reused and audit log verification will report it
+                    final String msg = "Audit log sequence numbers " + firstSequenceNumber + " to " + (sequenceNumber - 1) + " for node " + nodeId
+                            + " are lost after a failed audit log write and will be reported as missing by audit log verification.";
+                    log.error(msg, e);
+                    throw new AuditRecordStorageException(msg, e);
+                }
+                throw e;
+            }
+        }
+    };
+
+    /** An audit event that waits in the group commit queue for its sequence number. */
+    private static final class QueuedAuditRecord {
+        private final Long timeStamp;
+        private final EventType eventType;
+        private final EventStatus eventStatus;
+        private final String authToken;
+        private final ServiceType service;
+        private final ModuleType module;
+        private final String customId;
+        private final String searchDetail1;
+        private final String searchDetail2;
+        private final Map<String, Object> additionalDetails;
+
+        private QueuedAuditRecord(final Long timeStamp, final EventType eventType, final EventStatus eventStatus, final String authToken,
+                final ServiceType service, final ModuleType module, final String customId, final String searchDetail1, final String searchDetail2,
+                final Map<String, Object> additionalDetails) {
+            this.timeStamp = timeStamp;
+            this.eventType = eventType;
+            this.eventStatus = eventStatus;
+            this.authToken = authToken;
+            this.service = service;
+            this.module = module;
+            this.customId = customId;
+            this.searchDetail1 = searchDetail1;
+            this.searchDetail2 = searchDetail2;
+            this.additionalDetails = additionalDetails;
+        }
+
+        private AuditRecordData toAuditRecordData(final String nodeId, final Long sequenceNumber) {
+            return new AuditRecordData(nodeId, sequenceNumber, timeStamp, eventType, eventStatus, authToken, service, module, customId, searchDetail1,
+                    searchDetail2, additionalDetails);
+        }
+    }
 }
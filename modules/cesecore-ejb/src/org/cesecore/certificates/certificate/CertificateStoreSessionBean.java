@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -67,6 +68,7 @@ import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
 import org.cesecore.certificates.certificateprofile.CertificateProfileSessionLocal;
 import org.cesecore.certificates.crl.RevokedCertInfo;
 import org.cesecore.certificates.endentity.EndEntityConstants;
+import org.cesecore.certificates.ocsp.cache.OcspPreSignedResponseCache;
 import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.config.GlobalCesecoreConfiguration;
 import org.cesecore.config.OcspConfiguration;
@@ -92,6 +94,9 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
     /** Internal localization of logs and errors */
     private static final InternalResources INTRES = InternalResources.getInstance();
     private static final int TIMERID_CACERTIFICATECACHE = 1;
+    private static final int TIMERID_REVOCATIONSTATUSINDEX = 2;
+    /** Number of rows to read at the time when loading the revocation status index */
+    private static final int REVOCATIONSTATUSINDEX_PAGE_SIZE = 10000;
 
     @PersistenceContext(unitName = CesecoreConfiguration.PERSISTENCE_UNIT)
     private EntityManager entityManager;
@@ -133,6 +138,10 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         } else {
             log.info("Not initing CaCertificateCache reload timers, there are already some.");
         }
+        if (RevocationStatusIndex.INSTANCE.isEnabled() && getTimerCount(TIMERID_REVOCATIONSTATUSINDEX)==0) {
+            timerService.createSingleActionTimer(CesecoreConfiguration.getRevocationStatusIndexSyncInterval(),
+                    new TimerConfig(Integer.valueOf(TIMERID_REVOCATIONSTATUSINDEX), false));
+        }
     }
     
     private GlobalCesecoreConfiguration getGlobalCesecoreConfiguration() {
@@ -210,6 +219,9 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         final CertificateData certificateData = new CertificateData(incert, pubk, username, cafp, status, type, certificateProfileId, endEntityProfileId, tag, updateTime,
                 !useBase64CertTable && storeCertificateData, storeSubjectAlternativeName);
         entityManager.persist(certificateData);
+        // A response for a serial number that was not known before may have been cached
+        OcspPreSignedResponseCache.INSTANCE.invalidate(certificateData.getIssuerDN(), CertTools.getSerialNumber(incert));
+        RevocationStatusIndex.INSTANCE.invalidate(certificateData.getIssuerDN(), CertTools.getSerialNumber(incert));
         if (doAuditLog) {
             final String serialNo = CertTools.getSerialNumberAsString(incert);
             final String msg = INTRES.getLocalizedMessage("store.storecert", username, certificateData.getFingerprint(), certificateData.getSubjectDnNeverNull(), certificateData.getIssuerDN(), serialNo);
@@ -237,6 +249,24 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         return new CertificateDataWrapper(certificateData, base64CertData);
     }
 
+    @Override
+    public List<CertificateDataWrapper> getCertificateDatasByFingerprints(final Collection<String> fingerprints) {
+        final List<CertificateDataWrapper> ret = new ArrayList<CertificateDataWrapper>(fingerprints.size());
+        if (fingerprints.isEmpty()) {
+            return ret;
+        }
+        final Map<String, Base64CertData> base64CertDatas = new HashMap<String, Base64CertData>();
+        if (CesecoreConfiguration.useBase64CertTable()) {
+            for (final Base64CertData base64CertData : Base64CertData.findByFingerprints(entityManager, fingerprints)) {
+                base64CertDatas.put(base64CertData.getFingerprint(), base64CertData);
+            }
+        }
+        for (final CertificateData certificateData : CertificateData.findByFingerprints(entityManager, fingerprints)) {
+            ret.add(new CertificateDataWrapper(certificateData, base64CertDatas.get(certificateData.getFingerprint())));
+        }
+        return ret;
+    }
+
     /** 
      * We need special handling here of CVC certificate with EC keys, because they lack EC parameters in all certs
      * except the Root certificate (CVCA)
@@ -328,7 +358,39 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         if (log.isTraceEnabled()) {
             log.trace(">listRevokedCertInfo()");
         }
-        return CertificateData.getRevokedCertInfos(entityManager, CertTools.stringToBCDNString(StringTools.strip(issuerdn)), lastbasecrldate);
+        final String bcdn = CertTools.stringToBCDNString(StringTools.strip(issuerdn));
+        if (lastbasecrldate > 0 && RevocationStatusIndex.INSTANCE.isEnabled() && RevocationStatusIndex.INSTANCE.isLoaded(bcdn)) {
+            final Collection<RevokedCertInfo> ret = listRevokedCertInfoFromIndex(bcdn, lastbasecrldate);
+            if (ret != null) {
+                return ret;
+            }
+        }
+        return CertificateData.getRevokedCertInfos(entityManager, bcdn, lastbasecrldate);
+    }
+
+    /** @return the entries of a delta CRL from the revocation status index, or null if the issuer is no longer in the index */
+    private Collection<RevokedCertInfo> listRevokedCertInfoFromIndex(final String issuerDn, final long lastbasecrldate) {
+        // Pick up changes made by other nodes since the last sync
+        updateRevocationStatusIndex();
+        // Certificates changed on this node recently are read from the database
+        final Set<BigInteger> dirtySerials = RevocationStatusIndex.INSTANCE.getDirtySerials(issuerDn, Long.MAX_VALUE).keySet();
+        final RevocationStatusIndex.IssuerContent content = RevocationStatusIndex.INSTANCE.getContent(issuerDn);
+        if (content == null) {
+            return null;
+        }
+        final List<RevokedCertInfo> ret = content.getDeltaCrlEntries(lastbasecrldate, dirtySerials);
+        final RevocationStatusIndex.IssuerContent dirtyContent = new RevocationStatusIndex.IssuerContent(Integer.MAX_VALUE, 0L);
+        for (final BigInteger serialNumber : dirtySerials) {
+            for (final Object[] row : CertificateData.findRevocationStatusByIssuerDNSerialNumber(entityManager, issuerDn, serialNumber.toString())) {
+                updateRevocationStatusIndex(dirtyContent, row);
+            }
+        }
+        ret.addAll(dirtyContent.getDeltaCrlEntries(lastbasecrldate, Collections.<BigInteger>emptySet()));
+        if (log.isDebugEnabled()) {
+            log.debug("Read " + ret.size() + " delta CRL entries for '" + issuerDn + "' from the revocation status index, " + dirtySerials.size()
+                    + " of the certificates were read from the database.");
+        }
+        return ret;
     }
 
     @Override
@@ -1131,6 +1193,7 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         if (returnVal) {
             // Persist changes
             entityManager.merge(certificateData);
+            invalidatePreSignedOcspResponses(certificateData);
         }
         if (log.isTraceEnabled()) {
             log.trace("<private setRevokeStatusNoAuth(), issuerdn=" + issuerDn + ", serno=" + serialNumber);
@@ -1138,6 +1201,17 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         return returnVal;
     }
 
+    /** Drop OCSP responses for the certificate that were signed before its status changed, and its entry in the revocation status index. */
+    private void invalidatePreSignedOcspResponses(final CertificateData certificateData) {
+        try {
+            final BigInteger serialNumber = new BigInteger(certificateData.getSerialNumber());
+            OcspPreSignedResponseCache.INSTANCE.invalidate(certificateData.getIssuerDN(), serialNumber);
+            RevocationStatusIndex.INSTANCE.invalidate(certificateData.getIssuerDN(), serialNumber);
+        } catch (NumberFormatException e) {
+            // Not an X.509 certificate, so there are no OCSP responses for it
+        }
+    }
+
     @Override
     @TransactionAttribute(TransactionAttributeType.REQUIRED)
     public void revokeAllCertByCA(AuthenticationToken admin, String issuerdn, int reason) throws AuthorizationDeniedException {
@@ -1161,11 +1235,14 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
                 	d.setStatus(CertificateConstants.CERT_REVOKED);
                 	d.setRevocationDate(System.currentTimeMillis());
                 	d.setRevocationReason(reason);
+                	d.setUpdateTime(System.currentTimeMillis());
                 	revoked++;
             	}
             	firstResult += maxRows;
             	list = findAllNonRevokedCertificates(bcdn, firstResult, maxRows);
             }
+            OcspPreSignedResponseCache.INSTANCE.invalidateIssuer(bcdn);
+            RevocationStatusIndex.INSTANCE.invalidateIssuer(bcdn);
             final String msg = INTRES.getLocalizedMessage("store.revokedallbyca", issuerdn, Integer.valueOf(revoked), Integer.valueOf(reason));
     		Map<String, Object> details = new LinkedHashMap<String, Object>();
     		details.put("msg", msg);
@@ -1241,7 +1318,13 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         }
         // First make a DN in our well-known format
         final String dn = CertTools.stringToBCDNString(issuerDN);
-
+        final CertificateStatus indexedStatus = RevocationStatusIndex.INSTANCE.getStatus(dn, serno);
+        if (indexedStatus != null) {
+            if (log.isTraceEnabled()) {
+                log.trace("<getStatus() returned " + indexedStatus + " from the revocation status index for cert number " + serno.toString(16));
+            }
+            return indexedStatus;
+        }
         try {
             Collection<CertificateData> coll = CertificateData.findByIssuerDNSerialNumber(entityManager, dn, serno.toString());
             if (coll.size() > 1) {
@@ -1293,8 +1376,14 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
     @Override
     public List<Object[]> findExpirationInfo(Collection<String> cas, Collection<Integer> certificateProfiles, long activeNotifiedExpireDateMin,
             long activeNotifiedExpireDateMax, long activeExpireDateMin) {
+        return findExpirationInfo(cas, certificateProfiles, activeNotifiedExpireDateMin, activeNotifiedExpireDateMax, activeExpireDateMin, null, null);
+    }
+
+    @Override
+    public List<Object[]> findExpirationInfo(Collection<String> cas, Collection<Integer> certificateProfiles, long activeNotifiedExpireDateMin,
+            long activeNotifiedExpireDateMax, long activeExpireDateMin, String fingerprintFrom, String fingerprintTo) {
         return CertificateData.findExpirationInfo(entityManager, cas, certificateProfiles, activeNotifiedExpireDateMin, activeNotifiedExpireDateMax,
-                activeExpireDateMin);
+                activeExpireDateMin, fingerprintFrom, fingerprintTo);
     }
     
     private void changeStatus(AuthenticationToken admin, CertificateData certificateData, int status) throws AuthorizationDeniedException {
@@ -1308,6 +1397,7 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         authorizedToCA(admin, caid);
 
         certificateData.setStatus(status);
+        invalidatePreSignedOcspResponses(certificateData);
         final Certificate certificate = certificateData.getCertificate(this.entityManager);
         String serialNo;
         if (certificate==null) {
@@ -1532,6 +1622,8 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
             final String msg = INTRES.getLocalizedMessage("caadmin.notauthorizedtoca", admin.toString(), caId);
             throw new AuthorizationDeniedException(msg);
         }
+        OcspPreSignedResponseCache.INSTANCE.invalidate(issuerDn, serialNumber);
+        RevocationStatusIndex.INSTANCE.invalidate(CertTools.stringToBCDNString(issuerDn), serialNumber);
         final String limitedFingerprint = getLimitedCertificateDataFingerprint(issuerDn, serialNumber);
         final CertificateDataWrapper cdw = getCertificateDataByIssuerAndSerno(issuerDn, serialNumber);
         if (cdw==null) {
@@ -1610,6 +1702,8 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
             final int currentTimerId = ((Integer)timer.getInfo()).intValue();
             if (currentTimerId==TIMERID_CACERTIFICATECACHE) {
             	reloadCaCertificateCacheAndSetTimeout();
+            } else if (currentTimerId==TIMERID_REVOCATIONSTATUSINDEX) {
+                syncRevocationStatusIndexAndSetTimeout();
             }
         }
         if (log.isTraceEnabled()) {
@@ -1644,6 +1738,148 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         }
     }
 
+    private void syncRevocationStatusIndexAndSetTimeout() {
+        try {
+            certificateStoreSession.syncRevocationStatusIndex();
+        } catch (RuntimeException e) {
+            log.info("Failed to update the revocation status index: " + e.getMessage());
+            if (log.isDebugEnabled()) {
+                log.debug("Failed to update the revocation status index.", e);
+            }
+        } finally {
+            // Schedule a new timer of this type, unless the index has been disabled
+            if (RevocationStatusIndex.INSTANCE.isEnabled()) {
+                timerService.createSingleActionTimer(CesecoreConfiguration.getRevocationStatusIndexSyncInterval(),
+                        new TimerConfig(Integer.valueOf(TIMERID_REVOCATIONSTATUSINDEX), false));
+            } else {
+                RevocationStatusIndex.INSTANCE.flush();
+            }
+        }
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public void syncRevocationStatusIndex() {
+        for (final String issuerDn : RevocationStatusIndex.INSTANCE.getIssuersToLoad()) {
+            loadRevocationStatusIndex(issuerDn);
+        }
+        updateRevocationStatusIndex();
+    }
+
+    /** Read the status of all certificates of an issuer into the revocation status index. */
+    private void loadRevocationStatusIndex(final String issuerDn) {
+        final long loadStartTime = System.currentTimeMillis();
+        final RevocationStatusIndex.IssuerContent content = new RevocationStatusIndex.IssuerContent(CesecoreConfiguration.getRevocationStatusIndexMaxEntries(),
+                loadStartTime);
+        String afterFingerprint = null;
+        while (true) {
+            final List<Object[]> rows = CertificateData.findRevocationStatusByIssuerDN(entityManager, issuerDn, afterFingerprint, REVOCATIONSTATUSINDEX_PAGE_SIZE);
+            if (rows.isEmpty()) {
+                break;
+            }
+            for (final Object[] row : rows) {
+                if (!updateRevocationStatusIndex(content, row)) {
+                    RevocationStatusIndex.INSTANCE.setTooLarge(issuerDn);
+                    return;
+                }
+            }
+            afterFingerprint = (String) rows.get(rows.size() - 1)[1];
+        }
+        RevocationStatusIndex.INSTANCE.setLoaded(issuerDn, content, loadStartTime);
+        log.info("Loaded " + content.size() + " certificates of '" + issuerDn + "' into the revocation status index in "
+                + (System.currentTimeMillis() - loadStartTime) + " ms.");
+    }
+
+    /**
+     * Read the certificates changed in the database since the last sync into the revocation status index, and reload the certificates
+     * changed on this node once their transactions have surely committed.
+     */
+    private void updateRevocationStatusIndex() {
+        final RevocationStatusIndex index = RevocationStatusIndex.INSTANCE;
+        final long syncStartTime = System.currentTimeMillis();
+        final long overlap = CesecoreConfiguration.getRevocationStatusIndexSyncOverlap();
+        final Map<String, RevocationStatusIndex.IssuerContent> loadedIssuers = index.getLoadedIssuers();
+        if (!loadedIssuers.isEmpty()) {
+            long syncedTime = Long.MAX_VALUE;
+            for (final RevocationStatusIndex.IssuerContent content : loadedIssuers.values()) {
+                syncedTime = Math.min(syncedTime, content.getSyncedTime());
+            }
+            long afterUpdateTime = syncedTime - overlap;
+            String afterFingerprint = null;
+            while (true) {
+                final List<Object[]> rows = CertificateData.findRevocationStatusByUpdateTime(entityManager, afterUpdateTime, afterFingerprint,
+                        REVOCATIONSTATUSINDEX_PAGE_SIZE);
+                for (final Object[] row : rows) {
+                    final String issuerDn = (String) row[0];
+                    final RevocationStatusIndex.IssuerContent content = loadedIssuers.get(issuerDn);
+                    final BigInteger serialNumber = getRevocationStatusSerialNumber(row);
+                    // Certificates changed on this node are reloaded below instead
+                    if (content == null || serialNumber == null || index.isDirty(issuerDn, serialNumber)) {
+                        continue;
+                    }
+                    if (!updateRevocationStatusIndex(content, row)) {
+                        index.setTooLarge(issuerDn);
+                        loadedIssuers.remove(issuerDn);
+                    }
+                }
+                if (rows.size() < REVOCATIONSTATUSINDEX_PAGE_SIZE) {
+                    break;
+                }
+                final Object[] last = rows.get(rows.size() - 1);
+                afterUpdateTime = ValueExtractor.extractLongValue(last[8]);
+                afterFingerprint = (String) last[1];
+            }
+            for (final RevocationStatusIndex.IssuerContent content : loadedIssuers.values()) {
+                content.setSyncedTime(syncStartTime);
+            }
+        }
+        for (final String issuerDn : index.getIssuers()) {
+            final RevocationStatusIndex.IssuerContent content = index.getContent(issuerDn);
+            for (final Map.Entry<BigInteger, Long> entry : index.getDirtySerials(issuerDn, syncStartTime - overlap).entrySet()) {
+                final BigInteger serialNumber = entry.getKey();
+                if (content != null) {
+                    final List<Object[]> rows = CertificateData.findRevocationStatusByIssuerDNSerialNumber(entityManager, issuerDn, serialNumber.toString());
+                    if (rows.isEmpty()) {
+                        content.remove(serialNumber);
+                    }
+                    for (final Object[] row : rows) {
+                        if (!updateRevocationStatusIndex(content, row)) {
+                            index.setTooLarge(issuerDn);
+                            break;
+                        }
+                    }
+                }
+                index.clearDirty(issuerDn, serialNumber, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @param row a row returned by CertificateData.findRevocationStatusByIssuerDN
+     * @return false if the issuer has too many certificates to be indexed
+     */
+    private boolean updateRevocationStatusIndex(final RevocationStatusIndex.IssuerContent content, final Object[] row) {
+        final BigInteger serialNumber = getRevocationStatusSerialNumber(row);
+        if (serialNumber == null) {
+            return true;
+        }
+        final int status = ValueExtractor.extractIntValue(row[3]);
+        final int certificateProfileId = row[7] == null ? CertificateProfileConstants.CERTPROFILE_NO_PROFILE : ValueExtractor.extractIntValue(row[7]);
+        final CertificateStatus certificateStatus = CertificateStatusHelper.getCertificateStatus(status, ValueExtractor.extractIntValue(row[4]),
+                ValueExtractor.extractLongValue(row[5]), certificateProfileId);
+        return content.update((String) row[1], serialNumber, status, ValueExtractor.extractLongValue(row[6]), certificateStatus);
+    }
+
+    /** @return the serial number of a row returned by CertificateData.findRevocationStatusByIssuerDN, or null if it is not a number */
+    private static BigInteger getRevocationStatusSerialNumber(final Object[] row) {
+        try {
+            return new BigInteger((String) row[2]);
+        } catch (NumberFormatException e) {
+            // Not an X.509 certificate, so nobody asks for its status by serial number
+            return null;
+        }
+    }
+
     /** @return the number of timers where TimerInfo is an Integer and hold the specified value */
     private int getTimerCount(final int id) {
         if (log.isTraceEnabled()) {
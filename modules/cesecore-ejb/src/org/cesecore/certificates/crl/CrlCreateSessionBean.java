@@ -13,6 +13,8 @@
 package org.cesecore.certificates.crl;
 
 import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -24,6 +26,7 @@ import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
 
 import org.apache.log4j.Logger;
+import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.cert.X509CRLHolder;
 import org.cesecore.audit.enums.EventStatus;
 import org.cesecore.audit.enums.EventTypes;
@@ -36,6 +39,7 @@ import org.cesecore.authorization.AuthorizationSessionLocal;
 import org.cesecore.authorization.control.StandardRules;
 import org.cesecore.certificates.ca.CA;
 import org.cesecore.certificates.ca.CAConstants;
+import org.cesecore.certificates.ca.X509CA;
 import org.cesecore.internal.InternalResources;
 import org.cesecore.jndi.JndiConstants;
 import org.cesecore.keys.token.CryptoToken;
@@ -107,7 +111,6 @@ public class CrlCreateSessionBean implements CrlCreateSessionLocal, CrlCreateSes
     		}
     		if (crl != null) {
     			// Store CRL in the database, this can still fail so the whole thing is rolled back
-    			String cafp = CertTools.getFingerprintAsString(ca.getCACertificate());
     			if (log.isDebugEnabled()) {
     			    log.debug("Encoding CRL to byte array. Free memory="+Runtime.getRuntime().freeMemory());
     			}          
@@ -116,28 +119,18 @@ public class CrlCreateSessionBean implements CrlCreateSessionLocal, CrlCreateSes
     			    log.debug("Finished encoding CRL to byte array. Free memory="+Runtime.getRuntime().freeMemory());
     				log.debug("Storing CRL in certificate store.");
     			}
-    			crlSession.storeCRL(admin, tmpcrlBytes, cafp, nextCrlNumber, crl.getIssuer().toString(), crl.toASN1Structure().getThisUpdate().getDate(), crl.toASN1Structure().getNextUpdate().getDate(), (deltaCRL ? 1 : -1));
-    			String msg = intres.getLocalizedMessage("createcrl.createdcrl", Integer.valueOf(nextCrlNumber), ca.getName(), ca.getSubjectDN());
-    			Map<String, Object> details = new LinkedHashMap<String, Object>();
-    			details.put("msg", msg);
-    			logSession.log(EventTypes.CRL_CREATION, EventStatus.SUCCESS, ModuleTypes.CRL, ServiceTypes.CORE, admin.toString(), String.valueOf(caid), null, null, details);	                	
+    			storeCRL(admin, ca, tmpcrlBytes, nextCrlNumber, crl.getIssuer().toString(), crl.toASN1Structure().getThisUpdate().getDate(), crl.toASN1Structure().getNextUpdate().getDate(), deltaCRL);
     			// Now all is finished and audit logged, now we are ready to "really" set the return value
     			crlBytes = tmpcrlBytes; 
     		}
     	} catch (CryptoTokenOfflineException ctoe) {
     		String msg = intres.getLocalizedMessage("error.catokenoffline", ca.getSubjectDN());
     		log.info(msg, ctoe);
-    		String auditmsg = intres.getLocalizedMessage("createcrl.errorcreate", ca.getName(), ctoe.getMessage());
-    		Map<String, Object> details = new LinkedHashMap<String, Object>();
-    		details.put("msg", auditmsg);
-    		logSession.log(EventTypes.CRL_CREATION, EventStatus.FAILURE, ModuleTypes.CRL, ServiceTypes.CORE, admin.toString(), String.valueOf(caid), null, null, details);
+    		logCrlCreationFailure(admin, ca, ctoe);
     		throw ctoe;
     	} catch (Exception e) {
     		log.info("Error generating CRL: ", e);
-    		String msg = intres.getLocalizedMessage("createcrl.errorcreate", ca.getName(), e.getMessage());
-    		Map<String, Object> details = new LinkedHashMap<String, Object>();
-    		details.put("msg", msg);
-    		logSession.log(EventTypes.CRL_CREATION, EventStatus.FAILURE, ModuleTypes.CRL, ServiceTypes.CORE, admin.toString(), String.valueOf(caid), null, null, details);
+    		String msg = logCrlCreationFailure(admin, ca, e);
     		if (e instanceof EJBException) {
     			throw (EJBException)e;
     		}
@@ -149,6 +142,82 @@ public class CrlCreateSessionBean implements CrlCreateSessionLocal, CrlCreateSes
     	return crlBytes;
     }
 
+    @Override
+    public byte[] generateAndStoreStreamedCRL(AuthenticationToken admin, X509CA ca, Iterator<RevokedCertInfo> certs, int nextCrlNumber) throws CryptoTokenOfflineException, AuthorizationDeniedException {
+        if (log.isTraceEnabled()) {
+            log.trace(">createCRL(Iterator)");
+        }
+        byte[] crlBytes = null; // return value
+        // Check that we are allowed to create CRLs
+        // Authorization for other things, that we have access to the CA has already been done
+        authorizedToCreateCRL(admin, ca.getCAId());
+        StreamingCrlBuilder crlBuilder = null;
+        try {
+            if ( (ca.getStatus() != CAConstants.CA_ACTIVE) && (ca.getStatus() != CAConstants.CA_WAITING_CERTIFICATE_RESPONSE) ) {
+                String msg = intres.getLocalizedMessage("createcert.canotactive", ca.getSubjectDN());
+                throw new CryptoTokenOfflineException(msg);
+            }
+            final CryptoToken cryptoToken = cryptoTokenManagementSession.getCryptoToken(ca.getCAToken().getCryptoTokenId());
+            if (cryptoToken==null) {
+                throw new CryptoTokenOfflineException("Could not find CryptoToken with id " + ca.getCAToken().getCryptoTokenId());
+            }
+            crlBuilder = ca.createStreamingCRLBuilder(cryptoToken, nextCrlNumber);
+            while (certs.hasNext()) {
+                final RevokedCertInfo certinfo = certs.next();
+                crlBuilder.addCRLEntry(certinfo.getUserCertificate(), certinfo.getRevocationDate(), certinfo.getReason());
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Added " + crlBuilder.getEntryCount() + " revoked certificates to streamed CRL. Free memory="+Runtime.getRuntime().freeMemory());
+            }
+            final byte[] tmpcrlBytes = ca.signStreamingCRL(cryptoToken, crlBuilder);
+            // Store CRL in the database, this can still fail so the whole thing is rolled back
+            storeCRL(admin, ca, tmpcrlBytes, nextCrlNumber, X500Name.getInstance(crlBuilder.getIssuer().toASN1Primitive()).toString(),
+                    crlBuilder.getThisUpdate(), crlBuilder.getNextUpdate(), false);
+            // Now all is finished and audit logged, now we are ready to "really" set the return value
+            crlBytes = tmpcrlBytes;
+        } catch (CryptoTokenOfflineException ctoe) {
+            String msg = intres.getLocalizedMessage("error.catokenoffline", ca.getSubjectDN());
+            log.info(msg, ctoe);
+            logCrlCreationFailure(admin, ca, ctoe);
+            throw ctoe;
+        } catch (Exception e) {
+            log.info("Error generating CRL: ", e);
+            String msg = logCrlCreationFailure(admin, ca, e);
+            if (e instanceof EJBException) {
+                throw (EJBException)e;
+            }
+            throw new EJBException(msg, e);
+        } finally {
+            if (crlBuilder != null) {
+                crlBuilder.close();
+            }
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("<createCRL(Iterator)");
+        }
+        return crlBytes;
+    }
+
+    /** Stores a generated CRL in the database and audit logs that it was created */
+    private void storeCRL(final AuthenticationToken admin, final CA ca, final byte[] crlBytes, final int nextCrlNumber, final String issuerDN,
+            final Date thisUpdate, final Date nextUpdate, final boolean deltaCRL) throws CrlStoreException, AuthorizationDeniedException {
+        final String cafp = CertTools.getFingerprintAsString(ca.getCACertificate());
+        crlSession.storeCRL(admin, crlBytes, cafp, nextCrlNumber, issuerDN, thisUpdate, nextUpdate, (deltaCRL ? 1 : -1));
+        String msg = intres.getLocalizedMessage("createcrl.createdcrl", Integer.valueOf(nextCrlNumber), ca.getName(), ca.getSubjectDN());
+        Map<String, Object> details = new LinkedHashMap<String, Object>();
+        details.put("msg", msg);
+        logSession.log(EventTypes.CRL_CREATION, EventStatus.SUCCESS, ModuleTypes.CRL, ServiceTypes.CORE, admin.toString(), String.valueOf(ca.getCAId()), null, null, details);
+    }
+
+    /** Audit logs that a CRL could not be created. @return the logged message */
+    private String logCrlCreationFailure(final AuthenticationToken admin, final CA ca, final Exception e) {
+        String msg = intres.getLocalizedMessage("createcrl.errorcreate", ca.getName(), e.getMessage());
+        Map<String, Object> details = new LinkedHashMap<String, Object>();
+        details.put("msg", msg);
+        logSession.log(EventTypes.CRL_CREATION, EventStatus.FAILURE, ModuleTypes.CRL, ServiceTypes.CORE, admin.toString(), String.valueOf(ca.getCAId()), null, null, details);
+        return msg;
+    }
+
     private void authorizedToCreateCRL(final AuthenticationToken admin, final int caid) throws AuthorizationDeniedException {
     	if (!authorizationSession.isAuthorized(admin, StandardRules.CREATECRL.resource())) {
     		final String msg = intres.getLocalizedMessage("createcrl.notauthorized", admin.toString(), caid);
@@ -83,6 +83,7 @@ public class CrlStoreSessionBean implements CrlStoreSessionLocal, CrlStoreSessio
             }
             CRLData data = new CRLData(incrl, number, issuerDN, thisUpdate, nextUpdate, cafp, deltaCRLIndicator);
             this.entityManager.persist(data);
+            CrlStoreChangeCounter.INSTANCE.increment();
             String msg = intres.getLocalizedMessage("store.storecrl", Integer.valueOf(number), data.getFingerprint(), data.getIssuerDN());
             Map<String, Object> details = new LinkedHashMap<String, Object>();
             details.put("msg", msg);
@@ -93,10 +93,12 @@ import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
 import org.bouncycastle.cert.ocsp.CertificateID;
 import org.bouncycastle.cert.ocsp.OCSPException;
 import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPReqBuilder;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
 import org.bouncycastle.cert.ocsp.Req;
 import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.cert.ocsp.SingleResp;
 import org.bouncycastle.cert.ocsp.UnknownStatus;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.operator.bc.BcDigestCalculatorProvider;
@@ -125,6 +127,8 @@ import org.cesecore.certificates.certificatetransparency.CertificateTransparency
 import org.cesecore.certificates.crl.RevokedCertInfo;
 import org.cesecore.certificates.ocsp.cache.OcspConfigurationCache;
 import org.cesecore.certificates.ocsp.cache.OcspExtensionsCache;
+import org.cesecore.certificates.ocsp.cache.OcspPreSignedResponseCache;
+import org.cesecore.certificates.ocsp.cache.OcspPreSignedResponseCache.PreSignedResponse;
 import org.cesecore.certificates.ocsp.cache.OcspRequestSignerStatusCache;
 import org.cesecore.certificates.ocsp.cache.OcspSigningCache;
 import org.cesecore.certificates.ocsp.cache.OcspSigningCacheEntry;
@@ -185,6 +189,7 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
     private static final int MAX_REQUEST_SIZE = 100000;
     /** Timer identifiers */
     private static final int TIMERID_OCSPSIGNINGCACHE = 1;
+    private static final int TIMERID_OCSPPRESIGNING = 2;
 
     private static final String hardTokenClassName = OcspConfiguration.getHardTokenClassName();
 
@@ -236,6 +241,51 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         } else {
             log.info("Not initing OCSP reload timers, there are already some.");
         }
+        if (OcspConfiguration.isPreSigningEnabled() && getTimerCount(TIMERID_OCSPPRESIGNING)==0) {
+            addTimer(OcspConfiguration.getPreSigningRefreshMarginInMilliseconds()/2, TIMERID_OCSPPRESIGNING);
+        }
+    }
+
+    /**
+     * Signs the cached responses that are about to reach their nextUpdate again, if they have been requested since they were signed.
+     * The fresh responses end up in the cache the same way as responses to ordinary requests.
+     */
+    private void refreshPreSignedResponses() {
+        try {
+            final List<PreSignedResponse> entries = OcspPreSignedResponseCache.INSTANCE.getEntriesToRefresh();
+            if (log.isDebugEnabled()) {
+                log.debug("Refreshing " + entries.size() + " pre-signed OCSP responses. " + OcspPreSignedResponseCache.INSTANCE.size()
+                        + " responses remain cached.");
+            }
+            // The refresh is not a client transaction, so keep it out of the transaction and audit logs
+            final TransactionLogger transactionLogger = new TransactionLogger(Integer.valueOf(0), "", "") {
+                private static final long serialVersionUID = 1L;
+                @Override
+                public boolean isEnabled() {
+                    return false;
+                }
+            };
+            final AuditLogger auditLogger = new AuditLogger("", Integer.valueOf(0), "", "") {
+                private static final long serialVersionUID = 1L;
+                @Override
+                public boolean isEnabled() {
+                    return false;
+                }
+            };
+            for (final PreSignedResponse entry : entries) {
+                try {
+                    final byte[] request = new OCSPReqBuilder().addRequest(entry.getCertId()).build().getEncoded();
+                    getOcspResponse(request, null, "", null, null, auditLogger, transactionLogger);
+                } catch (IOException | OCSPException | MalformedRequestException e) {
+                    log.info("Failed to refresh pre-signed OCSP response for serial " + entry.getCertId().getSerialNumber().toString(16) + ": "
+                            + e.getMessage());
+                }
+            }
+        } finally {
+            if (OcspConfiguration.isPreSigningEnabled()) {
+                addTimer(OcspConfiguration.getPreSigningRefreshMarginInMilliseconds()/2, TIMERID_OCSPPRESIGNING);
+            }
+        }
     }
     
     @Override
@@ -993,8 +1043,12 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         if (log.isTraceEnabled()) {
             log.trace(">timeoutHandler: " + timer.getInfo().toString());
         }
-        // reloadTokenAndChainCache cancels old timers and adds a new timer
-        reloadOcspSigningCache();
+        if (((Integer) timer.getInfo()).intValue() == TIMERID_OCSPPRESIGNING) {
+            refreshPreSignedResponses();
+        } else {
+            // reloadTokenAndChainCache cancels old timers and adds a new timer
+            reloadOcspSigningCache();
+        }
         if (log.isTraceEnabled()) {
             log.trace("<timeoutHandler");
         }
@@ -1077,7 +1131,6 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
             final String msg = intres.getLocalizedMessage("request.toolarge", MAX_REQUEST_SIZE, request.length);
             throw new MalformedRequestException(msg);
         }
-        byte[] respBytes = null;
         final Date startTime = new Date();
         OCSPResp ocspResponse = null;
         // Start logging process time after we have received the request
@@ -1117,11 +1170,22 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
             if (auditLogger.isEnabled()) {
                 auditLogger.paramPut(AuditLogger.STATUS, OCSPRespBuilder.SUCCESSFUL);
             }
+            // Look for extension OIDs
+            final Collection<String> extensionOids = OcspConfiguration.getExtensionOids();
+            // Without a nonce or anything else that makes the response unique to this request, a pre-signed response can be used
+            final boolean preSignable = OcspConfiguration.isPreSigningEnabled() && ocspRequests.length == 1 && !req.hasExtensions()
+                    && !req.isSigned() && ocspRequests[0].getSingleRequestExtensions() == null && extensionOids.isEmpty();
+            if (preSignable) {
+                final PreSignedResponse preSignedResponse = getPreSignedResponse(ocspRequests[0].getCertID());
+                if (preSignedResponse != null) {
+                    logPreSignedResponse(preSignedResponse, remoteAddress, xForwardedFor, auditLogger, transactionLogger);
+                    return encodeAndLogResponse(preSignedResponse.getOcspResponse(), preSignedResponse.getMaxAge(),
+                            preSignedResponse.getSignerCert(), startTime, auditLogger, transactionLogger);
+                }
+            }
             OcspSigningCacheEntry ocspSigningCacheEntry = null;
             long nextUpdate = OcspConfiguration.getUntilNextUpdate(CertificateProfileConstants.CERTPROFILE_NO_PROFILE);
             Map<ASN1ObjectIdentifier, Extension> responseExtensions = new HashMap<>();
-            // Look for extension OIDs
-            final Collection<String> extensionOids = OcspConfiguration.getExtensionOids();
             // Look over the status requests
             List<OCSPResponseItem> responseList = new ArrayList<OCSPResponseItem>();
             boolean addExtendedRevokedExtension = false;
@@ -1419,6 +1483,9 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                 BasicOCSPResp basicresp = signOcspResponse(req, responseList, exts, ocspSigningCacheEntry, producedAt);
                 signerCert = ocspSigningCacheEntry.getSigningCertificate();
                 ocspResponse = responseGenerator.build(OCSPRespBuilder.SUCCESSFUL, basicresp);
+                if (preSignable && responseExtensions.isEmpty()) {
+                    addPreSignedResponse(ocspRequests[0].getCertID(), ocspSigningCacheEntry, basicresp, ocspResponse, maxAge);
+                }
                 if (auditLogger.isEnabled()) {
                     auditLogger.paramPut(AuditLogger.STATUS, OCSPRespBuilder.SUCCESSFUL);
                 }
@@ -1499,8 +1566,14 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         } catch (CryptoTokenOfflineException e) {
             ocspResponse = processDefaultError(responseGenerator, transactionLogger, auditLogger, e);
         }
+        return encodeAndLogResponse(ocspResponse, maxAge, signerCert, startTime, auditLogger, transactionLogger);
+    }
+
+    /** Writes the audit and transaction log entries for the response, and replaces it with an error if logging has failed. */
+    private OcspResponseInformation encodeAndLogResponse(OCSPResp ocspResponse, final long maxAge, final X509Certificate signerCert,
+            final Date startTime, final AuditLogger auditLogger, final TransactionLogger transactionLogger) throws OCSPException {
         try {
-            respBytes = ocspResponse.getEncoded();
+            final byte[] respBytes = ocspResponse.getEncoded();
             if (auditLogger.isEnabled()) {
                 auditLogger.paramPut(AuditLogger.OCSPRESPONSE, new String(Hex.encode(respBytes)));
                 auditLogger.writeln();
@@ -1514,14 +1587,14 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                 if (hasErrorHandlerFailedSince(startTime)) {
                     log.info("ProbableErrorhandler reported error, cannot answer request");
                     // RFC 2560: responseBytes are not set on error.
-                    ocspResponse = responseGenerator.build(OCSPRespBuilder.INTERNAL_ERROR, null);
+                    ocspResponse = new OCSPRespBuilder().build(OCSPRespBuilder.INTERNAL_ERROR, null);
 
                 }
                 // See if the Appender has reported any problems
                 if (!CanLogCache.INSTANCE.canLog()) {
                     log.info("SaferDailyRollingFileAppender reported error, cannot answer request");
                     // RFC 2560: responseBytes are not set on error.
-                    ocspResponse = responseGenerator.build(OCSPRespBuilder.INTERNAL_ERROR, null);
+                    ocspResponse = new OCSPRespBuilder().build(OCSPRespBuilder.INTERNAL_ERROR, null);
                 }
             }
         } catch (IOException e) {
@@ -1536,6 +1609,81 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         return new OcspResponseInformation(ocspResponse, maxAge, signerCert);
     }
     
+    /**
+     * @return a cached response for the certificate, or null if there is none or if it was signed by another key than the one that would be
+     * used now
+     */
+    private PreSignedResponse getPreSignedResponse(final CertificateID certId) {
+        final PreSignedResponse preSignedResponse = OcspPreSignedResponseCache.INSTANCE.getEntry(certId);
+        if (preSignedResponse == null) {
+            return null;
+        }
+        final OcspSigningCacheEntry ocspSigningCacheEntry = OcspSigningCache.INSTANCE.getEntry(certId);
+        if (ocspSigningCacheEntry == null || ocspSigningCacheEntry.getIssuerCaCertificateStatus().equals(CertificateStatus.REVOKED)
+                || !preSignedResponse.getSignerCert().equals(ocspSigningCacheEntry.getSigningCertificate())) {
+            OcspPreSignedResponseCache.INSTANCE.invalidate(preSignedResponse.getIssuerDn(), certId.getSerialNumber());
+            return null;
+        }
+        return preSignedResponse;
+    }
+
+    /** Caches a signed response to a request for a single certificate, if it was signed for a CA we know about and has a nextUpdate. */
+    private void addPreSignedResponse(final CertificateID certId, final OcspSigningCacheEntry ocspSigningCacheEntry, final BasicOCSPResp basicResponse,
+            final OCSPResp ocspResponse, final long maxAge) {
+        // Don't cache responses from the default responder or for CAs that have been revoked
+        if (OcspSigningCache.INSTANCE.getEntry(certId) != ocspSigningCacheEntry
+                || ocspSigningCacheEntry.getIssuerCaCertificateStatus().equals(CertificateStatus.REVOKED)) {
+            return;
+        }
+        final SingleResp singleResponse = basicResponse.getResponses()[0];
+        if (singleResponse.getNextUpdate() == null) {
+            return;
+        }
+        final int certStatus;
+        if (singleResponse.getCertStatus() == null) {
+            certStatus = OCSPResponseItem.OCSP_GOOD;
+        } else if (singleResponse.getCertStatus() instanceof RevokedStatus) {
+            certStatus = OCSPResponseItem.OCSP_REVOKED;
+        } else {
+            certStatus = OCSPResponseItem.OCSP_UNKNOWN;
+        }
+        OcspPreSignedResponseCache.INSTANCE.addEntry(new PreSignedResponse(certId, CertTools.getSubjectDN(ocspSigningCacheEntry.getIssuerCaCertificate()),
+                ocspResponse, ocspSigningCacheEntry.getSigningCertificate(), maxAge, singleResponse.getNextUpdate().getTime(), certStatus));
+    }
+
+    private void logPreSignedResponse(final PreSignedResponse preSignedResponse, final String remoteAddress, final String xForwardedFor,
+            final AuditLogger auditLogger, final TransactionLogger transactionLogger) {
+        final CertificateID certId = preSignedResponse.getCertId();
+        if (transactionLogger.isEnabled()) {
+            transactionLogger.paramPut(TransactionLogger.SERIAL_NOHEX, certId.getSerialNumber().toByteArray());
+            transactionLogger.paramPut(TransactionLogger.DIGEST_ALGOR, certId.getHashAlgOID().toString());
+            transactionLogger.paramPut(TransactionLogger.ISSUER_NAME_HASH, certId.getIssuerNameHash());
+            transactionLogger.paramPut(TransactionLogger.ISSUER_KEY, certId.getIssuerKeyHash());
+            final OcspSigningCacheEntry ocspSigningCacheEntry = OcspSigningCache.INSTANCE.getEntry(certId);
+            if (ocspSigningCacheEntry != null) {
+                transactionLogger.paramPut(TransactionLogger.ISSUER_NAME_DN, ocspSigningCacheEntry.getSigningCertificateIssuerDn());
+                transactionLogger.paramPut(TransactionLogger.ISSUER_NAME_DN_RAW, ocspSigningCacheEntry.getSigningCertificateIssuerDnRaw());
+            }
+            transactionLogger.paramPut(TransactionLogger.CERT_STATUS, preSignedResponse.getCertStatus());
+            transactionLogger.writeln();
+        }
+        if (auditLogger.isEnabled()) {
+            auditLogger.paramPut(AuditLogger.ISSUER_KEY, certId.getIssuerKeyHash());
+            auditLogger.paramPut(AuditLogger.SERIAL_NOHEX, certId.getSerialNumber().toByteArray());
+            auditLogger.paramPut(AuditLogger.ISSUER_NAME_HASH, certId.getIssuerNameHash());
+        }
+        final String hash = new String(Hex.encode(certId.getIssuerNameHash()));
+        if (xForwardedFor==null) {
+            log.info(intres.getLocalizedMessage("ocsp.inforeceivedrequest", certId.getSerialNumber().toString(16), hash, remoteAddress));
+        } else {
+            log.info(intres.getLocalizedMessage("ocsp.inforeceivedrequestwxff", certId.getSerialNumber().toString(16), hash, remoteAddress, xForwardedFor));
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Returning pre-signed OCSP response for serial " + certId.getSerialNumber().toString(16) + " issued by '"
+                    + preSignedResponse.getIssuerDn() + "'.");
+        }
+    }
+
     private boolean checkAddArchiveCuttoff(String caCertificateSubjectDn, CertificateID certId) {
         if (OcspConfiguration.getExpiredArchiveCutoff() == -1) {
             return false;
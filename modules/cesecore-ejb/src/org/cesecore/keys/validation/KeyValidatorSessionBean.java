@@ -143,6 +143,9 @@ public class KeyValidatorSessionBean implements KeyValidatorSessionLocal, KeyVal
             profileSession.changeProfile(validator);
             // Since loading a KeyValidator is quite complex, we simple purge the cache here.
             ValidatorCache.INSTANCE.removeEntry(data.getId());
+            if (validator instanceof ExternalCommandCertificateValidator && !((ExternalCommandCertificateValidator) validator).isUsePersistentWorkers()) {
+                ExternalCommandCertificateValidator.removeWorkerPool(data.getId());
+            }
             message = intres.getLocalizedMessage("validator.changed_validator", name);
             final Map<String, Object> details = new LinkedHashMap<String, Object>();
             details.put("msg", message);
@@ -181,6 +184,7 @@ public class KeyValidatorSessionBean implements KeyValidatorSessionLocal, KeyVal
         profileSession.removeProfile(data);
         // Purge the cache here.
         ValidatorCache.INSTANCE.removeEntry(data.getId());
+        ExternalCommandCertificateValidator.removeWorkerPool(data.getId());
         message = intres.getLocalizedMessage("validator.removed_validator", data.getProfileName());
         final Map<String, Object> details = new LinkedHashMap<String, Object>();
         details.put("msg", message);
@@ -214,6 +218,7 @@ public class KeyValidatorSessionBean implements KeyValidatorSessionLocal, KeyVal
                 profileSession.removeProfile(data);
                 // Purge the cache here.
                 ValidatorCache.INSTANCE.removeEntry(data.getId());
+                ExternalCommandCertificateValidator.removeWorkerPool(data.getId());
                 message = intres.getLocalizedMessage("validator.removed_validator", data.getProfileName());
                 final Map<String, Object> details = new LinkedHashMap<String, Object>();
                 details.put("msg", message);
@@ -657,6 +662,10 @@ public class KeyValidatorSessionBean implements KeyValidatorSessionLocal, KeyVal
         }
         validatorToUpdate.setDataMap(data);
         ValidatorCache.INSTANCE.flush();
+        if (validatorToUpdate instanceof ExternalCommandCertificateValidator
+                && !((ExternalCommandCertificateValidator) validatorToUpdate).isUsePersistentWorkers()) {
+            ExternalCommandCertificateValidator.removeWorkerPool(id);
+        }
 
         final String auditMessage = intres.getLocalizedMessage("validator.changed_validator", validatorToUpdate.getProfileName());
         final Map<String, Object> details = new LinkedHashMap<String, Object>();
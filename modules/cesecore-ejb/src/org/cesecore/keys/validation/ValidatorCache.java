@@ -18,7 +18,7 @@ import java.util.Map;
 
 import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.internal.CommonCache;
-import org.cesecore.internal.CommonCacheBase;
+import org.cesecore.internal.ConcurrentCommonCache;
 
 /**
  * Key validator object and name to id lookup cache. Configured through CesecoreConfiguration.getCacheKeyValidatorTime().
@@ -28,7 +28,7 @@ import org.cesecore.internal.CommonCacheBase;
 public enum ValidatorCache implements CommonCache<Validator> {
     INSTANCE;
 
-    private final CommonCache<Validator> cache = new CommonCacheBase<Validator>() {
+    private final CommonCache<Validator> cache = new ConcurrentCommonCache<Validator>() {
         @Override
         protected long getCacheTime() {
             long time = Math.max( CesecoreConfiguration.getCacheKeyValidatorTime(), -1);
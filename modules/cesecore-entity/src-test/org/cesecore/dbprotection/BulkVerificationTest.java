@@ -0,0 +1,157 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.dbprotection;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.cesecore.config.ConfigurationHolder;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests of batched and sampled verification of database integrity protection.
+ * 
+ * @version $Id$
+ */
+public class BulkVerificationTest {
+
+    private static class TestData extends ProtectedData {
+        private String rowProtection;
+
+        @Override
+        protected String getProtectString(final int rowversion) {
+            return "test";
+        }
+
+        @Override
+        protected int getProtectVersion() {
+            return 1;
+        }
+
+        @Override
+        public void setRowProtection(final String rowProtection) {
+            this.rowProtection = rowProtection;
+        }
+
+        @Override
+        public String getRowProtection() {
+            return rowProtection;
+        }
+
+        @Override
+        protected String getRowId() {
+            return "1";
+        }
+    }
+
+    @After
+    public void tearDown() {
+        ConfigurationHolder.updateConfiguration("databaseprotection.bulkverify.fraction", "1.0");
+        ConfigurationHolder.updateConfiguration("databaseprotection.bulkverify.fraction.TestData", null);
+    }
+
+    private static void load(final int count) {
+        for (int i = 0; i < count; i++) {
+            new TestData().verifyData();
+        }
+    }
+
+    @Test
+    public void testDeferredVerification() {
+        final BulkVerification bulkVerification = BulkVerification.begin(false);
+        try {
+            load(10);
+            assertEquals(10, bulkVerification.getDeferredCount());
+            // A nested bulk read collects its own rows
+            final BulkVerification nested = BulkVerification.begin(true);
+            load(5);
+            assertEquals(5, nested.getDeferredCount());
+            nested.verify();
+            nested.close();
+            assertEquals(0, nested.getDeferredCount());
+            load(1);
+            assertEquals(11, bulkVerification.getDeferredCount());
+            bulkVerification.verify();
+            assertEquals(0, bulkVerification.getDeferredCount());
+        } finally {
+            bulkVerification.close();
+        }
+    }
+
+    @Test
+    public void testSampledVerification() {
+        ConfigurationHolder.updateConfiguration("databaseprotection.bulkverify.fraction", "0.0");
+        BulkVerification bulkVerification = BulkVerification.begin(true);
+        try {
+            load(100);
+            assertEquals(0, bulkVerification.getDeferredCount());
+        } finally {
+            bulkVerification.close();
+        }
+        bulkVerification = BulkVerification.begin(false);
+        try {
+            load(100);
+            assertEquals("Rows should only be sampled when requested.", 100, bulkVerification.getDeferredCount());
+        } finally {
+            bulkVerification.close();
+        }
+        ConfigurationHolder.updateConfiguration("databaseprotection.bulkverify.fraction.TestData", "0.5");
+        bulkVerification = BulkVerification.begin(true);
+        try {
+            load(1000);
+            final int deferred = bulkVerification.getDeferredCount();
+            assertEquals("Around half of the rows should be verified, was " + deferred, 500, deferred, 150);
+        } finally {
+            bulkVerification.close();
+        }
+    }
+
+    @Test
+    public void testBatchCalculateProtection() {
+        final List<TestData> entities = Arrays.asList(new TestData(), new TestData(), new TestData());
+        final List<String> protections = ProtectedDataBatch.calculateProtection(entities);
+        assertEquals(3, protections.size());
+        // Without database protection available there is nothing to calculate
+        assertNull(protections.get(0));
+        ProtectedDataBatch.protectData(entities);
+        ProtectedDataBatch.verifyData(entities);
+    }
+
+    @Test
+    public void testProtectionMacs() throws Exception {
+        final SecretKeySpec key1 = new SecretKeySpec("key1".getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        final SecretKeySpec key2 = new SecretKeySpec("key2".getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        final byte[] data = "row".getBytes(StandardCharsets.UTF_8);
+        final Mac mac = ProtectionMacs.getMac("HmacSHA256", null, key1);
+        mac.update((byte) 1);
+        assertSame("The same Mac should be reused by a thread.", mac, ProtectionMacs.getMac("HmacSHA256", null, key1));
+        final Mac expected = Mac.getInstance("HmacSHA256");
+        expected.init(key1);
+        assertArrayEquals("Unfinished Mac state should have been reset.", expected.doFinal(data), ProtectionMacs.doFinal("HmacSHA256", null, key1, data));
+        expected.init(key2);
+        assertArrayEquals(expected.doFinal(data), ProtectionMacs.doFinal("HmacSHA256", null, key2, data));
+        ProtectionMacs.clear();
+        assertNotSame(mac, ProtectionMacs.getMac("HmacSHA256", null, key2));
+    }
+}
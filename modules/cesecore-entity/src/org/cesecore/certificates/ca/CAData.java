@@ -27,11 +27,13 @@ import javax.persistence.Table;
 import javax.persistence.Transient;
 
 import org.apache.log4j.Logger;
+import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.dbprotection.ProtectedData;
 import org.cesecore.dbprotection.ProtectionStringBuilder;
 import org.cesecore.util.Base64GetHashMap;
 import org.cesecore.util.Base64PutHashMap;
 import org.cesecore.util.CertTools;
+import org.cesecore.util.CompactMapSerializer;
 
 /**
  * Representation of a CA instance.
@@ -167,6 +169,11 @@ public class CAData extends ProtectedData implements Serializable {
 
 	@Transient
 	public LinkedHashMap<Object, Object> getDataMap() {
+        if (CompactMapSerializer.isCompact(getData())) {
+            @SuppressWarnings("unchecked")
+            final LinkedHashMap<Object, Object> dataMap = new Base64GetHashMap(CompactMapSerializer.decode(getData()));
+            return dataMap;
+        }
         try {
             java.beans.XMLDecoder decoder = new  java.beans.XMLDecoder(new java.io.ByteArrayInputStream(getData().getBytes("UTF8")));
             final Map<?, ?> h = (Map<?, ?>)decoder.readObject();
@@ -187,11 +194,16 @@ public class CAData extends ProtectedData implements Serializable {
             // We must base64 encode string for UTF safety
             final LinkedHashMap<?, ?> a = new Base64PutHashMap();
             a.putAll((LinkedHashMap)dataMap);
-            final java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-            final java.beans.XMLEncoder encoder = new java.beans.XMLEncoder(baos);
-            encoder.writeObject(a);
-            encoder.close();
-            final String data = baos.toString("UTF8");
+            final String data;
+            if (CesecoreConfiguration.isCompactDataEncoding()) {
+                data = CompactMapSerializer.encode(a);
+            } else {
+                final java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
+                final java.beans.XMLEncoder encoder = new java.beans.XMLEncoder(baos);
+                encoder.writeObject(a);
+                encoder.close();
+                data = baos.toString("UTF8");
+            }
             if (log.isDebugEnabled()) {
                 log.debug("Saving CA data with length: "+data.length()+" for CA.");
             }
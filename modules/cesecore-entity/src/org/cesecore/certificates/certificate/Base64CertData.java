@@ -15,6 +15,9 @@ package org.cesecore.certificates.certificate;
 import java.io.Serializable;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateEncodingException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 import javax.persistence.Entity;
 import javax.persistence.EntityManager;
@@ -24,6 +27,7 @@ import javax.persistence.PreUpdate;
 import javax.persistence.Query;
 import javax.persistence.Table;
 import javax.persistence.Transient;
+import javax.persistence.TypedQuery;
 
 import org.apache.log4j.Logger;
 import org.cesecore.dbprotection.ProtectedData;
@@ -187,6 +191,23 @@ public class Base64CertData extends ProtectedData implements Serializable {
         return entityManager.find(Base64CertData.class, fingerprint);
     }
 
+    /**
+     * Looks up many entities by their primary key using one query per {@link CertificateData#MAX_FINGERPRINTS_PER_QUERY} fingerprints.
+     * 
+     * @return the found entities in no particular order, fingerprints without a database row are silently ignored.
+     */
+    public static List<Base64CertData> findByFingerprints(EntityManager entityManager, Collection<String> fingerprints) {
+        final List<Base64CertData> ret = new ArrayList<>(fingerprints.size());
+        final List<String> remaining = new ArrayList<>(fingerprints);
+        for (int i = 0; i < remaining.size(); i += CertificateData.MAX_FINGERPRINTS_PER_QUERY) {
+            final TypedQuery<Base64CertData> query = entityManager.createQuery("SELECT a FROM Base64CertData a WHERE a.fingerprint IN (:fingerprints)",
+                    Base64CertData.class);
+            query.setParameter("fingerprints", remaining.subList(i, Math.min(i + CertificateData.MAX_FINGERPRINTS_PER_QUERY, remaining.size())));
+            ret.addAll(query.getResultList());
+        }
+        return ret;
+    }
+
     /** @return the number of entries with the given parameter */
     public static long getCount(EntityManager entityManager) {
         final Query countQuery = entityManager.createQuery("SELECT COUNT(a) FROM Base64CertData a");
@@ -18,6 +18,7 @@ import java.security.PublicKey;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
@@ -82,6 +83,9 @@ public class CertificateData extends ProtectedData implements Serializable {
 
     private static final Logger log = Logger.getLogger(CertificateData.class);
 
+    /** Upper bound of fingerprints in an "IN" clause of a single query (Oracle rejects lists of more than 1000 expressions) */
+    public static final int MAX_FINGERPRINTS_PER_QUERY = 500;
+
     private String issuerDN;
     private String subjectDN;
     private String subjectAltName = null;  // @since EJBCA 6.6.0
@@ -911,6 +915,23 @@ public class CertificateData extends ProtectedData implements Serializable {
         return entityManager.find(CertificateData.class, fingerprint);
     }
 
+    /**
+     * Looks up many entities by their primary key using one query per {@link #MAX_FINGERPRINTS_PER_QUERY} fingerprints.
+     * 
+     * @return the found entities in no particular order, fingerprints without a database row are silently ignored.
+     */
+    public static List<CertificateData> findByFingerprints(EntityManager entityManager, Collection<String> fingerprints) {
+        final List<CertificateData> ret = new ArrayList<>(fingerprints.size());
+        final List<String> remaining = new ArrayList<>(fingerprints);
+        for (int i = 0; i < remaining.size(); i += MAX_FINGERPRINTS_PER_QUERY) {
+            final TypedQuery<CertificateData> query = entityManager.createQuery("SELECT a FROM CertificateData a WHERE a.fingerprint IN (:fingerprints)",
+                    CertificateData.class);
+            query.setParameter("fingerprints", remaining.subList(i, Math.min(i + MAX_FINGERPRINTS_PER_QUERY, remaining.size())));
+            ret.addAll(query.getResultList());
+        }
+        return ret;
+    }
+
     /** @return return the query results as a Set. */
     @SuppressWarnings("unchecked")
     public static Set<String> findUsernamesBySubjectDNAndIssuerDN(EntityManager entityManager, String subjectDN, String issuerDN) {
@@ -1164,16 +1185,7 @@ public class CertificateData extends ProtectedData implements Serializable {
                 log.debug("Read batch of " + incompleteCertificateDatas.size() + " RevokedCertInfo.");
             }
             for (final Object[] current : incompleteCertificateDatas) {
-                // The order of the results are defined by the SqlResultSetMapping annotation
-                final byte[] fingerprint = ((String)current[0]).getBytes();
-                final byte[] serialNumber = new BigInteger((String)current[1]).toByteArray();
-                final long expireDate = ValueExtractor.extractLongValue(current[2]);
-                final long revocationDate = ValueExtractor.extractLongValue(current[3]);
-                int revocationReason = ValueExtractor.extractIntValue(current[4]);
-                if (revocationReason == -1) {
-                    revocationReason = RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL;
-                }
-                revokedCertInfos.add(new RevokedCertInfo(fingerprint, serialNumber, revocationDate, revocationReason, expireDate));
+                revokedCertInfos.add(toRevokedCertInfo(current));
             }
             firstResult += maxResults;
         }
@@ -1181,6 +1193,101 @@ public class CertificateData extends ProtectedData implements Serializable {
         return revokedCertInfos;
     }
 
+    /**
+     * Reads one page of the revoked certificates of an issuer, ordered by fingerprint. Pages are read by passing the fingerprint of the last
+     * entry of the previous page, so certificates that change status between reads (for example when archived) do not shift the pages.
+     *
+     * @param issuerDN the issuer DN of the revoked certificates
+     * @param afterFingerprint the fingerprint of the last entry of the previous page, or null for the first page
+     * @param maxResults the maximum number of entries to read
+     * @return return the query results as a List<RevokedCertInfo>, an empty list when there are no more entries.
+     */
+    public static List<RevokedCertInfo> getRevokedCertInfosAfter(EntityManager entityManager, String issuerDN, String afterFingerprint, int maxResults) {
+        final Query query = entityManager.createNativeQuery(
+                "SELECT a.fingerprint as fingerprint, a.serialNumber as serialNumber, a.expireDate as expireDate, a.revocationDate as revocationDate, a.revocationReason as revocationReason FROM CertificateData a WHERE "
+                        + "a.issuerDN=:issuerDN AND a.status=:status" + (afterFingerprint == null ? "" : " AND a.fingerprint>:fingerprint") + " ORDER BY a.fingerprint",
+                "RevokedCertInfoSubset");
+        query.setParameter("issuerDN", issuerDN);
+        query.setParameter("status", CertificateConstants.CERT_REVOKED);
+        if (afterFingerprint != null) {
+            query.setParameter("fingerprint", afterFingerprint);
+        }
+        query.setMaxResults(maxResults);
+        @SuppressWarnings("unchecked")
+        final List<Object[]> incompleteCertificateDatas = query.getResultList();
+        final List<RevokedCertInfo> revokedCertInfos = new ArrayList<RevokedCertInfo>(incompleteCertificateDatas.size());
+        for (final Object[] current : incompleteCertificateDatas) {
+            revokedCertInfos.add(toRevokedCertInfo(current));
+        }
+        return revokedCertInfos;
+    }
+
+    /** Columns read for the revocation status index, see {@link RevocationStatusIndex} */
+    private static final String REVOCATION_STATUS_SELECT = "SELECT a.issuerDN, a.fingerprint, a.serialNumber, a.status, a.revocationReason, a.revocationDate, "
+            + "a.expireDate, a.certificateProfileId";
+    private static final String REVOCATION_STATUS_COLUMNS = REVOCATION_STATUS_SELECT + " FROM CertificateData a WHERE ";
+
+    /**
+     * Reads one page of the status of all certificates of an issuer, ordered by fingerprint.
+     *
+     * @param afterFingerprint the fingerprint of the last entry of the previous page, or null for the first page
+     * @return rows of issuerDN, fingerprint, serialNumber, status, revocationReason, revocationDate, expireDate and certificateProfileId
+     */
+    public static List<Object[]> findRevocationStatusByIssuerDN(EntityManager entityManager, String issuerDN, String afterFingerprint, int maxResults) {
+        final TypedQuery<Object[]> query = entityManager.createQuery(REVOCATION_STATUS_COLUMNS + "a.issuerDN=:issuerDN"
+                + (afterFingerprint == null ? "" : " AND a.fingerprint>:fingerprint") + " ORDER BY a.fingerprint", Object[].class);
+        query.setParameter("issuerDN", issuerDN);
+        if (afterFingerprint != null) {
+            query.setParameter("fingerprint", afterFingerprint);
+        }
+        query.setMaxResults(maxResults);
+        return query.getResultList();
+    }
+
+    /** @return the same rows as {@link #findRevocationStatusByIssuerDN}, for the certificates with the given issuer and serial number */
+    public static List<Object[]> findRevocationStatusByIssuerDNSerialNumber(EntityManager entityManager, String issuerDN, String serialNumber) {
+        final TypedQuery<Object[]> query = entityManager.createQuery(REVOCATION_STATUS_COLUMNS + "a.issuerDN=:issuerDN AND a.serialNumber=:serialNumber",
+                Object[].class);
+        query.setParameter("issuerDN", issuerDN);
+        query.setParameter("serialNumber", serialNumber);
+        return query.getResultList();
+    }
+
+    /**
+     * Reads one page of the certificates that have been updated since a given time, ordered by update time and fingerprint.
+     * Pages are read with keyset pagination, since an offset would skip rows when a certificate is updated during the sync and
+     * moves to a later page.
+     *
+     * @param afterUpdateTime the update time of the last row of the previous page, or the time to read changes after for the first page
+     * @param afterFingerprint the fingerprint of the last row of the previous page, or null for the first page
+     * @return the same rows as {@link #findRevocationStatusByIssuerDN}, followed by the updateTime
+     */
+    public static List<Object[]> findRevocationStatusByUpdateTime(EntityManager entityManager, long afterUpdateTime, String afterFingerprint, int maxResults) {
+        final TypedQuery<Object[]> query = entityManager.createQuery(REVOCATION_STATUS_SELECT + ", a.updateTime FROM CertificateData a WHERE "
+                + (afterFingerprint == null ? "a.updateTime>:updateTime" : "(a.updateTime>:updateTime OR (a.updateTime=:updateTime AND a.fingerprint>:fingerprint))")
+                + " ORDER BY a.updateTime, a.fingerprint", Object[].class);
+        query.setParameter("updateTime", afterUpdateTime);
+        if (afterFingerprint != null) {
+            query.setParameter("fingerprint", afterFingerprint);
+        }
+        query.setMaxResults(maxResults);
+        return query.getResultList();
+    }
+
+    /** @return a RevokedCertInfo from a row of the RevokedCertInfoSubset result set mapping */
+    private static RevokedCertInfo toRevokedCertInfo(final Object[] current) {
+        // The order of the results are defined by the SqlResultSetMapping annotation
+        final byte[] fingerprint = ((String)current[0]).getBytes();
+        final byte[] serialNumber = new BigInteger((String)current[1]).toByteArray();
+        final long expireDate = ValueExtractor.extractLongValue(current[2]);
+        final long revocationDate = ValueExtractor.extractLongValue(current[3]);
+        int revocationReason = ValueExtractor.extractIntValue(current[4]);
+        if (revocationReason == -1) {
+            revocationReason = RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL;
+        }
+        return new RevokedCertInfo(fingerprint, serialNumber, revocationDate, revocationReason, expireDate);
+    }
+
     /** @return return the query results as a List. */
     @SuppressWarnings("unchecked")
     public static List<CertificateData> findByExpireDateWithLimit(EntityManager entityManager, long expireDate, int maxNumberOfResults) {
@@ -1378,24 +1485,34 @@ public class CertificateData extends ProtectedData implements Serializable {
      * @param activeNotifiedExpireDateMin The minimal date for expiration notification
      * @param activeNotifiedExpireDateMax The maxmimal date for expiration notification
      * @param activeExpireDateMin the current rune timestamp + the threshold
+     * @param fingerprintFrom the lowest fingerprint to fetch (inclusive), or null to start at the lowest
+     * @param fingerprintTo the fingerprint to stop at (exclusive), or null to fetch up to the highest
      *
      * @return [0] = (String) fingerprint, [1] = (String) username
      */
     @SuppressWarnings("unchecked")
     public static List<Object[]> findExpirationInfo(EntityManager entityManager, Collection<String> cas, Collection<Integer> certificateProfiles,
-            long activeNotifiedExpireDateMin, long activeNotifiedExpireDateMax, long activeExpireDateMin) {
+            long activeNotifiedExpireDateMin, long activeNotifiedExpireDateMax, long activeExpireDateMin, String fingerprintFrom, String fingerprintTo) {
         // We don't select the base64 certificate data here, because it may be a LONG data type which we can't simply select, or we don't want to read all the data.
         final Query query = entityManager.createNativeQuery("SELECT DISTINCT fingerprint as fingerprint, username as username"
                 + " FROM CertificateData WHERE "
                 + "issuerDN IN (:cas) AND "
                 // If the list of certificate profiles is empty, ignore it as a parameter
                 + (!certificateProfiles.isEmpty() ? "certificateProfileId IN (:certificateProfiles) AND" : "")
+                + (fingerprintFrom != null ? " fingerprint>=:fingerprintFrom AND " : "")
+                + (fingerprintTo != null ? " fingerprint<:fingerprintTo AND " : "")
                 + "(expireDate>:activeNotifiedExpireDateMin) AND " + "(expireDate<:activeNotifiedExpireDateMax) AND (status=:status1"
                 + " OR status=:status2) AND (expireDate>=:activeExpireDateMin OR " + "status=:status3)", "FingerprintUsernameSubset");
         query.setParameter("cas", cas);
         if(!certificateProfiles.isEmpty()) {
             query.setParameter("certificateProfiles", certificateProfiles);
         }
+        if (fingerprintFrom != null) {
+            query.setParameter("fingerprintFrom", fingerprintFrom);
+        }
+        if (fingerprintTo != null) {
+            query.setParameter("fingerprintTo", fingerprintTo);
+        }
         query.setParameter("activeNotifiedExpireDateMin", activeNotifiedExpireDateMin);
         query.setParameter("activeNotifiedExpireDateMax", activeNotifiedExpireDateMax);
         query.setParameter("status1", CertificateConstants.CERT_ACTIVE);
@@ -40,9 +40,13 @@ public abstract class CertificateStatusHelper {
             final Integer tmp = certificateData.getCertificateProfileId();
             certProfileId = tmp != null ? tmp.intValue() : CertificateProfileConstants.CERTPROFILE_NO_PROFILE;
         }
-        final int status = certificateData.getStatus();
-        final int revReason = certificateData.getRevocationReason();
-        final long revDate = certificateData.getRevocationDate();
+        return getCertificateStatus(certificateData.getStatus(), certificateData.getRevocationReason(), certificateData.getRevocationDate(), certProfileId);
+    }
+
+    /**
+     * Same as {@link #getCertificateStatus(CertificateData)}, for the raw values of a CertificateData row.
+     */
+    public static CertificateStatus getCertificateStatus(final int status, final int revReason, final long revDate, final int certProfileId) {
         if (status == CertificateConstants.CERT_REVOKED) {
             return new CertificateStatus(CertificateStatus.REVOKED.toString(), revDate, revReason, certProfileId);
         }
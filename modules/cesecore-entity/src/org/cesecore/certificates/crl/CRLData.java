@@ -28,6 +28,7 @@ import javax.persistence.Table;
 import javax.persistence.Transient;
 
 import org.apache.log4j.Logger;
+import org.cesecore.dbprotection.BulkVerification;
 import org.cesecore.dbprotection.ProtectedData;
 import org.cesecore.dbprotection.ProtectionStringBuilder;
 import org.cesecore.util.Base64;
@@ -271,9 +272,15 @@ public class CRLData extends ProtectedData implements Serializable {
     public static List<CRLData> findByIssuerDN(EntityManager entityManager, String issuerDN) {
         final Query query = entityManager.createQuery("SELECT a FROM CRLData a WHERE a.issuerDN=:issuerDN");
         query.setParameter("issuerDN", issuerDN);
-        @SuppressWarnings("unchecked")
-        List<CRLData> resultList = query.getResultList();
-        return resultList;
+        final BulkVerification bulkVerification = BulkVerification.begin(true);
+        try {
+            @SuppressWarnings("unchecked")
+            List<CRLData> resultList = query.getResultList();
+            bulkVerification.verify();
+            return resultList;
+        } finally {
+            bulkVerification.close();
+        }
     }
 
     /**
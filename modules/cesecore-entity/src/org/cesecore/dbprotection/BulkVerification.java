@@ -0,0 +1,123 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.dbprotection;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.cesecore.config.CesecoreConfiguration;
+
+/**
+ * Defers the integrity verification of entities that are loaded by the current thread, so that many rows read by one query are verified
+ * in one batch through {@link ProtectedDataBatch#verifyData(List)} instead of one at a time when each row is loaded.
+ * 
+ * Read paths that only present data, like searches, can also sample the rows that are verified according to
+ * databaseprotection.bulkverify.fraction. Read paths that must verify all data, like audit log verification, should not sample.
+ * 
+ * Usage:
+ * <pre>
+ * final BulkVerification bulkVerification = BulkVerification.begin(true);
+ * try {
+ *     result = query.getResultList();
+ *     bulkVerification.verify();
+ * } finally {
+ *     bulkVerification.close();
+ * }
+ * </pre>
+ * 
+ * @version $Id$
+ */
+public final class BulkVerification {
+
+    private static final ThreadLocal<BulkVerification> current = new ThreadLocal<BulkVerification>();
+
+    private final BulkVerification outer;
+    private final boolean sample;
+    private final List<ProtectedData> deferred = new ArrayList<ProtectedData>();
+    private final Map<String, Double> fractions = new HashMap<String, Double>();
+
+    private BulkVerification(final BulkVerification outer, final boolean sample) {
+        this.outer = outer;
+        this.sample = sample;
+    }
+
+    /**
+     * Starts deferring verification of entities loaded by this thread, until {@link #close()} is invoked.
+     * @param sample true if only the configured fraction of the loaded rows should be verified
+     */
+    public static BulkVerification begin(final boolean sample) {
+        final BulkVerification ret = new BulkVerification(current.get(), sample);
+        current.set(ret);
+        return ret;
+    }
+
+    /**
+     * Invoked when an entity is loaded.
+     * @return true if the verification of the entity has been deferred or skipped, false if it should be verified right away
+     */
+    static boolean onLoad(final ProtectedData entity) {
+        final BulkVerification bulkVerification = current.get();
+        if (bulkVerification == null) {
+            return false;
+        }
+        if (bulkVerification.sample) {
+            final double fraction = bulkVerification.getFraction(entity.getTableName());
+            if (fraction < 1.0 && ThreadLocalRandom.current().nextDouble() >= fraction) {
+                return true;
+            }
+        }
+        bulkVerification.deferred.add(entity);
+        return true;
+    }
+
+    private double getFraction(final String tableName) {
+        Double ret = fractions.get(tableName);
+        if (ret == null) {
+            ret = Double.valueOf(CesecoreConfiguration.getDatabaseIntegrityBulkVerificationFraction(tableName));
+            fractions.put(tableName, ret);
+        }
+        return ret.doubleValue();
+    }
+
+    /** @return the number of loaded entities waiting for verification */
+    public int getDeferredCount() {
+        return deferred.size();
+    }
+
+    /**
+     * Verifies all entities that have been loaded since the last call, in one batch.
+     * @throws DatabaseProtectionException for the first entity that fails verification
+     */
+    public void verify() {
+        if (!deferred.isEmpty()) {
+            final List<ProtectedData> entities = new ArrayList<ProtectedData>(deferred);
+            deferred.clear();
+            ProtectedDataBatch.verifyData(entities);
+        }
+    }
+
+    /** Stops deferring verification. Entities that have not been verified by {@link #verify()} are discarded unverified. */
+    public void close() {
+        deferred.clear();
+        if (current.get() == this) {
+            if (outer == null) {
+                current.remove();
+            } else {
+                current.set(outer);
+            }
+        }
+    }
+}
@@ -75,6 +75,9 @@ public abstract class ProtectedData {
     
     /** Optimization variable so we don't have to check for existence of implClass for every construction of an entity object */
     private static volatile boolean integrityExists = true;
+
+    /** True if the protection was calculated by ProtectedDataBatch and should not be calculated again when the entity is persisted */
+    private transient boolean protectedInBatch = false;
     
     /** A default constructor is needed by JPA.
      * This constructor initializes the available database integrity protection module, if any is available 
@@ -149,6 +152,10 @@ public abstract class ProtectedData {
      * @throws DatabaseProtectionException (RuntimeException) on error creating integrity protection.
      */
     protected void protectData() {
+        if (protectedInBatch) {
+            protectedInBatch = false;
+            return;
+        }
         impl.protectData(this);
     }
 
@@ -158,7 +165,10 @@ public abstract class ProtectedData {
      * @throws DatabaseProtectionException (RuntimeException) on verify error.
      */
     protected void verifyData() {
-        impl.verifyData(this);
+        // Rows read in bulk are verified in batches, or sampled, by BulkVerification
+        if (!BulkVerification.onLoad(this)) {
+            impl.verifyData(this);
+        }
     }
     
     /** Method that calculates integrity protection of an entity, but does not store it anywhere. Used primarily to make test protection
@@ -168,4 +178,12 @@ public abstract class ProtectedData {
     public String calculateProtection() {
         return impl.calculateProtection(this);
     }
+
+    ProtectedDataImpl getProtectedDataImpl() {
+        return impl;
+    }
+
+    void setProtectedInBatch() {
+        protectedInBatch = true;
+    }
 }
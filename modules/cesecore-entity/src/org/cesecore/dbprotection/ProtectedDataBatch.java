@@ -0,0 +1,103 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.dbprotection;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes and verifies database integrity protection for many entities at once. The entities are grouped per table and handed to the
+ * protection implementation in one call per table if it implements {@link ProtectedDataBatchImpl}, otherwise they are processed one by one.
+ * 
+ * @version $Id$
+ */
+public final class ProtectedDataBatch {
+
+    private ProtectedDataBatch() {}
+
+    /**
+     * Creates the integrity protection of all the given entities. The protection is not calculated again when the entities are persisted
+     * right afterwards, so they must not be modified in between.
+     */
+    public static void protectData(final List<? extends ProtectedData> entities) {
+        for (final List<ProtectedData> tableEntities : groupByTable(entities).values()) {
+            final ProtectedDataImpl impl = tableEntities.get(0).getProtectedDataImpl();
+            if (impl instanceof ProtectedDataBatchImpl) {
+                ((ProtectedDataBatchImpl) impl).protectData(tableEntities);
+            } else {
+                for (final ProtectedData entity : tableEntities) {
+                    entity.getProtectedDataImpl().protectData(entity);
+                }
+            }
+            for (final ProtectedData entity : tableEntities) {
+                entity.setProtectedInBatch();
+            }
+        }
+    }
+
+    /**
+     * Verifies the integrity protection of all the given entities.
+     * @throws DatabaseProtectionException for the first entity that fails verification
+     */
+    public static void verifyData(final List<? extends ProtectedData> entities) {
+        for (final List<ProtectedData> tableEntities : groupByTable(entities).values()) {
+            final ProtectedDataImpl impl = tableEntities.get(0).getProtectedDataImpl();
+            if (impl instanceof ProtectedDataBatchImpl) {
+                ((ProtectedDataBatchImpl) impl).verifyData(tableEntities);
+            } else {
+                for (final ProtectedData entity : tableEntities) {
+                    entity.getProtectedDataImpl().verifyData(entity);
+                }
+            }
+        }
+    }
+
+    /** @return the calculated protection of each of the given entities, in the same order as the entities */
+    public static List<String> calculateProtection(final List<? extends ProtectedData> entities) {
+        final Map<ProtectedData, String> protections = new IdentityHashMap<ProtectedData, String>(entities.size());
+        for (final List<ProtectedData> tableEntities : groupByTable(entities).values()) {
+            final ProtectedDataImpl impl = tableEntities.get(0).getProtectedDataImpl();
+            if (impl instanceof ProtectedDataBatchImpl) {
+                final List<String> tableProtections = ((ProtectedDataBatchImpl) impl).calculateProtection(tableEntities);
+                for (int i=0; i<tableEntities.size(); i++) {
+                    protections.put(tableEntities.get(i), tableProtections.get(i));
+                }
+            } else {
+                for (final ProtectedData entity : tableEntities) {
+                    protections.put(entity, entity.getProtectedDataImpl().calculateProtection(entity));
+                }
+            }
+        }
+        final List<String> ret = new ArrayList<String>(entities.size());
+        for (final ProtectedData entity : entities) {
+            ret.add(protections.get(entity));
+        }
+        return ret;
+    }
+
+    private static Map<String, List<ProtectedData>> groupByTable(final List<? extends ProtectedData> entities) {
+        final Map<String, List<ProtectedData>> ret = new LinkedHashMap<String, List<ProtectedData>>();
+        for (final ProtectedData entity : entities) {
+            List<ProtectedData> tableEntities = ret.get(entity.getTableName());
+            if (tableEntities == null) {
+                tableEntities = new ArrayList<ProtectedData>();
+                ret.put(entity.getTableName(), tableEntities);
+            }
+            tableEntities.add(entity);
+        }
+        return ret;
+    }
+}
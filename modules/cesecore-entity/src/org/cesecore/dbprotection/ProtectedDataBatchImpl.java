@@ -0,0 +1,36 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.dbprotection;
+
+import java.util.List;
+
+/**
+ * Optional extension of {@link ProtectedDataImpl} for implementations that can protect and verify many rows of the same table at once,
+ * for example by reusing the same key and Mac for the whole batch. Used through {@link ProtectedDataBatch}.
+ * 
+ * @version $Id$
+ */
+public interface ProtectedDataBatchImpl extends ProtectedDataImpl {
+
+    /** Creates and sets the database integrity protection of all the given entities, or does nothing */
+    void protectData(List<? extends ProtectedData> objs);
+
+    /**
+     * Reads and verifies the database integrity protection of all the given entities, or does nothing
+     * @throws DatabaseProtectionException for the first entity that fails verification
+     */
+    void verifyData(List<? extends ProtectedData> objs);
+
+    /** @return the calculated protection strings of the given entities, in the same order */
+    List<String> calculateProtection(List<? extends ProtectedData> objs);
+}
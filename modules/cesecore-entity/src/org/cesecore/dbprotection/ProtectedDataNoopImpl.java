@@ -12,11 +12,13 @@
  *************************************************************************/
 package org.cesecore.dbprotection;
 
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @version $Id$
  */
-public class ProtectedDataNoopImpl implements ProtectedDataImpl {
+public class ProtectedDataNoopImpl implements ProtectedDataBatchImpl {
 
     @Override
     public void setTableName(final String table) {
@@ -39,4 +41,23 @@ public class ProtectedDataNoopImpl implements ProtectedDataImpl {
         return null;
     }
 
+    @Override
+    public void protectData(final List<? extends ProtectedData> objs) {
+        // Do nothing
+    }
+
+    @Override
+    public void verifyData(final List<? extends ProtectedData> objs) {
+        // Do nothing
+    }
+
+    @Override
+    public List<String> calculateProtection(final List<? extends ProtectedData> objs) {
+        // Do nothing
+        final List<String> ret = new ArrayList<String>(objs.size());
+        for (int i=0; i<objs.size(); i++) {
+            ret.add(null);
+        }
+        return ret;
+    }
 }
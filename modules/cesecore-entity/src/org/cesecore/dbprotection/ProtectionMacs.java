@@ -0,0 +1,88 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.dbprotection;
+
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.Mac;
+
+/**
+ * Per thread cache of initialized Mac instances for database integrity protection. Getting a Mac from the provider and initializing it with
+ * the key costs more than the HMAC of a typical row, so the same Mac is reused for all rows protected or verified by a thread with the same key.
+ * 
+ * @version $Id$
+ */
+public final class ProtectionMacs {
+
+    /** Mac and the key it was initialized with */
+    private static class CachedMac {
+        private final Mac mac;
+        private Key key;
+
+        private CachedMac(final Mac mac) {
+            this.mac = mac;
+        }
+    }
+
+    private static final ThreadLocal<Map<String, CachedMac>> macs = new ThreadLocal<Map<String, CachedMac>>() {
+        @Override
+        protected Map<String, CachedMac> initialValue() {
+            return new HashMap<String, CachedMac>();
+        }
+    };
+
+    private ProtectionMacs() {}
+
+    /**
+     * Returns a Mac of the current thread that is initialized with the given key. The Mac must only be used by the current thread and
+     * must be reset, for example by calling doFinal, before it is returned again.
+     * 
+     * @param algorithm Mac algorithm, for example HmacSHA256
+     * @param provider name of the provider, or null for the default provider
+     * @param key secret key, compared by identity with the key of the cached instance
+     */
+    public static Mac getMac(final String algorithm, final String provider, final Key key) throws NoSuchAlgorithmException, NoSuchProviderException,
+            InvalidKeyException {
+        final Map<String, CachedMac> threadMacs = macs.get();
+        final String cacheKey = provider == null ? algorithm : algorithm + ";" + provider;
+        CachedMac cachedMac = threadMacs.get(cacheKey);
+        if (cachedMac == null) {
+            cachedMac = new CachedMac(provider == null ? Mac.getInstance(algorithm) : Mac.getInstance(algorithm, provider));
+            threadMacs.put(cacheKey, cachedMac);
+        }
+        if (cachedMac.key != key) {
+            cachedMac.mac.init(key);
+            cachedMac.key = key;
+        } else {
+            // In case a previous user failed before completing the Mac
+            cachedMac.mac.reset();
+        }
+        return cachedMac.mac;
+    }
+
+    /** @return the Mac over the given data, using a cached Mac of the current thread */
+    public static byte[] doFinal(final String algorithm, final String provider, final Key key, final byte[] data) throws NoSuchAlgorithmException,
+            NoSuchProviderException, InvalidKeyException {
+        return getMac(algorithm, provider, key).doFinal(data);
+    }
+
+    /** Removes the Macs of the current thread, for example after the protection key has been changed */
+    public static void clear() {
+        macs.remove();
+    }
+}
@@ -26,10 +26,12 @@ import javax.persistence.PreUpdate;
 import javax.persistence.Table;
 import javax.persistence.Transient;
 
+import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.dbprotection.ProtectedData;
 import org.cesecore.dbprotection.ProtectionStringBuilder;
 import org.cesecore.util.Base64GetHashMap;
 import org.cesecore.util.Base64PutHashMap;
+import org.cesecore.util.CompactMapSerializer;
 
 /**
  * Database representation of an InternalKeyBinding.
@@ -175,6 +177,9 @@ public class InternalKeyBindingData extends ProtectedData implements Serializabl
     @Transient
     @SuppressWarnings("unchecked")
     public LinkedHashMap<Object, Object> getDataMap() {
+        if (CompactMapSerializer.isCompact(getRawData())) {
+            return new Base64GetHashMap(CompactMapSerializer.decode(getRawData()));
+        }
         try {
             java.beans.XMLDecoder decoder = new  java.beans.XMLDecoder(new java.io.ByteArrayInputStream(getRawData().getBytes("UTF8")));
             final Map<?, ?> h = (Map<?, ?>)decoder.readObject();
@@ -194,6 +199,10 @@ public class InternalKeyBindingData extends ProtectedData implements Serializabl
             // We must base64 encode string for UTF safety
             final LinkedHashMap<?, ?> a = new Base64PutHashMap();
             a.putAll((LinkedHashMap)dataMap);
+            if (CesecoreConfiguration.isCompactDataEncoding()) {
+                setRawData(CompactMapSerializer.encode(a));
+                return;
+            }
             final java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
             final java.beans.XMLEncoder encoder = new java.beans.XMLEncoder(baos);
             encoder.writeObject(a);
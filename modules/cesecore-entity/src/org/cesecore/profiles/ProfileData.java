@@ -25,11 +25,13 @@ import javax.persistence.Entity;
 import javax.persistence.Table;
 import javax.persistence.Transient;
 
+import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.dbprotection.ProtectedData;
 import org.cesecore.dbprotection.ProtectionStringBuilder;
 import org.cesecore.profiles.Profile;
 import org.cesecore.util.Base64GetHashMap;
 import org.cesecore.util.Base64PutHashMap;
+import org.cesecore.util.CompactMapSerializer;
 
 /**
  * Implementation of the "ProfileData" table in the database
@@ -91,6 +93,9 @@ public class ProfileData extends ProtectedData implements Serializable {
     @Transient
     @SuppressWarnings("unchecked")
     public LinkedHashMap<Object, Object> getDataMap() {
+        if (CompactMapSerializer.isCompact(getRawData())) {
+            return new Base64GetHashMap(CompactMapSerializer.decode(getRawData()));
+        }
         try {
             XMLDecoder decoder = new  XMLDecoder(new ByteArrayInputStream(getRawData().getBytes("UTF8")));
             final Map<?, ?> h = (Map<?, ?>)decoder.readObject();
@@ -110,6 +115,10 @@ public class ProfileData extends ProtectedData implements Serializable {
             // We must base64 encode string for UTF safety
             final LinkedHashMap<?, ?> a = new Base64PutHashMap();
             a.putAll((LinkedHashMap)dataMap);
+            if (CesecoreConfiguration.isCompactDataEncoding()) {
+                setRawData(CompactMapSerializer.encode(a));
+                return;
+            }
             final ByteArrayOutputStream baos = new ByteArrayOutputStream();
             final XMLEncoder encoder = new XMLEncoder(baos);
             encoder.writeObject(a);
@@ -29,10 +29,12 @@ import javax.persistence.Table;
 import javax.persistence.Transient;
 
 import org.apache.commons.lang.StringUtils;
+import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.dbprotection.ProtectedData;
 import org.cesecore.dbprotection.ProtectionStringBuilder;
 import org.cesecore.util.Base64GetHashMap;
 import org.cesecore.util.Base64PutHashMap;
+import org.cesecore.util.CompactMapSerializer;
 
 /**
  * Represents a role.
@@ -96,6 +98,9 @@ public class RoleData extends ProtectedData implements Serializable {
     @Transient
     @SuppressWarnings("unchecked")
     public LinkedHashMap<Object, Object> getDataMap() {
+        if (CompactMapSerializer.isCompact(getRawData())) {
+            return new Base64GetHashMap(CompactMapSerializer.decode(getRawData()));
+        }
         try (final XMLDecoder decoder = new XMLDecoder(new ByteArrayInputStream(getRawData().getBytes(StandardCharsets.UTF_8)));) {
             // Handle Base64 encoded string values
             return new Base64GetHashMap((Map<?, ?>)decoder.readObject());
@@ -104,6 +109,10 @@ public class RoleData extends ProtectedData implements Serializable {
 
     @Transient
     public void setDataMap(final LinkedHashMap<Object, Object> dataMap) {
+        if (CesecoreConfiguration.isCompactDataEncoding()) {
+            setRawData(CompactMapSerializer.encode(new Base64PutHashMap(dataMap)));
+            return;
+        }
         final ByteArrayOutputStream baos = new ByteArrayOutputStream();
         try (final XMLEncoder encoder = new XMLEncoder(baos);){
             // We must base64 encode string for UTF safety
@@ -0,0 +1,188 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.cmp.CMPObjectIdentifiers;
+import org.bouncycastle.asn1.cmp.GenMsgContent;
+import org.bouncycastle.asn1.cmp.InfoTypeAndValue;
+import org.bouncycastle.asn1.cmp.PKIBody;
+import org.bouncycastle.asn1.cmp.PKIHeader;
+import org.bouncycastle.asn1.cmp.PKIHeaderBuilder;
+import org.bouncycastle.asn1.cmp.PKIMessage;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.ejbca.core.protocol.cmp.client.CMPSendTCP;
+
+/**
+ * Load test of the CMP TCP transport. Each thread repeatedly opens a connection, sends a number of CMP messages and closes the
+ * connection, for a given time. Reports connections and messages per second, and the latency percentiles of the messages.
+ *
+ * Unless a file with a DER encoded CMP message is given, an unprotected general message is sent, which is answered with an
+ * error message by the CA. That is enough to load the transport, since each message is still dispatched to the CMP handler.
+ *
+ * @version $Id$
+ */
+class CMPTcpLoadTest extends ClientToolBox {
+
+    /** Latencies in microseconds, recorded by a single thread */
+    private static class Latencies {
+        long[] values = new long[1024];
+        int size = 0;
+        void add(final long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    private static class LoadThread extends Thread {
+        private final String hostName;
+        private final int port;
+        private final int messagesPerConnection;
+        private final byte[] message;
+        private final long endTime;
+        private final CountDownLatch start;
+        private final AtomicLong connections;
+        private final AtomicLong failures;
+        final Latencies latencies = new Latencies();
+
+        LoadThread(final String hostName, final int port, final int messagesPerConnection, final byte[] message, final long endTime,
+                final CountDownLatch start, final AtomicLong connections, final AtomicLong failures) {
+            this.hostName = hostName;
+            this.port = port;
+            this.messagesPerConnection = messagesPerConnection;
+            this.message = message;
+            this.endTime = endTime;
+            this.start = start;
+            this.connections = connections;
+            this.failures = failures;
+        }
+
+        @Override
+        public void run() {
+            try {
+                start.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+            while (System.currentTimeMillis() < endTime) {
+                try (final Socket socket = new Socket(hostName, port)) {
+                    socket.setTcpNoDelay(true);
+                    for (int i = 0; i < messagesPerConnection; i++) {
+                        final long startTime = System.nanoTime();
+                        final CMPSendTCP send = new CMPSendTCP(message, socket, false);
+                        latencies.add((System.nanoTime() - startTime) / 1000);
+                        if (send.version != 10 || send.response.length != send.bytesRead) {
+                            failures.incrementAndGet();
+                            break;
+                        }
+                        if ((send.flags & 0x01) > 0) {
+                            // The server wants to close the connection
+                            break;
+                        }
+                    }
+                    connections.incrementAndGet();
+                } catch (IOException e) {
+                    failures.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void execute(String[] args) {
+        if (args.length < 3) {
+            System.out.println(args[0] + " <host name> <port> [<number of concurrent connections>] [<test time in seconds>] [<messages per connection>] [<file with DER encoded CMP message>]");
+            System.out.println("Default is 100 concurrent connections during 60 seconds, with one unprotected general message per connection.");
+            return;
+        }
+        final String hostName = args[1];
+        final int port = Integer.parseInt(args[2].trim());
+        final int threads = args.length > 3 ? Integer.parseInt(args[3].trim()) : 100;
+        final int seconds = args.length > 4 ? Integer.parseInt(args[4].trim()) : 60;
+        final int messagesPerConnection = args.length > 5 ? Integer.parseInt(args[5].trim()) : 1;
+        try {
+            final byte[] message = args.length > 6 ? FileUtils.readFileToByteArray(new File(args[6])) : createGeneralMessage();
+            final CountDownLatch start = new CountDownLatch(1);
+            final AtomicLong connections = new AtomicLong();
+            final AtomicLong failures = new AtomicLong();
+            final long startTime = System.currentTimeMillis();
+            final long endTime = startTime + seconds * 1000L;
+            final LoadThread[] loadThreads = new LoadThread[threads];
+            for (int i = 0; i < threads; i++) {
+                loadThreads[i] = new LoadThread(hostName, port, messagesPerConnection, message, endTime, start, connections, failures);
+                loadThreads[i].start();
+            }
+            start.countDown();
+            for (final LoadThread loadThread : loadThreads) {
+                loadThread.join();
+            }
+            final double elapsedSeconds = (System.currentTimeMillis() - startTime) / 1000.0;
+            int total = 0;
+            for (final LoadThread loadThread : loadThreads) {
+                total += loadThread.latencies.size;
+            }
+            final long[] all = new long[total];
+            int offset = 0;
+            for (final LoadThread loadThread : loadThreads) {
+                System.arraycopy(loadThread.latencies.values, 0, all, offset, loadThread.latencies.size);
+                offset += loadThread.latencies.size;
+            }
+            Arrays.sort(all);
+            System.out.println("Concurrent connections: " + threads + ", messages per connection: " + messagesPerConnection + ", time: " + elapsedSeconds + " s");
+            System.out.println("Connections: " + connections.get() + " (" + String.format("%.1f", connections.get() / elapsedSeconds) + " per second)");
+            System.out.println("Messages: " + total + " (" + String.format("%.1f", total / elapsedSeconds) + " per second)");
+            System.out.println("Failures: " + failures.get());
+            if (total > 0) {
+                System.out.println("Latency (ms): p50 " + getPercentile(all, 50) + ", p90 " + getPercentile(all, 90) + ", p99 " + getPercentile(all, 99)
+                        + ", max " + all[total - 1] / 1000.0);
+            }
+        } catch (SecurityException e) {
+            throw e; // System.exit() called. Not thrown in normal operation but thrown by the custom SecurityManager when clientToolBoxTest is executed. Must not be caught.
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** @return the percentile in milliseconds, using the nearest rank */
+    private static double getPercentile(final long[] sortedMicros, final int percentile) {
+        final int rank = (int) Math.ceil(percentile / 100.0 * sortedMicros.length);
+        return sortedMicros[Math.max(0, rank - 1)] / 1000.0;
+    }
+
+    private static byte[] createGeneralMessage() throws IOException {
+        final PKIHeaderBuilder headerBuilder = new PKIHeaderBuilder(PKIHeader.CMP_2000, new GeneralName(new X500Name("CN=CMPTcpLoadTest")),
+                new GeneralName(new X500Name("CN=CA")));
+        headerBuilder.setMessageTime(new ASN1GeneralizedTime(new Date()));
+        headerBuilder.setTransactionID(new DEROctetString(new byte[16]));
+        final GenMsgContent content = new GenMsgContent(new InfoTypeAndValue(CMPObjectIdentifiers.it_currentCRL));
+        return new PKIMessage(headerBuilder.build(), new PKIBody(PKIBody.TYPE_GEN_MSG, content)).getEncoded();
+    }
+
+    @Override
+    protected String getName() {
+        return "CMPTcpLoadTest";
+    }
+}
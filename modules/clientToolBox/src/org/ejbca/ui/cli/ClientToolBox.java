@@ -54,6 +54,7 @@ public abstract class ClientToolBox {
         		new CvcWsRaCli(), 
         		new CMPTest(),
         		new CMPKeyUpdateStressTest(),
+        		new CMPTcpLoadTest(),
         		new SCEPTest(),
                 new OCSPActivate(),
                 new DBManager(), 
@@ -13,9 +13,11 @@
 
 package org.ejbca.core.protocol.crlstore;
 
+import java.security.cert.CRLException;
 import java.security.cert.X509Certificate;
-import java.util.HashMap;
+import java.util.Date;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -23,13 +25,21 @@ import org.apache.log4j.Logger;
 import org.cesecore.certificates.ca.internal.CaCertificateCache;
 import org.cesecore.certificates.certificate.HashID;
 import org.cesecore.certificates.crl.CRLInfo;
+import org.cesecore.certificates.crl.CrlStoreChangeCounter;
 import org.cesecore.certificates.crl.CrlStoreSessionLocal;
+import org.cesecore.certificates.crl.StreamingCrlParser;
 import org.cesecore.util.CertTools;
+import org.ejbca.config.WebConfiguration;
 
 /**
  * An implementation of this is managing a cache of CRLs. The implementation should be optimized for quick lookups of CRLs that the 
  * VA responder needs to fetch.
  *
+ * The latest CRL and delta CRL of each CA are kept together with what is needed to answer conditional requests for them. A cached
+ * CRL is returned without asking the database until a CRL has been stored on this node or until crlstore.cachetime has passed, see
+ * {@link WebConfiguration#getCrlStoreCacheTime()}. After that the CRL number of the latest CRL is read from the database, and the CRL
+ * itself only if it has changed.
+ *
  * @version $Id$
  */
 public class CRLCache {
@@ -40,24 +50,83 @@ public class CRLCache {
 	
 	private final CrlStoreSessionLocal crlSession;
 	private final CaCertificateCache certCache;
-	final private Map<Integer, CRLEntity> crls = new HashMap<Integer, CRLEntity>();
-	final private Map<Integer, CRLEntity> deltaCrls = new HashMap<Integer, CRLEntity>();
-	private class CRLEntity {
-		final CRLInfo crlInfo;
-		final byte encoded[];
+	private final long cacheTime;
+	final private Map<Integer, CRLEntity> crls = new ConcurrentHashMap<Integer, CRLEntity>();
+	final private Map<Integer, CRLEntity> deltaCrls = new ConcurrentHashMap<Integer, CRLEntity>();
+
+	/**
+	 * An encoded CRL and the values of the HTTP headers that are sent with it. The encoded CRL is never modified, so it can be written
+	 * to any number of responses as it is.
+	 */
+	public static class CRLEntity {
+		private final byte encoded[];
+		private final int crlNumber;
+		private final String eTag;
+		private final Date thisUpdate;
+		private final Date nextUpdate;
+		/** Time when the entity was read or found to be the latest CRL in the database */
+		private final long checkedTime;
+		/** Value of the CrlStoreChangeCounter when the entity was read or found to be the latest CRL in the database */
+		private final long checkedCount;
+
+		private CRLEntity(byte[] encoded, int crlNumber, String eTag, Date thisUpdate, Date nextUpdate, long checkedTime, long checkedCount) {
+			this.encoded = encoded;
+			this.crlNumber = crlNumber;
+			this.eTag = eTag;
+			this.thisUpdate = thisUpdate;
+			this.nextUpdate = nextUpdate;
+			this.checkedTime = checkedTime;
+			this.checkedCount = checkedCount;
+		}
+
 		/**
-		 * @param crlInfo
-		 * @param encoded
+		 * @param encoded the DER encoded CRL
+		 * @param checkedCount value of the CrlStoreChangeCounter before the CRL was read from the database
+		 * @return the entity or null if the CRL can not be parsed
 		 */
-		CRLEntity(CRLInfo crlInfo, byte[] encoded) {
-			super();
-			this.crlInfo = crlInfo;
-			this.encoded = encoded;
+		private static CRLEntity fromEncoded(byte[] encoded, long checkedCount) {
+			final StreamingCrlParser crl;
+			try {
+				crl = new StreamingCrlParser(encoded);
+			} catch (CRLException e) {
+				log.info("Stored CRL could not be parsed: " + e.getMessage());
+				return null;
+			}
+			final int crlNumber = crl.getCrlNumber().intValue();
+			final String eTag = "\"" + crlNumber + '-' + CertTools.getFingerprintAsString(encoded) + "\"";
+			return new CRLEntity(encoded, crlNumber, eTag, crl.getThisUpdate(), crl.getNextUpdate(), System.currentTimeMillis(), checkedCount);
+		}
+
+		/** @return a copy that has been checked now */
+		private CRLEntity checked(long checkedCount) {
+			return new CRLEntity(encoded, crlNumber, eTag, thisUpdate, nextUpdate, System.currentTimeMillis(), checkedCount);
+		}
+
+		/** @return the DER encoded CRL, which must not be modified */
+		public byte[] getEncoded() {
+			return encoded;
+		}
+
+		public int getCrlNumber() {
+			return crlNumber;
+		}
+
+		/** @return a strong entity tag made of the CRL number and the SHA-1 fingerprint of the CRL, including the quotes */
+		public String getETag() {
+			return eTag;
+		}
+
+		public Date getThisUpdate() {
+			return thisUpdate;
+		}
+
+		/** @return the nextUpdate of the CRL, or null if it has none */
+		public Date getNextUpdate() {
+			return nextUpdate;
 		}
 	}
-	/** We need an object to synchronize around when rebuilding and reading the cache. When rebuilding the cache no thread
-	 * can be allowed to read the cache, since the cache will be in an inconsistent state. In the normal case we want to use
-	 * as fast objects as possible (HashMap) for reading fast.
+	/** Only one thread at a time reads CRLs from the database, so that many requests for a new CRL do not all read it.
+	 * Cached CRLs that are fresh are returned without taking the lock.
 	 */
 	final private Lock rebuildlock = new ReentrantLock();
 
@@ -87,6 +156,7 @@ public class CRLCache {
 		super();
 		this.crlSession = crlSession;
 		this.certCache = certCache;
+		this.cacheTime = WebConfiguration.getCrlStoreCacheTime();
 	}
 
 	/**
@@ -95,7 +165,7 @@ public class CRLCache {
      * @param crlNumber specific crlNumber of the CRL to be retrieved, when not the latest, or -1 for the latest
      * @return CRL or null if the CRL does not exist in the cache.
      */
-	public byte[] findBySubjectKeyIdentifier(HashID id, boolean isDelta, int crlNumber) {
+	public CRLEntity findBySubjectKeyIdentifier(HashID id, boolean isDelta, int crlNumber) {
 		return findCRL(certCache.findBySubjectKeyIdentifier(id), isDelta, crlNumber);
 	}
 
@@ -105,11 +175,11 @@ public class CRLCache {
      * @param crlNumber specific crlNumber of the CRL to be retrieved, when not the latest, or -1 for the latest
      * @return CRL or null if the CRL does not exist in the cache.
      */
-	public byte[] findByIssuerDN(HashID id, boolean isDelta, int crlNumber) {
+	public CRLEntity findByIssuerDN(HashID id, boolean isDelta, int crlNumber) {
 		return findCRL(certCache.findLatestBySubjectDN(id), isDelta, crlNumber);
 	}
 
-	private byte[] findCRL(X509Certificate caCert, boolean isDelta, int crlNumber) {
+	private CRLEntity findCRL(X509Certificate caCert, boolean isDelta, int crlNumber) {
 		if ( caCert==null ) {
 			if (log.isDebugEnabled()) {
 				log.debug("No CA certificate, returning null.");
@@ -118,43 +188,62 @@ public class CRLCache {
 		}
 		final HashID id = HashID.getFromSubjectDN(caCert);
 		final String issuerDN = CertTools.getSubjectDN(caCert);
+		if (crlNumber > -1) {
+			if (log.isDebugEnabled()) {
+				log.debug("Getting CRL with CRL number "+crlNumber);
+			}
+			// Only latest CRLs are cached, these should be the ones accessed regularly, and we don't want to fill the cache with old CRLs
+			final byte[] encoded = this.crlSession.getCRL(issuerDN, crlNumber);
+			return encoded==null ? null : CRLEntity.fromEncoded(encoded, CrlStoreChangeCounter.INSTANCE.get());
+		}
+		final Map<Integer, CRLEntity> usedCrls = isDelta ? this.deltaCrls : this.crls;
+		final CRLEntity cachedCRL = usedCrls.get(id.getKey());
+		if ( isFresh(cachedCRL) ) {
+			return cachedCRL;
+		}
 		this.rebuildlock.lock();
 		try {
+			// Another thread may have read it while we were waiting for the lock
+			final CRLEntity lockedCRL = usedCrls.get(id.getKey());
+			if ( isFresh(lockedCRL) ) {
+				return lockedCRL;
+			}
+			final long checkedCount = CrlStoreChangeCounter.INSTANCE.get();
 			final CRLInfo crlInfo = this.crlSession.getLastCRLInfo(issuerDN, isDelta);
 			if ( crlInfo==null ) {
 				if (log.isDebugEnabled()) {
 					log.debug("No CRL found with issuerDN '"+issuerDN+"', returning null.");
 				}
+				usedCrls.remove(id.getKey());
 				return null;
 			}
-            final Map<Integer, CRLEntity> usedCrls = isDelta ? this.deltaCrls : this.crls;
-			// If we have not specified a crlNumber we can try to find the latest CRL in the cache
-			if (crlNumber == -1) {
-			    final CRLEntity cachedCRL = usedCrls.get(id.getKey());
-			    if ( cachedCRL!=null && !crlInfo.getCreateDate().after(cachedCRL.crlInfo.getCreateDate()) ) {
-			        if (log.isDebugEnabled()) {
-			            log.debug("Retrieved CRL (from cache) with issuerDN '"+issuerDN+"', with CRL number "+crlInfo.getLastCRLNumber());
-			        }
-			        return cachedCRL.encoded;
-			    }
+			if ( lockedCRL!=null && lockedCRL.getCrlNumber()==crlInfo.getLastCRLNumber() ) {
+				if (log.isDebugEnabled()) {
+					log.debug("Retrieved CRL (from cache) with issuerDN '"+issuerDN+"', with CRL number "+crlInfo.getLastCRLNumber());
+				}
+				final CRLEntity entry = lockedCRL.checked(checkedCount);
+				usedCrls.put(id.getKey(), entry);
+				return entry;
 			}
-			final CRLEntity entry;
-			if (crlNumber > -1) {
-			    if (log.isDebugEnabled()) {
-			        log.debug("Getting CRL with CRL number "+crlNumber);
-			    }
-			    entry = new CRLEntity( crlInfo, this.crlSession.getCRL(issuerDN, crlNumber) );			    
-			} else {
-			    entry = new CRLEntity( crlInfo, this.crlSession.getLastCRL(issuerDN, isDelta) );
-			    // Only cache latest CRLs, these should be the ones accessed regularly, and we don't want to fill the cache with old CRLs
-	            usedCrls.put(id.getKey(), entry);
+			final byte[] encoded = this.crlSession.getLastCRL(issuerDN, isDelta);
+			final CRLEntity entry = encoded==null ? null : CRLEntity.fromEncoded(encoded, checkedCount);
+			if ( entry==null ) {
+				usedCrls.remove(id.getKey());
+				return null;
 			}
+			usedCrls.put(id.getKey(), entry);
 			if (log.isDebugEnabled()) {
-				log.debug("Retrieved CRL (not from cache) with issuerDN '"+issuerDN+"', with CRL number "+crlInfo.getLastCRLNumber());
+				log.debug("Retrieved CRL (not from cache) with issuerDN '"+issuerDN+"', with CRL number "+entry.getCrlNumber());
 			}
-			return entry.encoded;
+			return entry;
 		} finally {
 			this.rebuildlock.unlock();
 		}
 	}
+
+	/** @return true if the cached CRL can be returned without checking the database */
+	private boolean isFresh(CRLEntity cachedCRL) {
+		return cachedCRL!=null && cachedCRL.checkedCount==CrlStoreChangeCounter.INSTANCE.get()
+				&& System.currentTimeMillis()-cachedCRL.checkedTime < this.cacheTime;
+	}
 }
@@ -16,6 +16,7 @@ package org.ejbca.ui.web.protocol;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.security.cert.X509Certificate;
+import java.util.Date;
 
 import javax.ejb.EJB;
 import javax.servlet.ServletConfig;
@@ -61,7 +62,7 @@ public class CRLStoreServlet extends StoreServletBase {
 
 	@Override
 	public void iHash(String iHash, HttpServletResponse resp, HttpServletRequest req) throws IOException, ServletException {
-		returnCrl( this.crlCache.findByIssuerDN(HashID.getFromB64(iHash), isDelta(req), getCrlNumber(req, resp)), resp, iHash, isDelta(req) );		
+		returnCrl( this.crlCache.findByIssuerDN(HashID.getFromB64(iHash), isDelta(req), getCrlNumber(req, resp)), req, resp, iHash, isDelta(req) );		
 	}
 
 	@Override
@@ -71,7 +72,7 @@ public class CRLStoreServlet extends StoreServletBase {
 
 	@Override
 	public void sKIDHash(String sKIDHash, HttpServletResponse resp, HttpServletRequest req, String name) throws IOException, ServletException {
-		returnCrl( this.crlCache.findBySubjectKeyIdentifier(HashID.getFromB64(sKIDHash), isDelta(req), getCrlNumber(req, resp)), resp, name, isDelta(req) );
+		returnCrl( this.crlCache.findBySubjectKeyIdentifier(HashID.getFromB64(sKIDHash), isDelta(req), getCrlNumber(req, resp)), req, resp, name, isDelta(req) );
 	}
 
 	@Override
@@ -101,14 +102,30 @@ public class CRLStoreServlet extends StoreServletBase {
         return -1;
 	}
 
-	private void returnCrl( byte crl[], HttpServletResponse resp, String name, boolean isDelta ) throws IOException {
-		if ( crl==null || crl.length<1 ) {
+	private void returnCrl( CRLCache.CRLEntity crl, HttpServletRequest req, HttpServletResponse resp, String name, boolean isDelta ) throws IOException {
+		if ( crl==null || crl.getEncoded().length<1 ) {
 			resp.sendError(HttpServletResponse.SC_NO_CONTENT, "No CRL with hash: "+HTMLTools.htmlescape(name));
 			return;
 		}
+		setCacheControl(resp, crl.getNextUpdate());
+		if ( isNotModified(req, resp, crl.getETag(), crl.getThisUpdate().getTime()) ) {
+			return;
+		}
+		final byte encoded[] = crl.getEncoded();
 		resp.setContentType("application/pkix-crl");
 		resp.setHeader("Content-disposition", "attachment; filename=\""+(isDelta?"delta":"") + StringTools.stripFilename(name) + ".crl\"");
-		resp.setContentLength(crl.length);
-		resp.getOutputStream().write(crl);
+		resp.setContentLength(encoded.length);
+		resp.getOutputStream().write(encoded);
+	}
+
+	/** Lets clients and caches keep the CRL until its nextUpdate, after which they have to revalidate it */
+	private void setCacheControl( HttpServletResponse resp, Date nextUpdate ) {
+		final long maxAge = nextUpdate==null ? 0 : (nextUpdate.getTime()-System.currentTimeMillis())/1000;
+		if ( maxAge>0 ) {
+			resp.setHeader("Cache-Control", "public, max-age="+maxAge+", must-revalidate");
+			resp.setDateHeader("Expires", nextUpdate.getTime());
+		} else {
+			resp.setHeader("Cache-Control", "public, no-cache");
+		}
 	}
 }
@@ -0,0 +1,226 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.tcp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests the framing, limits, backpressure and idle timeout of the NIO CMP TCP server, using a stub message handler on a
+ * loopback port.
+ *
+ * @version $Id$
+ */
+public class CmpTcpNioServerTest {
+
+    /** Handler that returns the received message, including its length, as the payload of the response */
+    private static class EchoHandler implements CmpTcpNioServer.MessageHandler {
+        final AtomicInteger messages = new AtomicInteger();
+
+        @Override
+        public TcpReturnMessage handleMessage(final String hostAddress, final byte[] message) throws Exception {
+            messages.incrementAndGet();
+            return TcpReturnMessage.createMessage(message, false);
+        }
+    }
+
+    private CmpTcpNioServer server;
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    private void startServer(final int workers, final int queueSize, final long readTimeout, final CmpTcpNioServer.MessageHandler handler)
+            throws IOException {
+        server = new CmpTcpNioServer("127.0.0.1", 0, workers, queueSize, 100, readTimeout, handler);
+        server.start();
+    }
+
+    private Socket connect() throws IOException {
+        final Socket socket = new Socket("127.0.0.1", server.getLocalPort());
+        socket.setSoTimeout(10000);
+        return socket;
+    }
+
+    /** @return a message with the given length field and length bytes of content */
+    private static byte[] newMessage(final int length) {
+        final ByteBuffer buffer = ByteBuffer.allocate(4 + length);
+        buffer.putInt(length);
+        for (int i = 0; i < length; i++) {
+            buffer.put((byte) i);
+        }
+        return buffer.array();
+    }
+
+    /** Reads a response and checks that it contains the sent message */
+    private static void assertEchoed(final Socket socket, final byte[] sent) throws IOException {
+        final DataInputStream in = new DataInputStream(socket.getInputStream());
+        final int length = in.readInt();
+        assertEquals(3 + sent.length, length);
+        final byte[] response = new byte[length];
+        in.readFully(response);
+        assertEquals("Version", 10, response[0]);
+        assertEquals("Flags", 0, response[1]);
+        assertEquals("Message type", 5, response[2]);
+        assertArrayEquals(sent, Arrays.copyOfRange(response, 3, response.length));
+    }
+
+    /** @return true if the server closes the connection */
+    private static boolean isClosedByServer(final Socket socket) {
+        try {
+            return socket.getInputStream().read() == -1;
+        } catch (IOException e) {
+            // Connection reset
+            return true;
+        }
+    }
+
+    private void waitForConnectionCount(final int count) throws InterruptedException {
+        for (int i = 0; i < 100 && server.getConnectionCount() != count; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(count, server.getConnectionCount());
+    }
+
+    @Test
+    public void testMessagesOnOneConnection() throws Exception {
+        startServer(2, 10, 30000, new EchoHandler());
+        try (final Socket socket = connect()) {
+            final OutputStream out = socket.getOutputStream();
+            // Smallest valid message, and a second message on the same connection
+            final byte[] smallest = newMessage(3);
+            out.write(smallest);
+            assertEchoed(socket, smallest);
+            final byte[] largest = newMessage(4999);
+            out.write(largest);
+            assertEchoed(socket, largest);
+        }
+    }
+
+    @Test
+    public void testMessageSplitOverSeveralReads() throws Exception {
+        startServer(2, 10, 30000, new EchoHandler());
+        try (final Socket socket = connect()) {
+            socket.setTcpNoDelay(true);
+            final OutputStream out = socket.getOutputStream();
+            final byte[] message = newMessage(100);
+            // Split within the length field and within the content
+            out.write(message, 0, 2);
+            out.flush();
+            Thread.sleep(100);
+            out.write(message, 2, 10);
+            out.flush();
+            Thread.sleep(100);
+            out.write(message, 12, message.length - 12);
+            out.flush();
+            assertEchoed(socket, message);
+        }
+    }
+
+    @Test
+    public void testInvalidLengthClosesConnection() throws Exception {
+        final EchoHandler handler = new EchoHandler();
+        startServer(2, 10, 30000, handler);
+        try (final Socket socket = connect()) {
+            socket.getOutputStream().write(newMessage(2));
+            assertTrue("A message shorter than 3 bytes should close the connection.", isClosedByServer(socket));
+        }
+        try (final Socket socket = connect()) {
+            // Only the length is sent, since the server should close the connection before buffering anything
+            new DataOutputStream(socket.getOutputStream()).writeInt(5000);
+            assertTrue("A message of 5000 bytes or more should close the connection.", isClosedByServer(socket));
+        }
+        assertEquals(0, handler.messages.get());
+        waitForConnectionCount(0);
+    }
+
+    @Test
+    public void testIdleConnectionIsClosed() throws Exception {
+        startServer(2, 10, 300, new EchoHandler());
+        try (final Socket socket = connect()) {
+            waitForConnectionCount(1);
+            final long start = System.currentTimeMillis();
+            assertTrue("Idle connection should be closed.", isClosedByServer(socket));
+            final long time = System.currentTimeMillis() - start;
+            assertTrue("Took " + time + " ms.", time < 5000);
+        }
+        waitForConnectionCount(0);
+    }
+
+    @Test
+    public void testNoAcceptWhileMessagesWaitForWorker() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final EchoHandler echoHandler = new EchoHandler();
+        // One worker and room for one message in its queue
+        startServer(1, 1, 30000, new CmpTcpNioServer.MessageHandler() {
+            @Override
+            public TcpReturnMessage handleMessage(final String hostAddress, final byte[] message) throws Exception {
+                started.countDown();
+                assertTrue(release.await(30, TimeUnit.SECONDS));
+                return echoHandler.handleMessage(hostAddress, message);
+            }
+        });
+        final byte[] message = newMessage(10);
+        final Socket[] sockets = new Socket[4];
+        try {
+            // The first message is handled by the worker, the second waits in its queue and the third in the selector thread
+            for (int i = 0; i < 3; i++) {
+                sockets[i] = connect();
+                waitForConnectionCount(i + 1);
+                sockets[i].getOutputStream().write(message);
+                if (i == 0) {
+                    assertTrue(started.await(10, TimeUnit.SECONDS));
+                }
+            }
+            Thread.sleep(500);
+            // The TCP connection is completed by the backlog of the listening socket, but the server must not accept it
+            sockets[3] = connect();
+            Thread.sleep(1000);
+            assertEquals("No connections should be accepted while a message waits for a worker.", 3, server.getConnectionCount());
+            release.countDown();
+            for (int i = 0; i < 3; i++) {
+                assertEchoed(sockets[i], message);
+            }
+            waitForConnectionCount(4);
+            sockets[3].getOutputStream().write(message);
+            assertEchoed(sockets[3], message);
+            assertEquals(4, echoHandler.messages.get());
+        } finally {
+            release.countDown();
+            for (final Socket socket : sockets) {
+                if (socket != null) {
+                    socket.close();
+                }
+            }
+        }
+    }
+}
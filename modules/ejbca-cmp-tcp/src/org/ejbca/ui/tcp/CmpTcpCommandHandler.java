@@ -68,36 +68,50 @@ public class CmpTcpCommandHandler implements ClientEventHandler, ClientBinaryHan
 
     @Override
 	public void handleBinary(final ClientHandler handler, final byte command[])	throws SocketTimeoutException, IOException {
-		LOG.info(INTRES.getLocalizedMessage("cmp.receivedmsg", handler.getHostAddress()));
+		final TcpReturnMessage sendBack = handleMessage(handler.getHostAddress(), command);
+		if (sendBack == null) {
+			handler.closeConnection();
+			return;
+		}
+		handler.sendClientBinary(sendBack.message);
+		if (sendBack.doClose) {
+			handler.closeConnection(); // It's time to say good bye
+		}
+	}
+
+	/**
+	 * Dispatches a CMP message received over TCP. Used by both QuickServer and {@link CmpTcpNioServer}.
+	 *
+	 * @param hostAddress the address of the client
+	 * @param command the message from the client, including the TCP message header
+	 * @return the response to send back, or null if the connection should be closed
+	 */
+	public static TcpReturnMessage handleMessage(final String hostAddress, final byte[] command) throws IOException {
+		LOG.info(INTRES.getLocalizedMessage("cmp.receivedmsg", hostAddress));
 		long startTime = System.currentTimeMillis();
 		final TcpReceivedMessage cmpTcpMessage = TcpReceivedMessage.getTcpMessage(command);
 		if (cmpTcpMessage.message == null) {
-			handler.closeConnection();
-		} else {
-		    final AuthenticationToken authenticationToken = new AlwaysAllowLocalAuthenticationToken(new WebPrincipal("CmpTcp", handler.getHostAddress()));
-		    byte[] result = null;
-			try {
-			    result = getEjb().getRaMasterApiProxyBean().cmpDispatch(authenticationToken, cmpTcpMessage.message, "tcp");
-			} catch (NoSuchAliasException e) {
-                LOG.error(e.getMessage(), e);
-                handler.closeConnection();
-                return;
-            }
-			if (LOG.isDebugEnabled()) {
-				LOG.debug("Sending back CMP response to client.");
-			}
-			// Send back reply
-			final TcpReturnMessage sendBack = TcpReturnMessage.createMessage(result, cmpTcpMessage.doClose);
-			if (LOG.isDebugEnabled()) {
-				LOG.debug("Sending "+sendBack.message.length+" bytes to client");
-			}
-			handler.sendClientBinary(sendBack.message);
-			long endTime = System.currentTimeMillis();
-			final String iMsg = INTRES.getLocalizedMessage("cmp.sentresponsemsg", handler.getHostAddress(), Long.valueOf(endTime - startTime));
-			LOG.info(iMsg);
-			if ( cmpTcpMessage.doClose || sendBack.doClose ) {
-				handler.closeConnection(); // It's time to say good bye			
-			}
+			return null;
+		}
+		final AuthenticationToken authenticationToken = new AlwaysAllowLocalAuthenticationToken(new WebPrincipal("CmpTcp", hostAddress));
+		byte[] result = null;
+		try {
+			result = getEjb().getRaMasterApiProxyBean().cmpDispatch(authenticationToken, cmpTcpMessage.message, "tcp");
+		} catch (NoSuchAliasException e) {
+			LOG.error(e.getMessage(), e);
+			return null;
+		}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Sending back CMP response to client.");
+		}
+		// Send back reply
+		final TcpReturnMessage sendBack = TcpReturnMessage.createMessage(result, cmpTcpMessage.doClose);
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Sending "+sendBack.message.length+" bytes to client");
 		}
+		long endTime = System.currentTimeMillis();
+		final String iMsg = INTRES.getLocalizedMessage("cmp.sentresponsemsg", hostAddress, Long.valueOf(endTime - startTime));
+		LOG.info(iMsg);
+		return sendBack;
 	}
 }
@@ -0,0 +1,427 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.tcp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.ejbca.core.model.InternalEjbcaResources;
+
+/**
+ * CMP over TCP listener using a single selector thread for all connections, instead of a thread per connection.
+ *
+ * Each message is framed by the 4 byte length that starts the CMP TCP message (see {@link TcpReceivedMessage}). When a complete message
+ * has been received, it is handled by a bounded pool of worker threads, and the connection is not read from until the response
+ * has been sent. When the queue of the worker pool is full, messages wait in the selector thread and no new connections are accepted
+ * until a worker is free. Connections that are idle for longer than the read timeout while waiting for a message, or while
+ * the response is written, are closed.
+ *
+ * @version $Id$
+ */
+public class CmpTcpNioServer {
+
+    private static final Logger log = Logger.getLogger(CmpTcpNioServer.class);
+    /** Internal localization of logs and errors */
+    private static final InternalEjbcaResources intres = InternalEjbcaResources.getInstance();
+
+    /** Handles a received message, and is called from the worker threads. */
+    public interface MessageHandler {
+        /**
+         * @param hostAddress the address of the client
+         * @param message the message received from the client, including the length
+         * @return the response to send back, or null if the connection should be closed
+         */
+        TcpReturnMessage handleMessage(String hostAddress, byte[] message) throws Exception;
+    }
+
+    /** Length of the length field at the start of each message */
+    private static final int LENGTH_SIZE = 4;
+    /** Version, flags and message type, which are always present after the length */
+    private static final int MIN_MESSAGE_LENGTH = 3;
+    /** Same limit as in {@link TcpReceivedMessage} */
+    private static final int MAX_MESSAGE_LENGTH = 5000;
+    /** Max time to wait in select, so that idle connections are closed in time */
+    private static final long MAX_SELECT_TIME = 1000L;
+
+    private enum State { READING, PROCESSING, WRITING }
+
+    /** State of a connection. Only accessed by the selector thread, except for the response that is set by a worker. */
+    private class Connection {
+        final SocketChannel channel;
+        final String hostAddress;
+        final ByteBuffer lengthBuffer = ByteBuffer.allocate(LENGTH_SIZE);
+        SelectionKey key;
+        ByteBuffer messageBuffer;
+        ByteBuffer writeBuffer;
+        boolean closeAfterWrite;
+        volatile TcpReturnMessage response;
+        State state = State.READING;
+        long lastActivity = System.currentTimeMillis();
+
+        Connection(final SocketChannel channel, final String hostAddress) {
+            this.channel = channel;
+            this.hostAddress = hostAddress;
+        }
+    }
+
+    private final String bindAddress;
+    private final int port;
+    private final int maxConnections;
+    private final long readTimeout;
+    private final MessageHandler messageHandler;
+    private final ThreadPoolExecutor workers;
+    /** Connections with a complete message that did not fit in the queue of the worker pool. Only accessed by the selector thread. */
+    private final Queue<Connection> waitingForWorker = new ArrayDeque<>();
+    /** Connections that a worker is done with */
+    private final Queue<Connection> processed = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private SelectionKey acceptKey;
+    private Thread selectorThread;
+    private volatile boolean running = false;
+
+    /**
+     * @param bindAddress the address to listen on
+     * @param port the port to listen on, or 0 to use any free port
+     * @param workerThreads the number of threads handling messages
+     * @param queueSize the number of messages that may wait for a worker thread, before new connections are refused
+     * @param maxConnections the max number of open connections
+     * @param readTimeout milliseconds before an idle connection is closed
+     * @param messageHandler handles the received messages
+     */
+    public CmpTcpNioServer(final String bindAddress, final int port, final int workerThreads, final int queueSize, final int maxConnections,
+            final long readTimeout, final MessageHandler messageHandler) {
+        this.bindAddress = bindAddress;
+        this.port = port;
+        this.maxConnections = maxConnections;
+        this.readTimeout = readTimeout;
+        this.messageHandler = messageHandler;
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(workerThreads, workerThreads, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "CmpTcpWorker-" + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /** Binds the listening socket and starts the selector thread. */
+    public synchronized void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, Boolean.TRUE);
+        serverChannel.bind(new InetSocketAddress(bindAddress, port), maxConnections);
+        acceptKey = serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        selectorThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                selectLoop();
+            }
+        }, "CmpTcpSelector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        log.info("CMP TCP server listening on " + serverChannel.getLocalAddress() + " with " + workers.getCorePoolSize() + " worker threads.");
+    }
+
+    /** Stops accepting connections, closes all connections and waits a while for running workers to finish. */
+    public synchronized void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (selectorThread != null) {
+            try {
+                selectorThread.join(MAX_SELECT_TIME * 5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** @return the port the server listens on */
+    public int getLocalPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /** @return the number of open connections */
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    private void selectLoop() {
+        long lastTimeoutCheck = System.currentTimeMillis();
+        try {
+            while (running) {
+                selector.select(Math.min(MAX_SELECT_TIME, Math.max(1L, readTimeout)));
+                handleProcessed();
+                dispatchWaiting();
+                final Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    final SelectionKey key = iterator.next();
+                    iterator.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else if (key.isReadable()) {
+                            read((Connection) key.attachment());
+                        } else if (key.isWritable()) {
+                            write((Connection) key.attachment());
+                        }
+                    } catch (IOException e) {
+                        if (key.attachment() != null) {
+                            if (log.isDebugEnabled()) {
+                                log.debug("Closing CMP TCP connection from " + ((Connection) key.attachment()).hostAddress + ": " + e.getMessage());
+                            }
+                            close((Connection) key.attachment());
+                        } else {
+                            log.info("Failed to accept CMP TCP connection: " + e.getMessage());
+                        }
+                    }
+                }
+                final long now = System.currentTimeMillis();
+                if (now - lastTimeoutCheck >= Math.min(MAX_SELECT_TIME, readTimeout)) {
+                    closeIdleConnections(now);
+                    lastTimeoutCheck = now;
+                }
+                // Backpressure: only accept new connections while there is room for them and the workers keep up
+                final boolean accept = connectionCount.get() < maxConnections && waitingForWorker.isEmpty();
+                acceptKey.interestOps(accept ? SelectionKey.OP_ACCEPT : 0);
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            log.error("CMP TCP server stopped because of an error: " + e.getMessage(), e);
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void accept() throws IOException {
+        final SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, Boolean.TRUE);
+        final Connection connection = new Connection(channel, ((InetSocketAddress) channel.getRemoteAddress()).getAddress().getHostAddress());
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        connectionCount.incrementAndGet();
+        if (log.isDebugEnabled()) {
+            log.debug("CMP connection opened: " + connection.hostAddress);
+        }
+    }
+
+    private void read(final Connection connection) throws IOException {
+        final ByteBuffer buffer = connection.messageBuffer == null ? connection.lengthBuffer : connection.messageBuffer;
+        final int read = connection.channel.read(buffer);
+        if (read < 0) {
+            if (log.isDebugEnabled()) {
+                log.debug("Connection closed: " + connection.hostAddress);
+            }
+            close(connection);
+            return;
+        }
+        connection.lastActivity = System.currentTimeMillis();
+        if (connection.messageBuffer == null) {
+            if (connection.lengthBuffer.hasRemaining()) {
+                return;
+            }
+            final int length = connection.lengthBuffer.getInt(0);
+            if (length >= MAX_MESSAGE_LENGTH) {
+                log.error(intres.getLocalizedMessage("cmp.errortcptoolongmsg", Integer.valueOf(length)));
+                close(connection);
+                return;
+            }
+            if (length < MIN_MESSAGE_LENGTH) {
+                log.info("Closing CMP TCP connection from " + connection.hostAddress + " after message with invalid length " + length);
+                close(connection);
+                return;
+            }
+            // The message handler expects the length to be included
+            connection.messageBuffer = ByteBuffer.allocate(LENGTH_SIZE + length);
+            connection.messageBuffer.putInt(length);
+            read(connection);
+            return;
+        }
+        if (connection.messageBuffer.hasRemaining()) {
+            return;
+        }
+        // Don't read the next message until the response to this one has been sent
+        connection.state = State.PROCESSING;
+        connection.key.interestOps(0);
+        if (!submit(connection)) {
+            waitingForWorker.add(connection);
+        }
+    }
+
+    private boolean submit(final Connection connection) {
+        final byte[] message = connection.messageBuffer.array();
+        try {
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    TcpReturnMessage response = null;
+                    try {
+                        response = messageHandler.handleMessage(connection.hostAddress, message);
+                    } catch (Exception e) { // NOPMD: any error closes the connection
+                        log.error("Failed to handle CMP TCP message from " + connection.hostAddress + ": " + e.getMessage(), e);
+                    }
+                    connection.response = response;
+                    processed.add(connection);
+                    selector.wakeup();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    private void dispatchWaiting() {
+        while (!waitingForWorker.isEmpty()) {
+            final Connection connection = waitingForWorker.peek();
+            if (!connection.channel.isOpen()) {
+                waitingForWorker.remove();
+            } else if (submit(connection)) {
+                waitingForWorker.remove();
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void handleProcessed() {
+        Connection connection;
+        while ((connection = processed.poll()) != null) {
+            if (!connection.channel.isOpen()) {
+                continue;
+            }
+            final TcpReturnMessage response = connection.response;
+            connection.response = null;
+            connection.messageBuffer = null;
+            connection.lengthBuffer.clear();
+            if (response == null) {
+                close(connection);
+                continue;
+            }
+            connection.writeBuffer = ByteBuffer.wrap(response.message);
+            connection.closeAfterWrite = response.doClose;
+            connection.state = State.WRITING;
+            connection.lastActivity = System.currentTimeMillis();
+            try {
+                // Most responses fit in the socket buffer, so try to send it right away
+                write(connection);
+            } catch (IOException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Closing CMP TCP connection from " + connection.hostAddress + ": " + e.getMessage());
+                }
+                close(connection);
+            }
+        }
+    }
+
+    private void write(final Connection connection) throws IOException {
+        connection.channel.write(connection.writeBuffer);
+        if (connection.writeBuffer.hasRemaining()) {
+            connection.key.interestOps(SelectionKey.OP_WRITE);
+            return;
+        }
+        connection.writeBuffer = null;
+        if (connection.closeAfterWrite) {
+            close(connection);
+            return;
+        }
+        connection.state = State.READING;
+        connection.lastActivity = System.currentTimeMillis();
+        connection.key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void closeIdleConnections(final long now) {
+        for (final SelectionKey key : new ArrayList<>(selector.keys())) {
+            final Connection connection = (Connection) key.attachment();
+            if (connection != null && connection.state != State.PROCESSING && now - connection.lastActivity > readTimeout) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Closing idle CMP TCP connection from " + connection.hostAddress);
+                }
+                close(connection);
+            }
+        }
+    }
+
+    private void close(final Connection connection) {
+        if (!connection.channel.isOpen()) {
+            return;
+        }
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            log.debug("Failed to close CMP TCP connection: " + e.getMessage());
+        }
+        connectionCount.decrementAndGet();
+    }
+
+    private void closeAll() {
+        try {
+            for (final SelectionKey key : selector.keys()) {
+                if (key.attachment() != null) {
+                    close((Connection) key.attachment());
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // Keys are already cancelled
+        }
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            log.debug("Failed to close CMP TCP server socket: " + e.getMessage());
+        }
+        log.info("CMP TCP server stopped.");
+    }
+}
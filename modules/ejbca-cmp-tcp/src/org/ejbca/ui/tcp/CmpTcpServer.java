@@ -14,6 +14,7 @@
 package org.ejbca.ui.tcp;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.UnknownHostException;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
@@ -35,8 +36,13 @@ public class CmpTcpServer {
 	private static final String VER = "1.0";
 
 	private transient QuickServer myServer = null;
+	private transient CmpTcpNioServer nioServer = null;
 	
 	public void start() throws UnknownHostException	{
+		if (CmpTcpConfiguration.isTCPNioServer()) {
+			startNioServer();
+			return;
+		}
 		final String cmdHandle = org.ejbca.ui.tcp.CmpTcpCommandHandler.class.getName();
 
 		myServer = new QuickServer();
@@ -96,7 +102,28 @@ public class CmpTcpServer {
 		}
 	}
 
+	private void startNioServer() throws UnknownHostException {
+		nioServer = new CmpTcpNioServer(CmpTcpConfiguration.getTCPBindAdress(), CmpTcpConfiguration.getTCPPortNumber(),
+				CmpTcpConfiguration.getTCPWorkerThreads(), CmpTcpConfiguration.getTCPQueueSize(), CmpTcpConfiguration.getTCPMaxConnections(),
+				CmpTcpConfiguration.getTCPReadTimeout(), new CmpTcpNioServer.MessageHandler() {
+					@Override
+					public TcpReturnMessage handleMessage(final String hostAddress, final byte[] message) throws Exception {
+						return CmpTcpCommandHandler.handleMessage(hostAddress, message);
+					}
+				});
+		try {
+			nioServer.start();
+		} catch (UnknownHostException e) {
+			throw e;
+		} catch (IOException e) {
+			LOG.error("Error in server : ", e);
+		}
+	}
+
 	public void stop() {
+		if (nioServer != null) {
+			nioServer.stop();
+		}
 		if (myServer != null) {
 			try {
 				myServer.stopService();
@@ -0,0 +1,137 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.web.protocol;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.security.cert.X509Certificate;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+/**
+ * Tests the handling of conditional requests with If-None-Match and If-Modified-Since in the CRL and certificate store.
+ *
+ * @version $Id$
+ */
+public class StoreServletBaseTest {
+
+    private static final String ETAG = "\"0123456789abcdef\"";
+    private static final long LAST_MODIFIED = 1500000000000L;
+
+    private static final StoreServletBase servlet = new StoreServletBase() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void sHash(String sHash, HttpServletResponse resp, HttpServletRequest req) { }
+
+        @Override
+        public void iHash(String iHash, HttpServletResponse resp, HttpServletRequest req) { }
+
+        @Override
+        public void sKIDHash(String sKIDHash, HttpServletResponse resp, HttpServletRequest req) { }
+
+        @Override
+        public void sKIDHash(String sKIDHash, HttpServletResponse resp, HttpServletRequest req, String name) { }
+
+        @Override
+        public void printInfo(X509Certificate cert, String indent, PrintWriter pw, String url) { }
+
+        @Override
+        public String getTitle() {
+            return "Test";
+        }
+    };
+
+    /**
+     * Invokes isNotModified with the given request headers, and checks that the response status is only set to 304 when it
+     * returns true.
+     *
+     * @param ifNoneMatch the If-None-Match header, or null
+     * @param ifModifiedSince the If-Modified-Since header in milliseconds, or -1
+     * @param lastModified the time when the object was created, or -1
+     */
+    private static boolean isNotModified(final String ifNoneMatch, final long ifModifiedSince, final long lastModified) {
+        final HttpServletRequest req = EasyMock.createNiceMock(HttpServletRequest.class);
+        EasyMock.expect(req.getHeader("If-None-Match")).andReturn(ifNoneMatch).anyTimes();
+        EasyMock.expect(req.getDateHeader("If-Modified-Since")).andReturn(Long.valueOf(ifModifiedSince)).anyTimes();
+        final HttpServletResponse resp = EasyMock.createMock(HttpServletResponse.class);
+        resp.setHeader("ETag", ETAG);
+        if (lastModified >= 0) {
+            resp.setDateHeader("Last-Modified", lastModified);
+        }
+        resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        EasyMock.expectLastCall().times(0, 1);
+        EasyMock.replay(req, resp);
+        final boolean notModified = servlet.isNotModified(req, resp, ETAG, lastModified);
+        EasyMock.verify(resp);
+        return notModified;
+    }
+
+    @Test
+    public void testIfNoneMatch() {
+        assertTrue(isNotModified(ETAG, -1, LAST_MODIFIED));
+        assertFalse(isNotModified("\"other\"", -1, LAST_MODIFIED));
+        // Without quotes it is a different entity tag
+        assertFalse(isNotModified("0123456789abcdef", -1, LAST_MODIFIED));
+    }
+
+    @Test
+    public void testIfNoneMatchList() {
+        assertTrue(isNotModified("\"other\", " + ETAG, -1, LAST_MODIFIED));
+        assertTrue(isNotModified("\"other\"," + ETAG + ",\"third\"", -1, LAST_MODIFIED));
+        assertFalse(isNotModified("\"other\", \"third\"", -1, LAST_MODIFIED));
+    }
+
+    @Test
+    public void testIfNoneMatchAny() {
+        assertTrue(isNotModified("*", -1, LAST_MODIFIED));
+        assertTrue(isNotModified("\"other\", *", -1, -1));
+    }
+
+    @Test
+    public void testIfNoneMatchWeakTag() {
+        // If-None-Match uses the weak comparison
+        assertTrue(isNotModified("W/" + ETAG, -1, LAST_MODIFIED));
+        assertTrue(isNotModified("\"other\", W/" + ETAG, -1, LAST_MODIFIED));
+        assertFalse(isNotModified("W/\"other\"", -1, LAST_MODIFIED));
+    }
+
+    @Test
+    public void testIfNoneMatchTakesPrecedence() {
+        // If-Modified-Since is ignored when there is an If-None-Match header, whether it would match or not
+        assertFalse(isNotModified("\"other\"", LAST_MODIFIED, LAST_MODIFIED));
+        assertTrue(isNotModified(ETAG, LAST_MODIFIED - 10000, LAST_MODIFIED));
+    }
+
+    @Test
+    public void testIfModifiedSince() {
+        assertTrue(isNotModified(null, LAST_MODIFIED, LAST_MODIFIED));
+        assertTrue(isNotModified(null, LAST_MODIFIED + 10000, LAST_MODIFIED));
+        assertFalse(isNotModified(null, LAST_MODIFIED - 1000, LAST_MODIFIED));
+        assertFalse("No conditional headers", isNotModified(null, -1, LAST_MODIFIED));
+        assertFalse("Unknown last modification time", isNotModified(null, LAST_MODIFIED, -1));
+    }
+
+    @Test
+    public void testIfModifiedSinceSecondGranularity() {
+        // The HTTP date in If-Modified-Since has no milliseconds, so an object created within the same second is not modified
+        assertTrue(isNotModified(null, LAST_MODIFIED, LAST_MODIFIED + 999));
+        assertFalse(isNotModified(null, LAST_MODIFIED, LAST_MODIFIED + 1000));
+    }
+}
@@ -0,0 +1,175 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.util.mail;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Provider;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.URLName;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the mail queue sender reuses its connection, and that a message that is rejected does not affect the rest of the batch.
+ *
+ * @version $Id$
+ */
+public class MailQueueSenderTest {
+
+    private static int connections;
+    private static boolean serverClosed;
+    private static final List<String> delivered = new ArrayList<>();
+
+    /**
+     * Transport that counts connections and rejects the address "bad@example.com". The message is still delivered to the other
+     * recipients, as with mail.smtp.sendpartial.
+     */
+    public static class FakeTransport extends Transport {
+        public FakeTransport(final Session session, final URLName urlname) {
+            super(session, urlname);
+        }
+
+        @Override
+        protected boolean protocolConnect(final String host, final int port, final String user, final String password) {
+            connections++;
+            serverClosed = false;
+            return true;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return super.isConnected() && !serverClosed;
+        }
+
+        @Override
+        public void sendMessage(final Message message, final Address[] addresses) throws MessagingException {
+            if (!isConnected()) {
+                throw new MessagingException("Not connected.");
+            }
+            final List<Address> valid = new ArrayList<>();
+            final List<Address> invalid = new ArrayList<>();
+            for (final Address address : addresses) {
+                if ("bad@example.com".equals(((InternetAddress) address).getAddress())) {
+                    invalid.add(address);
+                } else {
+                    valid.add(address);
+                }
+            }
+            if (!valid.isEmpty()) {
+                delivered.add(message.getSubject());
+            }
+            if (!invalid.isEmpty()) {
+                throw new SendFailedException("Recipient rejected.", null, valid.toArray(new Address[0]), new Address[0],
+                        invalid.toArray(new Address[0]));
+            }
+        }
+    }
+
+    private Session session;
+
+    @Before
+    public void setUp() {
+        connections = 0;
+        serverClosed = false;
+        delivered.clear();
+        final Properties properties = new Properties();
+        properties.setProperty("mail.transport.protocol", "test");
+        session = Session.getInstance(properties);
+        session.addProvider(new Provider(Provider.Type.TRANSPORT, "test", FakeTransport.class.getName(), "EJBCA", "1.0"));
+    }
+
+    private MimeMessage createMessage(final String to, final String subject) throws MessagingException {
+        return MailSender.createMessage(session, "ca@example.com", Arrays.asList(to), MailSender.NO_CC, subject, "content",
+                MailSender.NO_ATTACHMENTS);
+    }
+
+    @Test
+    public void testConnectionIsReused() throws Exception {
+        final MailQueueSender sender = new MailQueueSender(session, 60000);
+        List<MessagingException> results = sender.send(Arrays.asList(createMessage("a@example.com", "1"), createMessage("b@example.com", "2")));
+        assertEquals(Arrays.asList(null, null), results);
+        results = sender.send(Arrays.asList(createMessage("c@example.com", "3")));
+        assertNull(results.get(0));
+        assertEquals("All messages should be sent over one connection.", 1, connections);
+        assertEquals(Arrays.asList("1", "2", "3"), delivered);
+        sender.close();
+        sender.send(Arrays.asList(createMessage("d@example.com", "4")));
+        assertEquals(2, connections);
+        sender.close();
+    }
+
+    @Test
+    public void testIdleConnectionIsClosed() throws Exception {
+        final MailQueueSender sender = new MailQueueSender(session, 1);
+        sender.send(Arrays.asList(createMessage("a@example.com", "1")));
+        Thread.sleep(10);
+        sender.send(Arrays.asList(createMessage("a@example.com", "2")));
+        assertEquals(2, connections);
+        sender.close();
+    }
+
+    @Test
+    public void testRejectedMessageDoesNotFailBatch() throws Exception {
+        final MailQueueSender sender = new MailQueueSender(session, 60000);
+        final List<MessagingException> results = sender.send(Arrays.asList(createMessage("a@example.com", "1"),
+                createMessage("bad@example.com", "2"), createMessage("c@example.com", "3")));
+        assertNull(results.get(0));
+        assertTrue(results.get(1) instanceof SendFailedException);
+        assertTrue("A rejected recipient should not be retried.", MailQueueSender.isPermanentFailure(results.get(1)));
+        assertNull(results.get(2));
+        assertEquals(Arrays.asList("1", "3"), delivered);
+        assertEquals(1, connections);
+        sender.close();
+    }
+
+    @Test
+    public void testPartiallySentMessageIsNotFailed() throws Exception {
+        final MailQueueSender sender = new MailQueueSender(session, 60000);
+        final MimeMessage message = MailSender.createMessage(session, "ca@example.com", Arrays.asList("a@example.com", "bad@example.com"),
+                MailSender.NO_CC, "1", "content", MailSender.NO_ATTACHMENTS);
+        final List<MessagingException> results = sender.send(Arrays.asList(message));
+        assertNull("A message that reached some of its recipients should not be sent again.", results.get(0));
+        assertEquals(Arrays.asList("1"), delivered);
+        sender.close();
+    }
+
+    @Test
+    public void testClosedConnectionIsReopened() throws Exception {
+        final MailQueueSender sender = new MailQueueSender(session, 60000);
+        sender.send(Arrays.asList(createMessage("a@example.com", "1")));
+        serverClosed = true;
+        final List<MessagingException> results = sender.send(Arrays.asList(createMessage("a@example.com", "2")));
+        assertNull("The connection should be reopened if the server has closed it.", results.get(0));
+        assertFalse(MailQueueSender.isPermanentFailure(new MessagingException("Not connected.")));
+        assertEquals(2, connections);
+        assertEquals(Arrays.asList("1", "2"), delivered);
+        sender.close();
+    }
+}
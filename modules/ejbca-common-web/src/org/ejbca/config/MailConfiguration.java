@@ -13,6 +13,8 @@
 
 package org.ejbca.config;
 
+import org.apache.log4j.Logger;
+
 /**
  * 
  * @version $Id$
@@ -20,6 +22,8 @@ package org.ejbca.config;
 
 public class MailConfiguration {
 
+	private static final Logger log = Logger.getLogger(MailConfiguration.class);
+
 	/**
 	 * The JNDI-name used to send email notifications from EJBCA.
 	 */
@@ -34,4 +38,59 @@ public class MailConfiguration {
 		return "text/plain;charset=" + EjbcaConfigurationHolder.getExpandedString("mail.contentencoding");
 	}
 
+	/**
+	 * @return true if notifications should be stored in the outbound mail queue and sent by a background timer, instead of being
+	 * sent in the request that triggered them.
+	 */
+	public static boolean isMailQueueEnabled() {
+		return Boolean.TRUE.toString().equalsIgnoreCase(EjbcaConfigurationHolder.getString("mail.queue.enabled"));
+	}
+
+	/** @return the time in milliseconds between checks for queued messages that should be sent */
+	public static long getMailQueueInterval() {
+		return getLongProperty("mail.queue.interval", 2000L);
+	}
+
+	/** @return the maximum number of messages that are sent over one SMTP connection before the queue is checked again */
+	public static int getMailQueueBatchSize() {
+		return (int) getLongProperty("mail.queue.batchsize", 50L);
+	}
+
+	/** @return the time in milliseconds to wait before the first retry of a message that could not be sent, doubled for each retry */
+	public static long getMailQueueRetryBackoff() {
+		return getLongProperty("mail.queue.retrybackoff", 60000L);
+	}
+
+	/** @return the maximum time in milliseconds between retries of a message that could not be sent */
+	public static long getMailQueueMaxRetryBackoff() {
+		return getLongProperty("mail.queue.maxretrybackoff", 3600000L);
+	}
+
+	/** @return the number of attempts to send a message before it is removed from the queue */
+	public static int getMailQueueMaxAttempts() {
+		return (int) getLongProperty("mail.queue.maxattempts", 10L);
+	}
+
+	/** @return the time in milliseconds that an unused SMTP connection of the queue is kept open */
+	public static long getMailQueueConnectionIdleTime() {
+		return getLongProperty("mail.queue.connectionidletime", 30000L);
+	}
+
+	/** @return the value as a positive long or the default otherwise. */
+	private static long getLongProperty(final String key, final long defaultValue) {
+		final String value = EjbcaConfigurationHolder.getString(key);
+		if (value != null) {
+			try {
+				final long ret = Long.parseLong(value.trim());
+				if (ret > 0) {
+					return ret;
+				}
+			} catch (NumberFormatException e) {
+				// Use the default
+			}
+			log.error("Invalid value configured for '" + key + "', must be a positive decimal number: " + value);
+		}
+		return defaultValue;
+	}
+
 }
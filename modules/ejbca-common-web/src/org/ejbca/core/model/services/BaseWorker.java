@@ -47,6 +47,8 @@ public abstract class BaseWorker implements IWorker {
 
 	private transient Collection<Integer> cAIdsToCheck = null;
 	private transient long timeBeforeExpire = -1;
+	/** The share of the work that this node should do, see IShardableWorker */
+	private ServiceShard shard = ServiceShard.ALL;
 
 	/**
 	 * @see org.ejbca.core.model.services.IWorker#init(org.ejbca.core.model.services.ServiceConfiguration, java.lang.String)
@@ -111,6 +113,20 @@ public abstract class BaseWorker implements IWorker {
 		return action;
 	}
 	
+	/**
+	 * Sets the share of the work that this node should do. Only used by workers that implement IShardableWorker.
+	 */
+	public void setShard(ServiceShard shard) {
+		this.shard = shard == null ? ServiceShard.ALL : shard;
+	}
+
+	/**
+	 * @return the share of the work that this node should do, ServiceShard.ALL unless the service runs sharded
+	 */
+	protected ServiceShard getShard() {
+		return shard;
+	}
+
 	/**
 	 * Returns the admin that should be used for other calls.
 	 */
@@ -14,7 +14,6 @@ package org.ejbca.core.model.services.workers;
 
 import java.net.URL;
 import java.security.cert.CRLException;
-import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.Collection;
 import java.util.Date;
@@ -30,6 +29,7 @@ import org.cesecore.certificates.ca.X509CAInfo;
 import org.cesecore.certificates.crl.CrlImportException;
 import org.cesecore.certificates.crl.CrlStoreException;
 import org.cesecore.certificates.crl.CrlStoreSessionLocal;
+import org.cesecore.certificates.crl.StreamingCrlParser;
 import org.cesecore.certificates.util.cert.CrlExtensions;
 import org.cesecore.util.CertTools;
 import org.cesecore.util.NetworkTools;
@@ -92,13 +92,13 @@ public class CRLDownloadWorker extends BaseWorker {
                     final String issuerDn = CertTools.getSubjectDN(caCertificate);
                     // Get last known CRL (if any) and check when the next update will be
                     final Date now = new Date();
-                    final X509CRL lastFullCrl = getCRLFromBytes(crlStoreSession.getLastCRL(issuerDn, false));
-                    final X509CRL newestFullCrl;
+                    final StreamingCrlParser lastFullCrl = getCRLFromBytes(crlStoreSession.getLastCRL(issuerDn, false));
+                    final StreamingCrlParser newestFullCrl;
                     if (!ignoreNextUpdate && lastFullCrl!=null && now.before(lastFullCrl.getNextUpdate())) {
                         log.info("Next full CRL update for CA '" + caInfo.getName() + "' will be " + ValidityDate.formatAsISO8601(lastFullCrl.getNextUpdate(), null) + ". Skipping download.");
                         newestFullCrl = lastFullCrl;
                     } else {
-                        final X509CRL downloadedFullCrl = getAndProcessCrl(url, maxDownloadSize, caCertificate, caInfo, importCrlSession);
+                        final StreamingCrlParser downloadedFullCrl = getAndProcessCrl(url, maxDownloadSize, caCertificate, caInfo, importCrlSession);
                         if (downloadedFullCrl==null) {
                             newestFullCrl = lastFullCrl;
                         } else {
@@ -109,7 +109,7 @@ public class CRLDownloadWorker extends BaseWorker {
                         final List<String> freshestCdps = CrlExtensions.extractFreshestCrlDistributionPoints(newestFullCrl);
                         if (!freshestCdps.isEmpty()) {
                             // Delta CRLs are used and we might already have a valid one stored
-                            X509CRL lastDeltaCrl = getCRLFromBytes(crlStoreSession.getLastCRL(issuerDn, true));
+                            StreamingCrlParser lastDeltaCrl = getCRLFromBytes(crlStoreSession.getLastCRL(issuerDn, true));
                             if (lastDeltaCrl!=null && lastDeltaCrl.getThisUpdate().before(newestFullCrl.getThisUpdate())) {
                                 // The last known delta CRL info is already included in the latest full CRL, so treat the last delta as non-existent
                                 lastDeltaCrl = null;
@@ -124,7 +124,7 @@ public class CRLDownloadWorker extends BaseWorker {
                                         log.info("Unusable Freshest CDP HTTP URL '" + freshestCdpUrl + "' in CRL. Skipping download.");
                                         continue;
                                     }
-                                    final X509CRL newDeltaCrl = getAndProcessCrl(freshestCdpUrl, maxDownloadSize, caCertificate, caInfo, importCrlSession);
+                                    final StreamingCrlParser newDeltaCrl = getAndProcessCrl(freshestCdpUrl, maxDownloadSize, caCertificate, caInfo, importCrlSession);
                                     if (newDeltaCrl!=null) {
                                         break;
                                     }
@@ -147,22 +147,22 @@ public class CRLDownloadWorker extends BaseWorker {
         }
     }
     
-    private X509CRL getCRLFromBytes(final byte[] crlBytes) throws CRLException {
+    private StreamingCrlParser getCRLFromBytes(final byte[] crlBytes) throws CRLException {
         if (crlBytes != null) {
-            return CertTools.getCRLfromByteArray(crlBytes);
+            return StreamingCrlParser.fromByteArray(crlBytes);
         }
         return null;
     }
     
-    private X509CRL getAndProcessCrl(final URL cdpUrl, final int maxSize, final X509Certificate caCertificate, final CAInfo caInfo,
+    private StreamingCrlParser getAndProcessCrl(final URL cdpUrl, final int maxSize, final X509Certificate caCertificate, final CAInfo caInfo,
             final ImportCrlSessionLocal importCrlSession) throws CrlStoreException, AuthorizationDeniedException, CrlImportException {
-        X509CRL newCrl = null;
+        StreamingCrlParser newCrl = null;
         final byte[] crlBytesNew = NetworkTools.downloadDataFromUrl(cdpUrl, maxSize);
         if (crlBytesNew==null) {
             log.warn("Unable to download CRL for " + CertTools.getSubjectDN(caCertificate));
         } else {
             try {
-                newCrl = CertTools.getCRLfromByteArray(crlBytesNew);
+                newCrl = StreamingCrlParser.fromByteArray(crlBytesNew);
                 importCrlSession.importCrl(admin, caInfo, crlBytesNew);
             } catch (CRLException e) {
                 log.warn("Unable to decode downloaded CRL for '" + caInfo.getSubjectDN() + "'.");
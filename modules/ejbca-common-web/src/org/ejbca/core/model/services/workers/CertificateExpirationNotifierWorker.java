@@ -30,6 +30,7 @@ import org.ejbca.core.ejb.ra.EndEntityAccessSessionLocal;
 import org.ejbca.core.model.InternalEjbcaResources;
 import org.ejbca.core.model.SecConst;
 import org.ejbca.core.model.ra.UserNotificationParamGen;
+import org.ejbca.core.model.services.IShardableWorker;
 import org.ejbca.core.model.services.ServiceExecutionFailedException;
 import org.ejbca.core.model.services.actions.MailActionInfo;
 
@@ -37,9 +38,11 @@ import org.ejbca.core.model.services.actions.MailActionInfo;
  * Makes queries about which certificates that is about to expire in a given number of days and creates a 
  * notification sent to either the end user or the administrator.
  * 
+ * When the service runs sharded, each node handles the certificates in its range of fingerprints.
+ * 
  * @version: $Id$
  */
-public class CertificateExpirationNotifierWorker extends EmailSendingWorker {
+public class CertificateExpirationNotifierWorker extends EmailSendingWorker implements IShardableWorker {
 
     private static final Logger log = Logger.getLogger(CertificateExpirationNotifierWorker.class);
 
@@ -133,8 +136,9 @@ public class CertificateExpirationNotifierWorker extends EmailSendingWorker {
                             ". activeNotifiedExpireDateMin: "+now+", activeNotifiedExpireDateMax: "+(nextRunTimeStamp + thresHold)+", activeExpireDateMin: "+(runTimeStamp + thresHold));
                 }
                 try {
+                    // When the service runs sharded, only the certificates in the fingerprint range of this node are read
                     List<Object[]> fingerprintUsernameList = certificateStoreSession.findExpirationInfo(cas, certificateProfileIds, now, (nextRunTimeStamp + thresHold),
-                            (runTimeStamp + thresHold));
+                            (runTimeStamp + thresHold), getShard().getHexKeyFrom(), getShard().getHexKeyTo());
                     int count = 0;
                     for (Object[] next : fingerprintUsernameList) {
                         count++;
@@ -12,7 +12,9 @@
  *************************************************************************/
 package org.ejbca.core.model.services.workers;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
@@ -21,19 +23,28 @@ import org.ejbca.core.ejb.ca.publisher.PublisherQueueSessionLocal;
 import org.ejbca.core.ejb.ca.publisher.PublisherSessionLocal;
 import org.ejbca.core.model.InternalEjbcaResources;
 import org.ejbca.core.model.ca.publisher.BasePublisher;
+import org.ejbca.core.model.services.IShardableWorker;
 import org.ejbca.core.model.services.ServiceExecutionFailedException;
 
 /**
  * Class processing the publisher queue. Can only run on instance in one VM on
  * one node. See method docs below for information about algorithms used.
  * 
+ * When the service runs sharded, each node processes the queues of the publishers with ids in its shard, so that the nodes can
+ * process the queues of different publishers at the same time.
+ * 
  * @version $Id$
  */
-public class PublishQueueProcessWorker extends EmailSendingWorker {
+public class PublishQueueProcessWorker extends EmailSendingWorker implements IShardableWorker {
 
     private static final Logger log = Logger.getLogger(PublishQueueProcessWorker.class);
 
     public static final String PROP_PUBLISHER_IDS = "publisherids";
+    /**
+     * If "true", the queue is drained using the chunk size, parallelism and maximum entries per run that are configured in each publisher,
+     * instead of publishing one entry at a time in chunks of 100.
+     */
+    public static final String PROP_PARALLEL_DRAIN = "paralleldrain";
 
     /**
      * Semaphore making sure not two identical services run at the same time.
@@ -70,14 +81,16 @@ public class PublishQueueProcessWorker extends EmailSendingWorker {
                 if (o != null) {
                     String idstr = (String) o;
                     log.debug("Ids: " + idstr);
-                    // Loop through all handled publisher ids and process
-                    // anything in the queue
-                    String[] ids = StringUtils.split(idstr, ';');
-                    for (int i = 0; i < ids.length; i++) {
-                        int publisherId = Integer.valueOf(ids[i]);
+                    // Loop through the handled publisher ids in the shard of this node and process
+                    // anything in the queue. The queues of the other publishers are not read.
+                    for (final int publisherId : getPublisherIdsInShard(StringUtils.split(idstr, ';'))) {
                         // Get everything from the queue for this publisher id
                         BasePublisher publisher = publisherSession.getPublisher(publisherId);                  
-                        publisherQueueSession.plainFifoTryAlwaysLimit100EntriesOrderByTimeCreated(getAdmin(), publisherId, publisher);
+                        if (isParallelDrain()) {
+                            publisherQueueSession.parallelDrainQueue(getAdmin(), publisherId, publisher);
+                        } else {
+                            publisherQueueSession.plainFifoTryAlwaysLimit100EntriesOrderByTimeCreated(getAdmin(), publisherId, publisher);
+                        }
                     }
                 } else {
                     log.debug("No publisher ids configured for worker.");
@@ -93,6 +106,26 @@ public class PublishQueueProcessWorker extends EmailSendingWorker {
         log.trace("<work");
     }
 
+    /** @return the publisher ids in the shard of this node, all of them unless the service runs sharded */
+    private List<Integer> getPublisherIdsInShard(final String[] ids) {
+        final List<Integer> ret = new ArrayList<Integer>(ids.length);
+        for (final String id : ids) {
+            final int publisherId = Integer.parseInt(id);
+            if (getShard().contains(publisherId)) {
+                ret.add(publisherId);
+            }
+        }
+        if (log.isDebugEnabled() && !getShard().isAll()) {
+            log.debug("Publisher ids in shard " + getShard() + " of this node: " + ret);
+        }
+        return ret;
+    }
+
+    /** @return true if the queue should be drained using the parallel, chunked algorithm configured in each publisher */
+    private boolean isParallelDrain() {
+        return Boolean.valueOf(properties.getProperty(PROP_PARALLEL_DRAIN, "false"));
+    }
+
     /**
      * Method that must be implemented by all subclasses to EmailSendingWorker,
      * used to update status of a certificate, user, or similar
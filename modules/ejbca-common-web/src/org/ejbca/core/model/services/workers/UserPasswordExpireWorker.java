@@ -23,6 +23,7 @@ import org.cesecore.certificates.endentity.EndEntityInformation;
 import org.ejbca.core.ejb.ra.EndEntityManagementSessionLocal;
 import org.ejbca.core.model.InternalEjbcaResources;
 import org.ejbca.core.model.ra.UserNotificationParamGen;
+import org.ejbca.core.model.services.IShardableWorker;
 import org.ejbca.core.model.services.ServiceExecutionFailedException;
 import org.ejbca.core.model.services.actions.MailActionInfo;
 
@@ -34,11 +35,13 @@ import org.ejbca.core.model.services.actions.MailActionInfo;
  * - A user is generated and given username password to fetch the certificates
  * - If the user does not fetch his certificate within a configured amount of time the user is expired and is not allowed to fetch the certificate any more
  * 
+ * When the service runs sharded, each node handles the users in its partition, by the time the users were created.
+ * 
  * @author Tomas Gustavsson based on code by Philip Vendil
  *
  * @version: $Id$
  */
-public class UserPasswordExpireWorker extends EmailSendingWorker {
+public class UserPasswordExpireWorker extends EmailSendingWorker implements IShardableWorker {
 
     private static final Logger log = Logger.getLogger(UserPasswordExpireWorker.class);
 
@@ -57,8 +60,9 @@ public class UserPasswordExpireWorker extends EmailSendingWorker {
         ArrayList<EmailCertData> adminEmailQueue = new ArrayList<EmailCertData>();
        
         long timeModified = ((new Date()).getTime() - getTimeBeforeExpire());   
+        // When the service runs sharded, only the users in the partition of this node are read
         List<EndEntityInformation> userDataList = endEntityManagementSession.findUsers(new ArrayList<Integer>(getCAIdsToCheck(false)),
-                timeModified, EndEntityConstants.STATUS_NEW);
+                timeModified, EndEntityConstants.STATUS_NEW, getShard().getIndex(), getShard().getCount());
 
         for (EndEntityInformation endEntityInformation : userDataList) {
             endEntityInformation.setStatus(EndEntityConstants.STATUS_GENERATED);
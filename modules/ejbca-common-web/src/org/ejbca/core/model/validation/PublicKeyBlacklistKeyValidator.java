@@ -143,26 +143,43 @@ public class PublicKeyBlacklistKeyValidator extends KeyValidatorBase {
         // Use the entry class to create a correct fingerprint
         final String fingerprint = PublicKeyBlacklistEntry.createFingerprint(publicKey);
         log.info("Matching public key with blacklist fingerprint " + fingerprint + " with public key blacklist.");
-        if (!useOnlyCache) {
-            // A bit hackish, make a call to blacklist session to ensure that blacklist cache has this entry loaded
-            // TODO: if the key is not in the cache (which it hopefully is not) this is a database lookup for each key. Huuge performance hit
-            // should better be implemented as a full in memory cache with a state so we know if it's loaded or not, with background updates. See ECA-5951
-            // We could simply add a call to load the whole map into cache, when the cache needs updating
-            // See BlacklistSessionBean.getBlacklistEntryIdToFingerprintMap (and add cache there)
-            new EjbLocalHelper().getBlacklistSession().getBlacklistEntryId(PublicKeyBlacklistEntry.TYPE, fingerprint);
+        int id = 0;
+        if (!useOnlyCache && PublicKeyBlacklistIndex.INSTANCE.isEnabled()) {
+            // Look up the key in the index of all blacklisted fingerprints, instead of making a database lookup for each key
+            if (PublicKeyBlacklistIndex.INSTANCE.tryStartReload()) {
+                // Reloaded in the background, which ends the reload when done
+                try {
+                    new EjbLocalHelper().getBlacklistSession().reloadPublicKeyBlacklistIndex();
+                } catch (RuntimeException e) {
+                    PublicKeyBlacklistIndex.INSTANCE.endReload();
+                    throw e;
+                }
+            }
+        }
+        if (!useOnlyCache && PublicKeyBlacklistIndex.INSTANCE.isEnabled() && PublicKeyBlacklistIndex.INSTANCE.isLoaded()) {
+            id = PublicKeyBlacklistIndex.INSTANCE.getId(fingerprint);
+        } else {
+            if (!useOnlyCache) {
+                // A bit hackish, make a call to blacklist session to ensure that blacklist cache has this entry loaded.
+                // This is a database lookup for each key that is not blacklisted, so it is only used when the index is disabled or has not been loaded yet.
+                new EjbLocalHelper().getBlacklistSession().getBlacklistEntryId(PublicKeyBlacklistEntry.TYPE, fingerprint);
+            }
+            final Integer idValue = PublicKeyBlacklistEntryCache.INSTANCE.getNameToIdMap().get(fingerprint);
+            final PublicKeyBlacklistEntry entry = PublicKeyBlacklistEntryCache.INSTANCE.getEntry(idValue);
+            if (null != entry) {
+                id = entry.getID();
+            }
         }
-        Integer idValue = PublicKeyBlacklistEntryCache.INSTANCE.getNameToIdMap().get(fingerprint);
-        final PublicKeyBlacklistEntry entry = PublicKeyBlacklistEntryCache.INSTANCE.getEntry(idValue);
         boolean keySpecMatched = false;
 
-        if (null != entry) {
+        if (id != 0) {
             // Filter for key specifications.
             if (getKeyAlgorithms().contains("-1") || getKeyAlgorithms().contains(getKeySpec(publicKey))) {
                 keySpecMatched = true;
             }
         }
         if (keySpecMatched) {
-            final String message = "Public key with id " + entry.getID() + " and fingerprint " + fingerprint
+            final String message = "Public key with id " + id + " and fingerprint " + fingerprint
                     + " found in public key blacklist.";
             messages.add("Invalid: " + message);
         } else {
@@ -30,6 +30,7 @@ import org.apache.log4j.Logger;
 import org.cesecore.certificates.ca.internal.CaCertificateCache;
 import org.cesecore.certificates.certificate.CertificateStoreSessionLocal;
 import org.cesecore.certificates.certificate.HashID;
+import org.cesecore.certificates.crl.CrlStoreChangeCounter;
 import org.ejbca.config.VAConfiguration;
 
 /**
@@ -214,8 +215,65 @@ public abstract class StoreServletBase extends HttpServlet {
 		log.info("Reloading certificate and CRL caches due to request from "+req.getRemoteAddr());
 		// Reload CA certificates
 		certificateStoreSession.reloadCaCertificateCache();
+		// Make cached CRLs be checked against the database
+		CrlStoreChangeCounter.INSTANCE.increment();
 		return true;
 	}
+
+	/**
+	 * Sets the ETag and Last-Modified headers of a response, and sends 304 Not Modified if the validators in the request show that
+	 * the client already has the object. As in RFC 7232 If-Modified-Since is ignored when the request has If-None-Match.
+	 * Any other headers that should be sent with a 304 response, like Cache-Control, must be set before this is called.
+	 *
+	 * @param req the HttpServletRequest
+	 * @param resp the HttpServletResponse
+	 * @param eTag strong entity tag of the object, including the quotes
+	 * @param lastModified time in milliseconds when the object was created, or -1 if not known
+	 * @return true if 304 Not Modified has been sent and the object should not be written, false if it should be written
+	 */
+	protected boolean isNotModified(HttpServletRequest req, HttpServletResponse resp, String eTag, long lastModified) {
+		resp.setHeader("ETag", eTag);
+		if ( lastModified>=0 ) {
+			resp.setDateHeader("Last-Modified", lastModified);
+		}
+		final String ifNoneMatch = req.getHeader("If-None-Match");
+		final boolean notModified;
+		if ( ifNoneMatch!=null ) {
+			notModified = matchesETag(ifNoneMatch, eTag);
+		} else if ( lastModified>=0 ) {
+			long ifModifiedSince;
+			try {
+				ifModifiedSince = req.getDateHeader("If-Modified-Since");
+			} catch (IllegalArgumentException e) {
+				ifModifiedSince = -1;
+			}
+			// HTTP dates have a resolution of one second
+			notModified = ifModifiedSince>=0 && lastModified/1000<=ifModifiedSince/1000;
+		} else {
+			notModified = false;
+		}
+		if ( notModified ) {
+			resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+		}
+		return notModified;
+	}
+
+	/** @return true if the If-None-Match header value is * or lists the entity tag, compared weakly as RFC 7232 says for If-None-Match */
+	private static boolean matchesETag(String ifNoneMatch, String eTag) {
+		for ( final String tag : ifNoneMatch.split(",") ) {
+			String trimmed = tag.trim();
+			if ( trimmed.equals("*") ) {
+				return true;
+			}
+			if ( trimmed.startsWith("W/") ) {
+				trimmed = trimmed.substring(2);
+			}
+			if ( trimmed.equals(eTag) ) {
+				return true;
+			}
+		}
+		return false;
+	}
 	
 	/**
 	 * Checks if the request originates from localhost
@@ -0,0 +1,143 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.util.mail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.mail.Address;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Sends batches of messages from the outbound mail queue over a single transport connection, which is kept open between batches
+ * until it has been unused for the configured idle time. Transport.send would instead open a new connection for every message.
+ *
+ * @version $Id$
+ */
+public class MailQueueSender {
+
+    private static final Logger log = Logger.getLogger(MailQueueSender.class);
+
+    private final Session session;
+    private final long idleTime;
+    private Transport transport = null;
+    private long lastUsed = 0;
+
+    /**
+     * @param session the mail session to send with
+     * @param idleTime the time in milliseconds that an unused connection is kept open
+     */
+    public MailQueueSender(final Session session, final long idleTime) {
+        this.session = session;
+        this.idleTime = idleTime;
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    /**
+     * Sends the messages over one connection. A message that is rejected by the server does not prevent the others from being sent,
+     * but if the connection fails it is reopened for the next message. A message that was accepted for some of its recipients counts
+     * as sent, since sending it again would give the others a duplicate.
+     *
+     * @param messages the messages to send
+     * @return a list with the same size as messages, with null for each message that was sent or the reason it could not be sent
+     */
+    public synchronized List<MessagingException> send(final List<MimeMessage> messages) {
+        closeIfIdle();
+        if (transport != null && !transport.isConnected()) {
+            // The server has closed the connection since the last batch
+            close();
+        }
+        final List<MessagingException> ret = new ArrayList<>(messages.size());
+        MessagingException connectFailure = null;
+        for (final MimeMessage message : messages) {
+            if (connectFailure != null) {
+                // No point in trying to connect again for every message in the batch
+                ret.add(connectFailure);
+                continue;
+            }
+            if (transport == null) {
+                try {
+                    final Transport newTransport = session.getTransport();
+                    newTransport.connect();
+                    transport = newTransport;
+                } catch (MessagingException e) {
+                    connectFailure = e;
+                    ret.add(e);
+                    continue;
+                }
+            }
+            try {
+                transport.sendMessage(message, message.getAllRecipients());
+                ret.add(null);
+            } catch (SendFailedException e) {
+                // The server rejected some recipients of this message, but the connection can still be used
+                final Address[] validSent = e.getValidSentAddresses();
+                if (validSent != null && validSent.length > 0) {
+                    log.warn("Email was sent to " + Arrays.toString(validSent) + " but not to " + Arrays.toString(e.getInvalidAddresses()) + " "
+                            + Arrays.toString(e.getValidUnsentAddresses()) + ": " + e.getMessage());
+                    ret.add(null);
+                } else {
+                    ret.add(e);
+                }
+            } catch (MessagingException e) {
+                ret.add(e);
+                close();
+            }
+            lastUsed = System.currentTimeMillis();
+        }
+        return ret;
+    }
+
+    /**
+     * @param e the reason a message could not be sent, as returned by {@link #send(List)}
+     * @return true if the server rejected recipients of the message, so that sending it again would fail in the same way
+     */
+    public static boolean isPermanentFailure(final MessagingException e) {
+        if (!(e instanceof SendFailedException)) {
+            return false;
+        }
+        final Address[] invalid = ((SendFailedException) e).getInvalidAddresses();
+        return invalid != null && invalid.length > 0;
+    }
+
+    /** Closes the connection if it has not been used for the idle time. */
+    public synchronized void closeIfIdle() {
+        if (transport != null && System.currentTimeMillis() - lastUsed >= idleTime) {
+            close();
+        }
+    }
+
+    /** Closes the connection, if it is open. */
+    public synchronized void close() {
+        if (transport != null) {
+            try {
+                transport.close();
+            } catch (MessagingException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Failed to close mail transport: " + e.getMessage());
+                }
+            }
+            transport = null;
+        }
+    }
+}
@@ -13,6 +13,8 @@
 
 package org.ejbca.util.mail;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.Date;
 import java.util.List;
 
@@ -29,10 +31,16 @@ import javax.mail.internet.MimeMultipart;
 import org.apache.log4j.Logger;
 import org.ejbca.config.MailConfiguration;
 import org.ejbca.core.ejb.ServiceLocator;
+import org.ejbca.core.ejb.mail.MailQueueSessionLocal;
+import org.ejbca.core.model.util.EjbLocalHelper;
+import org.ejbca.core.model.util.LocalLookupException;
 
 /**
  * Simple wrapper for JavaMail.
  * 
+ * When the outbound mail queue is enabled, see MailConfiguration.isMailQueueEnabled(), messages are stored in the queue by the
+ * caller and sent later by MailQueueSessionBean.
+ * 
  * @version $Id$
  */
 public class MailSender {
@@ -79,62 +87,14 @@ public class MailSender {
         // mail.smtp.timeout
         // mail.smtp.connectiontimeout
         // mail.smtp.writetimeout
-        Message msg = new MimeMessage(mailSession);
         try {
-        	if (log.isDebugEnabled()) {
-        		log.debug("from: " + fromAddress);
-        	}
-			msg.setFrom(new InternetAddress(fromAddress));
-			boolean atLeastOneRecipient = false;
-			if (toList != null) {
-				for (int i=0; i<toList.size(); i++) {
-					String to = toList.get(i);
-					msg.addRecipients(javax.mail.Message.RecipientType.TO, InternetAddress.parse(to, false));
-		        	if (log.isDebugEnabled()) {
-		        		log.debug("to: " + to);
-		        	}
-					atLeastOneRecipient = true;
-				}
-			}
-			if (ccList != null) {
-				for (int i=0; i<ccList.size(); i++) {
-					String cc = ccList.get(i);
-					msg.addRecipients(javax.mail.Message.RecipientType.CC, InternetAddress.parse(cc, false));
-		        	if (log.isDebugEnabled()) {
-		        		log.debug("cc: " + cc);
-		        	}
-					atLeastOneRecipient = true;
-				}
-			}
-			if (!atLeastOneRecipient) {
+			final Message msg = createMessage(mailSession, fromAddress, toList, ccList, subject, content, attachments);
+			if (msg == null) {
 				return false;	// We need at least one recipient.. either TO or CC
 			}
-	        msg.setSubject(subject);
-        	if (log.isDebugEnabled()) {
-        		log.debug("subject: " + subject);
-        	}
-	        if (attachments == null || attachments.size() == 0) {
-		        msg.setContent(content, MailConfiguration.getMailMimeType());
-	        	if (log.isDebugEnabled()) {
-	        		log.debug("content: " + content);
-	        	}
-	        } else {
-		        Multipart multipart = new MimeMultipart();
-		        // Add the text message first
-		        MimeBodyPart msgBody = new MimeBodyPart();
-		        msgBody.setContent(content, MailConfiguration.getMailMimeType());
-		        multipart.addBodyPart(msgBody);
-		        // Attach all the requested files
-                for (MailAttachment mailAttachment : attachments) {
-                    MimeBodyPart msgAttachment = new MimeBodyPart();
-                    msgAttachment.setDataHandler(mailAttachment.getDataHandler());
-                    msgAttachment.setFileName(mailAttachment.getName());
-                    multipart.addBodyPart(msgAttachment);
-                }
-		        msg.setContent(multipart);
-	        }
-	        msg.setHeader("X-Mailer", "JavaMailer");
-	        msg.setSentDate(new Date());
+			if (MailConfiguration.isMailQueueEnabled() && queueMail(msg)) {
+				return true;
+			}
 	        Transport.send(msg);
 		} catch (MessagingException e) {
 			log.error("Unable to send email: ", e);
@@ -142,4 +102,93 @@ public class MailSender {
 		}
         return true;
 	}
+
+	/**
+	 * Creates a message, as sent by {@link #sendMail(String, List, List, String, String, List)}.
+	 * 
+	 * @return the message, or null if there are no recipients
+	 * @throws MessagingException if the message could not be created, for example because of an invalid address
+	 */
+	public static MimeMessage createMessage(Session mailSession, String fromAddress, List<String> toList, List<String> ccList, String subject, String content,
+	        List<MailAttachment> attachments) throws MessagingException {
+        MimeMessage msg = new MimeMessage(mailSession);
+    	if (log.isDebugEnabled()) {
+    		log.debug("from: " + fromAddress);
+    	}
+		msg.setFrom(new InternetAddress(fromAddress));
+		boolean atLeastOneRecipient = false;
+		if (toList != null) {
+			for (int i=0; i<toList.size(); i++) {
+				String to = toList.get(i);
+				msg.addRecipients(javax.mail.Message.RecipientType.TO, InternetAddress.parse(to, false));
+	        	if (log.isDebugEnabled()) {
+	        		log.debug("to: " + to);
+	        	}
+				atLeastOneRecipient = true;
+			}
+		}
+		if (ccList != null) {
+			for (int i=0; i<ccList.size(); i++) {
+				String cc = ccList.get(i);
+				msg.addRecipients(javax.mail.Message.RecipientType.CC, InternetAddress.parse(cc, false));
+	        	if (log.isDebugEnabled()) {
+	        		log.debug("cc: " + cc);
+	        	}
+				atLeastOneRecipient = true;
+			}
+		}
+		if (!atLeastOneRecipient) {
+			return null;
+		}
+        msg.setSubject(subject);
+    	if (log.isDebugEnabled()) {
+    		log.debug("subject: " + subject);
+    	}
+        if (attachments == null || attachments.size() == 0) {
+	        msg.setContent(content, MailConfiguration.getMailMimeType());
+        	if (log.isDebugEnabled()) {
+        		log.debug("content: " + content);
+        	}
+        } else {
+	        Multipart multipart = new MimeMultipart();
+	        // Add the text message first
+	        MimeBodyPart msgBody = new MimeBodyPart();
+	        msgBody.setContent(content, MailConfiguration.getMailMimeType());
+	        multipart.addBodyPart(msgBody);
+	        // Attach all the requested files
+            for (MailAttachment mailAttachment : attachments) {
+                MimeBodyPart msgAttachment = new MimeBodyPart();
+                msgAttachment.setDataHandler(mailAttachment.getDataHandler());
+                msgAttachment.setFileName(mailAttachment.getName());
+                multipart.addBodyPart(msgAttachment);
+            }
+	        msg.setContent(multipart);
+        }
+        msg.setHeader("X-Mailer", "JavaMailer");
+        msg.setSentDate(new Date());
+        return msg;
+	}
+
+	/**
+	 * Adds the message to the outbound mail queue, in the transaction of the caller.
+	 * 
+	 * @return true if the message was queued, or false if the queue is not available here and the message should be sent directly
+	 */
+	private static boolean queueMail(final Message msg) throws MessagingException {
+		final MailQueueSessionLocal mailQueueSession;
+		try {
+			mailQueueSession = new EjbLocalHelper().getMailQueueSession();
+		} catch (LocalLookupException e) {
+			log.warn("The outbound mail queue is not available, sending email directly: " + e.getMessage());
+			return false;
+		}
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try {
+			msg.writeTo(baos);
+		} catch (IOException e) {
+			throw new MessagingException("Unable to encode email.", e);
+		}
+		mailQueueSession.addToQueue(baos.toByteArray());
+		return true;
+	}
 }
@@ -0,0 +1,88 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests that the shards of a sharded service divide the work between the nodes.
+ *
+ * @version $Id$
+ */
+public class ServiceShardTest {
+
+    @Test
+    public void testEachKeyInOneShard() {
+        final int count = 3;
+        final int[] sizes = new int[count];
+        for (int key = -1000; key < 2000; key++) {
+            int matches = 0;
+            for (int index = 0; index < count; index++) {
+                if (new ServiceShard(index, count).contains(key)) {
+                    matches++;
+                    sizes[index]++;
+                }
+            }
+            assertEquals("Key " + key + " should be in exactly one shard.", 1, matches);
+        }
+        for (int index = 0; index < count; index++) {
+            assertTrue("Shard " + index + " has only " + sizes[index] + " of 3000 keys.", sizes[index] > 800);
+        }
+        int matches = 0;
+        for (int index = 0; index < count; index++) {
+            if (new ServiceShard(index, count).contains("fingerprint")) {
+                matches++;
+            }
+        }
+        assertEquals("A string key should be in exactly one shard.", 1, matches);
+    }
+
+    @Test
+    public void testHexKeyRanges() {
+        assertNull(ServiceShard.ALL.getHexKeyFrom());
+        assertNull(ServiceShard.ALL.getHexKeyTo());
+        final int count = 3;
+        assertNull(new ServiceShard(0, count).getHexKeyFrom());
+        assertEquals("5555", new ServiceShard(0, count).getHexKeyTo());
+        assertEquals("5555", new ServiceShard(1, count).getHexKeyFrom());
+        assertEquals("aaaa", new ServiceShard(1, count).getHexKeyTo());
+        assertEquals("aaaa", new ServiceShard(2, count).getHexKeyFrom());
+        assertNull(new ServiceShard(2, count).getHexKeyTo());
+        // Each fingerprint is in exactly one range, compared as the database compares strings
+        for (final String fingerprint : new String[] { "0000000000", "5554ffffff", "5555000000", "a0ffffffff", "aaaa000000", "ffffffffff" }) {
+            int matches = 0;
+            for (int index = 0; index < count; index++) {
+                final ServiceShard shard = new ServiceShard(index, count);
+                if ((shard.getHexKeyFrom() == null || fingerprint.compareTo(shard.getHexKeyFrom()) >= 0)
+                        && (shard.getHexKeyTo() == null || fingerprint.compareTo(shard.getHexKeyTo()) < 0)) {
+                    matches++;
+                }
+            }
+            assertEquals("Fingerprint " + fingerprint + " should be in exactly one range.", 1, matches);
+        }
+    }
+
+    @Test
+    public void testAll() {
+        assertTrue(ServiceShard.ALL.isAll());
+        assertTrue(ServiceShard.ALL.contains(4711));
+        assertTrue(ServiceShard.ALL.contains((String) null));
+        assertFalse(new ServiceShard(0, 2).contains((String) null));
+        assertFalse(new ServiceShard(1, 2).isAll());
+    }
+}
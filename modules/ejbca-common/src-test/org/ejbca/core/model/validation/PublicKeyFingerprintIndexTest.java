@@ -0,0 +1,86 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.bouncycastle.util.encoders.Hex;
+import org.cesecore.util.CertTools;
+import org.junit.Test;
+
+/**
+ * Tests of the off-heap public key fingerprint index.
+ *
+ * @version $Id$
+ */
+public class PublicKeyFingerprintIndexTest {
+
+    @Test
+    public void testPutGetAndRemove() throws IOException {
+        final PublicKeyFingerprintIndex index = new PublicKeyFingerprintIndex(100);
+        final String fingerprint = getFingerprint("key1");
+        assertEquals("Empty index should not find anything.", 0, index.getId(fingerprint));
+        assertTrue(index.put(fingerprint, 4711));
+        assertTrue(index.put(getFingerprint("key2"), -4712));
+        assertEquals(4711, index.getId(fingerprint));
+        assertEquals("Lookup should not depend on the case of the hex encoding.", 4711, index.getId(fingerprint.toUpperCase()));
+        assertEquals(-4712, index.getId(getFingerprint("key2")));
+        assertEquals(0, index.getId(getFingerprint("key3")));
+        assertEquals(2, index.size());
+        // Replace
+        assertTrue(index.put(fingerprint, 4713));
+        assertEquals(4713, index.getId(fingerprint));
+        assertEquals(2, index.size());
+        assertTrue(index.remove(fingerprint));
+        assertFalse(index.remove(fingerprint));
+        assertEquals(0, index.getId(fingerprint));
+        assertEquals(-4712, index.getId(getFingerprint("key2")));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testOtherValues() throws IOException {
+        final PublicKeyFingerprintIndex index = new PublicKeyFingerprintIndex(10);
+        assertTrue(index.put("not a fingerprint", 1));
+        assertEquals(1, index.getId("not a fingerprint"));
+        assertEquals(0, index.getId("not a fingerprint either"));
+        assertEquals(0, index.getId(null));
+    }
+
+    @Test
+    public void testFullIndex() throws IOException {
+        final PublicKeyFingerprintIndex index = new PublicKeyFingerprintIndex(1000);
+        int added = 0;
+        while (index.put(getFingerprint("key" + added), added + 1)) {
+            added++;
+        }
+        assertTrue("Index should have room for the expected number of entries.", added >= 1000);
+        assertFalse(index.hasRoom());
+        for (int i = 0; i < added; i++) {
+            assertEquals(i + 1, index.getId(getFingerprint("key" + i)));
+        }
+        // Deleted slots are reused
+        assertTrue(index.remove(getFingerprint("key0")));
+        assertTrue(index.put(getFingerprint("another key"), 4711));
+        assertEquals(4711, index.getId(getFingerprint("another key")));
+        assertEquals(0, index.getId(getFingerprint("key0")));
+    }
+
+    private static String getFingerprint(final String value) {
+        return new String(Hex.encode(CertTools.generateSHA256Fingerprint(value.getBytes())));
+    }
+}
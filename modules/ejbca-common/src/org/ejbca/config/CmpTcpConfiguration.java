@@ -17,4 +17,35 @@ public class CmpTcpConfiguration {
     public static String getTCPBindAdress() {
         return EjbcaConfigurationHolder.getString("cmp.tcp.bindadress");
     }
-}
\ No newline at end of file
+
+    /** @return true if the NIO based server should be used instead of QuickServer */
+    public static boolean isTCPNioServer() {
+        return "nio".equalsIgnoreCase(EjbcaConfigurationHolder.getString("cmp.tcp.server"));
+    }
+
+    public static int getTCPWorkerThreads() {
+        return getInt("cmp.tcp.workers", 32);
+    }
+
+    public static int getTCPQueueSize() {
+        return getInt("cmp.tcp.queuesize", 1000);
+    }
+
+    public static int getTCPMaxConnections() {
+        return getInt("cmp.tcp.maxconnections", 10000);
+    }
+
+    /** @return milliseconds before an idle connection is closed */
+    public static long getTCPReadTimeout() {
+        return getInt("cmp.tcp.readtimeout", 30000);
+    }
+
+    private static int getInt(final String key, final int defaultValue) {
+        final String value = EjbcaConfigurationHolder.getString(key);
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -313,6 +313,21 @@ public final class EjbcaConfiguration {
         return getLongProperty("peerconnector.cachetime", 60000L);
     }
 
+    /** @return the maximum number of changed CRL entries whose status is updated in the same transaction when a CRL is imported. */
+    public static int getCrlImportBatchSize() {
+        return Math.max(1, getIntProperty("crlimport.batchsize", 1000));
+    }
+
+    /** @return how long in milliseconds the RA waits for a back end when it combines the results from several back ends. */
+    public static long getRaBackendTimeout() {
+        return Math.max(1L, getLongProperty("ra.backend.timeout", 10000L));
+    }
+
+    /** @return how long in milliseconds the RA caches whether a back end is available, 0 to not cache it. */
+    public static long getRaBackendAvailabilityCacheTime() {
+        return Math.max(0L, getLongProperty("ra.backend.availabilitycachetime", 1000L));
+    }
+
     /** @return the value as a boolean or the default otherwise. */
     private static boolean getBooleanProperty(final String key, final boolean defaultValue) {
         final String value = EjbcaConfigurationHolder.getString(key);
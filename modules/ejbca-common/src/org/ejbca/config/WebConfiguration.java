@@ -272,6 +272,24 @@ public class WebConfiguration {
         return Boolean.valueOf(EjbcaConfigurationHolder.getString("certstore.enabled"));
     }
     
+    /**
+     * Returns the number of milliseconds a cached latest CRL is served by the CRL store servlet without checking the database for a
+     * newer one. CRLs stored on the same node are seen at once. Default is 1000, 0 checks the database on every request.
+     */
+    public static long getCrlStoreCacheTime() {
+        long value = 1000;
+        final String cacheTime = EjbcaConfigurationHolder.getString("crlstore.cachetime");
+        if (cacheTime == null) {
+            return value;
+        }
+        try {
+            value = Long.parseLong(cacheTime.trim());
+        } catch (NumberFormatException e) {
+            log.warn("\"crlstore.cachetime\" is not a decimal number. Using default value: " + value);
+        }
+        return value;
+    }
+    
     /** Returns the base URL path of the CRL store servlet, e.g. /ejbca/publicweb/crls */ 
     public static String getCrlStoreContextRoot() {
         String value = EjbcaConfigurationHolder.getString("crlstore.contextroot");
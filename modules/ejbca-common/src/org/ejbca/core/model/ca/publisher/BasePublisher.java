@@ -49,9 +49,15 @@ public abstract class BasePublisher extends UpgradeableDataHashMap implements Se
     protected static final String KEEPPUBLISHEDINQUEUE           = "keepPublishedInQueue";
     protected static final String USEQUEUEFORCRLS                = "useQueueForCrls";
     protected static final String USEQUEUEFORCERTIFICATES        = "useQueueForCertificates";
+    protected static final String QUEUECHUNKSIZE                 = "queueChunkSize";
+    protected static final String QUEUEPARALLELISM               = "queueParallelism";
+    protected static final String QUEUEMAXENTRIESPERRUN          = "queueMaxEntriesPerRun";
 
     // Default values
     public static final boolean DEFAULT_ONLYUSEQUEUE 			 = false;
+    public static final int DEFAULT_QUEUECHUNKSIZE               = 100;
+    public static final int DEFAULT_QUEUEPARALLELISM             = 1;
+    public static final int DEFAULT_QUEUEMAXENTRIESPERRUN        = 20000;
     
     // Values used for lookup that are not stored in the data hashmap
     private int id;
@@ -154,6 +160,47 @@ public abstract class BasePublisher extends UpgradeableDataHashMap implements Se
      */
     public void setUseQueueForCertificates(boolean useQueueForCertificates) { data.put(USEQUEUEFORCERTIFICATES, Boolean.valueOf(useQueueForCertificates));}
 
+    /**
+     * @return the number of publisher queue entries that are read, published and removed together when the queue is drained
+     */
+    public int getQueueChunkSize() { return getPositiveIntegerOrDefault(QUEUECHUNKSIZE, DEFAULT_QUEUECHUNKSIZE); }
+
+    /**
+     * Sets the number of publisher queue entries that are read, published and removed together when the queue is drained
+     * @param queueChunkSize a positive number of entries
+     */
+    public void setQueueChunkSize(int queueChunkSize) { data.put(QUEUECHUNKSIZE, Integer.valueOf(queueChunkSize)); }
+
+    /**
+     * @return the maximum number of concurrent publishing operations that are used when the queue is drained
+     */
+    public int getQueueParallelism() { return getPositiveIntegerOrDefault(QUEUEPARALLELISM, DEFAULT_QUEUEPARALLELISM); }
+
+    /**
+     * Sets the maximum number of concurrent publishing operations that are used when the queue is drained
+     * @param queueParallelism a positive number of publishing threads
+     */
+    public void setQueueParallelism(int queueParallelism) { data.put(QUEUEPARALLELISM, Integer.valueOf(queueParallelism)); }
+
+    /**
+     * @return the maximum number of publisher queue entries that are processed each time the queue is drained
+     */
+    public int getQueueMaxEntriesPerRun() { return getPositiveIntegerOrDefault(QUEUEMAXENTRIESPERRUN, DEFAULT_QUEUEMAXENTRIESPERRUN); }
+
+    /**
+     * Sets the maximum number of publisher queue entries that are processed each time the queue is drained
+     * @param queueMaxEntriesPerRun a positive number of entries
+     */
+    public void setQueueMaxEntriesPerRun(int queueMaxEntriesPerRun) { data.put(QUEUEMAXENTRIESPERRUN, Integer.valueOf(queueMaxEntriesPerRun)); }
+
+    private int getPositiveIntegerOrDefault(final String key, final int defaultValue) {
+        final Object o = data.get(key);
+        if (o instanceof Integer && ((Integer) o).intValue() > 0) {
+            return ((Integer) o).intValue();
+        }
+        return defaultValue;
+    }
+
     /** Asks the publisher if the certificate with these parameters will be published. Used by the publisher queue to avoid
      * storing things that will never be published in the publisher queue.
      * 
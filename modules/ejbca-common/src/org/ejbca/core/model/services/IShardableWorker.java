@@ -0,0 +1,32 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.services;
+
+/**
+ * A worker that can divide its work between the nodes in a cluster, when its service is configured for sharded execution.
+ *
+ * Each node that runs the service is given a shard before work() is called, and should only do the work that the shard contains.
+ * While nodes join or leave the cluster, the nodes may for one run disagree on how many they are, so the work must be safe to
+ * do twice or to skip until the next run.
+ *
+ * @version $Id$
+ */
+public interface IShardableWorker extends IWorker {
+
+    /**
+     * Sets the share of the work that this node should do in the next call to work().
+     *
+     * @param shard the shard of this node, or ServiceShard.ALL to do all work
+     */
+    void setShard(ServiceShard shard);
+}
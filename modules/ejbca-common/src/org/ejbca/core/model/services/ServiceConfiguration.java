@@ -37,7 +37,7 @@ public class ServiceConfiguration extends UpgradeableDataHashMap implements Seri
     /** Internal localization of logs and errors */
     private static final InternalEjbcaResources intres = InternalEjbcaResources.getInstance();
     
-	private static final float LATEST_VERSION = 6;
+	private static final float LATEST_VERSION = 7;
 	
 	private static final String INTERVALCLASSPATH = "INTERVALCLASSPATH";
 	private static final String INTERVALPROPERTIES = "INTERVALPROPERTIES";
@@ -50,6 +50,7 @@ public class ServiceConfiguration extends UpgradeableDataHashMap implements Seri
 	private static final String HIDDEN = "HIDDEN";
 	private static final String PINTONODES = "PINTONODES";
 	private static final String RUNONALLNODES = "RUNONALLNODES";
+	private static final String SHARDEDEXECUTION = "SHARDEDEXECUTION";
 	
 	/**
 	 * Constructor used to create a new service configuration.
@@ -65,6 +66,7 @@ public class ServiceConfiguration extends UpgradeableDataHashMap implements Seri
 		setIntervalClassPath("");
 		setIntervalProperties(new Properties());
 		setRunOnAllNodes(false);
+		setShardedExecution(false);
 	}
 	
 	
@@ -224,6 +226,22 @@ public class ServiceConfiguration extends UpgradeableDataHashMap implements Seri
 	    data.put(RUNONALLNODES, Boolean.valueOf(b));
 	}
 
+	/**
+	 * @return true if the nodes in the cluster should divide the work of the service between them, instead of one node at a time
+	 * doing all of it. Only used by workers that implement IShardableWorker, and not when the service runs on all nodes.
+	 */
+	public boolean isShardedExecution() {
+	    Boolean ret = (Boolean) data.get(SHARDEDEXECUTION);
+	    if (ret != null) {
+	        return ret.booleanValue();
+	    }
+	    return false;
+	}
+
+	public void setShardedExecution(boolean b) {
+	    data.put(SHARDEDEXECUTION, Boolean.valueOf(b));
+	}
+
 	@Override
 	public float getLatestVersion() {
 		return LATEST_VERSION;
@@ -314,6 +332,11 @@ public class ServiceConfiguration extends UpgradeableDataHashMap implements Seri
                 // The RUNONALLNODES field was added
                 setRunOnAllNodes(false);
             }
+            if (Float.compare(Float.valueOf(7), getVersion()) > 0) { // v7
+                log.debug("Upgrading to version 7");
+                // The SHARDEDEXECUTION field was added
+                setShardedExecution(false);
+            }
 
 			data.put(VERSION, new Float(LATEST_VERSION));
 		}		
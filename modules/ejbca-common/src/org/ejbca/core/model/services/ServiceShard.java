@@ -0,0 +1,101 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.services;
+
+import java.io.Serializable;
+
+/**
+ * The share of the work of a sharded service that one node does in one run. The work is divided into count partitions by a hash
+ * of a key, such as a CA id, a publisher id or a certificate fingerprint, and this node does the partition with the given index.
+ *
+ * @version $Id$
+ */
+public final class ServiceShard implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The single shard that contains all work, used when a service is not sharded */
+    public static final ServiceShard ALL = new ServiceShard(0, 1);
+
+    private final int index;
+    private final int count;
+
+    /**
+     * @param index the index of the partition of this node, from 0 to count-1
+     * @param count the number of partitions, which is the number of live nodes
+     */
+    public ServiceShard(final int index, final int count) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("Invalid shard " + index + " of " + count);
+        }
+        this.index = index;
+        this.count = count;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /** @return true if this is the only shard, which contains all work */
+    public boolean isAll() {
+        return count == 1;
+    }
+
+    /** @return true if the work with the given key belongs to this shard */
+    public boolean contains(final int key) {
+        if (count == 1) {
+            return true;
+        }
+        // Mix the bits, since ids such as CA ids and publisher ids are not always evenly spread
+        int hash = key * 0x9E3779B9;
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, count) == index;
+    }
+
+    /** @return true if the work with the given key belongs to this shard, false if the key is null and this is not the only shard */
+    public boolean contains(final String key) {
+        if (count == 1) {
+            return true;
+        }
+        return key != null && contains(key.hashCode());
+    }
+
+    /**
+     * The work can also be divided by ranges of a key that is a lower case hex string with evenly spread values, such as a
+     * certificate fingerprint, so that a database query can select the share of a node. The ranges are split on the first four hex
+     * digits.
+     *
+     * @return the lowest key in this shard (inclusive), or null if the shard starts at the lowest possible key
+     */
+    public String getHexKeyFrom() {
+        return index == 0 ? null : getHexKey(index);
+    }
+
+    /** @return the first key after this shard (exclusive), or null if the shard ends at the highest possible key */
+    public String getHexKeyTo() {
+        return index == count - 1 ? null : getHexKey(index + 1);
+    }
+
+    private String getHexKey(final int boundary) {
+        return String.format("%04x", (int) ((long) boundary * 0x10000 / count));
+    }
+
+    @Override
+    public String toString() {
+        return (index + 1) + " of " + count;
+    }
+}
@@ -18,7 +18,7 @@ import java.util.Map;
 
 import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.internal.CommonCache;
-import org.cesecore.internal.CommonCacheBase;
+import org.cesecore.internal.ConcurrentCommonCache;
 
 /**
  * Public key blacklist entry (see {@link PublicKeyBlacklistEntry}) and name to id lookup cache. 
@@ -30,7 +30,7 @@ public enum PublicKeyBlacklistEntryCache implements CommonCache<PublicKeyBlackli
 
     INSTANCE;
 
-    private final CommonCache<PublicKeyBlacklistEntry> cache = new CommonCacheBase<PublicKeyBlacklistEntry>() {
+    private final CommonCache<PublicKeyBlacklistEntry> cache = new ConcurrentCommonCache<PublicKeyBlacklistEntry>() {
         @Override
         protected long getCacheTime() {
             return Math.max(CesecoreConfiguration.getCachePublicKeyBlacklistTime(), 0);
@@ -0,0 +1,117 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.validation;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.log4j.Logger;
+import org.cesecore.config.CesecoreConfiguration;
+
+/**
+ * Holds the {@link PublicKeyFingerprintIndex} of all public key blacklist entries of this node.
+ * Configured through CesecoreConfiguration.getPublicKeyBlacklistIndexReloadTime().
+ *
+ * The index is built in the background by BlacklistSessionBean.reloadPublicKeyBlacklistIndex() and replaced as a whole, so lookups
+ * are never blocked by a reload. Changes made through BlacklistSessionBean on this node are applied when their transaction commits.
+ *
+ * @version $Id$
+ */
+public enum PublicKeyBlacklistIndex {
+    INSTANCE;
+
+    private static final Logger log = Logger.getLogger(PublicKeyBlacklistIndex.class);
+
+    private volatile PublicKeyFingerprintIndex index = null;
+    private volatile long lastReload = 0;
+    private final AtomicBoolean reloading = new AtomicBoolean(false);
+    /** Set if an entry changes while the index is reloaded, since the reload may have missed the change. Guarded by this. */
+    private boolean changedDuringReload = false;
+
+    /** @return true if public keys should be looked up in the index instead of in the database */
+    public boolean isEnabled() {
+        return CesecoreConfiguration.getPublicKeyBlacklistIndexReloadTime() >= 0;
+    }
+
+    /** @return true if the index has been loaded and can be used for lookups */
+    public boolean isLoaded() {
+        return index != null;
+    }
+
+    /**
+     * Only one caller at a time is allowed to reload the index, and {@link #endReload()} must be called when the reload is done.
+     *
+     * @return true if the index needs to be (re)loaded and the caller should do it
+     */
+    public boolean tryStartReload() {
+        if (index != null && lastReload + CesecoreConfiguration.getPublicKeyBlacklistIndexReloadTime() > System.currentTimeMillis()) {
+            return false;
+        }
+        if (!reloading.compareAndSet(false, true)) {
+            return false;
+        }
+        synchronized (this) {
+            changedDuringReload = false;
+        }
+        return true;
+    }
+
+    public void endReload() {
+        reloading.set(false);
+    }
+
+    /** Replace the index with a newly loaded one. */
+    public synchronized void replaceWith(final PublicKeyFingerprintIndex newIndex) {
+        index = newIndex;
+        // Load again at the next lookup if the new index may be missing a change
+        lastReload = changedDuringReload ? 0 : System.currentTimeMillis();
+        if (log.isDebugEnabled()) {
+            log.debug("Loaded public key blacklist index with " + newIndex.size() + " entries.");
+        }
+    }
+
+    /** Add or update an entry in the index, if it has been loaded. */
+    public synchronized void add(final int id, final String fingerprint) {
+        changedDuringReload = true;
+        if (index == null || id == 0 || id == -1) {
+            // 0 and -1 are not real ids, see BlacklistSessionBean.getBlacklistEntryId
+            return;
+        }
+        if (!index.put(fingerprint, id)) {
+            // The index is full, so it is rebuilt with more room at the next lookup
+            log.debug("Public key blacklist index is full and will be reloaded.");
+            index = null;
+        }
+    }
+
+    /** Remove an entry from the index, if it has been loaded. */
+    public synchronized void remove(final String fingerprint) {
+        changedDuringReload = true;
+        if (index != null) {
+            index.remove(fingerprint);
+        }
+    }
+
+    /**
+     * @param fingerprint the fingerprint of a public key, see {@link PublicKeyBlacklistEntry#createFingerprint(java.security.PublicKey)}
+     * @return the id of the blacklist entry for the public key, or 0 if it is not blacklisted or the index has not been loaded
+     */
+    public int getId(final String fingerprint) {
+        final PublicKeyFingerprintIndex current = index;
+        return current == null ? 0 : current.getId(fingerprint);
+    }
+
+    /** Drop the index, so that it is reloaded from the database at the next lookup. */
+    public synchronized void flush() {
+        index = null;
+    }
+}
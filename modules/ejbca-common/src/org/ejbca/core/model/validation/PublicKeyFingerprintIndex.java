@@ -0,0 +1,279 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.validation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Open addressing hash table from public key fingerprint to blacklist entry id, stored outside of the Java heap in a memory mapped
+ * temporary file.
+ *
+ * Each slot holds the first 16 bytes of the fingerprint followed by the id of the entry, so a slot takes 20 bytes. At most 3/4 of the
+ * slots are used and the number of slots is a power of two, so the index takes between 27 and 54 bytes per entry, instead of the few
+ * hundred bytes of a cached {@link PublicKeyBlacklistEntry}. Fingerprints are SHA-256 hashes, so 16 bytes is plenty to tell them apart.
+ * Values that are not hex encoded SHA-256 fingerprints are hashed with SHA-256 first.
+ *
+ * Lookups of hex encoded fingerprints do not allocate any objects and may run concurrently with a single writer. Changes must be
+ * serialized by the caller. The table does not grow, so create it with room for the expected number of entries.
+ *
+ * @version $Id$
+ */
+public class PublicKeyFingerprintIndex {
+
+    private static final Logger log = Logger.getLogger(PublicKeyFingerprintIndex.class);
+
+    private static final int KEY_LENGTH = 16;
+    private static final int SLOT_SIZE = KEY_LENGTH + 4;
+    private static final int FINGERPRINT_HEX_LENGTH = 64;
+    private static final int EMPTY = 0;
+    private static final int DELETED = -1;
+    /** Max share of used slots (including deleted ones), to keep probe sequences short */
+    private static final double MAX_LOAD_FACTOR = 0.75;
+
+    private final ByteBuffer table;
+    private final int mask;
+    private final int maxUsedSlots;
+    /** Incremented after each change, so that lookups see the changes in the table */
+    private volatile long version = 0;
+    private volatile int size = 0;
+    private int usedSlots = 0;
+
+    /**
+     * @param expectedEntries the number of entries the index should have room for
+     * @throws IOException if the temporary file for the index could not be created or mapped
+     */
+    public PublicKeyFingerprintIndex(final int expectedEntries) throws IOException {
+        int slots = Integer.highestOneBit(Math.max(16, (int) Math.min(Integer.MAX_VALUE / 2, (long) (expectedEntries / MAX_LOAD_FACTOR) + 1)));
+        if (slots < expectedEntries / MAX_LOAD_FACTOR) {
+            slots <<= 1;
+        }
+        if ((long) slots * SLOT_SIZE > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many entries for public key fingerprint index: " + expectedEntries);
+        }
+        this.mask = slots - 1;
+        this.maxUsedSlots = (int) (slots * MAX_LOAD_FACTOR);
+        final File file = File.createTempFile("blacklist", ".idx");
+        try (final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            // The mapping stays valid after the channel is closed and the file is deleted
+            this.table = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, (long) slots * SLOT_SIZE);
+        } finally {
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Created public key fingerprint index with " + slots + " slots for " + expectedEntries + " expected entries.");
+        }
+    }
+
+    /** @return the number of fingerprints in the index */
+    public int size() {
+        return size;
+    }
+
+    /** @return true if another entry can be added */
+    public boolean hasRoom() {
+        return usedSlots < maxUsedSlots;
+    }
+
+    /**
+     * @param fingerprint a hex encoded SHA-256 fingerprint, as created by {@link PublicKeyBlacklistEntry#createFingerprint(java.security.PublicKey)}
+     * @return the id of the blacklist entry with the fingerprint, or 0 if there is none
+     */
+    public int getId(final CharSequence fingerprint) {
+        if (fingerprint == null) {
+            return 0;
+        }
+        if (isHexFingerprint(fingerprint)) {
+            return getId(getLongFromHex(fingerprint, 0), getLongFromHex(fingerprint, 8));
+        }
+        final byte[] key = hashValue(fingerprint.toString());
+        return getId(getLong(key, 0), getLong(key, 8));
+    }
+
+    /**
+     * Add or replace a fingerprint.
+     *
+     * @param fingerprint a hex encoded SHA-256 fingerprint, or any other value
+     * @param id the id of the blacklist entry, 0 and -1 are not allowed
+     * @return false if the index is full
+     */
+    public boolean put(final String fingerprint, final int id) {
+        if (id == EMPTY || id == DELETED) {
+            throw new IllegalArgumentException("Invalid blacklist entry id: " + id);
+        }
+        final long high;
+        final long low;
+        if (isHexFingerprint(fingerprint)) {
+            high = getLongFromHex(fingerprint, 0);
+            low = getLongFromHex(fingerprint, 8);
+        } else {
+            final byte[] key = hashValue(fingerprint);
+            high = getLong(key, 0);
+            low = getLong(key, 8);
+        }
+        int slot = (int) mix(high) & mask;
+        int firstDeleted = -1;
+        for (int probes = 0; probes <= mask; probes++) {
+            final int offset = slot * SLOT_SIZE;
+            final int currentId = table.getInt(offset + KEY_LENGTH);
+            if (currentId == EMPTY) {
+                break;
+            }
+            if (currentId == DELETED) {
+                if (firstDeleted == -1) {
+                    firstDeleted = slot;
+                }
+            } else if (table.getLong(offset) == high && table.getLong(offset + 8) == low) {
+                table.putInt(offset + KEY_LENGTH, id);
+                version++;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (firstDeleted != -1) {
+            slot = firstDeleted;
+        } else {
+            if (!hasRoom()) {
+                return false;
+            }
+            usedSlots++;
+        }
+        final int offset = slot * SLOT_SIZE;
+        // Write the key before the id, since a reader takes a non-empty id to mean that the slot is in use
+        table.putLong(offset, high);
+        table.putLong(offset + 8, low);
+        table.putInt(offset + KEY_LENGTH, id);
+        size++;
+        version++;
+        return true;
+    }
+
+    /**
+     * Remove a fingerprint.
+     * @return true if the fingerprint was in the index
+     */
+    public boolean remove(final String fingerprint) {
+        final long high;
+        final long low;
+        if (isHexFingerprint(fingerprint)) {
+            high = getLongFromHex(fingerprint, 0);
+            low = getLongFromHex(fingerprint, 8);
+        } else {
+            final byte[] key = hashValue(fingerprint);
+            high = getLong(key, 0);
+            low = getLong(key, 8);
+        }
+        int slot = (int) mix(high) & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            final int offset = slot * SLOT_SIZE;
+            final int currentId = table.getInt(offset + KEY_LENGTH);
+            if (currentId == EMPTY) {
+                return false;
+            }
+            if (currentId != DELETED && table.getLong(offset) == high && table.getLong(offset + 8) == low) {
+                table.putInt(offset + KEY_LENGTH, DELETED);
+                size--;
+                version++;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    private int getId(final long high, final long low) {
+        // Reading the volatile version makes everything written before the last change visible
+        if (version == 0) {
+            return 0;
+        }
+        int slot = (int) mix(high) & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            final int offset = slot * SLOT_SIZE;
+            final int id = table.getInt(offset + KEY_LENGTH);
+            if (id == EMPTY) {
+                return 0;
+            }
+            if (id != DELETED && table.getLong(offset) == high && table.getLong(offset + 8) == low) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    private static byte[] hashValue(final String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    private static boolean isHexFingerprint(final CharSequence value) {
+        if (value.length() != FINGERPRINT_HEX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < FINGERPRINT_HEX_LENGTH; i++) {
+            if (hexValue(value.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hexValue(final char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    /** @return 8 bytes, starting at byteOffset, of a hex encoded value as a big endian long */
+    private static long getLongFromHex(final CharSequence hex, final int byteOffset) {
+        long ret = 0;
+        for (int i = 2 * byteOffset; i < 2 * byteOffset + 16; i++) {
+            ret = (ret << 4) | hexValue(hex.charAt(i));
+        }
+        return ret;
+    }
+
+    private static long getLong(final byte[] bytes, final int offset) {
+        long ret = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            ret = (ret << 8) | (bytes[i] & 0xff);
+        }
+        return ret;
+    }
+
+    /** Spread the bits of the key, in case values that are not real hashes end up in the index */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        return value;
+    }
+}
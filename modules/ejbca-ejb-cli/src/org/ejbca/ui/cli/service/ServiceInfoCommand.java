@@ -66,6 +66,7 @@ public class ServiceInfoCommand extends BaseServiceCommand {
         info("Active", serviceConfig.isActive());
         info("Pin to nodes", serviceConfig.getPinToNodes());
         info("Run on all nodes", serviceConfig.isRunOnAllNodes());
+        info("Sharded execution", serviceConfig.isShardedExecution());
         info("Description", serviceConfig.getDescription());
         return CommandResult.SUCCESS;
     }
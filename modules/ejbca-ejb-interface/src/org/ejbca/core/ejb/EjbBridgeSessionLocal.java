@@ -53,6 +53,7 @@ import org.ejbca.core.ejb.crl.PublishingCrlSessionLocal;
 import org.ejbca.core.ejb.hardtoken.HardTokenBatchJobSessionLocal;
 import org.ejbca.core.ejb.hardtoken.HardTokenSessionLocal;
 import org.ejbca.core.ejb.keyrecovery.KeyRecoverySessionLocal;
+import org.ejbca.core.ejb.mail.MailQueueSessionLocal;
 import org.ejbca.core.ejb.ra.EndEntityAccessSessionLocal;
 import org.ejbca.core.ejb.ra.EndEntityManagementSessionLocal;
 import org.ejbca.core.ejb.ra.raadmin.AdminPreferenceSessionLocal;
@@ -103,6 +104,7 @@ public interface EjbBridgeSessionLocal {
 	KeyRecoverySessionLocal getKeyRecoverySession();
 	BlacklistSessionLocal getBlacklistSession();
 	KeyValidatorSessionLocal getKeyValidatorSession();
+	MailQueueSessionLocal getMailQueueSession();
 	PublisherQueueSessionLocal getPublisherQueueSession();
 	PublisherSessionLocal getPublisherSession();
 	AdminPreferenceSessionLocal getRaAdminSession();
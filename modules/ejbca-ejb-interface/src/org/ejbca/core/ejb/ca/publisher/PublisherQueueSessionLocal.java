@@ -83,6 +83,16 @@ public interface PublisherQueueSessionLocal {
      */
     Collection<PublisherQueueData> getPendingEntriesForPublisherWithLimit(int publisherId, int limit, int timeout, String orderBy);
 
+    /**
+     * Finds entries with status PublisherQueueData.STATUS_PENDING for a specific publisherId, oldest first, starting after a given entry.
+     * 
+     * @param afterTimeCreated the creation time of the last entry that was previously read, or 0 to start from the oldest entry
+     * @param afterPk primary key of the last entry that was previously read, or null to start from the oldest entry
+     * @param limit the maximum number of entries to return
+     * @return List of PublisherQueueData ordered by creation time, never null
+     */
+    List<PublisherQueueData> getPendingEntriesForPublisherAfter(int publisherId, long afterTimeCreated, String afterPk, int limit);
+
     /**
      * Finds all entries for a specific fingerprint.
      * 
@@ -111,7 +121,30 @@ public interface PublisherQueueSessionLocal {
      */
     void plainFifoTryAlwaysLimit100EntriesOrderByTimeCreated(AuthenticationToken admin, int publisherId, BasePublisher publisher);
 
-    
+
+    /**
+     * Intended for use from PublishQueueProcessWorker.
+     * 
+     * Publishing algorithm that drains the queue in the order the entries were created, using the chunk size, parallelism and maximum number
+     * of entries per run configured in the publisher. The certificates of each chunk are read using bulk queries. While one chunk is published
+     * by parallel workers (each using its own copy of the publisher), the next chunk is read from the database. The outcome of each chunk is
+     * then stored in a single transaction where published entries are removed with batched deletes.
+     * Entries that fail are not retried until the next run.
+     * 
+     * @return the number of entries that were published successfully
+     */
+    int parallelDrainQueue(AuthenticationToken admin, int publisherId, BasePublisher publisher);
+
+    /**
+     * Stores the outcome of publishing a chunk of queue entries in one transaction.
+     * 
+     * @param publishedPks primary keys of entries that were published successfully. Removed from the queue, or marked as successful if
+     *            keepPublishedInQueue is true.
+     * @param failed entries that failed to publish, that will have their try counter increased
+     * @param keepPublishedInQueue see {@link BasePublisher#getKeepPublishedInQueue()}
+     */
+    void updateQueueDataAfterPublishing(Collection<String> publishedPks, Collection<PublisherQueueData> failed, boolean keepPublishedInQueue);
+
     /** Publishers do not run a part of regular transactions and expect to run in auto-commit mode. */
 	boolean storeCertificateNonTransactional(BasePublisher publisher, AuthenticationToken admin, CertificateDataWrapper cert,
 	        String password, String userDN, ExtendedInformation extendedinformation) throws PublisherException;
@@ -67,4 +67,11 @@ public interface BlacklistSessionLocal extends BlacklistSession {
      * Flushes the public key blacklist entry cache to ensure that next time they are read from database.
      */
     void flushBlacklistEntryCache();
+
+    /**
+     * Loads the fingerprints of all public key blacklist entries from the database into a new PublicKeyBlacklistIndex, that replaces
+     * the current one when done. Runs asynchronously outside of any transaction, and ends the reload started by
+     * PublicKeyBlacklistIndex.tryStartReload() when done, so lookups use the current index until then.
+     */
+    void reloadPublicKeyBlacklistIndex();
 }
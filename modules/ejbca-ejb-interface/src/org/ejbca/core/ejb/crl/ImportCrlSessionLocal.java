@@ -12,9 +12,34 @@
  *************************************************************************/
 package org.ejbca.core.ejb.crl;
 
+import java.security.cert.CRLException;
+import java.util.List;
+
 import javax.ejb.Local;
 
+import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.authorization.AuthorizationDeniedException;
+import org.cesecore.certificates.ca.CAInfo;
+import org.cesecore.certificates.crl.CrlImportException;
+import org.cesecore.certificates.crl.StreamingCrlParser;
+
 @Local
 public interface ImportCrlSessionLocal extends ImportCrlSession {
 
+    /**
+     * Updates the status of the certificates in a batch of CRL entries, in the transaction of the caller or a new one. Used by
+     * importCrl to process the entries that changed since the last known CRL in several smaller transactions.
+     * 
+     * @param authenticationToken The administrator performing the operation
+     * @param cainfo of the CA that issued the CRL
+     * @param issuerDn the subject DN of the CA certificate
+     * @param caFingerprint the fingerprint of the CA certificate
+     * @param crlEntries the CRL entries to process
+     * @throws CrlImportException If a certificate could not be revoked
+     * @throws CRLException If a problem occurs when parsing a CRL entry
+     * @throws AuthorizationDeniedException If the administrator is not authorized to perform the required operations
+     */
+    void importCrlEntries(AuthenticationToken authenticationToken, CAInfo cainfo, String issuerDn, String caFingerprint,
+            List<StreamingCrlParser.Entry> crlEntries) throws CrlImportException, CRLException, AuthorizationDeniedException;
+
 }
@@ -0,0 +1,69 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.mail;
+
+import java.util.Map;
+
+import javax.ejb.Local;
+
+/**
+ * Local interface for the outbound mail queue. Messages are stored in the database by the request that triggers them and sent by a
+ * timer on each node, see MailConfiguration.isMailQueueEnabled().
+ *
+ * @version $Id$
+ */
+@Local
+public interface MailQueueSessionLocal {
+
+    /**
+     * Adds a message to the queue in the transaction of the caller, so that it is only sent if the transaction is committed.
+     *
+     * @param mimeMessage the complete MIME encoded message, as written by MimeMessage.writeTo
+     */
+    void addToQueue(byte[] mimeMessage);
+
+    /** Starts the timer that sends the queued messages from this node, if the queue is enabled. */
+    void initTimers();
+
+    /** Closes the SMTP connection of this node, if it is open. Called when the application is undeployed. */
+    void closeConnection();
+
+    /**
+     * Sends the messages that are due, in batches over one SMTP connection, and schedules failed messages for a retry.
+     * Messages with recipients that the server rejected are removed, since they would fail in the same way again.
+     *
+     * @return the number of messages that were sent
+     */
+    int processQueue();
+
+    /**
+     * Claims messages that are due for sending by this node, in a new transaction. Only for use by processQueue.
+     *
+     * @param maxMessages the maximum number of messages to claim
+     * @param claimTime the time in milliseconds before another node may send the messages, if this node has not removed them by then
+     * @return the claimed messages by primary key, in the order they should be sent
+     */
+    Map<String, byte[]> claimDueMessages(int maxMessages, long claimTime);
+
+    /** Removes a message that has been sent, in a new transaction. Only for use by processQueue. */
+    void removeMessage(String pk);
+
+    /**
+     * Schedules a message that could not be sent for a retry, or removes it if it has failed too many times, in a new transaction. Only
+     * for use by processQueue.
+     *
+     * @param pk the primary key of the message
+     * @param reason why the message could not be sent, for the log
+     */
+    void retryMessage(String pk, String reason);
+}
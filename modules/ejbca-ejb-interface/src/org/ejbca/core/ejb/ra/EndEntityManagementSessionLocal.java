@@ -12,6 +12,8 @@
  *************************************************************************/
 package org.ejbca.core.ejb.ra;
 
+import java.util.List;
+
 import javax.ejb.Local;
 
 import org.cesecore.authentication.tokens.AuthenticationToken;
@@ -49,6 +51,16 @@ public interface EndEntityManagementSessionLocal extends EndEntityManagementSess
      */
     boolean checkForCAId(int caid);
 
+    /**
+     * Selects the end entities like {@link #findUsers(List, long, int)}, but only those in one of several partitions, so that a
+     * service that runs on several nodes can divide them between the nodes. An end entity is in the partition given by its creation
+     * time modulo the number of partitions.
+     *
+     * @param partition the partition to select, from 0 to partitions-1
+     * @param partitions the number of partitions
+     */
+    List<EndEntityInformation> findUsers(List<Integer> caIds, long timeModified, int status, int partition, int partitions);
+
    
     /**
      * Methods that checks if a user exists in the database having the given
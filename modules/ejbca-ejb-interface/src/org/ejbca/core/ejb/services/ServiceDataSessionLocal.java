@@ -59,4 +59,14 @@ public interface ServiceDataSessionLocal extends ServiceDataSession {
      * @return true if 1 row was updated
      */
      public boolean updateTimestamps(Integer serviceId, long oldRunTimeStamp, long oldNextRunTimeStamp, long newRunTimeStamp, long newNextRunTimeStamp);
+
+    /**
+     * Renews or creates the lease of a node for a service that runs sharded, and removes leases that have expired.
+     * 
+     * @param serviceId the id of the service
+     * @param nodeName the host name of this node
+     * @param expireTime the time when the lease expires unless it is renewed again, in milliseconds since epoch
+     * @return the names of the nodes with leases that have not expired, including this node, in alphabetical order
+     */
+     List<String> renewNodeLease(int serviceId, String nodeName, long expireTime);
 }
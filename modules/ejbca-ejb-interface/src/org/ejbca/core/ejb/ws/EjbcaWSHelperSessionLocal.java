@@ -37,11 +37,13 @@ import org.ejbca.core.ejb.ra.NoSuchEndEntityException;
 import org.ejbca.core.model.approval.ApprovalException;
 import org.ejbca.core.model.approval.WaitingForApprovalException;
 import org.ejbca.core.model.hardtoken.HardTokenInformation;
+import org.ejbca.core.model.ra.AlreadyRevokedException;
 import org.ejbca.core.model.ra.raadmin.EndEntityProfileNotFoundException;
 import org.ejbca.core.model.ra.raadmin.EndEntityProfileValidationException;
 import org.ejbca.core.protocol.ws.objects.Certificate;
 import org.ejbca.core.protocol.ws.objects.HardTokenDataWS;
 import org.ejbca.core.protocol.ws.objects.NameAndId;
+import org.ejbca.core.protocol.ws.objects.RevokeCertRequestWS;
 import org.ejbca.core.protocol.ws.objects.UserMatch;
 import org.ejbca.util.query.Query;
 
@@ -116,6 +118,19 @@ public interface EjbcaWSHelperSessionLocal extends EjbcaWSHelperSession {
      * @param status original end entity status to restore
      */
     void resetUserPasswordAndStatus(AuthenticationToken admin, String username, int status);
+
+    /**
+     * Revokes a number of certificates in a new transaction. If one of the revocations fails, the transaction is rolled back
+     * and the exception of the failed revocation is thrown, so none of the certificates are revoked.
+     * A revocation that requires approval is not a failure, its approval request is committed with the other revocations.
+     * The caller is expected to have verified that the issuing CAs exist.
+     * 
+     * @param admin the administrator performing the revocations
+     * @param revocations the certificates to revoke and the revocation reasons
+     * @return the id of the approval request of each revocation that is waiting for approval, or 0 if the certificate was revoked
+     */
+    int[] revokeCerts(AuthenticationToken admin, List<RevokeCertRequestWS> revocations) throws AuthorizationDeniedException, NoSuchEndEntityException,
+            ApprovalException, AlreadyRevokedException;
     
     /**
      * @see org.ejbca.core.protocol.ws.common.IEjbcaWS#caRenewCertRequest 
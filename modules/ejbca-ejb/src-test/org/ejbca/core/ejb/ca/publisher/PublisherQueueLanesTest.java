@@ -0,0 +1,114 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ca.publisher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.ejbca.core.model.ca.publisher.PublisherConst;
+import org.ejbca.core.model.ca.publisher.PublisherQueueData;
+import org.junit.Test;
+
+/**
+ * Tests that a parallel drain of the publisher queue publishes CRLs and repeated fingerprints in queue order.
+ *
+ * @version $Id$
+ */
+public class PublisherQueueLanesTest {
+
+    private static final int WORKERS = 4;
+
+    private static PublisherQueueData newEntry(final String pk, final int publishType, final String fingerprint) {
+        return new PublisherQueueData(pk, new Date(), new Date(), PublisherConst.STATUS_PENDING, 0, publishType, fingerprint, 1, null);
+    }
+
+    /** Publishes all entries with WORKERS threads, with a slow first CRL, and returns the pks in the order publishing finished. */
+    private static List<String> publish(final List<PublisherQueueData> entries, final List<Set<String>> publishedByWorker) throws Exception {
+        final PublisherQueueLanes lanes = new PublisherQueueLanes(entries, WORKERS);
+        final List<String> finished = Collections.synchronizedList(new ArrayList<String>());
+        final ExecutorService executorService = Executors.newFixedThreadPool(WORKERS);
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < WORKERS; i++) {
+                final int worker = i;
+                publishedByWorker.add(new HashSet<String>());
+                futures.add(executorService.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws InterruptedException {
+                        PublisherQueueData pqd;
+                        while ((pqd = lanes.poll(worker)) != null) {
+                            Thread.sleep("crl1".equals(pqd.getPk()) || "dup1".equals(pqd.getPk()) ? 300 : 10);
+                            publishedByWorker.get(worker).add(pqd.getPk());
+                            finished.add(pqd.getPk());
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        return finished;
+    }
+
+    @Test
+    public void testCrlsForOneCaArePublishedInOrder() throws Exception {
+        final List<PublisherQueueData> entries = new ArrayList<PublisherQueueData>();
+        entries.add(newEntry("crl1", PublisherConst.PUBLISH_TYPE_CRL, "crlfingerprint1"));
+        for (int i = 0; i < 12; i++) {
+            entries.add(newEntry("cert" + i, PublisherConst.PUBLISH_TYPE_CERT, "certfingerprint" + i));
+        }
+        entries.add(newEntry("crl2", PublisherConst.PUBLISH_TYPE_CRL, "crlfingerprint2"));
+        final List<Set<String>> publishedByWorker = new ArrayList<Set<String>>();
+        final List<String> finished = publish(entries, publishedByWorker);
+        assertEquals(entries.size(), finished.size());
+        assertTrue("The older CRL must be published before the newer one: " + finished, finished.indexOf("crl1") < finished.indexOf("crl2"));
+        assertTrue(publishedByWorker.get(0).containsAll(Arrays.asList("crl1", "crl2")));
+        // The other workers publish the certificates while the first worker is busy with the slow CRL
+        int otherWorkers = 0;
+        for (int i = 1; i < WORKERS; i++) {
+            if (!publishedByWorker.get(i).isEmpty()) {
+                otherWorkers++;
+            }
+        }
+        assertTrue("Certificates should be spread over the other workers.", otherWorkers > 1);
+    }
+
+    @Test
+    public void testRepeatedFingerprintIsPublishedInOrder() throws Exception {
+        final List<PublisherQueueData> entries = new ArrayList<PublisherQueueData>();
+        entries.add(newEntry("dup1", PublisherConst.PUBLISH_TYPE_CERT, "samefingerprint"));
+        for (int i = 0; i < 8; i++) {
+            entries.add(newEntry("cert" + i, PublisherConst.PUBLISH_TYPE_CERT, "certfingerprint" + i));
+        }
+        entries.add(newEntry("dup2", PublisherConst.PUBLISH_TYPE_CERT, "samefingerprint"));
+        final List<String> finished = publish(entries, new ArrayList<Set<String>>());
+        assertEquals(entries.size(), finished.size());
+        assertTrue("Entries for the same fingerprint must be published in order: " + finished, finished.indexOf("dup1") < finished.indexOf("dup2"));
+    }
+}
@@ -0,0 +1,163 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.era;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.cesecore.authentication.AuthenticationFailedException;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests that RaMasterApiFanOut calls the back ends at the same time, merges the results in the order of the back ends and leaves out
+ * back ends that are too slow.
+ *
+ * @version $Id$
+ */
+public class RaMasterApiFanOutTest {
+
+    private RaMasterApiFanOut fanOut;
+
+    @After
+    public void after() {
+        if (fanOut != null) {
+            fanOut.shutdown();
+        }
+    }
+
+    @Test
+    public void testMergeInOrderWithSlowBackend() {
+        final RaMasterApi local = createBackend();
+        final RaMasterApi slow = createBackend();
+        final RaMasterApi remote = createBackend();
+        final RaMasterApi[] raMasterApis = { local, slow, remote };
+        fanOut = new RaMasterApiFanOut(local, 500, 0);
+        final List<String> merged = new ArrayList<>();
+        final List<RaMasterApi> unavailable = new ArrayList<>();
+        final long start = System.currentTimeMillis();
+        fanOut.invoke(raMasterApis, new RaMasterApiFanOut.Call<String, RuntimeException>() {
+            @Override
+            String call(final RaMasterApi raMasterApi) {
+                if (raMasterApi == slow) {
+                    sleep(5000);
+                    return "slow";
+                }
+                // Answers later than the slow back end would if they were called one at a time
+                sleep(200);
+                return raMasterApi == local ? "local" : "remote";
+            }
+
+            @Override
+            void merge(final String result) {
+                merged.add(result);
+            }
+
+            @Override
+            void unavailable(final RaMasterApi raMasterApi) {
+                unavailable.add(raMasterApi);
+            }
+        });
+        final long time = System.currentTimeMillis() - start;
+        assertEquals("[local, remote]", merged.toString());
+        assertEquals(1, unavailable.size());
+        assertTrue("The slow back end should be left out.", unavailable.get(0) == slow);
+        assertTrue("Took " + time + " ms.", time < 2000);
+    }
+
+    @Test
+    public void testCheckedExceptionIsThrown() {
+        final RaMasterApi local = createBackend();
+        final RaMasterApi remote = createBackend();
+        fanOut = new RaMasterApiFanOut(local, 5000, 0);
+        try {
+            fanOut.invoke(new RaMasterApi[] { local, remote }, new RaMasterApiFanOut.Call<String, AuthenticationFailedException>() {
+                @Override
+                String call(final RaMasterApi raMasterApi) throws AuthenticationFailedException {
+                    if (raMasterApi == remote) {
+                        throw new AuthenticationFailedException("Expected");
+                    }
+                    return "local";
+                }
+
+                @Override
+                void merge(final String result) {
+                }
+            });
+            fail("The exception from the remote back end should be thrown.");
+        } catch (AuthenticationFailedException e) {
+            assertEquals("Expected", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testAvailabilityIsCached() {
+        final AtomicInteger checks = new AtomicInteger();
+        final RaMasterApi backend = (RaMasterApi) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { RaMasterApi.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                        if ("isBackendAvailable".equals(method.getName())) {
+                            checks.incrementAndGet();
+                            return Boolean.TRUE;
+                        }
+                        return defaultValue(proxy, method, args);
+                    }
+                });
+        fanOut = new RaMasterApiFanOut(null, 1000, 60000);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(fanOut.isBackendAvailable(backend));
+        }
+        assertEquals(1, checks.get());
+    }
+
+    /** @return a back end that is available */
+    private RaMasterApi createBackend() {
+        return (RaMasterApi) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { RaMasterApi.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                if ("isBackendAvailable".equals(method.getName())) {
+                    return Boolean.TRUE;
+                }
+                return defaultValue(proxy, method, args);
+            }
+        });
+    }
+
+    private static Object defaultValue(final Object proxy, final Method method, final Object[] args) {
+        if ("equals".equals(method.getName())) {
+            return Boolean.valueOf(proxy == args[0]);
+        } else if ("hashCode".equals(method.getName())) {
+            return Integer.valueOf(System.identityHashCode(proxy));
+        } else if ("toString".equals(method.getName())) {
+            return "RaMasterApi@" + System.identityHashCode(proxy);
+        }
+        throw new UnsupportedOperationException(method.getName());
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
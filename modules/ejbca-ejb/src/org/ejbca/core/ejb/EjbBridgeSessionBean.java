@@ -56,6 +56,7 @@ import org.ejbca.core.ejb.crl.PublishingCrlSessionLocal;
 import org.ejbca.core.ejb.hardtoken.HardTokenBatchJobSessionLocal;
 import org.ejbca.core.ejb.hardtoken.HardTokenSessionLocal;
 import org.ejbca.core.ejb.keyrecovery.KeyRecoverySessionLocal;
+import org.ejbca.core.ejb.mail.MailQueueSessionLocal;
 import org.ejbca.core.ejb.ra.EndEntityAccessSessionLocal;
 import org.ejbca.core.ejb.ra.EndEntityManagementSessionLocal;
 import org.ejbca.core.ejb.ra.raadmin.AdminPreferenceSessionLocal;
@@ -108,6 +109,7 @@ public class EjbBridgeSessionBean implements EjbBridgeSessionLocal {
     @EJB InternalKeyBindingMgmtSessionLocal internalKeyBindingMgmtSession;
 	@EJB KeyRecoverySessionLocal keyRecoverySession;
 	@EJB KeyValidatorSessionLocal keyValidatorSession;
+	@EJB MailQueueSessionLocal mailQueueSession;
 	@EJB BlacklistSessionLocal blacklistSession;
 	@EJB PublisherQueueSessionLocal publisherQueueSession;
 	@EJB PublisherSessionLocal publisherSession;
@@ -158,6 +160,7 @@ public class EjbBridgeSessionBean implements EjbBridgeSessionLocal {
 	@Override public KeyRecoverySessionLocal getKeyRecoverySession() { return keyRecoverySession; }
 	@Override public BlacklistSessionLocal getBlacklistSession() { return blacklistSession; }
 	@Override public KeyValidatorSessionLocal getKeyValidatorSession() { return keyValidatorSession; }
+	@Override public MailQueueSessionLocal getMailQueueSession() { return mailQueueSession; }
 	@Override public PublisherQueueSessionLocal getPublisherQueueSession() { return publisherQueueSession; }
 	@Override public PublisherSessionLocal getPublisherSession() { return publisherSession; }
 	@Override public AdminPreferenceSessionLocal getRaAdminSession() { return raSession; }
@@ -54,10 +54,13 @@ import org.cesecore.certificates.certificateprofile.CertificateProfileSessionLoc
 import org.cesecore.certificates.endentity.EndEntityConstants;
 import org.cesecore.certificates.endentity.EndEntityInformation;
 import org.cesecore.certificates.ocsp.OcspResponseGeneratorSessionLocal;
+import org.cesecore.certificates.ocsp.logging.PatternLogWriter;
 import org.cesecore.config.CesecoreConfiguration;
 import org.cesecore.configuration.GlobalConfigurationSessionLocal;
 import org.cesecore.keys.token.CryptoTokenFactory;
+import org.cesecore.keys.util.KeyPairPool;
 import org.cesecore.util.CryptoProviderTools;
+import org.cesecore.util.ExternalProcessWorkerPool;
 import org.ejbca.config.EjbcaConfiguration;
 import org.ejbca.config.GlobalConfiguration;
 import org.ejbca.core.ejb.audit.enums.EjbcaEventTypes;
@@ -65,6 +68,7 @@ import org.ejbca.core.ejb.audit.enums.EjbcaModuleTypes;
 import org.ejbca.core.ejb.audit.enums.EjbcaServiceTypes;
 import org.ejbca.core.ejb.authorization.AuthorizationSystemSessionLocal;
 import org.ejbca.core.ejb.ca.caadmin.CAAdminSessionLocal;
+import org.ejbca.core.ejb.mail.MailQueueSessionLocal;
 import org.ejbca.core.ejb.ocsp.OcspKeyRenewalSessionLocal;
 import org.ejbca.core.ejb.ra.EndEntityAccessSessionLocal;
 import org.ejbca.core.ejb.ra.EndEntityManagementSessionLocal;
@@ -115,6 +119,8 @@ public class StartupSingletonBean {
     @EJB
     private SecurityEventsLoggerSessionLocal logSession;
     @EJB
+    private MailQueueSessionLocal mailQueueSession;
+    @EJB
     private OcspKeyRenewalSessionLocal ocspKeyRenewalSession;
     @EJB
     private OcspResponseGeneratorSessionLocal ocspResponseGeneratorSession;
@@ -127,6 +133,14 @@ public class StartupSingletonBean {
     private void shutdown() {
         String iMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("startservice.shutdown");
         log.info(iMsg);
+        // Stop the threads that generate keys for the key pair pool, if it is enabled
+        KeyPairPool.INSTANCE.shutdown();
+        // Stop the long-lived processes of external command validators
+        ExternalProcessWorkerPool.shutdownAll();
+        // Close the SMTP connection of the outbound mail queue
+        mailQueueSession.closeConnection();
+        // Write the queued OCSP transaction and audit log lines and stop the thread that writes them
+        PatternLogWriter.INSTANCE.shutdown(1000);
         // Make a log row that EJBCA is stopping
         //final Map<String, Object> details = new LinkedHashMap<String, Object>();
         //details.put("msg", iMsg);
@@ -179,6 +193,10 @@ public class StartupSingletonBean {
         
         log.trace(">init CryptoTokenFactory just to load those classes that are available");
         CryptoTokenFactory.instance();
+
+        // Start filling the key pair pool, if it is enabled, now that the BC provider is installed
+        log.trace(">init key pair pool");
+        KeyPairPool.INSTANCE.reloadConfiguration();
         
         authorizationSession.scheduleBackgroundRefresh();
         // Load CAs at startup to improve impression of speed the first time a CA is accessed, it takes a little time to load it.
@@ -275,6 +293,8 @@ public class StartupSingletonBean {
         certificateStoreSession.initTimers();
         // Start legacy background service for renewal of OCSP signers via EJBCA WS calls to CA
         ocspKeyRenewalSession.startTimer();
+        // Start sending of queued notification email from this node, if enabled
+        mailQueueSession.initTimers();
         // Verify that the EJB CLI user (if present) cannot be used to generate certificates
         final String cliUsername = EjbcaConfiguration.getCliDefaultUser();
         try {
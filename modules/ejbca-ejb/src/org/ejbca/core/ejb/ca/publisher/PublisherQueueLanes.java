@@ -0,0 +1,77 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ca.publisher;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.ejbca.core.model.ca.publisher.PublisherConst;
+import org.ejbca.core.model.ca.publisher.PublisherQueueData;
+
+/**
+ * Distributes a chunk of publisher queue entries over the workers of a parallel drain, without changing the order of entries that
+ * depend on each other.
+ * <p>
+ * All CRL entries go to the first worker, since a publisher such as the LDAP publisher replaces the stored CRL without comparing CRL
+ * numbers, and an older CRL that finishes last would overwrite a newer one. Certificate entries with a fingerprint that occurs more
+ * than once in the chunk always go to the same worker, for the same reason. Both kinds are taken by their worker in queue order.
+ * All other certificate entries are shared, and are taken by whichever worker is free.
+ *
+ * @version $Id$
+ */
+class PublisherQueueLanes {
+
+    private final List<Queue<PublisherQueueData>> ordered;
+    private final Queue<PublisherQueueData> shared = new ConcurrentLinkedQueue<PublisherQueueData>();
+
+    /**
+     * @param entries the entries, in the order they were queued
+     * @param workers the number of workers
+     */
+    PublisherQueueLanes(final List<PublisherQueueData> entries, final int workers) {
+        ordered = new ArrayList<Queue<PublisherQueueData>>(workers);
+        for (int i = 0; i < workers; i++) {
+            ordered.add(new ConcurrentLinkedQueue<PublisherQueueData>());
+        }
+        final Map<String, Integer> fingerprintCount = new HashMap<String, Integer>();
+        for (final PublisherQueueData pqd : entries) {
+            final Integer count = fingerprintCount.get(pqd.getFingerprint());
+            fingerprintCount.put(pqd.getFingerprint(), count == null ? 1 : count + 1);
+        }
+        for (final PublisherQueueData pqd : entries) {
+            if (pqd.getPublishType() == PublisherConst.PUBLISH_TYPE_CRL) {
+                ordered.get(0).add(pqd);
+            } else if (fingerprintCount.get(pqd.getFingerprint()) > 1) {
+                ordered.get((pqd.getFingerprint().hashCode() & Integer.MAX_VALUE) % workers).add(pqd);
+            } else {
+                shared.add(pqd);
+            }
+        }
+    }
+
+    /**
+     * Returns the next entry for a worker. The entries that must be published in order are returned first, so that a worker never
+     * has more than one of them in progress.
+     *
+     * @param worker the index of the worker, from 0 to workers-1
+     * @return the next entry, or null if there are no more entries for the worker
+     */
+    PublisherQueueData poll(final int worker) {
+        final PublisherQueueData pqd = ordered.get(worker).poll();
+        return pqd != null ? pqd : shared.poll();
+    }
+}
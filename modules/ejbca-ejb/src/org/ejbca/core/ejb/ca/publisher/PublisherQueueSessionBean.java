@@ -17,9 +17,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -228,6 +233,21 @@ public class PublisherQueueSessionBean implements PublisherQueueSessionLocal {
         return ret;
     }
 
+    @Override
+    public List<PublisherQueueData> getPendingEntriesForPublisherAfter(int publisherId, long afterTimeCreated, String afterPk, int limit) {
+        if (log.isTraceEnabled()) {
+            log.trace(">getPendingEntriesForPublisherAfter(publisherId: " + publisherId + ", afterTimeCreated: " + afterTimeCreated + ")");
+        }
+        final List<PublisherQueueData> ret = new ArrayList<PublisherQueueData>();
+        for (final org.ejbca.core.ejb.ca.publisher.PublisherQueueData d : org.ejbca.core.ejb.ca.publisher.PublisherQueueData
+                .findDataByPublisherIdAndStatusAfter(entityManager, publisherId, PublisherConst.STATUS_PENDING, afterTimeCreated, afterPk, limit)) {
+            ret.add(new PublisherQueueData(d.getPk(), new Date(d.getTimeCreated()), new Date(d.getLastUpdate()), PublisherConst.STATUS_PENDING,
+                    d.getTryCounter(), d.getPublishType(), d.getFingerprint(), publisherId, d.getPublisherQueueVolatileData()));
+        }
+        log.trace("<getPendingEntriesForPublisherAfter()");
+        return ret;
+    }
+
     @Override
     public Collection<PublisherQueueData> getEntriesByFingerprint(String fingerprint) {
         if (log.isTraceEnabled()) {
@@ -272,6 +292,226 @@ public class PublisherQueueSessionBean implements PublisherQueueSessionLocal {
         log.trace("<updateData()");
     }
 
+    @Override
+    public void updateQueueDataAfterPublishing(final Collection<String> publishedPks, final Collection<PublisherQueueData> failed,
+            final boolean keepPublishedInQueue) {
+        if (log.isTraceEnabled()) {
+            log.trace(">updateQueueDataAfterPublishing(published: " + publishedPks.size() + ", failed: " + failed.size() + ")");
+        }
+        if (keepPublishedInQueue) {
+            for (final String pk : publishedPks) {
+                updateData(pk, PublisherConst.STATUS_SUCCESS, -1);
+            }
+        } else if (!publishedPks.isEmpty()) {
+            final int removed = org.ejbca.core.ejb.ca.publisher.PublisherQueueData.deleteByPks(entityManager, publishedPks);
+            if (log.isDebugEnabled() && removed != publishedPks.size()) {
+                log.debug("Removed " + removed + " of " + publishedPks.size() + " published queue entries. The rest were already removed.");
+            }
+        }
+        for (final PublisherQueueData pqd : failed) {
+            // Update with new tryCounter, but same status as before
+            updateData(pqd.getPk(), pqd.getPublishStatus(), pqd.getTryCounter() + 1);
+        }
+        log.trace("<updateQueueDataAfterPublishing()");
+    }
+
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    @Override
+    public int parallelDrainQueue(final AuthenticationToken admin, final int publisherId, final BasePublisher publisher) {
+        if (publisher == null) {
+            log.info(intres.getLocalizedMessage("publisher.nopublisher", publisherId));
+            return 0;
+        }
+        final int chunkSize = publisher.getQueueChunkSize();
+        final int maxEntriesPerRun = publisher.getQueueMaxEntriesPerRun();
+        final List<BasePublisher> workerPublishers = getWorkerPublishers(publisher, publisher.getQueueParallelism());
+        if (log.isDebugEnabled()) {
+            log.debug("Draining queue of publisher " + publisherId + " with chunk size " + chunkSize + ", " + workerPublishers.size()
+                    + " workers and at most " + maxEntriesPerRun + " entries.");
+        }
+        int totalCount = 0;
+        int successCount = 0;
+        QueueChunk chunk = readChunk(publisherId, 0L, null, Math.min(chunkSize, maxEntriesPerRun));
+        while (!chunk.entries.isEmpty()) {
+            totalCount += chunk.entries.size();
+            final QueueChunkPublisher chunkPublisher = new QueueChunkPublisher(admin, publisherId, chunk, workerPublishers.size());
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < workerPublishers.size(); i++) {
+                futures.add(getExecutorService().submit(chunkPublisher.newWorker(workerPublishers.get(i), i)));
+            }
+            // Read the next chunk while the current one is being published. Keyset pagination ensures that we don't get the same entries twice.
+            final QueueChunk nextChunk;
+            if (totalCount < maxEntriesPerRun) {
+                final PublisherQueueData last = chunk.entries.get(chunk.entries.size() - 1);
+                nextChunk = readChunk(publisherId, last.getTimeCreated().getTime(), last.getPk(), Math.min(chunkSize, maxEntriesPerRun - totalCount));
+            } else {
+                nextChunk = QueueChunk.EMPTY;
+            }
+            for (final Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new EJBException(e);
+                } catch (ExecutionException e) {
+                    log.error("Publishing from queue failed unexpectedly for publisher " + publisherId + ": " + e.getMessage(), e.getCause());
+                }
+            }
+            // Store the outcome of the whole chunk in a single transaction
+            publisherQueueSession.updateQueueDataAfterPublishing(chunkPublisher.publishedPks, chunkPublisher.failed, publisher.getKeepPublishedInQueue());
+            successCount += chunkPublisher.publishedPks.size();
+            if (chunkPublisher.isPublisherUnavailable()) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Breaking out of publisher loop because everything seems to fail (at least the first 10 entries)");
+                }
+                break;
+            }
+            chunk = nextChunk;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Returning from publisher with " + successCount + " of " + totalCount + " entries published successfully.");
+        }
+        return successCount;
+    }
+
+    /** @return one copy of the publisher for each worker thread, or the publisher itself if only one worker should be used or it can't be copied */
+    private List<BasePublisher> getWorkerPublishers(final BasePublisher publisher, final int parallelism) {
+        final List<BasePublisher> ret = new ArrayList<BasePublisher>(parallelism);
+        ret.add(publisher);
+        for (int i = 1; i < parallelism; i++) {
+            try {
+                final BasePublisher clone = (BasePublisher) publisher.clone();
+                clone.setPublisherId(publisher.getPublisherId());
+                clone.setName(publisher.getName());
+                ret.add(clone);
+            } catch (CloneNotSupportedException e) {
+                log.info("Publisher '" + publisher.getName() + "' can not be copied. Queue will be published using a single thread.");
+                return ret.subList(0, 1);
+            }
+        }
+        return ret;
+    }
+
+    /** Reads the next chunk of pending entries together with the certificates and CRLs they refer to. */
+    private QueueChunk readChunk(final int publisherId, final long afterTimeCreated, final String afterPk, final int limit) {
+        final List<PublisherQueueData> entries = publisherQueueSession.getPendingEntriesForPublisherAfter(publisherId, afterTimeCreated, afterPk, limit);
+        if (log.isDebugEnabled()) {
+            log.debug("Found " + entries.size() + " entries to republish for publisher " + publisherId);
+        }
+        final QueueChunk ret = new QueueChunk(entries);
+        final List<String> certificateFingerprints = new ArrayList<String>();
+        for (final PublisherQueueData pqd : entries) {
+            if (pqd.getPublishType() == PublisherConst.PUBLISH_TYPE_CERT) {
+                certificateFingerprints.add(pqd.getFingerprint());
+            } else if (pqd.getPublishType() == PublisherConst.PUBLISH_TYPE_CRL) {
+                final CRLData crlData = CRLData.findByFingerprint(entityManager, pqd.getFingerprint());
+                if (crlData != null) {
+                    ret.crlDatas.put(pqd.getFingerprint(), crlData);
+                }
+            }
+        }
+        for (final CertificateDataWrapper cdw : certificateStoreSession.getCertificateDatasByFingerprints(certificateFingerprints)) {
+            ret.certificateDatas.put(cdw.getCertificateData().getFingerprint(), cdw);
+        }
+        return ret;
+    }
+
+    /** A chunk of queue entries and the data that should be published for each of them. */
+    private static class QueueChunk {
+        private static final QueueChunk EMPTY = new QueueChunk(new ArrayList<PublisherQueueData>());
+
+        private final List<PublisherQueueData> entries;
+        private final Map<String, CertificateDataWrapper> certificateDatas = new HashMap<String, CertificateDataWrapper>();
+        private final Map<String, CRLData> crlDatas = new HashMap<String, CRLData>();
+
+        private QueueChunk(final List<PublisherQueueData> entries) {
+            this.entries = entries;
+        }
+    }
+
+    /**
+     * Publishes a chunk of queue entries using one worker per copy of the publisher. Workers take unrelated entries from a shared queue,
+     * so a slow entry does not hold back the rest of the chunk, while CRLs and repeated fingerprints are published in queue order, see
+     * {@link PublisherQueueLanes}. The outcome is collected for a later update of the database in a single transaction.
+     */
+    private class QueueChunkPublisher {
+        private final AuthenticationToken admin;
+        private final int publisherId;
+        private final QueueChunk chunk;
+        private final PublisherQueueLanes pending;
+        private final Queue<String> publishedPks = new ConcurrentLinkedQueue<String>();
+        private final Queue<PublisherQueueData> failed = new ConcurrentLinkedQueue<PublisherQueueData>();
+        private final AtomicInteger failCount = new AtomicInteger(0);
+
+        private QueueChunkPublisher(final AuthenticationToken admin, final int publisherId, final QueueChunk chunk, final int workers) {
+            this.admin = admin;
+            this.publisherId = publisherId;
+            this.chunk = chunk;
+            this.pending = new PublisherQueueLanes(chunk.entries, workers);
+        }
+
+        /** If we don't manage to publish anything, but fail on the first ten, we expect that this publisher is dead for now. */
+        private boolean isPublisherUnavailable() {
+            return publishedPks.isEmpty() && failCount.get() > 10;
+        }
+
+        private Callable<Void> newWorker(final BasePublisher publisher, final int worker) {
+            return new Callable<Void>() {
+                @Override
+                public Void call() {
+                    PublisherQueueData pqd;
+                    while (!isPublisherUnavailable() && (pqd = pending.poll(worker)) != null) {
+                        if (publish(publisher, pqd)) {
+                            publishedPks.add(pqd.getPk());
+                        } else {
+                            failed.add(pqd);
+                        }
+                    }
+                    return null;
+                }
+            };
+        }
+
+        /** @return true if the entry was published */
+        private boolean publish(final BasePublisher publisher, final PublisherQueueData pqd) {
+            final String fingerprint = pqd.getFingerprint();
+            if (log.isDebugEnabled()) {
+                log.debug("Publishing from queue to publisher: " + publisherId + ", fingerprint: " + fingerprint + ", pk: " + pqd.getPk()
+                        + ", type: " + pqd.getPublishType());
+            }
+            final PublisherQueueVolatileInformation voldata = pqd.getVolatileData();
+            final String password = voldata == null ? null : voldata.getPassword();
+            final ExtendedInformation ei = voldata == null ? null : voldata.getExtendedInformation();
+            final String userDataDN = voldata == null ? null : voldata.getUserDN();
+            try {
+                if (pqd.getPublishType() == PublisherConst.PUBLISH_TYPE_CERT) {
+                    final CertificateDataWrapper certificateDataWrapper = chunk.certificateDatas.get(fingerprint);
+                    if (certificateDataWrapper == null) {
+                        log.info(intres.getLocalizedMessage("publisher.errornocert", fingerprint));
+                        return false;
+                    }
+                    return storeCertificateNonTransactional(publisher, admin, certificateDataWrapper, password, userDataDN, ei);
+                } else if (pqd.getPublishType() == PublisherConst.PUBLISH_TYPE_CRL) {
+                    final CRLData crlData = chunk.crlDatas.get(fingerprint);
+                    if (crlData == null) {
+                        log.info(intres.getLocalizedMessage("publisher.errornocert", fingerprint));
+                        return false;
+                    }
+                    return storeCRLNonTransactional(publisher, admin, crlData.getCRLBytes(), crlData.getCaFingerprint(), crlData.getCrlNumber(),
+                            userDataDN);
+                } else {
+                    log.error(intres.getLocalizedMessage("publisher.unknowntype", pqd.getPublishType()));
+                    return false;
+                }
+            } catch (PublisherException e) {
+                // Publisher session have already logged this error nicely to getLogSession().log
+                log.debug(e.getMessage());
+                failCount.incrementAndGet();
+                return false;
+            }
+        }
+    }
+
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     @Override
     public void plainFifoTryAlwaysLimit100EntriesOrderByTimeCreated(AuthenticationToken admin, int publisherId, BasePublisher publisher) {
@@ -13,17 +13,23 @@
 
 package org.ejbca.core.ejb.ca.validation;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.annotation.Resource;
+import javax.ejb.Asynchronous;
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 import org.apache.log4j.Logger;
 import org.cesecore.audit.enums.EventStatus;
@@ -43,6 +49,8 @@ import org.ejbca.core.model.InternalEjbcaResources;
 import org.ejbca.core.model.validation.BlacklistEntry;
 import org.ejbca.core.model.validation.PublicKeyBlacklistEntry;
 import org.ejbca.core.model.validation.PublicKeyBlacklistEntryCache;
+import org.ejbca.core.model.validation.PublicKeyBlacklistIndex;
+import org.ejbca.core.model.validation.PublicKeyFingerprintIndex;
 
 /**
  * Handles management of public key blacklist entries.
@@ -59,9 +67,15 @@ public class BlacklistSessionBean implements BlacklistSessionLocal, BlacklistSes
     /** Internal localization of logs and errors */
     private static final InternalEjbcaResources intres = InternalEjbcaResources.getInstance();
 
+    /** Number of rows read per query when the public key blacklist index is loaded */
+    private static final int INDEX_LOAD_BATCH_SIZE = 10000;
+
     @PersistenceContext(unitName = "ejbca")
     private EntityManager entityManager;
 
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
     @EJB
     private SecurityEventsLoggerSessionLocal auditSession;
     @EJB
@@ -128,9 +142,13 @@ public class BlacklistSessionBean implements BlacklistSessionLocal, BlacklistSes
         BlacklistData data = BlacklistData.findById(entityManager, entry.getID());
         if (data != null) {
             final Map<Object, Object> diff = data.getBlacklistEntry().diff(entry);
+            final String oldType = data.getType();
+            final String oldValue = data.getValue();
             data.setBlacklistEntry(entry);
             // Since loading a Blacklist is quite complex, we simple purge the cache here.
             PublicKeyBlacklistEntryCache.INSTANCE.removeEntry(data.getId());
+            updateIndexAfterCommit(PublicKeyBlacklistEntry.TYPE.equals(oldType) ? oldValue : null,
+                    data.getId(), PublicKeyBlacklistEntry.TYPE.equals(data.getType()) ? data.getValue() : null);
             final String message = intres.getLocalizedMessage("blacklist.changedpublickeyblacklist", entry.getValue());
             final Map<String, Object> details = new LinkedHashMap<String, Object>();
             details.put("msg", message);
@@ -166,6 +184,9 @@ public class BlacklistSessionBean implements BlacklistSessionLocal, BlacklistSes
             entityManager.remove(data);
             // Purge the cache here.
             PublicKeyBlacklistEntryCache.INSTANCE.removeEntry(data.getId());
+            if (PublicKeyBlacklistEntry.TYPE.equals(type)) {
+                updateIndexAfterCommit(value, 0, null);
+            }
             message = intres.getLocalizedMessage("blacklist.removedpublickeyblacklist", value);
             final Map<String, Object> details = new LinkedHashMap<String, Object>();
             details.put("msg", message);
@@ -180,6 +201,7 @@ public class BlacklistSessionBean implements BlacklistSessionLocal, BlacklistSes
     @Override
     public void flushBlacklistEntryCache() {
         PublicKeyBlacklistEntryCache.INSTANCE.flush();
+        PublicKeyBlacklistIndex.INSTANCE.flush();
         if (log.isDebugEnabled()) {
             log.debug("Flushed BlacklistEntry cache.");
         }
@@ -224,6 +246,52 @@ public class BlacklistSessionBean implements BlacklistSessionLocal, BlacklistSes
         return result;
     }
 
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    @Asynchronous
+    @Override
+    public void reloadPublicKeyBlacklistIndex() {
+        try {
+            loadPublicKeyBlacklistIndex();
+        } finally {
+            PublicKeyBlacklistIndex.INSTANCE.endReload();
+        }
+    }
+
+    private void loadPublicKeyBlacklistIndex() {
+        final long startTime = System.currentTimeMillis();
+        final long count = BlacklistData.findCountByType(entityManager, PublicKeyBlacklistEntry.TYPE);
+        final PublicKeyFingerprintIndex index;
+        try {
+            // Leave room for entries added until the next reload
+            index = new PublicKeyFingerprintIndex((int) Math.min(Integer.MAX_VALUE / 4, count * 2 + 1024));
+        } catch (IOException e) {
+            log.error("Unable to create public key blacklist index: " + e.getMessage());
+            return;
+        }
+        // Read a page at a time, ordered by id, so that neither the database nor the heap has to hold the whole table
+        int afterId = Integer.MIN_VALUE;
+        List<Object[]> rows;
+        do {
+            rows = BlacklistData.findIdAndValueByTypeAfterId(entityManager, PublicKeyBlacklistEntry.TYPE, afterId, INDEX_LOAD_BATCH_SIZE);
+            for (final Object[] row : rows) {
+                afterId = ((Integer) row[0]).intValue();
+                if (afterId == 0 || afterId == -1) {
+                    // Not real ids, see getBlacklistEntryId
+                    continue;
+                }
+                if (!index.put((String) row[1], afterId)) {
+                    // An incomplete index would let blacklisted keys through, so keep the current one and try again later
+                    log.warn("Public key blacklist grew too much while the index was loaded. The index will be loaded again.");
+                    return;
+                }
+            }
+        } while (rows.size() == INDEX_LOAD_BATCH_SIZE);
+        PublicKeyBlacklistIndex.INSTANCE.replaceWith(index);
+        if (log.isDebugEnabled()) {
+            log.debug("Loaded " + index.size() + " public key blacklist entries into index in " + (System.currentTimeMillis() - startTime) + " ms.");
+        }
+    }
+
     /** Adds a public key blacklist or throws an exception. Will not update the cache, it will be read into the cache on next try to read. */
     private void addBlacklistEntryInternal(AuthenticationToken admin, int id, BlacklistEntry blacklist) throws AuthorizationDeniedException, BlacklistExistsException {
         assertIsAuthorizedToEditBlacklists(admin);
@@ -232,6 +300,9 @@ public class BlacklistSessionBean implements BlacklistSessionLocal, BlacklistSes
             blacklist.setID(Integer.valueOf(id));
             final BlacklistData entity = new BlacklistData(blacklist);
             entityManager.persist(entity);
+            if (PublicKeyBlacklistEntry.TYPE.equals(blacklist.getType())) {
+                updateIndexAfterCommit(null, id, blacklist.getValue());
+            }
         } else {
             final String message = intres.getLocalizedMessage("blacklist.erroraddpublickeyblacklist", blacklist.getValue());
             log.info(message);
@@ -239,6 +310,33 @@ public class BlacklistSessionBean implements BlacklistSessionLocal, BlacklistSes
         }
     }
 
+    /**
+     * Changes the public key blacklist index when the current transaction commits, so that a rolled back change never reaches the index.
+     * 
+     * @param removedFingerprint fingerprint to remove from the index, or null
+     * @param addedId id of the entry to add to the index
+     * @param addedFingerprint fingerprint to add to the index, or null
+     */
+    private void updateIndexAfterCommit(final String removedFingerprint, final int addedId, final String addedFingerprint) {
+        transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {}
+
+            @Override
+            public void afterCompletion(final int status) {
+                if (status != Status.STATUS_COMMITTED) {
+                    return;
+                }
+                if (removedFingerprint != null) {
+                    PublicKeyBlacklistIndex.INSTANCE.remove(removedFingerprint);
+                }
+                if (addedFingerprint != null) {
+                    PublicKeyBlacklistIndex.INSTANCE.add(addedId, addedFingerprint);
+                }
+            }
+        });
+    }
+
     /** Gets a public key blacklist by cache or database, can return null. */
     private BlacklistEntry getBlacklistEntryInternal(int id, final String type, final String value, boolean fromCache) {
         if (log.isTraceEnabled()) {
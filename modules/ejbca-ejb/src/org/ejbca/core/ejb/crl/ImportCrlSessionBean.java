@@ -13,19 +13,16 @@
 package org.ejbca.core.ejb.crl;
 
 import java.math.BigInteger;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
 import java.security.SignatureException;
 import java.security.cert.CRLException;
-import java.security.cert.X509CRL;
-import java.security.cert.X509CRLEntry;
 import java.security.cert.X509Certificate;
 import java.util.Date;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
 import javax.ejb.EJB;
+import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
@@ -42,9 +39,10 @@ import org.cesecore.certificates.crl.CrlImportException;
 import org.cesecore.certificates.crl.CrlStoreException;
 import org.cesecore.certificates.crl.CrlStoreSessionLocal;
 import org.cesecore.certificates.crl.RevokedCertInfo;
-import org.cesecore.certificates.util.cert.CrlExtensions;
+import org.cesecore.certificates.crl.StreamingCrlParser;
 import org.cesecore.jndi.JndiConstants;
 import org.cesecore.util.CertTools;
+import org.ejbca.config.EjbcaConfiguration;
 import org.ejbca.core.ejb.ra.EndEntityManagementSessionLocal;
 import org.ejbca.core.ejb.ra.NoSuchEndEntityException;
 import org.ejbca.core.model.approval.ApprovalException;
@@ -64,87 +62,70 @@ public class ImportCrlSessionBean implements ImportCrlSessionLocal, ImportCrlSes
     private CrlStoreSessionLocal crlStoreSession;
     @EJB
     private EndEntityManagementSessionLocal endentityManagementSession;
+    @Resource
+    private SessionContext sessionContext;
+
+    private ImportCrlSessionLocal importCrlSession;
     
+    @PostConstruct
+    public void postConstruct() {
+        importCrlSession = sessionContext.getBusinessObject(ImportCrlSessionLocal.class);
+    }
+
     @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public void importCrl(AuthenticationToken authenticationToken, CAInfo cainfo, byte[] crlbytes)
             throws CrlImportException, CrlStoreException, CRLException, AuthorizationDeniedException {
 
-        X509CRL x509crl = CertTools.getCRLfromByteArray(crlbytes);
+        final StreamingCrlParser crl = StreamingCrlParser.fromByteArray(crlbytes);
         
         X509Certificate cacert = (X509Certificate) cainfo.getCertificateChain().iterator().next();
         final String caFingerprint = CertTools.getFingerprintAsString(cacert);
         final String issuerDn = CertTools.getSubjectDN(cacert);
         
-        verifyCrlIssuer(x509crl, issuerDn, cacert);
+        verifyCrlIssuer(crl, issuerDn, cacert);
         
         // Check if the CRL is already stored locally
-        final boolean isDeltaCrl = CrlExtensions.getDeltaCRLIndicator(x509crl).intValue() != -1;
-        final int downloadedCrlNumber = CrlExtensions.getCrlNumber(x509crl).intValue();
+        final boolean isDeltaCrl = crl.getDeltaCrlIndicator().intValue() != -1;
+        final int downloadedCrlNumber = crl.getCrlNumber().intValue();
         if (log.isTraceEnabled()) {
             log.trace("Delta CRL:  " + isDeltaCrl);
             log.trace("IssuerDn:   " + issuerDn);
             log.trace("CRL Number: " + downloadedCrlNumber);
         }
         
-        X509CRL lastCrlOfSameType = getLastCrlOfSameType(x509crl, isDeltaCrl, issuerDn);
-        if(lastCrlOfSameType!=null && !x509crl.getThisUpdate().after(lastCrlOfSameType.getThisUpdate())) {
+        final StreamingCrlParser lastCrlOfSameType = getLastCrlOfSameType(isDeltaCrl, issuerDn);
+        if(lastCrlOfSameType!=null && !crl.getThisUpdate().after(lastCrlOfSameType.getThisUpdate())) {
             log.info((isDeltaCrl?"Delta":"Full") + " CRL number " + downloadedCrlNumber + " for CA '" + cainfo.getName() + 
                     "' is not newer than last known " + (isDeltaCrl?"delta":"full") + " CRL. Ignoring download.");
             return;
         }
         
         // If the CRL is newer than the last known or there wasn't any old one, loop through it
-        if (x509crl.getRevokedCertificates()==null) {
+        if (crl.isEmpty()) {
             log.info("No revoked certificates in " + (isDeltaCrl?"delta":"full") + " CRL for CA '" + cainfo.getName() + "'");
         } else {
-            final Set<X509CRLEntry> crlEntries = new HashSet<X509CRLEntry>();
-            crlEntries.addAll(x509crl.getRevokedCertificates());
+            List<StreamingCrlParser.Entry> crlEntries = crl.getEntriesSortedBySerialNumber();
             if (log.isDebugEnabled()) {
                 log.debug("Downloaded CRL contains " + crlEntries.size() + " entries.");
             }
             
-            if(lastCrlOfSameType != null && lastCrlOfSameType.getRevokedCertificates()!=null) {
+            if(lastCrlOfSameType != null && !lastCrlOfSameType.isEmpty()) {
+                final List<StreamingCrlParser.Entry> lastCrlEntries = lastCrlOfSameType.getEntriesSortedBySerialNumber();
                 if (log.isDebugEnabled()) {
-                    log.debug("Last known CRL contains " + lastCrlOfSameType.getRevokedCertificates().size() + " entries.");
+                    log.debug("Last known CRL contains " + lastCrlEntries.size() + " entries.");
                 }
                 // Remove all entries that were processed last time
-                crlEntries.removeAll(lastCrlOfSameType.getRevokedCertificates());
+                crlEntries = StreamingCrlParser.getChangedEntries(crlEntries, lastCrlEntries);
             }
         
             log.info("Found " + crlEntries.size() + " new entires in " + (isDeltaCrl?"delta":"full")+ " CRL number " + downloadedCrlNumber + " issued by '" + issuerDn + "' compared to previous.");
-            // For each entry that was updated after the last known CRL, create/update a new database entry with the new status
-            for (final X509CRLEntry crlEntry : crlEntries) {
-                final Date revocationDate = crlEntry.getRevocationDate();
-                final BigInteger serialNumber = crlEntry.getSerialNumber();
-                final int reasonCode = CrlExtensions.extractReasonCode(crlEntry);
-                if (crlEntry.getCertificateIssuer()!=null) {
-                    final String entryIssuerDn = CertTools.stringToBCDNString(crlEntry.getCertificateIssuer().getName());
-                    if (!issuerDn.equals(entryIssuerDn)) {
-                        log.warn("CA's subjectDN does not match CRL entry's issuerDn '"+entryIssuerDn+"' and entry with serialNumber " + serialNumber + " will be ignored.");
-                    }
-                }
-                
-                final CertificateDataWrapper cdw = certStoreSession.getCertificateDataByIssuerAndSerno(issuerDn, serialNumber);
-                if(isLimitedCertificate(issuerDn, serialNumber, cdw)) {
-                    // Store as much as possible about what we know about the certificate and its status (which is limited) in the database
-                    certStoreSession.updateLimitedCertificateDataStatus(authenticationToken, cainfo.getCAId(), issuerDn, serialNumber, revocationDate, reasonCode, caFingerprint);
-                } else {
-                    final String serialHex = serialNumber.toString(16).toUpperCase();
-                    if (isCertAlreadyRevoked(reasonCode, cdw)) {
-                        log.info("Certificate '" + serialHex + "' is already revoked");
-                        continue;
-                    }
-                    log.info("Revoking '" + serialHex + "' " + "(" + serialNumber.toString() + ")");
-                    try {
-                        //log.info("Reason code: " + reason);
-                        endentityManagementSession.revokeCert(authenticationToken, serialNumber, crlEntry.getRevocationDate(), issuerDn, reasonCode, false);
-                    } catch (AlreadyRevokedException e) {
-                        log.warn("Failed to revoke '" + serialHex + "'. (Status might be 'Archived'.) Error message was: " + e.getMessage());
-                    } catch (ApprovalException | RevokeBackDateNotAllowedForProfileException | NoSuchEndEntityException | WaitingForApprovalException e) {
-                        throw new CrlImportException("Failed to revoke certificate with serial number " + serialHex, e);
-                    }
-                    
-                }
+            // For each entry that was updated after the last known CRL, create/update a new database entry with the new status.
+            // Each batch is committed separately, so the transactions stay reasonably small also for very large CRLs.
+            final int batchSize = EjbcaConfiguration.getCrlImportBatchSize();
+            for (int i = 0; i < crlEntries.size(); i += batchSize) {
+                final List<StreamingCrlParser.Entry> batch = crlEntries.subList(i, Math.min(i + batchSize, crlEntries.size()));
+                importCrlSession.importCrlEntries(authenticationToken, cainfo, issuerDn, caFingerprint, batch);
             }
         }
         // Calculate (make up) the CRL Number if the number was not present
@@ -156,9 +137,47 @@ public class ImportCrlSessionBean implements ImportCrlSessionLocal, ImportCrlSes
             newCrlNumber = downloadedCrlNumber;
         }
         // Last of all, store the CRL if there were no errors during creation of database entries
-        crlStoreSession.storeCRL(authenticationToken, x509crl.getEncoded(), caFingerprint, newCrlNumber, issuerDn, x509crl.getThisUpdate(), x509crl.getNextUpdate(), isDeltaCrl?1:-1);
+        crlStoreSession.storeCRL(authenticationToken, crl.getEncoded(), caFingerprint, newCrlNumber, issuerDn, crl.getThisUpdate(), crl.getNextUpdate(), isDeltaCrl?1:-1);
     
     }
+
+    @Override
+    public void importCrlEntries(final AuthenticationToken authenticationToken, final CAInfo cainfo, final String issuerDn, final String caFingerprint,
+            final List<StreamingCrlParser.Entry> crlEntries) throws CrlImportException, CRLException, AuthorizationDeniedException {
+        for (final StreamingCrlParser.Entry crlEntry : crlEntries) {
+            final Date revocationDate = crlEntry.getRevocationDate();
+            final BigInteger serialNumber = crlEntry.getSerialNumber();
+            final int reasonCode = crlEntry.getReasonCode();
+            if (crlEntry.getCertificateIssuer()!=null) {
+                final String entryIssuerDn = CertTools.stringToBCDNString(crlEntry.getCertificateIssuer().toString());
+                if (!issuerDn.equals(entryIssuerDn)) {
+                    log.warn("CA's subjectDN does not match CRL entry's issuerDn '"+entryIssuerDn+"' and entry with serialNumber " + serialNumber + " will be ignored.");
+                }
+            }
+            
+            final CertificateDataWrapper cdw = certStoreSession.getCertificateDataByIssuerAndSerno(issuerDn, serialNumber);
+            if(isLimitedCertificate(issuerDn, serialNumber, cdw)) {
+                // Store as much as possible about what we know about the certificate and its status (which is limited) in the database
+                certStoreSession.updateLimitedCertificateDataStatus(authenticationToken, cainfo.getCAId(), issuerDn, serialNumber, revocationDate, reasonCode, caFingerprint);
+            } else {
+                final String serialHex = serialNumber.toString(16).toUpperCase();
+                if (isCertAlreadyRevoked(reasonCode, cdw)) {
+                    log.info("Certificate '" + serialHex + "' is already revoked");
+                    continue;
+                }
+                log.info("Revoking '" + serialHex + "' " + "(" + serialNumber.toString() + ")");
+                try {
+                    //log.info("Reason code: " + reason);
+                    endentityManagementSession.revokeCert(authenticationToken, serialNumber, revocationDate, issuerDn, reasonCode, false);
+                } catch (AlreadyRevokedException e) {
+                    log.warn("Failed to revoke '" + serialHex + "'. (Status might be 'Archived'.) Error message was: " + e.getMessage());
+                } catch (ApprovalException | RevokeBackDateNotAllowedForProfileException | NoSuchEndEntityException | WaitingForApprovalException e) {
+                    throw new CrlImportException("Failed to revoke certificate with serial number " + serialHex, e);
+                }
+                
+            }
+        }
+    }
     
     private boolean isCertAlreadyRevoked(final int revocationReason, final CertificateDataWrapper cdw) {
         if(cdw != null) {
@@ -174,7 +193,7 @@ public class ImportCrlSessionBean implements ImportCrlSessionLocal, ImportCrlSes
         return false;
     }
     
-    private void verifyCrlIssuer(final X509CRL crl, final String issuerDN, final X509Certificate cacert) throws CrlImportException {
+    private void verifyCrlIssuer(final StreamingCrlParser crl, final String issuerDN, final X509Certificate cacert) throws CrlImportException, CRLException {
         log.info("CA: " + issuerDN);
         // Read the supplied CRL and verify that it is issued by the specified CA
         if (!crl.getIssuerX500Principal().equals(cacert.getSubjectX500Principal())) {
@@ -183,17 +202,17 @@ public class ImportCrlSessionBean implements ImportCrlSessionLocal, ImportCrlSes
         
         try {
             crl.verify(cacert.getPublicKey());
-        } catch (InvalidKeyException | CRLException | NoSuchAlgorithmException | NoSuchProviderException | SignatureException e) {
+        } catch (SignatureException e) {
             throw new CrlImportException("Failed to verify CRL signature.", e);
         }
     }
     
-    private X509CRL getLastCrlOfSameType(final X509CRL crl, final boolean isDeltaCrl, final String issuerDN) {
-        X509CRL lastCrlOfSameType = null;
+    private StreamingCrlParser getLastCrlOfSameType(final boolean isDeltaCrl, final String issuerDN) {
+        StreamingCrlParser lastCrlOfSameType = null;
         final byte[] lastCrl = crlStoreSession.getLastCRL(issuerDN, isDeltaCrl);
         if(lastCrl != null) {
             try {
-                lastCrlOfSameType = CertTools.getCRLfromByteArray(lastCrl);
+                lastCrlOfSameType = StreamingCrlParser.fromByteArray(lastCrl);
             } catch (CRLException e) {
                 log.warn("Could not retrieve an older CRL issued by " + issuerDN, e);
             }
@@ -17,11 +17,14 @@ import java.security.cert.Certificate;
 import java.security.cert.X509CRL;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
@@ -68,6 +71,7 @@ import org.cesecore.keys.token.CryptoTokenOfflineException;
 import org.cesecore.util.CertTools;
 import org.cesecore.util.CompressedCollection;
 import org.cesecore.util.CryptoProviderTools;
+import org.cesecore.util.StringTools;
 import org.ejbca.core.ejb.ca.publisher.PublisherSessionLocal;
 
 /**
@@ -416,46 +420,6 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
             final String caCertSubjectDN = cacert==null ? null : CertTools.getSubjectDN(cacert);
             // We can not create a CRL for a CA that is waiting for certificate response
             if ( caCertSubjectDN!=null && cainfo.getStatus()==CAConstants.CA_ACTIVE )  {
-                // Find all revoked certificates for a complete CRL
-                if (log.isDebugEnabled()) {
-                    final long freeMemory = Runtime.getRuntime().maxMemory() - Runtime.getRuntime().totalMemory() + Runtime.getRuntime().freeMemory();
-                    log.debug("Listing revoked certificates. Free memory=" + freeMemory);
-                }
-                revokedCertificates = certificateStoreSession.listRevokedCertInfo(caCertSubjectDN, -1);
-                
-                //if X509 CA is marked as it has gone through Name Change add certificates revoked with old names
-                if(ca.getCAType()==CAInfo.CATYPE_X509 && ((X509CA)ca).getNameChanged()){
-                    log.info("The CA with SubjectDN " + ca.getSubjectDN() + " has been gone through ICAO Name Change. Collecting all revocation information published by this CA with previous names has started.");
-                    Collection<Certificate> renewedCertificateChain = ca.getRenewedCertificateChain();
-                    Collection<RevokedCertInfo> revokedCertificatesBeforeLastCANameChange = new ArrayList<RevokedCertInfo>();
-                    if(renewedCertificateChain != null){
-                        Collection<String> differentSubjectDNs = new HashSet<String>();
-                        differentSubjectDNs.add(caCertSubjectDN);
-                        for(Certificate renewedCertificate : renewedCertificateChain){
-                            String renewedCertificateSubjectDN = CertTools.getSubjectDN(renewedCertificate);
-                            if(!differentSubjectDNs.contains(renewedCertificateSubjectDN)){
-                                log.info("Collecting revocation information for " + renewedCertificateSubjectDN + " and merging them with ones for " + caCertSubjectDN);
-                                differentSubjectDNs.add(renewedCertificateSubjectDN);
-                                Collection<RevokedCertInfo> revokedCertInfo = certificateStoreSession.listRevokedCertInfo(renewedCertificateSubjectDN, -1);
-                                for(RevokedCertInfo tmp : revokedCertInfo){ //for loop is necessary because revokedCertInfo.toArray is not supported...
-                                    revokedCertificatesBeforeLastCANameChange.add(tmp);
-                                }
-                            }
-                        }
-                    }    
-                    //Make sure new compressed collection is created if revokedCertificatesBeforeLastCANameChange need to be added!
-                    Collection<RevokedCertInfo> revokedCertificatesAfterLastCANameChange = revokedCertificates;
-                    revokedCertificates = new CompressedCollection<RevokedCertInfo>();
-                    if(!revokedCertificatesBeforeLastCANameChange.isEmpty()){
-                        revokedCertificates.addAll(revokedCertificatesBeforeLastCANameChange);
-                    }
-                    revokedCertificates.addAll(revokedCertificatesAfterLastCANameChange);
-                }
-                               
-                if (log.isDebugEnabled()) {
-                    final long freeMemory = Runtime.getRuntime().maxMemory() - Runtime.getRuntime().totalMemory() + Runtime.getRuntime().freeMemory();
-                    log.debug("Found "+revokedCertificates.size()+" revoked certificates. Free memory=" + freeMemory);
-                }
                 // Go through them and create a CRL, at the same time archive expired certificates, unless configured not to do so (keep expired certificates on CRL)
                 //
                 // Archiving is only done for full CRLs, not delta CRLs.
@@ -475,31 +439,31 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                 if (keepexpiredcertsoncrl) {
                     log.info("KeepExpiredCertsOnCRL is enabled, we will not archive expired certificate but will keep them on the CRL (for ever growing): " + keepexpiredcertsoncrl);
                 }
-                for (final RevokedCertInfo revokedCertInfo : revokedCertificates) {
-                    // We want to include certificates that was revoked after the last CRL was issued, but before this one
-                    // so the revoked certs are included in ONE CRL at least. See RFC5280 section 3.3.
-                    // If chosen to keep expired certificates on CRL, we will NOT do this but keep them (ISO 9594-8 par. 8.5.2.12)
-                    if ( !keepexpiredcertsoncrl && revokedCertInfo.getExpireDate().before(lastCrlCreationDate) ) {
-                        // Certificate has expired, set status to archived in the database
-                        if (log.isDebugEnabled()) {
-                            final long freeMemory = Runtime.getRuntime().maxMemory() - Runtime.getRuntime().totalMemory() + Runtime.getRuntime().freeMemory();
-                            log.debug("Archiving certificate with fp="+revokedCertInfo.getCertificateFingerprint()+". Free memory=" + freeMemory);
-                        }
-                        certificateStoreSession.setStatus(archiveAdmin, revokedCertInfo.getCertificateFingerprint(), CertificateConstants.CERT_ARCHIVED);
-                    } else {
-                        if (!revokedCertInfo.isRevocationDateSet()) {
-                            revokedCertInfo.setRevocationDate(now);
-                            CertificateData certdata = CertificateData.findByFingerprint(entityManager, revokedCertInfo.getCertificateFingerprint());
-                            if (certdata == null) {
-                                throw new FinderException("No certificate with fingerprint " + revokedCertInfo.getCertificateFingerprint());
-                            }
-                            // Set revocation date in the database
-                            certdata.setRevocationDate(now);
-                        }
+                final byte[] crlBytes;
+                if (ca instanceof X509CA && CesecoreConfiguration.isDatabaseCrlGenStreaming()) {
+                    // Encode the CRL while the revoked certificates are read from the database, instead of reading all of them first.
+                    // Each entry is archived, or gets its revocation date set, as it is read.
+                    final RevokedCertInfoCursor cursor = new RevokedCertInfoCursor(getIssuerDNsForCrl(ca, caCertSubjectDN), now, lastCrlCreationDate,
+                            keepexpiredcertsoncrl, archiveAdmin);
+                    // a full CRL
+                    crlBytes = generateAndStoreCRL(admin, ca, null, cursor, lastBaseCrlInfo, false);
+                } else {
+                    // Find all revoked certificates for a complete CRL
+                    if (log.isDebugEnabled()) {
+                        final long freeMemory = Runtime.getRuntime().maxMemory() - Runtime.getRuntime().totalMemory() + Runtime.getRuntime().freeMemory();
+                        log.debug("Listing revoked certificates. Free memory=" + freeMemory);
                     }
+                    revokedCertificates = listRevokedCertInfosForCrl(ca, caCertSubjectDN);
+                    if (log.isDebugEnabled()) {
+                        final long freeMemory = Runtime.getRuntime().maxMemory() - Runtime.getRuntime().totalMemory() + Runtime.getRuntime().freeMemory();
+                        log.debug("Found "+revokedCertificates.size()+" revoked certificates. Free memory=" + freeMemory);
+                    }
+                    for (final RevokedCertInfo revokedCertInfo : revokedCertificates) {
+                        prepareCrlEntry(revokedCertInfo, now, lastCrlCreationDate, keepexpiredcertsoncrl, archiveAdmin);
+                    }
+                    // a full CRL
+                    crlBytes = generateAndStoreCRL(admin, ca, revokedCertificates, null, lastBaseCrlInfo, false);
                 }
-                // a full CRL
-                final byte[] crlBytes = generateAndStoreCRL(admin, ca, revokedCertificates, lastBaseCrlInfo, false);
                 if (crlBytes != null) {
                     ret = CertTools.getFingerprintAsString(crlBytes);                       
                 }
@@ -619,7 +583,7 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
                 }
                 revcertinfos.clear();  // Release unused resources
                 // create a delta CRL
-                crlBytes = generateAndStoreCRL(admin, ca, certs, lastBaseCrlInfo, true);
+                crlBytes = generateAndStoreCRL(admin, ca, certs, null, lastBaseCrlInfo, true);
                 if (log.isDebugEnabled()) {
                     X509CRL crl = CertTools.getCRLfromByteArray(crlBytes);
                     log.debug("Created delta CRL with expire date: "+crl.getNextUpdate());
@@ -648,7 +612,14 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
         return crlBytes;
     }
 
-    private byte[] generateAndStoreCRL(final AuthenticationToken admin, final CA ca, final Collection<RevokedCertInfo> certs, final CRLInfo lastBaseCrlInfo, final boolean delta) throws CryptoTokenOfflineException, AuthorizationDeniedException {
+    /**
+     * Generates and stores a CRL and then stores it in the publishers of the CA.
+     *
+     * @param certs the revoked certificates to include, or null if streamedCerts is used
+     * @param streamedCerts iterator over the revoked certificates to include in a full CRL from an X509CA, or null if certs is used
+     */
+    private byte[] generateAndStoreCRL(final AuthenticationToken admin, final CA ca, final Collection<RevokedCertInfo> certs, final Iterator<RevokedCertInfo> streamedCerts,
+            final CRLInfo lastBaseCrlInfo, final boolean delta) throws CryptoTokenOfflineException, AuthorizationDeniedException {
          // Hard and error-prone to do that.
         if (log.isDebugEnabled()) {
             log.debug("Storing CRL in publishers");
@@ -686,11 +657,164 @@ public class PublishingCrlSessionBean implements PublishingCrlSessionLocal, Publ
         final int deltacrlnumber = crlSession.getLastCRLNumber(certSubjectDN, true);
         // nextCrlNumber: The highest number of last CRL (full or delta) and increased by 1 (both full CRLs and deltaCRLs share the same series of CRL Number)
         final int nextCrlNumber = ( fullcrlnumber > deltacrlnumber ? fullcrlnumber : deltacrlnumber ) +1; 
-        final byte[] crlBytes = crlCreateSession.generateAndStoreCRL(admin, ca, certs, delta?fullcrlnumber:-1, nextCrlNumber);
+        final byte[] crlBytes;
+        if (streamedCerts != null) {
+            crlBytes = crlCreateSession.generateAndStoreStreamedCRL(admin, (X509CA) ca, streamedCerts, nextCrlNumber);
+        } else {
+            crlBytes = crlCreateSession.generateAndStoreCRL(admin, ca, certs, delta?fullcrlnumber:-1, nextCrlNumber);
+        }
         this.publisherSession.storeCRL(admin, ca.getCRLPublishers(), crlBytes, cafp, nextCrlNumber, certSubjectDN);
         return crlBytes;
     }
 
+    /**
+     * Archives a revoked certificate that has expired, or sets the revocation date in the database if it is missing.
+     * The certificate is included in the CRL being created in both cases.
+     */
+    private void prepareCrlEntry(final RevokedCertInfo revokedCertInfo, final Date now, final Date lastCrlCreationDate, final boolean keepexpiredcertsoncrl,
+            final AuthenticationToken archiveAdmin) throws FinderException, AuthorizationDeniedException {
+        // We want to include certificates that was revoked after the last CRL was issued, but before this one
+        // so the revoked certs are included in ONE CRL at least. See RFC5280 section 3.3.
+        // If chosen to keep expired certificates on CRL, we will NOT do this but keep them (ISO 9594-8 par. 8.5.2.12)
+        if ( !keepexpiredcertsoncrl && revokedCertInfo.getExpireDate().before(lastCrlCreationDate) ) {
+            // Certificate has expired, set status to archived in the database
+            if (log.isDebugEnabled()) {
+                final long freeMemory = Runtime.getRuntime().maxMemory() - Runtime.getRuntime().totalMemory() + Runtime.getRuntime().freeMemory();
+                log.debug("Archiving certificate with fp="+revokedCertInfo.getCertificateFingerprint()+". Free memory=" + freeMemory);
+            }
+            certificateStoreSession.setStatus(archiveAdmin, revokedCertInfo.getCertificateFingerprint(), CertificateConstants.CERT_ARCHIVED);
+        } else {
+            if (!revokedCertInfo.isRevocationDateSet()) {
+                revokedCertInfo.setRevocationDate(now);
+                CertificateData certdata = CertificateData.findByFingerprint(entityManager, revokedCertInfo.getCertificateFingerprint());
+                if (certdata == null) {
+                    throw new FinderException("No certificate with fingerprint " + revokedCertInfo.getCertificateFingerprint());
+                }
+                // Set revocation date in the database
+                certdata.setRevocationDate(now);
+            }
+        }
+    }
+
+    /**
+     * @return the issuer DNs to read revoked certificates for, when creating a full CRL. For a CA that has gone through name change,
+     * the previous names of the CA comes first, followed by the current name.
+     */
+    private List<String> getIssuerDNsForCrl(final CA ca, final String caCertSubjectDN) {
+        final List<String> issuerDNs = new ArrayList<String>();
+        if (ca.getCAType()==CAInfo.CATYPE_X509 && ((X509CA)ca).getNameChanged()) {
+            log.info("The CA with SubjectDN " + ca.getSubjectDN() + " has been gone through ICAO Name Change. Collecting all revocation information published by this CA with previous names has started.");
+            final Collection<Certificate> renewedCertificateChain = ca.getRenewedCertificateChain();
+            if (renewedCertificateChain != null) {
+                for (final Certificate renewedCertificate : renewedCertificateChain) {
+                    final String renewedCertificateSubjectDN = CertTools.getSubjectDN(renewedCertificate);
+                    if (!renewedCertificateSubjectDN.equals(caCertSubjectDN) && !issuerDNs.contains(renewedCertificateSubjectDN)) {
+                        log.info("Collecting revocation information for " + renewedCertificateSubjectDN + " and merging them with ones for " + caCertSubjectDN);
+                        issuerDNs.add(renewedCertificateSubjectDN);
+                    }
+                }
+            }
+        }
+        issuerDNs.add(caCertSubjectDN);
+        return issuerDNs;
+    }
+
+    /**
+     * @return all revoked certificates to include in a full CRL, including the ones revoked with previous names of the CA
+     */
+    private Collection<RevokedCertInfo> listRevokedCertInfosForCrl(final CA ca, final String caCertSubjectDN) {
+        final List<String> issuerDNs = getIssuerDNsForCrl(ca, caCertSubjectDN);
+        if (issuerDNs.size() == 1) {
+            return certificateStoreSession.listRevokedCertInfo(caCertSubjectDN, -1);
+        }
+        // Make sure a new compressed collection is created when revoked certificates with the previous names need to be added
+        final Collection<RevokedCertInfo> revokedCertificates = new CompressedCollection<RevokedCertInfo>();
+        for (final String issuerDN : issuerDNs) {
+            final Collection<RevokedCertInfo> revokedCertInfos = certificateStoreSession.listRevokedCertInfo(issuerDN, -1);
+            revokedCertificates.addAll(revokedCertInfos);
+            // Special treatment of our CompressedCollection to ensure that we release all resources
+            revokedCertInfos.clear();
+        }
+        return revokedCertificates;
+    }
+
+    /**
+     * Reads the revoked certificates of one or more issuers from the database, one page of 'database.crlgenfetchsize' entries at
+     * the time, and prepares each entry for the CRL (see {@link #prepareCrlEntry}) as it is returned.
+     *
+     * Pages are read after the fingerprint of the last entry of the previous page, so archiving certificates while iterating
+     * does not cause entries to be skipped.
+     */
+    private class RevokedCertInfoCursor implements Iterator<RevokedCertInfo> {
+        private final Iterator<String> issuerDNs;
+        private final int fetchSize = CesecoreConfiguration.getDatabaseRevokedCertInfoFetchSize();
+        private final Date now;
+        private final Date lastCrlCreationDate;
+        private final boolean keepexpiredcertsoncrl;
+        private final AuthenticationToken archiveAdmin;
+        private String issuerDN = null;
+        private String lastFingerprint = null;
+        private boolean lastPage = true;
+        private Iterator<RevokedCertInfo> page = Collections.<RevokedCertInfo>emptyList().iterator();
+
+        private RevokedCertInfoCursor(final List<String> issuerDNs, final Date now, final Date lastCrlCreationDate, final boolean keepexpiredcertsoncrl,
+                final AuthenticationToken archiveAdmin) {
+            this.issuerDNs = issuerDNs.iterator();
+            this.now = now;
+            this.lastCrlCreationDate = lastCrlCreationDate;
+            this.keepexpiredcertsoncrl = keepexpiredcertsoncrl;
+            this.archiveAdmin = archiveAdmin;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!page.hasNext()) {
+                if (lastPage) {
+                    if (!issuerDNs.hasNext()) {
+                        return false;
+                    }
+                    issuerDN = CertTools.stringToBCDNString(StringTools.strip(issuerDNs.next()));
+                    lastFingerprint = null;
+                }
+                final List<RevokedCertInfo> revokedCertInfos = CertificateData.getRevokedCertInfosAfter(entityManager, issuerDN, lastFingerprint, fetchSize);
+                if (log.isDebugEnabled()) {
+                    final long freeMemory = Runtime.getRuntime().maxMemory() - Runtime.getRuntime().totalMemory() + Runtime.getRuntime().freeMemory();
+                    log.debug("Read batch of " + revokedCertInfos.size() + " revoked certificates for " + issuerDN + ". Free memory=" + freeMemory);
+                }
+                lastPage = revokedCertInfos.size() < fetchSize;
+                if (!revokedCertInfos.isEmpty()) {
+                    lastFingerprint = revokedCertInfos.get(revokedCertInfos.size()-1).getCertificateFingerprint();
+                }
+                page = revokedCertInfos.iterator();
+            }
+            return true;
+        }
+
+        @Override
+        public RevokedCertInfo next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final RevokedCertInfo revokedCertInfo = page.next();
+            try {
+                prepareCrlEntry(revokedCertInfo, now, lastCrlCreationDate, keepexpiredcertsoncrl, archiveAdmin);
+            } catch (FinderException e) {
+                // Should really not happen
+                log.error(e);
+                throw new EJBException(e);
+            } catch (AuthorizationDeniedException e) {
+                // Can not happen, since the certificates are archived by an always allow token
+                throw new IllegalStateException(e);
+            }
+            return revokedCertInfo;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
     private Certificate getCaCertificate(final CAInfo caInfo) {
         final Collection<Certificate> certificateChain = caInfo.getCertificateChain();
         return certificateChain.isEmpty() ? null : certificateChain.iterator().next();
@@ -0,0 +1,276 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.mail;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.NoSuchObjectLocalException;
+import javax.ejb.SessionContext;
+import javax.ejb.Stateless;
+import javax.ejb.Timeout;
+import javax.ejb.Timer;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.apache.log4j.Logger;
+import org.ejbca.config.MailConfiguration;
+import org.ejbca.core.ejb.ServiceLocator;
+import org.ejbca.util.mail.MailQueueSender;
+
+/**
+ * Stores outbound email in the database and sends it from a timer on each node, so that the request that triggered a notification
+ * does not wait for the SMTP server. Nodes claim messages before sending them, so each message is normally only sent once.
+ *
+ * @version $Id$
+ */
+@Stateless
+@TransactionAttribute(TransactionAttributeType.REQUIRED)
+public class MailQueueSessionBean implements MailQueueSessionLocal {
+
+    private static final Logger log = Logger.getLogger(MailQueueSessionBean.class);
+
+    /** Time that a node has to send the messages it has claimed, before another node may send them */
+    private static final long CLAIM_TIME = 5 * 60 * 1000L;
+
+    private static volatile Integer timerId = null;
+
+    /** Sender that keeps the SMTP connection of this node open between batches */
+    private static MailQueueSender mailQueueSender = null;
+
+    @PersistenceContext(unitName = "ejbca")
+    private EntityManager entityManager;
+
+    @Resource
+    private SessionContext sessionContext;
+
+    /* When the sessionContext is injected, the timerService should be looked up.
+     * This is due to the Glassfish EJB verifier complaining.
+     */
+    private TimerService timerService;
+
+    @PostConstruct
+    public void postConstruct() {
+        timerService = sessionContext.getTimerService();
+        //Just do this once
+        if (timerId == null) {
+            synchronized (this) {
+                if (timerId == null) {
+                    // Any weak random number is fine
+                    timerId = new Random().nextInt();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void addToQueue(final byte[] mimeMessage) {
+        final MailQueueData mailQueueData = new MailQueueData(mimeMessage);
+        entityManager.persist(mailQueueData);
+        if (log.isDebugEnabled()) {
+            log.debug("Queued email " + mailQueueData.getPk() + " of " + mimeMessage.length + " bytes.");
+        }
+    }
+
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    @Override
+    public void initTimers() {
+        cancelTimers();
+        if (MailConfiguration.isMailQueueEnabled()) {
+            addTimer(MailConfiguration.getMailQueueInterval());
+        }
+    }
+
+    /**
+     * When the timer expires, the messages that are due are sent and the timer is scheduled again.
+     *
+     * According to JSR 220 FR (18.2.2), this method may not throw any exceptions.
+     *
+     * @param timer The timer whose expiration caused this notification.
+     */
+    @Timeout
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void timeoutHandler(final Timer timer) {
+        try {
+            processQueue();
+        } catch (RuntimeException e) {
+            log.error("Failed to process the outbound mail queue: " + e.getMessage(), e);
+        } finally {
+            if (MailConfiguration.isMailQueueEnabled()) {
+                addTimer(MailConfiguration.getMailQueueInterval());
+            }
+        }
+    }
+
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    @Override
+    public int processQueue() {
+        // Call through the business interface, so that each database update gets its own transaction
+        final MailQueueSessionLocal mailQueueSession = sessionContext.getBusinessObject(MailQueueSessionLocal.class);
+        final int batchSize = MailConfiguration.getMailQueueBatchSize();
+        int sent = 0;
+        while (true) {
+            final Map<String, byte[]> claimed = mailQueueSession.claimDueMessages(batchSize, CLAIM_TIME);
+            if (claimed.isEmpty()) {
+                break;
+            }
+            final MailQueueSender sender = getMailQueueSender();
+            final List<String> pks = new ArrayList<>(claimed.size());
+            final List<MimeMessage> messages = new ArrayList<>(claimed.size());
+            for (final Map.Entry<String, byte[]> entry : claimed.entrySet()) {
+                try {
+                    messages.add(new MimeMessage(sender.getSession(), new ByteArrayInputStream(entry.getValue())));
+                    pks.add(entry.getKey());
+                } catch (MessagingException e) {
+                    // This will never get better, so there is no point in trying again
+                    log.error("Removing queued email " + entry.getKey() + " that could not be parsed: " + e.getMessage());
+                    mailQueueSession.removeMessage(entry.getKey());
+                }
+            }
+            final List<MessagingException> results = sender.send(messages);
+            boolean failed = false;
+            for (int i = 0; i < pks.size(); i++) {
+                final MessagingException result = results.get(i);
+                if (result == null) {
+                    mailQueueSession.removeMessage(pks.get(i));
+                    sent++;
+                } else if (MailQueueSender.isPermanentFailure(result)) {
+                    log.error("Removing queued email " + pks.get(i) + " that was rejected by the mail server: " + result.getMessage());
+                    mailQueueSession.removeMessage(pks.get(i));
+                } else {
+                    mailQueueSession.retryMessage(pks.get(i), result.getMessage());
+                    failed = true;
+                }
+            }
+            // Let the next timer continue if there were failures, or if there is nothing more to send right now
+            if (failed || claimed.size() < batchSize) {
+                break;
+            }
+        }
+        if (log.isDebugEnabled() && sent > 0) {
+            log.debug("Sent " + sent + " queued emails.");
+        }
+        return sent;
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    @Override
+    public Map<String, byte[]> claimDueMessages(final int maxMessages, final long claimTime) {
+        final long now = System.currentTimeMillis();
+        final Map<String, byte[]> ret = new LinkedHashMap<>();
+        for (final MailQueueData mailQueueData : MailQueueData.findDue(entityManager, now, maxMessages)) {
+            // Another node may have claimed the message after it was read, in which case it is skipped here
+            if (MailQueueData.claim(entityManager, mailQueueData.getPk(), mailQueueData.getNextAttempt(), now + claimTime)) {
+                ret.put(mailQueueData.getPk(), mailQueueData.getMimeMessage());
+            }
+        }
+        return ret;
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    @Override
+    public void removeMessage(final String pk) {
+        final MailQueueData mailQueueData = MailQueueData.findByPk(entityManager, pk);
+        if (mailQueueData != null) {
+            entityManager.remove(mailQueueData);
+        }
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    @Override
+    public void retryMessage(final String pk, final String reason) {
+        final MailQueueData mailQueueData = MailQueueData.findByPk(entityManager, pk);
+        if (mailQueueData == null) {
+            return;
+        }
+        final int tryCounter = mailQueueData.getTryCounter() + 1;
+        if (tryCounter >= MailConfiguration.getMailQueueMaxAttempts()) {
+            log.error("Giving up on queued email " + pk + " after " + tryCounter + " attempts: " + reason);
+            entityManager.remove(mailQueueData);
+            return;
+        }
+        // Exponential backoff, capped so that the shift can not overflow
+        final long maxBackoff = MailConfiguration.getMailQueueMaxRetryBackoff();
+        final long backoff = Math.min(MailConfiguration.getMailQueueRetryBackoff() << Math.min(tryCounter - 1, 30), maxBackoff);
+        log.info("Failed to send queued email " + pk + ", attempt " + tryCounter + ", retrying in " + backoff + " ms: " + reason);
+        mailQueueData.setTryCounter(tryCounter);
+        mailQueueData.setNextAttempt(System.currentTimeMillis() + backoff);
+    }
+
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    @Override
+    public void closeConnection() {
+        synchronized (MailQueueSessionBean.class) {
+            if (mailQueueSender != null) {
+                mailQueueSender.close();
+                mailQueueSender = null;
+            }
+        }
+    }
+
+    /** @return the sender of this node, which is recreated if the mail session has changed */
+    private static synchronized MailQueueSender getMailQueueSender() {
+        final Session session = ServiceLocator.getInstance().getMailSession(MailConfiguration.getMailJndiName());
+        if (mailQueueSender == null || mailQueueSender.getSession() != session) {
+            if (mailQueueSender != null) {
+                mailQueueSender.close();
+            }
+            mailQueueSender = new MailQueueSender(session, MailConfiguration.getMailQueueConnectionIdleTime());
+        }
+        return mailQueueSender;
+    }
+
+    /**
+     * Adds a timer to the bean. The timer is not persistent, since each node that is running should send queued email.
+     *
+     * @param interval the time in milliseconds from now for the next timer to fire
+     */
+    // We don't want the appserver to persist/update the timer in the same transaction if they are stored in different non XA DataSources. This method
+    // should not be run from within a transaction.
+    private Timer addTimer(final long interval) {
+        if (log.isTraceEnabled()) {
+            log.trace("addTimer: " + timerId + ", " + interval);
+        }
+        return timerService.createSingleActionTimer(interval, new TimerConfig(timerId, false));
+    }
+
+    /**
+     * This method cancels all timers associated with this bean.
+     */
+    private void cancelTimers() {
+        final Collection<Timer> timers = timerService.getTimers();
+        for (final Timer timer : timers) {
+            try {
+                timer.cancel();
+            } catch (NoSuchObjectLocalException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Timer was already expired or canceled: " + timer.getInfo());
+                }
+            }
+        }
+    }
+}
@@ -1795,7 +1795,16 @@ public class EndEntityManagementSessionBean implements EndEntityManagementSessio
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     @Override
     public List<EndEntityInformation> findUsers(List<Integer> caIds, long timeModified, int status) {
+        return findUsers(caIds, timeModified, status, 0, 1);
+    }
+
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    @Override
+    public List<EndEntityInformation> findUsers(List<Integer> caIds, long timeModified, int status, int partition, int partitions) {
         String queryString = "SELECT a FROM UserData a WHERE (a.timeModified <=:timeModified) AND (a.status=:status)";
+        if (partitions > 1) {
+            queryString += " AND (MOD(a.timeCreated, :partitions)=:partition)";
+        }
         if (caIds.size() > 0) {
             queryString += " AND (a.caId=:caId0";
             for (int i = 1; i < caIds.size(); i++) {
@@ -1810,6 +1819,10 @@ public class EndEntityManagementSessionBean implements EndEntityManagementSessio
         TypedQuery<UserData> query = entityManager.createQuery(queryString, UserData.class);
         query.setParameter("timeModified", timeModified);
         query.setParameter("status", status);
+        if (partitions > 1) {
+            query.setParameter("partitions", Long.valueOf(partitions));
+            query.setParameter("partition", Long.valueOf(partition));
+        }
         if (caIds.size() > 0) {
             for (int i = 0; i < caIds.size(); i++) {
                 query.setParameter("caId" + i, caIds.get(i));
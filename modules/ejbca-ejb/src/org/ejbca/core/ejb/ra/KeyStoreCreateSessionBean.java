@@ -53,6 +53,7 @@ import org.cesecore.certificates.endentity.EndEntityConstants;
 import org.cesecore.certificates.endentity.EndEntityInformation;
 import org.cesecore.jndi.JndiConstants;
 import org.cesecore.keys.token.CryptoTokenOfflineException;
+import org.cesecore.keys.util.KeyPairPool;
 import org.cesecore.keys.util.KeyTools;
 import org.cesecore.keys.util.PublicKeyWrapper;
 import org.cesecore.util.CertTools;
@@ -172,7 +173,7 @@ public class KeyStoreCreateSessionBean implements KeyStoreCreateSessionLocal, Ke
                 }
             }
             // generate new keys.
-            rsaKeys = KeyTools.genKeys(keyspec, keyalg);
+            rsaKeys = KeyPairPool.INSTANCE.genKeys(keyspec, keyalg);
     	}
     	X509Certificate cert = null;
     	if ((reusecertificate) && (keyData != null)) {
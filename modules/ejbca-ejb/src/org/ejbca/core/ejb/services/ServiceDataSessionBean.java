@@ -63,6 +63,7 @@ public class ServiceDataSessionBean implements ServiceDataSessionLocal, ServiceD
     	if (sd != null) {
     		entityManager.remove(sd);
     	}
+    	ServiceNodeLeaseData.removeLeases(entityManager, id.intValue());
     }
 
     @Override
@@ -96,4 +97,15 @@ public class ServiceDataSessionBean implements ServiceDataSessionLocal, ServiceD
 	public boolean updateTimestamps(Integer serviceId, long oldRunTimeStamp, long oldNextRunTimeStamp, long newRunTimeStamp, long newNextRunTimeStamp) {
     	return ServiceData.updateTimestamps(entityManager, serviceId, oldRunTimeStamp, oldNextRunTimeStamp, newRunTimeStamp, newNextRunTimeStamp);
     }
+
+    @Override
+    public List<String> renewNodeLease(final int serviceId, final String nodeName, final long expireTime) {
+        if (!ServiceNodeLeaseData.renewLease(entityManager, serviceId, nodeName, expireTime)) {
+            // First run on this node, or the lease had expired and was removed by another node
+            entityManager.persist(new ServiceNodeLeaseData(serviceId, nodeName, expireTime));
+        }
+        final long now = System.currentTimeMillis();
+        ServiceNodeLeaseData.removeExpiredLeases(entityManager, serviceId, now);
+        return ServiceNodeLeaseData.findNodeNamesWithLease(entityManager, serviceId, now);
+    }
 }
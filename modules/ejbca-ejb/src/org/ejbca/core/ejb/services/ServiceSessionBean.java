@@ -83,10 +83,12 @@ import org.ejbca.core.model.InternalEjbcaResources;
 import org.ejbca.core.model.authorization.AccessRulesConstants;
 import org.ejbca.core.model.services.BaseWorker;
 import org.ejbca.core.model.services.IInterval;
+import org.ejbca.core.model.services.IShardableWorker;
 import org.ejbca.core.model.services.IWorker;
 import org.ejbca.core.model.services.ServiceConfiguration;
 import org.ejbca.core.model.services.ServiceExecutionFailedException;
 import org.ejbca.core.model.services.ServiceExistsException;
+import org.ejbca.core.model.services.ServiceShard;
 import org.ejbca.core.protocol.cmp.CmpMessageDispatcherSessionLocal;
 
 /**
@@ -111,6 +113,9 @@ public class ServiceSessionBean implements ServiceSessionLocal, ServiceSessionRe
 
     private static final long SERVICELOADER_PERIOD = 5 * 60 * 1000;
 
+    /** Shortest time that the lease of a node on a share of the work of a sharded service lasts after the next run of the service */
+    private static final long MIN_SHARD_LEASE_TIME = 30 * 1000;
+
     @Resource
     private SessionContext sessionContext;
     private TimerService timerService; // When the sessionContext is injected, the timerService should be looked up.
@@ -566,9 +571,31 @@ public class ServiceSessionBean implements ServiceSessionLocal, ServiceSessionRe
                 log.debug("runDateCheck is: " + runDateCheck);
                 log.debug("currentDate is:  " + currentDate);
             }
+            // Check if this is a service that divides its work between the nodes, see IShardableWorker
+            final boolean sharded = !serviceConfiguration.isRunOnAllNodes() && serviceConfiguration.isShardedExecution() && hostname != null;
+            if (sharded && !(worker instanceof IShardableWorker)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Service " + serviceName + " is set to run sharded, but its worker " + worker.getClass().getName()
+                            + " can not divide its work. It will run on one node at a time.");
+                }
+            }
             // Check if this is a service that should run on all nodes, i.e. ignore if it is already running on another node in a cluster
             // This is used for services that do (lighter) work local to each node, such as HSM keepalive service
-            if (!serviceConfiguration.isRunOnAllNodes()) {
+            if (sharded && worker instanceof IShardableWorker) {
+                // The lease lasts until one interval after the next time the timer fires on this node, so that a node that is a bit late
+                // keeps its share of the work. Until then, the other nodes will skip the work of a node that has left the cluster.
+                final long leaseExpireTime = nextTimeout + Math.max(nextTimeout - currentDate.getTime(), MIN_SHARD_LEASE_TIME);
+                final List<String> nodeNames = serviceDataSession.renewNodeLease(serviceId, hostname, leaseExpireTime);
+                final int index = nodeNames.indexOf(hostname);
+                final ServiceShard shard = index == -1 ? ServiceShard.ALL : new ServiceShard(index, nodeNames.size());
+                ((IShardableWorker) worker).setShard(shard);
+                if (log.isDebugEnabled()) {
+                    log.debug("Service " + serviceName + " is set to run sharded and will run shard " + shard + " on this node: \"" + hostname
+                            + "\". Nodes: " + nodeNames);
+                }
+                // Always update timestamp so we have a record of running, and nextTimeout is set for service reload
+                serviceDataSession.updateTimestamps(serviceId, oldRunTimeStamp, oldNextRunTimeStamp, runDateCheck.getTime(), nextTimeout);
+            } else if (!serviceConfiguration.isRunOnAllNodes()) {
                 /*
                  * Check if the current date is after when the service should run. If a
                  * service on another cluster node has updated this timestamp already,
@@ -12,6 +12,7 @@
  *************************************************************************/
 package org.ejbca.core.ejb.ws;
 
+import java.math.BigInteger;
 import java.security.cert.CertPathValidatorException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateExpiredException;
@@ -33,8 +34,10 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 
+import javax.annotation.Resource;
 import javax.ejb.EJB;
 import javax.ejb.EJBException;
+import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
@@ -90,6 +93,8 @@ import org.ejbca.core.model.hardtoken.HardTokenInformation;
 import org.ejbca.core.model.hardtoken.types.EnhancedEIDHardToken;
 import org.ejbca.core.model.hardtoken.types.SwedishEIDHardToken;
 import org.ejbca.core.model.hardtoken.types.TurkishEIDHardToken;
+import org.ejbca.core.model.ra.AlreadyRevokedException;
+import org.ejbca.core.model.ra.RevokeBackDateNotAllowedForProfileException;
 import org.ejbca.core.model.ra.raadmin.EndEntityProfileNotFoundException;
 import org.ejbca.core.model.ra.raadmin.EndEntityProfileValidationException;
 import org.ejbca.core.protocol.ws.objects.Certificate;
@@ -97,6 +102,7 @@ import org.ejbca.core.protocol.ws.objects.ExtendedInformationWS;
 import org.ejbca.core.protocol.ws.objects.HardTokenDataWS;
 import org.ejbca.core.protocol.ws.objects.NameAndId;
 import org.ejbca.core.protocol.ws.objects.PinDataWS;
+import org.ejbca.core.protocol.ws.objects.RevokeCertRequestWS;
 import org.ejbca.core.protocol.ws.objects.UserDataVOWS;
 import org.ejbca.core.protocol.ws.objects.UserMatch;
 import org.ejbca.util.cert.OID;
@@ -138,6 +144,9 @@ public class EjbcaWSHelperSessionBean implements EjbcaWSHelperSessionLocal, Ejbc
     private EndEntityProfileSessionLocal endEntityProfileSession;
     @EJB
     private EndEntityManagementSessionLocal endEntityManagementSession;
+
+    @Resource
+    private SessionContext sessionContext;
     
     
     private final String[] softtokennames = { UserDataVOWS.TOKEN_TYPE_USERGENERATED,UserDataVOWS.TOKEN_TYPE_P12,
@@ -717,6 +726,31 @@ public class EjbcaWSHelperSessionBean implements EjbcaWSHelperSessionLocal, Ejbc
 		}
 	}
 
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    @Override
+    public int[] revokeCerts(final AuthenticationToken admin, final List<RevokeCertRequestWS> revocations) throws AuthorizationDeniedException,
+            NoSuchEndEntityException, ApprovalException, AlreadyRevokedException {
+        final int[] approvalRequestIds = new int[revocations.size()];
+        try {
+            for (int i = 0; i < revocations.size(); i++) {
+                final RevokeCertRequestWS revocation = revocations.get(i);
+                try {
+                    endEntityManagementSession.revokeCert(admin, new BigInteger(revocation.getCertificateSN(), 16), null, revocation.getIssuerDN(),
+                            revocation.getReason(), true);
+                } catch (WaitingForApprovalException e) {
+                    // The approval request is added in this transaction, so it must be committed with the other revocations
+                    approvalRequestIds[i] = e.getRequestId();
+                }
+            }
+        } catch (AuthorizationDeniedException | NoSuchEndEntityException | ApprovalException | AlreadyRevokedException e) {
+            sessionContext.setRollbackOnly(); // This is an application exception so it wont trigger a roll-back automatically
+            throw e;
+        } catch (RevokeBackDateNotAllowedForProfileException e) {
+            throw new IllegalStateException("This should not happen since there is no back dating.", e);
+        }
+        return approvalRequestIds;
+    }
+
 	@Override
 	public void checkValidityAndSetUserPassword(AuthenticationToken admin, java.security.cert.Certificate cert, String username, String password) 
             throws CertificateNotYetValidException, CertificateExpiredException, EndEntityProfileValidationException,
@@ -0,0 +1,243 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.era;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Calls the same method on several RaMasterApi implementations at the same time, for the calls of RaMasterApiProxyBean that combine
+ * the results from all back ends. Without this, a call waits for each back end in turn.
+ *
+ * The results are merged in the calling thread, in the order of the back ends, as soon as a result and the results before it are
+ * available. This gives the same result as calling the back ends one at a time. A back end that does not answer within the timeout
+ * is skipped, so that a slow back end makes the result incomplete instead of slow.
+ *
+ * Also caches the result of RaMasterApi.isBackendAvailable() for a short time, since it is called before every call to a back end.
+ *
+ * @version $Id$
+ */
+final class RaMasterApiFanOut {
+
+    private static final Logger log = Logger.getLogger(RaMasterApiFanOut.class);
+
+    /** Largest number of threads calling back ends at the same time. When all are busy, the calling thread calls the back end. */
+    private static final int MAX_THREADS = 64;
+
+    /**
+     * A call to the back ends, and how to combine the results. The merge methods are called in the calling thread, one at a time.
+     *
+     * @param <T> the type of the result from one back end
+     * @param <E> the checked exception that the call may throw
+     */
+    abstract static class Call<T, E extends Exception> {
+        /** Calls one back end, in the calling thread or in a thread of the fan out */
+        abstract T call(RaMasterApi raMasterApi) throws E;
+
+        /** Merges the result of one back end into the combined result */
+        abstract void merge(T result);
+
+        /** Called instead of merge when a back end is unavailable or did not answer in time. Does nothing by default. */
+        void unavailable(RaMasterApi raMasterApi) {
+        }
+    }
+
+    /** Cached answer from isBackendAvailable() */
+    private static final class Availability {
+        private final boolean available;
+        private final long expireTime;
+
+        private Availability(final boolean available, final long expireTime) {
+            this.available = available;
+            this.expireTime = expireTime;
+        }
+    }
+
+    private final ConcurrentHashMap<RaMasterApi, Availability> availabilityCache = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor executor;
+    private final RaMasterApi localRaMasterApi;
+    private final long timeout;
+    private final long availabilityCacheTime;
+
+    /**
+     * @param localRaMasterApi the back end on this node, which is always called in the calling thread, or null
+     * @param timeout how long to wait in milliseconds for the back ends that are called in other threads
+     * @param availabilityCacheTime how long to cache the availability of a back end in milliseconds, 0 to not cache it
+     */
+    RaMasterApiFanOut(final RaMasterApi localRaMasterApi, final long timeout, final long availabilityCacheTime) {
+        this.localRaMasterApi = localRaMasterApi;
+        this.timeout = timeout;
+        this.availabilityCacheTime = availabilityCacheTime;
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(0, MAX_THREADS, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "RaMasterApiFanOut-" + threadNumber.incrementAndGet()); // NOPMD daemon thread that only waits for remote back ends
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /** Stops the threads. Calls that are in progress are interrupted. */
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /** @return true if the back end is available, possibly as answered a short time ago */
+    boolean isBackendAvailable(final RaMasterApi raMasterApi) {
+        if (availabilityCacheTime <= 0) {
+            return raMasterApi.isBackendAvailable();
+        }
+        final long now = System.currentTimeMillis();
+        final Availability cached = availabilityCache.get(raMasterApi);
+        if (cached != null && cached.expireTime > now) {
+            return cached.available;
+        }
+        final boolean available = raMasterApi.isBackendAvailable();
+        availabilityCache.put(raMasterApi, new Availability(available, now + availabilityCacheTime));
+        return available;
+    }
+
+    /** Forgets the cached availability of a back end, after a call has found it to be unavailable */
+    private void setUnavailable(final RaMasterApi raMasterApi) {
+        availabilityCache.remove(raMasterApi);
+    }
+
+    /**
+     * Calls all available back ends at the same time and merges the results in the order of the back ends.
+     *
+     * If a back end throws a checked exception, the calls to the back ends after it are cancelled and the exception is thrown, just as
+     * when calling them one at a time. Back ends that throw UnsupportedOperationException are skipped.
+     *
+     * @param raMasterApis the back ends in order of precedence for the merge
+     * @param call the call to make and how to merge the results
+     * @throws E if a back end throws the checked exception of the call
+     */
+    <T, E extends Exception> void invoke(final RaMasterApi[] raMasterApis, final Call<T, E> call) throws E {
+        final List<RaMasterApi> available = new ArrayList<>(raMasterApis.length);
+        for (final RaMasterApi raMasterApi : raMasterApis) {
+            if (isBackendAvailable(raMasterApi)) {
+                available.add(raMasterApi);
+            }
+        }
+        if (available.size() == 1) {
+            // Nothing to gain from another thread
+            invokeInCallingThread(available.get(0), call);
+            return;
+        }
+        final List<Future<T>> futures = new ArrayList<>(available.size());
+        for (final RaMasterApi raMasterApi : available) {
+            if (raMasterApi == localRaMasterApi) {
+                // Called below in this thread, which keeps the transaction and security context of the caller
+                futures.add(null);
+            } else {
+                futures.add(executor.submit(new Callable<T>() {
+                    @Override
+                    public T call() throws Exception {
+                        return call.call(raMasterApi);
+                    }
+                }));
+            }
+        }
+        final long deadline = System.currentTimeMillis() + timeout;
+        try {
+            for (int i = 0; i < available.size(); i++) {
+                final RaMasterApi raMasterApi = available.get(i);
+                final Future<T> future = futures.get(i);
+                if (future == null) {
+                    invokeInCallingThread(raMasterApi, call);
+                } else {
+                    collect(raMasterApi, future, deadline, call);
+                }
+            }
+        } finally {
+            // Only does something if an exception is thrown or the thread is interrupted
+            for (final Future<T> future : futures) {
+                if (future != null && !future.isDone()) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    private <T, E extends Exception> void invokeInCallingThread(final RaMasterApi raMasterApi, final Call<T, E> call) throws E {
+        try {
+            call.merge(call.call(raMasterApi));
+        } catch (UnsupportedOperationException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Trouble during back end invocation: " + e.getMessage());
+            }
+        } catch (RaMasterBackendUnavailableException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Timeout during back end invocation.", e);
+            }
+            setUnavailable(raMasterApi);
+            call.unavailable(raMasterApi);
+        }
+    }
+
+    /** Waits for the result of a back end until the deadline, and merges it */
+    @SuppressWarnings("unchecked")
+    private <T, E extends Exception> void collect(final RaMasterApi raMasterApi, final Future<T> future, final long deadline, final Call<T, E> call)
+            throws E {
+        final T result;
+        try {
+            result = future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            log.info("Back end " + raMasterApi.getClass().getSimpleName() + " did not answer within " + timeout + " ms. The result will not include it.");
+            call.unavailable(raMasterApi);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            call.unavailable(raMasterApi);
+            return;
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof UnsupportedOperationException) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Trouble during back end invocation: " + cause.getMessage());
+                }
+            } else if (cause instanceof RaMasterBackendUnavailableException) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Timeout during back end invocation.", cause);
+                }
+                setUnavailable(raMasterApi);
+                call.unavailable(raMasterApi);
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                // The only checked exception that Call.call can throw
+                throw (E) cause;
+            }
+            return;
+        }
+        call.merge(result);
+    }
+}
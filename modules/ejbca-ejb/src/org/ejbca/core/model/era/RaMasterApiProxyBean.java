@@ -36,6 +36,7 @@ import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.ejb.ConcurrencyManagement;
 import javax.ejb.ConcurrencyManagementType;
 import javax.ejb.DependsOn;
@@ -71,6 +72,7 @@ import org.cesecore.certificates.endentity.EndEntityInformation;
 import org.cesecore.certificates.util.AlgorithmTools;
 import org.cesecore.config.RaStyleInfo;
 import org.cesecore.configuration.GlobalConfigurationSessionLocal;
+import org.cesecore.keys.util.KeyPairPool;
 import org.cesecore.keys.util.KeyTools;
 import org.cesecore.roles.AccessRulesHelper;
 import org.cesecore.roles.Role;
@@ -78,6 +80,7 @@ import org.cesecore.roles.RoleExistsException;
 import org.cesecore.roles.member.RoleMember;
 import org.cesecore.util.CertTools;
 import org.cesecore.util.EJBTools;
+import org.ejbca.config.EjbcaConfiguration;
 import org.ejbca.config.GlobalConfiguration;
 import org.ejbca.core.EjbcaException;
 import org.ejbca.core.ejb.keyrecovery.KeyRecoverySessionLocal;
@@ -129,6 +132,8 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
 
     private RaMasterApi[] raMasterApis = null;
     private RaMasterApi[] raMasterApisLocalFirst = null;
+    /** Calls several back ends at the same time, and caches whether they are available */
+    private RaMasterApiFanOut fanOut = null;
 
     /** Default constructor */
     public RaMasterApiProxyBean() {
@@ -146,6 +151,8 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
         this.raMasterApiSession = raMasterApiSession;
         this.localNodeGlobalConfigurationSession = globalConfigurationSession;
         this.localNodeKeyRecoverySession = keyRecoverySession;
+        this.fanOut = new RaMasterApiFanOut(raMasterApiSession, EjbcaConfiguration.getRaBackendTimeout(),
+                EjbcaConfiguration.getRaBackendAvailabilityCacheTime());
     }
 
     @PostConstruct
@@ -173,12 +180,26 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
         this.raMasterApis = implementations.toArray(new RaMasterApi[implementations.size()]);
         Collections.reverse(implementations);
         this.raMasterApisLocalFirst = implementations.toArray(new RaMasterApi[implementations.size()]);
+        this.fanOut = new RaMasterApiFanOut(raMasterApiSession, EjbcaConfiguration.getRaBackendTimeout(),
+                EjbcaConfiguration.getRaBackendAvailabilityCacheTime());
+    }
+
+    @PreDestroy
+    private void preDestroy() {
+        if (fanOut != null) {
+            fanOut.shutdown();
+        }
+    }
+
+    /** @return true if the back end is available, as cached for a short time */
+    private boolean isBackendAvailable(final RaMasterApi raMasterApi) {
+        return fanOut.isBackendAvailable(raMasterApi);
     }
 
     @Override
     public boolean isBackendAvailable() {
         for (final RaMasterApi raMasterApi : raMasterApis) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 return true;
             }
         }
@@ -188,7 +209,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     @Override
     public boolean isBackendAvailable(Class<? extends RaMasterApi> apiType) {
         for (final RaMasterApi raMasterApi : raMasterApis) {
-            if (raMasterApi.isBackendAvailable()  && apiType.isInstance(raMasterApi) ) {
+            if (isBackendAvailable(raMasterApi)  && apiType.isInstance(raMasterApi) ) {
                 return true;
             }
         }
@@ -200,7 +221,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public int getApiVersion() {
         int minApiVersion = Integer.MAX_VALUE;
         for (final RaMasterApi raMasterApi : raMasterApis) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     minApiVersion = Math.min(minApiVersion, raMasterApi.getApiVersion());
                 } catch (UnsupportedOperationException | RaMasterBackendUnavailableException e) {
@@ -214,7 +235,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     @Override
     public boolean isAuthorizedNoLogging(final AuthenticationToken authenticationToken, final String... resources) {
         for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     if (raMasterApi.isAuthorizedNoLogging(authenticationToken, resources)) {
                         return true;
@@ -229,29 +250,30 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
 
     @Override
     public RaAuthorizationResult getAuthorization(final AuthenticationToken authenticationToken) throws AuthenticationFailedException {
-        RaAuthorizationResult combinedResult = null;
-        for (final RaMasterApi raMasterApi : raMasterApis) {
-            if (raMasterApi.isBackendAvailable()) {
-                try {
-                    final RaAuthorizationResult raAuthorizationResult = raMasterApi.getAuthorization(authenticationToken);
-                    if (combinedResult==null) {
-                        combinedResult = raAuthorizationResult;
-                    } else {
-                        final HashMap<String, Boolean> accessRules = AccessRulesHelper.getAccessRulesUnion(combinedResult.getAccessRules(),
-                                raAuthorizationResult.getAccessRules());
-                        // Sum of update numbers is strictly growing under the assumption that all backends are still connected
-                        final int combinedUpdateNumber = combinedResult.getUpdateNumber() + raAuthorizationResult.getUpdateNumber();
-                        combinedResult = new RaAuthorizationResult(accessRules, combinedUpdateNumber);
-                    }
-                } catch (UnsupportedOperationException | RaMasterBackendUnavailableException e) {
-                    // Just try next implementation
+        final RaAuthorizationResult[] combinedResult = new RaAuthorizationResult[1];
+        fanOut.invoke(raMasterApis, new RaMasterApiFanOut.Call<RaAuthorizationResult, AuthenticationFailedException>() {
+            @Override
+            RaAuthorizationResult call(final RaMasterApi raMasterApi) throws AuthenticationFailedException {
+                return raMasterApi.getAuthorization(authenticationToken);
+            }
+
+            @Override
+            void merge(final RaAuthorizationResult raAuthorizationResult) {
+                if (combinedResult[0]==null) {
+                    combinedResult[0] = raAuthorizationResult;
+                } else {
+                    final HashMap<String, Boolean> accessRules = AccessRulesHelper.getAccessRulesUnion(combinedResult[0].getAccessRules(),
+                            raAuthorizationResult.getAccessRules());
+                    // Sum of update numbers is strictly growing under the assumption that all backends are still connected
+                    final int combinedUpdateNumber = combinedResult[0].getUpdateNumber() + raAuthorizationResult.getUpdateNumber();
+                    combinedResult[0] = new RaAuthorizationResult(accessRules, combinedUpdateNumber);
                 }
             }
+        });
+        if (combinedResult[0]==null) {
+            combinedResult[0] = new RaAuthorizationResult(null, 0);
         }
-        if (combinedResult==null) {
-            combinedResult = new RaAuthorizationResult(null, 0);
-        }
-        return combinedResult;
+        return combinedResult[0];
     }
 
     @Override
@@ -259,7 +281,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public AccessSet getUserAccessSet(final AuthenticationToken authenticationToken) throws AuthenticationFailedException {
         AccessSet merged = new AccessSet(new HashSet<String>());
         for (final RaMasterApi raMasterApi : raMasterApis) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     AccessSet as = raMasterApi.getUserAccessSet(authenticationToken);
                     merged = new AccessSet(merged, as);
@@ -277,7 +299,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
         final List<AuthenticationToken> tokens = new ArrayList<>(authenticationTokens);
         final AccessSet[] merged = new AccessSet[authenticationTokens.size()];
         for (final RaMasterApi raMasterApi : raMasterApis) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     final List<AccessSet> accessSets = raMasterApi.getUserAccessSets(tokens);
                     for (int i = 0; i < accessSets.size(); i++) {
@@ -299,7 +321,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public List<CAInfo> getAuthorizedCas(final AuthenticationToken authenticationToken) {
         final Map<Integer, CAInfo> caInfoMap = new HashMap<>();
         for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     for (final CAInfo caInfo : raMasterApi.getAuthorizedCas(authenticationToken)) {
                         caInfoMap.put(caInfo.getCAId(), caInfo);
@@ -315,7 +337,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     @Override
     public LinkedHashMap<Integer, RaStyleInfo> getAllCustomRaStyles(AuthenticationToken authenticationToken) throws AuthorizationDeniedException {
         for (RaMasterApi raMasterApi : raMasterApis) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     LinkedHashMap<Integer, RaStyleInfo> raCssInfos = raMasterApi.getAllCustomRaStyles(authenticationToken);
                     if (!raCssInfos.isEmpty()) {
@@ -333,7 +355,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public List<RaStyleInfo> getAvailableCustomRaStyles(AuthenticationToken authenticationToken, int hashCodeOfCurrentList) {
         List<RaStyleInfo> raStyleInfos = new ArrayList<>();
         for (RaMasterApi raMasterApi : raMasterApis) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     raStyleInfos = raMasterApi.getAvailableCustomRaStyles(authenticationToken, hashCodeOfCurrentList);
                     return raStyleInfos;
@@ -349,7 +371,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public List<Role> getAuthorizedRoles(final AuthenticationToken authenticationToken) {
         final Map<Integer, Role> roleMap = new HashMap<>();
         for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     for (final Role role : raMasterApi.getAuthorizedRoles(authenticationToken)) {
                         roleMap.put(role.getRoleId(), role);
@@ -365,7 +387,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     @Override
     public Role getRole(final AuthenticationToken authenticationToken, final int roleId) throws AuthorizationDeniedException {
         for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     Role role = raMasterApi.getRole(authenticationToken, roleId);
                     if (role != null) {
@@ -383,7 +405,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public List<String> getAuthorizedRoleNamespaces(final AuthenticationToken authenticationToken, final int roleId) {
         final Set<String> namespaceSet = new HashSet<>();
         for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     namespaceSet.addAll(raMasterApi.getAuthorizedRoleNamespaces(authenticationToken, roleId));
                 } catch (UnsupportedOperationException | RaMasterBackendUnavailableException e) {
@@ -397,25 +419,26 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     @Override
     public Map<String,RaRoleMemberTokenTypeInfo> getAvailableRoleMemberTokenTypes(final AuthenticationToken authenticationToken) {
         final HashMap<String,RaRoleMemberTokenTypeInfo> result = new HashMap<>();
-        for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
-                try {
-                    final Map<String,RaRoleMemberTokenTypeInfo> mergeWith = raMasterApi.getAvailableRoleMemberTokenTypes(authenticationToken);
-                    for (final Map.Entry<String,RaRoleMemberTokenTypeInfo> entry : mergeWith.entrySet()) {
-                        final String tokenType = entry.getKey();
-                        final RaRoleMemberTokenTypeInfo entryInfo = entry.getValue();
-                        final RaRoleMemberTokenTypeInfo resultInfo = result.get(tokenType);
-                        if (resultInfo == null) {
-                            result.put(tokenType, entryInfo);
-                        } else {
-                            resultInfo.merge(entryInfo);
-                        }
+        fanOut.invoke(raMasterApisLocalFirst, new RaMasterApiFanOut.Call<Map<String,RaRoleMemberTokenTypeInfo>, RuntimeException>() {
+            @Override
+            Map<String,RaRoleMemberTokenTypeInfo> call(final RaMasterApi raMasterApi) {
+                return raMasterApi.getAvailableRoleMemberTokenTypes(authenticationToken);
+            }
+
+            @Override
+            void merge(final Map<String,RaRoleMemberTokenTypeInfo> mergeWith) {
+                for (final Map.Entry<String,RaRoleMemberTokenTypeInfo> entry : mergeWith.entrySet()) {
+                    final String tokenType = entry.getKey();
+                    final RaRoleMemberTokenTypeInfo entryInfo = entry.getValue();
+                    final RaRoleMemberTokenTypeInfo resultInfo = result.get(tokenType);
+                    if (resultInfo == null) {
+                        result.put(tokenType, entryInfo);
+                    } else {
+                        resultInfo.merge(entryInfo);
                     }
-                } catch (UnsupportedOperationException | RaMasterBackendUnavailableException e) {
-                    // Just try next implementation
                 }
             }
-        }
+        });
         return result;
     }
     
@@ -426,7 +449,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
         // (The save operation might be unsuccessful if we're editing an existing role that belongs to another system, for instance)
         for (final RaMasterApi raMasterApi : raMasterApis) {
             try {
-                if (raMasterApi.isBackendAvailable()) {
+                if (isBackendAvailable(raMasterApi)) {
                     final Role savedRole = raMasterApi.saveRole(authenticationToken, role);
                     if (savedRole != null) {
                         return savedRole;
@@ -453,7 +476,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
         boolean result = false;
         for (final RaMasterApi raMasterApi : raMasterApis) {
             try {
-                if (raMasterApi.isBackendAvailable()) {
+                if (isBackendAvailable(raMasterApi)) {
                     result |= raMasterApi.deleteRole(authenticationToken, roleId);
                 }
             } catch (AuthorizationDeniedException e) {
@@ -474,7 +497,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     @Override
     public RoleMember getRoleMember(AuthenticationToken authenticationToken, int roleMemberId) throws AuthorizationDeniedException {
         for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     RoleMember roleMember = raMasterApi.getRoleMember(authenticationToken, roleMemberId);
                     if (roleMember != null) {
@@ -496,7 +519,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
         // or if we're trying to add a role member and the role it references to belongs to another system)
         for (final RaMasterApi raMasterApi : raMasterApis) {
             try {
-                if (raMasterApi.isBackendAvailable()) {
+                if (isBackendAvailable(raMasterApi)) {
                     final RoleMember savedRoleMember = raMasterApi.saveRoleMember(authenticationToken, roleMember);
                     if (savedRoleMember != null) {
                         return savedRoleMember;
@@ -523,7 +546,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
         boolean result = false;
         for (final RaMasterApi raMasterApi : raMasterApis) {
             try {
-                if (raMasterApi.isBackendAvailable()) {
+                if (isBackendAvailable(raMasterApi)) {
                     result |= raMasterApi.deleteRoleMember(authenticationToken, roleId, roleMemberId);
                 }
             } catch (AuthorizationDeniedException e) {
@@ -544,7 +567,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     @Override
     public RaApprovalRequestInfo getApprovalRequest(AuthenticationToken authenticationToken, int id) {
         for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     RaApprovalRequestInfo reqInfo = raMasterApi.getApprovalRequest(authenticationToken, id);
                     if (reqInfo != null) {
@@ -561,7 +584,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     @Override
     public RaApprovalRequestInfo getApprovalRequestByRequestHash(AuthenticationToken authenticationToken, int approvalId) {
         for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     RaApprovalRequestInfo reqInfo = raMasterApi.getApprovalRequestByRequestHash(authenticationToken, approvalId);
                     if (reqInfo != null) {
@@ -579,7 +602,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public RaApprovalRequestInfo editApprovalRequest(AuthenticationToken authenticationToken, RaApprovalEditRequest edit)
             throws AuthorizationDeniedException {
         for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     final RaApprovalRequestInfo newApproval = raMasterApi.editApprovalRequest(authenticationToken, edit);
                     if (newApproval != null) {
@@ -596,7 +619,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     @Override
     public void extendApprovalRequest(AuthenticationToken authenticationToken, int id, long extendForMillis) throws AuthorizationDeniedException {
         for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     raMasterApi.extendApprovalRequest(authenticationToken, id, extendForMillis);
                 } catch (UnsupportedOperationException | RaMasterBackendUnavailableException e) {
@@ -611,7 +634,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
             throws AuthorizationDeniedException, ApprovalException, ApprovalRequestExpiredException, ApprovalRequestExecutionException,
             AdminAlreadyApprovedRequestException, SelfApprovalException, AuthenticationFailedException {
         for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     if (raMasterApi.addRequestResponse(authenticationToken, requestResponse)) {
                         return true;
@@ -625,18 +648,20 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     }
 
     @Override
-    public RaRequestsSearchResponse searchForApprovalRequests(AuthenticationToken authenticationToken,
-            RaRequestsSearchRequest raRequestsSearchRequest) {
+    public RaRequestsSearchResponse searchForApprovalRequests(final AuthenticationToken authenticationToken,
+            final RaRequestsSearchRequest raRequestsSearchRequest) {
         final RaRequestsSearchResponse searchResponse = new RaRequestsSearchResponse();
-        for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
-                try {
-                    searchResponse.merge(raMasterApi.searchForApprovalRequests(authenticationToken, raRequestsSearchRequest));
-                } catch (UnsupportedOperationException | RaMasterBackendUnavailableException e) {
-                    // Just try next implementation
-                }
+        fanOut.invoke(raMasterApisLocalFirst, new RaMasterApiFanOut.Call<RaRequestsSearchResponse, RuntimeException>() {
+            @Override
+            RaRequestsSearchResponse call(final RaMasterApi raMasterApi) {
+                return raMasterApi.searchForApprovalRequests(authenticationToken, raRequestsSearchRequest);
             }
-        }
+
+            @Override
+            void merge(final RaRequestsSearchResponse result) {
+                searchResponse.merge(result);
+            }
+        });
         return searchResponse;
     }
 
@@ -644,7 +669,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public CertificateDataWrapper searchForCertificate(final AuthenticationToken authenticationToken, final String fingerprint) {
         CertificateDataWrapper searchResponse = null;
         for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     searchResponse = raMasterApi.searchForCertificate(authenticationToken, fingerprint);
                     if (searchResponse != null) {
@@ -662,7 +687,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public CertificateDataWrapper searchForCertificateByIssuerAndSerial(final AuthenticationToken authenticationToken, final String issuerDN, final String serno) {
         CertificateDataWrapper searchResponse = null;
         for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     searchResponse = raMasterApi.searchForCertificateByIssuerAndSerial(authenticationToken, issuerDN, serno);
                     if (searchResponse != null) {
@@ -677,27 +702,26 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     }
 
     @Override
-    public RaCertificateSearchResponse searchForCertificates(AuthenticationToken authenticationToken,
-            RaCertificateSearchRequest raCertificateSearchRequest) {
+    public RaCertificateSearchResponse searchForCertificates(final AuthenticationToken authenticationToken,
+            final RaCertificateSearchRequest raCertificateSearchRequest) {
         final RaCertificateSearchResponse ret = new RaCertificateSearchResponse();
-        for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
-                try {
-                    ret.merge(raMasterApi.searchForCertificates(authenticationToken, raCertificateSearchRequest));
-                } catch (UnsupportedOperationException e) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Trouble during back end invocation: " + e.getMessage());
-                    }
-                    // Just try next implementation
-                } catch (RaMasterBackendUnavailableException e) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Timeout during back end invocation.", e);
-                    }
-                    // If the back end timed out due to a too heavy search we want to allow the client to retry with more fine grained criteria
-                    ret.setMightHaveMoreResults(true);
-                }
+        fanOut.invoke(raMasterApisLocalFirst, new RaMasterApiFanOut.Call<RaCertificateSearchResponse, RuntimeException>() {
+            @Override
+            RaCertificateSearchResponse call(final RaMasterApi raMasterApi) {
+                return raMasterApi.searchForCertificates(authenticationToken, raCertificateSearchRequest);
             }
-        }
+
+            @Override
+            void merge(final RaCertificateSearchResponse result) {
+                ret.merge(result);
+            }
+
+            @Override
+            void unavailable(final RaMasterApi raMasterApi) {
+                // If the back end timed out due to a too heavy search we want to allow the client to retry with more fine grained criteria
+                ret.setMightHaveMoreResults(true);
+            }
+        });
         return ret;
     }
 
@@ -715,7 +739,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
             RaRoleSearchRequest raRoleSearchRequest) {
         final RaRoleSearchResponse ret = new RaRoleSearchResponse();
         for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     ret.merge(raMasterApi.searchForRoles(authenticationToken, raRoleSearchRequest));
                 } catch (UnsupportedOperationException | RaMasterBackendUnavailableException e) {
@@ -731,7 +755,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
             RaRoleMemberSearchRequest raRoleMemberSearchRequest) {
         final RaRoleMemberSearchResponse ret = new RaRoleMemberSearchResponse();
         for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     ret.merge(raMasterApi.searchForRoleMembers(authenticationToken, raRoleMemberSearchRequest));
                 } catch (UnsupportedOperationException | RaMasterBackendUnavailableException e) {
@@ -743,27 +767,26 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     }
 
     @Override
-    public RaEndEntitySearchResponse searchForEndEntities(AuthenticationToken authenticationToken,
-            RaEndEntitySearchRequest raEndEntitySearchRequest) {
+    public RaEndEntitySearchResponse searchForEndEntities(final AuthenticationToken authenticationToken,
+            final RaEndEntitySearchRequest raEndEntitySearchRequest) {
         final RaEndEntitySearchResponse ret = new RaEndEntitySearchResponse();
-        for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
-                try {
-                    ret.merge(raMasterApi.searchForEndEntities(authenticationToken, raEndEntitySearchRequest));
-                } catch (UnsupportedOperationException e) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Trouble during back end invocation: " + e.getMessage());
-                    }
-                    // Just try next implementation
-                } catch (RaMasterBackendUnavailableException e) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Timeout during back end invocation.", e);
-                    }
-                    // If the back end timed out due to a too heavy search we want to allow the client to retry with more fine grained criteria
-                    ret.setMightHaveMoreResults(true);
-                }
+        fanOut.invoke(raMasterApisLocalFirst, new RaMasterApiFanOut.Call<RaEndEntitySearchResponse, RuntimeException>() {
+            @Override
+            RaEndEntitySearchResponse call(final RaMasterApi raMasterApi) {
+                return raMasterApi.searchForEndEntities(authenticationToken, raEndEntitySearchRequest);
             }
-        }
+
+            @Override
+            void merge(final RaEndEntitySearchResponse result) {
+                ret.merge(result);
+            }
+
+            @Override
+            void unavailable(final RaMasterApi raMasterApi) {
+                // If the back end timed out due to a too heavy search we want to allow the client to retry with more fine grained criteria
+                ret.setMightHaveMoreResults(true);
+            }
+        });
         return ret;
     }
 
@@ -771,7 +794,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public Map<Integer, String> getAuthorizedCertificateProfileIdsToNameMap(final AuthenticationToken authenticationToken) {
         final Map<Integer, String> ret = new HashMap<>();
         for (final RaMasterApi raMasterApi : raMasterApis) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     ret.putAll(raMasterApi.getAuthorizedCertificateProfileIdsToNameMap(authenticationToken));
                 } catch (UnsupportedOperationException | RaMasterBackendUnavailableException e) {
@@ -786,7 +809,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public Map<Integer, String> getAuthorizedEndEntityProfileIdsToNameMap(final AuthenticationToken authenticationToken) {
         final Map<Integer, String> ret = new HashMap<>();
         for (final RaMasterApi raMasterApi : raMasterApis) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     ret.putAll(raMasterApi.getAuthorizedEndEntityProfileIdsToNameMap(authenticationToken));
                 } catch (UnsupportedOperationException | RaMasterBackendUnavailableException e) {
@@ -801,7 +824,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public IdNameHashMap<EndEntityProfile> getAuthorizedEndEntityProfiles(final AuthenticationToken authenticationToken, final String endEntityAccessRule) {
         final IdNameHashMap<EndEntityProfile> ret = new IdNameHashMap<>();
         for (final RaMasterApi raMasterApi : raMasterApis) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     final IdNameHashMap<EndEntityProfile> result = raMasterApi.getAuthorizedEndEntityProfiles(authenticationToken, endEntityAccessRule);
                     if (result != null) {
@@ -819,7 +842,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public IdNameHashMap<CAInfo> getAuthorizedCAInfos(AuthenticationToken authenticationToken) {
         final IdNameHashMap<CAInfo> ret = new IdNameHashMap<>();
         for (final RaMasterApi raMasterApi : raMasterApis) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     final IdNameHashMap<CAInfo> result = raMasterApi.getAuthorizedCAInfos(authenticationToken);
                     if (result != null) {
@@ -837,7 +860,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public IdNameHashMap<CertificateProfile> getAuthorizedCertificateProfiles(AuthenticationToken authenticationToken) {
         final IdNameHashMap<CertificateProfile> ret = new IdNameHashMap<>();
         for (final RaMasterApi raMasterApi : raMasterApis) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     final IdNameHashMap<CertificateProfile> result = raMasterApi.getAuthorizedCertificateProfiles(authenticationToken);
                     if (result != null) {
@@ -855,7 +878,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public CertificateProfile getCertificateProfile(int id) {
         CertificateProfile ret = null;
         for (final RaMasterApi raMasterApi : raMasterApis) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     ret = raMasterApi.getCertificateProfile(id);
                     if (ret != null) {
@@ -876,7 +899,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
         AuthorizationDeniedException authorizationDeniedException = null;
         for (final RaMasterApi raMasterApi : raMasterApis) {
             try {
-                if (raMasterApi.isBackendAvailable()) {
+                if (isBackendAvailable(raMasterApi)) {
                     return raMasterApi.addUser(admin, endEntity, clearpwd);
                 }
             } catch (AuthorizationDeniedException e) {
@@ -899,7 +922,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
         AuthorizationDeniedException authorizationDeniedException = null;
         for (final RaMasterApi raMasterApi : raMasterApis) {
             try {
-                if (raMasterApi.isBackendAvailable()) {
+                if (isBackendAvailable(raMasterApi)) {
                     raMasterApi.checkSubjectDn(admin, endEntity);
                 }
             } catch (AuthorizationDeniedException e) {
@@ -921,7 +944,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
         AuthorizationDeniedException authorizationDeniedException = null;
         for (final RaMasterApi raMasterApi : raMasterApis) {
             try {
-                if (raMasterApi.isBackendAvailable()) {
+                if (isBackendAvailable(raMasterApi)) {
                     raMasterApi.deleteUser(authenticationToken, username);
                 }
             } catch (AuthorizationDeniedException e) {
@@ -941,7 +964,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     @Override
     public EndEntityInformation searchUser(AuthenticationToken authenticationToken, String username) {
         for (final RaMasterApi raMasterApi : raMasterApis) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     final EndEntityInformation result = raMasterApi.searchUser(authenticationToken, username);
                     if (result != null) {
@@ -960,7 +983,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
             throws NoSuchEndEntityException, AuthStatusException, AuthLoginException {
         NoSuchEndEntityException noSuchEndEntityException = null;
         for (final RaMasterApi raMasterApi : raMasterApis) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     raMasterApi.checkUserStatus(authenticationToken, username, password);
                     return;
@@ -984,7 +1007,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
         EjbcaException userNotFoundException = null;
         
         for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     raMasterApi.finishUserAfterLocalKeyRecovery(authenticationToken, username, password);
                     return;
@@ -1072,7 +1095,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
                     // Create new key pair and CSR
                     final String keyalg = storedEndEntity.getExtendedInformation().getKeyStoreAlgorithmType();
                     final String keyspec = storedEndEntity.getExtendedInformation().getKeyStoreAlgorithmSubType();
-                    kp = KeyTools.genKeys(keyspec, keyalg);
+                    kp = KeyPairPool.INSTANCE.genKeys(keyspec, keyalg);
                     // requestCertForEndEntity verifies the password and performs the finishUser operation
                     cert = requestCertForEndEntity(authenticationToken, storedEndEntity, endEntity.getPassword(), kp);
                     // Store key pair
@@ -1139,7 +1162,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
         }
         
         for (final RaMasterApi raMasterApi : raMasterApis) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     return raMasterApi.generateKeyStore(authenticationToken, endEntity);
                 } catch (AuthorizationDeniedException e) {
@@ -1174,7 +1197,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
             throws AuthorizationDeniedException, EjbcaException {
         AuthorizationDeniedException authorizationDeniedException = null;
         for (final RaMasterApi raMasterApi : raMasterApis) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     return raMasterApi.createCertificate(authenticationToken, endEntity);
                 } catch (AuthorizationDeniedException e) {
@@ -1200,7 +1223,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
         AuthorizationDeniedException authorizationDeniedException = null;
         EjbcaException caDoesntExistException = null;
         for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     return raMasterApi.createCertificateWS(authenticationToken, userdata, requestData, requestType, hardTokenSN, responseType);
                 } catch (EjbcaException e) {
@@ -1266,7 +1289,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
         // Default case
         EjbcaException ejbcaException = null;
         for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     raMasterApi.keyRecoverWS(authenticationToken, username, certSNinHex, issuerDN);
                     // If no exceptions were thrown, recovery is complete
@@ -1289,7 +1312,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public List<CertificateWrapper> getLastCertChain(final AuthenticationToken authenticationToken, final String username) throws AuthorizationDeniedException, EjbcaException {
         AuthorizationDeniedException authorizationDeniedException = null;
         for (final RaMasterApi raMasterApi : raMasterApisLocalFirst) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                      final List<CertificateWrapper> chain = raMasterApi.getLastCertChain(authenticationToken, username);
                      if (!chain.isEmpty()) {
@@ -1318,7 +1341,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
         boolean ret = false;
         // Try remote first, since the certificate might be present in the RA database but the admin might not authorized to revoke it there
         for (final RaMasterApi raMasterApi : raMasterApis) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     ret = raMasterApi.changeCertificateStatus(authenticationToken, fingerprint, newStatus, newRevocationReason);
                     if (ret) {
@@ -1343,7 +1366,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
         }
         
         for (final RaMasterApi raMasterApi : raMasterApis) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     ret = raMasterApi.markForRecovery(authenticationToken, username, newPassword, cert, localKeyGeneration);
                     if (ret) {
@@ -1376,7 +1399,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
             WaitingForApprovalException, CADoesntExistsException, ApprovalException,
             CertificateSerialNumberException, IllegalNameException, NoSuchEndEntityException, CustomFieldException {
         for (final RaMasterApi raMasterApi : raMasterApis) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     if (raMasterApi.editUser(authenticationToken, endEntityInformation)) {
                         // Successfully edited the user
@@ -1410,7 +1433,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
         // Default case (everything we need should be available in one instance database)
         boolean ret = false;
         for (final RaMasterApi raMasterApi : raMasterApis) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     ret = raMasterApi.keyRecoveryPossible(authenticationToken, cert, username);
                     if (ret) {
@@ -1428,7 +1451,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
     public ApprovalProfile getApprovalProfileForAction(final AuthenticationToken authenticationToken, final ApprovalRequestType action, final int caId, final int certificateProfileId) throws AuthorizationDeniedException {
         AuthorizationDeniedException authorizationDeniedException = null;
         for (final RaMasterApi raMasterApi : raMasterApis) {
-            if (raMasterApi.isBackendAvailable()) {
+            if (isBackendAvailable(raMasterApi)) {
                 try {
                     return raMasterApi.getApprovalProfileForAction(authenticationToken, action, caId, certificateProfileId);
                 } catch (AuthorizationDeniedException e) {
@@ -1452,7 +1475,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
         NoSuchAliasException caughtException = null;
         
         for (final RaMasterApi raMasterApi : raMasterApis) {
-            if (raMasterApi.isBackendAvailable() && raMasterApi.getApiVersion()>=1) {
+            if (isBackendAvailable(raMasterApi) && raMasterApi.getApiVersion()>=1) {
                 try {
                     byte[] result;
                     try {
@@ -1486,7 +1509,7 @@ public class RaMasterApiProxyBean implements RaMasterApiProxyBeanLocal {
             if (apiVersion == null) {
                 apiVersion = raMasterApi.getApiVersion();
             }           
-            if (raMasterApi.isBackendAvailable() && apiVersion >= 2) {
+            if (isBackendAvailable(raMasterApi) && apiVersion >= 2) {
                 try {
                     try {
                         return raMasterApi.estDispatch(operation, alias, cert, username, password, requestBody);
@@ -55,7 +55,7 @@ import org.cesecore.certificates.endentity.EndEntityTypes;
 import org.cesecore.certificates.endentity.ExtendedInformation;
 import org.cesecore.certificates.util.AlgorithmConstants;
 import org.cesecore.certificates.util.AlgorithmTools;
-import org.cesecore.keys.util.KeyTools;
+import org.cesecore.keys.util.KeyPairPool;
 import org.cesecore.util.CertTools;
 import org.cesecore.util.StringTools;
 import org.ejbca.config.CmpConfiguration;
@@ -606,7 +606,7 @@ public class CrmfMessageHandler extends BaseCmpMessageHandler implements ICmpMes
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Generating server generated keypair RSA "+sizes[0]);
                 }
-                keys = KeyTools.genKeys(String.valueOf(sizes[0]), AlgorithmConstants.KEYALGORITHM_RSA);                    
+                keys = KeyPairPool.INSTANCE.genKeys(String.valueOf(sizes[0]), AlgorithmConstants.KEYALGORITHM_RSA);                    
             } else if (AlgorithmConstants.KEYALGORITHM_ECDSA.equals(algs.get(0))) {
                 if (curves.size() > 1) {
                     final String msg = "Certificate profile specified more than one EC curve, not possible to server generate keys";
@@ -615,7 +615,7 @@ public class CrmfMessageHandler extends BaseCmpMessageHandler implements ICmpMes
                     }
                     throw new InvalidKeyException(msg);                        
                 }
-                keys = KeyTools.genKeys(curves.get(0), AlgorithmConstants.KEYALGORITHM_ECDSA);  
+                keys = KeyPairPool.INSTANCE.genKeys(curves.get(0), AlgorithmConstants.KEYALGORITHM_ECDSA);  
                 
             } else {
                 final String msg = "Certificate profile an algorithm not supported for server generated keys";
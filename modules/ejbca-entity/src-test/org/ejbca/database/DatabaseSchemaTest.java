@@ -56,11 +56,13 @@ import org.ejbca.core.ejb.hardtoken.HardTokenPropertyData;
 import org.ejbca.core.ejb.hardtoken.HardTokenPropertyDataPK;
 import org.ejbca.core.ejb.keyrecovery.KeyRecoveryData;
 import org.ejbca.core.ejb.keyrecovery.KeyRecoveryDataPK;
+import org.ejbca.core.ejb.mail.MailQueueData;
 import org.ejbca.core.ejb.ra.UserData;
 import org.ejbca.core.ejb.ra.raadmin.AdminPreferencesData;
 import org.ejbca.core.ejb.ra.raadmin.EndEntityProfileData;
 import org.ejbca.core.ejb.ra.userdatasource.UserDataSourceData;
 import org.ejbca.core.ejb.services.ServiceData;
+import org.ejbca.core.ejb.services.ServiceNodeLeaseData;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -325,6 +327,22 @@ public class DatabaseSchemaTest {
         LOG.trace("<testPublisherQueueData");
     }
 
+    @Test
+    public void testMailQueueData() {
+        LOG.trace(">testMailQueueData");
+        logMemStats();
+        MailQueueData entity = new MailQueueData();
+        entity.setMessageData(CLOB_100KiB);
+        entity.setNextAttempt(0L);
+        entity.setPk(VARCHAR_250B);
+        entity.setRowProtection(CLOB_10KiB);
+        entity.setRowVersion(0);
+        entity.setTimeCreated(0L);
+        entity.setTryCounter(0);
+        storeAndRemoveEntity(entity);
+        LOG.trace("<testMailQueueData");
+    }
+
     @Test
     public void testCertificateData() {
         LOG.trace(">testCertificateData");
@@ -631,6 +649,21 @@ public class DatabaseSchemaTest {
         LOG.trace("<testServiceData");
     }
 
+    @Test
+    public void testServiceNodeLeaseData() {
+        LOG.trace(">testServiceNodeLeaseData");
+        logMemStats();
+        ServiceNodeLeaseData entity = new ServiceNodeLeaseData();
+        entity.setExpireTime(0L);
+        entity.setId(VARCHAR_250B);
+        entity.setNodeName(VARCHAR_250B);
+        entity.setRowProtection(CLOB_10KiB);
+        entity.setRowVersion(0);
+        entity.setServiceId(BOGUS_INTEGER);
+        storeAndRemoveEntity(entity);
+        LOG.trace("<testServiceNodeLeaseData");
+    }
+
     /**
      * Outputs which method it is run from.
      * Validates that all getters on the entity that is annotated with @javax.persistence.Column is set. 
@@ -16,6 +16,7 @@ package org.ejbca.core.ejb.ca.publisher;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 
@@ -27,6 +28,7 @@ import javax.persistence.PreUpdate;
 import javax.persistence.Query;
 import javax.persistence.Table;
 import javax.persistence.Transient;
+import javax.persistence.TypedQuery;
 
 import org.apache.log4j.Logger;
 import org.cesecore.dbprotection.ProtectedData;
@@ -64,6 +66,9 @@ public class PublisherQueueData extends ProtectedData implements Serializable {
     private static final long serialVersionUID = 1L;
     private static final Logger log = Logger.getLogger(PublisherQueueData.class);
 
+    /** Upper bound of primary keys in an "IN" clause of a single statement (Oracle rejects lists of more than 1000 expressions) */
+    private static final int MAX_PKS_PER_STATEMENT = 500;
+
     private String pk;
     private long timeCreated;
     private long lastUpdate;
@@ -294,6 +299,53 @@ public class PublisherQueueData extends ProtectedData implements Serializable {
     	return query.getResultList();
     }
 
+    /**
+     * Keyset paginated variant of {@link #findDataByPublisherIdAndStatus(EntityManager, int, int, int)} that returns the oldest entries first.
+     * Since entries that are left in the queue are not returned twice, a caller can read the next chunk before the previous chunk has been
+     * processed.
+     * 
+     * @param afterTimeCreated only return entries created at or after this time, or 0 to start from the oldest entry
+     * @param afterPk primary key of the last entry of the previous chunk with timeCreated equal to afterTimeCreated, or null
+     * @param maxRows If set > 0, limits the number of rows fetched.
+     * 
+     * @return return the query results as a List ordered by timeCreated and pk. */
+    public static List<PublisherQueueData> findDataByPublisherIdAndStatusAfter(EntityManager entityManager, int publisherId, int publishStatus,
+            long afterTimeCreated, String afterPk, int maxRows) {
+        final TypedQuery<PublisherQueueData> query;
+        if (afterPk == null) {
+            query = entityManager.createQuery("SELECT a FROM PublisherQueueData a WHERE a.publisherId=:publisherId AND a.publishStatus=:publishStatus"
+                    + " AND a.timeCreated>=:timeCreated ORDER BY a.timeCreated, a.pk", PublisherQueueData.class);
+        } else {
+            query = entityManager.createQuery("SELECT a FROM PublisherQueueData a WHERE a.publisherId=:publisherId AND a.publishStatus=:publishStatus"
+                    + " AND (a.timeCreated>:timeCreated OR (a.timeCreated=:timeCreated AND a.pk>:pk)) ORDER BY a.timeCreated, a.pk",
+                    PublisherQueueData.class);
+            query.setParameter("pk", afterPk);
+        }
+        query.setParameter("publisherId", publisherId);
+        query.setParameter("publishStatus", publishStatus);
+        query.setParameter("timeCreated", afterTimeCreated);
+        if (maxRows > 0) {
+            query.setMaxResults(maxRows);
+        }
+        return query.getResultList();
+    }
+
+    /**
+     * Removes many entries using one bulk delete statement per {@link #MAX_PKS_PER_STATEMENT} entries.
+     * 
+     * @return the number of removed rows
+     */
+    public static int deleteByPks(EntityManager entityManager, Collection<String> pks) {
+        final List<String> remaining = new ArrayList<String>(pks);
+        int ret = 0;
+        for (int i = 0; i < remaining.size(); i += MAX_PKS_PER_STATEMENT) {
+            final Query query = entityManager.createQuery("DELETE FROM PublisherQueueData a WHERE a.pk IN (:pks)");
+            query.setParameter("pks", remaining.subList(i, Math.min(i + MAX_PKS_PER_STATEMENT, remaining.size())));
+            ret += query.executeUpdate();
+        }
+        return ret;
+    }
+
 	/** @return return the count. */
 	public static long findCountOfPendingEntriesForPublisher(EntityManager entityManager, int publisherId) {
 		Query query = entityManager.createQuery("SELECT COUNT(a) FROM PublisherQueueData a WHERE a.publisherId=:publisherId AND publishStatus=" + PublisherConst.STATUS_PENDING);
@@ -245,4 +245,26 @@ public class BlacklistData extends ProtectedData implements Serializable {
         query.setParameter("ids", ids);
         return query.getResultList();
     }
+
+    /** @return the number of entries of the given type */
+    public static long findCountByType(EntityManager entityManager, final String type) {
+        final Query query = entityManager.createQuery("SELECT COUNT(a) FROM BlacklistData a WHERE a.type=:type");
+        query.setParameter("type", type);
+        return ((Long) query.getSingleResult()).longValue();
+    }
+
+    /**
+     * Reads id and value, without the data, of entries with an id larger than afterId, in order of id. Use the id of the last row as afterId
+     * to read the next page.
+     *
+     * @return a list of {id, value} pairs
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Object[]> findIdAndValueByTypeAfterId(EntityManager entityManager, final String type, final int afterId, final int maxResults) {
+        final Query query = entityManager.createQuery("SELECT a.id, a.value FROM BlacklistData a WHERE a.type=:type AND a.id>:id ORDER BY a.id");
+        query.setParameter("type", type);
+        query.setParameter("id", afterId);
+        query.setMaxResults(maxResults);
+        return query.getResultList();
+    }
 }
@@ -0,0 +1,188 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.mail;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.UUID;
+
+import javax.persistence.Entity;
+import javax.persistence.EntityManager;
+import javax.persistence.PostLoad;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.Query;
+import javax.persistence.Table;
+import javax.persistence.Transient;
+import javax.persistence.TypedQuery;
+
+import org.cesecore.dbprotection.ProtectedData;
+import org.cesecore.dbprotection.ProtectionStringBuilder;
+import org.cesecore.util.Base64;
+
+/**
+ * Representation of an email message in the outbound mail queue, waiting to be sent by a background timer.
+ *
+ * @version $Id$
+ */
+@Entity
+@Table(name="MailQueueData")
+public class MailQueueData extends ProtectedData implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String pk;
+    private long timeCreated;
+    private long nextAttempt;
+    private int tryCounter;
+    private String messageData;
+    private int rowVersion = 0;
+    private String rowProtection;
+
+    /**
+     * @param mimeMessage the complete MIME encoded message, as written by MimeMessage.writeTo
+     */
+    public MailQueueData(final byte[] mimeMessage) {
+        final long now = System.currentTimeMillis();
+        setPk(UUID.randomUUID().toString());
+        setTimeCreated(now);
+        setNextAttempt(now);
+        setTryCounter(0);
+        setMessageData(new String(Base64.encode(mimeMessage, false)));
+    }
+
+    public MailQueueData() { }
+
+    //@Id @Column
+    public String getPk() { return pk; }
+    public void setPk(String pk) { this.pk = pk; }
+
+    /**
+     * Date formated as milliseconds since 1970 (== Date.getTime())
+     *
+     * @return the time when the message was queued
+     */
+    //@Column
+    public long getTimeCreated() { return timeCreated; }
+    public void setTimeCreated(long timeCreated) { this.timeCreated = timeCreated; }
+
+    /**
+     * Date formated as milliseconds since 1970 (== Date.getTime())
+     *
+     * @return the earliest time when the message may be sent, or the time when the claim of a node that is sending it expires
+     */
+    //@Column
+    public long getNextAttempt() { return nextAttempt; }
+    public void setNextAttempt(long nextAttempt) { this.nextAttempt = nextAttempt; }
+
+    /** @return the number of failed attempts to send the message */
+    //@Column
+    public int getTryCounter() { return tryCounter; }
+    public void setTryCounter(int tryCounter) { this.tryCounter = tryCounter; }
+
+    /** @return the Base64 encoded MIME message */
+    //@Column @Lob
+    public String getMessageData() { return messageData; }
+    public void setMessageData(String messageData) { this.messageData = messageData; }
+
+    //@Version @Column
+    public int getRowVersion() { return rowVersion; }
+    public void setRowVersion(int rowVersion) { this.rowVersion = rowVersion; }
+
+    //@Column @Lob
+    @Override
+    public String getRowProtection() { return rowProtection; }
+    @Override
+    public void setRowProtection(String rowProtection) { this.rowProtection = rowProtection; }
+
+    /** @return the MIME message, as given to the constructor */
+    @Transient
+    public byte[] getMimeMessage() {
+        return Base64.decode(getMessageData().getBytes());
+    }
+
+    //
+    // Start Database integrity protection methods
+    //
+
+    @Transient
+    @Override
+    protected String getProtectString(final int version) {
+        final ProtectionStringBuilder build = new ProtectionStringBuilder();
+        // rowVersion is automatically updated by JPA, so it's not important, it is only used for optimistic locking
+        build.append(getPk()).append(getTimeCreated()).append(getTryCounter()).append(getMessageData());
+        // nextAttempt is deliberately excluded, since it is updated by claim below when a node starts sending the message.
+        // Modifying it can only make the message be sent earlier or later.
+        return build.toString();
+    }
+
+    @Transient
+    @Override
+    protected int getProtectVersion() {
+        return 1;
+    }
+
+    @PrePersist
+    @PreUpdate
+    @Override
+    protected void protectData() {
+        super.protectData();
+    }
+
+    @PostLoad
+    @Override
+    protected void verifyData() {
+        super.verifyData();
+    }
+
+    @Override
+    @Transient
+    protected String getRowId() {
+        return getPk();
+    }
+
+    //
+    // End Database integrity protection methods
+    //
+
+    //
+    // Search functions.
+    //
+
+    /** @return the entity with the given primary key, or null if it does not exist */
+    public static MailQueueData findByPk(final EntityManager entityManager, final String pk) {
+        return entityManager.find(MailQueueData.class, pk);
+    }
+
+    /** @return messages that may be sent at the given time, the ones that have waited the longest first */
+    public static List<MailQueueData> findDue(final EntityManager entityManager, final long now, final int maxResults) {
+        final TypedQuery<MailQueueData> query = entityManager.createQuery(
+                "SELECT a FROM MailQueueData a WHERE a.nextAttempt<=:now ORDER BY a.nextAttempt", MailQueueData.class);
+        query.setParameter("now", now);
+        query.setMaxResults(maxResults);
+        return query.getResultList();
+    }
+
+    /**
+     * Claims a message for sending, so that other nodes do not send it until the claim expires.
+     *
+     * @return true if the message was claimed, or false if another node claimed or removed it first
+     */
+    public static boolean claim(final EntityManager entityManager, final String pk, final long nextAttempt, final long claimUntil) {
+        final Query query = entityManager.createQuery("UPDATE MailQueueData a SET a.nextAttempt=:claimUntil WHERE a.pk=:pk AND a.nextAttempt=:nextAttempt");
+        query.setParameter("claimUntil", claimUntil);
+        query.setParameter("pk", pk);
+        query.setParameter("nextAttempt", nextAttempt);
+        return query.executeUpdate() == 1;
+    }
+}
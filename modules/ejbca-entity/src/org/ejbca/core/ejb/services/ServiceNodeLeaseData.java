@@ -0,0 +1,173 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.services;
+
+import java.io.Serializable;
+import java.util.List;
+
+import javax.persistence.Entity;
+import javax.persistence.EntityManager;
+import javax.persistence.PostLoad;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+import javax.persistence.Query;
+import javax.persistence.Table;
+import javax.persistence.Transient;
+import javax.persistence.TypedQuery;
+
+import org.cesecore.dbprotection.ProtectedData;
+import org.cesecore.dbprotection.ProtectionStringBuilder;
+
+/**
+ * Lease that a cluster node holds on a share of the work of a service that runs sharded. A node renews its lease each time the
+ * service timer fires, and the nodes with leases that have not expired divide the work between them.
+ * 
+ * @version $Id$
+ */
+@Entity
+@Table(name="ServiceNodeLeaseData")
+public class ServiceNodeLeaseData extends ProtectedData implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String id;
+    private int serviceId;
+    private String nodeName;
+    private long expireTime;
+    private int rowVersion = 0;
+    private String rowProtection;
+
+    public ServiceNodeLeaseData(final int serviceId, final String nodeName, final long expireTime) {
+        setId(getId(serviceId, nodeName));
+        setServiceId(serviceId);
+        setNodeName(nodeName);
+        setExpireTime(expireTime);
+    }
+
+    public ServiceNodeLeaseData() { }
+
+    /** Primary key, the service id and the node name. */
+    //@Id @Column
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    /** Id of the service in ServiceData. */
+    //@Column
+    public int getServiceId() { return serviceId; }
+    public void setServiceId(int serviceId) { this.serviceId = serviceId; }
+
+    /** Host name of the node that holds the lease. */
+    //@Column
+    public String getNodeName() { return nodeName; }
+    public void setNodeName(String nodeName) { this.nodeName = nodeName; }
+
+    /**
+     * Date formated as milliseconds since 1970 (== Date.getTime())
+     *
+     * @return expireTime the time when the lease expires unless it is renewed
+     */
+    //@Column
+    public long getExpireTime() { return expireTime; }
+    public void setExpireTime(long expireTime) { this.expireTime = expireTime; }
+
+    //@Version @Column
+    public int getRowVersion() { return rowVersion; }
+    public void setRowVersion(int rowVersion) { this.rowVersion = rowVersion; }
+
+    //@Column @Lob
+    @Override
+    public String getRowProtection() { return rowProtection; }
+    @Override
+    public void setRowProtection(String rowProtection) { this.rowProtection = rowProtection; }
+
+    /** @return the primary key of the lease of a node for a service */
+    public static String getId(final int serviceId, final String nodeName) {
+        return serviceId + ";" + nodeName;
+    }
+
+    //
+    // Start Database integrity protection methods
+    //
+
+    @Transient
+    @Override
+    protected String getProtectString(final int version) {
+        final ProtectionStringBuilder build = new ProtectionStringBuilder();
+        // rowVersion is automatically updated by JPA, so it's not important, it is only used for optimistic locking
+        build.append(getId()).append(getServiceId()).append(getNodeName());
+        // expireTime is deliberately excluded, like the timestamps of ServiceData, so that leases can be renewed efficiently in
+        // renewLease below. Modifying it can only change how the work of a service is divided between the nodes.
+        return build.toString();
+    }
+
+    @Transient
+    @Override
+    protected int getProtectVersion() {
+        return 1;
+    }
+
+    @PrePersist
+    @PreUpdate
+    @Override
+    protected void protectData() {
+        super.protectData();
+    }
+
+    @PostLoad
+    @Override
+    protected void verifyData() {
+        super.verifyData();
+    }
+
+    @Override
+    @Transient
+    protected String getRowId() {
+        return getId();
+    }
+
+    //
+    // End Database integrity protection methods
+    //
+
+    /** @return true if the lease existed and its expire time was updated */
+    public static boolean renewLease(final EntityManager entityManager, final int serviceId, final String nodeName, final long expireTime) {
+        final Query query = entityManager.createQuery("UPDATE ServiceNodeLeaseData a SET a.expireTime=:expireTime WHERE a.id=:id");
+        query.setParameter("expireTime", expireTime);
+        query.setParameter("id", getId(serviceId, nodeName));
+        return query.executeUpdate() == 1;
+    }
+
+    /** @return the names of the nodes with leases for the service that expire after the given time, in alphabetical order */
+    public static List<String> findNodeNamesWithLease(final EntityManager entityManager, final int serviceId, final long expireTimeAfter) {
+        final TypedQuery<String> query = entityManager.createQuery("SELECT a.nodeName FROM ServiceNodeLeaseData a"
+                + " WHERE a.serviceId=:serviceId AND a.expireTime>:expireTime ORDER BY a.nodeName", String.class);
+        query.setParameter("serviceId", serviceId);
+        query.setParameter("expireTime", expireTimeAfter);
+        return query.getResultList();
+    }
+
+    /** Removes leases for the service that expired before the given time. @return the number of removed leases */
+    public static int removeExpiredLeases(final EntityManager entityManager, final int serviceId, final long expireTimeBefore) {
+        final Query query = entityManager.createQuery("DELETE FROM ServiceNodeLeaseData a WHERE a.serviceId=:serviceId AND a.expireTime<:expireTime");
+        query.setParameter("serviceId", serviceId);
+        query.setParameter("expireTime", expireTimeBefore);
+        return query.executeUpdate();
+    }
+
+    /** Removes all leases for the service. @return the number of removed leases */
+    public static int removeLeases(final EntityManager entityManager, final int serviceId) {
+        final Query query = entityManager.createQuery("DELETE FROM ServiceNodeLeaseData a WHERE a.serviceId=:serviceId");
+        query.setParameter("serviceId", serviceId);
+        return query.executeUpdate();
+    }
+}
@@ -0,0 +1,62 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.core.protocol.ws.client.gen;
+
+/**
+ * Result of one item in a batch call. Results are returned in the same order as the items of the batch.
+ * If the item failed, the error code is set to the internal error code of the EjbcaException the corresponding single item call
+ * would have thrown, for example CERT_WRONG_STATUS or NOT_AUTHORIZED. An item that is waiting for approval has no error code,
+ * but the id of its approval request.
+ * 
+ * @version $Id$
+ */
+public class BatchResultWS {
+
+	private String errorCode;
+	private String errorMessage;
+	private int approvalRequestId;
+
+	/**
+	 * WS Constructor
+	 */
+	public BatchResultWS() {
+		super();
+	}
+
+	/** @return the internal error code, or null if the item was processed successfully */
+	public String getErrorCode() {
+		return errorCode;
+	}
+
+	public void setErrorCode(String errorCode) {
+		this.errorCode = errorCode;
+	}
+
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+
+	public void setErrorMessage(String errorMessage) {
+		this.errorMessage = errorMessage;
+	}
+
+	/** @return the id of the approval request the item is waiting for, or 0 if the item doesn't require approval */
+	public int getApprovalRequestId() {
+		return approvalRequestId;
+	}
+
+	public void setApprovalRequestId(int approvalRequestId) {
+		this.approvalRequestId = approvalRequestId;
+	}
+}
@@ -0,0 +1,59 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.core.protocol.ws.client.gen;
+
+/**
+ * Identifies a certificate by issuer DN and serial number, used in batch calls.
+ * 
+ * @see org.ejbca.core.protocol.ws.common.IEjbcaWS#checkRevokationStatuses(java.util.List)
+ * @version $Id$
+ */
+public class CertificateIdWS {
+
+	private String issuerDN;
+	private String certificateSN;
+
+	/**
+	 * WS Constructor
+	 */
+	public CertificateIdWS() {
+		super();
+	}
+
+	/**
+	 * @param issuerDN DN of the CA that issued the certificate
+	 * @param certificateSN serial number of the certificate, hex encoded
+	 */
+	public CertificateIdWS(String issuerDN, String certificateSN) {
+		super();
+		this.issuerDN = issuerDN;
+		this.certificateSN = certificateSN;
+	}
+
+	public String getIssuerDN() {
+		return issuerDN;
+	}
+
+	public void setIssuerDN(String issuerDN) {
+		this.issuerDN = issuerDN;
+	}
+
+	public String getCertificateSN() {
+		return certificateSN;
+	}
+
+	public void setCertificateSN(String certificateSN) {
+		this.certificateSN = certificateSN;
+	}
+}
@@ -0,0 +1,41 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.core.protocol.ws.client.gen;
+
+/**
+ * Result of one certificate request in a batch of certificate requests.
+ * 
+ * @see org.ejbca.core.protocol.ws.common.IEjbcaWS#certificateRequests(java.util.List)
+ * @version $Id$
+ */
+public class CertificateRequestResultWS extends BatchResultWS {
+
+	private CertificateResponse certificateResponse;
+
+	/**
+	 * WS Constructor
+	 */
+	public CertificateRequestResultWS() {
+		super();
+	}
+
+	/** @return the issued certificate, or null if the request failed */
+	public CertificateResponse getCertificateResponse() {
+		return certificateResponse;
+	}
+
+	public void setCertificateResponse(CertificateResponse certificateResponse) {
+		this.certificateResponse = certificateResponse;
+	}
+}
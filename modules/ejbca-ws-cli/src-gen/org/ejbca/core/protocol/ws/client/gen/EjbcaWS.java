@@ -787,6 +787,60 @@ public interface EjbcaWS {
         throws AlreadyRevokedException_Exception, ApprovalException_Exception, AuthorizationDeniedException_Exception, CADoesntExistsException_Exception, EjbcaException_Exception, NotFoundException_Exception, WaitingForApprovalException_Exception
     ;
 
+    /**
+     * 
+     * @param arg0
+     * @return
+     *     returns java.util.List<org.ejbca.core.protocol.ws.client.gen.CertificateRequestResultWS>
+     * @throws EjbcaException_Exception
+     * @throws AuthorizationDeniedException_Exception
+     */
+    @WebMethod
+    @WebResult(targetNamespace = "")
+    @RequestWrapper(localName = "certificateRequests", targetNamespace = "http://ws.protocol.core.ejbca.org/", className = "org.ejbca.core.protocol.ws.client.gen.CertificateRequests")
+    @ResponseWrapper(localName = "certificateRequestsResponse", targetNamespace = "http://ws.protocol.core.ejbca.org/", className = "org.ejbca.core.protocol.ws.client.gen.CertificateRequestsResponse")
+    public List<CertificateRequestResultWS> certificateRequests(
+        @WebParam(name = "arg0", targetNamespace = "")
+        List<CertificateRequestWS> arg0)
+        throws AuthorizationDeniedException_Exception, EjbcaException_Exception
+    ;
+
+    /**
+     * 
+     * @param arg0
+     * @return
+     *     returns java.util.List<org.ejbca.core.protocol.ws.client.gen.BatchResultWS>
+     * @throws EjbcaException_Exception
+     * @throws AuthorizationDeniedException_Exception
+     */
+    @WebMethod
+    @WebResult(targetNamespace = "")
+    @RequestWrapper(localName = "revokeCerts", targetNamespace = "http://ws.protocol.core.ejbca.org/", className = "org.ejbca.core.protocol.ws.client.gen.RevokeCerts")
+    @ResponseWrapper(localName = "revokeCertsResponse", targetNamespace = "http://ws.protocol.core.ejbca.org/", className = "org.ejbca.core.protocol.ws.client.gen.RevokeCertsResponse")
+    public List<BatchResultWS> revokeCerts(
+        @WebParam(name = "arg0", targetNamespace = "")
+        List<RevokeCertRequestWS> arg0)
+        throws AuthorizationDeniedException_Exception, EjbcaException_Exception
+    ;
+
+    /**
+     * 
+     * @param arg0
+     * @return
+     *     returns java.util.List<org.ejbca.core.protocol.ws.client.gen.RevokeStatusResultWS>
+     * @throws EjbcaException_Exception
+     * @throws AuthorizationDeniedException_Exception
+     */
+    @WebMethod
+    @WebResult(targetNamespace = "")
+    @RequestWrapper(localName = "checkRevokationStatuses", targetNamespace = "http://ws.protocol.core.ejbca.org/", className = "org.ejbca.core.protocol.ws.client.gen.CheckRevokationStatuses")
+    @ResponseWrapper(localName = "checkRevokationStatusesResponse", targetNamespace = "http://ws.protocol.core.ejbca.org/", className = "org.ejbca.core.protocol.ws.client.gen.CheckRevokationStatusesResponse")
+    public List<RevokeStatusResultWS> checkRevokationStatuses(
+        @WebParam(name = "arg0", targetNamespace = "")
+        List<CertificateIdWS> arg0)
+        throws AuthorizationDeniedException_Exception, EjbcaException_Exception
+    ;
+
     /**
      * 
      * @param arg1
@@ -89,6 +89,12 @@ public class ObjectFactory {
     private final static QName _MultipleMatchException_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "MultipleMatchException");
     private final static QName _NotFoundException_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "NotFoundException");
     private final static QName _GetAuthorizedEndEntityProfiles_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "getAuthorizedEndEntityProfiles");
+    private final static QName _CertificateRequests_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "certificateRequests");
+    private final static QName _CertificateRequestsResponse_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "certificateRequestsResponse");
+    private final static QName _RevokeCerts_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "revokeCerts");
+    private final static QName _RevokeCertsResponse_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "revokeCertsResponse");
+    private final static QName _CheckRevokationStatuses_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "checkRevokationStatuses");
+    private final static QName _CheckRevokationStatusesResponse_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "checkRevokationStatusesResponse");
     private final static QName _CheckRevokationStatus_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "checkRevokationStatus");
     private final static QName _KeyRecoverNewestResponse_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "keyRecoverNewestResponse");
     private final static QName _IllegalQueryException_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "IllegalQueryException");
@@ -464,6 +470,102 @@ public class ObjectFactory {
         return new KeyRecoverNewestResponse();
     }
 
+    /**
+     * Create an instance of {@link CertificateRequests }
+     * 
+     */
+    public CertificateRequests createCertificateRequests() {
+        return new CertificateRequests();
+    }
+
+    /**
+     * Create an instance of {@link CertificateRequestsResponse }
+     * 
+     */
+    public CertificateRequestsResponse createCertificateRequestsResponse() {
+        return new CertificateRequestsResponse();
+    }
+
+    /**
+     * Create an instance of {@link RevokeCerts }
+     * 
+     */
+    public RevokeCerts createRevokeCerts() {
+        return new RevokeCerts();
+    }
+
+    /**
+     * Create an instance of {@link RevokeCertsResponse }
+     * 
+     */
+    public RevokeCertsResponse createRevokeCertsResponse() {
+        return new RevokeCertsResponse();
+    }
+
+    /**
+     * Create an instance of {@link CheckRevokationStatuses }
+     * 
+     */
+    public CheckRevokationStatuses createCheckRevokationStatuses() {
+        return new CheckRevokationStatuses();
+    }
+
+    /**
+     * Create an instance of {@link CheckRevokationStatusesResponse }
+     * 
+     */
+    public CheckRevokationStatusesResponse createCheckRevokationStatusesResponse() {
+        return new CheckRevokationStatusesResponse();
+    }
+
+    /**
+     * Create an instance of {@link BatchResultWS }
+     * 
+     */
+    public BatchResultWS createBatchResultWS() {
+        return new BatchResultWS();
+    }
+
+    /**
+     * Create an instance of {@link CertificateIdWS }
+     * 
+     */
+    public CertificateIdWS createCertificateIdWS() {
+        return new CertificateIdWS();
+    }
+
+    /**
+     * Create an instance of {@link CertificateRequestResultWS }
+     * 
+     */
+    public CertificateRequestResultWS createCertificateRequestResultWS() {
+        return new CertificateRequestResultWS();
+    }
+
+    /**
+     * Create an instance of {@link CertificateRequestWS }
+     * 
+     */
+    public CertificateRequestWS createCertificateRequestWS() {
+        return new CertificateRequestWS();
+    }
+
+    /**
+     * Create an instance of {@link RevokeCertRequestWS }
+     * 
+     */
+    public RevokeCertRequestWS createRevokeCertRequestWS() {
+        return new RevokeCertRequestWS();
+    }
+
+    /**
+     * Create an instance of {@link RevokeStatusResultWS }
+     * 
+     */
+    public RevokeStatusResultWS createRevokeStatusResultWS() {
+        return new RevokeStatusResultWS();
+    }
+
     /**
      * Create an instance of {@link CheckRevokationStatus }
      * 
@@ -1945,6 +2047,60 @@ public class ObjectFactory {
         return new JAXBElement<GetAuthorizedEndEntityProfiles>(_GetAuthorizedEndEntityProfiles_QNAME, GetAuthorizedEndEntityProfiles.class, null, value);
     }
 
+    /**
+     * Create an instance of {@link JAXBElement }{@code <}{@link CertificateRequests }{@code >}}
+     * 
+     */
+    @XmlElementDecl(namespace = "http://ws.protocol.core.ejbca.org/", name = "certificateRequests")
+    public JAXBElement<CertificateRequests> createCertificateRequests(CertificateRequests value) {
+        return new JAXBElement<CertificateRequests>(_CertificateRequests_QNAME, CertificateRequests.class, null, value);
+    }
+
+    /**
+     * Create an instance of {@link JAXBElement }{@code <}{@link CertificateRequestsResponse }{@code >}}
+     * 
+     */
+    @XmlElementDecl(namespace = "http://ws.protocol.core.ejbca.org/", name = "certificateRequestsResponse")
+    public JAXBElement<CertificateRequestsResponse> createCertificateRequestsResponse(CertificateRequestsResponse value) {
+        return new JAXBElement<CertificateRequestsResponse>(_CertificateRequestsResponse_QNAME, CertificateRequestsResponse.class, null, value);
+    }
+
+    /**
+     * Create an instance of {@link JAXBElement }{@code <}{@link RevokeCerts }{@code >}}
+     * 
+     */
+    @XmlElementDecl(namespace = "http://ws.protocol.core.ejbca.org/", name = "revokeCerts")
+    public JAXBElement<RevokeCerts> createRevokeCerts(RevokeCerts value) {
+        return new JAXBElement<RevokeCerts>(_RevokeCerts_QNAME, RevokeCerts.class, null, value);
+    }
+
+    /**
+     * Create an instance of {@link JAXBElement }{@code <}{@link RevokeCertsResponse }{@code >}}
+     * 
+     */
+    @XmlElementDecl(namespace = "http://ws.protocol.core.ejbca.org/", name = "revokeCertsResponse")
+    public JAXBElement<RevokeCertsResponse> createRevokeCertsResponse(RevokeCertsResponse value) {
+        return new JAXBElement<RevokeCertsResponse>(_RevokeCertsResponse_QNAME, RevokeCertsResponse.class, null, value);
+    }
+
+    /**
+     * Create an instance of {@link JAXBElement }{@code <}{@link CheckRevokationStatuses }{@code >}}
+     * 
+     */
+    @XmlElementDecl(namespace = "http://ws.protocol.core.ejbca.org/", name = "checkRevokationStatuses")
+    public JAXBElement<CheckRevokationStatuses> createCheckRevokationStatuses(CheckRevokationStatuses value) {
+        return new JAXBElement<CheckRevokationStatuses>(_CheckRevokationStatuses_QNAME, CheckRevokationStatuses.class, null, value);
+    }
+
+    /**
+     * Create an instance of {@link JAXBElement }{@code <}{@link CheckRevokationStatusesResponse }{@code >}}
+     * 
+     */
+    @XmlElementDecl(namespace = "http://ws.protocol.core.ejbca.org/", name = "checkRevokationStatusesResponse")
+    public JAXBElement<CheckRevokationStatusesResponse> createCheckRevokationStatusesResponse(CheckRevokationStatusesResponse value) {
+        return new JAXBElement<CheckRevokationStatusesResponse>(_CheckRevokationStatusesResponse_QNAME, CheckRevokationStatusesResponse.class, null, value);
+    }
+
     /**
      * Create an instance of {@link JAXBElement }{@code <}{@link CheckRevokationStatus }{@code >}}
      * 
@@ -0,0 +1,164 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.core.protocol.ws.client;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.cesecore.util.CertTools;
+import org.ejbca.core.protocol.ws.client.gen.AuthorizationDeniedException_Exception;
+import org.ejbca.core.protocol.ws.client.gen.CertificateRequestResultWS;
+import org.ejbca.core.protocol.ws.client.gen.CertificateRequestWS;
+import org.ejbca.core.protocol.ws.client.gen.UserDataVOWS;
+import org.ejbca.core.protocol.ws.common.CertificateHelper;
+import org.ejbca.ui.cli.ErrorAdminCommandException;
+import org.ejbca.ui.cli.IAdminCommand;
+import org.ejbca.ui.cli.IllegalAdminCommandException;
+
+/**
+ * Requests certificates for the end entities listed in a file, using batch calls
+ *
+ * @version $Id$
+ */
+public class CertificateRequestsCommand extends EJBCAWSRABaseCommand implements IAdminCommand {
+
+	private static final int ARG_FILE				= 1;
+	private static final int ARG_CANAME				= 2;
+	private static final int ARG_EEPROF				= 3;
+	private static final int ARG_CERTPROF			= 4;
+	private static final int ARG_REQTYPE			= 5;
+	private static final int ARG_OUTPUTPATH			= 6;
+	private static final int ARG_BATCHSIZE			= 7;
+
+	private static final int DEFAULT_BATCHSIZE		= 100;
+
+	/**
+	 * Creates a new instance of CertificateRequestsCommand
+	 *
+	 * @param args command line arguments
+	 */
+	public CertificateRequestsCommand(String[] args) {
+		super(args);
+	}
+
+	@Override
+	public void execute() throws IllegalAdminCommandException, ErrorAdminCommandException {
+		try {
+			if (this.args.length < 7 || this.args.length > 8) {
+				usage();
+				System.exit(-1); // NOPMD, it's not a JEE app
+			}
+			final int requestType = getRequestType(this.args[ARG_REQTYPE]);
+			final File outputPath = new File(this.args[ARG_OUTPUTPATH]);
+			if (!outputPath.isDirectory() || !outputPath.canWrite()) {
+				getPrintStream().println("Error : Output directory '" + outputPath + "' doesn't exist or isn't writeable.");
+				System.exit(-1); // NOPMD, it's not a JEE app
+			}
+			final List<CertificateRequestWS> requests = readRequests(this.args[ARG_FILE], this.args[ARG_CANAME], this.args[ARG_EEPROF],
+					this.args[ARG_CERTPROF], requestType);
+			final int batchSize = this.args.length > ARG_BATCHSIZE ? Integer.parseInt(this.args[ARG_BATCHSIZE]) : DEFAULT_BATCHSIZE;
+			int issued = 0;
+			try {
+				for (int from = 0; from < requests.size(); from += batchSize) {
+					final List<CertificateRequestWS> batch = requests.subList(from, Math.min(from + batchSize, requests.size()));
+					final List<CertificateRequestResultWS> results = getEjbcaRAWS().certificateRequests(batch);
+					for (int i = 0; i < results.size(); i++) {
+						final CertificateRequestResultWS result = results.get(i);
+						final String username = batch.get(i).getUserData().getUsername();
+						if (result.getErrorCode() == null) {
+							final File file = new File(outputPath, username + ".pem");
+							try (final FileOutputStream fos = new FileOutputStream(file)) {
+								fos.write(CertTools.getPemFromCertificateChain(Collections.singletonList(
+										CertificateHelper.getCertificate(result.getCertificateResponse().getData()))));
+							}
+							issued++;
+						} else {
+							getPrintStream().println("Error requesting certificate for '" + username + "', " + result.getErrorCode() + ": "
+									+ result.getErrorMessage());
+						}
+					}
+				}
+			} catch (AuthorizationDeniedException_Exception e) {
+				getPrintStream().println("Error : " + e.getMessage());
+			}
+			getPrintStream().println(issued + " of " + requests.size() + " certificates generated, written to " + outputPath);
+		} catch (Exception e) {
+			throw new ErrorAdminCommandException(e);
+		}
+	}
+
+	/**
+	 * Reads the requests from a file with one request per line, given as the username, the path of the request file and the subject DN.
+	 * Empty lines and lines starting with # are ignored.
+	 */
+	private List<CertificateRequestWS> readRequests(final String filename, final String caName, final String endEntityProfileName,
+			final String certificateProfileName, final int requestType) throws IOException {
+		final List<CertificateRequestWS> ret = new ArrayList<CertificateRequestWS>();
+		try (final BufferedReader reader = new BufferedReader(new FileReader(filename))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#")) {
+					continue;
+				}
+				final String[] parts = line.split(" ", 3);
+				if (parts.length < 3) {
+					throw new IllegalArgumentException("Expected '<username> <reqpath> <subjectdn>' but got '" + line + "'.");
+				}
+				final UserDataVOWS userData = new UserDataVOWS();
+				userData.setUsername(parts[0]);
+				userData.setSubjectDN(parts[2].trim());
+				userData.setCaName(caName);
+				userData.setEndEntityProfileName(endEntityProfileName);
+				userData.setCertificateProfileName(certificateProfileName);
+				final String requestData = new String(Files.readAllBytes(new File(parts[1]).toPath()), StandardCharsets.US_ASCII);
+				ret.add(new CertificateRequestWS(userData, requestData, requestType, null, CertificateHelper.RESPONSETYPE_CERTIFICATE));
+			}
+		}
+		return ret;
+	}
+
+	private int getRequestType(final String requestType) {
+		if (requestType.equals("PKCS10")) {
+			return CertificateHelper.CERT_REQ_TYPE_PKCS10;
+		}
+		if (requestType.equals("CRMF")) {
+			return CertificateHelper.CERT_REQ_TYPE_CRMF;
+		}
+		if (requestType.equals("SPKAC")) {
+			return CertificateHelper.CERT_REQ_TYPE_SPKAC;
+		}
+		usage();
+		System.exit(-1); // NOPMD, it's not a JEE app
+		return 0;
+	}
+
+	@Override
+	protected void usage() {
+		getPrintStream().println("Command used to generate certificates for a number of end entities.");
+		getPrintStream().println("Usage : certificaterequests <file> <caname> <endentityprofilename> <certificateprofilename> <reqtype (PKCS10|SPKAC|CRMF)> <outputpath> [<batch size>]");
+		getPrintStream().println();
+		getPrintStream().println("The file contains one request per line as '<username> <reqpath> <subjectdn>', where reqpath is a file with the request.");
+		getPrintStream().println("The certificates are written in PEM format to outputpath/username.pem.");
+		getPrintStream().println("The requests are sent in batches of " + DEFAULT_BATCHSIZE + " unless another batch size is given.");
+	}
+}
@@ -0,0 +1,92 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+ 
+package org.ejbca.core.protocol.ws.client;
+
+import java.util.List;
+
+import org.cesecore.certificates.crl.RevokedCertInfo;
+import org.ejbca.core.protocol.ws.client.gen.AuthorizationDeniedException_Exception;
+import org.ejbca.core.protocol.ws.client.gen.CertificateIdWS;
+import org.ejbca.core.protocol.ws.client.gen.RevokeStatus;
+import org.ejbca.core.protocol.ws.client.gen.RevokeStatusResultWS;
+import org.ejbca.ui.cli.ErrorAdminCommandException;
+import org.ejbca.ui.cli.IAdminCommand;
+import org.ejbca.ui.cli.IllegalAdminCommandException;
+
+/**
+ * Checks the revocation status of the certificates listed in a file, using batch calls
+ *
+ * @version $Id$
+ */
+public class CheckRevokeStatusesCommand extends EJBCAWSRABaseCommand implements IAdminCommand {
+
+	private static final int ARG_FILE                     = 1;
+	private static final int ARG_BATCHSIZE                = 2;
+
+	private static final int DEFAULT_BATCHSIZE            = 100;
+
+    /**
+     * Creates a new instance of CheckRevokeStatusesCommand
+     *
+     * @param args command line arguments
+     */
+    public CheckRevokeStatusesCommand(String[] args) {
+        super(args);
+    }
+
+    @Override
+    public void execute() throws IllegalAdminCommandException, ErrorAdminCommandException {
+        try {
+            if (args.length < 2 || args.length > 3) {
+                usage();
+                System.exit(-1); // NOPMD, this is not a JEE app
+            }
+            final List<CertificateIdWS> certificates = readCertificateIds(args[ARG_FILE]);
+            final int batchSize = args.length > ARG_BATCHSIZE ? Integer.parseInt(args[ARG_BATCHSIZE]) : DEFAULT_BATCHSIZE;
+            try {
+                for (int from = 0; from < certificates.size(); from += batchSize) {
+                    final List<CertificateIdWS> batch = certificates.subList(from, Math.min(from + batchSize, certificates.size()));
+                    final List<RevokeStatusResultWS> results = getEjbcaRAWS().checkRevokationStatuses(batch);
+                    for (int i = 0; i < results.size(); i++) {
+                        final RevokeStatusResultWS result = results.get(i);
+                        final String certificate = batch.get(i).getCertificateSN() + " " + batch.get(i).getIssuerDN() + " : ";
+                        final RevokeStatus status = result.getRevokeStatus();
+                        if (result.getErrorCode() != null) {
+                            getPrintStream().println(certificate + "ERROR " + result.getErrorCode() + ": " + result.getErrorMessage());
+                        } else if (status == null) {
+                            getPrintStream().println(certificate + "NOT FOUND");
+                        } else if (status.getReason() == RevokedCertInfo.NOT_REVOKED) {
+                            getPrintStream().println(certificate + "NOT REVOKED");
+                        } else {
+                            getPrintStream().println(certificate + "REVOKED " + getRevokeReason(status.getReason()) + " " + status.getRevocationDate().toString());
+                        }
+                    }
+                }
+            } catch (AuthorizationDeniedException_Exception e) {
+                getPrintStream().println("Error : " + e.getMessage());
+            }
+        } catch (Exception e) {
+            throw new ErrorAdminCommandException(e);
+        }
+    }
+
+	@Override
+	protected void usage() {
+		getPrintStream().println("Command used check the status of a number of certificates");
+		getPrintStream().println("Usage : checkrevocationstatuses <file> [<batch size>]");
+		getPrintStream().println();
+		getPrintStream().println("The file contains one certificate per line as '<certificatesn (HEX)> <issuerdn>'.");
+		getPrintStream().println("The certificates are sent in batches of " + DEFAULT_BATCHSIZE + " unless another batch size is given.");
+	}
+}
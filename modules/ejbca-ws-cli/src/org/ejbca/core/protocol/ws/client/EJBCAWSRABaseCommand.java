@@ -1,15 +1,20 @@
 package org.ejbca.core.protocol.ws.client;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.math.BigInteger;
 import java.net.URL;
 import java.security.AuthProvider;
 import java.security.NoSuchAlgorithmException;
 import java.security.Provider;
 import java.security.Security;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 import javax.net.ssl.KeyManagerFactory;
@@ -22,8 +27,10 @@ import javax.xml.namespace.QName;
 import org.cesecore.keys.token.p11.P11Slot;
 import org.cesecore.keys.token.p11.P11SlotUser;
 import org.cesecore.keys.token.p11.Pkcs11SlotLabelType;
+import org.cesecore.util.CertTools;
 import org.cesecore.util.CryptoProviderTools;
 import org.cesecore.util.provider.TLSProvider;
+import org.ejbca.core.protocol.ws.client.gen.CertificateIdWS;
 import org.ejbca.core.protocol.ws.client.gen.EjbcaWS;
 import org.ejbca.core.protocol.ws.client.gen.EjbcaWSService;
 import org.ejbca.core.protocol.ws.client.gen.RevokeStatus;
@@ -238,6 +245,36 @@ public abstract class EJBCAWSRABaseCommand implements P11SlotUser {
         return null;        
     }
     
+    /**
+     * Reads certificates from a file with one certificate per line, given as the serial number in hex followed by the issuer DN.
+     * Empty lines and lines starting with # are ignored.
+     * 
+     * @param filename the file to read
+     * @return the certificates in the file
+     * @throws IOException if the file can not be read
+     * @throws IllegalArgumentException if a line can not be parsed
+     */
+    protected List<CertificateIdWS> readCertificateIds(final String filename) throws IOException {
+        final List<CertificateIdWS> ret = new ArrayList<CertificateIdWS>();
+        try (final BufferedReader reader = new BufferedReader(new FileReader(filename))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                final int separator = line.indexOf(' ');
+                if (separator == -1) {
+                    throw new IllegalArgumentException("Expected '<certificatesn (HEX)> <issuerdn>' but got '" + line + "'.");
+                }
+                final String certsn = line.substring(0, separator);
+                new BigInteger(certsn, 16); // NumberFormatException is an IllegalArgumentException
+                ret.add(new CertificateIdWS(CertTools.stringToBCDNString(line.substring(separator + 1).trim()), certsn));
+            }
+        }
+        return ret;
+    }
+
     /**
      * Print usage information.
      */
@@ -53,8 +53,12 @@ public class EJBCAWSRACommandFactory {
             return new PKCS12ReqCommand(args);
         } else if (args[0].equals("certreq")) {
             return new CertificateRequestCommand(args);
+        } else if (args[0].equals("certificaterequests")) {
+            return new CertificateRequestsCommand(args);
         } else if (args[0].equals("revokecert")) {
             return new RevokeCertCommand(args);
+        } else if (args[0].equals("revokecerts")) {
+            return new RevokeCertsCommand(args);
         } else if (args[0].equals("getpublisherqueuelength")) {
             return new GetPublisherQueueLength(args);
         } else if (args[0].equals("revoketoken")) {
@@ -63,6 +67,8 @@ public class EJBCAWSRACommandFactory {
             return new RevokeUserCommand(args);
         } else if (args[0].equals("checkrevokationstatus") || args[0].equals("checkrevocationstatus")) {
             return new CheckRevokeStatusCommand(args);
+        } else if (args[0].equals("checkrevokationstatuses") || args[0].equals("checkrevocationstatuses")) {
+            return new CheckRevokeStatusesCommand(args);
         }else if (args[0].equals("generatenewuser")) {
             return new GenerateNewUserCommand(args);        
         }else if (args[0].equals("createcrl")) {
@@ -0,0 +1,106 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+ 
+package org.ejbca.core.protocol.ws.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ejbca.core.protocol.ws.client.gen.AuthorizationDeniedException_Exception;
+import org.ejbca.core.protocol.ws.client.gen.BatchResultWS;
+import org.ejbca.core.protocol.ws.client.gen.CertificateIdWS;
+import org.ejbca.core.protocol.ws.client.gen.RevokeCertRequestWS;
+import org.ejbca.ui.cli.ErrorAdminCommandException;
+import org.ejbca.ui.cli.IAdminCommand;
+import org.ejbca.ui.cli.IllegalAdminCommandException;
+
+/**
+ * Revokes the certificates listed in a file, using batch calls
+ *
+ * @version $Id$
+ */
+public class RevokeCertsCommand extends EJBCAWSRABaseCommand implements IAdminCommand {
+
+	private static final int ARG_FILE				= 1;
+	private static final int ARG_REASON				= 2;
+	private static final int ARG_BATCHSIZE			= 3;
+
+	private static final int DEFAULT_BATCHSIZE		= 100;
+
+	/**
+	 * Creates a new instance of RevokeCertsCommand
+	 *
+	 * @param args command line arguments
+	 */
+	public RevokeCertsCommand(String[] args) {
+		super(args);
+	}
+
+	@Override
+	public void execute() throws IllegalAdminCommandException, ErrorAdminCommandException {
+		try {
+			if (this.args.length < 3 || this.args.length > 4) {
+				usage();
+				System.exit(-1); // NOPMD, it's not a JEE app
+			}
+			final List<CertificateIdWS> certificates = readCertificateIds(this.args[ARG_FILE]);
+			final int reason = getRevokeReason(this.args[ARG_REASON]);
+			final int batchSize = this.args.length > ARG_BATCHSIZE ? Integer.parseInt(this.args[ARG_BATCHSIZE]) : DEFAULT_BATCHSIZE;
+			int revoked = 0;
+			try {
+				for (int from = 0; from < certificates.size(); from += batchSize) {
+					final List<CertificateIdWS> batch = certificates.subList(from, Math.min(from + batchSize, certificates.size()));
+					final List<RevokeCertRequestWS> revocations = new ArrayList<RevokeCertRequestWS>(batch.size());
+					for (final CertificateIdWS certificate : batch) {
+						revocations.add(new RevokeCertRequestWS(certificate.getIssuerDN(), certificate.getCertificateSN(), reason));
+					}
+					final List<BatchResultWS> results = getEjbcaRAWS().revokeCerts(revocations);
+					for (int i = 0; i < results.size(); i++) {
+						final BatchResultWS result = results.get(i);
+						if (result.getErrorCode() == null && result.getApprovalRequestId() != 0) {
+							getPrintStream().println("Revocation of " + batch.get(i).getCertificateSN() + " issued by '" + batch.get(i).getIssuerDN()
+									+ "' is waiting for approval, approval request id " + result.getApprovalRequestId());
+						} else if (result.getErrorCode() == null) {
+							revoked++;
+						} else {
+							getPrintStream().println("Error revoking " + batch.get(i).getCertificateSN() + " issued by '" + batch.get(i).getIssuerDN() + "', "
+									+ result.getErrorCode() + ": " + result.getErrorMessage());
+						}
+					}
+				}
+			} catch (AuthorizationDeniedException_Exception e) {
+				getPrintStream().println("Error : " + e.getMessage());
+			}
+			getPrintStream().println(revoked + " of " + certificates.size() + " certificates revoked (or unrevoked) successfully.");
+		} catch (Exception e) {
+			throw new ErrorAdminCommandException(e);
+		}
+	}
+
+	@Override
+	protected void usage() {
+		getPrintStream().println("Command used to revoke or unrevoke a number of certificates.");
+		getPrintStream().println("Unrevocation is done using the reason REMOVEFROMCRL, and can only be done if the certificate is revoked with reason CERTIFICATEHOLD.");
+		getPrintStream().println("Usage : revokecerts <file> <reason> [<batch size>]");
+		getPrintStream().println();
+		getPrintStream().println("The file contains one certificate per line as '<certificatesn (HEX)> <issuerdn>'.");
+		getPrintStream().println("The certificates are sent in batches of " + DEFAULT_BATCHSIZE + " unless another batch size is given.");
+		getPrintStream().println();
+		getPrintStream().println("Reason should be one of : ");
+		for(int i=1; i< REASON_TEXTS.length-1;i++){
+			getPrintStream().print(REASON_TEXTS[i] + ", ");
+		}
+		getPrintStream().print(REASON_TEXTS[REASON_TEXTS.length-1]);
+		getPrintStream().println();
+	}
+}
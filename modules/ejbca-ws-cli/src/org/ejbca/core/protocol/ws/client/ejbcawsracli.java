@@ -38,8 +38,8 @@ public class ejbcawsracli  {
                 cmd.execute();
             } else {
                 System.out.println(
-                    "Usage: edituser | finduser | findcerts | pkcs10req | pkcs12req | certreq | revokecert | " +
-                    "getpublisherqueuelength | revoketoken | revokeuser | checkrevocationstatus | generatenewuser | " +
+                    "Usage: edituser | finduser | findcerts | pkcs10req | pkcs12req | certreq | certificaterequests | revokecert | revokecerts | " +
+                    "getpublisherqueuelength | revoketoken | revokeuser | checkrevocationstatus | checkrevocationstatuses | generatenewuser | " +
                     "createcrl | cacertrequest | cacertresponse | customlog | getprofile | createcryptotoken | " + 
                     "generatectkeys | createca | importcacert | updatecacert | addadmintorole | removeadminfromrole | getexpiredcerts | " +
                     "getexpiredcertsbyissuer | getexpiredcertsbytype | stress | keyrecover");
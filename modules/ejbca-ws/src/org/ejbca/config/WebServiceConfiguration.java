@@ -41,6 +41,38 @@ public class WebServiceConfiguration {
         return id;
     }
 
+	/**
+	 * The maximum number of items accepted in one call to certificateRequests, revokeCerts or checkRevokationStatuses.
+	 * @throws IllegalArgumentException if the value in jaxws.batch.maxsize is set, but not a positive integer
+	 */
+	public static int getBatchMaxSize() {
+		return getPositiveInt("jaxws.batch.maxsize", 1000);
+	}
+
+	/**
+	 * The number of revocations in a batch call to revokeCerts that are performed in the same database transaction.
+	 * @throws IllegalArgumentException if the value in jaxws.batch.transactionsize is set, but not a positive integer
+	 */
+	public static int getBatchTransactionSize() {
+		return getPositiveInt("jaxws.batch.transactionsize", 100);
+	}
+
+	private static int getPositiveInt(final String key, final int defaultValue) {
+		final String value = EjbcaConfigurationHolder.getString(key);
+		if (StringUtils.isEmpty(value)) {
+			return defaultValue;
+		}
+		try {
+			final int ret = Integer.parseInt(value.trim());
+			if (ret > 0) {
+				return ret;
+			}
+		} catch (NumberFormatException e) {
+			// Handled below
+		}
+		throw new IllegalArgumentException("Invalid value in " + key + ", must be a positive integer.");
+	}
+
 	/**
 	 * Authorization control on the fetchUserData call, making it possible for all with a valid
      * certificate to retrieve userData
@@ -36,6 +36,7 @@ import java.security.spec.InvalidKeySpecException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -114,6 +115,7 @@ import org.cesecore.keybind.CertificateImportException;
 import org.cesecore.keys.token.CryptoTokenAuthenticationFailedException;
 import org.cesecore.keys.token.CryptoTokenOfflineException;
 import org.cesecore.keys.token.p11.exception.NoSuchSlotException;
+import org.cesecore.keys.util.KeyPairPool;
 import org.cesecore.keys.util.KeyTools;
 import org.cesecore.roles.RoleNotFoundException;
 import org.cesecore.util.Base64;
@@ -187,13 +189,19 @@ import org.ejbca.core.protocol.ws.common.CertificateHelper;
 import org.ejbca.core.protocol.ws.common.IEjbcaWS;
 import org.ejbca.core.protocol.ws.logger.TransactionLogger;
 import org.ejbca.core.protocol.ws.logger.TransactionTags;
+import org.ejbca.core.protocol.ws.objects.BatchResultWS;
 import org.ejbca.core.protocol.ws.objects.Certificate;
+import org.ejbca.core.protocol.ws.objects.CertificateIdWS;
+import org.ejbca.core.protocol.ws.objects.CertificateRequestResultWS;
+import org.ejbca.core.protocol.ws.objects.CertificateRequestWS;
 import org.ejbca.core.protocol.ws.objects.CertificateResponse;
 import org.ejbca.core.protocol.ws.objects.HardTokenDataWS;
 import org.ejbca.core.protocol.ws.objects.KeyStore;
 import org.ejbca.core.protocol.ws.objects.NameAndId;
 import org.ejbca.core.protocol.ws.objects.PinDataWS;
+import org.ejbca.core.protocol.ws.objects.RevokeCertRequestWS;
 import org.ejbca.core.protocol.ws.objects.RevokeStatus;
+import org.ejbca.core.protocol.ws.objects.RevokeStatusResultWS;
 import org.ejbca.core.protocol.ws.objects.TokenCertificateRequestWS;
 import org.ejbca.core.protocol.ws.objects.TokenCertificateResponseWS;
 import org.ejbca.core.protocol.ws.objects.UserDataSourceVOWS;
@@ -1433,6 +1441,70 @@ public class EjbcaWS implements IEjbcaWS {
 		}
 	}
 
+	@Override
+	@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+	public List<BatchResultWS> revokeCerts(final List<RevokeCertRequestWS> revocations) throws AuthorizationDeniedException, EjbcaException {
+		final IPatternLogger logger = TransactionLogger.getPatternLogger();
+		try {
+			verifyBatchSize(revocations, logger);
+			final AuthenticationToken admin = getAdmin();
+			logAdminName(admin,logger);
+			if (!authorizationSession.isAuthorizedNoLogging(admin, AccessRulesConstants.REGULAR_REVOKEENDENTITY)) {
+				final String msg = intres.getLocalizedMessage("authorization.notuathorizedtoresource", AccessRulesConstants.REGULAR_REVOKEENDENTITY, null);
+				throw new AuthorizationDeniedException(msg);
+			}
+			final BatchResultWS[] results = new BatchResultWS[revocations.size()];
+			final Map<Integer, Exception> verifiedCas = new HashMap<Integer, Exception>();
+			final List<Integer> pending = new ArrayList<Integer>(revocations.size());
+			for (int i = 0; i < revocations.size(); i++) {
+				results[i] = new BatchResultWS();
+				try {
+					final RevokeCertRequestWS revocation = revocations.get(i);
+					verifyBatchCa(admin, getBatchCaId(revocation.getIssuerDN(), revocation.getCertificateSN()), false, verifiedCas);
+					pending.add(i);
+				} catch (Exception e) {
+					setBatchError(results[i], e);
+				}
+			}
+			final int transactionSize = WebServiceConfiguration.getBatchTransactionSize();
+			for (int from = 0; from < pending.size(); from += transactionSize) {
+				final List<Integer> chunk = pending.subList(from, Math.min(from + transactionSize, pending.size()));
+				final List<RevokeCertRequestWS> chunkRevocations = new ArrayList<RevokeCertRequestWS>(chunk.size());
+				for (final int index : chunk) {
+					chunkRevocations.add(revocations.get(index));
+				}
+				try {
+					final int[] approvalRequestIds = ejbcaWSHelperSession.revokeCerts(admin, chunkRevocations);
+					for (int i = 0; i < chunk.size(); i++) {
+						results[chunk.get(i)].setApprovalRequestId(approvalRequestIds[i]);
+					}
+				} catch (Exception e) {
+					if (chunk.size() == 1) {
+						setBatchError(results[chunk.get(0)], e);
+						continue;
+					}
+					// Nothing in the transaction was revoked, so redo it one revocation at a time to get the result of each revocation
+					if (log.isDebugEnabled()) {
+						log.debug("Revocation of " + chunk.size() + " certificates in one transaction failed, revoking them one by one: " + e.getMessage());
+					}
+					for (final int index : chunk) {
+						try {
+							results[index].setApprovalRequestId(ejbcaWSHelperSession.revokeCerts(admin, Collections.singletonList(revocations.get(index)))[0]);
+						} catch (Exception e2) {
+							setBatchError(results[index], e2);
+						}
+					}
+				}
+			}
+			return Arrays.asList(results);
+		} catch (RuntimeException e) {	// EJBException, ClassCastException, ...
+			throw getInternalException(e, logger);
+		} finally {
+			logger.writeln();
+			logger.flush();
+		}
+	}
+
 
     @Override
 	public void revokeUser(String username, int reason, boolean deleteUser)
@@ -1668,6 +1740,39 @@ public class EjbcaWS implements IEjbcaWS {
         }
 	}
 
+    @Override
+    public List<RevokeStatusResultWS> checkRevokationStatuses(final List<CertificateIdWS> certificates) throws AuthorizationDeniedException, EjbcaException {
+        final IPatternLogger logger = TransactionLogger.getPatternLogger();
+        try {
+            verifyBatchSize(certificates, logger);
+            final AuthenticationToken admin = getAdmin();
+            logAdminName(admin,logger);
+            final Map<Integer, Exception> verifiedCas = new HashMap<Integer, Exception>();
+            final List<RevokeStatusResultWS> results = new ArrayList<RevokeStatusResultWS>(certificates.size());
+            for (final CertificateIdWS certificate : certificates) {
+                final RevokeStatusResultWS result = new RevokeStatusResultWS();
+                try {
+                    final String issuerDN = certificate.getIssuerDN();
+                    verifyBatchCa(admin, getBatchCaId(issuerDN, certificate.getCertificateSN()), true, verifiedCas);
+                    final CertificateStatus certinfo = certificateStoreSession.getStatus(issuerDN, new BigInteger(certificate.getCertificateSN(), 16));
+                    // If certificate is not available, leave the status empty
+                    if (certinfo != null && !certinfo.equals(CertificateStatus.NOT_AVAILABLE)) {
+                        result.setRevokeStatus(new RevokeStatus(certinfo, issuerDN, certificate.getCertificateSN()));
+                    }
+                } catch (Exception e) {
+                    setBatchError(result, e);
+                }
+                results.add(result);
+            }
+            return results;
+        } catch (RuntimeException e) {	// EJBException, ClassCastException, ...
+            throw getInternalException(e, logger);
+        } finally {
+            logger.writeln();
+            logger.flush();
+        }
+    }
+
     @Override
 	@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
 	public boolean isAuthorized(String resource) throws EjbcaException{
@@ -2007,7 +2112,7 @@ public class EjbcaWS implements IEjbcaWS {
 							throw getEjbcaException("Unsupported Key Store Type : " + next.getTokenType() + " only " + HardTokenConstants.TOKENTYPE_PKCS12 + " is supported",
                                                         logger, ErrorCode.NOT_SUPPORTED_KEY_STORE, null);
 						}
-						KeyPair keys = KeyTools.genKeys(next.getKeyspec(), next.getKeyalg());
+						KeyPair keys = KeyPairPool.INSTANCE.genKeys(next.getKeyspec(), next.getKeyalg());
 						userData.setCertificateProfileId(certificateProfileId);
 						userData.setCAId(cAInfo.getCAId());
 						userData.setPassword(password);
@@ -2779,6 +2884,44 @@ public class EjbcaWS implements IEjbcaWS {
         }
 	}
 
+    @SuppressWarnings("deprecation")
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public List<CertificateRequestResultWS> certificateRequests(final List<CertificateRequestWS> requests) throws AuthorizationDeniedException, EjbcaException {
+        final IPatternLogger logger = TransactionLogger.getPatternLogger();
+        try {
+            verifyBatchSize(requests, logger);
+            final AuthenticationToken admin = getAdmin(false);
+            logAdminName(admin,logger);
+            final List<CertificateRequestResultWS> results = new ArrayList<CertificateRequestResultWS>(requests.size());
+            // Each request is issued in its own transaction by the RA, since a certificate that has been issued can not be rolled back
+            for (final CertificateRequestWS request : requests) {
+                final CertificateRequestResultWS result = new CertificateRequestResultWS();
+                try {
+                    final UserDataVOWS userdata = request.getUserData();
+                    if (userdata == null) {
+                        throw new EjbcaException(ErrorCode.FIELD_VALUE_NOT_VALID, "No user data in certificate request.");
+                    }
+                    if (log.isDebugEnabled()) {
+                        log.debug("CertReq for user '" + userdata.getUsername() + "'.");
+                    }
+                    setUserDataVOWS(userdata);
+                    result.setCertificateResponse(new CertificateResponse(request.getResponseType(), raMasterApiProxyBean.createCertificateWS(admin, userdata,
+                            request.getRequestData(), request.getRequestType(), request.getHardTokenSN(), request.getResponseType())));
+                } catch (Exception e) {
+                    setBatchError(result, e);
+                }
+                results.add(result);
+            }
+            return results;
+        } catch (RuntimeException e) {	// EJBException, ClassCastException, ...
+            throw getInternalException(e, logger);
+        } finally {
+            logger.writeln();
+            logger.flush();
+        }
+    }
+
     @SuppressWarnings("deprecation")
     @Override
 	public KeyStore softTokenRequest(UserDataVOWS userdata, String hardTokenSN, String keyspec, String keyalg)
@@ -2882,6 +3025,87 @@ public class EjbcaWS implements IEjbcaWS {
 		return retval;
 	}
 
+    /** Rejects batch calls without a list of items or with more items than allowed by jaxws.batch.maxsize. */
+    private static void verifyBatchSize(final List<?> items, final IPatternLogger logger) throws EjbcaException {
+        if (items == null) {
+            throw getEjbcaException("No items in batch call.", logger, ErrorCode.FIELD_VALUE_NOT_VALID, null);
+        }
+        final int maxSize = WebServiceConfiguration.getBatchMaxSize();
+        if (items.size() > maxSize) {
+            throw getEjbcaException("Batch call with " + items.size() + " items exceeds the maximum of " + maxSize + " items.", logger,
+                    ErrorCode.FIELD_VALUE_NOT_VALID, null);
+        }
+    }
+
+    /** @return the CA ID of an issuer DN in a batch call, after verifying that both the issuer DN and the serial number are present */
+    private static int getBatchCaId(final String issuerDN, final String certificateSN) throws EjbcaException {
+        if (StringUtils.isEmpty(issuerDN) || StringUtils.isEmpty(certificateSN)) {
+            throw new EjbcaException(ErrorCode.FIELD_VALUE_NOT_VALID, "Issuer DN and certificate serial number are required.");
+        }
+        return CertTools.stringToBCDNString(issuerDN).hashCode();
+    }
+
+    /**
+     * Verifies that a CA exists, and optionally that the admin is authorized to it. The outcome is remembered in verifiedCas,
+     * so each CA is only checked once per batch call.
+     */
+    private void verifyBatchCa(final AuthenticationToken admin, final int caid, final boolean checkAccess, final Map<Integer, Exception> verifiedCas)
+            throws CADoesntExistsException, AuthorizationDeniedException {
+        if (!verifiedCas.containsKey(caid)) {
+            Exception failure = null;
+            try {
+                caSession.verifyExistenceOfCA(caid);
+                if (checkAccess && !authorizationSession.isAuthorizedNoLogging(admin, StandardRules.CAACCESS.resource() + caid)) {
+                    final String msg = intres.getLocalizedMessage("authorization.notuathorizedtoresource", StandardRules.CAACCESS.resource() + caid, null);
+                    throw new AuthorizationDeniedException(msg);
+                }
+            } catch (CADoesntExistsException | AuthorizationDeniedException e) {
+                failure = e;
+            }
+            verifiedCas.put(caid, failure);
+        }
+        final Exception failure = verifiedCas.get(caid);
+        if (failure instanceof CADoesntExistsException) {
+            throw (CADoesntExistsException) failure;
+        } else if (failure instanceof AuthorizationDeniedException) {
+            throw (AuthorizationDeniedException) failure;
+        }
+    }
+
+    /**
+     * Sets the error code and message of a failed item in a batch call. The error code is the one the corresponding single item
+     * call would have returned in its exception, or a more specific one for exceptions that have no error code.
+     */
+    private static void setBatchError(final BatchResultWS result, final Exception e) {
+        ErrorCode errorCode = null;
+        if (e instanceof EjbcaException) {
+            errorCode = ((EjbcaException) e).getErrorCode();
+        } else if (e instanceof CesecoreException) {
+            errorCode = ((CesecoreException) e).getErrorCode();
+        }
+        if (errorCode == null) {
+            if (e instanceof AuthorizationDeniedException) {
+                errorCode = ErrorCode.NOT_AUTHORIZED;
+            } else if (e instanceof NotFoundException || e instanceof NoSuchEndEntityException) {
+                errorCode = ErrorCode.USER_NOT_FOUND;
+            } else if (e instanceof EndEntityProfileValidationException) {
+                errorCode = ErrorCode.USER_DOESNT_FULFILL_END_ENTITY_PROFILE;
+            } else if (e instanceof NumberFormatException) {
+                errorCode = ErrorCode.FIELD_VALUE_NOT_VALID;
+            } else if (e instanceof RuntimeException) {
+                log.error("EJBCA WebService error", e);
+                errorCode = ErrorCode.INTERNAL_ERROR;
+            } else {
+                errorCode = ErrorCode.NOT_SPECIFIED;
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Batch item failed: " + errorCode + ": " + e.getMessage());
+        }
+        result.setErrorCode(errorCode.getInternalErrorCode());
+        result.setErrorMessage(e.getMessage());
+    }
+
     private static EjbcaException getInternalException(Throwable t, IPatternLogger logger) {
         return getEjbcaException( t, logger, ErrorCode.INTERNAL_ERROR, Level.ERROR);
     }
@@ -39,12 +39,18 @@ import org.ejbca.core.model.ra.userdatasource.MultipleMatchException;
 import org.ejbca.core.model.ra.userdatasource.UserDataSourceException;
 import org.ejbca.core.protocol.ws.DateNotValidException;
 import org.ejbca.core.protocol.ws.UnknownProfileTypeException;
+import org.ejbca.core.protocol.ws.objects.BatchResultWS;
 import org.ejbca.core.protocol.ws.objects.Certificate;
+import org.ejbca.core.protocol.ws.objects.CertificateIdWS;
+import org.ejbca.core.protocol.ws.objects.CertificateRequestResultWS;
+import org.ejbca.core.protocol.ws.objects.CertificateRequestWS;
 import org.ejbca.core.protocol.ws.objects.CertificateResponse;
 import org.ejbca.core.protocol.ws.objects.HardTokenDataWS;
 import org.ejbca.core.protocol.ws.objects.KeyStore;
 import org.ejbca.core.protocol.ws.objects.NameAndId;
+import org.ejbca.core.protocol.ws.objects.RevokeCertRequestWS;
 import org.ejbca.core.protocol.ws.objects.RevokeStatus;
+import org.ejbca.core.protocol.ws.objects.RevokeStatusResultWS;
 import org.ejbca.core.protocol.ws.objects.TokenCertificateRequestWS;
 import org.ejbca.core.protocol.ws.objects.TokenCertificateResponseWS;
 import org.ejbca.core.protocol.ws.objects.UserDataSourceVOWS;
@@ -560,6 +566,27 @@ public interface IEjbcaWS {
 			ApprovalException, WaitingForApprovalException,
 			AlreadyRevokedException, RevokeBackDateNotAllowedForProfileException, DateNotValidException;
 
+	/**
+	 * Revokes a number of certificates in one call. Each revocation is performed as by {@link #revokeCert(String, String, int)},
+	 * and the revocations are grouped into database transactions of jaxws.batch.transactionsize revocations.
+	 * The result of each revocation is returned, a failed revocation does not affect the other revocations in the call.
+	 *
+	 * Authorization requirements:<pre>
+	 * - /administrator
+	 * - /ra_functionality/revoke_end_entity
+	 * - /endentityprofilesrules/&lt;end entity profile of the user owning the cert&gt;/revoke_end_entity
+	 * - /ca/&lt;ca of certificate&gt;
+	 * </pre>
+	 *
+	 * @param revocations the certificates to revoke, at most jaxws.batch.maxsize
+	 * @return the results of the revocations, in the same order as the revocations. A successful revocation has no error code.
+	 * A revocation that requires approval has no error code either, but the id of the approval request that was added for it.
+	 * @throws AuthorizationDeniedException if client isn't authorized to revoke certificates at all
+	 * @throws EjbcaException if there are too many revocations in the call, or on internal errors
+	 * @see BatchResultWS
+	 */
+	List<BatchResultWS> revokeCerts(List<RevokeCertRequestWS> revocations) throws AuthorizationDeniedException, EjbcaException;
+
 	/**
 	 * Same as {@link #revokeCertBackdated(String, String, int, String)} but revocation date is current time.
 	 * 
@@ -705,6 +732,24 @@ public interface IEjbcaWS {
 			String certificateSN) throws CADoesntExistsException, AuthorizationDeniedException,
 			EjbcaException;
 
+	/**
+	 * Returns the revocation status of a number of certificates in one call.
+	 * 
+	 * Authorization requirements:<pre>
+	 * - /administrator
+	 * - /ca/&lt;ca of certificate&gt;
+	 * </pre>
+	 * 
+	 * @param certificates the certificates to check, at most jaxws.batch.maxsize
+	 * @return the revocation statuses in the same order as the certificates. The revocation status of a result is null
+	 * if the certificate does not exist, and the error code is set if the status could not be checked, for example if the client
+	 * isn't authorized to the CA of the certificate.
+	 * @throws AuthorizationDeniedException if client isn't an administrator
+	 * @throws EjbcaException if there are too many certificates in the call, or on internal errors
+	 * @see RevokeStatusResultWS
+	 */
+	List<RevokeStatusResultWS> checkRevokationStatuses(List<CertificateIdWS> certificates) throws AuthorizationDeniedException, EjbcaException;
+
 	/**
 	 * Checks if a user is authorized to a given resource.
 	 * 
@@ -1174,6 +1219,21 @@ public interface IEjbcaWS {
 	throws CADoesntExistsException, AuthorizationDeniedException, NotFoundException, UserDoesntFullfillEndEntityProfile,
 	ApprovalException, WaitingForApprovalException, EjbcaException;
 
+	/**
+	 * Generates certificates for a number of users in one call. Each request is processed as by
+	 * {@link #certificateRequest(UserDataVOWS, String, int, String, String)}, and a failed request does not affect the
+	 * other requests in the call. The client is authenticated once for the whole call.
+	 * <p>
+	 * Authorization requirements: the same as for certificateRequest, for each of the requests.
+	 * 
+	 * @param requests the certificate requests, at most jaxws.batch.maxsize
+	 * @return the results of the requests, in the same order as the requests. A successful request has no error code.
+	 * @throws AuthorizationDeniedException if the client could not be authenticated
+	 * @throws EjbcaException if there are too many requests in the call, or on internal errors
+	 * @see CertificateRequestResultWS
+	 */
+	List<CertificateRequestResultWS> certificateRequests(List<CertificateRequestWS> requests) throws AuthorizationDeniedException, EjbcaException;
+
 
     /**
      * Returns the length of a publisher queue.
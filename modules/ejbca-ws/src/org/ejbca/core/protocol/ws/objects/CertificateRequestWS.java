@@ -0,0 +1,92 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.core.protocol.ws.objects;
+
+/**
+ * One certificate request in a batch of certificate requests, with the same parameters as a single certificateRequest call.
+ * 
+ * @see org.ejbca.core.protocol.ws.common.IEjbcaWS#certificateRequests(java.util.List)
+ * @version $Id$
+ */
+public class CertificateRequestWS {
+
+	private UserDataVOWS userData;
+	private String requestData;
+	private int requestType;
+	private String hardTokenSN;
+	private String responseType;
+
+	/**
+	 * WS Constructor
+	 */
+	public CertificateRequestWS() {
+		super();
+	}
+
+	/**
+	 * @param userData the user
+	 * @param requestData the PKCS10/CRMF/SPKAC/PUBLICKEY request in base64
+	 * @param requestType one of the CertificateHelper.CERT_REQ_TYPE_ constants
+	 * @param hardTokenSN hard token to associate the certificate with, or null
+	 * @param responseType one of the CertificateHelper.RESPONSETYPE_ constants
+	 */
+	public CertificateRequestWS(UserDataVOWS userData, String requestData, int requestType, String hardTokenSN, String responseType) {
+		super();
+		this.userData = userData;
+		this.requestData = requestData;
+		this.requestType = requestType;
+		this.hardTokenSN = hardTokenSN;
+		this.responseType = responseType;
+	}
+
+	public UserDataVOWS getUserData() {
+		return userData;
+	}
+
+	public void setUserData(UserDataVOWS userData) {
+		this.userData = userData;
+	}
+
+	public String getRequestData() {
+		return requestData;
+	}
+
+	public void setRequestData(String requestData) {
+		this.requestData = requestData;
+	}
+
+	public int getRequestType() {
+		return requestType;
+	}
+
+	public void setRequestType(int requestType) {
+		this.requestType = requestType;
+	}
+
+	public String getHardTokenSN() {
+		return hardTokenSN;
+	}
+
+	public void setHardTokenSN(String hardTokenSN) {
+		this.hardTokenSN = hardTokenSN;
+	}
+
+	public String getResponseType() {
+		return responseType;
+	}
+
+	public void setResponseType(String responseType) {
+		this.responseType = responseType;
+	}
+}
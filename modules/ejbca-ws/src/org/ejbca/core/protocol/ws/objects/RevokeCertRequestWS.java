@@ -0,0 +1,70 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.core.protocol.ws.objects;
+
+/**
+ * One revocation in a batch of revocations, with the same parameters as a single revokeCert call.
+ * 
+ * @see org.ejbca.core.protocol.ws.common.IEjbcaWS#revokeCerts(java.util.List)
+ * @version $Id$
+ */
+public class RevokeCertRequestWS {
+
+	private String issuerDN;
+	private String certificateSN;
+	private int reason;
+
+	/**
+	 * WS Constructor
+	 */
+	public RevokeCertRequestWS() {
+		super();
+	}
+
+	/**
+	 * @param issuerDN DN of the CA that issued the certificate
+	 * @param certificateSN serial number of the certificate, hex encoded
+	 * @param reason one of the RevokeStatus.REVOKATION_REASON constants
+	 */
+	public RevokeCertRequestWS(String issuerDN, String certificateSN, int reason) {
+		super();
+		this.issuerDN = issuerDN;
+		this.certificateSN = certificateSN;
+		this.reason = reason;
+	}
+
+	public String getIssuerDN() {
+		return issuerDN;
+	}
+
+	public void setIssuerDN(String issuerDN) {
+		this.issuerDN = issuerDN;
+	}
+
+	public String getCertificateSN() {
+		return certificateSN;
+	}
+
+	public void setCertificateSN(String certificateSN) {
+		this.certificateSN = certificateSN;
+	}
+
+	public int getReason() {
+		return reason;
+	}
+
+	public void setReason(int reason) {
+		this.reason = reason;
+	}
+}
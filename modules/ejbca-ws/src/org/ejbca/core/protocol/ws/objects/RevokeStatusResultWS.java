@@ -0,0 +1,41 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.core.protocol.ws.objects;
+
+/**
+ * Result of one revocation status check in a batch of revocation status checks.
+ * 
+ * @see org.ejbca.core.protocol.ws.common.IEjbcaWS#checkRevokationStatuses(java.util.List)
+ * @version $Id$
+ */
+public class RevokeStatusResultWS extends BatchResultWS {
+
+	private RevokeStatus revokeStatus;
+
+	/**
+	 * WS Constructor
+	 */
+	public RevokeStatusResultWS() {
+		super();
+	}
+
+	/** @return the revocation status, or null if the certificate does not exist or the check failed */
+	public RevokeStatus getRevokeStatus() {
+		return revokeStatus;
+	}
+
+	public void setRevokeStatus(RevokeStatus revokeStatus) {
+		this.revokeStatus = revokeStatus;
+	}
+}
@@ -203,6 +203,66 @@ public class PublisherQueueProcessTest {
         assertEquals(PublisherConst.STATUS_SUCCESS, d.getPublishStatus());
     }
 
+    /**
+     * Add a new entry to the publisher queue and let the process service drain the queue with the parallel algorithm,
+     * using a publisher that does not keep published entries in the queue.
+     */
+    @Test
+    public void test03PublishQueueProcessParallelDrain() throws Exception {
+        try {
+            CustomPublisherContainer publisher = new CustomPublisherContainer();
+            publisher.setKeepPublishedInQueue(false);
+            publisher.setQueueChunkSize(2);
+            publisher.setQueueParallelism(4);
+            publisher.setQueueMaxEntriesPerRun(10);
+            publisher.setClassPath("org.ejbca.core.model.ca.publisher.DummyCustomPublisher");
+            publisher.setDescription("Used in Junit Test, Remove this one");
+            publisherSession.addPublisher(admin, "TestPublishQueueProcessServiceParallel", publisher);
+        } catch (PublisherExistsException pee) {
+        }
+        int publisherId = publisherSession.getPublisherId("TestPublishQueueProcessServiceParallel");
+        Certificate cert = CertTools.getCertfromByteArray(testcert, Certificate.class);
+        try {
+            certificateStoreSession.storeCertificateRemote(admin, EJBTools.wrap(cert), "TestPublishQueueProcessService", null, CertificateConstants.CERT_ACTIVE,
+                    CertificateConstants.CERTTYPE_ENDENTITY, 12345, 12345, "tag", new Date().getTime());
+        } catch (Exception e) {
+            // Perhaps the cert already exists
+        }
+        // Three entries for the same certificate, so more than one chunk is needed
+        for (int i = 0; i < 3; i++) {
+            publisherQueueSession.addQueueData(publisherId, PublisherConst.PUBLISH_TYPE_CERT, CertTools.getFingerprintAsString(testcert), null,
+                    PublisherConst.STATUS_PENDING);
+        }
+        assertEquals(3, publisherQueueSession.getPendingEntriesCountForPublisher(publisherId));
+
+        ServiceConfiguration config = new ServiceConfiguration();
+        config.setActive(true);
+        config.setDescription("This is a description");
+        config.setActionClassPath(NoAction.class.getName());
+        config.setActionProperties(null);
+        config.setIntervalClassPath(PeriodicalInterval.class.getName());
+        Properties intervalprop = new Properties();
+        intervalprop.setProperty(PeriodicalInterval.PROP_VALUE, "3");
+        intervalprop.setProperty(PeriodicalInterval.PROP_UNIT, PeriodicalInterval.UNIT_SECONDS);
+        config.setIntervalProperties(intervalprop);
+        config.setWorkerClassPath(PublishQueueProcessWorker.class.getName());
+        Properties workerprop = new Properties();
+        workerprop.setProperty(PublishQueueProcessWorker.PROP_PUBLISHER_IDS, String.valueOf(publisherId));
+        workerprop.setProperty(PublishQueueProcessWorker.PROP_PARALLEL_DRAIN, "true");
+        config.setWorkerProperties(workerprop);
+
+        serviceSession.addService(admin, "TestPublishQueueProcessServiceParallel", config);
+        serviceSession.activateServiceTimer(admin, "TestPublishQueueProcessServiceParallel");
+
+        // Let the service run and publish the entries. It runs every 3 seconds, so wait for a few runs at most.
+        final long deadline = System.currentTimeMillis() + 30000;
+        while (publisherQueueSession.getPendingEntriesCountForPublisher(publisherId) > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(200);
+        }
+        assertEquals("All entries should have been published and removed from the queue.", 0,
+                publisherQueueSession.getPendingEntriesCountForPublisher(publisherId));
+    }
+
     /**
      * Remove all data stored by JUnit tests
      * 
@@ -237,8 +297,10 @@ public class PublisherQueueProcessTest {
 
         serviceSession.removeService(admin, "TestPublishQueueProcessService12345");
         serviceSession.removeService(admin, "TestPublishQueueProcessService");
+        serviceSession.removeService(admin, "TestPublishQueueProcessServiceParallel");
 
         publisherSession.removePublisher(admin, "TestPublishQueueProcessService");
+        publisherSession.removePublisher(admin, "TestPublishQueueProcessServiceParallel");
 
     }
 }
@@ -185,8 +185,12 @@ import org.ejbca.core.model.ra.raadmin.EndEntityProfileValidationException;
 import org.ejbca.core.protocol.ws.client.gen.AlreadyRevokedException_Exception;
 import org.ejbca.core.protocol.ws.client.gen.ApprovalException_Exception;
 import org.ejbca.core.protocol.ws.client.gen.AuthorizationDeniedException_Exception;
+import org.ejbca.core.protocol.ws.client.gen.BatchResultWS;
 import org.ejbca.core.protocol.ws.client.gen.CADoesntExistsException_Exception;
 import org.ejbca.core.protocol.ws.client.gen.Certificate;
+import org.ejbca.core.protocol.ws.client.gen.CertificateIdWS;
+import org.ejbca.core.protocol.ws.client.gen.CertificateRequestResultWS;
+import org.ejbca.core.protocol.ws.client.gen.CertificateRequestWS;
 import org.ejbca.core.protocol.ws.client.gen.CertificateResponse;
 import org.ejbca.core.protocol.ws.client.gen.EjbcaException_Exception;
 import org.ejbca.core.protocol.ws.client.gen.EjbcaWS;
@@ -202,7 +206,9 @@ import org.ejbca.core.protocol.ws.client.gen.KeyStore;
 import org.ejbca.core.protocol.ws.client.gen.NameAndId;
 import org.ejbca.core.protocol.ws.client.gen.PinDataWS;
 import org.ejbca.core.protocol.ws.client.gen.RevokeBackDateNotAllowedForProfileException_Exception;
+import org.ejbca.core.protocol.ws.client.gen.RevokeCertRequestWS;
 import org.ejbca.core.protocol.ws.client.gen.RevokeStatus;
+import org.ejbca.core.protocol.ws.client.gen.RevokeStatusResultWS;
 import org.ejbca.core.protocol.ws.client.gen.TokenCertificateRequestWS;
 import org.ejbca.core.protocol.ws.client.gen.TokenCertificateResponseWS;
 import org.ejbca.core.protocol.ws.client.gen.UnknownProfileTypeException_Exception;
@@ -980,6 +986,28 @@ public abstract class CommonEjbcaWS extends CaTestCase {
         }
     }
 
+    /**
+     * Test that a batch of certificate requests returns the results in the order of the requests, and that a failed request does not
+     * affect the others.
+     */
+    protected void certificateRequests() throws Exception {
+        final UserDataVOWS userData1 = getUserData(CA1_WSTESTUSER1);
+        final UserDataVOWS userData2 = getUserData(CA1_WSTESTUSER2);
+        final UserDataVOWS nonExistingCa = getUserData(CA1_WSTESTUSER2);
+        nonExistingCa.setCaName("Non existing CA");
+        final List<CertificateRequestResultWS> results = ejbcaraws.certificateRequests(Arrays.asList(
+                new CertificateRequestWS(userData1, getP10(), CertificateHelper.CERT_REQ_TYPE_PKCS10, null, CertificateHelper.RESPONSETYPE_CERTIFICATE),
+                new CertificateRequestWS(nonExistingCa, getP10(), CertificateHelper.CERT_REQ_TYPE_PKCS10, null, CertificateHelper.RESPONSETYPE_CERTIFICATE),
+                new CertificateRequestWS(userData2, getP10(), CertificateHelper.CERT_REQ_TYPE_PKCS10, null, CertificateHelper.RESPONSETYPE_CERTIFICATE)));
+        assertEquals(3, results.size());
+        assertNull(results.get(0).getErrorMessage(), results.get(0).getErrorCode());
+        assertEquals(getDN(CA1_WSTESTUSER1), results.get(0).getCertificateResponse().getCertificate().getSubjectDN().toString());
+        assertNotNull("A request to a non existing CA should fail.", results.get(1).getErrorCode());
+        assertNull(results.get(1).getCertificateResponse());
+        assertNull("A failed request should not affect the next one: " + results.get(2).getErrorMessage(), results.get(2).getErrorCode());
+        assertEquals(getDN(CA1_WSTESTUSER2), results.get(2).getCertificateResponse().getCertificate().getSubjectDN().toString());
+    }
+
     protected void enforcementOfUniquePublicKeys() throws Exception {
 
         AuthenticationToken admin = new TestAlwaysAllowLocalAuthenticationToken(new UsernamePrincipal("SYSTEMTEST"));
@@ -1740,6 +1768,34 @@ public abstract class CommonEjbcaWS extends CaTestCase {
         assertNull(revokestatus);
     }
 
+    protected void checkRevokeStatusesAndRevokeCerts() throws Exception {
+        // Create a new user and certificate
+        final P12TestUser p12TestUser = new P12TestUser();
+        final X509Certificate cert = p12TestUser.getCertificate("12345679");
+        final String issuerdn = cert.getIssuerDN().toString();
+        final String serno = cert.getSerialNumber().toString(16);
+        final String nonExisting = BigInteger.valueOf(123456L).toString(16);
+        final List<CertificateIdWS> certificates = Arrays.asList(new CertificateIdWS(issuerdn, serno), new CertificateIdWS(issuerdn, nonExisting),
+                new CertificateIdWS("CN=Non existing CA", serno));
+        List<RevokeStatusResultWS> statuses = ejbcaraws.checkRevokationStatuses(certificates);
+        assertEquals(3, statuses.size());
+        assertNull(statuses.get(0).getErrorCode());
+        assertEquals(RevokedCertInfo.NOT_REVOKED, statuses.get(0).getRevokeStatus().getReason());
+        assertNull("A non existing certificate should not have a status", statuses.get(1).getRevokeStatus());
+        assertNull(statuses.get(1).getErrorCode());
+        assertEquals(org.cesecore.ErrorCode.CA_NOT_EXISTS.getInternalErrorCode(), statuses.get(2).getErrorCode());
+        // Revoke the certificate, the non existing certificate should fail without affecting the revocation
+        final List<BatchResultWS> results = ejbcaraws.revokeCerts(Arrays.asList(
+                new RevokeCertRequestWS(issuerdn, nonExisting, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE),
+                new RevokeCertRequestWS(issuerdn, serno, RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE)));
+        assertEquals(2, results.size());
+        assertNotNull(results.get(0).getErrorCode());
+        assertNull(results.get(1).getErrorMessage(), results.get(1).getErrorCode());
+        assertEquals("The revocation should not require approval", 0, results.get(1).getApprovalRequestId());
+        statuses = ejbcaraws.checkRevokationStatuses(certificates.subList(0, 1));
+        assertEquals(RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, statuses.get(0).getRevokeStatus().getReason());
+    }
+
     protected void utf8EditUser() throws Exception {
 
         // Test to add a user.
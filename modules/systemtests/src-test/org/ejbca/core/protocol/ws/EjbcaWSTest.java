@@ -435,6 +435,11 @@ public class EjbcaWSTest extends CommonEjbcaWS {
         certificateRequest();
     }
 
+    @Test
+    public void test03_5_1CertificateRequests() throws Exception {
+        certificateRequests();
+    }
+
     @Test
     public void test03_6EnforcementOfUniquePublicKeys() throws Exception {
         enforcementOfUniquePublicKeys();
@@ -577,6 +582,11 @@ public class EjbcaWSTest extends CommonEjbcaWS {
         checkRevokeStatus();
     }
 
+    @Test
+    public void test081CheckRevokeStatusesAndRevokeCerts() throws Exception {
+        checkRevokeStatusesAndRevokeCerts();
+    }
+
     @Test
     public void test09Utf8EditUser() throws Exception {
         utf8EditUser();
@@ -165,5 +165,17 @@ public class CrlStoreServletTest extends CaTestCase {
         if ( !Arrays.areEqual(fromBean, fromURL) ) {
             pw.println(" CRL from URL and bean are not equal for '"+sURI+"'.");
         }
+        // The same CRL should not be sent again to a client that already has it
+        final String eTag = connection.getHeaderField("ETag");
+        if ( eTag==null ) {
+            pw.println(" No ETag for '"+sURI+"'.");
+            return;
+        }
+        final HttpURLConnection conditional = (HttpURLConnection)new URI(sURI).toURL().openConnection();
+        conditional.setRequestProperty("If-None-Match", eTag);
+        conditional.connect();
+        if ( HttpURLConnection.HTTP_NOT_MODIFIED!=conditional.getResponseCode() ) {
+            pw.println(" Conditional request with '"+sURI+"' did not give 304 Not Modified. responseCode="+conditional.getResponseCode());
+        }
     }
 }